@@ -14,6 +14,9 @@ import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.atomic.AtomicBoolean;
 
+import ai.clawphones.agent.chat.HttpTransport;
+import ai.clawphones.agent.chat.MessageQueueDrainer;
+
 /**
  * App entry that keeps cold-start work minimal and defers non-critical setup.
  */
@@ -41,6 +44,8 @@ public class ClawPhonesApp extends TermuxApplication {
         mainHandler.post(() -> DEFERRED_INIT_EXECUTOR.execute(() -> {
             initCrashReporter(appContext);
             warmServiceIntents(appContext);
+            HttpTransport.installCache(appContext);
+            startMessageQueueDrainer(appContext);
         }));
     }
 
@@ -69,6 +74,11 @@ public class ClawPhonesApp extends TermuxApplication {
         CrashReporter.init(appContext);
     }
 
+    private static void startMessageQueueDrainer(Context appContext) {
+        // Sends messages queued by a previous session without waiting for ChatActivity.
+        MessageQueueDrainer.getInstance(appContext).requestDrain();
+    }
+
     private static void warmServiceIntents(Context appContext) {
         if (!SERVICE_WARMUP_DONE.compareAndSet(false, true)) return;
 
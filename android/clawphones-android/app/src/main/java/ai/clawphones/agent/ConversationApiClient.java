@@ -6,16 +6,17 @@ import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
-import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 
+import ai.clawphones.agent.chat.HttpTransport;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
 /**
  * HTTP client for ClawPhones Conversation API.
  * Mirrors the iOS OpenClawAPI.swift implementation.
@@ -32,8 +33,7 @@ import java.util.List;
 public class ConversationApiClient {
 
     private static final String LOG_TAG = "ConversationApiClient";
-    private static final int CONNECT_TIMEOUT_MS = 15_000;
-    private static final int READ_TIMEOUT_MS = 60_000;
+    private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
 
     private final String baseUrl;
     private final String deviceToken;
@@ -208,58 +208,38 @@ public class ConversationApiClient {
     // ── HTTP internals ──────────────────────────────────────────
 
     private JSONObject doGet(String urlStr) throws IOException, ApiException, JSONException {
-        HttpURLConnection conn = openConnection(urlStr, "GET");
-        return readResponse(conn);
+        return readResponse(newRequest(urlStr).get().build());
     }
 
     private JSONObject doPost(String urlStr, JSONObject body) throws IOException, ApiException, JSONException {
-        HttpURLConnection conn = openConnection(urlStr, "POST");
-        conn.setRequestProperty("Content-Type", "application/json");
-        conn.setDoOutput(true);
-        try (OutputStream os = conn.getOutputStream()) {
-            os.write(body.toString().getBytes(StandardCharsets.UTF_8));
-        }
-        return readResponse(conn);
+        return readResponse(newRequest(urlStr).post(RequestBody.create(body.toString(), JSON)).build());
     }
 
     private JSONObject doDelete(String urlStr) throws IOException, ApiException, JSONException {
-        HttpURLConnection conn = openConnection(urlStr, "DELETE");
-        return readResponse(conn);
+        return readResponse(newRequest(urlStr).delete().build());
     }
 
-    private HttpURLConnection openConnection(String urlStr, String method) throws IOException {
-        HttpURLConnection conn = (HttpURLConnection) new URL(urlStr).openConnection();
-        conn.setConnectTimeout(CONNECT_TIMEOUT_MS);
-        conn.setReadTimeout(READ_TIMEOUT_MS);
-        conn.setRequestMethod(method);
-        conn.setRequestProperty("Accept", "application/json");
-        conn.setRequestProperty("Authorization", "Bearer " + deviceToken);
-        return conn;
+    private Request.Builder newRequest(String urlStr) {
+        return new Request.Builder()
+            .url(urlStr)
+            .header("Accept", "application/json")
+            .header("Authorization", "Bearer " + deviceToken);
     }
 
-    private JSONObject readResponse(HttpURLConnection conn) throws IOException, ApiException, JSONException {
-        int code = conn.getResponseCode();
-
-        BufferedReader reader;
-        if (code >= 200 && code < 300) {
-            reader = new BufferedReader(new InputStreamReader(conn.getInputStream(), StandardCharsets.UTF_8));
-        } else {
-            reader = new BufferedReader(new InputStreamReader(conn.getErrorStream(), StandardCharsets.UTF_8));
-        }
-
-        StringBuilder sb = new StringBuilder();
-        String line;
-        while ((line = reader.readLine()) != null) {
-            sb.append(line);
+    private JSONObject readResponse(Request request) throws IOException, ApiException, JSONException {
+        String raw;
+        int code;
+        try (Response response = HttpTransport.execute(request)) {
+            code = response.code();
+            ResponseBody body = response.body();
+            raw = body == null ? "" : body.string();
         }
-        reader.close();
-        conn.disconnect();
 
         if (code < 200 || code >= 300) {
-            Logger.logError(LOG_TAG, "API error " + code + ": " + sb);
-            throw new ApiException(code, sb.toString());
+            Logger.logError(LOG_TAG, "API error " + code + ": " + raw);
+            throw new ApiException(code, raw);
         }
 
-        return new JSONObject(sb.toString());
+        return new JSONObject(raw);
     }
 }
@@ -10,10 +10,10 @@ import com.termux.shared.logger.Logger;
 
 import org.json.JSONObject;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import ai.clawphones.agent.chat.HttpTransport;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
 
 /**
  * Lightweight version checker that queries the ClawPhones API for the latest release.
@@ -72,31 +72,28 @@ public class UpdateChecker {
             try {
                 String urlStr = CHECK_URL + "?v=" + currentVersion + "&vc=" + currentVersionCode;
                 Logger.logInfo(LOG_TAG, "Fetching " + urlStr);
-                HttpURLConnection conn = (HttpURLConnection) new URL(urlStr).openConnection();
-                conn.setConnectTimeout(CONNECT_TIMEOUT_MS);
-                conn.setReadTimeout(READ_TIMEOUT_MS);
-                conn.setRequestMethod("GET");
-
-                int responseCode = conn.getResponseCode();
-                Logger.logInfo(LOG_TAG, "Response code: " + responseCode);
-                if (responseCode != 200) {
-                    conn.disconnect();
-                    return;
-                }
-
-                BufferedReader reader = new BufferedReader(new InputStreamReader(conn.getInputStream()));
-                StringBuilder sb = new StringBuilder();
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    sb.append(line);
+                Request request = HttpTransport.withTimeouts(
+                    new Request.Builder().url(urlStr).get(),
+                    CONNECT_TIMEOUT_MS,
+                    READ_TIMEOUT_MS,
+                    0L
+                ).build();
+
+                String raw;
+                try (Response response = HttpTransport.executeCached(request)) {
+                    int responseCode = response.code();
+                    Logger.logInfo(LOG_TAG, "Response code: " + responseCode);
+                    if (responseCode != 200) {
+                        return;
+                    }
+                    ResponseBody body = response.body();
+                    raw = body == null ? "" : body.string();
                 }
-                reader.close();
-                conn.disconnect();
 
                 // Record successful check
                 prefs.edit().putLong(KEY_LAST_CHECK, System.currentTimeMillis()).apply();
 
-                JSONObject json = new JSONObject(sb.toString());
+                JSONObject json = new JSONObject(raw);
                 String latestVersion = json.optString("latest_version", "");
                 String downloadUrl = json.optString("download_url", "");
                 String notes = json.optString("release_notes", "");
@@ -7,10 +7,6 @@ import android.util.Log;
 import org.json.JSONArray;
 import org.json.JSONObject;
 
-import java.io.OutputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
-import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
@@ -21,6 +17,11 @@ import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import ai.clawphones.agent.chat.ClawPhonesAPI;
+import ai.clawphones.agent.chat.HttpTransport;
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
 
 /**
  * Lightweight analytics manager:
@@ -32,6 +33,8 @@ public final class AnalyticsManager {
 
     private static final String LOG_TAG = "AnalyticsManager";
     private static final long FLUSH_INTERVAL_MS = 30_000L;
+    private static final long UPLOAD_TIMEOUT_MS = 10_000L;
+    private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
 
     private static volatile AnalyticsManager sInstance;
 
@@ -117,48 +120,32 @@ public final class AnalyticsManager {
     private boolean sendBatch(List<JSONObject> batch) {
         if (batch == null || batch.isEmpty()) return true;
 
-        HttpURLConnection connection = null;
         try {
-            URL url = new URL(ClawPhonesAPI.BASE_URL + "/v1/analytics/events");
-            connection = (HttpURLConnection) url.openConnection();
-            connection.setRequestMethod("POST");
-            connection.setConnectTimeout(10_000);
-            connection.setReadTimeout(10_000);
-            connection.setDoOutput(true);
-            connection.setRequestProperty("Accept", "application/json");
-            connection.setRequestProperty("Content-Type", "application/json");
-
-            String token = ClawPhonesAPI.getToken(appContext);
-            if (!TextUtils.isEmpty(token)) {
-                connection.setRequestProperty("Authorization", "Bearer " + token);
-            }
-
             JSONArray payload = new JSONArray();
             for (JSONObject item : batch) {
                 payload.put(item);
             }
 
-            byte[] bytes = payload.toString().getBytes(StandardCharsets.UTF_8);
-            connection.setFixedLengthStreamingMode(bytes.length);
-            try (OutputStream out = connection.getOutputStream()) {
-                out.write(bytes);
-                out.flush();
+            Request.Builder builder = new Request.Builder()
+                .url(ClawPhonesAPI.BASE_URL + "/v1/analytics/events")
+                .header("Accept", "application/json")
+                .post(RequestBody.create(payload.toString(), JSON));
+            String token = ClawPhonesAPI.getToken(appContext);
+            if (!TextUtils.isEmpty(token)) {
+                builder.header("Authorization", "Bearer " + token);
             }
+            HttpTransport.withTimeouts(builder, UPLOAD_TIMEOUT_MS, UPLOAD_TIMEOUT_MS, UPLOAD_TIMEOUT_MS);
 
-            int code = connection.getResponseCode();
-            if (code >= 200 && code < 300) {
-                return true;
+            try (Response response = HttpTransport.execute(builder.build())) {
+                if (response.isSuccessful()) {
+                    return true;
+                }
+                Log.w(LOG_TAG, "Analytics upload failed with HTTP " + response.code());
+                return false;
             }
-
-            Log.w(LOG_TAG, "Analytics upload failed with HTTP " + code);
-            return false;
         } catch (Exception e) {
             Log.w(LOG_TAG, "Analytics upload failed", e);
             return false;
-        } finally {
-            if (connection != null) {
-                connection.disconnect();
-            }
         }
     }
 
@@ -0,0 +1,321 @@
+package ai.clawphones.agent.chat;
+
+import android.content.SharedPreferences;
+import android.graphics.Bitmap;
+
+import androidx.annotation.NonNull;
+
+import com.termux.shared.logger.Logger;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Picks JPEG quality, downscale factor and frame interval for relay uploads from what the link
+ * actually delivers.
+ *
+ * The settings form a ladder built from {@link Bounds}: level 0 is the best picture at the
+ * shortest interval, and each level down cheapens the frame by one step, in this order:
+ *
+ *   quality down to the middle of its range
+ *   resolution halved, up to maxDownscale
+ *   quality down to its minimum
+ *   interval stretched by half, up to maxIntervalMs
+ *
+ * Throughput is measured over the time at least one upload is in flight, so serial uploads and
+ * a parallel queue flush both report the link rate rather than the offered rate. Every
+ * EVALUATION_INTERVAL_MS the controller compares that with the bitrate the current level offers
+ * (measured encoded size over the interval) and with the offline queue depth:
+ *
+ *   failures or queue above twice the target   two levels down
+ *   over budget, queue above target, or uploads slower than the frame interval   one level down
+ *   under 1/STEP_UP_MARGIN of budget with a short queue, HOLD_EVALUATIONS in a row   one level up
+ *
+ * The budget is the lower of the target bitrate and HEADROOM of measured throughput. All inputs
+ * carry their own timestamps, so the controller is deterministic under a simulated clock.
+ */
+final class AdaptiveFrameController {
+
+    private static final String LOG_TAG = "AdaptiveFrameController";
+
+    static final long EVALUATION_INTERVAL_MS = 2000L;
+    static final int QUALITY_STEP = 10;
+    static final double INTERVAL_GROWTH = 1.5d;
+    static final double HEADROOM = 0.8d;
+    static final double STEP_UP_MARGIN = 1.3d;
+    static final int HOLD_EVALUATIONS = 2;
+    private static final double EWMA_ALPHA = 0.3d;
+    private static final long MIN_BUSY_MS = 50L;
+
+    /** Configured limits. The controller never leaves them. */
+    static final class Bounds {
+        static final Bounds DEFAULT = new Bounds(30, 70, 4, 1000L, 4000L, 1_000_000L, 4);
+
+        final int minQuality;
+        final int maxQuality;
+        final int maxDownscale;
+        final long minIntervalMs;
+        final long maxIntervalMs;
+        final long targetBitsPerSecond;
+        final int targetQueueDepth;
+
+        Bounds(int minQuality, int maxQuality, int maxDownscale, long minIntervalMs, long maxIntervalMs,
+               long targetBitsPerSecond, int targetQueueDepth) {
+            if (minQuality < 1 || maxQuality > 100 || minQuality > maxQuality) {
+                throw new IllegalArgumentException("quality bounds " + minQuality + ".." + maxQuality);
+            }
+            if (maxDownscale < 1) {
+                throw new IllegalArgumentException("maxDownscale " + maxDownscale);
+            }
+            if (minIntervalMs <= 0L || minIntervalMs > maxIntervalMs) {
+                throw new IllegalArgumentException("interval bounds " + minIntervalMs + ".." + maxIntervalMs);
+            }
+            if (targetBitsPerSecond <= 0L || targetQueueDepth < 0) {
+                throw new IllegalArgumentException("target " + targetBitsPerSecond + " bps, queue " + targetQueueDepth);
+            }
+            this.minQuality = minQuality;
+            this.maxQuality = maxQuality;
+            this.maxDownscale = maxDownscale;
+            this.minIntervalMs = minIntervalMs;
+            this.maxIntervalMs = maxIntervalMs;
+            this.targetBitsPerSecond = targetBitsPerSecond;
+            this.targetQueueDepth = targetQueueDepth;
+        }
+
+        /**
+         * Node mode settings: the chosen JPEG quality and frame rate become the best the
+         * controller will send, not a fixed setting.
+         */
+        @NonNull
+        static Bounds fromPreferences(@NonNull SharedPreferences prefs) {
+            String quality = prefs.getString(NodeModeService.PREF_JPEG_QUALITY, NodeModeService.DEFAULT_JPEG_QUALITY);
+            String frameRate = prefs.getString(NodeModeService.PREF_FRAME_RATE, NodeModeService.DEFAULT_FRAME_RATE);
+            int maxQuality = 70;
+            if ("Low".equalsIgnoreCase(quality)) maxQuality = 50;
+            if ("High".equalsIgnoreCase(quality)) maxQuality = 90;
+            long minIntervalMs = 1000L;
+            if ("0.5".equals(frameRate)) minIntervalMs = 2000L;
+            if ("2".equals(frameRate)) minIntervalMs = 500L;
+            return new Bounds(Math.min(DEFAULT.minQuality, maxQuality), maxQuality, DEFAULT.maxDownscale,
+                minIntervalMs, minIntervalMs * 4L, DEFAULT.targetBitsPerSecond, DEFAULT.targetQueueDepth);
+        }
+    }
+
+    /** One rung of the ladder. */
+    static final class Settings {
+        final int level;
+        final int jpegQuality;
+        final int downscale;
+        final long frameIntervalMs;
+
+        Settings(int level, int jpegQuality, int downscale, long frameIntervalMs) {
+            this.level = level;
+            this.jpegQuality = jpegQuality;
+            this.downscale = downscale;
+            this.frameIntervalMs = frameIntervalMs;
+        }
+
+        /** Scales and compresses a captured frame. The source bitmap is left alone. */
+        @NonNull
+        byte[] encode(@NonNull Bitmap frame) {
+            Bitmap scaled = frame;
+            if (downscale > 1) {
+                scaled = Bitmap.createScaledBitmap(frame, Math.max(1, frame.getWidth() / downscale),
+                    Math.max(1, frame.getHeight() / downscale), true);
+            }
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try {
+                scaled.compress(Bitmap.CompressFormat.JPEG, jpegQuality, out);
+            } finally {
+                if (scaled != frame) scaled.recycle();
+            }
+            return out.toByteArray();
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "L%d q=%d 1/%d %d ms", level, jpegQuality, downscale, frameIntervalMs);
+        }
+    }
+
+    private Bounds bounds;
+    private List<Settings> ladder;
+    private int level;
+
+    private int inFlight;
+    private long busySinceMs = -1L;
+    private long windowBusyMs;
+    private long windowBytes;
+    private int windowFailures;
+    private long windowStartedAt = -1L;
+    private int queueDepth;
+    private int stableEvaluations;
+
+    private double throughputBps = -1d;
+    private double latencyMs = -1d;
+    private double frameBytes = -1d;
+
+    AdaptiveFrameController(@NonNull Bounds bounds) {
+        setBounds(bounds);
+    }
+
+    /** Rebuilds the ladder and starts again from the best level with no estimates. */
+    synchronized void setBounds(@NonNull Bounds bounds) {
+        this.bounds = bounds;
+        ladder = buildLadder(bounds);
+        level = 0;
+        throughputBps = -1d;
+        latencyMs = -1d;
+        frameBytes = -1d;
+        windowBusyMs = 0L;
+        windowBytes = 0L;
+        windowFailures = 0;
+        windowStartedAt = -1L;
+        stableEvaluations = 0;
+    }
+
+    @NonNull
+    synchronized Settings current() {
+        return ladder.get(level);
+    }
+
+    /** Number of levels; the last one is the cheapest. */
+    synchronized int levelCount() {
+        return ladder.size();
+    }
+
+    /** Link estimate in bits per second, or -1 before the first measured window. */
+    synchronized long throughputBps() {
+        return Math.round(throughputBps);
+    }
+
+    synchronized long latencyMs() {
+        return Math.round(latencyMs);
+    }
+
+    /** Size of a frame freshly encoded at the current settings. */
+    synchronized void onFrameEncoded(long bytes) {
+        frameBytes = ewma(frameBytes, bytes);
+    }
+
+    synchronized void onUploadStarted(long nowMs) {
+        advanceBusy(nowMs);
+        inFlight++;
+    }
+
+    /**
+     * One upload finished. {@code success} is false only for failures that say something about
+     * the link (network errors, timeouts, 429, 5xx); a rejected frame is not congestion.
+     */
+    synchronized void onUploadFinished(long startedAtMs, long bytes, boolean success, long nowMs) {
+        advanceBusy(nowMs);
+        inFlight = Math.max(0, inFlight - 1);
+        latencyMs = ewma(latencyMs, Math.max(0L, nowMs - startedAtMs));
+        if (success) {
+            windowBytes += bytes;
+        } else {
+            windowFailures++;
+        }
+        maybeEvaluate(nowMs);
+    }
+
+    /** Frames waiting in the offline queue. */
+    synchronized void onQueueDepth(int depth, long nowMs) {
+        queueDepth = Math.max(0, depth);
+        maybeEvaluate(nowMs);
+    }
+
+    private void advanceBusy(long nowMs) {
+        if (inFlight > 0 && busySinceMs >= 0L) {
+            windowBusyMs += Math.max(0L, nowMs - busySinceMs);
+        }
+        busySinceMs = nowMs;
+    }
+
+    private void maybeEvaluate(long nowMs) {
+        if (windowStartedAt < 0L) {
+            windowStartedAt = nowMs;
+            return;
+        }
+        if (nowMs - windowStartedAt < EVALUATION_INTERVAL_MS) return;
+
+        advanceBusy(nowMs);
+        if (windowBusyMs >= MIN_BUSY_MS && windowBytes > 0L) {
+            throughputBps = ewma(throughputBps, windowBytes * 8000d / windowBusyMs);
+        }
+        evaluate();
+        windowStartedAt = nowMs;
+        windowBusyMs = 0L;
+        windowBytes = 0L;
+        windowFailures = 0;
+    }
+
+    private void evaluate() {
+        Settings settings = ladder.get(level);
+        double offeredBps = frameBytes < 0d ? -1d : frameBytes * 8000d / settings.frameIntervalMs;
+        double budgetBps = throughputBps < 0d
+            ? bounds.targetBitsPerSecond
+            : Math.min(bounds.targetBitsPerSecond, throughputBps * HEADROOM);
+        int targetQueue = bounds.targetQueueDepth;
+
+        int step = 0;
+        if (windowFailures > 0 || queueDepth > 2 * targetQueue) {
+            step = 2;
+        } else if (queueDepth > targetQueue
+            || offeredBps > budgetBps
+            || (latencyMs >= 0d && latencyMs > settings.frameIntervalMs)) {
+            step = 1;
+        } else if (offeredBps >= 0d && offeredBps * STEP_UP_MARGIN < budgetBps && queueDepth <= targetQueue / 2) {
+            if (++stableEvaluations >= HOLD_EVALUATIONS) {
+                step = -1;
+            }
+        } else {
+            stableEvaluations = 0;
+        }
+        if (step == 0) return;
+
+        int next = Math.max(0, Math.min(ladder.size() - 1, level + step));
+        stableEvaluations = 0;
+        if (next == level) return;
+        Logger.logInfo(LOG_TAG, String.format(Locale.US,
+            "%s -> %s (offered %d bps, budget %d bps, link %d bps, latency %d ms, queue %d, failures %d)",
+            settings, ladder.get(next), Math.round(offeredBps), Math.round(budgetBps), Math.round(throughputBps),
+            Math.round(latencyMs), queueDepth, windowFailures));
+        level = next;
+        // The frame size estimate belongs to the old level; wait for frames at the new one.
+        frameBytes = -1d;
+    }
+
+    @NonNull
+    private static List<Settings> buildLadder(@NonNull Bounds bounds) {
+        List<Settings> levels = new ArrayList<>();
+        int quality = bounds.maxQuality;
+        int downscale = 1;
+        long interval = bounds.minIntervalMs;
+        int midQuality = (bounds.minQuality + bounds.maxQuality) / 2;
+        levels.add(new Settings(0, quality, downscale, interval));
+        while (true) {
+            if (quality > midQuality) {
+                quality = Math.max(midQuality, quality - QUALITY_STEP);
+            } else if (downscale * 2 <= bounds.maxDownscale) {
+                downscale *= 2;
+            } else if (quality > bounds.minQuality) {
+                quality = Math.max(bounds.minQuality, quality - QUALITY_STEP);
+            } else if (interval < bounds.maxIntervalMs) {
+                interval = Math.min(bounds.maxIntervalMs, Math.round(interval * INTERVAL_GROWTH));
+            } else {
+                break;
+            }
+            levels.add(new Settings(levels.size(), quality, downscale, interval));
+        }
+        return Collections.unmodifiableList(levels);
+    }
+
+    private static double ewma(double current, double sample) {
+        return current < 0d ? sample : current + EWMA_ALPHA * (sample - current);
+    }
+}
@@ -1,12 +1,18 @@
 package ai.clawphones.agent.chat;
 
 import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
 import android.graphics.RectF;
-import android.text.TextUtils;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 
+import com.termux.shared.logger.Logger;
+
 import org.json.JSONArray;
 import org.json.JSONObject;
 
@@ -16,8 +22,6 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.Comparator;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Locale;
@@ -25,138 +29,321 @@ import java.util.Set;
 
 /**
  * Local alert timeline storage.
- * Metadata is stored in JSON, thumbnail/frame bytes are stored as files.
+ *
+ * Metadata lives in SQLite, indexed by id, by time and by type, so saving an alert is one
+ * insert and a lookup or a page of the timeline is one index seek. Thumbnail bytes stay in files
+ * named after the event id, written to a temp file and renamed into place before the row is
+ * inserted; a crash leaves at most a stray file, never a half-written history.
+ *
+ * Retention is one range delete over the time index: everything older than the retention period,
+ * or older than the newest {@code maxEvents}. The events.json file earlier versions kept is
+ * imported when the database is created, then deleted.
  */
 public final class AlertEventStore {
 
+    private static final String LOG_TAG = "AlertEventStore";
+
     private static final String DIR_NAME = "clawvision_alerts";
     private static final String THUMBNAILS_DIR = "thumbnails";
-    private static final String METADATA_FILE = "events.json";
+    private static final String LEGACY_METADATA_FILE = "events.json";
     private static final long RETENTION_MS = 7L * 24L * 60L * 60L * 1000L;
     private static final int MAX_EVENTS = 1000;
 
+    private static final String DB_NAME = "clawvision_alerts.db";
+    private static final int DB_VERSION = 1;
+    private static final String TABLE_EVENTS = "alert_events";
+    private static final String COL_ID = "id";
+    private static final String COL_TYPE = "type";
+    private static final String COL_TYPE_KEY = "type_key";
+    private static final String COL_CONFIDENCE = "confidence";
+    private static final String COL_TIMESTAMP = "timestamp";
+    private static final String COL_LATITUDE = "latitude";
+    private static final String COL_LONGITUDE = "longitude";
+    private static final String COL_BOX_LEFT = "box_left";
+    private static final String COL_BOX_TOP = "box_top";
+    private static final String COL_BOX_RIGHT = "box_right";
+    private static final String COL_BOX_BOTTOM = "box_bottom";
+    private static final String COL_HAS_THUMBNAIL = "has_thumbnail";
+
+    private static final String[] EVENT_COLUMNS = {
+        COL_ID, COL_TYPE, COL_CONFIDENCE, COL_TIMESTAMP, COL_LATITUDE, COL_LONGITUDE,
+        COL_BOX_LEFT, COL_BOX_TOP, COL_BOX_RIGHT, COL_BOX_BOTTOM
+    };
+
     private final Context mAppContext;
+    private final SQLiteOpenHelper mHelper;
+    private final long mRetentionMs;
+    private final int mMaxEvents;
+    /** Rows as of the last count, plus inserts since; -1 until first counted. */
+    private int mCount = -1;
 
     public AlertEventStore(@NonNull Context context) {
+        this(context, RETENTION_MS, MAX_EVENTS);
+    }
+
+    AlertEventStore(@NonNull Context context, long retentionMs, int maxEvents) {
+        if (retentionMs <= 0L || maxEvents <= 0) throw new IllegalArgumentException("limits must be positive");
         mAppContext = context.getApplicationContext();
+        mRetentionMs = retentionMs;
+        mMaxEvents = maxEvents;
         ensureDirectories();
+        mHelper = new SQLiteOpenHelper(mAppContext, DB_NAME, null, DB_VERSION) {
+            @Override
+            public void onConfigure(SQLiteDatabase db) {
+                super.onConfigure(db);
+                SqliteTuning.configure(db);
+            }
+
+            @Override
+            public void onCreate(SQLiteDatabase db) {
+                db.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE_EVENTS + " ("
+                    + COL_ID + " TEXT PRIMARY KEY, "
+                    + COL_TYPE + " TEXT NOT NULL, "
+                    + COL_TYPE_KEY + " TEXT NOT NULL, "
+                    + COL_CONFIDENCE + " REAL NOT NULL, "
+                    + COL_TIMESTAMP + " INTEGER NOT NULL, "
+                    + COL_LATITUDE + " REAL NOT NULL, "
+                    + COL_LONGITUDE + " REAL NOT NULL, "
+                    + COL_BOX_LEFT + " REAL, "
+                    + COL_BOX_TOP + " REAL, "
+                    + COL_BOX_RIGHT + " REAL, "
+                    + COL_BOX_BOTTOM + " REAL, "
+                    + COL_HAS_THUMBNAIL + " INTEGER NOT NULL DEFAULT 0"
+                    + ")");
+                db.execSQL("CREATE INDEX IF NOT EXISTS idx_alert_events_time "
+                    + "ON " + TABLE_EVENTS + "(" + COL_TIMESTAMP + ", " + COL_ID + ")");
+                db.execSQL("CREATE INDEX IF NOT EXISTS idx_alert_events_type_time "
+                    + "ON " + TABLE_EVENTS + "(" + COL_TYPE_KEY + ", " + COL_TIMESTAMP + ", " + COL_ID + ")");
+                importLegacyMetadata(db);
+            }
+
+            @Override
+            public void onOpen(SQLiteDatabase db) {
+                super.onOpen(db);
+                // The import committed with onCreate; the JSON file is not needed past that.
+                File legacy = legacyMetadataFile();
+                if (legacy.exists() && !legacy.delete()) {
+                    Logger.logWarn(LOG_TAG, "Could not delete " + legacy);
+                }
+                sweepThumbnails(db);
+            }
+
+            @Override
+            public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+                onCreate(db);
+            }
+        };
     }
 
+    /** Every retained event, newest first, with thumbnails. Prefer {@link #queryEvents} for paging. */
     public synchronized List<AlertEvent> loadEvents() {
-        ensureDirectories();
-        List<AlertEvent> metadata = readMetadata();
-        List<AlertEvent> pruned = prune(metadata);
-        saveMetadata(pruned);
-        cleanupOrphanedThumbnails(new HashSet<>(collectIds(pruned)));
-
-        List<AlertEvent> out = new ArrayList<>(pruned.size());
-        for (AlertEvent item : pruned) {
-            out.add(item.withThumbnailData(readThumbnail(item.id)));
+        long nowMs = System.currentTimeMillis();
+        prune(nowMs);
+        List<AlertEvent> events = queryEvents(null, Long.MAX_VALUE, null, mMaxEvents, nowMs);
+        List<AlertEvent> out = new ArrayList<>(events.size());
+        for (AlertEvent event : events) {
+            out.add(event.withThumbnailData(readThumbnail(event.id)));
         }
         return out;
     }
 
-    public synchronized void saveEvent(@NonNull AlertEvent event) {
-        ensureDirectories();
+    /**
+     * A page of events newest first, without thumbnails. Pass the last event of the previous page
+     * as the (beforeTimestampMs, beforeId) cursor, or Long.MAX_VALUE and null for the first page.
+     * A null type returns every type. Events past retention are left out even before a save
+     * prunes them.
+     */
+    @NonNull
+    public List<AlertEvent> queryEvents(@Nullable String type, long beforeTimestampMs, @Nullable String beforeId,
+                                        int limit) {
+        return queryEvents(type, beforeTimestampMs, beforeId, limit, System.currentTimeMillis());
+    }
 
-        if (event.thumbnailData != null && event.thumbnailData.length > 0) {
-            writeThumbnail(event.id, event.thumbnailData);
+    @NonNull
+    List<AlertEvent> queryEvents(@Nullable String type, long beforeTimestampMs, @Nullable String beforeId,
+                                 int limit, long nowMs) {
+        StringBuilder where = new StringBuilder();
+        List<String> args = new ArrayList<>(5);
+        if (type != null) {
+            where.append(COL_TYPE_KEY).append(" = ? AND ");
+            args.add(normalizeType(type));
+        }
+        where.append(COL_TIMESTAMP).append(" >= ? AND ");
+        args.add(String.valueOf(nowMs - mRetentionMs));
+        if (beforeId == null) {
+            where.append(COL_TIMESTAMP).append(" <= ?");
+            args.add(String.valueOf(beforeTimestampMs));
+        } else {
+            where.append("(").append(COL_TIMESTAMP).append(" < ? OR (")
+                .append(COL_TIMESTAMP).append(" = ? AND ").append(COL_ID).append(" < ?))");
+            args.add(String.valueOf(beforeTimestampMs));
+            args.add(String.valueOf(beforeTimestampMs));
+            args.add(beforeId);
         }
+        return query(where.toString(), args.toArray(new String[0]),
+            COL_TIMESTAMP + " DESC, " + COL_ID + " DESC", String.valueOf(Math.max(1, limit)));
+    }
 
-        List<AlertEvent> metadata = readMetadata();
-        metadata.removeIf(existing -> TextUtils.equals(existing.id, event.id));
-        metadata.add(event.withThumbnailData(null));
+    public synchronized void saveEvent(@NonNull AlertEvent event) {
+        saveEvent(event, System.currentTimeMillis());
+    }
 
-        List<AlertEvent> pruned = prune(metadata);
-        saveMetadata(pruned);
-        cleanupOrphanedThumbnails(new HashSet<>(collectIds(pruned)));
+    synchronized void saveEvent(@NonNull AlertEvent event, long nowMs) {
+        // Opened first: the first open sweeps thumbnails that have no row yet.
+        SQLiteDatabase db = mHelper.getWritableDatabase();
+        boolean hasThumbnail = event.thumbnailData != null && event.thumbnailData.length > 0;
+        if (hasThumbnail && !writeThumbnail(event.id, event.thumbnailData)) {
+            hasThumbnail = false;
+        }
+        SQLiteStatement insert = compileInsert(db);
+        try {
+            bindAndInsert(insert, event, hasThumbnail);
+            if (mCount >= 0) mCount++;
+        } finally {
+            insert.close();
+        }
+        if (!hasThumbnail) deleteThumbnail(event.id);
+        prune(nowMs);
     }
 
     public synchronized boolean deleteEvent(@NonNull String id) {
-        ensureDirectories();
-        List<AlertEvent> metadata = readMetadata();
-        boolean removed = metadata.removeIf(item -> TextUtils.equals(item.id, id));
-        saveMetadata(metadata);
-        File thumbnail = thumbnailFile(id);
-        if (thumbnail.exists()) {
-            //noinspection ResultOfMethodCallIgnored
-            thumbnail.delete();
-        }
+        SQLiteDatabase db = mHelper.getWritableDatabase();
+        boolean removed = db.delete(TABLE_EVENTS, COL_ID + " = ?", new String[]{id}) > 0;
+        if (removed && mCount > 0) mCount--;
+        deleteThumbnail(id);
         return removed;
     }
 
     @Nullable
-    public synchronized AlertEvent getEventById(@NonNull String id) {
-        List<AlertEvent> events = loadEvents();
-        for (AlertEvent event : events) {
-            if (TextUtils.equals(event.id, id)) {
-                return event;
-            }
-        }
-        return null;
+    public AlertEvent getEventById(@NonNull String id) {
+        List<AlertEvent> events = query(COL_ID + " = ?", new String[]{id}, null, null);
+        if (events.isEmpty()) return null;
+        AlertEvent event = events.get(0);
+        if (event.timestampMs < System.currentTimeMillis() - mRetentionMs) return null;
+        return event.withThumbnailData(readThumbnail(id));
     }
 
-    private List<String> collectIds(List<AlertEvent> events) {
-        List<String> ids = new ArrayList<>(events.size());
-        for (AlertEvent event : events) {
-            ids.add(event.id);
-        }
-        return ids;
+    public int count() {
+        return (int) DatabaseUtils.queryNumEntries(mHelper.getReadableDatabase(), TABLE_EVENTS);
     }
 
-    private List<AlertEvent> prune(List<AlertEvent> events) {
-        long cutoff = System.currentTimeMillis() - RETENTION_MS;
-        List<AlertEvent> filtered = new ArrayList<>();
-        for (AlertEvent event : events) {
-            if (event.timestampMs >= cutoff) {
-                filtered.add(event.withThumbnailData(null));
+    /**
+     * Deletes events past retention or beyond the newest maxEvents as one range over the time
+     * index, then their thumbnails. Returns how many went.
+     */
+    synchronized int prune(long nowMs) {
+        SQLiteDatabase db = mHelper.getWritableDatabase();
+        long boundaryTimestamp = nowMs - mRetentionMs;
+        String boundaryId = "";
+        if (mCount < 0) mCount = count();
+        if (mCount > mMaxEvents) {
+            // The newest event past the count limit moves the boundary up if it is later. Walking
+            // to it costs maxEvents index steps, so it only runs once the count says it must.
+            try (Cursor c = db.query(TABLE_EVENTS, new String[]{COL_TIMESTAMP, COL_ID}, null, null, null, null,
+                COL_TIMESTAMP + " DESC, " + COL_ID + " DESC", mMaxEvents + ", 1")) {
+                if (!c.moveToFirst()) {
+                    // Replaced events made the count run high.
+                    mCount = count();
+                } else if (c.getLong(0) >= boundaryTimestamp) {
+                    boundaryTimestamp = c.getLong(0);
+                    boundaryId = c.getString(1);
+                }
             }
         }
 
-        filtered.sort(new Comparator<AlertEvent>() {
-            @Override
-            public int compare(AlertEvent a, AlertEvent b) {
-                return Long.compare(b.timestampMs, a.timestampMs);
+        String range = COL_TIMESTAMP + " < ? OR (" + COL_TIMESTAMP + " = ? AND " + COL_ID + " <= ?)";
+        String[] args = {String.valueOf(boundaryTimestamp), String.valueOf(boundaryTimestamp), boundaryId};
+        List<String> thumbnails = new ArrayList<>();
+        int deleted;
+        db.beginTransactionNonExclusive();
+        try {
+            try (Cursor c = db.query(TABLE_EVENTS, new String[]{COL_ID},
+                COL_HAS_THUMBNAIL + " = 1 AND (" + range + ")", args, null, null, null)) {
+                while (c.moveToNext()) thumbnails.add(c.getString(0));
             }
-        });
-
-        if (filtered.size() > MAX_EVENTS) {
-            return new ArrayList<>(filtered.subList(0, MAX_EVENTS));
+            deleted = db.delete(TABLE_EVENTS, range, args);
+            db.setTransactionSuccessful();
+            mCount = Math.max(0, mCount - deleted);
+        } finally {
+            db.endTransaction();
         }
-        return filtered;
+        for (String id : thumbnails) deleteThumbnail(id);
+        return deleted;
     }
 
-    private void ensureDirectories() {
-        File base = baseDir();
-        if (!base.exists()) {
-            //noinspection ResultOfMethodCallIgnored
-            base.mkdirs();
-        }
-        File thumbs = thumbnailsDir();
-        if (!thumbs.exists()) {
-            //noinspection ResultOfMethodCallIgnored
-            thumbs.mkdirs();
+    @NonNull
+    private List<AlertEvent> query(@NonNull String selection, @NonNull String[] args, @Nullable String orderBy,
+                                   @Nullable String limit) {
+        SQLiteDatabase db = mHelper.getReadableDatabase();
+        List<AlertEvent> out = new ArrayList<>();
+        try (Cursor c = db.query(TABLE_EVENTS, EVENT_COLUMNS, selection, args, null, null, orderBy, limit)) {
+            while (c.moveToNext()) {
+                RectF box = null;
+                if (!c.isNull(6) && !c.isNull(7) && !c.isNull(8) && !c.isNull(9)) {
+                    box = new RectF(c.getFloat(6), c.getFloat(7), c.getFloat(8), c.getFloat(9));
+                }
+                out.add(new AlertEvent(
+                    c.getString(0),
+                    c.getString(1),
+                    c.getFloat(2),
+                    c.getLong(3),
+                    c.getDouble(4),
+                    c.getDouble(5),
+                    box,
+                    null
+                ));
+            }
         }
+        return out;
     }
 
-    private File baseDir() {
-        return new File(mAppContext.getFilesDir(), DIR_NAME);
-    }
-
-    private File thumbnailsDir() {
-        return new File(baseDir(), THUMBNAILS_DIR);
+    @NonNull
+    private static SQLiteStatement compileInsert(@NonNull SQLiteDatabase db) {
+        return db.compileStatement("INSERT OR REPLACE INTO " + TABLE_EVENTS + " ("
+            + COL_ID + ", " + COL_TYPE + ", " + COL_TYPE_KEY + ", " + COL_CONFIDENCE + ", " + COL_TIMESTAMP + ", "
+            + COL_LATITUDE + ", " + COL_LONGITUDE + ", " + COL_BOX_LEFT + ", " + COL_BOX_TOP + ", "
+            + COL_BOX_RIGHT + ", " + COL_BOX_BOTTOM + ", " + COL_HAS_THUMBNAIL
+            + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
     }
 
-    private File metadataFile() {
-        return new File(baseDir(), METADATA_FILE);
+    private static void bindAndInsert(@NonNull SQLiteStatement insert, @NonNull AlertEvent event,
+                                      boolean hasThumbnail) {
+        insert.clearBindings();
+        insert.bindString(1, event.id);
+        insert.bindString(2, event.type);
+        insert.bindString(3, event.normalizedType());
+        insert.bindDouble(4, event.confidence);
+        insert.bindLong(5, event.timestampMs);
+        insert.bindDouble(6, event.latitude);
+        insert.bindDouble(7, event.longitude);
+        if (event.boundingBox != null) {
+            insert.bindDouble(8, event.boundingBox.left);
+            insert.bindDouble(9, event.boundingBox.top);
+            insert.bindDouble(10, event.boundingBox.right);
+            insert.bindDouble(11, event.boundingBox.bottom);
+        }
+        insert.bindLong(12, hasThumbnail ? 1L : 0L);
+        insert.executeInsert();
     }
 
-    private File thumbnailFile(@NonNull String id) {
-        return new File(thumbnailsDir(), id + ".jpg");
+    /** Copies events.json into the new table, inside onCreate's transaction. */
+    private void importLegacyMetadata(@NonNull SQLiteDatabase db) {
+        List<AlertEvent> events = readLegacyMetadata();
+        if (events.isEmpty()) return;
+        SQLiteStatement insert = compileInsert(db);
+        try {
+            for (AlertEvent event : events) {
+                bindAndInsert(insert, event, thumbnailFile(event.id).isFile());
+            }
+        } finally {
+            insert.close();
+        }
+        Logger.logInfo(LOG_TAG, "Imported " + events.size() + " alert events from " + LEGACY_METADATA_FILE);
     }
 
-    private List<AlertEvent> readMetadata() {
-        File file = metadataFile();
+    @NonNull
+    private List<AlertEvent> readLegacyMetadata() {
+        File file = legacyMetadataFile();
         if (!file.exists()) return new ArrayList<>();
 
         try (FileInputStream fis = new FileInputStream(file);
@@ -186,42 +373,12 @@ public final class AlertEventStore {
                 ));
             }
             return out;
-        } catch (Exception ignored) {
+        } catch (Exception e) {
+            Logger.logWarn(LOG_TAG, "Skipping unreadable " + LEGACY_METADATA_FILE + ": " + e.getMessage());
             return new ArrayList<>();
         }
     }
 
-    private void saveMetadata(List<AlertEvent> metadata) {
-        JSONArray array = new JSONArray();
-        for (AlertEvent event : metadata) {
-            JSONObject obj = new JSONObject();
-            try {
-                obj.put("id", event.id);
-                obj.put("type", event.type);
-                obj.put("confidence", event.confidence);
-                obj.put("timestamp", event.timestampMs);
-                obj.put("latitude", event.latitude);
-                obj.put("longitude", event.longitude);
-                if (event.boundingBox != null) {
-                    JSONObject box = new JSONObject();
-                    box.put("x", event.boundingBox.left);
-                    box.put("y", event.boundingBox.top);
-                    box.put("width", event.boundingBox.width());
-                    box.put("height", event.boundingBox.height());
-                    obj.put("bounding_box", box);
-                }
-                array.put(obj);
-            } catch (Exception ignored) {
-            }
-        }
-
-        try (FileOutputStream fos = new FileOutputStream(metadataFile())) {
-            fos.write(array.toString().getBytes(StandardCharsets.UTF_8));
-            fos.flush();
-        } catch (Exception ignored) {
-        }
-    }
-
     @Nullable
     private RectF parseBoundingBox(@Nullable JSONObject box) {
         if (box == null) return null;
@@ -235,12 +392,37 @@ public final class AlertEventStore {
         return new RectF(x, y, x + width, y + height);
     }
 
+    private void ensureDirectories() {
+        File thumbs = thumbnailsDir();
+        if (!thumbs.exists()) {
+            //noinspection ResultOfMethodCallIgnored
+            thumbs.mkdirs();
+        }
+    }
+
+    private File baseDir() {
+        return new File(mAppContext.getFilesDir(), DIR_NAME);
+    }
+
+    private File thumbnailsDir() {
+        return new File(baseDir(), THUMBNAILS_DIR);
+    }
+
+    private File legacyMetadataFile() {
+        return new File(baseDir(), LEGACY_METADATA_FILE);
+    }
+
+    @NonNull
+    File thumbnailFile(@NonNull String id) {
+        return new File(thumbnailsDir(), id + ".jpg");
+    }
+
     @Nullable
-    private byte[] readThumbnail(@NonNull String id) {
+    byte[] readThumbnail(@NonNull String id) {
         File file = thumbnailFile(id);
         if (!file.exists()) return null;
         try (FileInputStream fis = new FileInputStream(file);
-             ByteArrayOutputStream bos = new ByteArrayOutputStream()) {
+             ByteArrayOutputStream bos = new ByteArrayOutputStream((int) file.length())) {
             byte[] buffer = new byte[4096];
             int n;
             while ((n = fis.read(buffer)) > 0) {
@@ -252,32 +434,58 @@ public final class AlertEventStore {
         }
     }
 
-    private void writeThumbnail(@NonNull String id, @NonNull byte[] data) {
+    /** Writes to a temp file and renames it over the thumbnail, so readers never see half a JPEG. */
+    private boolean writeThumbnail(@NonNull String id, @NonNull byte[] data) {
+        ensureDirectories();
         File file = thumbnailFile(id);
-        try (FileOutputStream fos = new FileOutputStream(file)) {
+        File tmp = new File(thumbnailsDir(), id + ".jpg.tmp");
+        try (FileOutputStream fos = new FileOutputStream(tmp)) {
             fos.write(data);
-            fos.flush();
-        } catch (Exception ignored) {
+            fos.getFD().sync();
+        } catch (Exception e) {
+            //noinspection ResultOfMethodCallIgnored
+            tmp.delete();
+            return false;
         }
+        if (tmp.renameTo(file)) return true;
+        //noinspection ResultOfMethodCallIgnored
+        tmp.delete();
+        return false;
     }
 
-    private void cleanupOrphanedThumbnails(@NonNull Set<String> validIds) {
+    /**
+     * Once per open: deletes temp files and thumbnails without a row, which a crash between the
+     * file write and the insert can leave behind.
+     */
+    private void sweepThumbnails(@NonNull SQLiteDatabase db) {
         File[] files = thumbnailsDir().listFiles();
         if (files == null || files.length == 0) return;
-
-        Set<String> validNames = new HashSet<>();
-        for (String id : validIds) {
-            validNames.add(id + ".jpg");
+        Set<String> kept = new HashSet<>();
+        try (Cursor c = db.query(TABLE_EVENTS, new String[]{COL_ID}, COL_HAS_THUMBNAIL + " = 1",
+            null, null, null, null)) {
+            while (c.moveToNext()) kept.add(c.getString(0) + ".jpg");
         }
-
         for (File file : files) {
-            if (!validNames.contains(file.getName())) {
+            if (!kept.contains(file.getName())) {
                 //noinspection ResultOfMethodCallIgnored
                 file.delete();
             }
         }
     }
 
+    private void deleteThumbnail(@NonNull String id) {
+        File thumbnail = thumbnailFile(id);
+        if (thumbnail.exists()) {
+            //noinspection ResultOfMethodCallIgnored
+            thumbnail.delete();
+        }
+    }
+
+    @NonNull
+    private static String normalizeType(@NonNull String type) {
+        return type.trim().toLowerCase(Locale.US);
+    }
+
     public static final class AlertEvent {
         @NonNull public final String id;
         @NonNull public final String type;
@@ -324,7 +532,7 @@ public final class AlertEventStore {
 
         @NonNull
         public String normalizedType() {
-            return type.trim().toLowerCase(Locale.US);
+            return normalizeType(type);
         }
     }
 }
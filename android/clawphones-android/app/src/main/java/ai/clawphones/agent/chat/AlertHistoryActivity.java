@@ -1,9 +1,9 @@
 package ai.clawphones.agent.chat;
 
 import android.content.Intent;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
 import android.text.TextUtils;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -28,9 +28,20 @@ import java.util.Calendar;
 import java.util.Date;
 import java.util.List;
 import java.util.Locale;
-
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Alert timeline, newest first, filtered by type.
+ *
+ * Events are read a page at a time off the UI thread, metadata only; the next page loads as the
+ * list nears its end. Thumbnails come through an {@link AlertThumbnailLoader}.
+ */
 public final class AlertHistoryActivity extends AppCompatActivity {
 
+    static final int PAGE_SIZE = 50;
+    private static final int PREFETCH_ROWS = 15;
+
     private static final String FILTER_ALL = "all";
     private static final String FILTER_PERSON = "person";
     private static final String FILTER_VEHICLE = "vehicle";
@@ -40,9 +51,16 @@ public final class AlertHistoryActivity extends AppCompatActivity {
         FILTER_ALL, FILTER_PERSON, FILTER_VEHICLE, FILTER_ANIMAL
     };
 
-    private final List<AlertEventStore.AlertEvent> mAllEvents = new ArrayList<>();
+    private final List<AlertEventStore.AlertEvent> mEvents = new ArrayList<>();
+    private final ExecutorService mQueryExecutor = Executors.newSingleThreadExecutor();
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    /** Bumped on every reload, so a page from an earlier filter is dropped. */
+    private int mGeneration;
+    private boolean mLoading;
+    private boolean mHasMore = true;
 
     private AlertEventStore mStore;
+    private AlertThumbnailLoader mThumbnails;
     private RecyclerView mRecycler;
     private TextView mEmptyState;
     private Spinner mFilterSpinner;
@@ -58,6 +76,7 @@ public final class AlertHistoryActivity extends AppCompatActivity {
         setContentView(R.layout.activity_alert_history);
 
         mStore = new AlertEventStore(getApplicationContext());
+        mThumbnails = new AlertThumbnailLoader(mStore);
         mRecycler = findViewById(R.id.alert_history_recycler);
         mEmptyState = findViewById(R.id.alert_history_empty);
         mFilterSpinner = findViewById(R.id.alert_filter_spinner);
@@ -83,37 +102,82 @@ public final class AlertHistoryActivity extends AppCompatActivity {
         mFilterSpinner.setOnItemSelectedListener(new SimpleItemSelectedListener() {
             @Override
             public void onItemSelected() {
-                renderRows();
+                reloadEvents();
             }
         });
 
         mAdapter = new AlertAdapter(this::openDetail);
-        mRecycler.setLayoutManager(new LinearLayoutManager(this));
+        LinearLayoutManager layoutManager = new LinearLayoutManager(this);
+        mRecycler.setLayoutManager(layoutManager);
         mRecycler.setAdapter(mAdapter);
-
-        loadEvents();
+        mRecycler.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+                if (dy <= 0) return;
+                if (layoutManager.findLastVisibleItemPosition() >= mAdapter.getItemCount() - PREFETCH_ROWS) {
+                    loadNextPage();
+                }
+            }
+        });
     }
 
     @Override
     protected void onResume() {
         super.onResume();
-        loadEvents();
+        reloadEvents();
     }
 
-    private void loadEvents() {
-        mAllEvents.clear();
-        mAllEvents.addAll(mStore.loadEvents());
-        renderRows();
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        mQueryExecutor.shutdownNow();
+        mThumbnails.shutdown();
     }
 
-    private void renderRows() {
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        mThumbnails.onTrimMemory(level);
+    }
+
+    /** Re-reads from the newest event, as many as were showing so the list does not jump. */
+    private void reloadEvents() {
+        mGeneration++;
+        mLoading = false;
+        mHasMore = true;
+        int limit = Math.max(PAGE_SIZE, mEvents.size());
+        mEvents.clear();
+        queryPage(Long.MAX_VALUE, null, limit);
+    }
+
+    private void loadNextPage() {
+        if (mLoading || !mHasMore || mEvents.isEmpty()) return;
+        AlertEventStore.AlertEvent last = mEvents.get(mEvents.size() - 1);
+        queryPage(last.timestampMs, last.id, PAGE_SIZE);
+    }
+
+    private void queryPage(long beforeTimestampMs, @Nullable String beforeId, int limit) {
+        mLoading = true;
+        int generation = mGeneration;
         String filter = selectedFilter();
+        String type = FILTER_ALL.equals(filter) ? null : filter;
+        mQueryExecutor.execute(() -> {
+            List<AlertEventStore.AlertEvent> page = mStore.queryEvents(type, beforeTimestampMs, beforeId, limit);
+            mMainHandler.post(() -> {
+                if (generation != mGeneration || isDestroyed()) return;
+                mLoading = false;
+                mHasMore = page.size() == limit;
+                mEvents.addAll(page);
+                renderRows();
+            });
+        });
+    }
+
+    private void renderRows() {
         List<RowItem> rows = new ArrayList<>();
         String currentSection = null;
 
-        for (AlertEventStore.AlertEvent event : mAllEvents) {
-            if (!matchesFilter(event, filter)) continue;
-
+        for (AlertEventStore.AlertEvent event : mEvents) {
             String section = sectionTitle(event.timestampMs);
             if (!TextUtils.equals(currentSection, section)) {
                 rows.add(RowItem.header(section));
@@ -136,11 +200,6 @@ public final class AlertHistoryActivity extends AppCompatActivity {
         return mFilterValues[position];
     }
 
-    private boolean matchesFilter(AlertEventStore.AlertEvent event, String filter) {
-        if (FILTER_ALL.equals(filter)) return true;
-        return TextUtils.equals(event.normalizedType(), filter);
-    }
-
     private String sectionTitle(long timestampMs) {
         Date date = new Date(timestampMs);
         Calendar target = Calendar.getInstance();
@@ -264,6 +323,13 @@ public final class AlertHistoryActivity extends AppCompatActivity {
             ((EventVH) holder).bind(row.event);
         }
 
+        @Override
+        public void onViewRecycled(@NonNull RecyclerView.ViewHolder holder) {
+            if (holder instanceof EventVH) {
+                mThumbnails.cancel(((EventVH) holder).thumbnail);
+            }
+        }
+
         @Override
         public int getItemCount() {
             return mRows.size();
@@ -301,20 +367,10 @@ public final class AlertHistoryActivity extends AppCompatActivity {
             void bind(@Nullable AlertEventStore.AlertEvent event) {
                 if (event == null) return;
 
-                if (event.thumbnailData != null && event.thumbnailData.length > 0) {
-                    Bitmap bitmap = BitmapFactory.decodeByteArray(
-                        event.thumbnailData,
-                        0,
-                        event.thumbnailData.length
-                    );
-                    if (bitmap != null) {
-                        thumbnail.setImageBitmap(bitmap);
-                    } else {
-                        thumbnail.setImageResource(android.R.drawable.ic_menu_report_image);
-                    }
-                } else {
-                    thumbnail.setImageResource(android.R.drawable.ic_menu_report_image);
-                }
+                // The layout fixes the thumbnail's size, so it is known before the first layout pass.
+                ViewGroup.LayoutParams size = thumbnail.getLayoutParams();
+                mThumbnails.loadInto(thumbnail, event.id, size.width, size.height,
+                    android.R.drawable.ic_menu_report_image);
 
                 typeIcon.setImageResource(typeIconRes(event));
                 typeText.setText(capitalizeType(event.normalizedType()));
@@ -0,0 +1,308 @@
+package ai.clawphones.agent.chat;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.termux.shared.logger.Logger;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Bounded alert history as an append-only log of JSON lines, one per alert, with each thumbnail
+ * in its own file.
+ *
+ * An append writes the thumbnail and one line and never rewrites earlier alerts. Reads come from
+ * an in-memory index of the newest {@code capacity} records, built from the log on first use.
+ * Once the log holds twice that many lines it is compacted: the index is written to a temp file,
+ * synced and renamed over the log. Appends are not synced; a crash loses at most the last alert,
+ * and a torn last line is dropped on the next open. Thread-safe.
+ */
+final class AlertHistoryLog {
+
+    private static final String LOG_TAG = "AlertHistoryLog";
+
+    private static final String LOG_FILE = "history.log";
+    private static final String THUMBNAILS_DIR = "thumbnails";
+    private static final String THUMBNAIL_SUFFIX = ".jpg";
+    private static final int COMPACT_FACTOR = 2;
+
+    /** One logged alert; the thumbnail, if any, is read separately. */
+    static final class Record {
+        final long seq;
+        @NonNull final String type;
+        final float confidence;
+        final long timestamp;
+        final boolean hasThumbnail;
+
+        Record(long seq, @NonNull String type, float confidence, long timestamp, boolean hasThumbnail) {
+            this.seq = seq;
+            this.type = type;
+            this.confidence = confidence;
+            this.timestamp = timestamp;
+            this.hasThumbnail = hasThumbnail;
+        }
+    }
+
+    private final File dir;
+    private final File logFile;
+    private final File thumbnailsDir;
+    private final int capacity;
+
+    /** Newest last. Null until the log is first read. */
+    @Nullable private ArrayDeque<Record> tail;
+    @Nullable private FileOutputStream out;
+    private long nextSeq = 1;
+    private int logLines;
+
+    AlertHistoryLog(@NonNull File dir, int capacity) {
+        this.dir = dir;
+        this.logFile = new File(dir, LOG_FILE);
+        this.thumbnailsDir = new File(dir, THUMBNAILS_DIR);
+        this.capacity = capacity;
+    }
+
+    /** Appends one alert; the oldest past capacity is dropped with its thumbnail. */
+    synchronized void append(@NonNull AlertManager.AlertEvent event) throws IOException {
+        ArrayDeque<Record> records = open();
+        Record record = newRecord(event);
+        try {
+            if (out == null) out = new FileOutputStream(logFile, true);
+            // One write per line, so a crash leaves at most this line torn.
+            out.write(encode(record));
+        } catch (IOException e) {
+            if (record.hasThumbnail) deleteFile(thumbnailFile(record.seq));
+            // A partial line would run into the next append; rewrite the log without it.
+            compact(records);
+            throw e;
+        }
+        logLines++;
+        records.addLast(record);
+        trim(records);
+        if (logLines >= capacity * COMPACT_FACTOR) compact(records);
+    }
+
+    /**
+     * Fills an empty history with events, oldest first, in one atomic write. Returns false,
+     * writing nothing, if the history already has alerts.
+     */
+    synchronized boolean importIfEmpty(@NonNull List<AlertManager.AlertEvent> events) throws IOException {
+        ArrayDeque<Record> records = open();
+        if (!records.isEmpty()) return false;
+        for (AlertManager.AlertEvent event : events) records.addLast(newRecord(event));
+        trim(records);
+        try {
+            compact(records);
+        } catch (IOException e) {
+            while (!records.isEmpty()) {
+                Record record = records.removeFirst();
+                if (record.hasThumbnail) deleteFile(thumbnailFile(record.seq));
+            }
+            throw e;
+        }
+        return true;
+    }
+
+    /** The newest records, newest first. */
+    @NonNull
+    synchronized List<Record> newestFirst() throws IOException {
+        ArrayDeque<Record> records = open();
+        List<Record> result = new ArrayList<>(records.size());
+        Iterator<Record> it = records.descendingIterator();
+        while (it.hasNext()) result.add(it.next());
+        return result;
+    }
+
+    @Nullable
+    byte[] readThumbnail(@NonNull Record record) {
+        if (!record.hasThumbnail) return null;
+        try {
+            byte[] data = readFile(thumbnailFile(record.seq));
+            return data.length == 0 ? null : data;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /** Lines in the log file, live or not yet compacted away. */
+    synchronized int logLines() throws IOException {
+        open();
+        return logLines;
+    }
+
+    synchronized void close() {
+        closeQuietly(out);
+        out = null;
+    }
+
+    @NonNull
+    private ArrayDeque<Record> open() throws IOException {
+        if (tail != null) return tail;
+        if (!thumbnailsDir.isDirectory() && !thumbnailsDir.mkdirs()) {
+            throw new IOException("Cannot create " + thumbnailsDir);
+        }
+        ArrayDeque<Record> records = new ArrayDeque<>();
+        boolean damaged = false;
+        int lines = 0;
+        if (logFile.isFile()) {
+            byte[] data = readFile(logFile);
+            int start = 0;
+            while (start < data.length) {
+                int end = start;
+                while (end < data.length && data[end] != '\n') end++;
+                // No newline: the last append was cut short.
+                Record record = end < data.length ? decode(data, start, end) : null;
+                if (record == null) {
+                    damaged = true;
+                } else {
+                    lines++;
+                    records.addLast(record);
+                    nextSeq = Math.max(nextSeq, record.seq + 1);
+                    if (records.size() > capacity) records.removeFirst();
+                }
+                start = end + 1;
+            }
+        }
+        tail = records;
+        logLines = lines;
+        sweepThumbnails(records);
+        if (damaged) {
+            Logger.logWarn(LOG_TAG, "Dropped damaged lines from " + logFile);
+            compact(records);
+        }
+        return records;
+    }
+
+    @NonNull
+    private Record newRecord(@NonNull AlertManager.AlertEvent event) {
+        long seq = nextSeq++;
+        boolean hasThumbnail = event.thumbnail != null && event.thumbnail.length > 0
+            && writeThumbnail(seq, event.thumbnail);
+        return new Record(seq, event.type, event.confidence, event.timestamp, hasThumbnail);
+    }
+
+    private void trim(@NonNull ArrayDeque<Record> records) {
+        while (records.size() > capacity) {
+            Record dropped = records.removeFirst();
+            if (dropped.hasThumbnail) deleteFile(thumbnailFile(dropped.seq));
+        }
+    }
+
+    /** Rewrites the log as just the live records. */
+    private void compact(@NonNull ArrayDeque<Record> records) throws IOException {
+        File tmp = new File(dir, LOG_FILE + ".tmp");
+        try (FileOutputStream fos = new FileOutputStream(tmp)) {
+            for (Record record : records) fos.write(encode(record));
+            fos.getFD().sync();
+        } catch (IOException e) {
+            deleteFile(tmp);
+            throw e;
+        }
+        closeQuietly(out);
+        out = null;
+        if (!tmp.renameTo(logFile)) {
+            deleteFile(tmp);
+            throw new IOException("Cannot replace " + logFile);
+        }
+        logLines = records.size();
+    }
+
+    private boolean writeThumbnail(long seq, @NonNull byte[] data) {
+        try (FileOutputStream fos = new FileOutputStream(thumbnailFile(seq))) {
+            fos.write(data);
+            return true;
+        } catch (IOException e) {
+            Logger.logWarn(LOG_TAG, "Thumbnail write failed: " + e.getMessage());
+            deleteFile(thumbnailFile(seq));
+            return false;
+        }
+    }
+
+    /** Deletes thumbnails no live record names, left by a crash or an interrupted trim. */
+    private void sweepThumbnails(@NonNull ArrayDeque<Record> records) {
+        File[] files = thumbnailsDir.listFiles();
+        if (files == null || files.length == 0) return;
+        Set<String> live = new HashSet<>();
+        for (Record record : records) {
+            if (record.hasThumbnail) live.add(record.seq + THUMBNAIL_SUFFIX);
+        }
+        for (File file : files) {
+            if (!live.contains(file.getName())) deleteFile(file);
+        }
+    }
+
+    @NonNull
+    private File thumbnailFile(long seq) {
+        return new File(thumbnailsDir, seq + THUMBNAIL_SUFFIX);
+    }
+
+    @NonNull
+    private static byte[] encode(@NonNull Record record) throws IOException {
+        try {
+            JSONObject obj = new JSONObject()
+                .put("seq", record.seq)
+                .put("type", record.type)
+                .put("confidence", record.confidence)
+                .put("timestamp", record.timestamp);
+            if (record.hasThumbnail) obj.put("thumbnail", true);
+            return (obj.toString() + "\n").getBytes(StandardCharsets.UTF_8);
+        } catch (JSONException e) {
+            throw new IOException("Cannot encode alert", e);
+        }
+    }
+
+    @Nullable
+    private static Record decode(@NonNull byte[] data, int start, int end) {
+        try {
+            JSONObject obj = new JSONObject(new String(data, start, end - start, StandardCharsets.UTF_8));
+            long seq = obj.getLong("seq");
+            String type = obj.getString("type");
+            if (seq <= 0 || type.isEmpty()) return null;
+            return new Record(seq, type, (float) obj.optDouble("confidence", 0d),
+                obj.optLong("timestamp", 0L), obj.optBoolean("thumbnail", false));
+        } catch (JSONException e) {
+            return null;
+        }
+    }
+
+    @NonNull
+    private static byte[] readFile(@NonNull File file) throws IOException {
+        try (FileInputStream fis = new FileInputStream(file);
+             ByteArrayOutputStream bos = new ByteArrayOutputStream((int) file.length())) {
+            byte[] buffer = new byte[4096];
+            int n;
+            while ((n = fis.read(buffer)) > 0) {
+                bos.write(buffer, 0, n);
+            }
+            return bos.toByteArray();
+        }
+    }
+
+    private static void deleteFile(@NonNull File file) {
+        if (file.exists() && !file.delete()) {
+            Logger.logDebug(LOG_TAG, "Could not delete " + file);
+        }
+    }
+
+    private static void closeQuietly(@Nullable FileOutputStream stream) {
+        if (stream == null) return;
+        try {
+            stream.close();
+        } catch (IOException e) {
+            // Ignore
+        }
+    }
+}
@@ -26,22 +26,24 @@ import org.json.JSONArray;
 import org.json.JSONObject;
 
 import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.ArrayList;
 import java.util.Date;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
-import java.util.Map;
+import java.util.TimeZone;
 
 /**
  * Smart local alerts for ClawVision.
  *
- * Rules:
- * - Debounce same type within 30 seconds
+ * Rules, applied by an {@link AlertPolicyEngine}:
+ * - Debounce same type in the same part of the frame within 30 seconds
+ * - At most two alerts of a type back to back, then one per 30 seconds
  * - Quiet hours support
  * - Importance filter: person > vehicle > animal > package
- * - Keep latest 100 history records in SharedPreferences (JSON array)
+ * - Keep latest 100 history records in an append-only {@link AlertHistoryLog}
  */
 public final class AlertManager {
 
@@ -51,6 +53,7 @@ public final class AlertManager {
     private static final String CHANNEL_NAME = "ClawVision Alerts";
 
     private static final String PREFS_NAME = "clawvision_alert_manager";
+    /** Pre-log history: one JSON array with base64 thumbnails, moved into the log on first use. */
     private static final String PREF_HISTORY_JSON = "alert_history_json";
     private static final String PREF_QUIET_START_MIN = "quiet_start_min";
     private static final String PREF_QUIET_END_MIN = "quiet_end_min";
@@ -58,8 +61,11 @@ public final class AlertManager {
     private static final String PREF_MIN_CONFIDENCE = "min_confidence";
     private static final String PREF_LAST_SENT_PREFIX = "last_sent_";
 
-    private static final int MAX_HISTORY = 100;
+    private static final String HISTORY_DIR = "clawvision_alert_history";
+    static final int MAX_HISTORY = 100;
     private static final long DEBOUNCE_MS = 30_000L;
+    private static final int RATE_BURST = 2;
+    private static final long RATE_INTERVAL_MS = 30_000L;
 
     private static final String TYPE_PERSON = "person";
     private static final String TYPE_VEHICLE = "vehicle";
@@ -69,7 +75,10 @@ public final class AlertManager {
     private final Context appContext;
     private final SharedPreferences prefs;
     private final NotificationManager notificationManager;
-    private final Map<String, Long> lastSentCache = new HashMap<>();
+    private final AlertPolicyEngine policy =
+        new AlertPolicyEngine(DEBOUNCE_MS, RATE_BURST, RATE_INTERVAL_MS, TimeZone.getDefault());
+    private final AlertHistoryLog history;
+    private boolean historyMigrated;
 
     public static final class AlertEvent {
         public final String type;
@@ -89,10 +98,12 @@ public final class AlertManager {
         this.appContext = context.getApplicationContext();
         this.prefs = appContext.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
         this.notificationManager = (NotificationManager) appContext.getSystemService(Context.NOTIFICATION_SERVICE);
+        this.history = new AlertHistoryLog(new File(appContext.getFilesDir(), HISTORY_DIR), MAX_HISTORY);
+        loadPolicy();
         createNotificationChannelIfNeeded();
     }
 
-    // 防抖: 同类事件 30 秒内只推送一次
+    // 防抖: 同类事件在画面同一区域 30 秒内只推送一次, 每类再按令牌桶限流
     // 静默时段: 用户可设置免打扰时间段
     // 重要度过滤: person > vehicle > animal > package
     public void processDetection(@NonNull VisionDetector.Detection detection, @Nullable Bitmap frame) {
@@ -105,8 +116,10 @@ public final class AlertManager {
         if (detection.confidence < getMinimumConfidence()) return;
 
         long now = System.currentTimeMillis();
-        if (isInQuietHours(now)) return;
-        if (isDebounced(type, now)) return;
+        int zone = frame == null
+            ? AlertPolicyEngine.ZONE_UNKNOWN
+            : AlertPolicyEngine.zoneOf(detection.boundingBox, frame.getWidth(), frame.getHeight());
+        if (policy.evaluate(type, zone, now) != AlertPolicyEngine.Decision.NOTIFY) return;
 
         byte[] thumbnail = buildThumbnailJpeg(frame);
         AlertEvent event = new AlertEvent(type, detection.confidence, now, thumbnail);
@@ -168,6 +181,7 @@ public final class AlertManager {
             .putInt(PREF_QUIET_START_MIN, start)
             .putInt(PREF_QUIET_END_MIN, end)
             .apply();
+        policy.setQuietHours(start, end, System.currentTimeMillis());
     }
 
     public void clearQuietHours() {
@@ -175,6 +189,7 @@ public final class AlertManager {
             .remove(PREF_QUIET_START_MIN)
             .remove(PREF_QUIET_END_MIN)
             .apply();
+        policy.clearQuietHours();
     }
 
     public void setMinimumAlertType(@NonNull String type) {
@@ -188,20 +203,18 @@ public final class AlertManager {
         prefs.edit().putFloat(PREF_MIN_CONFIDENCE, clamp(confidence, 0f, 1f)).apply();
     }
 
+    /** Newest first. */
     @NonNull
     public List<AlertEvent> getHistory() {
-        JSONArray array = loadHistoryArray();
         List<AlertEvent> out = new ArrayList<>();
-        for (int i = 0; i < array.length(); i++) {
-            JSONObject item = array.optJSONObject(i);
-            if (item == null) continue;
-            String type = normalizeType(item.optString("type", ""));
-            if (TextUtils.isEmpty(type)) continue;
-
-            float confidence = (float) item.optDouble("confidence", 0f);
-            long timestamp = item.optLong("timestamp", 0L);
-            byte[] thumbnail = decodeBase64(item.optString("thumbnail_base64", ""));
-            out.add(new AlertEvent(type, confidence, timestamp, thumbnail));
+        try {
+            migrateLegacyHistory();
+            for (AlertHistoryLog.Record record : history.newestFirst()) {
+                out.add(new AlertEvent(record.type, record.confidence, record.timestamp,
+                    history.readThumbnail(record)));
+            }
+        } catch (IOException e) {
+            Logger.logWarn(LOG_TAG, "read history failed: " + e.getMessage());
         }
         return out;
     }
@@ -239,43 +252,21 @@ public final class AlertManager {
         return prefs.getFloat(PREF_MIN_CONFIDENCE, 0.60f);
     }
 
-    private boolean isDebounced(@NonNull String type, long now) {
-        Long last = lastSentCache.get(type);
-        if (last == null) {
-            long persisted = prefs.getLong(PREF_LAST_SENT_PREFIX + type, 0L);
-            last = persisted <= 0L ? null : persisted;
-            if (last != null) lastSentCache.put(type, last);
+    /** Quiet hours and each type's last alert, so debounce holds across restarts. */
+    private void loadPolicy() {
+        int start = prefs.getInt(PREF_QUIET_START_MIN, -1);
+        int end = prefs.getInt(PREF_QUIET_END_MIN, -1);
+        if (start >= 0 && end >= 0) policy.setQuietHours(start, end, System.currentTimeMillis());
+        for (String type : new String[]{TYPE_PERSON, TYPE_VEHICLE, TYPE_ANIMAL, TYPE_PACKAGE}) {
+            long lastSent = prefs.getLong(PREF_LAST_SENT_PREFIX + type, 0L);
+            if (lastSent > 0L) policy.restoreLastSent(type, lastSent);
         }
-
-        return last != null && now - last < DEBOUNCE_MS;
     }
 
     private void markLastSent(@NonNull String type, long now) {
-        lastSentCache.put(type, now);
         prefs.edit().putLong(PREF_LAST_SENT_PREFIX + type, now).apply();
     }
 
-    private boolean isInQuietHours(long timestamp) {
-        if (!prefs.contains(PREF_QUIET_START_MIN) || !prefs.contains(PREF_QUIET_END_MIN)) {
-            return false;
-        }
-
-        int start = prefs.getInt(PREF_QUIET_START_MIN, -1);
-        int end = prefs.getInt(PREF_QUIET_END_MIN, -1);
-        if (start < 0 || end < 0) return false;
-
-        Date now = new Date(timestamp);
-        @SuppressWarnings("SimpleDateFormat")
-        SimpleDateFormat formatter = new SimpleDateFormat("H:mm", Locale.US);
-        String[] parts = formatter.format(now).split(":");
-        if (parts.length != 2) return false;
-
-        int current = safeInt(parts[0], 0) * 60 + safeInt(parts[1], 0);
-        if (start == end) return true;
-        if (start < end) return current >= start && current < end;
-        return current >= start || current < end;
-    }
-
     private int buildNotificationId(@NonNull AlertEvent event) {
         int seed = (event.type + "_" + event.timestamp).hashCode();
         return seed == Integer.MIN_VALUE ? 1 : Math.abs(seed);
@@ -283,36 +274,40 @@ public final class AlertManager {
 
     private void appendHistory(@NonNull AlertEvent event) {
         try {
-            JSONArray history = loadHistoryArray();
-            JSONArray merged = new JSONArray();
-            JSONObject item = new JSONObject();
-            item.put("type", event.type);
-            item.put("confidence", event.confidence);
-            item.put("timestamp", event.timestamp);
-            item.put("thumbnail_base64", encodeBase64(event.thumbnail));
-
-            merged.put(item);
-            for (int i = 0; i < history.length() && merged.length() < MAX_HISTORY; i++) {
-                JSONObject existing = history.optJSONObject(i);
-                if (existing != null) {
-                    merged.put(existing);
-                }
-            }
-
-            prefs.edit().putString(PREF_HISTORY_JSON, merged.toString()).apply();
-        } catch (Exception e) {
+            migrateLegacyHistory();
+            history.append(event);
+        } catch (IOException e) {
             Logger.logWarn(LOG_TAG, "append history failed: " + e.getMessage());
         }
     }
 
-    @NonNull
-    private JSONArray loadHistoryArray() {
-        String raw = prefs.getString(PREF_HISTORY_JSON, "[]");
-        try {
-            return new JSONArray(raw);
-        } catch (Exception e) {
-            return new JSONArray();
+    /**
+     * Moves a history kept in preferences into the log once, then drops the preference so its
+     * thumbnails no longer load with the preferences file.
+     */
+    private synchronized void migrateLegacyHistory() throws IOException {
+        if (historyMigrated) return;
+        String raw = prefs.getString(PREF_HISTORY_JSON, null);
+        if (raw != null) {
+            List<AlertEvent> oldestFirst = new ArrayList<>();
+            try {
+                JSONArray array = new JSONArray(raw);
+                for (int i = Math.min(array.length(), MAX_HISTORY) - 1; i >= 0; i--) {
+                    JSONObject item = array.optJSONObject(i);
+                    if (item == null) continue;
+                    String type = normalizeType(item.optString("type", ""));
+                    if (TextUtils.isEmpty(type)) continue;
+                    oldestFirst.add(new AlertEvent(type, (float) item.optDouble("confidence", 0f),
+                        item.optLong("timestamp", 0L), decodeBase64(item.optString("thumbnail_base64", ""))));
+                }
+            } catch (Exception e) {
+                Logger.logWarn(LOG_TAG, "legacy history unreadable: " + e.getMessage());
+            }
+            // A log that already has alerts was migrated before the preference could be removed.
+            history.importIfEmpty(oldestFirst);
+            prefs.edit().remove(PREF_HISTORY_JSON).apply();
         }
+        historyMigrated = true;
     }
 
     @Nullable
@@ -402,21 +397,6 @@ public final class AlertManager {
         return Math.max(min, Math.min(max, value));
     }
 
-    private static int safeInt(@Nullable String raw, int fallback) {
-        if (TextUtils.isEmpty(raw)) return fallback;
-        try {
-            return Integer.parseInt(raw);
-        } catch (Exception ignored) {
-            return fallback;
-        }
-    }
-
-    @NonNull
-    private static String encodeBase64(@Nullable byte[] data) {
-        if (data == null || data.length == 0) return "";
-        return android.util.Base64.encodeToString(data, android.util.Base64.NO_WRAP);
-    }
-
     @Nullable
     private static byte[] decodeBase64(@Nullable String raw) {
         if (TextUtils.isEmpty(raw)) return null;
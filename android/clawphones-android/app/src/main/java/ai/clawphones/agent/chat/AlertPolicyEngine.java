@@ -0,0 +1,201 @@
+package ai.clawphones.agent.chat;
+
+import android.graphics.Rect;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.Calendar;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Decides whether a detection becomes an alert: quiet hours, per-type-and-zone debounce, and a
+ * per-type token bucket.
+ *
+ * Quiet hours are turned into absolute boundaries for the current local day when they are set
+ * and again at each day rollover, so an event costs two comparisons, not a date format. Debounce
+ * and bucket state are atomics, one set per type; {@link #evaluate} is lock-free and allocates
+ * nothing once a type has been seen. Zones are the cells of a 3x3 grid over the frame.
+ *
+ * The bucket is kept as its theoretical arrival time (GCRA), so taking a token is one CAS.
+ */
+final class AlertPolicyEngine {
+
+    enum Decision { NOTIFY, QUIET_HOURS, DEBOUNCED, RATE_LIMITED }
+
+    private static final int GRID = 3;
+    /** Detections without a frame share one zone. */
+    static final int ZONE_UNKNOWN = GRID * GRID;
+    static final int ZONE_COUNT = GRID * GRID + 1;
+
+    private static final int MINUTES_PER_DAY = 24 * 60;
+
+    /** Quiet-hour boundaries for one local day, as [start, end) pairs; an empty pair is start == end. */
+    private static final class QuietWindow {
+        final int startMinute;
+        final int endMinute;
+        final long dayStartMs;
+        final long dayEndMs;
+        final long firstStartMs;
+        final long firstEndMs;
+        final long secondStartMs;
+        final long secondEndMs;
+
+        QuietWindow(int startMinute, int endMinute, long dayStartMs, long dayEndMs,
+                    long firstStartMs, long firstEndMs, long secondStartMs, long secondEndMs) {
+            this.startMinute = startMinute;
+            this.endMinute = endMinute;
+            this.dayStartMs = dayStartMs;
+            this.dayEndMs = dayEndMs;
+            this.firstStartMs = firstStartMs;
+            this.firstEndMs = firstEndMs;
+            this.secondStartMs = secondStartMs;
+            this.secondEndMs = secondEndMs;
+        }
+
+        boolean covers(long nowMs) {
+            return (nowMs >= firstStartMs && nowMs < firstEndMs) || (nowMs >= secondStartMs && nowMs < secondEndMs);
+        }
+    }
+
+    private static final class TypeState {
+        final AtomicLongArray zoneLastSentMs = new AtomicLongArray(ZONE_COUNT);
+        /** When the bucket would next be full with one more token taken; GCRA's TAT. */
+        final AtomicLong theoreticalArrivalMs = new AtomicLong(Long.MIN_VALUE / 2);
+
+        TypeState() {
+            for (int i = 0; i < ZONE_COUNT; i++) zoneLastSentMs.set(i, Long.MIN_VALUE / 2);
+        }
+    }
+
+    private final long debounceMs;
+    private final long tokenIntervalMs;
+    private final long burstToleranceMs;
+    private final TimeZone timeZone;
+    private final ConcurrentHashMap<String, TypeState> types = new ConcurrentHashMap<>();
+    /** Null without quiet hours. */
+    private final AtomicReference<QuietWindow> quietWindow = new AtomicReference<>();
+
+    /**
+     * @param debounceMs      minimum gap between alerts of one type in one zone
+     * @param burst           alerts of one type allowed back to back
+     * @param tokenIntervalMs one token returns to a type's bucket this often
+     */
+    AlertPolicyEngine(long debounceMs, int burst, long tokenIntervalMs, @NonNull TimeZone timeZone) {
+        this.debounceMs = debounceMs;
+        this.tokenIntervalMs = tokenIntervalMs;
+        this.burstToleranceMs = tokenIntervalMs * Math.max(0, burst - 1);
+        this.timeZone = (TimeZone) timeZone.clone();
+    }
+
+    /** Quiet from startMinute to endMinute of each local day, wrapping midnight; equal means all day. */
+    void setQuietHours(int startMinute, int endMinute, long nowMs) {
+        quietWindow.set(windowFor(Math.floorMod(startMinute, MINUTES_PER_DAY),
+            Math.floorMod(endMinute, MINUTES_PER_DAY), nowMs));
+    }
+
+    void clearQuietHours() {
+        quietWindow.set(null);
+    }
+
+    boolean isQuietAt(long nowMs) {
+        QuietWindow window = quietWindow.get();
+        if (window == null) return false;
+        if (nowMs < window.dayStartMs || nowMs >= window.dayEndMs) {
+            QuietWindow next = windowFor(window.startMinute, window.endMinute, nowMs);
+            // Lost to a settings change: that window wins, and is checked on the next event.
+            if (!quietWindow.compareAndSet(window, next)) return isQuietAt(nowMs);
+            window = next;
+        }
+        return window.covers(nowMs);
+    }
+
+    /** Seeds a type as if it alerted at sentMs in every zone, for debounce across restarts. */
+    void restoreLastSent(@NonNull String type, long sentMs) {
+        TypeState state = stateFor(type);
+        for (int i = 0; i < ZONE_COUNT; i++) state.zoneLastSentMs.set(i, sentMs);
+        state.theoreticalArrivalMs.set(sentMs + tokenIntervalMs);
+    }
+
+    /** Decides, and on {@link Decision#NOTIFY} records the alert. Safe from any thread. */
+    @NonNull
+    Decision evaluate(@NonNull String type, int zone, long nowMs) {
+        if (isQuietAt(nowMs)) return Decision.QUIET_HOURS;
+        TypeState state = stateFor(type);
+        int slot = zone >= 0 && zone < ZONE_COUNT ? zone : ZONE_UNKNOWN;
+
+        long lastSentMs = state.zoneLastSentMs.get(slot);
+        if (nowMs - lastSentMs < debounceMs) return Decision.DEBOUNCED;
+        if (!takeToken(state.theoreticalArrivalMs, nowMs)) return Decision.RATE_LIMITED;
+        if (!state.zoneLastSentMs.compareAndSet(slot, lastSentMs, nowMs)) {
+            // Another thread alerted for this zone first; give the token back.
+            state.theoreticalArrivalMs.addAndGet(-tokenIntervalMs);
+            return Decision.DEBOUNCED;
+        }
+        return Decision.NOTIFY;
+    }
+
+    /** The grid cell holding box's centre, or {@link #ZONE_UNKNOWN} without frame bounds. */
+    static int zoneOf(@Nullable Rect box, int frameWidth, int frameHeight) {
+        if (box == null || frameWidth <= 0 || frameHeight <= 0) return ZONE_UNKNOWN;
+        int column = clampCell(box.centerX() * GRID / frameWidth);
+        int row = clampCell(box.centerY() * GRID / frameHeight);
+        return row * GRID + column;
+    }
+
+    private boolean takeToken(@NonNull AtomicLong theoreticalArrivalMs, long nowMs) {
+        while (true) {
+            long tat = theoreticalArrivalMs.get();
+            long start = Math.max(tat, nowMs);
+            if (start - nowMs > burstToleranceMs) return false;
+            if (theoreticalArrivalMs.compareAndSet(tat, start + tokenIntervalMs)) return true;
+        }
+    }
+
+    @NonNull
+    private TypeState stateFor(@NonNull String type) {
+        TypeState state = types.get(type);
+        if (state != null) return state;
+        return types.computeIfAbsent(type, key -> new TypeState());
+    }
+
+    @NonNull
+    private QuietWindow windowFor(int startMinute, int endMinute, long nowMs) {
+        Calendar calendar = Calendar.getInstance(timeZone);
+        calendar.setTimeInMillis(nowMs);
+        calendar.set(Calendar.HOUR_OF_DAY, 0);
+        calendar.set(Calendar.MINUTE, 0);
+        calendar.set(Calendar.SECOND, 0);
+        calendar.set(Calendar.MILLISECOND, 0);
+        long dayStartMs = calendar.getTimeInMillis();
+        long startMs = atMinute(calendar, startMinute);
+        long endMs = atMinute(calendar, endMinute);
+        calendar.setTimeInMillis(dayStartMs);
+        calendar.add(Calendar.DAY_OF_MONTH, 1);
+        long dayEndMs = calendar.getTimeInMillis();
+
+        if (startMinute == endMinute) {
+            return new QuietWindow(startMinute, endMinute, dayStartMs, dayEndMs, dayStartMs, dayEndMs, 0L, 0L);
+        }
+        if (startMinute < endMinute) {
+            return new QuietWindow(startMinute, endMinute, dayStartMs, dayEndMs, startMs, endMs, 0L, 0L);
+        }
+        // Wraps midnight: the morning tail of last night's window, then tonight's.
+        return new QuietWindow(startMinute, endMinute, dayStartMs, dayEndMs, dayStartMs, endMs, startMs, dayEndMs);
+    }
+
+    /** Wall-clock minute of the calendar's day; DST shifts land where the platform puts them. */
+    private static long atMinute(@NonNull Calendar day, int minuteOfDay) {
+        day.set(Calendar.HOUR_OF_DAY, minuteOfDay / 60);
+        day.set(Calendar.MINUTE, minuteOfDay % 60);
+        return day.getTimeInMillis();
+    }
+
+    private static int clampCell(int cell) {
+        return Math.max(0, Math.min(GRID - 1, cell));
+    }
+}
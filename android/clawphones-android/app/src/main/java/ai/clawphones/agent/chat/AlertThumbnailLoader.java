@@ -0,0 +1,188 @@
+package ai.clawphones.agent.chat;
+
+import android.content.ComponentCallbacks2;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.LruCache;
+import android.widget.ImageView;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.util.Locale;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Loads alert thumbnails into list rows off the UI thread.
+ *
+ * Each thumbnail is decoded straight from its file at the power-of-two sample size that still
+ * covers the view, and kept in an LRU cache sized in bytes. The view's tag names the thumbnail it
+ * wants: a recycled row re-tagged or {@link #cancel}led drops its queued decode, and a late result
+ * never lands on a row that has moved on. Call from the main thread.
+ */
+final class AlertThumbnailLoader {
+
+    private static final int THREAD_POOL_SIZE = 2;
+    static final int CACHE_BYTES = 8 * 1024 * 1024;
+    private static final AtomicInteger THREAD_IDS = new AtomicInteger();
+
+    /** Counters since creation. */
+    static final class Stats {
+        long requests;
+        long memoryHits;
+        long decodes;
+        long missing;
+        long cancelled;
+        long decodedBytes;
+
+        @NonNull
+        @Override
+        public String toString() {
+            return String.format(Locale.US,
+                "requests=%d hits=%d decodes=%d missing=%d cancelled=%d decoded=%d KB",
+                requests, memoryHits, decodes, missing, cancelled, decodedBytes / 1024L);
+        }
+    }
+
+    private final AlertEventStore store;
+    private final int cacheBytes;
+    private final LruCache<String, Bitmap> bitmapCache;
+    private final ExecutorService decodeExecutor;
+    private final Handler uiHandler = new Handler(Looper.getMainLooper());
+    private final WeakHashMap<ImageView, Future<?>> pending = new WeakHashMap<>();
+    private final Stats stats = new Stats();
+
+    AlertThumbnailLoader(@NonNull AlertEventStore store) {
+        this(store, CACHE_BYTES, Executors.newFixedThreadPool(THREAD_POOL_SIZE, r -> {
+            Thread thread = new Thread(r, "alert-thumbs-" + THREAD_IDS.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }));
+    }
+
+    AlertThumbnailLoader(@NonNull AlertEventStore store, int cacheBytes, @NonNull ExecutorService decodeExecutor) {
+        this.store = store;
+        this.cacheBytes = cacheBytes;
+        this.decodeExecutor = decodeExecutor;
+        this.bitmapCache = new LruCache<String, Bitmap>(cacheBytes) {
+            @Override
+            protected int sizeOf(@NonNull String key, @NonNull Bitmap value) {
+                return value.getAllocationByteCount();
+            }
+        };
+    }
+
+    /**
+     * Shows the event's thumbnail in target, sized for widthPx by heightPx: at once from the
+     * cache, otherwise the placeholder until the decode finishes.
+     */
+    void loadInto(@NonNull ImageView target, @NonNull String eventId, int widthPx, int heightPx,
+                  int placeholderRes) {
+        cancel(target);
+        String cacheKey = eventId + "@" + widthPx + "x" + heightPx;
+        stats.requests++;
+        Bitmap cached = bitmapCache.get(cacheKey);
+        if (cached != null && !cached.isRecycled()) {
+            stats.memoryHits++;
+            target.setImageBitmap(cached);
+            return;
+        }
+
+        target.setImageResource(placeholderRes);
+        target.setTag(cacheKey);
+        Future<?> future = decodeExecutor.submit(() -> {
+            Bitmap decoded = decode(store.thumbnailFile(eventId), widthPx, heightPx);
+            uiHandler.post(() -> deliver(target, cacheKey, decoded));
+        });
+        pending.put(target, future);
+    }
+
+    /** Forgets target's request; a decode not yet started is skipped. */
+    void cancel(@NonNull ImageView target) {
+        Object tag = target.getTag();
+        target.setTag(null);
+        Future<?> future = pending.remove(target);
+        if (future != null && !future.isDone()) {
+            future.cancel(false);
+            if (tag != null) stats.cancelled++;
+        }
+    }
+
+    @NonNull
+    Stats stats() {
+        Stats copy = new Stats();
+        copy.requests = stats.requests;
+        copy.memoryHits = stats.memoryHits;
+        copy.decodes = stats.decodes;
+        copy.missing = stats.missing;
+        copy.cancelled = stats.cancelled;
+        copy.decodedBytes = stats.decodedBytes;
+        return copy;
+    }
+
+    int cachedBytes() {
+        return bitmapCache.size();
+    }
+
+    void onTrimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+            bitmapCache.evictAll();
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            bitmapCache.trimToSize(cacheBytes / 4);
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE) {
+            bitmapCache.trimToSize(cacheBytes / 2);
+        }
+    }
+
+    void shutdown() {
+        decodeExecutor.shutdownNow();
+        pending.clear();
+        bitmapCache.evictAll();
+    }
+
+    /** The largest power of two that keeps both edges at or above the view's. */
+    static int sampleSizeFor(int width, int height, int targetWidth, int targetHeight) {
+        int sampleSize = 1;
+        if (targetWidth <= 0 || targetHeight <= 0) return sampleSize;
+        while (width / (sampleSize * 2) >= targetWidth && height / (sampleSize * 2) >= targetHeight) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    private void deliver(@NonNull ImageView target, @NonNull String cacheKey, @Nullable Bitmap decoded) {
+        if (decoded == null) {
+            stats.missing++;
+        } else {
+            stats.decodes++;
+            stats.decodedBytes += decoded.getAllocationByteCount();
+            bitmapCache.put(cacheKey, decoded);
+        }
+        if (!cacheKey.equals(target.getTag())) return;
+        pending.remove(target);
+        target.setTag(null);
+        if (decoded != null) target.setImageBitmap(decoded);
+    }
+
+    @Nullable
+    private static Bitmap decode(@NonNull File file, int widthPx, int heightPx) {
+        if (!file.isFile()) return null;
+        BitmapFactory.Options bounds = new BitmapFactory.Options();
+        bounds.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(file.getPath(), bounds);
+        if (bounds.outWidth <= 0 || bounds.outHeight <= 0) return null;
+
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inSampleSize = sampleSizeFor(bounds.outWidth, bounds.outHeight, widthPx, heightPx);
+        // Thumbnails are opaque JPEGs; half the bytes of ARGB_8888 per cached row.
+        options.inPreferredConfig = Bitmap.Config.RGB_565;
+        return BitmapFactory.decodeFile(file.getPath(), options);
+    }
+}
@@ -0,0 +1,653 @@
+package ai.clawphones.agent.chat;
+
+import android.util.JsonReader;
+import android.util.JsonToken;
+import android.util.MalformedJsonException;
+
+import org.json.JSONException;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Streaming decoders for the larger backend responses.
+ *
+ * Each decoder pulls tokens straight off the response body into the typed result, so a response is
+ * never held as one String or as an org.json tree. Unknown keys are skipped without being decoded.
+ * The decoders accept the same payload shapes the DOM-based parsing did: a bare array or an object
+ * wrapping it, and the key aliases the backend has used over time.
+ */
+final class ApiJsonReader {
+
+    /** Decodes one response body. An empty body reads as {@link JsonToken#END_DOCUMENT}. */
+    interface Decoder<T> {
+        T read(JsonReader reader) throws IOException;
+    }
+
+    private static final String[] CELL_ARRAY_KEYS = {"cells", "items", "data", "coverage", "world_cells"};
+    private static final String[] NODE_ARRAY_KEYS = {"nodes", "neighbors", "neighbours", "peers", "devices", "data"};
+    private static final String[] NESTED_ARRAY_KEYS = {"cells", "items", "nodes", "neighbors", "neighbours", "peers"};
+    private static final String[] GEOMETRY_KEYS = {
+        "boundary", "polygon", "vertices", "coordinates", "center", "centroid", "location", "position"};
+
+    /** Deepest object nesting kept when a payload is read into {@link Scope}s. */
+    private static final int MAX_SCOPE_DEPTH = 5;
+    /** World cells may wrap their arrays one object deeper than the root, e.g. {data: {cells: []}}. */
+    private static final int MAX_WORLD_NESTING = 2;
+
+    private ApiJsonReader() {}
+
+    /**
+     * Runs {@code decoder} over {@code in}, reporting malformed, truncated or mistyped JSON as
+     * JSONException as the DOM parsing did. Transport failures still surface as IOException.
+     */
+    static <T> T decode(Reader in, Decoder<T> decoder) throws IOException, JSONException {
+        JsonReader reader = new JsonReader(in);
+        try {
+            return decoder.read(reader);
+        } catch (MalformedJsonException | EOFException | IllegalStateException | NumberFormatException e) {
+            throw new JSONException("Malformed response: " + e.getMessage());
+        } finally {
+            reader.close();
+        }
+    }
+
+    // ── Conversations and messages ───────────────────────────────────────────
+
+    /** [{id,title,created_at,updated_at,message_count}, ...] or {conversations: [...]} */
+    static List<ClawPhonesAPI.ConversationSummary> readConversations(JsonReader reader) throws IOException {
+        List<ClawPhonesAPI.ConversationSummary> out = new ArrayList<>();
+        if (!enterRootArray(reader, "conversations")) return out;
+        while (reader.hasNext()) {
+            if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+                reader.skipValue();
+                continue;
+            }
+            String id = "";
+            String title = null;
+            long createdAt = 0L;
+            long updatedAt = 0L;
+            int messageCount = 0;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "id":
+                        id = nextString(reader, "");
+                        break;
+                    case "title":
+                        title = nextString(reader, null);
+                        break;
+                    case "created_at":
+                        createdAt = nextLong(reader, 0L);
+                        break;
+                    case "updated_at":
+                        updatedAt = nextLong(reader, 0L);
+                        break;
+                    case "message_count":
+                        messageCount = (int) nextLong(reader, 0L);
+                        break;
+                    default:
+                        reader.skipValue();
+                }
+            }
+            reader.endObject();
+            out.add(new ClawPhonesAPI.ConversationSummary(id, trimToNull(title), createdAt, updatedAt, messageCount));
+        }
+        reader.endArray();
+        return out;
+    }
+
+    /** {messages: [{id,role,content,created_at}, ...]} or a bare array */
+    static List<ClawPhonesAPI.ConversationMessage> readMessages(JsonReader reader) throws IOException {
+        List<ClawPhonesAPI.ConversationMessage> out = new ArrayList<>();
+        if (!enterRootArray(reader, "messages")) return out;
+        while (reader.hasNext()) {
+            if (reader.peek() != JsonToken.BEGIN_OBJECT) {
+                reader.skipValue();
+                continue;
+            }
+            String id = "";
+            String role = "";
+            String content = "";
+            long createdAt = 0L;
+            reader.beginObject();
+            while (reader.hasNext()) {
+                switch (reader.nextName()) {
+                    case "id":
+                        id = nextString(reader, "");
+                        break;
+                    case "role":
+                        role = nextString(reader, "");
+                        break;
+                    case "content":
+                        content = nextString(reader, "");
+                        break;
+                    case "created_at":
+                        createdAt = nextLong(reader, 0L);
+                        break;
+                    default:
+                        reader.skipValue();
+                }
+            }
+            reader.endObject();
+            out.add(new ClawPhonesAPI.ConversationMessage(id, role, content, createdAt));
+        }
+        reader.endArray();
+        return out;
+    }
+
+    /**
+     * Positions the reader inside the list: the root itself when it is an array, otherwise the
+     * array under {@code key}. Keys after that array are never read. Returns false when there is
+     * no such array.
+     */
+    private static boolean enterRootArray(JsonReader reader, String key) throws IOException {
+        JsonToken root = peekRoot(reader);
+        if (root == JsonToken.BEGIN_ARRAY) {
+            reader.beginArray();
+            return true;
+        }
+        if (root != JsonToken.BEGIN_OBJECT) {
+            if (root != JsonToken.END_DOCUMENT) reader.skipValue();
+            return false;
+        }
+        reader.beginObject();
+        while (reader.hasNext()) {
+            if (key.equals(reader.nextName()) && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                reader.beginArray();
+                return true;
+            }
+            reader.skipValue();
+        }
+        reader.endObject();
+        return false;
+    }
+
+    // ── World cells ──────────────────────────────────────────────────────────
+
+    /**
+     * /v1/world/cells. A bare array serves as both the cell and node list; an object supplies them
+     * from the first matching key, optionally one level down.
+     */
+    static ClawPhonesAPI.WorldCells readWorldCells(JsonReader reader) throws IOException {
+        JsonToken root = peekRoot(reader);
+        if (root == JsonToken.BEGIN_ARRAY) {
+            List<ClawPhonesAPI.WorldItem> items = readWorldItems(reader);
+            return new ClawPhonesAPI.WorldCells(items, items);
+        }
+        if (root != JsonToken.BEGIN_OBJECT) {
+            if (root != JsonToken.END_DOCUMENT) reader.skipValue();
+            return new ClawPhonesAPI.WorldCells(null, null);
+        }
+        Map<String, List<ClawPhonesAPI.WorldItem>> arrays = readWorldArrays(reader, 0);
+        return new ClawPhonesAPI.WorldCells(
+            firstList(arrays, CELL_ARRAY_KEYS),
+            firstList(arrays, NODE_ARRAY_KEYS));
+    }
+
+    private static Map<String, List<ClawPhonesAPI.WorldItem>> readWorldArrays(JsonReader reader, int depth)
+        throws IOException {
+        Map<String, List<ClawPhonesAPI.WorldItem>> arrays = new HashMap<>();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            JsonToken token = reader.peek();
+            if (token == JsonToken.BEGIN_ARRAY) {
+                arrays.put(name, readWorldItems(reader));
+            } else if (token == JsonToken.BEGIN_OBJECT && depth < MAX_WORLD_NESTING) {
+                List<ClawPhonesAPI.WorldItem> nested = firstList(readWorldArrays(reader, depth + 1), NESTED_ARRAY_KEYS);
+                if (nested != null) arrays.put(name, nested);
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return arrays;
+    }
+
+    private static List<ClawPhonesAPI.WorldItem> firstList(Map<String, List<ClawPhonesAPI.WorldItem>> arrays,
+                                                           String[] keys) {
+        for (String key : keys) {
+            List<ClawPhonesAPI.WorldItem> list = arrays.get(key);
+            if (list != null) return list;
+        }
+        return null;
+    }
+
+    private static List<ClawPhonesAPI.WorldItem> readWorldItems(JsonReader reader) throws IOException {
+        List<ClawPhonesAPI.WorldItem> items = new ArrayList<>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            if (reader.peek() == JsonToken.BEGIN_OBJECT) {
+                items.add(readWorldItem(reader));
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endArray();
+        return items;
+    }
+
+    private static ClawPhonesAPI.WorldItem readWorldItem(JsonReader reader) throws IOException {
+        Map<String, String> fields = new HashMap<>();
+        Map<String, List<double[]>> shapes = new HashMap<>();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            JsonToken token = reader.peek();
+            if (token == JsonToken.BEGIN_ARRAY || token == JsonToken.BEGIN_OBJECT) {
+                if (isGeometryKey(name)) {
+                    shapes.put(name, readPoints(reader));
+                } else {
+                    reader.skipValue();
+                }
+            } else {
+                String value = nextString(reader, null);
+                if (value != null) fields.put(name, value);
+            }
+        }
+        reader.endObject();
+        return new ClawPhonesAPI.WorldItem(fields, shapes);
+    }
+
+    private static boolean isGeometryKey(String name) {
+        for (String key : GEOMETRY_KEYS) {
+            if (key.equals(name)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Reads a point or point list as raw [a, b] pairs: [a, b], [[a, b], ...], a GeoJSON polygon
+     * (outer ring only), [{lat, lng}, ...], {lat, lng} or {coordinates: ...}.
+     */
+    private static List<double[]> readPoints(JsonReader reader) throws IOException {
+        List<double[]> points = new ArrayList<>();
+        JsonToken token = reader.peek();
+        if (token == JsonToken.BEGIN_OBJECT) {
+            readPointObject(reader, points);
+            return points;
+        }
+        if (token != JsonToken.BEGIN_ARRAY) {
+            reader.skipValue();
+            return points;
+        }
+
+        reader.beginArray();
+        boolean ringRead = false;
+        while (reader.hasNext()) {
+            token = reader.peek();
+            if (token == JsonToken.NUMBER || token == JsonToken.STRING) {
+                addPair(points, readPairRest(reader));
+                break;
+            } else if (token == JsonToken.BEGIN_ARRAY) {
+                reader.beginArray();
+                if (reader.hasNext() && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                    // A polygon ring; holes after the outer ring are not drawn.
+                    while (reader.hasNext()) {
+                        if (!ringRead && reader.peek() == JsonToken.BEGIN_ARRAY) {
+                            reader.beginArray();
+                            addPair(points, readPairRest(reader));
+                            reader.endArray();
+                        } else {
+                            reader.skipValue();
+                        }
+                    }
+                    ringRead = true;
+                } else {
+                    addPair(points, readPairRest(reader));
+                }
+                reader.endArray();
+            } else if (token == JsonToken.BEGIN_OBJECT) {
+                readPointObject(reader, points);
+            } else {
+                reader.skipValue();
+            }
+        }
+        while (reader.hasNext()) reader.skipValue();
+        reader.endArray();
+        return points;
+    }
+
+    /** Reads the remaining elements of an entered pair array, leaving the array open. */
+    private static double[] readPairRest(JsonReader reader) throws IOException {
+        double a = reader.hasNext() ? nextDouble(reader) : Double.NaN;
+        double b = reader.hasNext() ? nextDouble(reader) : Double.NaN;
+        while (reader.hasNext()) reader.skipValue();
+        return new double[] {a, b};
+    }
+
+    private static void readPointObject(JsonReader reader, List<double[]> points) throws IOException {
+        double lat = Double.NaN;
+        double lng = Double.NaN;
+        List<double[]> coordinates = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "lat":
+                case "latitude":
+                    if (Double.isNaN(lat)) lat = nextDouble(reader);
+                    else reader.skipValue();
+                    break;
+                case "lng":
+                case "lon":
+                case "longitude":
+                    if (Double.isNaN(lng)) lng = nextDouble(reader);
+                    else reader.skipValue();
+                    break;
+                case "coordinates":
+                    coordinates = readPoints(reader);
+                    break;
+                default:
+                    reader.skipValue();
+            }
+        }
+        reader.endObject();
+        if (!Double.isNaN(lat) && !Double.isNaN(lng)) {
+            points.add(new double[] {lat, lng});
+        } else if (coordinates != null) {
+            points.addAll(coordinates);
+        }
+    }
+
+    private static void addPair(List<double[]> points, double[] pair) {
+        if (!Double.isNaN(pair[0]) && !Double.isNaN(pair[1])) points.add(pair);
+    }
+
+    // ── User plan ────────────────────────────────────────────────────────────
+
+    private static final String[] TIER_LIST_KEYS = {
+        "tiers", "plans", "plan_tiers", "comparison", "tier_comparison", "available_plans"};
+    private static final String[] TIER_MAP_KEYS = {"tiers", "plans", "plan_tiers", "comparison", "tier_comparison"};
+    private static final String[] USAGE_KEYS = {"usage", "token_usage", "today_usage", "daily_usage"};
+    private static final String[] USED_KEYS = {"today_used", "todayUsed", "tokens_today", "tokensToday",
+        "daily_used", "dailyUsed", "messages", "messages_today", "used_today"};
+    private static final String[] USAGE_USED_KEYS = {"today_used", "todayUsed", "used", "used_tokens", "usedTokens",
+        "tokens_today", "tokensToday", "daily_used", "dailyUsed", "messages", "messages_today", "used_today"};
+    private static final String[] LIMIT_KEYS = {"daily_limit", "dailyLimit", "daily_cap", "dailyCap",
+        "token_limit", "tokenLimit", "daily_tokens", "messages_per_day", "daily_messages"};
+    private static final String[] USAGE_LIMIT_KEYS = {"daily_limit", "dailyLimit", "daily_cap", "dailyCap", "limit",
+        "token_limit", "tokenLimit", "daily_tokens", "messages_per_day", "daily_messages"};
+    private static final String[] DAILY_CAP_KEYS = {"daily_cap", "dailyCap", "daily_limit", "dailyLimit",
+        "token_limit", "tokenLimit", "daily_tokens", "messages_per_day", "daily_messages"};
+    private static final String[] CONTEXT_KEYS = {
+        "context_length", "contextLength", "context_limit", "contextLimit", "max_context_tokens"};
+    private static final String[] OUTPUT_KEYS = {"output_limit", "outputLimit", "max_output_tokens", "max_tokens"};
+
+    /**
+     * Scalar fields and nested objects of one small JSON object. Used for the plan payload, whose
+     * lookups reach across sibling objects and so need the whole (few hundred byte) object at once.
+     */
+    private static final class Scope {
+        static final Scope EMPTY = new Scope();
+
+        final Map<String, String> scalars = new HashMap<>();
+        final Map<String, Scope> objects = new LinkedHashMap<>();
+        final Map<String, List<Scope>> arrays = new HashMap<>();
+
+        Scope object(String... keys) {
+            for (String key : keys) {
+                Scope child = objects.get(key);
+                if (child != null) return child;
+            }
+            return null;
+        }
+
+        List<Scope> array(String... keys) {
+            for (String key : keys) {
+                List<Scope> list = arrays.get(key);
+                if (list != null) return list;
+            }
+            return null;
+        }
+
+        String string(String... keys) {
+            for (String key : keys) {
+                String value = scalars.get(key);
+                if (value != null && !value.trim().isEmpty()) return value.trim();
+            }
+            return null;
+        }
+
+        long number(String... keys) {
+            for (String key : keys) {
+                String value = scalars.get(key);
+                if (value == null) continue;
+                long parsed = parseLong(value, -1L);
+                if (parsed >= 0L) return parsed;
+            }
+            return -1L;
+        }
+    }
+
+    /** /v1/user/plan -> current tier, daily usage and tier comparison. */
+    static ClawPhonesAPI.UserPlan readUserPlan(JsonReader reader) throws IOException {
+        Scope root = readRootScope(reader);
+        Scope data = root.object("data", "result", "payload");
+        Scope scoped = data != null ? data : root;
+
+        String currentTier = coalesce(
+            scoped.string("current_tier", "currentTier", "tier", "plan"),
+            root.string("current_tier", "currentTier", "tier", "plan")
+        );
+
+        Scope currentPlan = scoped.object("plan", "subscription", "current_plan", "currentPlan");
+        if (isBlank(currentTier) && currentPlan != null) {
+            currentTier = currentPlan.string("tier", "name", "id", "plan");
+        }
+
+        Scope usage = scoped.object(USAGE_KEYS);
+        if (usage == null) usage = root.object(USAGE_KEYS);
+        if (usage == null) usage = Scope.EMPTY;
+
+        long used = firstPositive(
+            usage.number(USAGE_USED_KEYS),
+            scoped.number(USED_KEYS),
+            root.number(USED_KEYS)
+        );
+        long limit = firstPositive(
+            usage.number(USAGE_LIMIT_KEYS),
+            scoped.number(LIMIT_KEYS),
+            root.number(LIMIT_KEYS)
+        );
+
+        List<ClawPhonesAPI.PlanTier> tiers = readPlanTiers(scoped);
+        if (tiers.isEmpty() && scoped != root) {
+            tiers = readPlanTiers(root);
+        }
+
+        if (limit <= 0L && !isBlank(currentTier)) {
+            String normalizedCurrent = ClawPhonesAPI.normalizeTierName(currentTier);
+            for (ClawPhonesAPI.PlanTier tier : tiers) {
+                if (normalizedCurrent.equals(tier.tier) && tier.dailyCap > 0L) {
+                    limit = tier.dailyCap;
+                    break;
+                }
+            }
+        }
+
+        return new ClawPhonesAPI.UserPlan(currentTier, used, limit, tiers);
+    }
+
+    private static List<ClawPhonesAPI.PlanTier> readPlanTiers(Scope scoped) {
+        List<ClawPhonesAPI.PlanTier> parsed = new ArrayList<>();
+        List<Scope> list = scoped.array(TIER_LIST_KEYS);
+        if (list != null) {
+            for (Scope item : list) {
+                ClawPhonesAPI.PlanTier tier = readPlanTier(item, null);
+                if (tier != null) parsed.add(tier);
+            }
+        }
+        Scope byName = scoped.object(TIER_MAP_KEYS);
+        if (byName != null) {
+            for (Map.Entry<String, Scope> entry : byName.objects.entrySet()) {
+                ClawPhonesAPI.PlanTier tier = readPlanTier(entry.getValue(), entry.getKey());
+                if (tier != null) parsed.add(tier);
+            }
+        }
+
+        LinkedHashMap<String, ClawPhonesAPI.PlanTier> dedup = new LinkedHashMap<>();
+        for (ClawPhonesAPI.PlanTier tier : parsed) {
+            dedup.put(tier.tier, tier);
+        }
+        return new ArrayList<>(dedup.values());
+    }
+
+    private static ClawPhonesAPI.PlanTier readPlanTier(Scope item, String fallbackTier) {
+        String tierName = coalesce(item.string("tier", "name", "id", "plan"), fallbackTier);
+        if (isBlank(tierName)) return null;
+
+        Scope limits = item.object("limits", "features", "quota");
+        if (limits == null) limits = Scope.EMPTY;
+
+        return new ClawPhonesAPI.PlanTier(
+            tierName,
+            firstPositive(item.number(CONTEXT_KEYS), limits.number(CONTEXT_KEYS)),
+            firstPositive(item.number(OUTPUT_KEYS), limits.number(OUTPUT_KEYS)),
+            firstPositive(item.number(DAILY_CAP_KEYS), limits.number(DAILY_CAP_KEYS))
+        );
+    }
+
+    /** The root object, or the first object of a root array. */
+    private static Scope readRootScope(JsonReader reader) throws IOException {
+        JsonToken root = peekRoot(reader);
+        if (root == JsonToken.BEGIN_OBJECT) {
+            return readScope(reader, 0);
+        }
+        if (root == JsonToken.BEGIN_ARRAY) {
+            Scope first = Scope.EMPTY;
+            reader.beginArray();
+            if (reader.hasNext() && reader.peek() == JsonToken.BEGIN_OBJECT) {
+                first = readScope(reader, 0);
+            }
+            while (reader.hasNext()) reader.skipValue();
+            reader.endArray();
+            return first;
+        }
+        if (root != JsonToken.END_DOCUMENT) reader.skipValue();
+        return Scope.EMPTY;
+    }
+
+    private static Scope readScope(JsonReader reader, int depth) throws IOException {
+        Scope scope = new Scope();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            JsonToken token = reader.peek();
+            if (token == JsonToken.BEGIN_OBJECT) {
+                if (depth < MAX_SCOPE_DEPTH) scope.objects.put(name, readScope(reader, depth + 1));
+                else reader.skipValue();
+            } else if (token == JsonToken.BEGIN_ARRAY) {
+                if (depth < MAX_SCOPE_DEPTH) scope.arrays.put(name, readScopeArray(reader, depth + 1));
+                else reader.skipValue();
+            } else {
+                String value = nextString(reader, null);
+                if (value != null) scope.scalars.put(name, value);
+            }
+        }
+        reader.endObject();
+        return scope;
+    }
+
+    private static List<Scope> readScopeArray(JsonReader reader, int depth) throws IOException {
+        List<Scope> items = new ArrayList<>();
+        reader.beginArray();
+        while (reader.hasNext()) {
+            if (reader.peek() == JsonToken.BEGIN_OBJECT) {
+                items.add(readScope(reader, depth));
+            } else {
+                reader.skipValue();
+            }
+        }
+        reader.endArray();
+        return items;
+    }
+
+    // ── Token helpers ────────────────────────────────────────────────────────
+
+    /** Peeks the first token, treating an empty body as END_DOCUMENT. */
+    private static JsonToken peekRoot(JsonReader reader) throws IOException {
+        try {
+            return reader.peek();
+        } catch (EOFException e) {
+            return JsonToken.END_DOCUMENT;
+        }
+    }
+
+    /** A scalar as text, like JSONObject.optString; null, objects and arrays give {@code fallback}. */
+    private static String nextString(JsonReader reader, String fallback) throws IOException {
+        switch (reader.peek()) {
+            case STRING:
+            case NUMBER:
+                return reader.nextString();
+            case BOOLEAN:
+                return reader.nextBoolean() ? "true" : "false";
+            case NULL:
+                reader.nextNull();
+                return fallback;
+            default:
+                reader.skipValue();
+                return fallback;
+        }
+    }
+
+    /** A number or numeric string as a long, like JSONObject.optLong. */
+    private static long nextLong(JsonReader reader, long fallback) throws IOException {
+        String text = nextString(reader, null);
+        return text == null ? fallback : parseLong(text, fallback);
+    }
+
+    private static double nextDouble(JsonReader reader) throws IOException {
+        String text = nextString(reader, null);
+        if (text == null) return Double.NaN;
+        try {
+            return Double.parseDouble(text.trim());
+        } catch (NumberFormatException e) {
+            return Double.NaN;
+        }
+    }
+
+    static long parseLong(String text, long fallback) {
+        String trimmed = text.trim();
+        try {
+            return Long.parseLong(trimmed);
+        } catch (NumberFormatException ignored) {
+        }
+        try {
+            double value = Double.parseDouble(trimmed);
+            return Double.isNaN(value) ? fallback : (long) value;
+        } catch (NumberFormatException ignored) {
+            return fallback;
+        }
+    }
+
+    private static String trimToNull(String value) {
+        if (value == null) return null;
+        String trimmed = value.trim();
+        return trimmed.isEmpty() ? null : trimmed;
+    }
+
+    private static long firstPositive(long... values) {
+        for (long value : values) {
+            if (value > 0L) return value;
+        }
+        return 0L;
+    }
+
+    private static String coalesce(String... values) {
+        for (String value : values) {
+            if (!isBlank(value)) return value.trim();
+        }
+        return null;
+    }
+
+    private static boolean isBlank(String value) {
+        return value == null || value.trim().isEmpty();
+    }
+}
@@ -0,0 +1,67 @@
+package ai.clawphones.agent.chat;
+
+import android.util.Base64;
+import android.util.Base64InputStream;
+
+import androidx.annotation.NonNull;
+
+import java.io.BufferedInputStream;
+import java.io.InputStream;
+
+/**
+ * Reads base64 job input as a stream of decoded bytes, without first decoding the whole string
+ * into a byte array.
+ */
+final class Base64Source {
+
+    private static final int STREAM_BUFFER_BYTES = 16 * 1024;
+
+    private Base64Source() {
+    }
+
+    /** Decodes from the character after a data URL prefix, if there is one. */
+    @NonNull
+    static InputStream open(@NonNull String data) {
+        return open(data, data.indexOf(',') + 1);
+    }
+
+    @NonNull
+    static InputStream open(@NonNull String data, int start) {
+        return new BufferedInputStream(
+            new Base64InputStream(new AsciiInputStream(data, start), Base64.DEFAULT), STREAM_BUFFER_BYTES);
+    }
+
+    /** Reads a string's characters from an offset as single bytes; base64 text is ASCII. */
+    private static final class AsciiInputStream extends InputStream {
+        private final String text;
+        private int position;
+
+        AsciiInputStream(@NonNull String text, int start) {
+            this.text = text;
+            this.position = start;
+        }
+
+        @Override
+        public int read() {
+            return position < text.length() ? text.charAt(position++) & 0xFF : -1;
+        }
+
+        @Override
+        public int read(@NonNull byte[] buffer, int offset, int length) {
+            if (length == 0) return 0;
+            int end = Math.min(text.length(), position + length);
+            if (position >= end) return -1;
+            int count = end - position;
+            for (int i = 0; i < count; i++) {
+                buffer[offset + i] = (byte) text.charAt(position + i);
+            }
+            position = end;
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return text.length() - position;
+        }
+    }
+}
@@ -0,0 +1,354 @@
+package ai.clawphones.agent.chat;
+
+import android.Manifest;
+import android.content.Context;
+import android.content.pm.PackageManager;
+import android.graphics.Bitmap;
+import android.graphics.ImageFormat;
+import android.hardware.camera2.CameraAccessException;
+import android.hardware.camera2.CameraCaptureSession;
+import android.hardware.camera2.CameraCharacteristics;
+import android.hardware.camera2.CameraDevice;
+import android.hardware.camera2.CameraManager;
+import android.hardware.camera2.CaptureRequest;
+import android.hardware.camera2.params.StreamConfigurationMap;
+import android.media.Image;
+import android.media.ImageReader;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.util.Range;
+import android.util.Size;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.core.content.ContextCompat;
+
+import com.termux.shared.logger.Logger;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Back camera frames for node mode.
+ *
+ * The camera runs a YUV preview stream at its lowest frame rate range so exposure stays settled,
+ * and {@link #next()} hands out only the latest image; frames in between are dropped by the
+ * ImageReader without being touched. The motion gate reads the Y plane directly, and a frame is
+ * converted to ARGB only when something asks for its bitmap, into one bitmap reused across frames.
+ * The camera opens on the first call to next().
+ */
+final class CameraFrameSource implements FrameSource {
+
+    private static final String LOG_TAG = "CameraFrameSource";
+
+    static final int TARGET_WIDTH = 640;
+    static final int TARGET_HEIGHT = 480;
+    private static final long OPEN_TIMEOUT_MS = 5000L;
+    private static final long FRAME_TIMEOUT_MS = 5000L;
+
+    private final Context appContext;
+    private final Object imageLock = new Object();
+    @Nullable private HandlerThread cameraThread;
+    @Nullable private Handler cameraHandler;
+    @Nullable private CameraDevice camera;
+    @Nullable private CameraCaptureSession session;
+    @Nullable private ImageReader reader;
+    @Nullable private volatile String failure;
+    private boolean imageAvailable;
+    private boolean closed;
+    @Nullable private int[] argb;
+    @Nullable private byte[] yBytes;
+    @Nullable private byte[] uBytes;
+    @Nullable private byte[] vBytes;
+    @Nullable private Bitmap output;
+
+    CameraFrameSource(@NonNull Context context) {
+        this.appContext = context.getApplicationContext();
+    }
+
+    @Nullable
+    @Override
+    public Frame next() throws IOException, InterruptedException {
+        synchronized (this) {
+            if (closed) return null;
+            if (camera == null) open();
+        }
+
+        long deadline = System.currentTimeMillis() + FRAME_TIMEOUT_MS;
+        while (true) {
+            if (failure != null) throw new IOException(failure);
+            Image image;
+            synchronized (this) {
+                if (closed || reader == null) return null;
+                image = reader.acquireLatestImage();
+            }
+            if (image != null) return new CameraFrame(image);
+            synchronized (imageLock) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0L) throw new IOException("no camera frame in " + FRAME_TIMEOUT_MS + " ms");
+                if (!imageAvailable) imageLock.wait(remaining);
+                imageAvailable = false;
+            }
+        }
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+        if (session != null) {
+            session.close();
+            session = null;
+        }
+        if (camera != null) {
+            camera.close();
+            camera = null;
+        }
+        if (reader != null) {
+            reader.close();
+            reader = null;
+        }
+        if (cameraThread != null) {
+            cameraThread.quitSafely();
+            cameraThread = null;
+            cameraHandler = null;
+        }
+        synchronized (imageLock) {
+            imageLock.notifyAll();
+        }
+    }
+
+    private void open() throws IOException, InterruptedException {
+        if (ContextCompat.checkSelfPermission(appContext, Manifest.permission.CAMERA)
+            != PackageManager.PERMISSION_GRANTED) {
+            throw new IOException("camera permission not granted");
+        }
+        CameraManager manager = (CameraManager) appContext.getSystemService(Context.CAMERA_SERVICE);
+        if (manager == null) throw new IOException("camera service unavailable");
+
+        try {
+            String cameraId = pickCamera(manager);
+            CameraCharacteristics characteristics = manager.getCameraCharacteristics(cameraId);
+            Size size = pickSize(characteristics);
+
+            cameraThread = new HandlerThread("node-camera");
+            cameraThread.start();
+            cameraHandler = new Handler(cameraThread.getLooper());
+            reader = ImageReader.newInstance(size.getWidth(), size.getHeight(), ImageFormat.YUV_420_888, 2);
+            reader.setOnImageAvailableListener(r -> {
+                synchronized (imageLock) {
+                    imageAvailable = true;
+                    imageLock.notifyAll();
+                }
+            }, cameraHandler);
+
+            camera = openCamera(manager, cameraId);
+            session = createSession(camera);
+            CaptureRequest.Builder request = camera.createCaptureRequest(CameraDevice.TEMPLATE_PREVIEW);
+            request.addTarget(reader.getSurface());
+            Range<Integer> fps = pickFpsRange(characteristics);
+            if (fps != null) request.set(CaptureRequest.CONTROL_AE_TARGET_FPS_RANGE, fps);
+            session.setRepeatingRequest(request.build(), null, cameraHandler);
+            Logger.logInfo(LOG_TAG, "Camera " + cameraId + " streaming " + size + " at " + fps + " fps");
+        } catch (CameraAccessException | SecurityException | IllegalStateException e) {
+            close();
+            throw new IOException("camera unavailable: " + e.getMessage(), e);
+        }
+    }
+
+    @NonNull
+    private CameraDevice openCamera(@NonNull CameraManager manager, @NonNull String cameraId)
+        throws CameraAccessException, IOException, InterruptedException {
+        CountDownLatch opened = new CountDownLatch(1);
+        CameraDevice[] device = new CameraDevice[1];
+        manager.openCamera(cameraId, new CameraDevice.StateCallback() {
+            @Override
+            public void onOpened(@NonNull CameraDevice cameraDevice) {
+                device[0] = cameraDevice;
+                opened.countDown();
+            }
+
+            @Override
+            public void onDisconnected(@NonNull CameraDevice cameraDevice) {
+                fail(cameraDevice, "camera disconnected");
+                opened.countDown();
+            }
+
+            @Override
+            public void onError(@NonNull CameraDevice cameraDevice, int error) {
+                fail(cameraDevice, "camera error " + error);
+                opened.countDown();
+            }
+        }, cameraHandler);
+        if (!opened.await(OPEN_TIMEOUT_MS, TimeUnit.MILLISECONDS) || device[0] == null) {
+            throw new IOException(failure != null ? failure : "camera did not open");
+        }
+        return device[0];
+    }
+
+    @NonNull
+    @SuppressWarnings("deprecation")
+    private CameraCaptureSession createSession(@NonNull CameraDevice device)
+        throws CameraAccessException, IOException, InterruptedException {
+        CountDownLatch configured = new CountDownLatch(1);
+        CameraCaptureSession[] result = new CameraCaptureSession[1];
+        device.createCaptureSession(Collections.singletonList(reader.getSurface()),
+            new CameraCaptureSession.StateCallback() {
+                @Override
+                public void onConfigured(@NonNull CameraCaptureSession captureSession) {
+                    result[0] = captureSession;
+                    configured.countDown();
+                }
+
+                @Override
+                public void onConfigureFailed(@NonNull CameraCaptureSession captureSession) {
+                    failure = "capture session configuration failed";
+                    configured.countDown();
+                }
+            }, cameraHandler);
+        if (!configured.await(OPEN_TIMEOUT_MS, TimeUnit.MILLISECONDS) || result[0] == null) {
+            throw new IOException(failure != null ? failure : "capture session timed out");
+        }
+        return result[0];
+    }
+
+    private void fail(@NonNull CameraDevice device, @NonNull String reason) {
+        failure = reason;
+        device.close();
+        synchronized (imageLock) {
+            imageLock.notifyAll();
+        }
+    }
+
+    @NonNull
+    private static String pickCamera(@NonNull CameraManager manager) throws CameraAccessException, IOException {
+        String[] ids = manager.getCameraIdList();
+        if (ids.length == 0) throw new IOException("no camera");
+        for (String id : ids) {
+            Integer facing = manager.getCameraCharacteristics(id).get(CameraCharacteristics.LENS_FACING);
+            if (facing != null && facing == CameraCharacteristics.LENS_FACING_BACK) return id;
+        }
+        return ids[0];
+    }
+
+    /** Smallest YUV size that covers the target, or the largest available when none does. */
+    @NonNull
+    private static Size pickSize(@NonNull CameraCharacteristics characteristics) throws IOException {
+        StreamConfigurationMap map = characteristics.get(CameraCharacteristics.SCALER_STREAM_CONFIGURATION_MAP);
+        Size[] sizes = map != null ? map.getOutputSizes(ImageFormat.YUV_420_888) : null;
+        if (sizes == null || sizes.length == 0) throw new IOException("no YUV output sizes");
+        Size best = null;
+        Size largest = sizes[0];
+        for (Size size : sizes) {
+            long area = (long) size.getWidth() * size.getHeight();
+            if (area > (long) largest.getWidth() * largest.getHeight()) largest = size;
+            if (size.getWidth() < TARGET_WIDTH || size.getHeight() < TARGET_HEIGHT) continue;
+            if (best == null || area < (long) best.getWidth() * best.getHeight()) best = size;
+        }
+        return best != null ? best : largest;
+    }
+
+    /** The range with the lowest upper bound; node mode samples at most a couple of frames a second. */
+    @Nullable
+    private static Range<Integer> pickFpsRange(@NonNull CameraCharacteristics characteristics) {
+        Range<Integer>[] ranges = characteristics.get(CameraCharacteristics.CONTROL_AE_AVAILABLE_TARGET_FPS_RANGES);
+        if (ranges == null || ranges.length == 0) return null;
+        Range<Integer> best = ranges[0];
+        for (Range<Integer> range : ranges) {
+            if (range.getUpper() < best.getUpper()
+                || (range.getUpper().equals(best.getUpper()) && range.getLower() < best.getLower())) {
+                best = range;
+            }
+        }
+        return best;
+    }
+
+    /** A camera image, held until the pipeline closes the frame. */
+    private final class CameraFrame implements Frame {
+        private final Image image;
+
+        CameraFrame(@NonNull Image image) {
+            this.image = image;
+        }
+
+        @NonNull
+        @Override
+        public int[] downsampleLuma(@NonNull MotionGate gate) {
+            Image.Plane plane = image.getPlanes()[0];
+            return gate.downsampleLuma(plane.getBuffer(), plane.getRowStride(), plane.getPixelStride(),
+                image.getWidth(), image.getHeight());
+        }
+
+        @NonNull
+        @Override
+        public Bitmap bitmap() throws IOException {
+            try {
+                return toBitmap(image);
+            } catch (IllegalStateException e) {
+                throw new IOException("camera image closed: " + e.getMessage(), e);
+            }
+        }
+
+        @Override
+        public void close() {
+            image.close();
+        }
+    }
+
+    /**
+     * BT.601 YUV to ARGB, honouring the plane strides the device reports. The planes are copied
+     * out in one bulk get each, and the result goes into the bitmap the previous frame used.
+     */
+    @NonNull
+    private Bitmap toBitmap(@NonNull Image image) {
+        int width = image.getWidth();
+        int height = image.getHeight();
+        Image.Plane[] planes = image.getPlanes();
+        byte[] yPlane = yBytes = copy(planes[0].getBuffer(), yBytes);
+        byte[] uPlane = uBytes = copy(planes[1].getBuffer(), uBytes);
+        byte[] vPlane = vBytes = copy(planes[2].getBuffer(), vBytes);
+        int yRowStride = planes[0].getRowStride();
+        int yPixelStride = planes[0].getPixelStride();
+        int uvRowStride = planes[1].getRowStride();
+        int uvPixelStride = planes[1].getPixelStride();
+
+        if (argb == null || argb.length != width * height) argb = new int[width * height];
+        for (int y = 0; y < height; y++) {
+            int yRow = y * yRowStride;
+            int uvRow = (y >> 1) * uvRowStride;
+            int out = y * width;
+            for (int x = 0; x < width; x++) {
+                int luma = (yPlane[yRow + x * yPixelStride] & 0xFF) - 16;
+                int uvIndex = uvRow + (x >> 1) * uvPixelStride;
+                int u = (uPlane[uvIndex] & 0xFF) - 128;
+                int v = (vPlane[uvIndex] & 0xFF) - 128;
+                int c = 298 * Math.max(0, luma);
+                int r = clamp((c + 409 * v + 128) >> 8);
+                int g = clamp((c - 100 * u - 208 * v + 128) >> 8);
+                int b = clamp((c + 516 * u + 128) >> 8);
+                argb[out + x] = 0xFF000000 | (r << 16) | (g << 8) | b;
+            }
+        }
+        if (output == null || output.getWidth() != width || output.getHeight() != height) {
+            output = Bitmap.createBitmap(width, height, Bitmap.Config.ARGB_8888);
+        }
+        output.setPixels(argb, 0, width, 0, 0, width, height);
+        return output;
+    }
+
+    /** Copies the whole buffer into {@code reuse}, or a new array when it is too small. */
+    @NonNull
+    private static byte[] copy(@NonNull ByteBuffer buffer, @Nullable byte[] reuse) {
+        int size = buffer.rewind().remaining();
+        byte[] bytes = reuse != null && reuse.length >= size ? reuse : new byte[size];
+        buffer.get(bytes, 0, size);
+        buffer.rewind();
+        return bytes;
+    }
+
+    private static int clamp(int value) {
+        return value < 0 ? 0 : Math.min(255, value);
+    }
+}
@@ -64,10 +64,9 @@ import org.json.JSONObject;
 
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
 import java.net.URLConnection;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -85,6 +84,9 @@ import java.util.concurrent.atomic.AtomicLong;
 
 import ai.clawphones.agent.CrashReporter;
 import ai.clawphones.agent.analytics.AnalyticsManager;
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
 
 /**
  * In-app AI chat UI backed by ClawPhones API.
@@ -108,6 +110,7 @@ public class ChatActivity extends AppCompatActivity {
     private final HashMap<Long, Integer> mQueuedMessageIndexes = new HashMap<>();
     private ChatAdapter mAdapter;
     private MessageQueue mMessageQueue;
+    private MessageQueueDrainer mDrainer;
     private ConversationCache mCache;
 
     private ExecutorService mExecutor;
@@ -118,7 +121,6 @@ public class ChatActivity extends AppCompatActivity {
     @Nullable private Runnable mPendingUpdate = null;
     private static final long UPDATE_THROTTLE_MS = 50L;
     private static final long SPEECH_DONE_RESET_MS = 1_200L;
-    private static final int MAX_QUEUE_RETRY = 3;
     private static final int REQUEST_RECORD_AUDIO = 7021;
     private static final int REQUEST_CAMERA_PERMISSION = 7022;
     private static final int REQUEST_PICK_IMAGE = 7101;
@@ -133,6 +135,7 @@ public class ChatActivity extends AppCompatActivity {
     private static final int MAX_FILE_SIZE_BYTES = 20 * 1024 * 1024;
     private static final int IMAGE_MAX_WIDTH = 1024;
     private static final int IMAGE_QUALITY = 80;
+    private static final String UPLOAD_CACHE_DIR = "chat_uploads";
     private static final List<String> ALLOWED_FILE_MIME_TYPES = Arrays.asList(
         "application/pdf", "text/plain", "text/csv", "application/json", "text/markdown"
     );
@@ -140,6 +143,8 @@ public class ChatActivity extends AppCompatActivity {
     private final ArrayList<ChatMessage> mAllHistoryMessages = new ArrayList<>();
     private final ArrayList<PendingAttachment> mPendingAttachments = new ArrayList<>();
     private int mNextHistoryLoadStart = 0;
+    @Nullable private ConversationCache.CachedMessage mOldestCachedMessage;
+    private boolean mHasOlderCachedHistory = false;
     private boolean mLoadingOlderHistory = false;
     @Nullable private Uri mPendingCameraUri;
 
@@ -225,7 +230,10 @@ public class ChatActivity extends AppCompatActivity {
             }
         });
 
-        mMessageQueue = new MessageQueue(this);
+        mDrainer = MessageQueueDrainer.getInstance(this);
+        mDrainer.addListener(mDrainListener);
+        mDrainer.resumeAfterAuth();
+        mMessageQueue = mDrainer.getQueue();
         mExecutor = Executors.newSingleThreadExecutor();
         registerConnectivityReceiver();
 
@@ -255,6 +263,12 @@ public class ChatActivity extends AppCompatActivity {
     protected void onDestroy() {
         mDestroyed = true;
         unregisterConnectivityReceiver();
+        for (PendingAttachment attachment : mPendingAttachments) {
+            deleteQuietly(attachment.tempFile);
+        }
+        if (mDrainer != null) {
+            mDrainer.removeListener(mDrainListener);
+        }
         clearPendingSpeechIdleReset();
         stopMicPulseAnimation();
         if (mAdapter != null) {
@@ -465,37 +479,34 @@ public class ChatActivity extends AppCompatActivity {
         try {
             String filename = resolveDisplayName(uri);
             String mimeType = resolveMimeType(uri, filename, forceImage);
-            byte[] data;
+            if (!mimeType.startsWith("image/") && !forceImage && !ALLOWED_FILE_MIME_TYPES.contains(mimeType)) {
+                toast("不支持的文件类型");
+                return;
+            }
 
+            UploadSource source;
+            File tempFile = null;
             if (mimeType.startsWith("image/") || forceImage) {
-                data = compressImage(uri);
+                tempFile = compressImage(uri);
+                source = UploadSource.fromFile(tempFile);
                 mimeType = "image/jpeg";
                 if (!filename.toLowerCase(Locale.US).endsWith(".jpg")
                     && !filename.toLowerCase(Locale.US).endsWith(".jpeg")) {
                     filename = filename + ".jpg";
                 }
             } else {
-                try (InputStream is = getContentResolver().openInputStream(uri)) {
-                    if (is == null) {
-                        toast("读取文件失败");
-                        return;
-                    }
-                    data = readAllBytes(is);
-                }
+                // Streamed from the provider at upload time rather than read into memory here.
+                source = UploadSource.fromUri(this, uri);
             }
 
-            int maxBytes = mimeType.startsWith("image/") ? MAX_IMAGE_SIZE_BYTES : MAX_FILE_SIZE_BYTES;
-            if (data.length > maxBytes) {
+            long maxBytes = mimeType.startsWith("image/") ? MAX_IMAGE_SIZE_BYTES : MAX_FILE_SIZE_BYTES;
+            if (source.length() > maxBytes) {
+                deleteQuietly(tempFile);
                 toast("文件过大");
                 return;
             }
 
-            if (!mimeType.startsWith("image/") && !ALLOWED_FILE_MIME_TYPES.contains(mimeType)) {
-                toast("不支持的文件类型");
-                return;
-            }
-
-            mPendingAttachments.add(new PendingAttachment(data, filename, mimeType));
+            mPendingAttachments.add(new PendingAttachment(source, tempFile, filename, mimeType));
             refreshAttachmentPreview();
         } catch (Exception e) {
             CrashReporter.reportNonFatal(this, e, "handling_attachment");
@@ -506,7 +517,7 @@ public class ChatActivity extends AppCompatActivity {
     private void uploadAttachmentsThenSend(@NonNull String text, @NonNull List<PendingAttachment> attachments) {
         if (attachments.isEmpty()) {
             int userIndex = addUserMessage(text);
-            sendMessageOnline(mConversationId, text, null, null, userIndex);
+            sendMessageOnline(mConversationId, text, null, userIndex);
             return;
         }
         if (TextUtils.isEmpty(mConversationId)) {
@@ -527,9 +538,10 @@ public class ChatActivity extends AppCompatActivity {
                     ClawPhonesAPI.UploadedFile uploaded = ClawPhonesAPI.uploadFileBlocking(
                         ChatActivity.this,
                         targetConversationId,
-                        attachment.data,
+                        attachment.source,
                         attachment.filename,
-                        attachment.mimeType
+                        attachment.mimeType,
+                        (sent, total) -> runSafe(() -> showUploadProgress(attachment, sent, total))
                     );
                     if (uploaded == null || TextUtils.isEmpty(uploaded.fileId)) {
                         throw new IOException("upload returned empty file_id");
@@ -549,6 +561,9 @@ public class ChatActivity extends AppCompatActivity {
                 });
                 return;
             }
+            for (PendingAttachment attachment : attachments) {
+                deleteQuietly(attachment.tempFile);
+            }
 
             final String localDisplay = buildAttachmentSummaryText(text, uploadedFiles);
             final String firstImageUrl = firstImageUrl(uploadedFiles);
@@ -556,8 +571,9 @@ public class ChatActivity extends AppCompatActivity {
                 mBusy = false;
                 setInputEnabled(true);
                 setSendingState(false);
+                refreshAttachmentPreview();
                 int userIndex = addUserMessage(localDisplay, firstImageUrl);
-                sendMessageOnline(targetConversationId, text, fileIds, null, userIndex);
+                sendMessageOnline(targetConversationId, text, fileIds, userIndex);
             });
         });
     }
@@ -575,12 +591,20 @@ public class ChatActivity extends AppCompatActivity {
             PendingAttachment item = mPendingAttachments.get(i);
             String icon = item.mimeType.startsWith("image/") ? "🖼 " : "📄 ";
             if (sb.length() > 0) sb.append("  ·  ");
-            sb.append(icon).append(item.filename).append(" (").append(formatBytes(item.data.length)).append(")");
+            sb.append(icon).append(item.filename).append(" (").append(formatBytes(item.source.length())).append(")");
         }
         mAttachmentPreview.setText(sb.toString());
         mAttachmentPreview.setVisibility(View.VISIBLE);
     }
 
+    private void showUploadProgress(@NonNull PendingAttachment attachment, long sent, long total) {
+        if (mAttachmentPreview == null) return;
+        int percent = total <= 0L ? 0 : (int) Math.min(100L, sent * 100L / total);
+        mAttachmentPreview.setText(String.format(Locale.US, "⬆ %s  %d%%  (%s / %s)",
+            attachment.filename, percent, formatBytes(sent), formatBytes(total)));
+        mAttachmentPreview.setVisibility(View.VISIBLE);
+    }
+
     private static String buildAttachmentSummaryText(@NonNull String text, @NonNull List<ClawPhonesAPI.UploadedFile> uploadedFiles) {
         StringBuilder sb = new StringBuilder();
         for (ClawPhonesAPI.UploadedFile uploaded : uploadedFiles) {
@@ -612,7 +636,8 @@ public class ChatActivity extends AppCompatActivity {
         return null;
     }
 
-    private byte[] compressImage(@NonNull Uri uri) throws IOException {
+    /** Scales and re-encodes the image to a JPEG under the cache dir, which is uploaded from disk. */
+    private File compressImage(@NonNull Uri uri) throws IOException {
         ContentResolver resolver = getContentResolver();
         try (InputStream is = resolver.openInputStream(uri)) {
             if (is == null) throw new IOException("cannot open image");
@@ -627,26 +652,30 @@ public class ChatActivity extends AppCompatActivity {
                 scaled = Bitmap.createScaledBitmap(original, IMAGE_MAX_WIDTH, scaledHeight, true);
             }
 
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-            scaled.compress(Bitmap.CompressFormat.JPEG, IMAGE_QUALITY, baos);
-            byte[] out = baos.toByteArray();
-
-            if (scaled != original) {
-                scaled.recycle();
+            File dir = new File(getCacheDir(), UPLOAD_CACHE_DIR);
+            if (!dir.isDirectory() && !dir.mkdirs()) throw new IOException("cannot create " + dir);
+            File out = File.createTempFile("upload_", ".jpg", dir);
+            try (FileOutputStream fos = new FileOutputStream(out)) {
+                if (!scaled.compress(Bitmap.CompressFormat.JPEG, IMAGE_QUALITY, fos)) {
+                    throw new IOException("encode image failed");
+                }
+            } catch (IOException e) {
+                deleteQuietly(out);
+                throw e;
+            } finally {
+                if (scaled != original) {
+                    scaled.recycle();
+                }
+                original.recycle();
             }
-            original.recycle();
             return out;
         }
     }
 
-    private static byte[] readAllBytes(@NonNull InputStream input) throws IOException {
-        ByteArrayOutputStream output = new ByteArrayOutputStream();
-        byte[] buffer = new byte[8192];
-        int read;
-        while ((read = input.read(buffer)) != -1) {
-            output.write(buffer, 0, read);
+    private static void deleteQuietly(@Nullable File file) {
+        if (file != null && file.exists() && !file.delete()) {
+            file.deleteOnExit();
         }
-        return output.toByteArray();
     }
 
     @NonNull
@@ -694,51 +723,48 @@ public class ChatActivity extends AppCompatActivity {
         setInputEnabled(false);
 
         execSafe(() -> {
+            final ConversationCache cache = mCache;
             boolean usedCache = false;
-            if (mCache != null) {
-                List<Map<String, Object>> cachedRows = new ArrayList<>(mCache.getRecentMessages(conversationId));
-                if (!cachedRows.isEmpty()) {
-                    Collections.sort(cachedRows, new Comparator<Map<String, Object>>() {
-                        @Override
-                        public int compare(Map<String, Object> a, Map<String, Object> b) {
-                            return Long.compare(asLong(a.get("created_at")), asLong(b.get("created_at")));
-                        }
-                    });
+            if (cache != null) {
+                List<ConversationCache.CachedMessage> cachedPage =
+                    cache.getLatestMessages(conversationId, MESSAGE_PAGE_SIZE);
+                if (!cachedPage.isEmpty()) {
                     usedCache = true;
-                    List<Map<String, Object>> safeCachedRows = cachedRows;
                     runSafe(() -> {
-                        applyHistoryRows(safeCachedRows, conversationId);
-                        mBusy = false;
-                        setInputEnabled(true);
-                        tryFlushPendingMessages();
+                        applyCachedHistoryPage(cachedPage, conversationId);
+                        onHistoryLoaded();
                     });
                 }
             }
             final boolean hadCache = usedCache;
 
             try {
-                List<Map<String, Object>> rows = new ArrayList<>(
+                List<ClawPhonesAPI.ConversationMessage> rows = new ArrayList<>(
                     ClawPhonesAPI.getMessages(ChatActivity.this, conversationId));
 
-                Collections.sort(rows, new Comparator<Map<String, Object>>() {
+                if (cache != null) {
+                    cache.upsertMessages(conversationId, rows);
+                    List<ConversationCache.CachedMessage> latestPage =
+                        cache.getLatestMessages(conversationId, MESSAGE_PAGE_SIZE);
+                    runSafe(() -> {
+                        applyCachedHistoryPage(latestPage, conversationId);
+                        onHistoryLoaded();
+                    });
+                    return;
+                }
+
+                Collections.sort(rows, new Comparator<ClawPhonesAPI.ConversationMessage>() {
                     @Override
-                    public int compare(Map<String, Object> a, Map<String, Object> b) {
-                        return Long.compare(asLong(a.get("created_at")), asLong(b.get("created_at")));
+                    public int compare(ClawPhonesAPI.ConversationMessage a, ClawPhonesAPI.ConversationMessage b) {
+                        return Long.compare(a.createdAt, b.createdAt);
                     }
                 });
 
-                if (mCache != null) {
-                    mCache.upsertMessages(conversationId, rows);
-                    rows = new ArrayList<>(mCache.getRecentMessages(conversationId));
-                }
-
-                List<Map<String, Object>> safeRows = rows;
+                List<ClawPhonesAPI.ConversationMessage> safeRows = rows;
 
                 runSafe(() -> {
                     applyHistoryRows(safeRows, conversationId);
-                    mBusy = false;
-                    setInputEnabled(true);
-                    tryFlushPendingMessages();
+                    onHistoryLoaded();
                 });
             } catch (ClawPhonesAPI.ApiException e) {
                 if (e.statusCode != 401) {
@@ -769,18 +795,21 @@ public class ChatActivity extends AppCompatActivity {
         });
     }
 
-    private void applyHistoryRows(@NonNull List<Map<String, Object>> rows, @Nullable String conversationId) {
+    private void onHistoryLoaded() {
+        mBusy = false;
+        setInputEnabled(true);
+        tryFlushPendingMessages();
+    }
+
+    private void applyHistoryRows(@NonNull List<ClawPhonesAPI.ConversationMessage> rows,
+                                  @Nullable String conversationId) {
         mAllHistoryMessages.clear();
-        for (Map<String, Object> row : rows) {
-            String role = asString(row.get("role"));
-            String content = asString(row.get("content"));
-            ParsedVisionContent parsed = parseVisionContent(content);
-            if (TextUtils.isEmpty(parsed.text) && TextUtils.isEmpty(parsed.imageUrl)) continue;
-            ChatMessage.Role messageRole = "user".equalsIgnoreCase(role)
-                ? ChatMessage.Role.USER
-                : ChatMessage.Role.ASSISTANT;
-            mAllHistoryMessages.add(new ChatMessage(messageRole, parsed.text, false, parsed.imageUrl));
+        for (ClawPhonesAPI.ConversationMessage row : rows) {
+            ChatMessage message = toHistoryMessage(row.role, row.content);
+            if (message != null) mAllHistoryMessages.add(message);
         }
+        mOldestCachedMessage = null;
+        mHasOlderCachedHistory = false;
 
         mMessages.clear();
         mQueuedMessageIndexes.clear();
@@ -797,8 +826,45 @@ public class ChatActivity extends AppCompatActivity {
         scrollToBottom();
     }
 
+    /** Shows the newest cached page; older pages are read from the cache on scroll-back. */
+    private void applyCachedHistoryPage(@NonNull List<ConversationCache.CachedMessage> page,
+                                        @Nullable String conversationId) {
+        mAllHistoryMessages.clear();
+        mNextHistoryLoadStart = 0;
+        mLoadingOlderHistory = false;
+        mOldestCachedMessage = page.isEmpty() ? null : page.get(0);
+        mHasOlderCachedHistory = page.size() >= MESSAGE_PAGE_SIZE;
+
+        mMessages.clear();
+        mQueuedMessageIndexes.clear();
+        appendCachedMessages(page, mMessages);
+
+        restoreQueuedMessagesForConversation(conversationId);
+        mAdapter.notifyDataSetChanged();
+        scrollToBottom();
+    }
+
+    private static void appendCachedMessages(@NonNull List<ConversationCache.CachedMessage> page,
+                                             @NonNull List<ChatMessage> out) {
+        for (ConversationCache.CachedMessage cached : page) {
+            ChatMessage message = toHistoryMessage(cached.role, cached.content);
+            if (message != null) out.add(message);
+        }
+    }
+
+    @Nullable
+    private static ChatMessage toHistoryMessage(@Nullable String role, @Nullable String content) {
+        ParsedVisionContent parsed = parseVisionContent(content);
+        if (TextUtils.isEmpty(parsed.text) && TextUtils.isEmpty(parsed.imageUrl)) return null;
+        ChatMessage.Role messageRole = "user".equalsIgnoreCase(role)
+            ? ChatMessage.Role.USER
+            : ChatMessage.Role.ASSISTANT;
+        return new ChatMessage(messageRole, parsed.text, false, parsed.imageUrl);
+    }
+
     private void maybeLoadOlderHistory() {
-        if (mLoadingOlderHistory || mNextHistoryLoadStart <= 0 || mRecycler == null) return;
+        if (mLoadingOlderHistory || mRecycler == null) return;
+        if (mNextHistoryLoadStart <= 0 && !mHasOlderCachedHistory) return;
         if (!(mRecycler.getLayoutManager() instanceof LinearLayoutManager)) return;
 
         LinearLayoutManager layoutManager = (LinearLayoutManager) mRecycler.getLayoutManager();
@@ -807,30 +873,65 @@ public class ChatActivity extends AppCompatActivity {
         int firstVisible = layoutManager.findFirstVisibleItemPosition();
         if (firstVisible < 0 || firstVisible > PAGINATION_PREFETCH_TRIGGER) return;
 
+        if (mNextHistoryLoadStart <= 0) {
+            loadOlderCachedPage();
+            return;
+        }
+
         int currentStart = mNextHistoryLoadStart;
         int nextStart = Math.max(0, currentStart - MESSAGE_PAGE_SIZE);
         if (nextStart >= currentStart) return;
 
-        mLoadingOlderHistory = true;
         List<ChatMessage> olderChunk = new ArrayList<>(mAllHistoryMessages.subList(nextStart, currentStart));
-        if (olderChunk.isEmpty()) {
-            mLoadingOlderHistory = false;
+        prependOlderMessages(olderChunk);
+        mNextHistoryLoadStart = nextStart;
+    }
+
+    private void loadOlderCachedPage() {
+        final ConversationCache cache = mCache;
+        final ConversationCache.CachedMessage oldest = mOldestCachedMessage;
+        final String conversationId = mConversationId;
+        if (cache == null || oldest == null || TextUtils.isEmpty(conversationId)) {
+            mHasOlderCachedHistory = false;
             return;
         }
 
-        mMessages.addAll(0, olderChunk);
-        shiftQueuedIndexes(olderChunk.size());
-        mAdapter.notifyItemRangeInserted(0, olderChunk.size());
+        mLoadingOlderHistory = true;
+        execSafe(() -> {
+            List<ConversationCache.CachedMessage> page = cache.getMessagesBefore(
+                conversationId, oldest.createdAt, oldest.localId, MESSAGE_PAGE_SIZE);
+            runSafe(() -> {
+                mLoadingOlderHistory = false;
+                // A history refresh replaced the visible page while this one was loading.
+                if (oldest != mOldestCachedMessage || !TextUtils.equals(conversationId, mConversationId)) return;
+
+                mHasOlderCachedHistory = page.size() >= MESSAGE_PAGE_SIZE;
+                if (page.isEmpty()) return;
+                mOldestCachedMessage = page.get(0);
+
+                List<ChatMessage> olderChunk = new ArrayList<>(page.size());
+                appendCachedMessages(page, olderChunk);
+                prependOlderMessages(olderChunk);
+            });
+        });
+    }
+
+    private void prependOlderMessages(@NonNull List<ChatMessage> olderChunk) {
+        if (olderChunk.isEmpty() || mRecycler == null) return;
+        if (!(mRecycler.getLayoutManager() instanceof LinearLayoutManager)) return;
+        LinearLayoutManager layoutManager = (LinearLayoutManager) mRecycler.getLayoutManager();
 
+        int firstVisible = Math.max(0, layoutManager.findFirstVisibleItemPosition());
         int previousOffset = 0;
         View firstView = layoutManager.findViewByPosition(firstVisible);
         if (firstView != null) {
             previousOffset = firstView.getTop();
         }
-        layoutManager.scrollToPositionWithOffset(firstVisible + olderChunk.size(), previousOffset);
 
-        mNextHistoryLoadStart = nextStart;
-        mLoadingOlderHistory = false;
+        mMessages.addAll(0, olderChunk);
+        shiftQueuedIndexes(olderChunk.size());
+        mAdapter.notifyItemRangeInserted(0, olderChunk.size());
+        layoutManager.scrollToPositionWithOffset(firstVisible + olderChunk.size(), previousOffset);
     }
 
     private void shiftQueuedIndexes(int delta) {
@@ -847,13 +948,13 @@ public class ChatActivity extends AppCompatActivity {
         if (TextUtils.isEmpty(conversationId)) return;
         execSafe(() -> {
             try {
-                List<Map<String, Object>> rows = new ArrayList<>(
+                List<ClawPhonesAPI.ConversationMessage> rows = new ArrayList<>(
                     ClawPhonesAPI.getMessages(ChatActivity.this, conversationId)
                 );
-                Collections.sort(rows, new Comparator<Map<String, Object>>() {
+                Collections.sort(rows, new Comparator<ClawPhonesAPI.ConversationMessage>() {
                     @Override
-                    public int compare(Map<String, Object> a, Map<String, Object> b) {
-                        return Long.compare(asLong(a.get("created_at")), asLong(b.get("created_at")));
+                    public int compare(ClawPhonesAPI.ConversationMessage a, ClawPhonesAPI.ConversationMessage b) {
+                        return Long.compare(a.createdAt, b.createdAt);
                     }
                 });
                 if (mCache != null) {
@@ -976,7 +1077,7 @@ public class ChatActivity extends AppCompatActivity {
 
         if (canSendImmediately()) {
             int userIndex = addUserMessage(textToSend);
-            sendMessageOnline(mConversationId, textToSend, null, null, userIndex);
+            sendMessageOnline(mConversationId, textToSend, null, userIndex);
             return;
         }
 
@@ -990,15 +1091,17 @@ public class ChatActivity extends AppCompatActivity {
         }
     }
 
+    /** Queued messages go first, so a direct send waits behind them to keep the conversation ordered. */
     private boolean canSendImmediately() {
-        return !TextUtils.isEmpty(mConversationId) && isNetworkConnected();
+        return !TextUtils.isEmpty(mConversationId)
+            && isNetworkConnected()
+            && (mMessageQueue == null || !mMessageQueue.hasUnsentForConversation(mConversationId));
     }
 
     private void sendMessageOnline(
         @Nullable String conversationId,
         @NonNull String text,
         @Nullable List<String> fileIds,
-        @Nullable Long queueId,
         @Nullable Integer userIndex
     ) {
         final ArrayList<String> normalizedFileIds = new ArrayList<>();
@@ -1012,22 +1115,12 @@ public class ChatActivity extends AppCompatActivity {
         final boolean hasFileIds = !normalizedFileIds.isEmpty();
 
         if (TextUtils.isEmpty(conversationId)) {
-            if (queueId != null) {
-                if (mMessageQueue != null) mMessageQueue.markPending(queueId);
-                setQueuedMessageState(queueId, ChatMessage.DeliveryState.SENDING, 0);
-                if (isNetworkConnected() && TextUtils.isEmpty(mConversationId)) {
-                    createConversation();
-                }
-                return;
-            }
-
             if (hasFileIds) {
                 if (isNetworkConnected() && TextUtils.isEmpty(mConversationId)) {
                     createConversation(() -> sendMessageOnline(
                         mConversationId,
                         text,
                         new ArrayList<>(normalizedFileIds),
-                        null,
                         userIndex
                     ));
                     return;
@@ -1048,15 +1141,6 @@ public class ChatActivity extends AppCompatActivity {
         setInputEnabled(false);
         setSendingState(true);
 
-        if (queueId != null) {
-            int currentRetry = 0;
-            Integer idx = mQueuedMessageIndexes.get(queueId);
-            if (idx != null && idx >= 0 && idx < mMessages.size()) {
-                currentRetry = mMessages.get(idx).retryCount;
-            }
-            setQueuedMessageState(queueId, ChatMessage.DeliveryState.SENDING, currentRetry);
-        }
-
         final int assistantIndex = addAssistantMessage(getString(R.string.chat_status_thinking), true);
         final String targetConversationId = conversationId;
 
@@ -1084,10 +1168,6 @@ public class ChatActivity extends AppCompatActivity {
                                 finalContent = accumulated.toString();
                             }
                             updateAssistantMessage(assistantIndex, finalContent);
-                            if (queueId != null) {
-                                if (mMessageQueue != null) mMessageQueue.remove(queueId);
-                                markQueuedMessageSent(queueId);
-                            }
                             syncConversationHistoryToCache(targetConversationId);
                             finishSendingCycle();
                         });
@@ -1105,14 +1185,9 @@ public class ChatActivity extends AppCompatActivity {
                                 return;
                             }
 
-                            if (queueId != null) {
-                                removeMessageAt(assistantIndex);
-                                handleQueuedSendFailure(queueId);
-                                finishSendingCycle();
-                                return;
-                            }
-
-                            if (isLikelyOffline(error) && !hasFileIds) {
+                            // Once a reply has started the server has the message; queueing it
+                            // again would send it twice.
+                            if (isLikelyOffline(error) && !hasFileIds && accumulated.length() == 0) {
                                 removeMessageAt(assistantIndex);
                                 if (userIndex != null) {
                                     queueExistingUserMessage(userIndex, text, targetConversationId);
@@ -1167,19 +1242,6 @@ public class ChatActivity extends AppCompatActivity {
         }
     }
 
-    private void handleQueuedSendFailure(long queueId) {
-        if (mMessageQueue == null) return;
-        int retryCount = mMessageQueue.incrementRetryCount(queueId);
-        if (retryCount >= MAX_QUEUE_RETRY) {
-            mMessageQueue.markFailed(queueId);
-            setQueuedMessageState(queueId, ChatMessage.DeliveryState.FAILED, retryCount);
-            return;
-        }
-        mMessageQueue.markPending(queueId);
-        setQueuedMessageState(queueId, ChatMessage.DeliveryState.SENDING, retryCount);
-        mMainHandler.postDelayed(this::tryFlushPendingMessages, 800L);
-    }
-
     private void onRetryQueuedMessage(long queueId) {
         if (mMessageQueue == null) return;
         if (!isNetworkConnected()) {
@@ -1191,32 +1253,62 @@ public class ChatActivity extends AppCompatActivity {
         tryFlushPendingMessages();
     }
 
+    /**
+     * Hands queued messages to {@link MessageQueueDrainer}. Messages typed before a conversation
+     * existed are first bound to the current one, creating it if needed.
+     */
     private void tryFlushPendingMessages() {
-        if (mDestroyed || mBusy || mMessageQueue == null) return;
+        if (mDestroyed || mMessageQueue == null || mDrainer == null) return;
         if (!isNetworkConnected()) return;
 
-        MessageQueue.PendingMessage next =
-            mMessageQueue.getNextPendingToSendForConversation(mConversationId);
-        if (next == null) return;
-
-        String targetConversationId = safeTrim(next.conversationId);
-        if (TextUtils.isEmpty(targetConversationId)) {
+        if (mMessageQueue.getNextPendingToSendForConversation("") != null) {
             if (TextUtils.isEmpty(mConversationId)) {
-                createConversation();
+                if (!mBusy) createConversation();
                 return;
             }
-            targetConversationId = mConversationId;
-            mMessageQueue.updateConversationId(next.id, targetConversationId);
+            mMessageQueue.assignConversationIdForEmpty(mConversationId);
+        }
+        mDrainer.requestDrain();
+    }
+
+    private final MessageQueueDrainer.Listener mDrainListener = new MessageQueueDrainer.Listener() {
+        @Override
+        public void onSending(@NonNull MessageQueue.PendingMessage message) {
+            if (!isCurrentConversation(message)) return;
+            appendOrUpdateQueuedMessage(message);
+            setQueuedMessageState(message.id, ChatMessage.DeliveryState.SENDING, message.retryCount);
+        }
+
+        @Override
+        public void onSent(@NonNull MessageQueue.PendingMessage message, @NonNull String reply) {
+            if (!isCurrentConversation(message)) return;
+            markQueuedMessageSent(message.id);
+            addAssistantMessage(reply);
+            syncConversationHistoryToCache(message.conversationId);
         }
 
-        mMessageQueue.markSending(next.id);
-        setQueuedMessageState(next.id, ChatMessage.DeliveryState.SENDING, next.retryCount);
+        @Override
+        public void onRetryScheduled(@NonNull MessageQueue.PendingMessage message, int retryCount) {
+            if (!isCurrentConversation(message)) return;
+            setQueuedMessageState(message.id, ChatMessage.DeliveryState.SENDING, retryCount);
+        }
+
+        @Override
+        public void onFailed(@NonNull MessageQueue.PendingMessage message, int retryCount) {
+            if (!isCurrentConversation(message)) return;
+            setQueuedMessageState(message.id, ChatMessage.DeliveryState.FAILED, retryCount);
+        }
 
-        if (!mQueuedMessageIndexes.containsKey(next.id)) {
-            int index = addUserMessage(next.message, next.id, ChatMessage.DeliveryState.SENDING, next.retryCount);
-            mQueuedMessageIndexes.put(next.id, index);
+        @Override
+        public void onAuthExpired() {
+            if (mDestroyed) return;
+            ClawPhonesAPI.clearToken(ChatActivity.this);
+            redirectToLogin(getString(R.string.chat_login_expired));
         }
-        sendMessageOnline(targetConversationId, next.message, null, next.id, mQueuedMessageIndexes.get(next.id));
+    };
+
+    private boolean isCurrentConversation(@NonNull MessageQueue.PendingMessage message) {
+        return !mDestroyed && TextUtils.equals(safeTrim(message.conversationId), mConversationId);
     }
 
     private void restoreQueuedMessagesForConversation(@Nullable String conversationId) {
@@ -1752,21 +1844,6 @@ public class ChatActivity extends AppCompatActivity {
         return msg;
     }
 
-    private static String asString(Object value) {
-        if (value == null) return "";
-        return String.valueOf(value);
-    }
-
-    private static long asLong(Object value) {
-        if (value == null) return 0L;
-        if (value instanceof Number) return ((Number) value).longValue();
-        try {
-            return Long.parseLong(String.valueOf(value));
-        } catch (Exception ignored) {
-            return 0L;
-        }
-    }
-
     private static final Pattern MARKDOWN_IMAGE_PATTERN =
         Pattern.compile("!\\[[^\\]]*\\]\\((https?://[^\\s)]+)\\)");
     private static final String MESSAGE_META_OPEN = "[[MESSAGE_META]]";
@@ -2013,12 +2090,16 @@ public class ChatActivity extends AppCompatActivity {
     }
 
     static final class PendingAttachment {
-        final byte[] data;
+        final UploadSource source;
+        /** Cache file backing {@link #source}, deleted once uploaded or discarded. */
+        @Nullable final File tempFile;
         final String filename;
         final String mimeType;
 
-        PendingAttachment(@NonNull byte[] data, @NonNull String filename, @NonNull String mimeType) {
-            this.data = data;
+        PendingAttachment(@NonNull UploadSource source, @Nullable File tempFile,
+                          @NonNull String filename, @NonNull String mimeType) {
+            this.source = source;
+            this.tempFile = tempFile;
             this.filename = filename;
             this.mimeType = mimeType;
         }
@@ -2304,24 +2385,22 @@ public class ChatActivity extends AppCompatActivity {
                 int reqHeight,
                 @Nullable String authToken
             ) {
-                HttpURLConnection conn = null;
-                try {
-                    conn = (HttpURLConnection) new URL(url).openConnection();
-                    conn.setConnectTimeout(8_000);
-                    conn.setReadTimeout(10_000);
-                    conn.setDoInput(true);
-                    conn.setRequestProperty("Accept", "image/*");
-                    if (url.startsWith(ClawPhonesAPI.BASE_URL + "/v1/files/")
-                        && authToken != null
-                        && !authToken.trim().isEmpty()) {
-                        conn.setRequestProperty("Authorization", "Bearer " + authToken.trim());
-                    }
+                Request.Builder builder = new Request.Builder()
+                    .url(url)
+                    .header("Accept", "image/*");
+                if (url.startsWith(ClawPhonesAPI.BASE_URL + "/v1/files/")
+                    && authToken != null
+                    && !authToken.trim().isEmpty()) {
+                    builder.header("Authorization", "Bearer " + authToken.trim());
+                }
+                Request request = HttpTransport.withTimeouts(builder, 8_000L, 10_000L, 0L).build();
 
-                    int code = conn.getResponseCode();
-                    if (code < 200 || code >= 300) return null;
+                try (Response response = HttpTransport.executeCached(request)) {
+                    ResponseBody body = response.body();
+                    if (!response.isSuccessful() || body == null) return null;
 
                     byte[] bytes;
-                    try (InputStream in = conn.getInputStream();
+                    try (InputStream in = body.byteStream();
                          ByteArrayOutputStream out = new ByteArrayOutputStream()) {
                         byte[] buffer = new byte[8 * 1024];
                         int read;
@@ -2339,8 +2418,6 @@ public class ChatActivity extends AppCompatActivity {
                     return decodeDownsampled(bytes, reqWidth, reqHeight);
                 } catch (Exception ignored) {
                     return null;
-                } finally {
-                    if (conn != null) conn.disconnect();
                 }
             }
 
@@ -0,0 +1,242 @@
+package ai.clawphones.agent.chat;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.json.JSONException;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Reusable scanner for one chat stream event payload, read straight from the SSE data bytes.
+ *
+ * Payloads are flat objects: {"delta": "..."} per token, {"done": true, "content": "...",
+ * "message_id": "..."} at the end, or {"error": "..."}. The delta is decoded from UTF-8 directly
+ * into the caller's buffer, so token events allocate nothing; other keys are skipped in place.
+ */
+final class ChatStreamEvent {
+
+    boolean done;
+    @Nullable String error;
+    @Nullable String content;
+    @Nullable String messageId;
+
+    private final StringBuilder mScratch = new StringBuilder();
+    private byte[] mBuf;
+    private int mPos;
+    private int mEnd;
+
+    /**
+     * Parses {@code data[0, length)}. A delta is appended to {@code deltaSink}; on done or error
+     * events the sink is left as it was, matching how those events have always been handled.
+     */
+    void parse(@NonNull byte[] data, int length, @NonNull StringBuilder deltaSink) throws JSONException {
+        done = false;
+        error = null;
+        content = null;
+        messageId = null;
+        mBuf = data;
+        mPos = 0;
+        mEnd = length;
+        int sinkMark = deltaSink.length();
+        try {
+            parseObject(deltaSink);
+        } catch (JSONException e) {
+            deltaSink.setLength(sinkMark);
+            throw e;
+        } finally {
+            mBuf = null;
+        }
+        if (done || error != null) deltaSink.setLength(sinkMark);
+    }
+
+    private void parseObject(StringBuilder deltaSink) throws JSONException {
+        skipWhitespace();
+        expect('{');
+        skipWhitespace();
+        if (peek() == '}') {
+            mPos++;
+            return;
+        }
+        while (true) {
+            skipWhitespace();
+            expect('"');
+            mScratch.setLength(0);
+            readString(mScratch);
+            skipWhitespace();
+            expect(':');
+            skipWhitespace();
+
+            if ("delta".contentEquals(mScratch) && peek() == '"') {
+                mPos++;
+                readString(deltaSink);
+            } else if ("done".contentEquals(mScratch)) {
+                done = readLiteralTrue();
+            } else if ("content".contentEquals(mScratch)) {
+                content = readScalar();
+            } else if ("message_id".contentEquals(mScratch)) {
+                messageId = readScalar();
+            } else if ("error".contentEquals(mScratch)) {
+                int start = mPos;
+                byte first = peek();
+                if (first == '{' || first == '[') {
+                    skipValue();
+                    error = new String(mBuf, start, mPos - start, StandardCharsets.UTF_8);
+                } else {
+                    error = readScalar();
+                }
+            } else {
+                skipValue();
+            }
+
+            skipWhitespace();
+            byte next = next();
+            if (next == '}') return;
+            if (next != ',') throw syntax("expected ',' or '}'");
+        }
+    }
+
+    /** A string, number or boolean as text; null for JSON null and skipped containers. */
+    @Nullable
+    private String readScalar() throws JSONException {
+        byte first = peek();
+        if (first == '"') {
+            mPos++;
+            mScratch.setLength(0);
+            readString(mScratch);
+            return mScratch.toString();
+        }
+        int start = mPos;
+        skipValue();
+        if (first == '{' || first == '[') return null;
+        String literal = new String(mBuf, start, mPos - start, StandardCharsets.UTF_8);
+        return "null".equals(literal) ? null : literal;
+    }
+
+    private boolean readLiteralTrue() throws JSONException {
+        int start = mPos;
+        skipValue();
+        return mPos - start == 4 && mBuf[start] == 't' && mBuf[start + 1] == 'r'
+            && mBuf[start + 2] == 'u' && mBuf[start + 3] == 'e';
+    }
+
+    /** Decodes a string body (opening quote already consumed) into {@code out}. */
+    private void readString(StringBuilder out) throws JSONException {
+        while (true) {
+            int b = next() & 0xFF;
+            if (b == '"') return;
+            if (b == '\\') {
+                readEscape(out);
+            } else if (b < 0x80) {
+                out.append((char) b);
+            } else if (b >= 0xC2 && b <= 0xDF) {
+                out.append((char) (((b & 0x1F) << 6) | continuation()));
+            } else if (b >= 0xE0 && b <= 0xEF) {
+                int c = ((b & 0x0F) << 12) | (continuation() << 6) | continuation();
+                out.append((char) c);
+            } else if (b >= 0xF0 && b <= 0xF4) {
+                int c = ((b & 0x07) << 18) | (continuation() << 12) | (continuation() << 6) | continuation();
+                out.appendCodePoint(c);
+            } else {
+                out.append('\uFFFD');
+            }
+        }
+    }
+
+    private int continuation() throws JSONException {
+        int b = next() & 0xFF;
+        if ((b & 0xC0) != 0x80) throw syntax("invalid UTF-8");
+        return b & 0x3F;
+    }
+
+    private void readEscape(StringBuilder out) throws JSONException {
+        byte e = next();
+        switch (e) {
+            case '"': out.append('"'); break;
+            case '\\': out.append('\\'); break;
+            case '/': out.append('/'); break;
+            case 'b': out.append('\b'); break;
+            case 'f': out.append('\f'); break;
+            case 'n': out.append('\n'); break;
+            case 'r': out.append('\r'); break;
+            case 't': out.append('\t'); break;
+            case 'u': {
+                int c = 0;
+                for (int i = 0; i < 4; i++) {
+                    int digit = Character.digit(next(), 16);
+                    if (digit < 0) throw syntax("invalid \\u escape");
+                    c = (c << 4) | digit;
+                }
+                // Surrogate pairs arrive as two escapes and are appended one UTF-16 unit at a time.
+                out.append((char) c);
+                break;
+            }
+            default:
+                throw syntax("invalid escape");
+        }
+    }
+
+    private void skipValue() throws JSONException {
+        byte first = peek();
+        if (first == '"') {
+            mPos++;
+            skipString();
+            return;
+        }
+        if (first == '{' || first == '[') {
+            int depth = 0;
+            do {
+                byte b = next();
+                if (b == '"') {
+                    skipString();
+                } else if (b == '{' || b == '[') {
+                    depth++;
+                } else if (b == '}' || b == ']') {
+                    depth--;
+                }
+            } while (depth > 0);
+            return;
+        }
+        int start = mPos;
+        while (mPos < mEnd) {
+            byte b = mBuf[mPos];
+            if (b == ',' || b == '}' || b == ']' || isWhitespace(b)) break;
+            mPos++;
+        }
+        if (mPos == start) throw syntax("expected a value");
+    }
+
+    private void skipString() throws JSONException {
+        while (true) {
+            byte b = next();
+            if (b == '"') return;
+            if (b == '\\') next();
+        }
+    }
+
+    private void skipWhitespace() {
+        while (mPos < mEnd && isWhitespace(mBuf[mPos])) mPos++;
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\n' || b == '\r';
+    }
+
+    private byte peek() throws JSONException {
+        if (mPos >= mEnd) throw syntax("unexpected end of event");
+        return mBuf[mPos];
+    }
+
+    private byte next() throws JSONException {
+        if (mPos >= mEnd) throw syntax("unexpected end of event");
+        return mBuf[mPos++];
+    }
+
+    private void expect(char c) throws JSONException {
+        if (next() != c) throw syntax("expected '" + c + "'");
+    }
+
+    private JSONException syntax(String message) {
+        return new JSONException("Malformed stream event at " + mPos + ": " + message);
+    }
+}
@@ -0,0 +1,116 @@
+package ai.clawphones.agent.chat;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.json.JSONException;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * State of one chatStream reply across its connections.
+ *
+ * Owns the SSE decoder and event scanner, accumulates the reply, and coalesces token deltas into
+ * batches before handing them to {@link ClawPhonesAPI.StreamCallback#onDelta}: a batch is
+ * delivered once it holds {@link #BATCH_MAX_CHARS} characters or its first delta is
+ * {@link #BATCH_INTERVAL_MS} old, and always before completion or an error. Because batching is
+ * driven by arriving events, a stalled stream holds back at most the deltas received since the
+ * last delivery.
+ *
+ * The last event id survives reconnects, so the caller can resume with Last-Event-ID and the
+ * reply continues where it stopped. Exactly one of onComplete or onError is called.
+ */
+final class ChatStreamSession implements SseDecoder.Listener {
+
+    static final long BATCH_INTERVAL_MS = 50L;
+    static final int BATCH_MAX_CHARS = 256;
+
+    private final ClawPhonesAPI.StreamCallback mCallback;
+    private final SseDecoder mDecoder = new SseDecoder(this);
+    private final ChatStreamEvent mEvent = new ChatStreamEvent();
+    private final StringBuilder mAccumulated = new StringBuilder();
+    private final StringBuilder mBatch = new StringBuilder();
+    private long mBatchStartedAtNanos;
+    private int mStatusCode;
+    private boolean mFinished;
+
+    ChatStreamSession(@NonNull ClawPhonesAPI.StreamCallback callback) {
+        mCallback = callback;
+    }
+
+    /** Decodes one connection's body until it ends or the reply finishes. */
+    void read(@NonNull InputStream body, int statusCode) throws IOException {
+        mStatusCode = statusCode;
+        mDecoder.resetConnection();
+        mDecoder.readFrom(body);
+    }
+
+    boolean isFinished() {
+        return mFinished;
+    }
+
+    @Nullable
+    String getLastEventId() {
+        return mDecoder.getLastEventId();
+    }
+
+    /** The server's retry: delay, or -1 if it sent none. */
+    long getRetryMs() {
+        return mDecoder.getRetryMs();
+    }
+
+    /** Delivers any pending deltas, then reports {@code error}. No-op once the reply finished. */
+    void fail(@NonNull Exception error) {
+        if (mFinished) return;
+        flushBatch();
+        mFinished = true;
+        mDecoder.stop();
+        mCallback.onError(error);
+    }
+
+    @Override
+    public void onEvent(@NonNull SseDecoder.Event event) {
+        if (mFinished) return;
+        int before = mBatch.length();
+        try {
+            mEvent.parse(event.data(), event.dataLength(), mBatch);
+        } catch (JSONException e) {
+            fail(e);
+            return;
+        }
+
+        if (mEvent.error != null) {
+            fail(new ClawPhonesAPI.ApiException(mStatusCode, mEvent.error));
+            return;
+        }
+
+        if (mEvent.done) {
+            flushBatch();
+            String fullContent = mEvent.content;
+            if (fullContent == null || fullContent.isEmpty()) {
+                fullContent = mAccumulated.toString();
+            }
+            mFinished = true;
+            mDecoder.stop();
+            mCallback.onComplete(fullContent, mEvent.messageId);
+            return;
+        }
+
+        if (mBatch.length() == before) return;
+        long now = System.nanoTime();
+        if (before == 0) mBatchStartedAtNanos = now;
+        if (mBatch.length() >= BATCH_MAX_CHARS
+            || now - mBatchStartedAtNanos >= BATCH_INTERVAL_MS * 1_000_000L) {
+            flushBatch();
+        }
+    }
+
+    private void flushBatch() {
+        if (mBatch.length() == 0) return;
+        String delta = mBatch.toString();
+        mAccumulated.append(mBatch);
+        mBatch.setLength(0);
+        mCallback.onDelta(delta);
+    }
+}
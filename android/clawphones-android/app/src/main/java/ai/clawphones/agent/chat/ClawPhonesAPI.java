@@ -8,31 +8,27 @@ import androidx.security.crypto.MasterKeys;
 
 import com.termux.shared.logger.Logger;
 
+import okhttp3.MediaType;
 import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
-import org.json.JSONTokener;
 
-import java.io.BufferedReader;
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
-import java.io.InputStreamReader;
-import java.io.OutputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
-import java.nio.charset.StandardCharsets;
+import java.io.Reader;
+import java.io.StringReader;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.HashMap;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.UUID;
-import java.util.concurrent.TimeUnit;
 
 /**
  * Minimal HTTP client for ClawPhones backend API.
@@ -52,9 +48,18 @@ public class ClawPhonesAPI {
 
     public static final String BASE_URL = "https://3.142.69.6:8080";
 
-    private static final int CONNECT_TIMEOUT_MS = 15_000;
-    private static final int READ_TIMEOUT_MS = 60_000;
-    private static final int STREAM_READ_TIMEOUT_MS = 120_000;
+    private static final long STREAM_READ_TIMEOUT_MS = 120_000L;
+    private static final int MAX_STREAM_RESUMES = 3;
+    private static final long STREAM_RESUME_DELAY_MS = 1_000L;
+    private static final long STREAM_RESUME_MAX_DELAY_MS = 10_000L;
+    /**
+     * Stream response header, valued {@link #STREAM_RESUME_LAST_EVENT_ID}, by which the server
+     * declares that a repeated POST carrying Last-Event-ID continues the reply instead of sending
+     * the message again.
+     */
+    static final String STREAM_RESUME_HEADER = "X-Stream-Resume";
+    static final String STREAM_RESUME_LAST_EVENT_ID = "last-event-id";
+    private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
 
     private static final String PREFS = "clawphones_api";
     private static final String SECURE_PREFS = "clawphones_secure_prefs";
@@ -65,12 +70,6 @@ public class ClawPhonesAPI {
     private static final long TOKEN_REFRESH_WINDOW_SECONDS = 7L * 24L * 60L * 60L;
     private static final List<String> DEFAULT_PERSONAS = Arrays.asList(
         "assistant", "coder", "writer", "translator", "custom");
-    private static final OkHttpClient SHARED_OKHTTP_CLIENT = new OkHttpClient.Builder()
-        .connectTimeout(CONNECT_TIMEOUT_MS, TimeUnit.MILLISECONDS)
-        .readTimeout(READ_TIMEOUT_MS, TimeUnit.MILLISECONDS)
-        .writeTimeout(READ_TIMEOUT_MS, TimeUnit.MILLISECONDS)
-        .retryOnConnectionFailure(true)
-        .build();
 
     public static class ApiException extends Exception {
         public final int statusCode;
@@ -106,6 +105,21 @@ public class ClawPhonesAPI {
         }
     }
 
+    /** One message of a conversation's history. */
+    public static class ConversationMessage {
+        public final String id; // empty when the server sent none
+        public final String role;
+        public final String content;
+        public final long createdAt;
+
+        public ConversationMessage(String id, String role, String content, long createdAt) {
+            this.id = id;
+            this.role = role;
+            this.content = content;
+            this.createdAt = createdAt;
+        }
+    }
+
     /** Plan feature limits for a single tier. */
     public static class PlanTier {
         public final String tier;
@@ -136,6 +150,53 @@ public class ClawPhonesAPI {
         }
     }
 
+    /**
+     * One entry of /v1/world/cells: a coverage cell, a node, or both, depending on which keys the
+     * backend sent. Only scalars and known geometry keys are kept.
+     */
+    public static class WorldItem {
+        /** Scalar fields as JSON text; booleans read as "true"/"false". */
+        public final Map<String, String> fields;
+        /** Geometry fields as raw [a, b] pairs in payload order; polygons keep their outer ring. */
+        public final Map<String, List<double[]>> shapes;
+
+        public WorldItem(Map<String, String> fields, Map<String, List<double[]>> shapes) {
+            this.fields = fields == null ? new HashMap<>() : fields;
+            this.shapes = shapes == null ? new HashMap<>() : shapes;
+        }
+
+        /** First non-blank value among {@code keys}, or null. */
+        public String text(String... keys) {
+            for (String key : keys) {
+                String value = fields.get(key);
+                if (value == null) continue;
+                String trimmed = value.trim();
+                if (!trimmed.isEmpty() && !"null".equalsIgnoreCase(trimmed)) return trimmed;
+            }
+            return null;
+        }
+
+        /** Points of the first geometry key present, which may be empty; null if none is present. */
+        public List<double[]> shape(String... keys) {
+            for (String key : keys) {
+                List<double[]> points = shapes.get(key);
+                if (points != null) return points;
+            }
+            return null;
+        }
+    }
+
+    /** /v1/world/cells decoded into the cell and node lists. */
+    public static class WorldCells {
+        public final List<WorldItem> cells;
+        public final List<WorldItem> nodes;
+
+        public WorldCells(List<WorldItem> cells, List<WorldItem> nodes) {
+            this.cells = cells == null ? new ArrayList<>() : cells;
+            this.nodes = nodes == null ? new ArrayList<>() : nodes;
+        }
+    }
+
     /** /v1/user/profile */
     public static class UserProfile {
         public final String userId;
@@ -193,6 +254,11 @@ public class ClawPhonesAPI {
         void onError(Exception error);
     }
 
+    /** Upload progress; {@code bytesSent} may step back when a chunk is resent. */
+    public interface UploadProgressListener {
+        void onProgress(long bytesSent, long totalBytes);
+    }
+
     public interface UploadCallback {
         void onSuccess(UploadedFile uploadedFile);
         void onError(Exception error);
@@ -215,7 +281,7 @@ public class ClawPhonesAPI {
     }
 
     public static OkHttpClient getOkHttpClient() {
-        return SHARED_OKHTTP_CLIENT;
+        return HttpTransport.client();
     }
 
     // ── SharedPreferences helpers ───────────────────────────────────────────────
@@ -386,35 +452,17 @@ public class ClawPhonesAPI {
     /** GET /v1/conversations -> list */
     public static List<ConversationSummary> listConversations(Context context)
         throws IOException, ApiException, JSONException {
-        List<Map<String, Object>> maps = getConversations(context);
-        List<ConversationSummary> out = new ArrayList<>();
-        for (Map<String, Object> map : maps) {
-            out.add(new ConversationSummary(
-                asString(map.get("id")),
-                asStringOrNull(map.get("title")),
-                asLong(map.get("created_at")),
-                asLong(map.get("updated_at")),
-                (int) asLong(map.get("message_count"))
-            ));
-        }
-        return out;
+        return listConversations(context, 20, 0);
     }
 
-    /** GET /v1/conversations?limit=&offset= -> list */
+    /** GET /v1/conversations?limit=&offset= -> list, decoded while the body streams in */
     public static List<ConversationSummary> listConversations(Context context, int limit, int offset)
         throws IOException, ApiException, JSONException {
-        List<Map<String, Object>> maps = getConversations(context, limit, offset);
-        List<ConversationSummary> out = new ArrayList<>();
-        for (Map<String, Object> map : maps) {
-            out.add(new ConversationSummary(
-                asString(map.get("id")),
-                asStringOrNull(map.get("title")),
-                asLong(map.get("created_at")),
-                asLong(map.get("updated_at")),
-                (int) asLong(map.get("message_count"))
-            ));
-        }
-        return out;
+        String token = resolveAuthTokenForRequest(context);
+        int safeLimit = Math.max(1, limit);
+        int safeOffset = Math.max(0, offset);
+        String url = BASE_URL + "/v1/conversations?limit=" + safeLimit + "&offset=" + safeOffset;
+        return doGetStreaming(url, token, false, ApiJsonReader::readConversations);
     }
 
     /** GET /v1/conversations -> [{id,title,created_at,updated_at,message_count}, ...] */
@@ -426,24 +474,15 @@ public class ClawPhonesAPI {
     /** GET /v1/conversations?limit=&offset= -> [{id,title,created_at,updated_at,message_count}, ...] */
     public static List<Map<String, Object>> getConversations(Context context, int limit, int offset)
         throws IOException, ApiException, JSONException {
-        String token = resolveAuthTokenForRequest(context);
-        int safeLimit = Math.max(1, limit);
-        int safeOffset = Math.max(0, offset);
-        String url = BASE_URL + "/v1/conversations?limit=" + safeLimit + "&offset=" + safeOffset;
-        Object resp = doGetAny(url, token);
-        JSONArray arr = extractArray(resp, "conversations");
-        List<Map<String, Object>> out = new ArrayList<>();
-        if (arr == null) return out;
-
-        for (int i = 0; i < arr.length(); i++) {
-            JSONObject c = arr.optJSONObject(i);
-            if (c == null) continue;
+        List<ConversationSummary> summaries = listConversations(context, limit, offset);
+        List<Map<String, Object>> out = new ArrayList<>(summaries.size());
+        for (ConversationSummary c : summaries) {
             HashMap<String, Object> row = new HashMap<>();
-            row.put("id", c.optString("id", ""));
-            row.put("title", c.isNull("title") ? null : c.optString("title", null));
-            row.put("created_at", c.optLong("created_at", 0));
-            row.put("updated_at", c.optLong("updated_at", 0));
-            row.put("message_count", c.optInt("message_count", 0));
+            row.put("id", c.id);
+            row.put("title", c.title);
+            row.put("created_at", c.createdAt);
+            row.put("updated_at", c.updatedAt);
+            row.put("message_count", c.messageCount);
             out.add(row);
         }
         return out;
@@ -457,25 +496,11 @@ public class ClawPhonesAPI {
     }
 
     /** GET /v1/conversations/{id} -> {id, title, messages:[{id,role,content,created_at}, ...]} */
-    public static List<Map<String, Object>> getMessages(Context context, String conversationId)
+    public static List<ConversationMessage> getMessages(Context context, String conversationId)
         throws IOException, ApiException, JSONException {
         String token = resolveAuthTokenForRequest(context);
-        Object resp = doGetAny(BASE_URL + "/v1/conversations/" + conversationId, token);
-        JSONArray arr = extractArray(resp, "messages");
-        List<Map<String, Object>> out = new ArrayList<>();
-        if (arr == null) return out;
-
-        for (int i = 0; i < arr.length(); i++) {
-            JSONObject msg = arr.optJSONObject(i);
-            if (msg == null) continue;
-            HashMap<String, Object> row = new HashMap<>();
-            row.put("id", msg.optString("id", ""));
-            row.put("role", msg.optString("role", ""));
-            row.put("content", msg.optString("content", ""));
-            row.put("created_at", msg.optLong("created_at", 0));
-            out.add(row);
-        }
-        return out;
+        return doGetStreaming(BASE_URL + "/v1/conversations/" + conversationId, token, false,
+            ApiJsonReader::readMessages);
     }
 
     /** POST /v1/conversations/{id}/chat -> assistant content */
@@ -489,22 +514,21 @@ public class ClawPhonesAPI {
         return extractAssistantContent(resp);
     }
 
-    /** GET /v1/world/cells?hours=&res= -> raw object payload (JSONObject or JSONArray). */
-    public static Object getWorldCellsRaw(Context context, int hours, int res)
+    /** GET /v1/world/cells?hours=&res= -> coverage cells and nodes */
+    public static WorldCells getWorldCells(Context context, int hours, int res)
         throws IOException, ApiException, JSONException {
         String token = resolveAuthTokenForRequest(context);
         int safeHours = Math.max(1, hours);
         int safeRes = Math.max(0, res);
         String url = BASE_URL + "/v1/world/cells?hours=" + safeHours + "&res=" + safeRes;
-        return doGetAny(url, token);
+        return doGetStreaming(url, token, true, ApiJsonReader::readWorldCells);
     }
 
     /** GET /v1/user/plan -> current tier + daily usage + tier comparison */
     public static UserPlan getUserPlan(Context context)
         throws IOException, ApiException, JSONException {
         String token = resolveAuthTokenForRequest(context);
-        Object resp = doGetAny(BASE_URL + "/v1/user/plan", token);
-        return extractUserPlan(resp);
+        return doGetStreaming(BASE_URL + "/v1/user/plan", token, false, ApiJsonReader::readUserPlan);
     }
 
     /** GET /v1/user/profile */
@@ -563,17 +587,15 @@ public class ClawPhonesAPI {
         }
 
         String downloadUrl = exportInfo.downloadUrl.trim();
-        HttpURLConnection conn = null;
-        try {
-            conn = (HttpURLConnection) new URL(downloadUrl).openConnection();
-            conn.setConnectTimeout(CONNECT_TIMEOUT_MS);
-            conn.setReadTimeout(READ_TIMEOUT_MS);
-            conn.setRequestMethod("GET");
-            conn.setRequestProperty("Accept", "application/json");
-
-            int code = conn.getResponseCode();
-            if (code < 200 || code >= 300) {
-                String raw = readBody(conn, code);
+        Request request = new Request.Builder()
+            .url(downloadUrl)
+            .header("Accept", "application/json")
+            .get()
+            .build();
+        try (Response response = HttpTransport.execute(request)) {
+            int code = response.code();
+            if (!response.isSuccessful()) {
+                String raw = readBody(response);
                 throw new ApiException(code, raw.isEmpty() ? "HTTP " + code : raw);
             }
 
@@ -591,8 +613,10 @@ public class ClawPhonesAPI {
                 "clawphones_export_" + idPart + "_" + nowEpochSeconds() + ".json"
             );
 
+            ResponseBody body = response.body();
+            if (body == null) throw new IOException("empty export body");
             try (
-                InputStream in = conn.getInputStream();
+                InputStream in = body.byteStream();
                 FileOutputStream out = new FileOutputStream(output, false)
             ) {
                 byte[] buffer = new byte[8192];
@@ -604,8 +628,6 @@ public class ClawPhonesAPI {
             }
 
             return output;
-        } finally {
-            if (conn != null) conn.disconnect();
         }
     }
 
@@ -653,12 +675,32 @@ public class ClawPhonesAPI {
         byte[] fileData,
         String filename,
         String mimeType
+    ) throws IOException, ApiException, JSONException {
+        if (fileData == null || fileData.length == 0) {
+            throw new ApiException(400, "file data is empty");
+        }
+        return uploadFileBlocking(context, conversationId, UploadSource.fromBytes(fileData), filename, mimeType, null);
+    }
+
+    /**
+     * Streams {@code source} to /v1/upload without buffering it in memory. Payloads above
+     * {@link ResumableUploader#CHUNKED_THRESHOLD_BYTES} are sent in chunks that resume from the
+     * server's committed offset after a dropped connection. Must be called from a background
+     * thread; {@code listener} fires on the calling thread.
+     */
+    public static UploadedFile uploadFileBlocking(
+        Context context,
+        String conversationId,
+        UploadSource source,
+        String filename,
+        String mimeType,
+        UploadProgressListener listener
     ) throws IOException, ApiException, JSONException {
         String token = resolveAuthTokenForRequest(context);
         if (conversationId == null || conversationId.trim().isEmpty()) {
             throw new ApiException(400, "conversation_id is required");
         }
-        if (fileData == null || fileData.length == 0) {
+        if (source == null || source.length() <= 0L) {
             throw new ApiException(400, "file data is empty");
         }
 
@@ -667,44 +709,17 @@ public class ClawPhonesAPI {
         String safeMime = mimeType == null ? "" : mimeType.trim();
         if (safeMime.isEmpty()) safeMime = "application/octet-stream";
 
-        String boundary = "----clawphones-" + UUID.randomUUID().toString();
-        String urlStr = BASE_URL + "/v1/upload?conversation_id=" + conversationId;
-        HttpURLConnection conn = (HttpURLConnection) new URL(urlStr).openConnection();
-        conn.setConnectTimeout(CONNECT_TIMEOUT_MS);
-        conn.setReadTimeout(READ_TIMEOUT_MS);
-        conn.setRequestMethod("POST");
-        conn.setRequestProperty("Accept", "application/json");
-        conn.setRequestProperty("Content-Type", "multipart/form-data; boundary=" + boundary);
-        if (token != null && !token.trim().isEmpty()) {
-            conn.setRequestProperty("Authorization", "Bearer " + token.trim());
-        }
-        conn.setDoOutput(true);
-
-        try (OutputStream os = conn.getOutputStream()) {
-            ByteArrayOutputStream head = new ByteArrayOutputStream();
-            head.write(("--" + boundary + "\r\n").getBytes(StandardCharsets.UTF_8));
-            head.write(("Content-Disposition: form-data; name=\"file\"; filename=\"" + escapeQuoted(safeName) + "\"\r\n")
-                .getBytes(StandardCharsets.UTF_8));
-            head.write(("Content-Type: " + safeMime + "\r\n\r\n").getBytes(StandardCharsets.UTF_8));
-            os.write(head.toByteArray());
-            os.write(fileData);
-            os.write(("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.UTF_8));
-            os.flush();
-        }
-
-        JSONObject resp = readResponse(conn);
-        return new UploadedFile(
-            resp.optString("file_id", ""),
-            resp.optString("filename", safeName),
-            resp.optString("mime_type", safeMime),
-            resp.optLong("size", fileData.length),
-            resp.optString("extracted_text", null)
-        );
+        return new ResumableUploader(BASE_URL, token)
+            .upload(conversationId.trim(), source, safeName, safeMime, listener);
     }
 
     /**
      * POST /v1/conversations/{id}/chat/stream -> SSE streaming response.
      * Must be called from a background thread. Callbacks fire on the calling thread.
+     * Deltas arrive in small batches rather than one call per token. The chat POST is not
+     * idempotent, so a dropped connection is only resumed, by re-sending it with Last-Event-ID,
+     * when the server has declared resume support with {@link #STREAM_RESUME_HEADER} and has sent
+     * event ids. Otherwise the deltas received so far are delivered and the reply fails.
      */
     public static void chatStream(
         Context context,
@@ -717,7 +732,6 @@ public class ClawPhonesAPI {
             throw new IllegalArgumentException("callback is required");
         }
 
-        HttpURLConnection conn = null;
         try {
             String token = resolveAuthTokenForRequest(context);
             JSONObject body = new JSONObject();
@@ -737,72 +751,71 @@ public class ClawPhonesAPI {
             }
 
             String urlStr = BASE_URL + "/v1/conversations/" + conversationId + "/chat/stream";
-            conn = (HttpURLConnection) new URL(urlStr).openConnection();
-            conn.setConnectTimeout(CONNECT_TIMEOUT_MS);
-            conn.setReadTimeout(STREAM_READ_TIMEOUT_MS);
-            conn.setRequestMethod("POST");
-            conn.setRequestProperty("Accept", "text/event-stream");
-            conn.setRequestProperty("Content-Type", "application/json");
-            if (token != null && !token.trim().isEmpty()) {
-                conn.setRequestProperty("Authorization", "Bearer " + token.trim());
-            }
-            conn.setDoOutput(true);
-
-            try (OutputStream os = conn.getOutputStream()) {
-                os.write(body.toString().getBytes(StandardCharsets.UTF_8));
-            }
+            streamChat(urlStr, token, body.toString(), callback);
+        } catch (IOException | JSONException | ApiException e) {
+            callback.onError(e);
+        }
+    }
 
-            int code = conn.getResponseCode();
-            if (code < 200 || code >= 300) {
-                String rawError = readRawBody(conn.getErrorStream());
-                Logger.logError(LOG_TAG, "Stream API error " + code + ": " + rawError);
-                callback.onError(new ApiException(code, rawError.isEmpty() ? "HTTP " + code : rawError));
-                return;
+    /** The chatStream request loop; reports every outcome through {@code callback}. */
+    static void streamChat(String urlStr, String token, String jsonBody, StreamCallback callback) {
+        RequestBody requestBody = RequestBody.create(jsonBody, JSON);
+        ChatStreamSession session = new ChatStreamSession(callback);
+        boolean resumable = false;
+        int resumes = 0;
+        while (true) {
+            Request.Builder builder = HttpTransport.withTimeouts(
+                newRequest(urlStr, token).header("Accept", "text/event-stream"),
+                0L,
+                STREAM_READ_TIMEOUT_MS,
+                0L
+            );
+            String lastEventId = session.getLastEventId();
+            if (lastEventId != null) {
+                builder.header("Last-Event-ID", lastEventId);
             }
-
-            StringBuilder accumulated = new StringBuilder();
-            try (BufferedReader reader = new BufferedReader(
-                new InputStreamReader(conn.getInputStream(), StandardCharsets.UTF_8))) {
-                String line;
-                while ((line = reader.readLine()) != null) {
-                    if (line.isEmpty() || line.startsWith(":")) continue;
-                    if (!line.startsWith("data:")) continue;
-
-                    String dataJson = line.substring("data:".length()).trim();
-                    if (dataJson.isEmpty()) continue;
-
-                    JSONObject event = new JSONObject(dataJson);
-                    if (event.has("error")) {
-                        String msg = event.optString("error", "stream error");
-                        callback.onError(new ApiException(code, msg));
-                        return;
-                    }
-
-                    boolean done = event.optBoolean("done", false);
-                    if (!done) {
-                        String delta = event.optString("delta", "");
-                        if (!delta.isEmpty()) {
-                            accumulated.append(delta);
-                            callback.onDelta(delta);
-                        }
-                        continue;
-                    }
-
-                    String fullContent = event.optString("content", null);
-                    if (fullContent == null || fullContent.isEmpty()) {
-                        fullContent = accumulated.toString();
-                    }
-                    String messageId = event.optString("message_id", null);
-                    callback.onComplete(fullContent, messageId);
+            Request request = builder.post(requestBody).build();
+
+            IOException dropped = null;
+            try (Response response = HttpTransport.execute(request)) {
+                int code = response.code();
+                if (!response.isSuccessful()) {
+                    String rawError = readBody(response);
+                    Logger.logError(LOG_TAG, "Stream API error " + code + ": " + rawError);
+                    session.fail(new ApiException(code, rawError.isEmpty() ? "HTTP " + code : rawError));
+                    return;
+                }
+                ResponseBody responseBody = response.body();
+                if (responseBody == null) {
+                    session.fail(new IOException("empty stream body"));
                     return;
                 }
+                resumable = STREAM_RESUME_LAST_EVENT_ID.equalsIgnoreCase(response.header(STREAM_RESUME_HEADER));
+                session.read(responseBody.byteStream(), code);
+            } catch (IOException e) {
+                dropped = e;
             }
+            if (session.isFinished()) return;
 
-            callback.onError(new IOException("stream closed before done event"));
-        } catch (IOException | JSONException | ApiException e) {
-            callback.onError(e);
-        } finally {
-            if (conn != null) conn.disconnect();
+            // The connection ended before the done event. Re-sending would store the message
+            // again and start a second reply unless the server continues from the event id.
+            if (!resumable || session.getLastEventId() == null || resumes >= MAX_STREAM_RESUMES) {
+                session.fail(dropped != null ? dropped : new IOException("stream closed before done event"));
+                return;
+            }
+            resumes++;
+            long retryMs = session.getRetryMs();
+            long delayMs = Math.min(STREAM_RESUME_MAX_DELAY_MS,
+                retryMs >= 0L ? retryMs : STREAM_RESUME_DELAY_MS * resumes);
+            Logger.logWarn(LOG_TAG, "Stream dropped, resuming after event "
+                + session.getLastEventId() + " in " + delayMs + "ms (attempt " + resumes + ")");
+            try {
+                Thread.sleep(delayMs);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                session.fail(new IOException("stream resume interrupted", e));
+                return;
+            }
         }
     }
 
@@ -863,54 +876,42 @@ public class ClawPhonesAPI {
     // ── HTTP internals ────────────────────────────────────────────────────────
 
     private static JSONObject doGet(String urlStr, String token) throws IOException, ApiException, JSONException {
-        HttpURLConnection conn = openConnection(urlStr, "GET", token);
-        return readResponse(conn);
+        return readResponse(newRequest(urlStr, token).get().build());
     }
 
-    private static Object doGetAny(String urlStr, String token) throws IOException, ApiException, JSONException {
-        HttpURLConnection conn = openConnection(urlStr, "GET", token);
-        return readResponseAny(conn);
+    /**
+     * GET decoded straight off the response stream. A cacheable GET may be answered from the disk
+     * cache when the server's cache headers allow it.
+     */
+    private static <T> T doGetStreaming(String urlStr, String token, boolean cacheable,
+                                        ApiJsonReader.Decoder<T> decoder)
+        throws IOException, ApiException, JSONException {
+        Request request = newRequest(urlStr, token).get().build();
+        try (Response response = cacheable
+            ? HttpTransport.executeCached(request)
+            : HttpTransport.execute(request)) {
+            if (!response.isSuccessful()) {
+                int code = response.code();
+                String raw = readBody(response);
+                Logger.logError(LOG_TAG, "API error " + code + ": " + raw);
+                throw new ApiException(code, raw.isEmpty() ? "HTTP " + code : raw);
+            }
+            ResponseBody body = response.body();
+            Reader in = body == null ? new StringReader("") : body.charStream();
+            return ApiJsonReader.decode(in, decoder);
+        }
     }
 
     private static JSONObject doPost(String urlStr, JSONObject body, String token) throws IOException, ApiException, JSONException {
-        HttpURLConnection conn = openConnection(urlStr, "POST", token);
-        conn.setRequestProperty("Content-Type", "application/json");
-        conn.setDoOutput(true);
-        try (OutputStream os = conn.getOutputStream()) {
-            os.write(body.toString().getBytes(StandardCharsets.UTF_8));
-        }
-        return readResponse(conn);
+        return readResponse(newRequest(urlStr, token).post(jsonBody(body.toString())).build());
     }
 
     private static JSONObject doPut(String urlStr, JSONObject body, String token) throws IOException, ApiException, JSONException {
-        HttpURLConnection conn = openConnection(urlStr, "PUT", token);
-        conn.setRequestProperty("Content-Type", "application/json");
-        conn.setDoOutput(true);
-        try (OutputStream os = conn.getOutputStream()) {
-            os.write(body.toString().getBytes(StandardCharsets.UTF_8));
-        }
-        return readResponse(conn);
+        return readResponse(newRequest(urlStr, token).put(jsonBody(body.toString())).build());
     }
 
     private static void doPostRaw(String urlStr, String rawBody, String token) throws IOException, ApiException {
-        HttpURLConnection conn = openConnection(urlStr, "POST", token);
-        conn.setRequestProperty("Content-Type", "application/json");
-        conn.setDoOutput(true);
-        try (OutputStream os = conn.getOutputStream()) {
-            os.write(rawBody.getBytes(StandardCharsets.UTF_8));
-        }
-
-        int code = conn.getResponseCode();
-        String raw;
-        try {
-            raw = readBody(conn, code);
-        } finally {
-            conn.disconnect();
-        }
-        if (code < 200 || code >= 300) {
-            Logger.logError(LOG_TAG, "API error " + code + ": " + raw);
-            throw new ApiException(code, raw.isEmpty() ? "HTTP " + code : raw);
-        }
+        executeForBody(newRequest(urlStr, token).post(jsonBody(rawBody)).build());
     }
 
     private static void doDeleteNoContent(String urlStr, String token) throws IOException, ApiException {
@@ -918,135 +919,59 @@ public class ClawPhonesAPI {
     }
 
     private static void doDeleteNoContent(String urlStr, JSONObject body, String token) throws IOException, ApiException {
-        HttpURLConnection conn = openConnection(urlStr, "DELETE", token);
+        Request.Builder builder = newRequest(urlStr, token);
         if (body != null) {
-            conn.setRequestProperty("Content-Type", "application/json");
-            conn.setDoOutput(true);
-            try (OutputStream os = conn.getOutputStream()) {
-                os.write(body.toString().getBytes(StandardCharsets.UTF_8));
-            }
-        }
-        int code = conn.getResponseCode();
-        String raw = "";
-        try {
-            raw = readBody(conn, code);
-        } finally {
-            conn.disconnect();
-        }
-        if (code < 200 || code >= 300) {
-            Logger.logError(LOG_TAG, "API error " + code + ": " + raw);
-            throw new ApiException(code, raw.isEmpty() ? "HTTP " + code : raw);
+            builder.delete(jsonBody(body.toString()));
+        } else {
+            builder.delete();
         }
+        executeForBody(builder.build());
     }
 
-    private static HttpURLConnection openConnection(String urlStr, String method, String token) throws IOException {
-        HttpURLConnection conn = (HttpURLConnection) new URL(urlStr).openConnection();
-        conn.setConnectTimeout(CONNECT_TIMEOUT_MS);
-        conn.setReadTimeout(READ_TIMEOUT_MS);
-        conn.setRequestMethod(method);
-        conn.setRequestProperty("Accept", "application/json");
+    private static Request.Builder newRequest(String urlStr, String token) {
+        Request.Builder builder = new Request.Builder()
+            .url(urlStr)
+            .header("Accept", "application/json");
         if (token != null && !token.trim().isEmpty()) {
-            conn.setRequestProperty("Authorization", "Bearer " + token.trim());
+            builder.header("Authorization", "Bearer " + token.trim());
         }
-        return conn;
+        return builder;
     }
 
-    private static JSONObject readResponse(HttpURLConnection conn) throws IOException, ApiException, JSONException {
-        int code = conn.getResponseCode();
-        String raw;
-        try {
-            raw = readBody(conn, code);
-        } finally {
-            conn.disconnect();
-        }
-        if (code < 200 || code >= 300) {
-            Logger.logError(LOG_TAG, "API error " + code + ": " + raw);
-            throw new ApiException(code, raw.isEmpty() ? "HTTP " + code : raw);
-        }
+    private static RequestBody jsonBody(String json) {
+        return RequestBody.create(json, JSON);
+    }
+
+    private static JSONObject readResponse(Request request) throws IOException, ApiException, JSONException {
+        String raw = executeForBody(request);
         if (raw.isEmpty()) {
             throw new JSONException("Empty response body");
         }
         return new JSONObject(raw);
     }
 
-    private static Object readResponseAny(HttpURLConnection conn) throws IOException, ApiException, JSONException {
-        int code = conn.getResponseCode();
-        String raw;
-        try {
-            raw = readBody(conn, code);
-        } finally {
-            conn.disconnect();
-        }
-        if (code < 200 || code >= 300) {
-            Logger.logError(LOG_TAG, "API error " + code + ": " + raw);
-            throw new ApiException(code, raw.isEmpty() ? "HTTP " + code : raw);
-        }
-        if (raw.isEmpty()) {
-            return new JSONArray();
-        }
-        Object parsed = new JSONTokener(raw).nextValue();
-        if (parsed instanceof JSONObject || parsed instanceof JSONArray) {
-            return parsed;
+    /** Runs the request and returns the body, or throws ApiException for a non-2xx status. */
+    private static String executeForBody(Request request) throws IOException, ApiException {
+        try (Response response = HttpTransport.execute(request)) {
+            int code = response.code();
+            String raw = readBody(response);
+            if (!response.isSuccessful()) {
+                Logger.logError(LOG_TAG, "API error " + code + ": " + raw);
+                throw new ApiException(code, raw.isEmpty() ? "HTTP " + code : raw);
+            }
+            return raw;
         }
-        throw new JSONException("Unexpected response type");
     }
 
-    private static String readBody(HttpURLConnection conn, int code) throws IOException {
-        StringBuilder sb = new StringBuilder();
+    private static String readBody(Response response) throws IOException {
+        ResponseBody body = response.body();
+        if (body == null) return "";
         try {
-            InputStream stream;
-            if (code >= 200 && code < 300) {
-                stream = conn.getInputStream();
-            } else {
-                stream = conn.getErrorStream();
-                if (stream == null) {
-                    try {
-                        stream = conn.getInputStream();
-                    } catch (IOException ignored) {
-                        stream = null;
-                    }
-                }
-            }
-            if (stream != null) {
-                try (BufferedReader reader = new BufferedReader(
-                    new InputStreamReader(stream, StandardCharsets.UTF_8))) {
-                    String line;
-                    while ((line = reader.readLine()) != null) {
-                        sb.append(line);
-                    }
-                }
-            }
+            return body.string();
         } catch (IOException e) {
-            if (code >= 200 && code < 300) throw e;
+            if (response.isSuccessful()) throw e;
+            return "";
         }
-        return sb.toString();
-    }
-
-    private static String readRawBody(InputStream stream) throws IOException {
-        if (stream == null) return "";
-        StringBuilder sb = new StringBuilder();
-        try (BufferedReader reader = new BufferedReader(new InputStreamReader(stream, StandardCharsets.UTF_8))) {
-            String line;
-            while ((line = reader.readLine()) != null) {
-                sb.append(line);
-            }
-        }
-        return sb.toString();
-    }
-
-    private static JSONArray extractArray(Object resp, String key) {
-        if (resp instanceof JSONArray) {
-            return (JSONArray) resp;
-        }
-        if (resp instanceof JSONObject) {
-            return ((JSONObject) resp).optJSONArray(key);
-        }
-        return null;
-    }
-
-    private static String asString(Object v) {
-        if (v == null) return "";
-        return String.valueOf(v);
     }
 
     private static String asStringOrNull(Object v) {
@@ -1055,16 +980,6 @@ public class ClawPhonesAPI {
         return s.isEmpty() ? null : s;
     }
 
-    private static long asLong(Object v) {
-        if (v == null) return 0L;
-        if (v instanceof Number) return ((Number) v).longValue();
-        try {
-            return Long.parseLong(String.valueOf(v));
-        } catch (Exception ignored) {
-            return 0L;
-        }
-    }
-
     private static int asInt(Object v, int fallback) {
         if (v == null) return fallback;
         if (v instanceof Number) return ((Number) v).intValue();
@@ -1085,204 +1000,7 @@ public class ClawPhonesAPI {
         }
     }
 
-    private static UserPlan extractUserPlan(Object resp) {
-        JSONObject root = toObject(resp);
-        JSONObject data = optObject(root, "data", "result", "payload");
-        JSONObject scoped = data != null ? data : root;
-
-        String currentTier = coalesce(
-            optString(scoped, "current_tier", "currentTier", "tier", "plan"),
-            optString(root, "current_tier", "currentTier", "tier", "plan")
-        );
-
-        JSONObject currentPlanObj = optObject(scoped, "plan", "subscription", "current_plan", "currentPlan");
-        if (isBlank(currentTier) && currentPlanObj != null) {
-            currentTier = optString(currentPlanObj, "tier", "name", "id", "plan");
-        }
-
-        JSONObject usage = optObject(scoped, "usage", "token_usage", "today_usage", "daily_usage");
-        if (usage == null) usage = optObject(root, "usage", "token_usage", "today_usage", "daily_usage");
-
-        long used = firstPositive(
-            optLong(usage, "today_used", "todayUsed", "used", "used_tokens", "usedTokens",
-                "tokens_today", "tokensToday", "daily_used", "dailyUsed",
-                "messages", "messages_today", "used_today"),
-            optLong(scoped, "today_used", "todayUsed", "tokens_today", "tokensToday",
-                "daily_used", "dailyUsed", "messages", "messages_today", "used_today"),
-            optLong(root, "today_used", "todayUsed", "tokens_today", "tokensToday",
-                "daily_used", "dailyUsed", "messages", "messages_today", "used_today")
-        );
-
-        long limit = firstPositive(
-            optLong(usage, "daily_limit", "dailyLimit", "daily_cap", "dailyCap", "limit", "token_limit", "tokenLimit",
-                "daily_tokens", "messages_per_day", "daily_messages"),
-            optLong(scoped, "daily_limit", "dailyLimit", "daily_cap", "dailyCap", "token_limit", "tokenLimit",
-                "daily_tokens", "messages_per_day", "daily_messages"),
-            optLong(root, "daily_limit", "dailyLimit", "daily_cap", "dailyCap", "token_limit", "tokenLimit",
-                "daily_tokens", "messages_per_day", "daily_messages")
-        );
-
-        List<PlanTier> tiers = parsePlanTiers(scoped);
-        if (tiers.isEmpty() && scoped != root) {
-            tiers = parsePlanTiers(root);
-        }
-
-        if (limit <= 0L && !isBlank(currentTier)) {
-            String normalizedCurrent = normalizeTierName(currentTier);
-            for (PlanTier tier : tiers) {
-                if (normalizedCurrent.equals(normalizeTierName(tier.tier)) && tier.dailyCap > 0L) {
-                    limit = tier.dailyCap;
-                    break;
-                }
-            }
-        }
-
-        return new UserPlan(currentTier, used, limit, tiers);
-    }
-
-    private static List<PlanTier> parsePlanTiers(JSONObject scoped) {
-        ArrayList<PlanTier> parsed = new ArrayList<>();
-        if (scoped == null) return parsed;
-
-        JSONArray arr = optArray(scoped, "tiers", "plans", "plan_tiers", "comparison", "tier_comparison", "available_plans");
-        if (arr != null) {
-            for (int i = 0; i < arr.length(); i++) {
-                JSONObject item = arr.optJSONObject(i);
-                if (item == null) continue;
-                PlanTier tier = parsePlanTier(item, null);
-                if (tier != null) parsed.add(tier);
-            }
-        }
-
-        JSONObject obj = optObject(scoped, "tiers", "plans", "plan_tiers", "comparison", "tier_comparison");
-        if (obj != null) {
-            java.util.Iterator<String> it = obj.keys();
-            while (it.hasNext()) {
-                String key = it.next();
-                JSONObject item = obj.optJSONObject(key);
-                if (item == null) continue;
-                PlanTier tier = parsePlanTier(item, key);
-                if (tier != null) parsed.add(tier);
-            }
-        }
-
-        LinkedHashMap<String, PlanTier> dedup = new LinkedHashMap<>();
-        for (PlanTier tier : parsed) {
-            if (tier == null || isBlank(tier.tier)) continue;
-            dedup.put(normalizeTierName(tier.tier), tier);
-        }
-        return new ArrayList<>(dedup.values());
-    }
-
-    private static PlanTier parsePlanTier(JSONObject item, String fallbackTier) {
-        if (item == null) return null;
-
-        String tierName = coalesce(
-            optString(item, "tier", "name", "id", "plan"),
-            fallbackTier
-        );
-        if (isBlank(tierName)) return null;
-
-        JSONObject limits = optObject(item, "limits", "features", "quota");
-
-        long contextLength = firstPositive(
-            optLong(item, "context_length", "contextLength", "context_limit", "contextLimit", "max_context_tokens"),
-            optLong(limits, "context_length", "contextLength", "context_limit", "contextLimit", "max_context_tokens")
-        );
-
-        long outputLimit = firstPositive(
-            optLong(item, "output_limit", "outputLimit", "max_output_tokens", "max_tokens"),
-            optLong(limits, "output_limit", "outputLimit", "max_output_tokens", "max_tokens")
-        );
-
-        long dailyCap = firstPositive(
-            optLong(item, "daily_cap", "dailyCap", "daily_limit", "dailyLimit", "token_limit", "tokenLimit",
-                "daily_tokens", "messages_per_day", "daily_messages"),
-            optLong(limits, "daily_cap", "dailyCap", "daily_limit", "dailyLimit", "token_limit", "tokenLimit",
-                "daily_tokens", "messages_per_day", "daily_messages")
-        );
-
-        return new PlanTier(tierName, contextLength, outputLimit, dailyCap);
-    }
-
-    private static JSONObject toObject(Object value) {
-        if (value instanceof JSONObject) {
-            return (JSONObject) value;
-        }
-        if (value instanceof JSONArray) {
-            JSONArray arr = (JSONArray) value;
-            if (arr.length() > 0) {
-                JSONObject first = arr.optJSONObject(0);
-                if (first != null) return first;
-            }
-        }
-        return new JSONObject();
-    }
-
-    private static JSONObject optObject(JSONObject obj, String... keys) {
-        if (obj == null || keys == null) return null;
-        for (String key : keys) {
-            if (key == null) continue;
-            JSONObject child = obj.optJSONObject(key);
-            if (child != null) return child;
-        }
-        return null;
-    }
-
-    private static JSONArray optArray(JSONObject obj, String... keys) {
-        if (obj == null || keys == null) return null;
-        for (String key : keys) {
-            if (key == null) continue;
-            JSONArray arr = obj.optJSONArray(key);
-            if (arr != null) return arr;
-        }
-        return null;
-    }
-
-    private static String optString(JSONObject obj, String... keys) {
-        if (obj == null || keys == null) return null;
-        for (String key : keys) {
-            if (key == null || !obj.has(key) || obj.isNull(key)) continue;
-            Object raw = obj.opt(key);
-            if (raw instanceof JSONObject) continue;
-            String value = String.valueOf(raw).trim();
-            if (!value.isEmpty()) return value;
-        }
-        return null;
-    }
-
-    private static long optLong(JSONObject obj, String... keys) {
-        if (obj == null || keys == null) return -1L;
-        for (String key : keys) {
-            if (key == null || !obj.has(key) || obj.isNull(key)) continue;
-            Object raw = obj.opt(key);
-            long value = asLong(raw);
-            if (value >= 0L) return value;
-        }
-        return -1L;
-    }
-
-    private static long firstPositive(long... values) {
-        if (values == null) return 0L;
-        for (long value : values) {
-            if (value > 0L) return value;
-        }
-        return 0L;
-    }
-
-    private static String coalesce(String... values) {
-        if (values == null) return null;
-        for (String value : values) {
-            if (!isBlank(value)) return value.trim();
-        }
-        return null;
-    }
-
-    private static boolean isBlank(String value) {
-        return value == null || value.trim().isEmpty();
-    }
-
-    private static String normalizeTierName(String tier) {
+    static String normalizeTierName(String tier) {
         if (tier == null) return "free";
         String t = tier.trim().toLowerCase();
         if (t.isEmpty()) return "free";
@@ -1438,11 +1156,6 @@ public class ClawPhonesAPI {
         return normalized;
     }
 
-    private static String escapeQuoted(String value) {
-        if (value == null) return "";
-        return value.replace("\\", "\\\\").replace("\"", "\\\"");
-    }
-
     private static String sanitizeFileNamePart(String raw) {
         if (raw == null) return "";
         return raw.replaceAll("[^a-zA-Z0-9_-]", "");
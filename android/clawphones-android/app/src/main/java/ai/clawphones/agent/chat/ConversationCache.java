@@ -4,20 +4,31 @@ import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
 import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteException;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
 import android.text.TextUtils;
 
 import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
 
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.IntBuffer;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.PriorityQueue;
 
 /**
  * Local conversation cache for offline-first chat UX.
+ *
+ * Writers serialize on the instance monitor; reads are unsynchronized and run on their own
+ * WAL reader connections, so opening a conversation is not blocked behind a history sync.
  */
 public final class ConversationCache extends SQLiteOpenHelper {
 
@@ -25,10 +36,56 @@ public final class ConversationCache extends SQLiteOpenHelper {
     public static final int MAX_MESSAGES_PER_CONVERSATION = 100;
 
     private static final String DB_NAME = "clawphones_conversations_cache.db";
-    private static final int DB_VERSION = 1;
+    private static final int DB_VERSION = 3;
 
     private static final String TABLE_CONVERSATIONS = "conversations";
     private static final String TABLE_MESSAGES = "messages";
+    private static final String TABLE_MESSAGES_FTS = "messages_fts";
+    private static final String SORT_AT_EXPR =
+        "CASE WHEN NEW.updated_at > 0 THEN NEW.updated_at ELSE NEW.created_at END";
+
+    /** Typed message row; the paged read path uses this instead of one HashMap per row. */
+    public static final class CachedMessage {
+        public final long localId;
+        public final String messageId; // empty when the server id is unknown
+        public final String role;
+        public final String content;
+        public final long createdAt;
+
+        public CachedMessage(long localId, String messageId, String role, String content, long createdAt) {
+            this.localId = localId;
+            this.messageId = messageId;
+            this.role = role;
+            this.content = content;
+            this.createdAt = createdAt;
+        }
+    }
+
+    /** Snippet markers wrap matched terms; Markwon renders them as bold. */
+    public static final String SEARCH_MATCH_START = "**";
+    public static final String SEARCH_MATCH_END = "**";
+    private static final String SEARCH_ELLIPSIS = "\u2026";
+    private static final int SEARCH_SNIPPET_TOKENS = 12;
+    private static final int SEARCH_MAX_TERMS = 8;
+
+    /** One full-text match from {@link #searchMessages}. */
+    public static final class SearchHit {
+        public final String conversationId;
+        public final String messageId; // empty when the server id is unknown
+        public final long localId;
+        public final long createdAt;
+        public final String snippet;
+
+        public SearchHit(String conversationId, String messageId, long localId, long createdAt, String snippet) {
+            this.conversationId = conversationId;
+            this.messageId = messageId;
+            this.localId = localId;
+            this.createdAt = createdAt;
+            this.snippet = snippet;
+        }
+    }
+
+    @Nullable private volatile Boolean mFts5;
 
     public ConversationCache(@NonNull Context context) {
         super(context.getApplicationContext(), DB_NAME, null, DB_VERSION);
@@ -37,7 +94,10 @@ public final class ConversationCache extends SQLiteOpenHelper {
     @Override
     public void onConfigure(SQLiteDatabase db) {
         super.onConfigure(db);
+        SqliteTuning.configure(db);
         db.setForeignKeyConstraintsEnabled(true);
+        // REPLACE on messages must fire the delete trigger too, or message_count drifts upward.
+        db.execSQL("PRAGMA recursive_triggers = ON");
     }
 
     @Override
@@ -49,12 +109,26 @@ public final class ConversationCache extends SQLiteOpenHelper {
                 "created_at INTEGER NOT NULL DEFAULT 0," +
                 "updated_at INTEGER NOT NULL DEFAULT 0," +
                 "message_count INTEGER NOT NULL DEFAULT 0," +
-                "cached_at INTEGER NOT NULL DEFAULT 0" +
+                "cached_at INTEGER NOT NULL DEFAULT 0," +
+                "sort_at INTEGER NOT NULL DEFAULT 0" +
             ")"
         );
         db.execSQL(
-            "CREATE INDEX IF NOT EXISTS idx_conversations_sort " +
-                "ON " + TABLE_CONVERSATIONS + "(updated_at DESC, created_at DESC)"
+            "CREATE INDEX IF NOT EXISTS idx_conversations_sort_at " +
+                "ON " + TABLE_CONVERSATIONS + "(sort_at DESC)"
+        );
+        // sort_at mirrors CASE WHEN updated_at > 0 THEN updated_at ELSE created_at END so list
+        // reads and the conversation prune can walk idx_conversations_sort_at.
+        db.execSQL(
+            "CREATE TRIGGER IF NOT EXISTS conversations_sort_ai AFTER INSERT ON " + TABLE_CONVERSATIONS + " BEGIN " +
+                "UPDATE " + TABLE_CONVERSATIONS + " SET sort_at = " + SORT_AT_EXPR + " WHERE id = NEW.id; " +
+            "END"
+        );
+        db.execSQL(
+            "CREATE TRIGGER IF NOT EXISTS conversations_sort_au " +
+                "AFTER UPDATE OF created_at, updated_at ON " + TABLE_CONVERSATIONS + " BEGIN " +
+                "UPDATE " + TABLE_CONVERSATIONS + " SET sort_at = " + SORT_AT_EXPR + " WHERE id = NEW.id; " +
+            "END"
         );
 
         db.execSQL(
@@ -74,26 +148,100 @@ public final class ConversationCache extends SQLiteOpenHelper {
             "CREATE INDEX IF NOT EXISTS idx_messages_conversation_created " +
                 "ON " + TABLE_MESSAGES + "(conversation_id, created_at DESC, local_id DESC)"
         );
+        // Per-conversation stats follow the message rows, so writes never rescan a conversation.
+        db.execSQL(
+            "CREATE TRIGGER IF NOT EXISTS messages_stats_ai AFTER INSERT ON " + TABLE_MESSAGES + " BEGIN " +
+                "UPDATE " + TABLE_CONVERSATIONS + " SET " +
+                    "message_count = message_count + 1, " +
+                    "created_at = CASE WHEN created_at <= 0 THEN NEW.created_at ELSE created_at END, " +
+                    "updated_at = MAX(updated_at, NEW.created_at) " +
+                "WHERE id = NEW.conversation_id; " +
+            "END"
+        );
+        db.execSQL(
+            "CREATE TRIGGER IF NOT EXISTS messages_stats_ad AFTER DELETE ON " + TABLE_MESSAGES + " BEGIN " +
+                "UPDATE " + TABLE_CONVERSATIONS + " SET message_count = MAX(0, message_count - 1) " +
+                "WHERE id = OLD.conversation_id; " +
+            "END"
+        );
+
+        createSearchIndexInternal(db);
+    }
+
+    /**
+     * External-content FTS table over messages.content. Triggers keep it in step with every
+     * insert, REPLACE, prune and cascade delete on the messages table.
+     */
+    private static void createSearchIndexInternal(SQLiteDatabase db) {
+        boolean fts5 = true;
+        try {
+            db.execSQL(
+                "CREATE VIRTUAL TABLE IF NOT EXISTS " + TABLE_MESSAGES_FTS + " " +
+                    "USING fts5(content, content='" + TABLE_MESSAGES + "', content_rowid='local_id')"
+            );
+        } catch (SQLiteException e) {
+            // Platform SQLite builds usually ship FTS3/4 only.
+            fts5 = false;
+            try {
+                db.execSQL(
+                    "CREATE VIRTUAL TABLE IF NOT EXISTS " + TABLE_MESSAGES_FTS + " " +
+                        "USING fts4(content, content='" + TABLE_MESSAGES + "', tokenize=unicode61)"
+                );
+            } catch (SQLiteException noUnicode61) {
+                db.execSQL(
+                    "CREATE VIRTUAL TABLE IF NOT EXISTS " + TABLE_MESSAGES_FTS + " " +
+                        "USING fts4(content, content='" + TABLE_MESSAGES + "')"
+                );
+            }
+        }
+
+        if (fts5) {
+            db.execSQL(
+                "CREATE TRIGGER IF NOT EXISTS messages_fts_ai AFTER INSERT ON " + TABLE_MESSAGES + " BEGIN " +
+                    "INSERT INTO " + TABLE_MESSAGES_FTS + "(rowid, content) VALUES (NEW.local_id, NEW.content); " +
+                "END"
+            );
+            db.execSQL(
+                "CREATE TRIGGER IF NOT EXISTS messages_fts_ad AFTER DELETE ON " + TABLE_MESSAGES + " BEGIN " +
+                    "INSERT INTO " + TABLE_MESSAGES_FTS + "(" + TABLE_MESSAGES_FTS + ", rowid, content) " +
+                    "VALUES ('delete', OLD.local_id, OLD.content); " +
+                "END"
+            );
+        } else {
+            db.execSQL(
+                "CREATE TRIGGER IF NOT EXISTS messages_fts_ai AFTER INSERT ON " + TABLE_MESSAGES + " BEGIN " +
+                    "INSERT INTO " + TABLE_MESSAGES_FTS + "(docid, content) VALUES (NEW.local_id, NEW.content); " +
+                "END"
+            );
+            // FTS4 reads the old text from the content table, so this has to run before the row goes.
+            db.execSQL(
+                "CREATE TRIGGER IF NOT EXISTS messages_fts_bd BEFORE DELETE ON " + TABLE_MESSAGES + " BEGIN " +
+                    "DELETE FROM " + TABLE_MESSAGES_FTS + " WHERE docid = OLD.local_id; " +
+                "END"
+            );
+        }
     }
 
     @Override
     public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+        // Cache only: drop and refill from the server rather than migrating.
+        db.execSQL("DROP TABLE IF EXISTS " + TABLE_MESSAGES_FTS);
         db.execSQL("DROP TABLE IF EXISTS " + TABLE_MESSAGES);
         db.execSQL("DROP TABLE IF EXISTS " + TABLE_CONVERSATIONS);
         onCreate(db);
     }
 
-    public synchronized List<ClawPhonesAPI.ConversationSummary> getRecentConversations() {
+    public List<ClawPhonesAPI.ConversationSummary> getRecentConversations() {
         return getRecentConversations(MAX_CONVERSATIONS);
     }
 
-    public synchronized List<ClawPhonesAPI.ConversationSummary> getRecentConversations(int limit) {
+    public List<ClawPhonesAPI.ConversationSummary> getRecentConversations(int limit) {
         int safeLimit = Math.max(1, limit);
         SQLiteDatabase db = getReadableDatabase();
         Cursor cursor = db.rawQuery(
             "SELECT id, title, created_at, updated_at, message_count " +
                 "FROM " + TABLE_CONVERSATIONS + " " +
-                "ORDER BY CASE WHEN updated_at > 0 THEN updated_at ELSE created_at END DESC " +
+                "ORDER BY sort_at DESC " +
                 "LIMIT ?",
             new String[]{String.valueOf(safeLimit)}
         );
@@ -128,7 +276,7 @@ public final class ConversationCache extends SQLiteOpenHelper {
         });
 
         SQLiteDatabase db = getWritableDatabase();
-        db.beginTransaction();
+        db.beginTransactionNonExclusive();
         try {
             int keep = Math.min(MAX_CONVERSATIONS, sorted.size());
             for (int i = 0; i < keep; i++) {
@@ -137,7 +285,6 @@ public final class ConversationCache extends SQLiteOpenHelper {
                 upsertConversationInternal(db, item);
             }
             pruneConversationLimitInternal(db);
-            pruneAllMessagesInternal(db);
             db.setTransactionSuccessful();
         } finally {
             db.endTransaction();
@@ -148,7 +295,7 @@ public final class ConversationCache extends SQLiteOpenHelper {
         if (TextUtils.isEmpty(summary.id)) return;
 
         SQLiteDatabase db = getWritableDatabase();
-        db.beginTransaction();
+        db.beginTransactionNonExclusive();
         try {
             upsertConversationInternal(db, summary);
             pruneConversationLimitInternal(db);
@@ -161,9 +308,9 @@ public final class ConversationCache extends SQLiteOpenHelper {
     public synchronized void removeConversation(String conversationId) {
         if (TextUtils.isEmpty(conversationId)) return;
         SQLiteDatabase db = getWritableDatabase();
-        db.beginTransaction();
+        db.beginTransactionNonExclusive();
         try {
-            db.delete(TABLE_MESSAGES, "conversation_id = ?", new String[]{conversationId});
+            // Messages go with the conversation through ON DELETE CASCADE.
             db.delete(TABLE_CONVERSATIONS, "id = ?", new String[]{conversationId});
             db.setTransactionSuccessful();
         } finally {
@@ -173,7 +320,7 @@ public final class ConversationCache extends SQLiteOpenHelper {
 
     public synchronized void clearAll() {
         SQLiteDatabase db = getWritableDatabase();
-        db.beginTransaction();
+        db.beginTransactionNonExclusive();
         try {
             db.delete(TABLE_MESSAGES, null, null);
             db.delete(TABLE_CONVERSATIONS, null, null);
@@ -183,11 +330,11 @@ public final class ConversationCache extends SQLiteOpenHelper {
         }
     }
 
-    public synchronized List<Map<String, Object>> getRecentMessages(String conversationId) {
+    public List<Map<String, Object>> getRecentMessages(String conversationId) {
         return getRecentMessages(conversationId, MAX_MESSAGES_PER_CONVERSATION);
     }
 
-    public synchronized List<Map<String, Object>> getRecentMessages(String conversationId, int limit) {
+    public List<Map<String, Object>> getRecentMessages(String conversationId, int limit) {
         if (TextUtils.isEmpty(conversationId)) return new ArrayList<>();
 
         int safeLimit = Math.max(1, limit);
@@ -219,46 +366,317 @@ public final class ConversationCache extends SQLiteOpenHelper {
         return out;
     }
 
-    public synchronized void replaceMessages(String conversationId, List<Map<String, Object>> messages) {
+    /**
+     * Returns the newest {@code limit} messages in ascending order. Pass the first element of the
+     * result to {@link #getMessagesBefore} to page further back.
+     */
+    public List<CachedMessage> getLatestMessages(String conversationId, int limit) {
+        if (TextUtils.isEmpty(conversationId)) return new ArrayList<>();
+        return queryMessagePageInternal(
+            "WHERE conversation_id = ? ",
+            new String[]{conversationId, String.valueOf(Math.max(1, limit))}
+        );
+    }
+
+    /**
+     * Keyset page: up to {@code limit} messages strictly older than ({@code beforeCreatedAt},
+     * {@code beforeLocalId}), in ascending order. An empty result means there is nothing older.
+     */
+    public List<CachedMessage> getMessagesBefore(String conversationId, long beforeCreatedAt,
+                                                 long beforeLocalId, int limit) {
+        if (TextUtils.isEmpty(conversationId)) return new ArrayList<>();
+        String createdAt = String.valueOf(beforeCreatedAt);
+        return queryMessagePageInternal(
+            "WHERE conversation_id = ? AND (created_at < ? OR (created_at = ? AND local_id < ?)) ",
+            new String[]{
+                conversationId,
+                createdAt,
+                createdAt,
+                String.valueOf(beforeLocalId),
+                String.valueOf(Math.max(1, limit))
+            }
+        );
+    }
+
+    /**
+     * Ranked full-text search over every cached message. Each whitespace-separated term of
+     * {@code query} is matched as a prefix and all terms must match.
+     */
+    public List<SearchHit> searchMessages(String query, int limit) {
+        String match = buildMatchQuery(query);
+        if (match == null) return new ArrayList<>();
+
+        int safeLimit = Math.max(1, limit);
+        SQLiteDatabase db = getReadableDatabase();
+        return isFts5(db)
+            ? searchFts5Internal(db, match, safeLimit)
+            : searchFts4Internal(db, match, safeLimit);
+    }
+
+    public synchronized void replaceMessages(String conversationId, List<ClawPhonesAPI.ConversationMessage> messages) {
         if (TextUtils.isEmpty(conversationId)) return;
         SQLiteDatabase db = getWritableDatabase();
-        db.beginTransaction();
+        db.beginTransactionNonExclusive();
         try {
             ensureConversationRowInternal(db, conversationId);
             db.delete(TABLE_MESSAGES, "conversation_id = ?", new String[]{conversationId});
             insertMessagesInternal(db, conversationId, messages);
             pruneMessagesLimitInternal(db, conversationId);
-            updateConversationStatsInternal(db, conversationId);
             db.setTransactionSuccessful();
         } finally {
             db.endTransaction();
         }
     }
 
-    public synchronized void upsertMessages(String conversationId, List<Map<String, Object>> messages) {
+    public synchronized void upsertMessages(String conversationId, List<ClawPhonesAPI.ConversationMessage> messages) {
         if (TextUtils.isEmpty(conversationId)) return;
         SQLiteDatabase db = getWritableDatabase();
-        db.beginTransaction();
+        db.beginTransactionNonExclusive();
         try {
             ensureConversationRowInternal(db, conversationId);
             insertMessagesInternal(db, conversationId, messages);
             pruneMessagesLimitInternal(db, conversationId);
-            updateConversationStatsInternal(db, conversationId);
             db.setTransactionSuccessful();
         } finally {
             db.endTransaction();
         }
     }
 
+    private List<CachedMessage> queryMessagePageInternal(String where, String[] args) {
+        SQLiteDatabase db = getReadableDatabase();
+        Cursor cursor = db.rawQuery(
+            "SELECT local_id, message_id, role, content, created_at " +
+                "FROM " + TABLE_MESSAGES + " " +
+                where +
+                "ORDER BY created_at DESC, local_id DESC " +
+                "LIMIT ?",
+            args
+        );
+        List<CachedMessage> out = new ArrayList<>(cursor.getCount());
+        try {
+            while (cursor.moveToNext()) {
+                out.add(new CachedMessage(
+                    cursor.getLong(0),
+                    cursor.isNull(1) ? "" : cursor.getString(1),
+                    cursor.getString(2),
+                    cursor.getString(3),
+                    cursor.getLong(4)
+                ));
+            }
+        } finally {
+            cursor.close();
+        }
+        Collections.reverse(out);
+        return out;
+    }
+
+    private List<SearchHit> searchFts5Internal(SQLiteDatabase db, String match, int limit) {
+        Cursor cursor = db.rawQuery(
+            "SELECT m.conversation_id, m.message_id, m.local_id, m.created_at, " +
+                "snippet(" + TABLE_MESSAGES_FTS + ", 0, '" + SEARCH_MATCH_START + "', '" + SEARCH_MATCH_END + "', '" +
+                SEARCH_ELLIPSIS + "', " + SEARCH_SNIPPET_TOKENS + ") " +
+                "FROM " + TABLE_MESSAGES_FTS + " " +
+                "JOIN " + TABLE_MESSAGES + " m ON m.local_id = " + TABLE_MESSAGES_FTS + ".rowid " +
+                "WHERE " + TABLE_MESSAGES_FTS + " MATCH ? " +
+                "ORDER BY rank " +
+                "LIMIT ?",
+            new String[]{match, String.valueOf(limit)}
+        );
+        List<SearchHit> out = new ArrayList<>();
+        try {
+            while (cursor.moveToNext()) {
+                out.add(toSearchHit(cursor));
+            }
+        } finally {
+            cursor.close();
+        }
+        return out;
+    }
+
+    /**
+     * FTS4 has no built-in ranking, so score every match from matchinfo('pcx') first (hits in
+     * the row over hits in the whole index, per term) and fetch snippets for the top rows only.
+     */
+    private List<SearchHit> searchFts4Internal(SQLiteDatabase db, String match, int limit) {
+        final Map<Long, Double> scores = new HashMap<>();
+        PriorityQueue<Long> top = new PriorityQueue<>(limit + 1, new Comparator<Long>() {
+            @Override
+            public int compare(Long a, Long b) {
+                int byScore = Double.compare(scores.get(a), scores.get(b));
+                return byScore != 0 ? byScore : Long.compare(a, b);
+            }
+        });
+
+        Cursor cursor = db.rawQuery(
+            "SELECT docid, matchinfo(" + TABLE_MESSAGES_FTS + ", 'pcx') " +
+                "FROM " + TABLE_MESSAGES_FTS + " WHERE " + TABLE_MESSAGES_FTS + " MATCH ?",
+            new String[]{match}
+        );
+        try {
+            while (cursor.moveToNext()) {
+                long localId = cursor.getLong(0);
+                scores.put(localId, scoreMatchInfo(cursor.getBlob(1)));
+                top.add(localId);
+                if (top.size() > limit) {
+                    scores.remove(top.poll());
+                }
+            }
+        } finally {
+            cursor.close();
+        }
+        if (top.isEmpty()) return new ArrayList<>();
+
+        StringBuilder ids = new StringBuilder();
+        for (Long localId : top) {
+            if (ids.length() > 0) ids.append(',');
+            ids.append(localId);
+        }
+        Cursor rows = db.rawQuery(
+            "SELECT m.conversation_id, m.message_id, m.local_id, m.created_at, " +
+                "snippet(" + TABLE_MESSAGES_FTS + ", '" + SEARCH_MATCH_START + "', '" + SEARCH_MATCH_END + "', '" +
+                SEARCH_ELLIPSIS + "', -1, " + SEARCH_SNIPPET_TOKENS + ") " +
+                "FROM " + TABLE_MESSAGES_FTS + " " +
+                "JOIN " + TABLE_MESSAGES + " m ON m.local_id = " + TABLE_MESSAGES_FTS + ".docid " +
+                "WHERE " + TABLE_MESSAGES_FTS + " MATCH ? AND " + TABLE_MESSAGES_FTS + ".docid IN (" + ids + ")",
+            new String[]{match}
+        );
+        List<SearchHit> out = new ArrayList<>(top.size());
+        try {
+            while (rows.moveToNext()) {
+                out.add(toSearchHit(rows));
+            }
+        } finally {
+            rows.close();
+        }
+        Collections.sort(out, new Comparator<SearchHit>() {
+            @Override
+            public int compare(SearchHit a, SearchHit b) {
+                int byScore = Double.compare(scores.get(b.localId), scores.get(a.localId));
+                return byScore != 0 ? byScore : Long.compare(b.localId, a.localId);
+            }
+        });
+        return out;
+    }
+
+    private boolean isFts5(SQLiteDatabase db) {
+        Boolean cached = mFts5;
+        if (cached != null) return cached;
+
+        boolean fts5 = false;
+        Cursor cursor = db.rawQuery(
+            "SELECT sql FROM sqlite_master WHERE name = ? LIMIT 1",
+            new String[]{TABLE_MESSAGES_FTS}
+        );
+        try {
+            if (cursor.moveToFirst() && !cursor.isNull(0)) {
+                fts5 = cursor.getString(0).toLowerCase(Locale.ROOT).contains("fts5");
+            }
+        } finally {
+            cursor.close();
+        }
+        mFts5 = fts5;
+        return fts5;
+    }
+
+    private static SearchHit toSearchHit(Cursor cursor) {
+        return new SearchHit(
+            cursor.getString(0),
+            cursor.isNull(1) ? "" : cursor.getString(1),
+            cursor.getLong(2),
+            cursor.getLong(3),
+            cursor.isNull(4) ? "" : cursor.getString(4)
+        );
+    }
+
+    /** matchinfo 'pcx' layout: phrase count, column count, then (row hits, all hits, docs) per pair. */
+    private static double scoreMatchInfo(byte[] blob) {
+        if (blob == null || blob.length < 8) return 0d;
+        IntBuffer info = ByteBuffer.wrap(blob).order(ByteOrder.nativeOrder()).asIntBuffer();
+        int phrases = info.get(0);
+        int columns = info.get(1);
+        double score = 0d;
+        for (int phrase = 0; phrase < phrases; phrase++) {
+            for (int column = 0; column < columns; column++) {
+                int base = 2 + 3 * (phrase * columns + column);
+                if (base + 1 >= info.limit()) return score;
+                int rowHits = info.get(base);
+                int allHits = info.get(base + 1);
+                if (rowHits > 0 && allHits > 0) {
+                    score += (double) rowHits / allHits;
+                }
+            }
+        }
+        return score;
+    }
+
+    /**
+     * Turns free text into an FTS MATCH expression of prefix terms, e.g. "Hello, wor" becomes
+     * "hello* wor*". Operators and quotes are stripped so user input can never be a syntax error.
+     */
+    @Nullable
+    static String buildMatchQuery(@Nullable String raw) {
+        if (raw == null) return null;
+        StringBuilder out = new StringBuilder();
+        StringBuilder term = new StringBuilder();
+        int terms = 0;
+        for (int i = 0; i <= raw.length() && terms < SEARCH_MAX_TERMS; i++) {
+            char c = i < raw.length() ? raw.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c) || c == '_') {
+                term.append(Character.toLowerCase(c));
+                continue;
+            }
+            if (term.length() == 0) continue;
+            if (out.length() > 0) out.append(' ');
+            out.append(term).append('*');
+            term.setLength(0);
+            terms++;
+        }
+        return out.length() == 0 ? null : out.toString();
+    }
+
+    /**
+     * Updates in place rather than INSERT OR REPLACE: replacing the row would cascade-delete its
+     * cached messages. message_count is owned by the message triggers and is only seeded here.
+     */
     private void upsertConversationInternal(SQLiteDatabase db, ClawPhonesAPI.ConversationSummary item) {
+        String id = safeTrim(item.id);
+        String title = nullableTrim(item.title);
+        long createdAt = Math.max(0L, item.createdAt);
+        long updatedAt = Math.max(0L, item.updatedAt);
+        long cachedAt = nowSeconds();
+
+        SQLiteStatement update = db.compileStatement(
+            "UPDATE " + TABLE_CONVERSATIONS + " SET " +
+                "title = COALESCE(?, title), " +
+                "created_at = CASE WHEN ? > 0 THEN ? ELSE created_at END, " +
+                "updated_at = MAX(updated_at, ?), " +
+                "cached_at = ? " +
+            "WHERE id = ?"
+        );
+        try {
+            if (title == null) {
+                update.bindNull(1);
+            } else {
+                update.bindString(1, title);
+            }
+            update.bindLong(2, createdAt);
+            update.bindLong(3, createdAt);
+            update.bindLong(4, updatedAt);
+            update.bindLong(5, cachedAt);
+            update.bindString(6, id);
+            if (update.executeUpdateDelete() > 0) return;
+        } finally {
+            update.close();
+        }
+
         ContentValues values = new ContentValues();
-        values.put("id", safeTrim(item.id));
-        values.put("title", nullableTrim(item.title));
-        values.put("created_at", Math.max(0L, item.createdAt));
-        values.put("updated_at", Math.max(0L, item.updatedAt));
-        values.put("message_count", Math.max(0, item.messageCount));
-        values.put("cached_at", nowSeconds());
-        db.insertWithOnConflict(TABLE_CONVERSATIONS, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+        values.put("id", id);
+        values.put("title", title);
+        values.put("created_at", createdAt);
+        values.put("updated_at", updatedAt);
+        values.put("message_count", 0);
+        values.put("cached_at", cachedAt);
+        db.insertWithOnConflict(TABLE_CONVERSATIONS, null, values, SQLiteDatabase.CONFLICT_IGNORE);
     }
 
     private void ensureConversationRowInternal(SQLiteDatabase db, String conversationId) {
@@ -268,27 +686,40 @@ public final class ConversationCache extends SQLiteOpenHelper {
         db.insertWithOnConflict(TABLE_CONVERSATIONS, null, values, SQLiteDatabase.CONFLICT_IGNORE);
     }
 
-    private void insertMessagesInternal(SQLiteDatabase db, String conversationId, List<Map<String, Object>> messages) {
+    /** Batch insert: one compiled statement is rebound for every row of the sync. */
+    private void insertMessagesInternal(SQLiteDatabase db, String conversationId,
+                                        List<ClawPhonesAPI.ConversationMessage> messages) {
         if (messages == null || messages.isEmpty()) return;
 
-        for (Map<String, Object> row : messages) {
-            if (row == null) continue;
-            String role = safeTrim(asString(row.get("role")));
-            String content = asString(row.get("content"));
-            if (TextUtils.isEmpty(role) || TextUtils.isEmpty(content)) continue;
-
-            String messageId = nullableTrim(asString(row.get("id")));
-            long createdAt = asLong(row.get("created_at"));
-            if (createdAt < 0) createdAt = 0L;
-
-            ContentValues values = new ContentValues();
-            values.put("conversation_id", conversationId);
-            values.put("message_id", messageId);
-            values.put("role", role);
-            values.put("content", content);
-            values.put("created_at", createdAt);
-            values.put("dedupe_key", buildDedupeKey(messageId, role, content, createdAt));
-            db.insertWithOnConflict(TABLE_MESSAGES, null, values, SQLiteDatabase.CONFLICT_REPLACE);
+        SQLiteStatement insert = db.compileStatement(
+            "INSERT OR REPLACE INTO " + TABLE_MESSAGES + " " +
+                "(conversation_id, message_id, role, content, created_at, dedupe_key) " +
+                "VALUES (?, ?, ?, ?, ?, ?)"
+        );
+        try {
+            for (ClawPhonesAPI.ConversationMessage message : messages) {
+                if (message == null) continue;
+                String role = safeTrim(message.role);
+                String content = message.content;
+                if (TextUtils.isEmpty(role) || TextUtils.isEmpty(content)) continue;
+
+                String messageId = nullableTrim(message.id);
+                long createdAt = Math.max(0L, message.createdAt);
+
+                insert.bindString(1, conversationId);
+                if (messageId == null) {
+                    insert.bindNull(2);
+                } else {
+                    insert.bindString(2, messageId);
+                }
+                insert.bindString(3, role);
+                insert.bindString(4, content);
+                insert.bindLong(5, createdAt);
+                insert.bindString(6, buildDedupeKey(messageId, role, content, createdAt));
+                insert.executeInsert();
+            }
+        } finally {
+            insert.close();
         }
     }
 
@@ -297,28 +728,12 @@ public final class ConversationCache extends SQLiteOpenHelper {
             "DELETE FROM " + TABLE_CONVERSATIONS + " " +
                 "WHERE id NOT IN (" +
                     "SELECT id FROM " + TABLE_CONVERSATIONS + " " +
-                    "ORDER BY CASE WHEN updated_at > 0 THEN updated_at ELSE created_at END DESC " +
+                    "ORDER BY sort_at DESC " +
                     "LIMIT " + MAX_CONVERSATIONS +
                 ")"
         );
     }
 
-    private void pruneAllMessagesInternal(SQLiteDatabase db) {
-        Cursor cursor = db.rawQuery("SELECT id FROM " + TABLE_CONVERSATIONS, null);
-        List<String> conversationIds = new ArrayList<>();
-        try {
-            while (cursor.moveToNext()) {
-                conversationIds.add(cursor.getString(0));
-            }
-        } finally {
-            cursor.close();
-        }
-        for (String conversationId : conversationIds) {
-            pruneMessagesLimitInternal(db, conversationId);
-            updateConversationStatsInternal(db, conversationId);
-        }
-    }
-
     private void pruneMessagesLimitInternal(SQLiteDatabase db, String conversationId) {
         db.execSQL(
             "DELETE FROM " + TABLE_MESSAGES + " " +
@@ -332,50 +747,6 @@ public final class ConversationCache extends SQLiteOpenHelper {
         );
     }
 
-    private void updateConversationStatsInternal(SQLiteDatabase db, String conversationId) {
-        Cursor countCursor = db.rawQuery(
-            "SELECT COUNT(*), COALESCE(MAX(created_at), 0) FROM " + TABLE_MESSAGES + " WHERE conversation_id = ?",
-            new String[]{conversationId}
-        );
-        int messageCount = 0;
-        long latestMessageTs = 0L;
-        try {
-            if (countCursor.moveToFirst()) {
-                messageCount = countCursor.getInt(0);
-                latestMessageTs = countCursor.getLong(1);
-            }
-        } finally {
-            countCursor.close();
-        }
-
-        Cursor currentCursor = db.rawQuery(
-            "SELECT created_at, updated_at FROM " + TABLE_CONVERSATIONS + " WHERE id = ? LIMIT 1",
-            new String[]{conversationId}
-        );
-        long createdAt = 0L;
-        long updatedAt = 0L;
-        try {
-            if (currentCursor.moveToFirst()) {
-                createdAt = currentCursor.getLong(0);
-                updatedAt = currentCursor.getLong(1);
-            }
-        } finally {
-            currentCursor.close();
-        }
-
-        ContentValues values = new ContentValues();
-        values.put("message_count", Math.max(0, messageCount));
-        values.put("cached_at", nowSeconds());
-        if (createdAt <= 0 && latestMessageTs > 0) {
-            values.put("created_at", latestMessageTs);
-        }
-        long mergedUpdatedAt = Math.max(updatedAt, latestMessageTs);
-        if (mergedUpdatedAt > 0) {
-            values.put("updated_at", mergedUpdatedAt);
-        }
-        db.update(TABLE_CONVERSATIONS, values, "id = ?", new String[]{conversationId});
-    }
-
     private static String buildDedupeKey(String messageId, String role, String content, long createdAt) {
         if (!TextUtils.isEmpty(messageId)) {
             return "id:" + messageId;
@@ -398,20 +769,6 @@ public final class ConversationCache extends SQLiteOpenHelper {
         return trimmed.isEmpty() ? null : trimmed;
     }
 
-    private static String asString(Object value) {
-        return value == null ? "" : String.valueOf(value);
-    }
-
-    private static long asLong(Object value) {
-        if (value == null) return 0L;
-        if (value instanceof Number) return ((Number) value).longValue();
-        try {
-            return Long.parseLong(String.valueOf(value));
-        } catch (Exception ignored) {
-            return 0L;
-        }
-    }
-
     private static String stableHash(String input) {
         long hash = 1469598103934665603L;
         final long prime = 1099511628211L;
@@ -32,9 +32,6 @@ import com.termux.R;
 import com.uber.h3core.H3Core;
 import com.uber.h3core.util.GeoCoord;
 
-import org.json.JSONArray;
-import org.json.JSONObject;
-
 import java.time.Instant;
 import java.util.ArrayList;
 import java.util.Arrays;
@@ -141,9 +138,9 @@ public class CoverageMapActivity extends AppCompatActivity implements OnMapReady
 
         executor.execute(() -> {
             try {
-                Object payload = ClawPhonesAPI.getWorldCellsRaw(this, 24, 9);
-                ArrayList<CoverageCell> cells = parseCells(payload);
-                ArrayList<CoverageNode> nodes = parseNodes(payload);
+                ClawPhonesAPI.WorldCells payload = ClawPhonesAPI.getWorldCells(this, 24, 9);
+                ArrayList<CoverageCell> cells = parseCells(payload.cells);
+                ArrayList<CoverageNode> nodes = parseNodes(payload.nodes);
 
                 runOnUiThread(() -> {
                     mCells.clear();
@@ -163,24 +160,20 @@ public class CoverageMapActivity extends AppCompatActivity implements OnMapReady
         });
     }
 
-    private ArrayList<CoverageCell> parseCells(Object payload) {
+    private ArrayList<CoverageCell> parseCells(List<ClawPhonesAPI.WorldItem> candidates) {
         ArrayList<CoverageCell> output = new ArrayList<>();
-        JSONArray candidates = extractArray(payload,
-            "cells", "items", "data", "coverage", "world_cells");
-        if (candidates == null) return output;
 
-        for (int i = 0; i < candidates.length(); i++) {
-            JSONObject cell = candidates.optJSONObject(i);
-            if (cell == null) continue;
+        for (int i = 0; i < candidates.size(); i++) {
+            ClawPhonesAPI.WorldItem cell = candidates.get(i);
 
-            String cellId = firstString(cell, "cell_id", "cellId", "cell", "h3", "h3_index", "id");
+            String cellId = cell.text("cell_id", "cellId", "cell", "h3", "h3_index", "id");
             if (TextUtils.isEmpty(cellId)) {
                 cellId = "cell-" + i;
             }
 
             CoverageStatus status = resolveStatus(cell);
             ArrayList<LatLng> points = parsePolygonPoints(
-                firstAny(cell, "boundary", "polygon", "vertices", "coordinates")
+                cell.shape("boundary", "polygon", "vertices", "coordinates")
             );
 
             if (points.size() < 3 && !TextUtils.isEmpty(cellId)) {
@@ -188,7 +181,7 @@ public class CoverageMapActivity extends AppCompatActivity implements OnMapReady
             }
 
             if (points.size() < 3) {
-                LatLng center = parseCoordinate(firstAny(cell, "center", "centroid", "location", "position"));
+                LatLng center = parseCoordinate(cell.shape("center", "centroid", "location", "position"));
                 if (center == null) center = parseCoordinate(cell);
                 if (center != null) {
                     points = approximateHexagon(center, 100.0);
@@ -202,29 +195,25 @@ public class CoverageMapActivity extends AppCompatActivity implements OnMapReady
         return output;
     }
 
-    private ArrayList<CoverageNode> parseNodes(Object payload) {
+    private ArrayList<CoverageNode> parseNodes(List<ClawPhonesAPI.WorldItem> candidates) {
         ArrayList<CoverageNode> output = new ArrayList<>();
-        JSONArray candidates = extractArray(payload,
-            "nodes", "neighbors", "neighbours", "peers", "devices", "data");
-        if (candidates == null) return output;
 
-        for (int i = 0; i < candidates.length(); i++) {
-            JSONObject node = candidates.optJSONObject(i);
-            if (node == null) continue;
+        for (int i = 0; i < candidates.size(); i++) {
+            ClawPhonesAPI.WorldItem node = candidates.get(i);
 
-            LatLng coordinate = parseCoordinate(firstAny(node, "location", "position", "center", "coordinates"));
+            LatLng coordinate = parseCoordinate(node.shape("location", "position", "center", "coordinates"));
             if (coordinate == null) {
                 coordinate = parseCoordinate(node);
             }
             if (coordinate == null) continue;
 
-            String id = firstString(node, "id", "node_id", "device_id", "peer_id", "name");
+            String id = node.text("id", "node_id", "device_id", "peer_id", "name");
             if (TextUtils.isEmpty(id)) {
                 id = "node-" + i;
             }
 
             boolean isSelf = firstBool(node, "is_self", "self", "mine", "own");
-            String title = firstString(node, "label", "title", "name", "node_name");
+            String title = node.text("label", "title", "name", "node_name");
             if (TextUtils.isEmpty(title)) {
                 title = isSelf ? getString(R.string.coverage_map_self_node) : getString(R.string.coverage_map_neighbor_node);
             }
@@ -235,8 +224,8 @@ public class CoverageMapActivity extends AppCompatActivity implements OnMapReady
         return output;
     }
 
-    private CoverageStatus resolveStatus(JSONObject cell) {
-        String rawStatus = firstString(cell, "status", "coverage_status", "coverage", "state");
+    private CoverageStatus resolveStatus(ClawPhonesAPI.WorldItem cell) {
+        String rawStatus = cell.text("status", "coverage_status", "coverage", "state");
         if (!TextUtils.isEmpty(rawStatus)) {
             String normalized = rawStatus.trim().toLowerCase(Locale.ROOT);
             if (normalized.contains("fresh") || normalized.contains("recent") || normalized.contains("active") || normalized.contains("hot")) {
@@ -250,7 +239,7 @@ public class CoverageMapActivity extends AppCompatActivity implements OnMapReady
             }
         }
 
-        long lastSeen = parseEpochSeconds(firstAny(cell,
+        long lastSeen = parseEpochSeconds(cell.text(
             "last_seen_at", "last_seen", "seen_at", "updated_at", "timestamp", "ts"));
         if (lastSeen <= 0L) return CoverageStatus.EMPTY;
 
@@ -260,24 +249,18 @@ public class CoverageMapActivity extends AppCompatActivity implements OnMapReady
         return CoverageStatus.EMPTY;
     }
 
-    private long parseEpochSeconds(Object value) {
-        if (value instanceof Number) {
-            long raw = ((Number) value).longValue();
-            return raw > 2_000_000_000L ? raw / 1000L : raw;
-        }
+    private long parseEpochSeconds(@Nullable String value) {
+        if (value == null) return -1L;
+        String text = value.trim();
+        if (text.isEmpty()) return -1L;
 
-        if (value instanceof String) {
-            String text = ((String) value).trim();
-            if (text.isEmpty()) return -1L;
-            try {
-                long numeric = Long.parseLong(text);
-                return numeric > 2_000_000_000L ? numeric / 1000L : numeric;
-            } catch (Exception ignored) {
-            }
-            try {
-                return Instant.parse(text).getEpochSecond();
-            } catch (Exception ignored) {
-            }
+        long numeric = ApiJsonReader.parseLong(text, Long.MIN_VALUE);
+        if (numeric != Long.MIN_VALUE) {
+            return numeric > 2_000_000_000L ? numeric / 1000L : numeric;
+        }
+        try {
+            return Instant.parse(text).getEpochSecond();
+        } catch (Exception ignored) {
         }
 
         return -1L;
@@ -299,50 +282,11 @@ public class CoverageMapActivity extends AppCompatActivity implements OnMapReady
         return points;
     }
 
-    private ArrayList<LatLng> parsePolygonPoints(Object source) {
-        ArrayList<LatLng> points = new ArrayList<>();
-        if (source == null) return points;
-
-        if (source instanceof JSONObject) {
-            return parsePolygonPoints(((JSONObject) source).opt("coordinates"));
-        }
-
-        if (!(source instanceof JSONArray)) {
-            return points;
-        }
-
-        JSONArray array = (JSONArray) source;
-        if (array.length() == 0) return points;
-
-        Object first = array.opt(0);
-        if (first instanceof JSONArray) {
-            JSONArray firstArray = (JSONArray) first;
-            if (firstArray.length() > 0 && firstArray.opt(0) instanceof JSONArray) {
-                return parsePairArray(firstArray);
-            }
-            return parsePairArray(array);
-        }
-
-        if (first instanceof JSONObject) {
-            for (int i = 0; i < array.length(); i++) {
-                LatLng coordinate = parseCoordinate(array.optJSONObject(i));
-                if (coordinate != null) points.add(coordinate);
-            }
-            return stripClosingPoint(points);
-        }
-
-        return points;
-    }
-
-    private ArrayList<LatLng> parsePairArray(JSONArray pairs) {
+    private ArrayList<LatLng> parsePolygonPoints(@Nullable List<double[]> pairs) {
         ArrayList<LatLng> points = new ArrayList<>();
-        for (int i = 0; i < pairs.length(); i++) {
-            JSONArray pair = pairs.optJSONArray(i);
-            if (pair == null || pair.length() < 2) continue;
-            double a = pair.optDouble(0, Double.NaN);
-            double b = pair.optDouble(1, Double.NaN);
-            if (Double.isNaN(a) || Double.isNaN(b)) continue;
-            points.add(toCoordinate(a, b));
+        if (pairs == null) return points;
+        for (double[] pair : pairs) {
+            points.add(toCoordinate(pair[0], pair[1]));
         }
         return stripClosingPoint(points);
     }
@@ -388,119 +332,45 @@ public class CoverageMapActivity extends AppCompatActivity implements OnMapReady
     }
 
     @Nullable
-    private LatLng parseCoordinate(@Nullable Object source) {
-        if (source == null) return null;
-
-        if (source instanceof JSONObject) {
-            JSONObject obj = (JSONObject) source;
-            if (obj.has("lat") || obj.has("latitude")) {
-                double lat = readDouble(obj, "lat", "latitude");
-                double lng = readDouble(obj, "lng", "lon", "longitude");
-                if (!Double.isNaN(lat) && !Double.isNaN(lng)) {
-                    return new LatLng(lat, lng);
-                }
-            }
-            if (obj.has("coordinates")) {
-                return parseCoordinate(obj.opt("coordinates"));
-            }
-            return null;
-        }
-
-        if (source instanceof JSONArray) {
-            JSONArray arr = (JSONArray) source;
-            if (arr.length() < 2) return null;
-            double a = arr.optDouble(0, Double.NaN);
-            double b = arr.optDouble(1, Double.NaN);
-            if (Double.isNaN(a) || Double.isNaN(b)) return null;
-            return toCoordinate(a, b);
-        }
-
-        return null;
-    }
-
-    private double readDouble(JSONObject obj, String... keys) {
-        for (String key : keys) {
-            if (!obj.has(key)) continue;
-            Object value = obj.opt(key);
-            if (value instanceof Number) {
-                return ((Number) value).doubleValue();
-            }
-            if (value instanceof String) {
-                try {
-                    return Double.parseDouble(((String) value).trim());
-                } catch (Exception ignored) {
-                }
-            }
-        }
-        return Double.NaN;
+    private LatLng parseCoordinate(@Nullable List<double[]> pairs) {
+        if (pairs == null || pairs.isEmpty()) return null;
+        double[] pair = pairs.get(0);
+        return toCoordinate(pair[0], pair[1]);
     }
 
     @Nullable
-    private JSONArray extractArray(Object payload, String... keys) {
-        if (payload instanceof JSONArray) {
-            return (JSONArray) payload;
-        }
-        if (!(payload instanceof JSONObject)) {
-            return null;
-        }
-
-        JSONObject root = (JSONObject) payload;
-        for (String key : keys) {
-            if (!root.has(key)) continue;
-            Object value = root.opt(key);
-            JSONArray direct = asJSONArray(value);
-            if (direct != null) return direct;
-
-            if (value instanceof JSONObject) {
-                JSONObject nested = (JSONObject) value;
-                JSONArray nestedArray = extractArray(nested,
-                    "cells", "items", "nodes", "neighbors", "neighbours", "peers");
-                if (nestedArray != null) return nestedArray;
+    private LatLng parseCoordinate(ClawPhonesAPI.WorldItem item) {
+        if (item.fields.containsKey("lat") || item.fields.containsKey("latitude")) {
+            double lat = readDouble(item, "lat", "latitude");
+            double lng = readDouble(item, "lng", "lon", "longitude");
+            if (!Double.isNaN(lat) && !Double.isNaN(lng)) {
+                return new LatLng(lat, lng);
             }
         }
-        return null;
+        return parseCoordinate(item.shape("coordinates"));
     }
 
-    @Nullable
-    private JSONArray asJSONArray(Object value) {
-        return value instanceof JSONArray ? (JSONArray) value : null;
-    }
-
-    @Nullable
-    private Object firstAny(JSONObject obj, String... keys) {
+    private double readDouble(ClawPhonesAPI.WorldItem item, String... keys) {
         for (String key : keys) {
-            if (obj.has(key)) {
-                return obj.opt(key);
-            }
-        }
-        return null;
-    }
-
-    @Nullable
-    private String firstString(JSONObject obj, String... keys) {
-        for (String key : keys) {
-            if (!obj.has(key)) continue;
-            Object value = obj.opt(key);
+            String value = item.fields.get(key);
             if (value == null) continue;
-            String text = String.valueOf(value).trim();
-            if (!text.isEmpty() && !"null".equalsIgnoreCase(text)) {
-                return text;
+            try {
+                return Double.parseDouble(value.trim());
+            } catch (Exception ignored) {
             }
         }
-        return null;
+        return Double.NaN;
     }
 
-    private boolean firstBool(JSONObject obj, String... keys) {
+    private boolean firstBool(ClawPhonesAPI.WorldItem item, String... keys) {
         for (String key : keys) {
-            if (!obj.has(key)) continue;
-            Object value = obj.opt(key);
-            if (value instanceof Boolean) return (Boolean) value;
-            if (value instanceof Number) return ((Number) value).intValue() != 0;
-            if (value instanceof String) {
-                String text = ((String) value).trim().toLowerCase(Locale.ROOT);
-                if (Arrays.asList("true", "1", "yes", "y").contains(text)) return true;
-                if (Arrays.asList("false", "0", "no", "n").contains(text)) return false;
-            }
+            String value = item.fields.get(key);
+            if (value == null) continue;
+            String text = value.trim().toLowerCase(Locale.ROOT);
+            if (Arrays.asList("true", "1", "yes", "y").contains(text)) return true;
+            if (Arrays.asList("false", "0", "no", "n").contains(text)) return false;
+            double numeric = readDouble(item, key);
+            if (!Double.isNaN(numeric)) return (int) numeric != 0;
         }
         return false;
     }
@@ -0,0 +1,312 @@
+package ai.clawphones.agent.chat;
+
+import android.graphics.Rect;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * Carries detections across video frames as tracks.
+ *
+ * Each track runs a constant-velocity Kalman filter per box coordinate (centre x/y, width,
+ * height), so on frames the detector skips or misses the box keeps moving. Velocities are per
+ * STEP_MS, and every frame advances the filters by the time since the previous one, however
+ * far apart the pipeline's pacing puts them. Detections are matched to tracks by ML Kit
+ * tracking id first, then greedily by IoU against the predicted boxes. A track is dropped after
+ * MAX_MISSES detector frames without a match, and all tracks are dropped when no frame arrived
+ * for QUIET_RESET_MS: the motion gate was closed, so whatever moves next is a new object.
+ *
+ * Events are what a caller should alert on:
+ *
+ *   BORN           a track matched CONFIRM_HITS detector frames; single-frame noise never fires
+ *   CLASS_CHANGED  a confirmed track was detected as another type CLASS_CONFIRM frames in a row
+ *
+ * Not thread-safe.
+ */
+final class DetectionTracker {
+
+    static final float MATCH_IOU = 0.3f;
+    static final int MAX_MISSES = 5;
+    static final int CONFIRM_HITS = 2;
+    static final int CLASS_CONFIRM = 2;
+    /** One filter step; node mode's default frame interval, which the noise values are tuned for. */
+    static final long STEP_MS = 1000L;
+    static final long QUIET_RESET_MS = 10_000L;
+    private static final float PROCESS_NOISE = 4f;
+    private static final float MEASUREMENT_NOISE = 16f;
+
+    static final class Event {
+        enum Kind { BORN, CLASS_CHANGED }
+
+        @NonNull final Kind kind;
+        final int trackId;
+        @NonNull final String type;
+        @Nullable final String previousType;
+        @NonNull final VisionDetector.Detection detection;
+
+        Event(@NonNull Kind kind, @NonNull Track track, @Nullable String previousType) {
+            this.kind = kind;
+            this.trackId = track.id;
+            this.type = track.type;
+            this.previousType = previousType;
+            this.detection = new VisionDetector.Detection(track.type, track.confidence, track.box(), track.id);
+        }
+    }
+
+    static final class Track {
+        final int id;
+        @NonNull String type;
+        float confidence;
+        @Nullable Integer sourceId;
+        int hits;
+        int misses;
+        boolean confirmed;
+        @Nullable private String pendingType;
+        private int pendingCount;
+        private final Kalman cx;
+        private final Kalman cy;
+        private final Kalman width;
+        private final Kalman height;
+
+        Track(int id, @NonNull VisionDetector.Detection detection) {
+            this.id = id;
+            this.type = detection.type;
+            this.confidence = detection.confidence;
+            this.sourceId = detection.trackingId;
+            Rect box = detection.boundingBox;
+            cx = new Kalman(box.exactCenterX());
+            cy = new Kalman(box.exactCenterY());
+            width = new Kalman(box.width());
+            height = new Kalman(box.height());
+            hits = 1;
+        }
+
+        /** The filtered box, rounded to pixels. */
+        @NonNull
+        Rect box() {
+            float halfWidth = Math.max(0f, width.x) / 2f;
+            float halfHeight = Math.max(0f, height.x) / 2f;
+            return new Rect(Math.round(cx.x - halfWidth), Math.round(cy.x - halfHeight),
+                Math.round(cx.x + halfWidth), Math.round(cy.x + halfHeight));
+        }
+
+        void predict(float steps) {
+            cx.predict(steps);
+            cy.predict(steps);
+            width.predict(steps);
+            height.predict(steps);
+        }
+
+        void correct(@NonNull Rect box) {
+            cx.update(box.exactCenterX());
+            cy.update(box.exactCenterY());
+            width.update(box.width());
+            height.update(box.height());
+        }
+    }
+
+    private final int confirmHits;
+    private final List<Track> tracks = new ArrayList<>();
+    private int nextId = 1;
+    private long lastFrameMs = Long.MIN_VALUE;
+
+    DetectionTracker() {
+        this(CONFIRM_HITS);
+    }
+
+    DetectionTracker(int confirmHits) {
+        this.confirmHits = Math.max(1, confirmHits);
+    }
+
+    /** Live tracks, confirmed or not. */
+    @NonNull
+    List<Track> tracks() {
+        return Collections.unmodifiableList(tracks);
+    }
+
+    /**
+     * A frame at nowMs (elapsed realtime) went by without running the detector: move every box
+     * along its velocity for the time since the previous frame.
+     */
+    void predict(long nowMs) {
+        float steps = advance(nowMs);
+        if (steps <= 0f) return;
+        for (Track track : tracks) {
+            track.predict(steps);
+        }
+    }
+
+    /** A frame at nowMs the detector ran on. Returns the births and class changes it caused. */
+    @NonNull
+    List<Event> update(@NonNull List<VisionDetector.Detection> detections, long nowMs) {
+        predict(nowMs);
+
+        List<Event> events = new ArrayList<>();
+        boolean[] trackMatched = new boolean[tracks.size()];
+        boolean[] detectionMatched = new boolean[detections.size()];
+
+        // ML Kit already knows these belong together.
+        for (int d = 0; d < detections.size(); d++) {
+            Integer sourceId = detections.get(d).trackingId;
+            if (sourceId == null) continue;
+            for (int t = 0; t < tracks.size(); t++) {
+                if (!trackMatched[t] && sourceId.equals(tracks.get(t).sourceId)) {
+                    match(tracks.get(t), detections.get(d), events);
+                    trackMatched[t] = true;
+                    detectionMatched[d] = true;
+                    break;
+                }
+            }
+        }
+
+        // Greedy IoU for the rest, best pair first.
+        while (true) {
+            int bestTrack = -1;
+            int bestDetection = -1;
+            float bestIou = MATCH_IOU;
+            for (int t = 0; t < tracks.size(); t++) {
+                if (trackMatched[t]) continue;
+                Rect predicted = tracks.get(t).box();
+                for (int d = 0; d < detections.size(); d++) {
+                    if (detectionMatched[d]) continue;
+                    float iou = intersectionOverUnion(predicted, detections.get(d).boundingBox);
+                    if (iou >= bestIou) {
+                        bestIou = iou;
+                        bestTrack = t;
+                        bestDetection = d;
+                    }
+                }
+            }
+            if (bestTrack < 0) break;
+            match(tracks.get(bestTrack), detections.get(bestDetection), events);
+            trackMatched[bestTrack] = true;
+            detectionMatched[bestDetection] = true;
+        }
+
+        int existing = tracks.size();
+        for (int d = 0; d < detections.size(); d++) {
+            if (detectionMatched[d]) continue;
+            Track track = new Track(nextId++, detections.get(d));
+            tracks.add(track);
+            if (confirmHits <= 1) {
+                track.confirmed = true;
+                events.add(new Event(Event.Kind.BORN, track, null));
+            }
+        }
+
+        Iterator<Track> iterator = tracks.iterator();
+        for (int t = 0; iterator.hasNext(); t++) {
+            Track track = iterator.next();
+            if (t >= existing || trackMatched[t]) continue;
+            if (++track.misses > MAX_MISSES) iterator.remove();
+        }
+        return events;
+    }
+
+    /**
+     * Moves the clock to nowMs and returns the filter steps since the previous frame. After a
+     * gap longer than QUIET_RESET_MS every track is dropped instead.
+     */
+    private float advance(long nowMs) {
+        long previous = lastFrameMs;
+        if (previous != Long.MIN_VALUE && nowMs <= previous) return 0f;
+        lastFrameMs = nowMs;
+        if (previous == Long.MIN_VALUE) return 0f;
+        if (nowMs - previous > QUIET_RESET_MS) {
+            tracks.clear();
+            return 0f;
+        }
+        return (nowMs - previous) / (float) STEP_MS;
+    }
+
+    private void match(@NonNull Track track, @NonNull VisionDetector.Detection detection,
+                       @NonNull List<Event> events) {
+        track.correct(detection.boundingBox);
+        track.misses = 0;
+        track.hits++;
+        track.confidence = detection.confidence;
+        if (detection.trackingId != null) track.sourceId = detection.trackingId;
+
+        if (detection.type.equals(track.type)) {
+            track.pendingType = null;
+            track.pendingCount = 0;
+        } else if (detection.type.equals(track.pendingType)) {
+            track.pendingCount++;
+        } else {
+            track.pendingType = detection.type;
+            track.pendingCount = 1;
+        }
+
+        if (!track.confirmed) {
+            if (track.pendingCount >= CLASS_CONFIRM) {
+                track.type = track.pendingType;
+                track.pendingType = null;
+                track.pendingCount = 0;
+            }
+            if (track.hits >= confirmHits) {
+                track.confirmed = true;
+                events.add(new Event(Event.Kind.BORN, track, null));
+            }
+            return;
+        }
+        if (track.pendingCount >= CLASS_CONFIRM) {
+            String previous = track.type;
+            track.type = track.pendingType;
+            track.pendingType = null;
+            track.pendingCount = 0;
+            events.add(new Event(Event.Kind.CLASS_CHANGED, track, previous));
+        }
+    }
+
+    static float intersectionOverUnion(@NonNull Rect a, @NonNull Rect b) {
+        int left = Math.max(a.left, b.left);
+        int top = Math.max(a.top, b.top);
+        int right = Math.min(a.right, b.right);
+        int bottom = Math.min(a.bottom, b.bottom);
+        long intersection = (long) Math.max(0, right - left) * Math.max(0, bottom - top);
+        if (intersection <= 0L) return 0f;
+        long areaA = (long) Math.max(0, a.width()) * Math.max(0, a.height());
+        long areaB = (long) Math.max(0, b.width()) * Math.max(0, b.height());
+        long union = areaA + areaB - intersection;
+        return union <= 0L ? 0f : (float) intersection / (float) union;
+    }
+
+    /** One coordinate with a velocity per step; predictions may cover fractional steps. */
+    private static final class Kalman {
+        float x;
+        float v;
+        private float p00 = MEASUREMENT_NOISE;
+        private float p01;
+        private float p11 = MEASUREMENT_NOISE;
+
+        Kalman(float initial) {
+            this.x = initial;
+        }
+
+        void predict(float dt) {
+            x += v * dt;
+            p00 += dt * (2f * p01 + dt * p11) + dt * PROCESS_NOISE;
+            p01 += dt * p11;
+            p11 += dt * PROCESS_NOISE;
+        }
+
+        void update(float measured) {
+            float s = p00 + MEASUREMENT_NOISE;
+            float k0 = p00 / s;
+            float k1 = p01 / s;
+            float residual = measured - x;
+            x += k0 * residual;
+            v += k1 * residual;
+            float q00 = p00;
+            float q01 = p01;
+            p00 = (1f - k0) * q00;
+            p01 = (1f - k0) * q01;
+            p11 -= k1 * q01;
+        }
+    }
+}
@@ -0,0 +1,428 @@
+package ai.clawphones.agent.chat;
+
+import android.media.MediaCodec;
+import android.media.MediaExtractor;
+import android.media.MediaFormat;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Decodes base64 job audio into 16 kHz mono 16-bit PCM, a chunk at a time.
+ *
+ * Input is read straight off the base64 string; only one chunk of decoded samples exists at
+ * once. Formats:
+ *
+ *   WAV         8, 16, 24 or 32-bit integer PCM, or 32-bit float, any rate and channel count
+ *   raw PCM     16-bit little-endian; inputMetadata "format" is "pcm", with "sampleRate" and
+ *               "channels" (default 16000 and 1)
+ *   compressed  Ogg or WebM Opus, and whatever else MediaExtractor reads: the bytes are spooled
+ *               to a cache file, never held in memory, and decoded with MediaCodec
+ *
+ * Channels are averaged, and rates other than 16 kHz are linearly resampled, which is enough for
+ * a speech recognizer's band.
+ */
+final class EdgeAudioDecoder {
+
+    static final int SAMPLE_RATE = 16_000;
+    static final int CHUNK_SAMPLES = SAMPLE_RATE / 10;
+    static final long MAX_DURATION_MS = 10L * 60L * 1000L;
+
+    private static final int DEFAULT_PCM_RATE = 16_000;
+    private static final long CODEC_TIMEOUT_US = 10_000L;
+
+    private static final int WAV_PCM = 1;
+    private static final int WAV_FLOAT = 3;
+    private static final int WAV_EXTENSIBLE = 0xFFFE;
+
+    /** Receives decoded audio. The array is reused for the next chunk. */
+    interface Sink {
+        void accept(@NonNull short[] samples, int length) throws IOException;
+    }
+
+    /** What the input was. */
+    static final class Info {
+        final String format;
+        final int sampleRate;
+        final int channels;
+        final long samples;
+
+        Info(@NonNull String format, int sampleRate, int channels, long samples) {
+            this.format = format;
+            this.sampleRate = sampleRate;
+            this.channels = channels;
+            this.samples = samples;
+        }
+
+        long durationMs() {
+            return samples * 1000L / SAMPLE_RATE;
+        }
+    }
+
+    @Nullable private final File cacheDir;
+
+    /** @param cacheDir where compressed input is spooled; null leaves only WAV and raw PCM */
+    EdgeAudioDecoder(@Nullable File cacheDir) {
+        this.cacheDir = cacheDir;
+    }
+
+    @NonNull
+    Info decode(@Nullable String base64Data, @Nullable Map<String, Object> metadata, @NonNull Sink sink)
+        throws IOException {
+        if (base64Data == null || base64Data.isEmpty()) throw new IOException("No audio input");
+        String format = metadataString(metadata, "format");
+
+        try (InputStream in = Base64Source.open(base64Data)) {
+            if ("pcm".equals(format) || "s16le".equals(format)) {
+                int rate = metadataInt(metadata, "sampleRate", DEFAULT_PCM_RATE);
+                int channels = metadataInt(metadata, "channels", 1);
+                Converter converter = new Converter(Converter.S16, rate, channels, sink);
+                pump(in, -1L, converter);
+                return converter.finish("pcm");
+            }
+
+            byte[] header = new byte[12];
+            in.mark(header.length);
+            int headerLength = readFully(in, header, 0, header.length);
+            in.reset();
+            if (headerLength == header.length && ascii(header, 0, "RIFF") && ascii(header, 8, "WAVE")) {
+                return decodeWav(in, sink);
+            }
+            if (headerLength < 4) throw new IOException("Audio input too short");
+            return decodeCompressed(in, sink);
+        }
+    }
+
+    @NonNull
+    private Info decodeWav(@NonNull InputStream in, @NonNull Sink sink) throws IOException {
+        skipFully(in, 12);
+        byte[] chunk = new byte[8];
+        Converter converter = null;
+        while (true) {
+            if (readFully(in, chunk, 0, 8) < 8) throw new EOFException("WAV has no data chunk");
+            long size = readLe(chunk, 4, 4);
+            if (ascii(chunk, 0, "fmt ")) {
+                if (size < 16) throw new IOException("WAV fmt chunk too short");
+                byte[] fmt = new byte[16];
+                if (readFully(in, fmt, 0, 16) < 16) throw new EOFException("WAV fmt chunk truncated");
+                int tag = (int) readLe(fmt, 0, 2);
+                int channels = (int) readLe(fmt, 2, 2);
+                int rate = (int) readLe(fmt, 4, 4);
+                int bits = (int) readLe(fmt, 14, 2);
+                long rest = size - 16;
+                if (tag == WAV_EXTENSIBLE && rest >= 10) {
+                    // cbSize, valid bits and channel mask come before the sub-format GUID.
+                    byte[] ext = new byte[10];
+                    if (readFully(in, ext, 0, 10) < 10) throw new EOFException("WAV fmt chunk truncated");
+                    tag = (int) readLe(ext, 8, 2);
+                    rest -= 10;
+                }
+                skipFully(in, rest + (size & 1L));
+                converter = new Converter(wavEncoding(tag, bits), rate, channels, sink);
+            } else if (ascii(chunk, 0, "data")) {
+                if (converter == null) throw new IOException("WAV data before fmt");
+                // Streamed WAVs leave the size at 0 or all ones; read to the end then.
+                pump(in, size == 0L || size == 0xFFFFFFFFL ? -1L : size, converter);
+                return converter.finish("wav");
+            } else {
+                skipFully(in, size + (size & 1L));
+            }
+        }
+    }
+
+    private static int wavEncoding(int tag, int bits) throws IOException {
+        if (tag == WAV_PCM) {
+            switch (bits) {
+                case 8: return Converter.U8;
+                case 16: return Converter.S16;
+                case 24: return Converter.S24;
+                case 32: return Converter.S32;
+                default: break;
+            }
+        } else if (tag == WAV_FLOAT && bits == 32) {
+            return Converter.F32;
+        }
+        throw new IOException(String.format(Locale.US, "Unsupported WAV encoding %d/%d bits", tag, bits));
+    }
+
+    @NonNull
+    private Info decodeCompressed(@NonNull InputStream in, @NonNull Sink sink) throws IOException {
+        if (cacheDir == null) throw new IOException("Compressed audio needs a cache directory");
+        File spool = File.createTempFile("edge-audio", ".bin", cacheDir);
+        MediaExtractor extractor = null;
+        MediaCodec codec = null;
+        try {
+            try (OutputStream out = new FileOutputStream(spool)) {
+                byte[] buffer = new byte[16 * 1024];
+                int n;
+                while ((n = in.read(buffer)) > 0) out.write(buffer, 0, n);
+            }
+
+            extractor = new MediaExtractor();
+            extractor.setDataSource(spool.getAbsolutePath());
+            MediaFormat format = null;
+            for (int i = 0; i < extractor.getTrackCount(); i++) {
+                MediaFormat candidate = extractor.getTrackFormat(i);
+                String mime = candidate.getString(MediaFormat.KEY_MIME);
+                if (mime != null && mime.startsWith("audio/")) {
+                    extractor.selectTrack(i);
+                    format = candidate;
+                    break;
+                }
+            }
+            if (format == null) throw new IOException("No audio track in input");
+            String mime = format.getString(MediaFormat.KEY_MIME);
+
+            codec = MediaCodec.createDecoderByType(mime);
+            codec.configure(format, null, null, 0);
+            codec.start();
+            Converter converter = new Converter(Converter.S16,
+                format.getInteger(MediaFormat.KEY_SAMPLE_RATE), format.getInteger(MediaFormat.KEY_CHANNEL_COUNT), sink);
+            MediaCodec.BufferInfo info = new MediaCodec.BufferInfo();
+            byte[] bytes = new byte[0];
+            boolean inputDone = false;
+            while (true) {
+                if (!inputDone) {
+                    int index = codec.dequeueInputBuffer(CODEC_TIMEOUT_US);
+                    if (index >= 0) {
+                        ByteBuffer buffer = codec.getInputBuffer(index);
+                        int size = buffer != null ? extractor.readSampleData(buffer, 0) : -1;
+                        if (size < 0) {
+                            codec.queueInputBuffer(index, 0, 0, 0L, MediaCodec.BUFFER_FLAG_END_OF_STREAM);
+                            inputDone = true;
+                        } else {
+                            codec.queueInputBuffer(index, 0, size, extractor.getSampleTime(), 0);
+                            extractor.advance();
+                        }
+                    }
+                }
+                int index = codec.dequeueOutputBuffer(info, CODEC_TIMEOUT_US);
+                if (index == MediaCodec.INFO_OUTPUT_FORMAT_CHANGED) {
+                    MediaFormat output = codec.getOutputFormat();
+                    converter.setFormat(output.getInteger(MediaFormat.KEY_SAMPLE_RATE),
+                        output.getInteger(MediaFormat.KEY_CHANNEL_COUNT));
+                } else if (index >= 0) {
+                    ByteBuffer buffer = codec.getOutputBuffer(index);
+                    if (buffer != null && info.size > 0) {
+                        if (bytes.length < info.size) bytes = new byte[info.size];
+                        buffer.position(info.offset);
+                        buffer.get(bytes, 0, info.size);
+                        converter.write(bytes, info.size);
+                    }
+                    codec.releaseOutputBuffer(index, false);
+                    if ((info.flags & MediaCodec.BUFFER_FLAG_END_OF_STREAM) != 0) break;
+                }
+            }
+            return converter.finish(mime.substring("audio/".length()));
+        } catch (IllegalStateException | IllegalArgumentException e) {
+            throw new IOException("Could not decode audio: " + e.getMessage(), e);
+        } finally {
+            if (codec != null) {
+                try {
+                    codec.stop();
+                } catch (IllegalStateException e) {
+                    // Never started
+                }
+                codec.release();
+            }
+            if (extractor != null) extractor.release();
+            //noinspection ResultOfMethodCallIgnored
+            spool.delete();
+        }
+    }
+
+    /** Feeds whole frames to the converter; limit is the byte count, or -1 for up to the end. */
+    private static void pump(@NonNull InputStream in, long limit, @NonNull Converter converter) throws IOException {
+        byte[] buffer = new byte[16 * 1024];
+        int filled = 0;
+        long remaining = limit;
+        while (remaining != 0L) {
+            int want = buffer.length - filled;
+            if (remaining > 0L) want = (int) Math.min(want, remaining);
+            int n = in.read(buffer, filled, want);
+            if (n < 0) break;
+            filled += n;
+            if (remaining > 0L) remaining -= n;
+            int used = converter.write(buffer, filled);
+            System.arraycopy(buffer, used, buffer, 0, filled - used);
+            filled -= used;
+        }
+        if (remaining > 0L) throw new EOFException("Audio ends " + remaining + " bytes early");
+    }
+
+    /** Interleaved samples in, 16 kHz mono chunks out. */
+    private static final class Converter {
+        static final int U8 = 1;
+        static final int S16 = 2;
+        static final int S24 = 3;
+        static final int S32 = 4;
+        static final int F32 = 5;
+
+        private final int encoding;
+        private final int bytesPerSample;
+        private final Sink sink;
+        private final short[] chunk = new short[CHUNK_SAMPLES];
+        private int sourceRate;
+        private int channels;
+        private double step;
+        private int chunkLength;
+        private long sourceIndex;
+        private double nextPosition;
+        private float previous;
+        private long written;
+
+        Converter(int encoding, int sourceRate, int channels, @NonNull Sink sink) throws IOException {
+            this.encoding = encoding;
+            this.bytesPerSample = encoding == U8 ? 1 : encoding == S16 ? 2 : encoding == S24 ? 3 : 4;
+            this.sink = sink;
+            setFormat(sourceRate, channels);
+        }
+
+        void setFormat(int sourceRate, int channels) throws IOException {
+            if (sourceRate < 1000 || sourceRate > 384_000 || channels < 1 || channels > 32) {
+                throw new IOException("Unsupported audio format: " + sourceRate + " Hz, " + channels + " channels");
+            }
+            // The output timeline carries on; only what a source sample is worth changes.
+            double newStep = (double) sourceRate / SAMPLE_RATE;
+            if (step > 0d) nextPosition = (nextPosition - sourceIndex) * newStep / step;
+            sourceIndex = 0L;
+            this.sourceRate = sourceRate;
+            this.channels = channels;
+            this.step = newStep;
+        }
+
+        /** Converts the whole frames in bytes[0, length). Returns the bytes used. */
+        int write(@NonNull byte[] bytes, int length) throws IOException {
+            int frameBytes = bytesPerSample * channels;
+            int frames = length / frameBytes;
+            int offset = 0;
+            for (int f = 0; f < frames; f++) {
+                float sum = 0f;
+                for (int c = 0; c < channels; c++) {
+                    sum += sample(bytes, offset);
+                    offset += bytesPerSample;
+                }
+                resample(sum / channels);
+            }
+            return offset;
+        }
+
+        private float sample(@NonNull byte[] b, int i) {
+            switch (encoding) {
+                case U8:
+                    return ((b[i] & 0xFF) - 128) / 128f;
+                case S16:
+                    return (short) ((b[i] & 0xFF) | (b[i + 1] << 8)) / 32768f;
+                case S24:
+                    return ((b[i] & 0xFF) | ((b[i + 1] & 0xFF) << 8) | (b[i + 2] << 16)) / 8388608f;
+                case S32:
+                    return ((b[i] & 0xFF) | ((b[i + 1] & 0xFF) << 8) | ((b[i + 2] & 0xFF) << 16) | (b[i + 3] << 24))
+                        / 2147483648f;
+                default:
+                    return Float.intBitsToFloat((b[i] & 0xFF) | ((b[i + 1] & 0xFF) << 8)
+                        | ((b[i + 2] & 0xFF) << 16) | (b[i + 3] << 24));
+            }
+        }
+
+        /** Linear interpolation between the previous and this source sample. */
+        private void resample(float value) throws IOException {
+            while (nextPosition <= sourceIndex) {
+                double t = nextPosition - (sourceIndex - 1);
+                emit(previous + (float) ((value - previous) * t));
+                nextPosition += step;
+            }
+            previous = value;
+            sourceIndex++;
+        }
+
+        private void emit(float value) throws IOException {
+            float clamped = Math.max(-1f, Math.min(1f, value));
+            chunk[chunkLength++] = (short) Math.round(clamped * 32767f);
+            if (chunkLength == chunk.length) flush();
+        }
+
+        private void flush() throws IOException {
+            if (chunkLength == 0) return;
+            written += chunkLength;
+            if (written * 1000L / SAMPLE_RATE > MAX_DURATION_MS) {
+                throw new IOException("Audio longer than " + MAX_DURATION_MS / 1000L + " s");
+            }
+            sink.accept(chunk, chunkLength);
+            chunkLength = 0;
+        }
+
+        @NonNull
+        Info finish(@NonNull String format) throws IOException {
+            flush();
+            return new Info(format, sourceRate, channels, written);
+        }
+    }
+
+    @Nullable
+    private static String metadataString(@Nullable Map<String, Object> metadata, @NonNull String key) {
+        Object value = metadata != null ? metadata.get(key) : null;
+        return value != null ? value.toString().toLowerCase(Locale.US) : null;
+    }
+
+    /** Metadata numbers arrive from Gson as doubles. */
+    private static int metadataInt(@Nullable Map<String, Object> metadata, @NonNull String key, int fallback) {
+        Object value = metadata != null ? metadata.get(key) : null;
+        if (value instanceof Number) return ((Number) value).intValue();
+        if (value != null) {
+            try {
+                return Integer.parseInt(value.toString().trim());
+            } catch (NumberFormatException e) {
+                return fallback;
+            }
+        }
+        return fallback;
+    }
+
+    private static int readFully(@NonNull InputStream in, @NonNull byte[] buffer, int offset, int length)
+        throws IOException {
+        int total = 0;
+        while (total < length) {
+            int n = in.read(buffer, offset + total, length - total);
+            if (n < 0) break;
+            total += n;
+        }
+        return total;
+    }
+
+    private static void skipFully(@NonNull InputStream in, long count) throws IOException {
+        byte[] scratch = null;
+        while (count > 0L) {
+            long skipped = in.skip(count);
+            if (skipped <= 0L) {
+                if (scratch == null) scratch = new byte[4096];
+                int n = in.read(scratch, 0, (int) Math.min(scratch.length, count));
+                if (n < 0) throw new EOFException("Audio ends early");
+                skipped = n;
+            }
+            count -= skipped;
+        }
+    }
+
+    private static long readLe(@NonNull byte[] b, int offset, int length) {
+        long value = 0L;
+        for (int i = length - 1; i >= 0; i--) value = (value << 8) | (b[offset + i] & 0xFF);
+        return value;
+    }
+
+    private static boolean ascii(@NonNull byte[] b, int offset, @NonNull String tag) {
+        for (int i = 0; i < tag.length(); i++) {
+            if (b[offset + i] != tag.charAt(i)) return false;
+        }
+        return true;
+    }
+}
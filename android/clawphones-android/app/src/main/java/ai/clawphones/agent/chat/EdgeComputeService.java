@@ -1,7 +1,5 @@
 package ai.clawphones.agent.chat;
 
-import android.Manifest;
-import android.annotation.SuppressLint;
 import android.app.Notification;
 import android.app.NotificationChannel;
 import android.app.NotificationManager;
@@ -9,9 +7,6 @@ import android.app.PendingIntent;
 import android.app.Service;
 import android.content.Context;
 import android.content.Intent;
-import android.content.pm.PackageManager;
-import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
 import android.graphics.Rect;
 import android.os.BatteryManager;
 import android.os.Build;
@@ -21,14 +16,9 @@ import android.os.Looper;
 import android.os.PowerManager;
 import android.os.Process;
 import android.os.SystemClock;
-import android.speech.RecognitionListener;
-import android.speech.RecognizerIntent;
-import android.speech.SpeechRecognizer;
-import android.util.Base64;
 
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
-import androidx.core.app.ActivityCompat;
 import androidx.core.app.NotificationCompat;
 
 import com.google.android.gms.tasks.Task;
@@ -37,7 +27,6 @@ import com.google.mlkit.vision.common.InputImage;
 import com.google.mlkit.vision.label.ImageLabel;
 import com.google.mlkit.vision.label.ImageLabeling;
 import com.google.mlkit.vision.label.ImageLabeler;
-import com.google.mlkit.vision.label.ImageLabelerOptions;
 import com.google.mlkit.vision.label.defaults.ImageLabelerOptions;
 import com.google.mlkit.vision.text.TextRecognition;
 import com.google.mlkit.vision.text.TextRecognizer;
@@ -51,9 +40,9 @@ import com.google.gson.Gson;
 import com.google.gson.JsonArray;
 import com.google.gson.JsonObject;
 import com.google.gson.reflect.TypeToken;
+import com.termux.shared.logger.Logger;
 
 import java.io.ByteArrayOutputStream;
-import java.io.IOException;
 import java.lang.reflect.Type;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -65,11 +54,8 @@ import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.TimeoutException;
 
-import okhttp3.Call;
-import okhttp3.Callback;
 import okhttp3.HttpUrl;
 import okhttp3.MediaType;
 import okhttp3.OkHttpClient;
@@ -86,8 +72,13 @@ import okhttp3.Response;
  * - Foreground service with persistent notification
  * - Job registration, claiming, execution, and result submission
  * - ML Kit integration: ImageLabeling, TextRecognition, ObjectDetection, SpeechRecognition
- * - Auto-process loop (10s intervals) with battery and thermal constraints
- * - Max 1 concurrent job execution
+ * - Worker pool sized from core count, thermal and battery state, with per-type limits
+ * - Batch job claiming; finished jobs claim again at once
+ * - Job availability pushed over a long-poll, with adaptive polling when the server has none
+ * - Input images stream-decoded at the size each job type needs, into pooled bitmaps
+ * - Results kept in a durable outbox and retried with backoff until the server has them
+ * - Speech jobs: WAV, PCM or Opus input decoded in chunks, split into utterances and run through
+ *   the on-device recognizer, with timestamped segments
  */
 public class EdgeComputeService extends Service {
 
@@ -117,9 +108,6 @@ public class EdgeComputeService extends Service {
     public static final String EXTRA_JOB_SUCCESS = "job_success";
 
     // Job processing constants
-    private static final long POLL_INTERVAL_MS = 10000; // 10 seconds
-    private static final int MIN_BATTERY_PERCENT = 30;
-    private static final int MAX_CONCURRENT_JOBS = 1;
     private static final long THERMAL_CHECK_INTERVAL_MS = 30000; // 30 seconds
     private static final long JOB_TIMEOUT_MS = 60000; // 60 seconds per job
 
@@ -139,13 +127,17 @@ public class EdgeComputeService extends Service {
 
     // Job management
     private final Map<String, ComputeJob> claimedJobs = new ConcurrentHashMap<>();
-    private final Map<String, ComputeJob> completedJobs = new ConcurrentHashMap<>();
-    private final AtomicInteger activeJobCount = new AtomicInteger(0);
+    private final EdgeJobHistory jobHistory = new EdgeJobHistory();
+    @Nullable private volatile EdgeJobClient jobClient;
+    @Nullable private volatile EdgeWorkerPool workerPool;
+    private final EdgeImageDecoder imageDecoder = new EdgeImageDecoder();
+    @Nullable private volatile EdgeJobFeed jobFeed;
+    @Nullable private volatile EdgeResultSender resultSender;
 
     // Threading
     private final Handler mainHandler = new Handler(Looper.getMainLooper());
     private final ExecutorService executor = Executors.newSingleThreadExecutor();
-    private final AtomicBoolean pollScheduled = new AtomicBoolean(false);
+    @Nullable private PowerManager.OnThermalStatusChangedListener thermalListener;
 
     // Network
     private final OkHttpClient httpClient;
@@ -154,7 +146,8 @@ public class EdgeComputeService extends Service {
     private ImageLabeler imageLabeler;
     private TextRecognizer textRecognizer;
     private ObjectDetector objectDetector;
-    private SpeechRecognizer speechRecognizer;
+    @Nullable private OnDeviceSpeechRecognizer speechRecognizer;
+    @Nullable private EdgeAudioDecoder audioDecoder;
 
     // Power management
     private PowerManager powerManager;
@@ -192,7 +185,7 @@ public class EdgeComputeService extends Service {
     }
 
     public EdgeComputeService() {
-        OkHttpClient.Builder builder = new OkHttpClient.Builder()
+        OkHttpClient.Builder builder = HttpTransport.newBuilder()
             .connectTimeout(30, TimeUnit.SECONDS)
             .readTimeout(60, TimeUnit.SECONDS)
             .writeTimeout(30, TimeUnit.SECONDS);
@@ -236,7 +229,7 @@ public class EdgeComputeService extends Service {
                 isRunning = true;
                 startForeground(NOTIFICATION_ID, createNotification());
                 registerDevice();
-                scheduleJobPoll();
+                startWorkerPool();
             }
         }
 
@@ -257,14 +250,22 @@ public class EdgeComputeService extends Service {
             instance = null;
         }
 
-        cancelJobPoll();
-        closeMlDetectors();
+        stopWorkerPool();
         executor.shutdown();
+        closeMlDetectors();
+        Logger.logInfo(LOG_TAG, "Image decoder: " + imageDecoder.stats());
+        imageDecoder.clear();
 
         stopForeground(true);
         stopSelf();
     }
 
+    @Override
+    public void onTrimMemory(int level) {
+        super.onTrimMemory(level);
+        imageDecoder.onTrimMemory(level);
+    }
+
     // Notification management
 
     private void createNotificationChannel() {
@@ -324,7 +325,7 @@ public class EdgeComputeService extends Service {
                     if (response.isSuccessful() && response.body() != null) {
                         JsonObject result = GSON.fromJson(response.body().string(), JsonObject.class);
                         if (result != null) {
-                            sessionToken = result.has("token") ? result.get("token").getAsString() : null;
+                            setSessionToken(result.has("token") ? result.get("token").getAsString() : null);
                         }
                     }
                 }
@@ -334,161 +335,104 @@ public class EdgeComputeService extends Service {
         });
     }
 
-    // Job polling loop
+    // Worker pool
 
-    private void scheduleJobPoll() {
-        if (pollScheduled.compareAndSet(false, true)) {
-            mainHandler.postDelayed(this::pollForJobs, POLL_INTERVAL_MS);
+    private void startWorkerPool() {
+        EdgeJobClient client = new EdgeJobClient(httpClient, apiUrl, deviceId);
+        client.setSessionToken(sessionToken);
+        jobClient = client;
+        EdgeResultSender sender = new EdgeResultSender(new EdgeResultOutbox(this), client);
+        resultSender = sender;
+        sender.wake();
+        EdgeJobFeed feed = new EdgeJobFeed(client, () -> {
+            EdgeWorkerPool pool = workerPool;
+            if (pool != null) pool.requestClaim();
+        });
+        jobFeed = feed;
+        workerPool = new EdgeWorkerPool(feed.observe(client), this::runJob,
+            Runtime.getRuntime().availableProcessors());
+        refreshCapacity();
+        feed.start();
+        mainHandler.postDelayed(capacityCheck, THERMAL_CHECK_INTERVAL_MS);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q && powerManager != null) {
+            thermalListener = status -> refreshCapacity();
+            powerManager.addThermalStatusListener(thermalListener);
         }
     }
 
-    private void cancelJobPoll() {
-        pollScheduled.set(false);
-        mainHandler.removeCallbacksAndMessages(null);
-    }
-
-    private void pollForJobs() {
-        if (!isRunning) {
-            pollScheduled.set(false);
-            return;
+    private void stopWorkerPool() {
+        mainHandler.removeCallbacks(capacityCheck);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q && powerManager != null && thermalListener != null) {
+            powerManager.removeThermalStatusListener(thermalListener);
+            thermalListener = null;
         }
-
-        executor.execute(() -> {
-            try {
-                if (canClaimJob() && hasSufficientBattery() && !isThrottled()) {
-                    fetchAndClaimJob();
-                }
-            } finally {
-                pollScheduled.set(false);
-                if (isRunning) {
-                    scheduleJobPoll();
-                }
-            }
-        });
-    }
-
-    // Job operations
-
-    private boolean canClaimJob() {
-        return activeJobCount.get() < MAX_CONCURRENT_JOBS;
-    }
-
-    private boolean hasSufficientBattery() {
-        if (powerManager == null) return false;
-
-        BatteryManager batteryManager = (BatteryManager) getSystemService(Context.BATTERY_SERVICE);
-        if (batteryManager == null) return false;
-
-        int batteryLevel = batteryManager.getIntProperty(BatteryManager.BATTERY_PROPERTY_CAPACITY);
-        return batteryLevel >= MIN_BATTERY_PERCENT;
-    }
-
-    private boolean isThrottled() {
-        if (powerManager == null) return false;
-
-        // Check if device is in power save mode
-        if (powerManager.isPowerSaveMode()) {
-            return true;
+        if (jobFeed != null) {
+            Logger.logInfo(LOG_TAG, "Job feed stopped: " + jobFeed.stats());
+            jobFeed.stop();
         }
-
-        // Check if device is in low power idle mode
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
-            if (powerManager.isDeviceIdleMode()) {
-                return true;
-            }
+        if (workerPool != null) {
+            Logger.logInfo(LOG_TAG, "Worker pool stopped: " + workerPool.stats());
+            workerPool.shutdown();
         }
-
-        return false;
-    }
-
-    private void fetchAndClaimJob() {
-        try {
-            HttpUrl.Builder urlBuilder = HttpUrl.parse(apiUrl + "/jobs/available").newBuilder();
-            urlBuilder.addQueryParameter("deviceId", deviceId);
-            urlBuilder.addQueryParameter("limit", "1");
-
-            Request.Builder requestBuilder = new Request.Builder()
-                .url(urlBuilder.build())
-                .get();
-
-            if (sessionToken != null) {
-                requestBuilder.addHeader("Authorization", "Bearer " + sessionToken);
-            }
-
-            Request request = requestBuilder.build();
-            try (Response response = httpClient.newCall(request).execute()) {
-                if (!response.isSuccessful || response.body() == null) {
-                    return;
-                }
-
-                JsonObject result = GSON.fromJson(response.body().string(), JsonObject.class);
-                if (result == null || !result.has("jobs")) {
-                    return;
-                }
-
-                JsonArray jobsArray = result.getAsJsonArray("jobs");
-                if (jobsArray == null || jobsArray.isEmpty()) {
-                    return;
-                }
-
-                JsonObject jobObj = jobsArray.get(0).getAsJsonObject();
-                String jobId = jobObj.has("jobId") ? jobObj.get("jobId").getAsString() : null;
-                if (jobId != null) {
-                    claimJob(jobId);
-                }
-            }
-        } catch (Exception e) {
-            // Log error and continue
+        // Jobs still running after this queue their results for the next start.
+        if (resultSender != null) {
+            Logger.logInfo(LOG_TAG, "Result sender stopped: " + resultSender.stats());
+            resultSender.stop();
         }
     }
 
-    private void claimJob(@NonNull String jobId) {
-        try {
-            JsonObject payload = new JsonObject();
-            payload.addProperty("deviceId", deviceId);
-            payload.addProperty("claimedAt", System.currentTimeMillis());
-
-            RequestBody body = RequestBody.create(GSON.toJson(payload), JSON_MEDIA_TYPE);
-            HttpUrl url = HttpUrl.parse(apiUrl + "/jobs/" + jobId + "/claim");
-            if (url == null) return;
-
-            Request.Builder requestBuilder = new Request.Builder()
-                .url(url)
-                .post(body);
-
-            if (sessionToken != null) {
-                requestBuilder.addHeader("Authorization", "Bearer " + sessionToken);
-            }
-
-            Request request = requestBuilder.build();
-            try (Response response = httpClient.newCall(request).execute()) {
-                if (response.isSuccessful() && response.body() != null) {
-                    JsonObject result = GSON.fromJson(response.body().string(), JsonObject.class);
-                    if (result != null) {
-                        ComputeJob job = ComputeJob.fromJson(result.toString());
-                        if (job != null) {
-                            executeJob(job);
-                        }
-                    }
-                }
+    private final Runnable capacityCheck = new Runnable() {
+        @Override
+        public void run() {
+            if (!isRunning) return;
+            refreshCapacity();
+            mainHandler.postDelayed(this, THERMAL_CHECK_INTERVAL_MS);
+        }
+    };
+
+    /** Sizes the pool from core count, thermal status, battery and power saving. */
+    private void refreshCapacity() {
+        EdgeWorkerPool pool = workerPool;
+        if (pool == null) return;
+
+        int thermalStatus = PowerManager.THERMAL_STATUS_NONE;
+        boolean powerSave = false;
+        boolean idle = false;
+        if (powerManager != null) {
+            powerSave = powerManager.isPowerSaveMode();
+            idle = powerManager.isDeviceIdleMode();
+            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.Q) {
+                thermalStatus = powerManager.getCurrentThermalStatus();
             }
-        } catch (Exception e) {
-            // Log error
         }
+        int batteryPercent = 0;
+        boolean charging = false;
+        BatteryManager batteryManager = (BatteryManager) getSystemService(Context.BATTERY_SERVICE);
+        if (batteryManager != null) {
+            batteryPercent = batteryManager.getIntProperty(BatteryManager.BATTERY_PROPERTY_CAPACITY);
+            charging = batteryManager.isCharging();
+        }
+
+        pool.setCapacity(EdgeWorkerPool.capacityFor(Runtime.getRuntime().availableProcessors(),
+            thermalStatus, batteryPercent, charging, powerSave, idle));
     }
 
-    private void executeJob(@NonNull ComputeJob job) {
-        activeJobCount.incrementAndGet();
+    /** Runs on a pool worker; the pool holds the slot until this returns. */
+    private void runJob(@NonNull ComputeJob job) {
         job.setStatus(ComputeJob.JobStatus.PROCESSING);
         job.setClaimedBy(deviceId);
         job.setClaimedAt(System.currentTimeMillis());
         claimedJobs.put(job.getJobId(), job);
 
-        executor.execute(() -> {
-            try {
-                long startTime = SystemClock.elapsedRealtime();
+        try {
+            long startTime = SystemClock.elapsedRealtime();
 
-                switch (job.getType()) {
+            ComputeJob.JobType type = job.getType();
+            if (type == null) {
+                job.setErrorMessage("Unsupported job type");
+                job.setStatus(ComputeJob.JobStatus.FAILED);
+            } else {
+                switch (type) {
                     case IMAGE_LABELING:
                         executeImageLabeling(job);
                         break;
@@ -502,62 +446,40 @@ public class EdgeComputeService extends Service {
                         executeSpeechRecognition(job);
                         break;
                     default:
-                        job.setErrorMessage("Unsupported job type: " + job.getType());
+                        job.setErrorMessage("Unsupported job type: " + type);
                         job.setStatus(ComputeJob.JobStatus.FAILED);
                         break;
                 }
+            }
 
-                job.setCompletedAt(System.currentTimeMillis());
-                long duration = SystemClock.elapsedRealtime() - startTime;
-
-                // Add execution metadata
-                if (job.getOutputMetadata() == null) {
-                    job.setOutputMetadata(new HashMap<>());
-                }
-                job.getOutputMetadata().put("durationMs", duration);
-                job.getOutputMetadata().put("deviceId", deviceId);
+            job.setCompletedAt(System.currentTimeMillis());
+            long duration = SystemClock.elapsedRealtime() - startTime;
 
-                submitJobResult(job);
-            } catch (Exception e) {
-                job.setErrorMessage(e.getMessage());
-                job.setStatus(ComputeJob.JobStatus.FAILED);
-                submitJobResult(job);
-            } finally {
-                claimedJobs.remove(job.getJobId());
-                completedJobs.put(job.getJobId(), job);
-                activeJobCount.decrementAndGet();
+            // Add execution metadata
+            if (job.getOutputMetadata() == null) {
+                job.setOutputMetadata(new HashMap<>());
             }
-        });
+            job.getOutputMetadata().put("durationMs", duration);
+            job.getOutputMetadata().put("deviceId", deviceId);
+        } catch (Exception e) {
+            job.setErrorMessage(e.getMessage());
+            job.setStatus(ComputeJob.JobStatus.FAILED);
+        } finally {
+            submitJobResult(job);
+            claimedJobs.remove(job.getJobId());
+            jobHistory.add(job, System.currentTimeMillis());
+        }
     }
 
+    /** Hands the result to the outbox, which keeps it until the server has it. */
     private void submitJobResult(@NonNull ComputeJob job) {
+        EdgeResultSender sender = resultSender;
+        String jobId = job.getJobId();
+        if (sender == null || jobId == null) return;
         try {
-            RequestBody body = RequestBody.create(job.toJson(), JSON_MEDIA_TYPE);
-            HttpUrl url = HttpUrl.parse(apiUrl + "/jobs/" + job.getJobId() + "/result");
-            if (url == null) return;
-
-            Request.Builder requestBuilder = new Request.Builder()
-                .url(url)
-                .post(body);
-
-            if (sessionToken != null) {
-                requestBuilder.addHeader("Authorization", "Bearer " + sessionToken);
-            }
-
-            Request request = requestBuilder.build();
-            httpClient.newCall(request).enqueue(new Callback() {
-                @Override
-                public void onFailure(@NonNull Call call, @NonNull IOException e) {
-                    // Retry logic could be added here
-                }
-
-                @Override
-                public void onResponse(@NonNull Call call, @NonNull Response response) {
-                    response.close();
-                }
-            });
-        } catch (Exception e) {
-            // Log error
+            sender.submit(jobId, EdgeJobClient.resultPayload(job, deviceId));
+        } catch (RuntimeException e) {
+            Logger.logError(LOG_TAG, "Could not queue result of job " + jobId + ": " + e.getMessage());
         }
     }
 
@@ -570,15 +492,17 @@ public class EdgeComputeService extends Service {
             return;
         }
 
+        EdgeImageDecoder.Decoded decoded = null;
         try {
-            Bitmap bitmap = decodeInputImage(job.getInputData());
-            if (bitmap == null) {
+            decoded = imageDecoder.decode(job.getInputData(), job.getType());
+            if (decoded == null) {
                 job.setErrorMessage("Failed to decode input image");
                 job.setStatus(ComputeJob.JobStatus.FAILED);
                 return;
             }
+            recordDecode(job, decoded);
 
-            InputImage image = InputImage.fromBitmap(bitmap, 0);
+            InputImage image = InputImage.fromBitmap(decoded.bitmap, 0);
             Task<List<ImageLabel>> task = imageLabeler.process(image);
 
             List<ImageLabel> labels = Tasks.await(task, JOB_TIMEOUT_MS, TimeUnit.MILLISECONDS);
@@ -597,11 +521,13 @@ public class EdgeComputeService extends Service {
 
             job.setOutputData(GSON.toJson(output));
             job.setStatus(ComputeJob.JobStatus.COMPLETED);
-
-            bitmap.recycle();
         } catch (Exception e) {
             job.setErrorMessage(e.getMessage());
             job.setStatus(ComputeJob.JobStatus.FAILED);
+            // A timed-out detector may still be reading the pixels; leave the bitmap to the GC.
+            if (e instanceof TimeoutException) decoded = null;
+        } finally {
+            imageDecoder.release(decoded);
         }
     }
 
@@ -612,15 +538,17 @@ public class EdgeComputeService extends Service {
             return;
         }
 
+        EdgeImageDecoder.Decoded decoded = null;
         try {
-            Bitmap bitmap = decodeInputImage(job.getInputData());
-            if (bitmap == null) {
+            decoded = imageDecoder.decode(job.getInputData(), job.getType());
+            if (decoded == null) {
                 job.setErrorMessage("Failed to decode input image");
                 job.setStatus(ComputeJob.JobStatus.FAILED);
                 return;
             }
+            recordDecode(job, decoded);
 
-            InputImage image = InputImage.fromBitmap(bitmap, 0);
+            InputImage image = InputImage.fromBitmap(decoded.bitmap, 0);
             Task<Text> task = textRecognizer.process(image);
 
             Text text = Tasks.await(task, JOB_TIMEOUT_MS, TimeUnit.MILLISECONDS);
@@ -640,11 +568,13 @@ public class EdgeComputeService extends Service {
 
             job.setOutputData(GSON.toJson(output));
             job.setStatus(ComputeJob.JobStatus.COMPLETED);
-
-            bitmap.recycle();
         } catch (Exception e) {
             job.setErrorMessage(e.getMessage());
             job.setStatus(ComputeJob.JobStatus.FAILED);
+            // A timed-out detector may still be reading the pixels; leave the bitmap to the GC.
+            if (e instanceof TimeoutException) decoded = null;
+        } finally {
+            imageDecoder.release(decoded);
         }
     }
 
@@ -655,30 +585,33 @@ public class EdgeComputeService extends Service {
             return;
         }
 
+        EdgeImageDecoder.Decoded decoded = null;
         try {
-            Bitmap bitmap = decodeInputImage(job.getInputData());
-            if (bitmap == null) {
+            decoded = imageDecoder.decode(job.getInputData(), job.getType());
+            if (decoded == null) {
                 job.setErrorMessage("Failed to decode input image");
                 job.setStatus(ComputeJob.JobStatus.FAILED);
                 return;
             }
+            recordDecode(job, decoded);
 
-            InputImage image = InputImage.fromBitmap(bitmap, 0);
+            InputImage image = InputImage.fromBitmap(decoded.bitmap, 0);
             Task<List<DetectedObject>> task = objectDetector.process(image);
 
             List<DetectedObject> objects = Tasks.await(task, JOB_TIMEOUT_MS, TimeUnit.MILLISECONDS);
             JsonArray results = new JsonArray();
+            float scale = decoded.scale();
 
             for (DetectedObject obj : objects) {
                 JsonObject objObj = new JsonObject();
 
-                // Bounding box
+                // Bounding box, in source image coordinates
                 Rect box = obj.getBoundingBox();
                 JsonObject boxObj = new JsonObject();
-                boxObj.addProperty("left", box.left);
-                boxObj.addProperty("top", box.top);
-                boxObj.addProperty("right", box.right);
-                boxObj.addProperty("bottom", box.bottom);
+                boxObj.addProperty("left", Math.round(box.left * scale));
+                boxObj.addProperty("top", Math.round(box.top * scale));
+                boxObj.addProperty("right", Math.round(box.right * scale));
+                boxObj.addProperty("bottom", Math.round(box.bottom * scale));
                 objObj.add("boundingBox", boxObj);
 
                 // Labels
@@ -701,34 +634,27 @@ public class EdgeComputeService extends Service {
 
             job.setOutputData(GSON.toJson(output));
             job.setStatus(ComputeJob.JobStatus.COMPLETED);
-
-            bitmap.recycle();
         } catch (Exception e) {
             job.setErrorMessage(e.getMessage());
             job.setStatus(ComputeJob.JobStatus.FAILED);
+            // A timed-out detector may still be reading the pixels; leave the bitmap to the GC.
+            if (e instanceof TimeoutException) decoded = null;
+        } finally {
+            imageDecoder.release(decoded);
         }
     }
 
-    @SuppressLint("MissingPermission")
     private void executeSpeechRecognition(@NonNull ComputeJob job) {
-        if (speechRecognizer == null) {
-            job.setErrorMessage("SpeechRecognizer not initialized");
-            job.setStatus(ComputeJob.JobStatus.FAILED);
-            return;
-        }
-
-        // Check for audio recording permission
-        if (ActivityCompat.checkSelfPermission(this, Manifest.permission.RECORD_AUDIO)
-                != PackageManager.PERMISSION_GRANTED) {
-            job.setErrorMessage("No audio recording permission");
+        OnDeviceSpeechRecognizer recognizer = speechRecognizer;
+        if (recognizer == null || audioDecoder == null) {
+            job.setErrorMessage("Speech jobs need on-device recognition (Android 13+)");
             job.setStatus(ComputeJob.JobStatus.FAILED);
             return;
         }
 
         try {
-            // Speech recognition requires audio input stream
-            // For simplicity, we'll process the job as needing live audio
-            job.setOutputData("{\"status\":\"audio_input_required\"}");
+            JsonObject output = new EdgeSpeechJob(audioDecoder, recognizer).run(job);
+            job.setOutputData(GSON.toJson(output));
             job.setStatus(ComputeJob.JobStatus.COMPLETED);
         } catch (Exception e) {
             job.setErrorMessage(e.getMessage());
@@ -738,24 +664,19 @@ public class EdgeComputeService extends Service {
 
     // Helper methods
 
-    @Nullable
-    private Bitmap decodeInputImage(@Nullable String base64Data) {
-        if (base64Data == null || base64Data.isEmpty()) {
-            return null;
-        }
-
-        try {
-            // Remove data URL prefix if present
-            String data = base64Data;
-            if (data.contains(",")) {
-                data = data.substring(data.indexOf(",") + 1);
-            }
-
-            byte[] bytes = Base64.decode(data, Base64.DEFAULT);
-            return BitmapFactory.decodeByteArray(bytes, 0, bytes.length);
-        } catch (Exception e) {
-            return null;
+    /** Records how the input image was decoded next to the job's other execution metadata. */
+    private static void recordDecode(@NonNull ComputeJob job, @NonNull EdgeImageDecoder.Decoded decoded) {
+        if (job.getOutputMetadata() == null) {
+            job.setOutputMetadata(new HashMap<>());
         }
+        Map<String, Object> metadata = job.getOutputMetadata();
+        metadata.put("imageWidth", decoded.sourceWidth);
+        metadata.put("imageHeight", decoded.sourceHeight);
+        metadata.put("decodedWidth", decoded.bitmap.getWidth());
+        metadata.put("decodedHeight", decoded.bitmap.getHeight());
+        metadata.put("sampleSize", decoded.sampleSize);
+        metadata.put("bitmapBytes", decoded.bitmap.getAllocationByteCount());
+        metadata.put("bitmapReused", decoded.reused);
     }
 
     private void initializeMlDetectors() {
@@ -776,9 +697,10 @@ public class EdgeComputeService extends Service {
             .build();
         objectDetector = ObjectDetection.getClient(objectOptions);
 
-        // Initialize SpeechRecognizer
-        if (SpeechRecognizer.isRecognitionAvailable(this)) {
-            speechRecognizer = SpeechRecognizer.createSpeechRecognizer(this);
+        // Initialize speech: audio comes from the job, so only the on-device recognizer will do
+        audioDecoder = new EdgeAudioDecoder(getCacheDir());
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.TIRAMISU && OnDeviceSpeechRecognizer.isSupported(this)) {
+            speechRecognizer = new OnDeviceSpeechRecognizer(this);
         }
     }
 
@@ -808,7 +730,7 @@ public class EdgeComputeService extends Service {
         }
 
         if (speechRecognizer != null) {
-            speechRecognizer.destroy();
+            speechRecognizer.close();
         }
     }
 
@@ -824,7 +746,8 @@ public class EdgeComputeService extends Service {
     }
 
     public int getActiveJobCount() {
-        return activeJobCount.get();
+        EdgeWorkerPool pool = workerPool;
+        return pool != null ? pool.activeCount() : 0;
     }
 
     @NonNull
@@ -834,11 +757,15 @@ public class EdgeComputeService extends Service {
 
     @NonNull
     public List<ComputeJob> getCompletedJobs() {
-        return new ArrayList<>(completedJobs.values());
+        return jobHistory.list(System.currentTimeMillis());
     }
 
     public void setSessionToken(@Nullable String token) {
         this.sessionToken = token;
+        EdgeJobClient client = jobClient;
+        if (client != null) client.setSessionToken(token);
+        EdgeResultSender sender = resultSender;
+        if (sender != null) sender.wake();
     }
 
     @Nullable
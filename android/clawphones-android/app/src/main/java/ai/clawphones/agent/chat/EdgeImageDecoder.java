@@ -0,0 +1,306 @@
+package ai.clawphones.agent.chat;
+
+import android.content.ComponentCallbacks2;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Decodes base64 job images at the size the job needs.
+ *
+ * The base64 text is decoded as a stream straight into BitmapFactory, so no byte array copy of
+ * the image is ever held next to the job's input string. A first pass reads only the header;
+ * the second decodes with the smallest power-of-two inSampleSize that brings the long edge
+ * within the job type's target, so a 12 MP photo becomes a 0.2-3 MP bitmap before any pixel is
+ * allocated.
+ *
+ * Bitmaps handed back with {@link #release} go into a byte-bounded pool and are reused
+ * as inBitmap by later decodes, so back-to-back jobs do not allocate a new pixel buffer each.
+ */
+final class EdgeImageDecoder {
+
+    static final int LABELING_TARGET_PX = 640;
+    static final int DETECTION_TARGET_PX = 1024;
+    static final int TEXT_TARGET_PX = 2048;
+    static final int DEFAULT_TARGET_PX = 1024;
+    private static final int MAX_POOL_BYTES = 24 * 1024 * 1024;
+
+    /** A decoded image and how it was produced. */
+    static final class Decoded {
+        final Bitmap bitmap;
+        final int sourceWidth;
+        final int sourceHeight;
+        final int sampleSize;
+        final boolean reused;
+
+        Decoded(@NonNull Bitmap bitmap, int sourceWidth, int sourceHeight, int sampleSize, boolean reused) {
+            this.bitmap = bitmap;
+            this.sourceWidth = sourceWidth;
+            this.sourceHeight = sourceHeight;
+            this.sampleSize = sampleSize;
+            this.reused = reused;
+        }
+
+        /** Multiplier from bitmap coordinates back to the source image. */
+        float scale() {
+            return sourceWidth / (float) Math.max(1, bitmap.getWidth());
+        }
+    }
+
+    /** Counters since creation. */
+    static final class Stats {
+        long decodes;
+        long failures;
+        long reused;
+        long allocated;
+        long evicted;
+        long bitmapBytes;
+        long peakBitmapBytes;
+        long pooledBytes;
+
+        @NonNull
+        @Override
+        public String toString() {
+            return String.format(Locale.US,
+                "decodes=%d (%d failed) reused=%d allocated=%d evicted=%d bitmapBytes=%d peak=%d pooled=%d",
+                decodes, failures, reused, allocated, evicted, bitmapBytes, peakBitmapBytes, pooledBytes);
+        }
+    }
+
+    /**
+     * Mutable bitmaps waiting to be decoded into again. Oldest entries go first when the pool
+     * is over budget.
+     */
+    static final class Pool {
+        private final long maxBytes;
+        private final List<Bitmap> free = new ArrayList<>();
+        private long bytes;
+        private long evicted;
+
+        Pool(long maxBytes) {
+            if (maxBytes < 0L) throw new IllegalArgumentException("maxBytes must be >= 0");
+            this.maxBytes = maxBytes;
+        }
+
+        /** The smallest pooled bitmap holding at least {@code byteCount} bytes, or null. */
+        @Nullable
+        synchronized Bitmap acquire(long byteCount) {
+            Bitmap best = null;
+            for (Bitmap bitmap : free) {
+                long size = bitmap.getAllocationByteCount();
+                if (size >= byteCount && (best == null || size < best.getAllocationByteCount())) best = bitmap;
+            }
+            if (best != null) {
+                free.remove(best);
+                bytes -= best.getAllocationByteCount();
+            }
+            return best;
+        }
+
+        synchronized void release(@NonNull Bitmap bitmap) {
+            if (bitmap.isRecycled()) return;
+            long size = bitmap.getAllocationByteCount();
+            if (!bitmap.isMutable() || size > maxBytes) {
+                bitmap.recycle();
+                return;
+            }
+            free.add(bitmap);
+            bytes += size;
+            trimTo(maxBytes);
+        }
+
+        synchronized void trimTo(long targetBytes) {
+            Iterator<Bitmap> iterator = free.iterator();
+            while (bytes > targetBytes && iterator.hasNext()) {
+                Bitmap bitmap = iterator.next();
+                iterator.remove();
+                bytes -= bitmap.getAllocationByteCount();
+                evicted++;
+                bitmap.recycle();
+            }
+        }
+
+        synchronized long bytes() {
+            return bytes;
+        }
+
+        synchronized long evicted() {
+            return evicted;
+        }
+
+        long maxBytes() {
+            return maxBytes;
+        }
+    }
+
+    private final Pool pool;
+    private final Stats stats = new Stats();
+
+    EdgeImageDecoder() {
+        this(new Pool(Math.min(MAX_POOL_BYTES, Runtime.getRuntime().maxMemory() / 8)));
+    }
+
+    EdgeImageDecoder(@NonNull Pool pool) {
+        this.pool = pool;
+    }
+
+    /** Longest edge, in pixels, the job type's model gets; more detail than that is wasted. */
+    static int targetSizeFor(@Nullable ComputeJob.JobType type) {
+        if (type == null) return DEFAULT_TARGET_PX;
+        switch (type) {
+            case IMAGE_LABELING:
+                return LABELING_TARGET_PX;
+            case OBJECT_DETECTION:
+                return DETECTION_TARGET_PX;
+            case TEXT_RECOGNITION:
+                return TEXT_TARGET_PX;
+            default:
+                return DEFAULT_TARGET_PX;
+        }
+    }
+
+    /** The smallest power of two that brings the long edge within {@code targetPx}. */
+    static int sampleSizeFor(int width, int height, int targetPx) {
+        int longEdge = Math.max(width, height);
+        int sampleSize = 1;
+        while (longEdge / sampleSize > Math.max(1, targetPx)) {
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    /**
+     * Decodes base64 image data, optionally behind a data URL prefix, for a job of the given
+     * type. Null when the data is not an image. Hand the bitmap back with {@link #release}.
+     */
+    @Nullable
+    Decoded decode(@Nullable String base64Data, @Nullable ComputeJob.JobType type) {
+        if (base64Data == null || base64Data.isEmpty()) return null;
+        int start = base64Data.indexOf(',') + 1;
+
+        try {
+            BitmapFactory.Options bounds = new BitmapFactory.Options();
+            bounds.inJustDecodeBounds = true;
+            try (InputStream in = Base64Source.open(base64Data, start)) {
+                BitmapFactory.decodeStream(in, null, bounds);
+            }
+            if (bounds.outWidth <= 0 || bounds.outHeight <= 0) {
+                recordFailure();
+                return null;
+            }
+
+            int sampleSize = sampleSizeFor(bounds.outWidth, bounds.outHeight, targetSizeFor(type));
+            int width = ceilDiv(bounds.outWidth, sampleSize);
+            int height = ceilDiv(bounds.outHeight, sampleSize);
+            Bitmap candidate = pool.acquire((long) width * height * 4L);
+
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inSampleSize = sampleSize;
+            options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+            options.inMutable = true;
+            options.inBitmap = candidate;
+            Bitmap bitmap;
+            try {
+                bitmap = decodeStream(base64Data, start, options);
+            } catch (IllegalArgumentException e) {
+                // The candidate did not fit after all; decode into a fresh buffer.
+                pool.release(candidate);
+                candidate = null;
+                options.inBitmap = null;
+                bitmap = decodeStream(base64Data, start, options);
+            }
+            if (bitmap == null) {
+                if (candidate != null) pool.release(candidate);
+                recordFailure();
+                return null;
+            }
+
+            boolean reused = candidate != null && bitmap == candidate;
+            if (candidate != null && !reused) pool.release(candidate);
+            recordDecode(bitmap, reused);
+            return new Decoded(bitmap, bounds.outWidth, bounds.outHeight, sampleSize, reused);
+        } catch (IOException | RuntimeException e) {
+            recordFailure();
+            return null;
+        }
+    }
+
+    /** Returns a decoded bitmap for reuse; the caller must not touch it afterwards. */
+    void release(@Nullable Decoded decoded) {
+        if (decoded == null) return;
+        synchronized (stats) {
+            stats.bitmapBytes -= decoded.bitmap.getAllocationByteCount();
+        }
+        pool.release(decoded.bitmap);
+    }
+
+    /** Shrinks the pool the way the system asks; empties it when the app is in the background. */
+    void onTrimMemory(int level) {
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND
+            || level == ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            pool.trimTo(0L);
+        } else if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            pool.trimTo(pool.maxBytes() / 2);
+        }
+    }
+
+    void clear() {
+        pool.trimTo(0L);
+    }
+
+    @NonNull
+    Stats stats() {
+        synchronized (stats) {
+            Stats copy = new Stats();
+            copy.decodes = stats.decodes;
+            copy.failures = stats.failures;
+            copy.reused = stats.reused;
+            copy.allocated = stats.allocated;
+            copy.evicted = pool.evicted();
+            copy.bitmapBytes = stats.bitmapBytes;
+            copy.peakBitmapBytes = stats.peakBitmapBytes;
+            copy.pooledBytes = pool.bytes();
+            return copy;
+        }
+    }
+
+    @Nullable
+    private static Bitmap decodeStream(@NonNull String data, int start, @NonNull BitmapFactory.Options options)
+        throws IOException {
+        try (InputStream in = Base64Source.open(data, start)) {
+            return BitmapFactory.decodeStream(in, null, options);
+        }
+    }
+
+    private void recordDecode(@NonNull Bitmap bitmap, boolean reused) {
+        synchronized (stats) {
+            stats.decodes++;
+            if (reused) {
+                stats.reused++;
+            } else {
+                stats.allocated++;
+            }
+            stats.bitmapBytes += bitmap.getAllocationByteCount();
+            stats.peakBitmapBytes = Math.max(stats.peakBitmapBytes, stats.bitmapBytes);
+        }
+    }
+
+    private void recordFailure() {
+        synchronized (stats) {
+            stats.failures++;
+        }
+    }
+
+    private static int ceilDiv(int value, int divisor) {
+        return (value + divisor - 1) / divisor;
+    }
+}
@@ -0,0 +1,280 @@
+package ai.clawphones.agent.chat;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonPrimitive;
+import com.termux.shared.logger.Logger;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import okhttp3.Call;
+import okhttp3.HttpUrl;
+import okhttp3.MediaType;
+import okhttp3.OkHttpClient;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+
+/**
+ * Job endpoints of the edge compute server.
+ *
+ * {@link #claim} sends one POST /jobs/claim asking for up to N jobs, with a cap per type, and the
+ * server marks them claimed by this device in the same step, so two devices never get the same
+ * job. Servers without that endpoint answer 404; from then on the client falls back to listing
+ * /jobs/available and claiming each job with its own POST, skipping jobs another device got
+ * first.
+ *
+ * {@link #await} is the long-poll behind {@link EdgeJobFeed}: GET /jobs/wait is held open by the
+ * server until jobs newer than the given version are pending, or until the wait runs out.
+ *
+ * {@link #submit} posts one result to /jobs/{id}/results with an Idempotency-Key header, for
+ * {@link EdgeResultSender} to retry safely.
+ */
+final class EdgeJobClient implements EdgeWorkerPool.JobSource, EdgeJobFeed.Channel, EdgeResultSender.Submitter {
+
+    private static final String LOG_TAG = "EdgeJobClient";
+    private static final MediaType JSON_MEDIA_TYPE = MediaType.parse("application/json; charset=utf-8");
+    private static final Gson GSON = new Gson();
+    private static final long WAIT_SLACK_MS = 15_000L;
+
+    private final OkHttpClient httpClient;
+    private final String apiUrl;
+    private final String deviceId;
+    @Nullable private volatile String sessionToken;
+    private volatile boolean batchClaimSupported = true;
+    @Nullable private volatile Call waitCall;
+
+    EdgeJobClient(@NonNull OkHttpClient httpClient, @NonNull String apiUrl, @NonNull String deviceId) {
+        this.httpClient = httpClient;
+        this.apiUrl = apiUrl.endsWith("/") ? apiUrl.substring(0, apiUrl.length() - 1) : apiUrl;
+        this.deviceId = deviceId;
+    }
+
+    void setSessionToken(@Nullable String token) {
+        this.sessionToken = token;
+    }
+
+    boolean isBatchClaimSupported() {
+        return batchClaimSupported;
+    }
+
+    @NonNull
+    @Override
+    public List<ComputeJob> claim(int limit, @NonNull Map<ComputeJob.JobType, Integer> typeLimits)
+        throws IOException {
+        if (limit <= 0 || typeLimits.isEmpty()) return Collections.emptyList();
+        if (batchClaimSupported) {
+            List<ComputeJob> jobs = claimBatch(limit, typeLimits);
+            if (jobs != null) return jobs;
+            batchClaimSupported = false;
+            Logger.logInfo(LOG_TAG, "Server has no batch claim, claiming jobs one by one");
+        }
+        return claimEach(limit, typeLimits);
+    }
+
+    @Nullable
+    @Override
+    public EdgeJobFeed.Signal await(long since, long waitMs) throws IOException {
+        HttpUrl url = url("/jobs/wait").newBuilder()
+            .addQueryParameter("deviceId", deviceId)
+            .addQueryParameter("since", String.valueOf(since))
+            .addQueryParameter("timeoutMs", String.valueOf(waitMs))
+            .build();
+        Request request = authorized(HttpTransport.withTimeouts(new Request.Builder().url(url).get(),
+            0L, waitMs + WAIT_SLACK_MS, 0L));
+        Call call = httpClient.newCall(request);
+        waitCall = call;
+        try (Response response = call.execute()) {
+            if (response.code() == 404 || response.code() == 405) return null;
+            if (!response.isSuccessful() || response.body() == null) {
+                throw new IOException("wait failed: HTTP " + response.code());
+            }
+            JsonObject result = GSON.fromJson(response.body().string(), JsonObject.class);
+            if (result == null) throw new IOException("empty wait response");
+            int pending = result.has("pending") ? result.get("pending").getAsInt() : 0;
+            long version = result.has("version") ? result.get("version").getAsLong() : since;
+            return new EdgeJobFeed.Signal(pending, version);
+        } catch (JsonParseException | IllegalStateException | UnsupportedOperationException | NumberFormatException e) {
+            throw new IOException("bad wait response", e);
+        } finally {
+            waitCall = null;
+        }
+    }
+
+    @Override
+    public void cancel() {
+        Call call = waitCall;
+        if (call != null) call.cancel();
+    }
+
+    @Override
+    public int submit(@NonNull String jobId, @NonNull String idempotencyKey, @NonNull String payload)
+        throws IOException {
+        Request request = authorized(new Request.Builder()
+            .url(url("/jobs/" + jobId + "/results"))
+            .header("Idempotency-Key", idempotencyKey)
+            .post(RequestBody.create(payload, JSON_MEDIA_TYPE)));
+        try (Response response = httpClient.newCall(request).execute()) {
+            return response.code();
+        }
+    }
+
+    /** The body of a result submission: status, output, execution metadata and error, no input. */
+    @NonNull
+    static String resultPayload(@NonNull ComputeJob job, @Nullable String deviceId) {
+        JsonObject results = new JsonObject();
+        String output = job.getOutputData();
+        if (output != null) {
+            JsonElement parsed;
+            try {
+                parsed = GSON.fromJson(output, JsonElement.class);
+            } catch (JsonParseException e) {
+                parsed = new JsonPrimitive(output);
+            }
+            results.add("output", parsed);
+        }
+        if (job.getOutputMetadata() != null) results.add("metadata", GSON.toJsonTree(job.getOutputMetadata()));
+        if (job.getErrorMessage() != null) results.addProperty("error", job.getErrorMessage());
+
+        JsonObject payload = new JsonObject();
+        payload.addProperty("deviceId", deviceId);
+        ComputeJob.JobStatus status = job.getStatus();
+        payload.addProperty("status", status != null ? status.getApiValue() : null);
+        payload.addProperty("completedAt", job.getCompletedAt());
+        payload.add("results", results);
+        return GSON.toJson(payload);
+    }
+
+    /** Null when the server does not know the endpoint. */
+    @Nullable
+    private List<ComputeJob> claimBatch(int limit, @NonNull Map<ComputeJob.JobType, Integer> typeLimits)
+        throws IOException {
+        JsonObject types = new JsonObject();
+        for (Map.Entry<ComputeJob.JobType, Integer> entry : typeLimits.entrySet()) {
+            types.addProperty(entry.getKey().getApiValue(), entry.getValue());
+        }
+        JsonObject payload = new JsonObject();
+        payload.addProperty("deviceId", deviceId);
+        payload.addProperty("limit", limit);
+        payload.add("types", types);
+        payload.addProperty("claimedAt", System.currentTimeMillis());
+
+        Request request = authorized(new Request.Builder()
+            .url(url("/jobs/claim"))
+            .post(RequestBody.create(GSON.toJson(payload), JSON_MEDIA_TYPE)));
+        try (Response response = httpClient.newCall(request).execute()) {
+            if (response.code() == 404 || response.code() == 405) return null;
+            if (!response.isSuccessful() || response.body() == null) {
+                throw new IOException("claim failed: HTTP " + response.code());
+            }
+            // Everything in the answer is ours now, wanted or not; the pool backlogs the excess.
+            return parseJobs(response.body().string(), Integer.MAX_VALUE, null);
+        }
+    }
+
+    @NonNull
+    private List<ComputeJob> claimEach(int limit, @NonNull Map<ComputeJob.JobType, Integer> typeLimits)
+        throws IOException {
+        HttpUrl.Builder available = url("/jobs/available").newBuilder()
+            .addQueryParameter("deviceId", deviceId)
+            .addQueryParameter("limit", String.valueOf(limit));
+        List<ComputeJob> candidates;
+        try (Response response = httpClient.newCall(authorized(new Request.Builder().url(available.build()).get()))
+            .execute()) {
+            if (!response.isSuccessful() || response.body() == null) {
+                throw new IOException("job list failed: HTTP " + response.code());
+            }
+            candidates = parseJobs(response.body().string(), limit, typeLimits);
+        }
+
+        // The server marks each job as ours as soon as its claim succeeds, so once something is
+        // claimed a later failure must not lose it: stop there and return what we hold.
+        List<ComputeJob> claimed = new ArrayList<>(candidates.size());
+        for (ComputeJob candidate : candidates) {
+            if (candidate.getJobId() == null) continue;
+            JsonObject payload = new JsonObject();
+            payload.addProperty("deviceId", deviceId);
+            payload.addProperty("claimedAt", System.currentTimeMillis());
+            Request request = authorized(new Request.Builder()
+                .url(url("/jobs/" + candidate.getJobId() + "/claim"))
+                .post(RequestBody.create(GSON.toJson(payload), JSON_MEDIA_TYPE)));
+            try (Response response = httpClient.newCall(request).execute()) {
+                if (response.code() == 409) continue; // another device was faster
+                if (!response.isSuccessful() || response.body() == null) {
+                    throw new IOException("claim " + candidate.getJobId() + " failed: HTTP " + response.code());
+                }
+                claimed.add(claimedJob(response.body().string(), candidate));
+            } catch (IOException e) {
+                if (claimed.isEmpty()) throw e;
+                Logger.logWarn(LOG_TAG, "Stopped claiming after " + claimed.size() + " jobs: " + e.getMessage());
+                break;
+            }
+        }
+        return claimed;
+    }
+
+    /** The job from a successful claim response, or the listed candidate if the body is unusable. */
+    @NonNull
+    private static ComputeJob claimedJob(@NonNull String json, @NonNull ComputeJob candidate) {
+        try {
+            JsonObject body = GSON.fromJson(json, JsonObject.class);
+            JsonElement jobJson = body != null && body.has("job") ? body.get("job") : body;
+            ComputeJob job = jobJson != null ? ComputeJob.fromJson(jobJson.toString()) : null;
+            return job != null && job.getJobId() != null ? job : candidate;
+        } catch (JsonParseException e) {
+            // The claim went through; the job is ours even if its echo is garbled.
+            return candidate;
+        }
+    }
+
+    /** Reads {"jobs": [...]}, keeping at most limit jobs and, given type limits, only those types. */
+    @NonNull
+    private static List<ComputeJob> parseJobs(@NonNull String json, int limit,
+                                              @Nullable Map<ComputeJob.JobType, Integer> typeLimits)
+        throws IOException {
+        JsonObject result;
+        try {
+            result = GSON.fromJson(json, JsonObject.class);
+        } catch (JsonParseException e) {
+            throw new IOException("bad job list", e);
+        }
+        if (result == null || !result.has("jobs") || !result.get("jobs").isJsonArray()) {
+            return Collections.emptyList();
+        }
+        JsonArray array = result.getAsJsonArray("jobs");
+        List<ComputeJob> jobs = new ArrayList<>(array.size());
+        for (JsonElement element : array) {
+            if (jobs.size() >= limit) break;
+            if (!element.isJsonObject()) continue;
+            ComputeJob job = ComputeJob.fromJson(element.toString());
+            if (job == null) continue;
+            if (typeLimits != null && (job.getType() == null || !typeLimits.containsKey(job.getType()))) continue;
+            jobs.add(job);
+        }
+        return jobs;
+    }
+
+    @NonNull
+    private HttpUrl url(@NonNull String path) throws IOException {
+        HttpUrl url = HttpUrl.parse(apiUrl + path);
+        if (url == null) throw new IOException("bad api url: " + apiUrl);
+        return url;
+    }
+
+    @NonNull
+    private Request authorized(@NonNull Request.Builder builder) {
+        String token = sessionToken;
+        if (token != null) builder.addHeader("Authorization", "Bearer " + token);
+        return builder.build();
+    }
+}
@@ -0,0 +1,298 @@
+package ai.clawphones.agent.chat;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.termux.shared.logger.Logger;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Tells the worker pool when jobs are waiting.
+ *
+ * PUSH keeps one long-poll open on the server: it returns as soon as new jobs are posted, or
+ * after waitMs with nothing to say, so a job is picked up within a round trip and an idle
+ * device makes one request per waitMs.
+ *
+ * POLL is the fallback when the server has no long-poll endpoint or keeps failing it. It asks
+ * for a claim on a timer that doubles after every claim that came back empty, up to maxPollMs,
+ * and drops to minPollMs after one that found work. After MAX_PUSH_FAILURES failures in a row
+ * push is retried every pushRetryMs; a server without the endpoint is not asked again.
+ *
+ * Claims go through {@link #observe(EdgeWorkerPool.JobSource)} so the feed sees their results
+ * and counts them as wakeups.
+ */
+final class EdgeJobFeed {
+
+    private static final String LOG_TAG = "EdgeJobFeed";
+
+    static final int MAX_PUSH_FAILURES = 3;
+    private static final long FAILURE_BACKOFF_MS = 1_000L;
+
+    enum Mode { PUSH, POLL }
+
+    /** How long a long-poll is held and how the poll interval moves. */
+    static final class Timing {
+        static final Timing DEFAULT = new Timing(120_000L, 2_000L, 10_000L, 120_000L, 10 * 60_000L);
+
+        final long waitMs;
+        final long minPollMs;
+        final long initialPollMs;
+        final long maxPollMs;
+        final long pushRetryMs;
+
+        Timing(long waitMs, long minPollMs, long initialPollMs, long maxPollMs, long pushRetryMs) {
+            if (waitMs <= 0L || minPollMs <= 0L || pushRetryMs <= 0L) {
+                throw new IllegalArgumentException("timings must be positive");
+            }
+            if (initialPollMs < minPollMs || maxPollMs < initialPollMs) {
+                throw new IllegalArgumentException("need minPollMs <= initialPollMs <= maxPollMs");
+            }
+            this.waitMs = waitMs;
+            this.minPollMs = minPollMs;
+            this.initialPollMs = initialPollMs;
+            this.maxPollMs = maxPollMs;
+            this.pushRetryMs = pushRetryMs;
+        }
+    }
+
+    /** What a long-poll returned: jobs pending now and the server's job version. */
+    static final class Signal {
+        final int pending;
+        final long version;
+
+        Signal(int pending, long version) {
+            this.pending = pending;
+            this.version = version;
+        }
+    }
+
+    /** The server side of push delivery. */
+    interface Channel {
+        /**
+         * Blocks until jobs newer than {@code since} are pending or {@code waitMs} passes. Null when
+         * the server does not support waiting.
+         */
+        @Nullable
+        Signal await(long since, long waitMs) throws IOException;
+
+        /** Aborts a blocked {@link #await}. */
+        void cancel();
+    }
+
+    /** Counters since start. */
+    static final class Stats {
+        Mode mode;
+        long longPolls;
+        long signals;
+        long pollTicks;
+        long claims;
+        long hits;
+        long pushFailures;
+        long pollIntervalMs;
+        long elapsedMs;
+
+        /** Requests that had to reach the server: long-polls plus claims. */
+        long wakeups() {
+            return longPolls + claims;
+        }
+
+        double wakeupsPerHour() {
+            return elapsedMs <= 0L ? 0d : wakeups() * 3_600_000d / elapsedMs;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return String.format(Locale.US,
+                "mode=%s longPolls=%d signals=%d ticks=%d claims=%d (%d hits) pushFailures=%d interval=%d ms %.1f wakeups/h",
+                mode, longPolls, signals, pollTicks, claims, hits, pushFailures, pollIntervalMs, wakeupsPerHour());
+        }
+    }
+
+    private final Channel channel;
+    private final Runnable onAvailable;
+    private final Timing timing;
+    private final ScheduledExecutorService executor;
+    private final Stats stats = new Stats();
+    private long startedAt;
+    private long version;
+    private int consecutiveFailures;
+    private boolean pushSupported = true;
+    private boolean stopped;
+    @Nullable private ScheduledFuture<?> tick;
+
+    EdgeJobFeed(@NonNull Channel channel, @NonNull Runnable onAvailable) {
+        this(channel, onAvailable, Timing.DEFAULT);
+    }
+
+    EdgeJobFeed(@NonNull Channel channel, @NonNull Runnable onAvailable, @NonNull Timing timing) {
+        this.channel = channel;
+        this.onAvailable = onAvailable;
+        this.timing = timing;
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread thread = new Thread(r, "edge-feed");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.setRemoveOnCancelPolicy(true);
+        this.executor = scheduler;
+        stats.mode = Mode.PUSH;
+        stats.pollIntervalMs = timing.initialPollMs;
+    }
+
+    /** Wraps the pool's job source so every claim is counted and steers the poll interval. */
+    @NonNull
+    EdgeWorkerPool.JobSource observe(@NonNull EdgeWorkerPool.JobSource source) {
+        return (limit, typeLimits) -> {
+            List<ComputeJob> jobs = null;
+            try {
+                jobs = source.claim(limit, typeLimits);
+                return jobs;
+            } finally {
+                onClaimed(jobs != null ? jobs.size() : 0);
+            }
+        };
+    }
+
+    synchronized void start() {
+        startedAt = System.currentTimeMillis();
+        executor.execute(this::longPoll);
+    }
+
+    void stop() {
+        synchronized (this) {
+            stopped = true;
+        }
+        executor.shutdownNow();
+        channel.cancel();
+    }
+
+    @NonNull
+    synchronized Stats stats() {
+        Stats copy = new Stats();
+        copy.mode = stats.mode;
+        copy.longPolls = stats.longPolls;
+        copy.signals = stats.signals;
+        copy.pollTicks = stats.pollTicks;
+        copy.claims = stats.claims;
+        copy.hits = stats.hits;
+        copy.pushFailures = stats.pushFailures;
+        copy.pollIntervalMs = stats.pollIntervalMs;
+        copy.elapsedMs = System.currentTimeMillis() - startedAt;
+        return copy;
+    }
+
+    @NonNull
+    synchronized Mode mode() {
+        return stats.mode;
+    }
+
+    synchronized boolean isPushSupported() {
+        return pushSupported;
+    }
+
+    /** One long-poll, then the next. Runs on the feed thread. */
+    private void longPoll() {
+        long since;
+        synchronized (this) {
+            if (stopped) return;
+            stats.longPolls++;
+            since = version;
+        }
+
+        Signal signal;
+        try {
+            signal = channel.await(since, timing.waitMs);
+        } catch (IOException e) {
+            onPushFailed(e);
+            return;
+        }
+
+        synchronized (this) {
+            if (stopped) return;
+            if (signal == null) {
+                pushSupported = false;
+                Logger.logInfo(LOG_TAG, "Server has no job long-poll, polling instead");
+                enterPolling();
+                return;
+            }
+            consecutiveFailures = 0;
+            if (stats.mode != Mode.PUSH) {
+                Logger.logInfo(LOG_TAG, "Push delivery back");
+                stats.mode = Mode.PUSH;
+                cancelTick();
+            }
+            version = signal.version;
+            if (signal.pending > 0) stats.signals++;
+            executor.execute(this::longPoll);
+        }
+        // A timed-out wait with jobs still pending is worth a claim too; a full pool ignores it.
+        if (signal.pending > 0) onAvailable.run();
+    }
+
+    private synchronized void onPushFailed(@NonNull IOException e) {
+        if (stopped) return;
+        stats.pushFailures++;
+        consecutiveFailures++;
+        if (stats.mode == Mode.POLL) {
+            executor.schedule(this::longPoll, timing.pushRetryMs, TimeUnit.MILLISECONDS);
+        } else if (consecutiveFailures < MAX_PUSH_FAILURES) {
+            long delay = FAILURE_BACKOFF_MS << (consecutiveFailures - 1);
+            executor.schedule(this::longPoll, delay, TimeUnit.MILLISECONDS);
+        } else {
+            Logger.logWarn(LOG_TAG, "Long-poll failing (" + e.getMessage() + "), polling instead");
+            enterPolling();
+            executor.schedule(this::longPoll, timing.pushRetryMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /** Caller holds the lock. Claims at once, then on the adaptive timer. */
+    private void enterPolling() {
+        stats.mode = Mode.POLL;
+        stats.pollIntervalMs = timing.initialPollMs;
+        scheduleTick(0L);
+    }
+
+    private void pollTick() {
+        synchronized (this) {
+            if (stopped || stats.mode != Mode.POLL) return;
+            stats.pollTicks++;
+            scheduleTick(stats.pollIntervalMs);
+        }
+        onAvailable.run();
+    }
+
+    private synchronized void onClaimed(int claimed) {
+        stats.claims++;
+        if (claimed > 0) stats.hits++;
+        if (stopped || stats.mode != Mode.POLL) return;
+        if (claimed > 0) {
+            if (stats.pollIntervalMs > timing.minPollMs) {
+                stats.pollIntervalMs = timing.minPollMs;
+                scheduleTick(timing.minPollMs);
+            }
+        } else {
+            stats.pollIntervalMs = Math.min(timing.maxPollMs, stats.pollIntervalMs * 2L);
+        }
+    }
+
+    /** Caller holds the lock. Replaces any pending tick. */
+    private void scheduleTick(long delayMs) {
+        cancelTick();
+        tick = executor.schedule(this::pollTick, delayMs, TimeUnit.MILLISECONDS);
+    }
+
+    private void cancelTick() {
+        if (tick != null) {
+            tick.cancel(false);
+            tick = null;
+        }
+    }
+}
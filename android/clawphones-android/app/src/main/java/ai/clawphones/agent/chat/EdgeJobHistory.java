@@ -0,0 +1,77 @@
+package ai.clawphones.agent.chat;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+
+/**
+ * Recently finished edge compute jobs, for the status screen.
+ *
+ * Bounded both ways: at most maxJobs are kept, and jobs finished more than maxAgeMs ago are
+ * dropped on the next add or read. Input data is cleared on the way in; a job's input image is
+ * by far its largest part and nothing reads it once the job is done.
+ */
+final class EdgeJobHistory {
+
+    static final int DEFAULT_MAX_JOBS = 200;
+    static final long DEFAULT_MAX_AGE_MS = 6L * 60L * 60L * 1000L;
+
+    private static final class Finished {
+        final ComputeJob job;
+        final long finishedAt;
+
+        Finished(@NonNull ComputeJob job, long finishedAt) {
+            this.job = job;
+            this.finishedAt = finishedAt;
+        }
+    }
+
+    private final int maxJobs;
+    private final long maxAgeMs;
+    private final LinkedHashMap<String, Finished> jobs = new LinkedHashMap<>();
+
+    EdgeJobHistory() {
+        this(DEFAULT_MAX_JOBS, DEFAULT_MAX_AGE_MS);
+    }
+
+    EdgeJobHistory(int maxJobs, long maxAgeMs) {
+        if (maxJobs <= 0 || maxAgeMs <= 0L) throw new IllegalArgumentException("limits must be positive");
+        this.maxJobs = maxJobs;
+        this.maxAgeMs = maxAgeMs;
+    }
+
+    /** Records a finished job; a job finishing again moves to the newest end. */
+    synchronized void add(@NonNull ComputeJob job, long nowMs) {
+        String jobId = job.getJobId();
+        if (jobId == null) return;
+        job.setInputData(null);
+        jobs.remove(jobId);
+        jobs.put(jobId, new Finished(job, nowMs));
+        evict(nowMs);
+    }
+
+    /** Finished jobs, oldest first. */
+    @NonNull
+    synchronized List<ComputeJob> list(long nowMs) {
+        evict(nowMs);
+        List<ComputeJob> out = new ArrayList<>(jobs.size());
+        for (Finished finished : jobs.values()) out.add(finished.job);
+        return out;
+    }
+
+    synchronized int size() {
+        return jobs.size();
+    }
+
+    private void evict(long nowMs) {
+        Iterator<Finished> iterator = jobs.values().iterator();
+        while (iterator.hasNext()) {
+            Finished oldest = iterator.next();
+            if (jobs.size() <= maxJobs && oldest.finishedAt >= nowMs - maxAgeMs) break;
+            iterator.remove();
+        }
+    }
+}
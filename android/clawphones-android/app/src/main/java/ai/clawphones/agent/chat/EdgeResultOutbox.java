@@ -0,0 +1,193 @@
+package ai.clawphones.agent.chat;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Durable outbox of edge compute results waiting to reach the server.
+ *
+ * A result is written here before the first send, so one computed on a device that then loses
+ * its connection, or its process, is still delivered. Each row gets an idempotency key when it
+ * is added; every attempt sends the same key, so a retry after a lost response is not recorded
+ * twice. Rows older than {@link #MAX_AGE_MS} are dropped: by then the server has long timed the
+ * claim out.
+ */
+final class EdgeResultOutbox {
+
+    static final long MAX_AGE_MS = 24L * 60L * 60L * 1000L;
+
+    private static final String DB_NAME = "clawphones_edge.db";
+    private static final int DB_VERSION = 1;
+    private static final String TABLE_RESULTS = "pending_results";
+    private static final String COL_JOB_ID = "job_id";
+    private static final String COL_IDEMPOTENCY_KEY = "idempotency_key";
+    private static final String COL_PAYLOAD = "payload";
+    private static final String COL_CREATED_AT = "created_at";
+    private static final String COL_ATTEMPTS = "attempts";
+    private static final String COL_NEXT_ATTEMPT_AT = "next_attempt_at";
+    private static final String COL_LAST_ERROR = "last_error";
+
+    static final class Entry {
+        final String jobId;
+        final String idempotencyKey;
+        final String payload;
+        final long createdAt;
+        final int attempts;
+        final long nextAttemptAt;
+
+        Entry(String jobId, String idempotencyKey, String payload, long createdAt, int attempts, long nextAttemptAt) {
+            this.jobId = jobId;
+            this.idempotencyKey = idempotencyKey;
+            this.payload = payload;
+            this.createdAt = createdAt;
+            this.attempts = attempts;
+            this.nextAttemptAt = nextAttemptAt;
+        }
+    }
+
+    private final SQLiteOpenHelper mHelper;
+
+    EdgeResultOutbox(@NonNull Context context) {
+        mHelper = new SQLiteOpenHelper(context.getApplicationContext(), DB_NAME, null, DB_VERSION) {
+            @Override
+            public void onConfigure(SQLiteDatabase db) {
+                super.onConfigure(db);
+                SqliteTuning.configure(db);
+            }
+
+            @Override
+            public void onCreate(SQLiteDatabase db) {
+                db.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE_RESULTS + " ("
+                    + COL_JOB_ID + " TEXT PRIMARY KEY, "
+                    + COL_IDEMPOTENCY_KEY + " TEXT NOT NULL, "
+                    + COL_PAYLOAD + " TEXT NOT NULL, "
+                    + COL_CREATED_AT + " INTEGER NOT NULL, "
+                    + COL_ATTEMPTS + " INTEGER NOT NULL DEFAULT 0, "
+                    + COL_NEXT_ATTEMPT_AT + " INTEGER NOT NULL DEFAULT 0, "
+                    + COL_LAST_ERROR + " TEXT"
+                    + ")");
+                db.execSQL("CREATE INDEX IF NOT EXISTS idx_pending_results_next "
+                    + "ON " + TABLE_RESULTS + "(" + COL_NEXT_ATTEMPT_AT + ", " + COL_CREATED_AT + ")");
+            }
+
+            @Override
+            public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+                onCreate(db);
+            }
+        };
+    }
+
+    /**
+     * Queues a job's result, due at once. A job already queued keeps its row and key: the first
+     * result computed for it is the one the server may already have seen.
+     */
+    @NonNull
+    synchronized Entry add(@NonNull String jobId, @NonNull String payload, long nowMs) {
+        SQLiteDatabase db = mHelper.getWritableDatabase();
+        ContentValues values = new ContentValues();
+        values.put(COL_JOB_ID, jobId);
+        values.put(COL_IDEMPOTENCY_KEY, UUID.randomUUID().toString());
+        values.put(COL_PAYLOAD, payload);
+        values.put(COL_CREATED_AT, nowMs);
+        values.put(COL_ATTEMPTS, 0);
+        values.put(COL_NEXT_ATTEMPT_AT, nowMs);
+        db.insertWithOnConflict(TABLE_RESULTS, null, values, SQLiteDatabase.CONFLICT_IGNORE);
+        Entry entry = get(jobId);
+        if (entry == null) throw new IllegalStateException("result for " + jobId + " was not stored");
+        return entry;
+    }
+
+    @Nullable
+    Entry get(@NonNull String jobId) {
+        List<Entry> entries = query(COL_JOB_ID + " = ?", new String[]{jobId}, null, null);
+        return entries.isEmpty() ? null : entries.get(0);
+    }
+
+    /** Results whose next attempt is due, earliest first. */
+    @NonNull
+    List<Entry> due(long nowMs, int limit) {
+        return query(COL_NEXT_ATTEMPT_AT + " <= ?", new String[]{String.valueOf(nowMs)},
+            COL_NEXT_ATTEMPT_AT + " ASC, " + COL_CREATED_AT + " ASC", String.valueOf(Math.max(1, limit)));
+    }
+
+    synchronized void scheduleRetry(@NonNull String jobId, int attempts, long nextAttemptAt, @Nullable String error) {
+        SQLiteDatabase db = mHelper.getWritableDatabase();
+        ContentValues values = new ContentValues();
+        values.put(COL_ATTEMPTS, Math.max(0, attempts));
+        values.put(COL_NEXT_ATTEMPT_AT, Math.max(0L, nextAttemptAt));
+        values.put(COL_LAST_ERROR, error);
+        db.update(TABLE_RESULTS, values, COL_JOB_ID + " = ?", new String[]{jobId});
+    }
+
+    synchronized void remove(@NonNull String jobId) {
+        SQLiteDatabase db = mHelper.getWritableDatabase();
+        db.delete(TABLE_RESULTS, COL_JOB_ID + " = ?", new String[]{jobId});
+    }
+
+    /** Drops results older than {@link #MAX_AGE_MS}. Returns how many went. */
+    synchronized int trim(long nowMs) {
+        SQLiteDatabase db = mHelper.getWritableDatabase();
+        return db.delete(TABLE_RESULTS, COL_CREATED_AT + " < ?", new String[]{String.valueOf(nowMs - MAX_AGE_MS)});
+    }
+
+    int pendingCount() {
+        return (int) DatabaseUtils.queryNumEntries(mHelper.getReadableDatabase(), TABLE_RESULTS);
+    }
+
+    /** When the earliest queued result is due, or -1 when the outbox is empty. */
+    long nextAttemptAt() {
+        SQLiteDatabase db = mHelper.getReadableDatabase();
+        Cursor c = null;
+        try {
+            c = db.rawQuery("SELECT MIN(" + COL_NEXT_ATTEMPT_AT + ") FROM " + TABLE_RESULTS, null);
+            return c.moveToFirst() && !c.isNull(0) ? c.getLong(0) : -1L;
+        } finally {
+            if (c != null) c.close();
+        }
+    }
+
+    @NonNull
+    private List<Entry> query(@NonNull String selection, @NonNull String[] args, @Nullable String orderBy,
+                              @Nullable String limit) {
+        SQLiteDatabase db = mHelper.getReadableDatabase();
+        Cursor c = null;
+        List<Entry> out = new ArrayList<>();
+        try {
+            c = db.query(
+                TABLE_RESULTS,
+                new String[]{COL_JOB_ID, COL_IDEMPOTENCY_KEY, COL_PAYLOAD, COL_CREATED_AT, COL_ATTEMPTS,
+                    COL_NEXT_ATTEMPT_AT},
+                selection,
+                args,
+                null,
+                null,
+                orderBy,
+                limit
+            );
+            while (c.moveToNext()) {
+                out.add(new Entry(
+                    c.getString(0),
+                    c.getString(1),
+                    c.getString(2),
+                    c.getLong(3),
+                    c.getInt(4),
+                    c.getLong(5)
+                ));
+            }
+            return out;
+        } finally {
+            if (c != null) c.close();
+        }
+    }
+}
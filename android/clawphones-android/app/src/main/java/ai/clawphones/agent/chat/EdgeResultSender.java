@@ -0,0 +1,247 @@
+package ai.clawphones.agent.chat;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.termux.shared.logger.Logger;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Delivers results from the {@link EdgeResultOutbox} on a background thread.
+ *
+ * A result is removed only once the server answers. Responses are sorted like relay uploads:
+ *
+ *   delivered  2xx, including the server recognising a repeated idempotency key
+ *   retryable  network errors, 408, 429, 5xx: equal-jitter exponential backoff, given up
+ *              after MAX_ATTEMPTS
+ *   permanent  other 4xx, e.g. the job is gone or another device's result won: dropped
+ *   auth       401, 403: sending stops until {@link #wake()}, e.g. on a new session token
+ *
+ * The next flush is scheduled for the earliest due result, so a restarted service resumes the
+ * backoff schedule where the last process left it.
+ */
+final class EdgeResultSender {
+
+    private static final String LOG_TAG = "EdgeResultSender";
+
+    static final int MAX_ATTEMPTS = 10;
+    static final long BACKOFF_BASE_MS = 2_000L;
+    static final long BACKOFF_MAX_MS = 5L * 60L * 1000L;
+    private static final int BATCH = 16;
+
+    /** Posts one result. Returns the HTTP status. */
+    interface Submitter {
+        int submit(@NonNull String jobId, @NonNull String idempotencyKey, @NonNull String payload) throws IOException;
+    }
+
+    /** Counters since creation. */
+    static final class Stats {
+        long queued;
+        long delivered;
+        long retried;
+        long dropped;
+        long authFailures;
+        long maxDeliveryMs;
+        int pending;
+
+        @NonNull
+        @Override
+        public String toString() {
+            return String.format(Locale.US,
+                "queued=%d delivered=%d retried=%d dropped=%d auth=%d pending=%d slowest=%d ms",
+                queued, delivered, retried, dropped, authFailures, pending, maxDeliveryMs);
+        }
+    }
+
+    private final EdgeResultOutbox outbox;
+    private final Submitter submitter;
+    private final long backoffBaseMs;
+    private final long backoffMaxMs;
+    private final Random random = new Random();
+    private final ScheduledExecutorService executor;
+    private final Stats stats = new Stats();
+    @Nullable private ScheduledFuture<?> scheduled;
+    private long scheduledAt = Long.MAX_VALUE;
+    private boolean stopped;
+
+    EdgeResultSender(@NonNull EdgeResultOutbox outbox, @NonNull Submitter submitter) {
+        this(outbox, submitter, BACKOFF_BASE_MS, BACKOFF_MAX_MS);
+    }
+
+    EdgeResultSender(@NonNull EdgeResultOutbox outbox, @NonNull Submitter submitter,
+                     long backoffBaseMs, long backoffMaxMs) {
+        if (backoffBaseMs <= 0L || backoffMaxMs < backoffBaseMs) {
+            throw new IllegalArgumentException("need 0 < backoffBaseMs <= backoffMaxMs");
+        }
+        this.outbox = outbox;
+        this.submitter = submitter;
+        this.backoffBaseMs = backoffBaseMs;
+        this.backoffMaxMs = backoffMaxMs;
+        ScheduledThreadPoolExecutor scheduler = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread thread = new Thread(r, "edge-results");
+            thread.setDaemon(true);
+            return thread;
+        });
+        scheduler.setRemoveOnCancelPolicy(true);
+        this.executor = scheduler;
+    }
+
+    /** Queues a job's result durably, then sends it as soon as the flush thread gets to it. */
+    void submit(@NonNull String jobId, @NonNull String payload) {
+        outbox.add(jobId, payload, System.currentTimeMillis());
+        synchronized (this) {
+            stats.queued++;
+        }
+        wake();
+    }
+
+    /** Flushes what is due now; call on start, and when the session token changes. */
+    void wake() {
+        scheduleAt(System.currentTimeMillis());
+    }
+
+    void stop() {
+        synchronized (this) {
+            stopped = true;
+        }
+        executor.shutdownNow();
+    }
+
+    @NonNull
+    Stats stats() {
+        Stats copy = new Stats();
+        synchronized (this) {
+            copy.queued = stats.queued;
+            copy.delivered = stats.delivered;
+            copy.retried = stats.retried;
+            copy.dropped = stats.dropped;
+            copy.authFailures = stats.authFailures;
+            copy.maxDeliveryMs = stats.maxDeliveryMs;
+        }
+        copy.pending = outbox.pendingCount();
+        return copy;
+    }
+
+    /** Equal-jitter exponential backoff: half the capped delay is fixed, the other half random. */
+    static long backoffDelayMs(int attempts, long baseMs, long maxMs, @NonNull Random random) {
+        int exponent = Math.max(0, Math.min(attempts - 1, 20));
+        long delay = Math.min(maxMs, baseMs << exponent);
+        long half = delay / 2L;
+        return half + (long) (random.nextDouble() * (delay - half));
+    }
+
+    /** Keeps the earlier of the pending flush and one at {@code atMs}. */
+    private synchronized void scheduleAt(long atMs) {
+        if (stopped) return;
+        if (scheduled != null && !scheduled.isDone() && scheduledAt <= atMs) return;
+        if (scheduled != null) scheduled.cancel(false);
+        scheduledAt = atMs;
+        scheduled = executor.schedule(this::flush, Math.max(0L, atMs - System.currentTimeMillis()),
+            TimeUnit.MILLISECONDS);
+    }
+
+    /** Sends every due result. Runs on the flush thread. */
+    private void flush() {
+        synchronized (this) {
+            scheduledAt = Long.MAX_VALUE;
+        }
+        try {
+            flushDue();
+        } catch (RuntimeException e) {
+            Logger.logError(LOG_TAG, "Result flush failed: " + e.getMessage());
+            scheduleAt(System.currentTimeMillis() + backoffMaxMs);
+        }
+    }
+
+    private void flushDue() {
+        long now = System.currentTimeMillis();
+        int expired = outbox.trim(now);
+        if (expired > 0) {
+            Logger.logWarn(LOG_TAG, "Dropped " + expired + " results older than a day");
+            synchronized (this) {
+                stats.dropped += expired;
+            }
+        }
+
+        boolean authFailed = false;
+        while (!authFailed && !Thread.currentThread().isInterrupted()) {
+            List<EdgeResultOutbox.Entry> due = outbox.due(System.currentTimeMillis(), BATCH);
+            if (due.isEmpty()) break;
+            for (EdgeResultOutbox.Entry entry : due) {
+                if (!send(entry)) {
+                    authFailed = true;
+                    break;
+                }
+            }
+        }
+
+        // After an auth failure everything waits for wake(), which a new session token brings.
+        long next = outbox.nextAttemptAt();
+        if (!authFailed && next >= 0L) scheduleAt(next);
+    }
+
+    /** One attempt at one result. Returns false when the server rejected our credentials. */
+    private boolean send(@NonNull EdgeResultOutbox.Entry entry) {
+        int code;
+        String error;
+        try {
+            code = submitter.submit(entry.jobId, entry.idempotencyKey, entry.payload);
+            error = "HTTP " + code;
+        } catch (IOException e) {
+            code = -1;
+            error = e.getMessage() != null ? e.getMessage() : e.getClass().getSimpleName();
+        }
+        long now = System.currentTimeMillis();
+
+        if (code >= 200 && code < 300) {
+            outbox.remove(entry.jobId);
+            synchronized (this) {
+                stats.delivered++;
+                stats.maxDeliveryMs = Math.max(stats.maxDeliveryMs, now - entry.createdAt);
+            }
+            return true;
+        }
+        if (code == 401 || code == 403) {
+            // Not the result's fault: no attempt is used up and it stays due for the next wake.
+            outbox.scheduleRetry(entry.jobId, entry.attempts, entry.nextAttemptAt, error);
+            synchronized (this) {
+                stats.authFailures++;
+            }
+            return false;
+        }
+        if (code >= 400 && code < 500 && code != 408 && code != 429) {
+            Logger.logWarn(LOG_TAG, "Dropping result of job " + entry.jobId + ": " + error);
+            drop(entry);
+            return true;
+        }
+
+        int attempts = entry.attempts + 1;
+        if (attempts >= MAX_ATTEMPTS) {
+            Logger.logWarn(LOG_TAG, "Giving up on result of job " + entry.jobId + " after " + attempts
+                + " attempts: " + error);
+            drop(entry);
+            return true;
+        }
+        outbox.scheduleRetry(entry.jobId, attempts,
+            now + backoffDelayMs(attempts, backoffBaseMs, backoffMaxMs, random), error);
+        synchronized (this) {
+            stats.retried++;
+        }
+        return true;
+    }
+
+    private void drop(@NonNull EdgeResultOutbox.Entry entry) {
+        outbox.remove(entry.jobId);
+        synchronized (this) {
+            stats.dropped++;
+        }
+    }
+}
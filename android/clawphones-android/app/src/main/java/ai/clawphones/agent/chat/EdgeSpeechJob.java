@@ -0,0 +1,111 @@
+package ai.clawphones.agent.chat;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Runs a speech recognition job: decode the audio, split it into utterances, recognize each.
+ *
+ * Output is the whole transcript plus one segment per utterance with its start and end in the
+ * input, in milliseconds. Utterances the recognizer finds no words in are left out. The worker
+ * pool runs one speech job at a time, so at most one utterance buffer and one decode chunk are
+ * alive for speech at once.
+ */
+final class EdgeSpeechJob {
+
+    /** Recognizes one utterance of 16-bit mono PCM. May block; runs on the job's worker. */
+    interface Recognizer {
+        @NonNull
+        Transcript recognize(@NonNull short[] pcm, int length, int sampleRate, @Nullable String language)
+            throws IOException;
+    }
+
+    static final class Transcript {
+        static final Transcript EMPTY = new Transcript("", 0f);
+
+        final String text;
+        final float confidence;
+
+        Transcript(@NonNull String text, float confidence) {
+            this.text = text;
+            this.confidence = confidence;
+        }
+    }
+
+    static final class Segment {
+        final long startMs;
+        final long endMs;
+        final String text;
+        final float confidence;
+
+        Segment(long startMs, long endMs, @NonNull String text, float confidence) {
+            this.startMs = startMs;
+            this.endMs = endMs;
+            this.text = text;
+            this.confidence = confidence;
+        }
+    }
+
+    private final EdgeAudioDecoder decoder;
+    private final Recognizer recognizer;
+
+    EdgeSpeechJob(@NonNull EdgeAudioDecoder decoder, @NonNull Recognizer recognizer) {
+        this.decoder = decoder;
+        this.recognizer = recognizer;
+    }
+
+    /** Returns the job's output, and records the input's format in its output metadata. */
+    @NonNull
+    JsonObject run(@NonNull ComputeJob job) throws IOException {
+        Map<String, Object> input = job.getInputMetadata();
+        Object languageValue = input != null ? input.get("language") : null;
+        String language = languageValue != null ? languageValue.toString() : null;
+
+        List<Segment> segments = new ArrayList<>();
+        EdgeSpeechSegmenter segmenter = new EdgeSpeechSegmenter((pcm, length, startMs, endMs) -> {
+            Transcript transcript = recognizer.recognize(pcm, length, EdgeAudioDecoder.SAMPLE_RATE, language);
+            String text = transcript.text.trim();
+            if (!text.isEmpty()) segments.add(new Segment(startMs, endMs, text, transcript.confidence));
+        });
+        EdgeAudioDecoder.Info info = decoder.decode(job.getInputData(), input, segmenter);
+        segmenter.finish();
+
+        if (job.getOutputMetadata() == null) {
+            job.setOutputMetadata(new HashMap<>());
+        }
+        Map<String, Object> metadata = job.getOutputMetadata();
+        metadata.put("audioFormat", info.format);
+        metadata.put("audioSampleRate", info.sampleRate);
+        metadata.put("audioChannels", info.channels);
+        metadata.put("utterances", segmenter.utteranceCount());
+
+        StringBuilder text = new StringBuilder();
+        JsonArray array = new JsonArray();
+        for (Segment segment : segments) {
+            if (text.length() > 0) text.append(' ');
+            text.append(segment.text);
+            JsonObject obj = new JsonObject();
+            obj.addProperty("startMs", segment.startMs);
+            obj.addProperty("endMs", segment.endMs);
+            obj.addProperty("text", segment.text);
+            obj.addProperty("confidence", segment.confidence);
+            array.add(obj);
+        }
+
+        JsonObject output = new JsonObject();
+        output.addProperty("text", text.toString());
+        if (language != null) output.addProperty("language", language);
+        output.addProperty("durationMs", info.durationMs());
+        output.add("segments", array);
+        return output;
+    }
+}
@@ -0,0 +1,146 @@
+package ai.clawphones.agent.chat;
+
+import androidx.annotation.NonNull;
+
+import java.io.IOException;
+
+/**
+ * Splits 16 kHz mono audio into utterances with an energy detector, so each can be recognized on
+ * its own and carry timestamps.
+ *
+ * Audio is judged in 20 ms frames against the larger of a fixed floor and three times the running
+ * noise level. An utterance opens on the first loud frame, with 200 ms of lead-in kept for the
+ * recognizer, and closes after 500 ms of quiet; one with less than 200 ms of speech is dropped.
+ * Speech running past {@link #MAX_UTTERANCE_MS} is cut there, so the one buffer, about 470 KB,
+ * is all the audio ever held, however long the input.
+ */
+final class EdgeSpeechSegmenter implements EdgeAudioDecoder.Sink {
+
+    static final int FRAME_SAMPLES = EdgeAudioDecoder.SAMPLE_RATE / 50;
+    static final long MAX_UTTERANCE_MS = 15_000L;
+    static final int MAX_UTTERANCE_SAMPLES = (int) (MAX_UTTERANCE_MS * EdgeAudioDecoder.SAMPLE_RATE / 1000L);
+
+    private static final int LEAD_IN_SAMPLES = samples(200L);
+    private static final int END_SILENCE_FRAMES = samples(500L) / FRAME_SAMPLES;
+    private static final int MIN_SPEECH_FRAMES = samples(200L) / FRAME_SAMPLES;
+    private static final double MIN_RMS = 300d;
+    private static final double NOISE_FACTOR = 3d;
+    private static final double NOISE_ADAPT = 0.05d;
+
+    /** Receives each utterance; the array is reused once this returns. */
+    interface Listener {
+        void onUtterance(@NonNull short[] pcm, int length, long startMs, long endMs) throws IOException;
+    }
+
+    private final Listener listener;
+    private final short[] buffer = new short[MAX_UTTERANCE_SAMPLES];
+    private final short[] frame = new short[FRAME_SAMPLES];
+    private int frameLength;
+    private int length;
+    /** Stream position of buffer[0], in samples. */
+    private long bufferStart;
+    private boolean inSpeech;
+    private int voicedFrames;
+    private int silentFrames;
+    private long speechStart = -1L;
+    private long speechEnd;
+    private double noise;
+    private int utterances;
+
+    EdgeSpeechSegmenter(@NonNull Listener listener) {
+        this.listener = listener;
+    }
+
+    @Override
+    public void accept(@NonNull short[] samples, int count) throws IOException {
+        int offset = 0;
+        while (offset < count) {
+            int n = Math.min(count - offset, FRAME_SAMPLES - frameLength);
+            System.arraycopy(samples, offset, frame, frameLength, n);
+            frameLength += n;
+            offset += n;
+            if (frameLength == FRAME_SAMPLES) {
+                onFrame(frame, FRAME_SAMPLES);
+                frameLength = 0;
+            }
+        }
+    }
+
+    /** Flushes the tail of the stream. */
+    void finish() throws IOException {
+        if (frameLength > 0) {
+            onFrame(frame, frameLength);
+            frameLength = 0;
+        }
+        if (inSpeech) endUtterance();
+    }
+
+    int utteranceCount() {
+        return utterances;
+    }
+
+    private void onFrame(@NonNull short[] samples, int count) throws IOException {
+        double rms = rms(samples, count);
+        boolean voiced = rms >= Math.max(MIN_RMS, noise * NOISE_FACTOR);
+        if (!voiced) noise = noise == 0d ? rms : noise + (rms - noise) * NOISE_ADAPT;
+
+        if (inSpeech && length + count > buffer.length) {
+            // Forced cut: hand over what we have and carry on in the same utterance.
+            emit(length);
+            bufferStart += length;
+            length = 0;
+            voicedFrames = 0;
+            speechStart = -1L;
+        }
+        System.arraycopy(samples, 0, buffer, length, count);
+        long frameStart = bufferStart + length;
+        length += count;
+
+        if (voiced) {
+            if (speechStart < 0L) speechStart = frameStart;
+            speechEnd = frameStart + count;
+            voicedFrames++;
+            silentFrames = 0;
+            inSpeech = true;
+        } else if (inSpeech) {
+            if (++silentFrames >= END_SILENCE_FRAMES) endUtterance();
+        } else if (length > LEAD_IN_SAMPLES) {
+            int drop = length - LEAD_IN_SAMPLES;
+            System.arraycopy(buffer, drop, buffer, 0, LEAD_IN_SAMPLES);
+            length = LEAD_IN_SAMPLES;
+            bufferStart += drop;
+        }
+    }
+
+    /** Emits the utterance with the trailing quiet cut to the lead-in length, then resets. */
+    private void endUtterance() throws IOException {
+        long end = Math.min(bufferStart + length, speechEnd + LEAD_IN_SAMPLES);
+        emit((int) (end - bufferStart));
+        bufferStart += length;
+        length = 0;
+        inSpeech = false;
+        voicedFrames = 0;
+        silentFrames = 0;
+        speechStart = -1L;
+    }
+
+    private void emit(int count) throws IOException {
+        if (voicedFrames < MIN_SPEECH_FRAMES || speechStart < 0L) return;
+        utterances++;
+        listener.onUtterance(buffer, count, millis(speechStart), millis(speechEnd));
+    }
+
+    private static double rms(@NonNull short[] samples, int count) {
+        double sum = 0d;
+        for (int i = 0; i < count; i++) sum += (double) samples[i] * samples[i];
+        return Math.sqrt(sum / count);
+    }
+
+    private static int samples(long ms) {
+        return (int) (ms * EdgeAudioDecoder.SAMPLE_RATE / 1000L);
+    }
+
+    private static long millis(long samples) {
+        return samples * 1000L / EdgeAudioDecoder.SAMPLE_RATE;
+    }
+}
@@ -0,0 +1,303 @@
+package ai.clawphones.agent.chat;
+
+import android.os.PowerManager;
+import android.os.Process;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.termux.shared.logger.Logger;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs claimed edge compute jobs on a pool of workers.
+ *
+ * Capacity, the number of jobs allowed to run at once, follows the device: see
+ * {@link #capacityFor}. Each job type also has its own limit, so a single speech recognizer or a
+ * memory-hungry object detector is never run more times in parallel than it can take.
+ *
+ * Jobs are claimed in batches: one claim asks the source for up to the number of free slots,
+ * restricted to the types that still have room. A finished job frees its slot and immediately
+ * claims again, so a busy queue is drained at the pool's pace. Whoever learns that new jobs are
+ * waiting, see {@link EdgeJobFeed}, calls {@link #requestClaim()}.
+ *
+ * Jobs the source hands out beyond a type's limit are already ours, so they wait in a local
+ * backlog until a slot of their type frees up.
+ */
+final class EdgeWorkerPool {
+
+    private static final String LOG_TAG = "EdgeWorkerPool";
+
+    static final int MIN_BATTERY_PERCENT = 30;
+    static final int OBJECT_DETECTION_LIMIT = 2;
+    static final int SPEECH_RECOGNITION_LIMIT = 1;
+
+    /** Hands out jobs claimed for this device. */
+    interface JobSource {
+        /**
+         * Atomically claims up to {@code limit} jobs, at most the given count per type. Types not
+         * in the map are not wanted. Returns an empty list when nothing is pending.
+         */
+        @NonNull
+        List<ComputeJob> claim(int limit, @NonNull Map<ComputeJob.JobType, Integer> typeLimits) throws IOException;
+    }
+
+    /** Executes one job to completion, result submission included. */
+    interface JobRunner {
+        void run(@NonNull ComputeJob job) throws Exception;
+    }
+
+    /** Counters since creation. */
+    static final class Stats {
+        long claimRequests;
+        long claimFailures;
+        long claimed;
+        long completed;
+        long failed;
+        int active;
+        int peakActive;
+        int capacity;
+        int backlog;
+        long elapsedMs;
+
+        double jobsPerMinute() {
+            return elapsedMs <= 0L ? 0d : completed * 60000d / elapsedMs;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return String.format(Locale.US,
+                "claims=%d (%d failed) claimed=%d completed=%d failed=%d active=%d/%d peak=%d backlog=%d %.1f jobs/min",
+                claimRequests, claimFailures, claimed, completed, failed, active, capacity, peakActive, backlog,
+                jobsPerMinute());
+        }
+    }
+
+    private final JobSource source;
+    private final JobRunner runner;
+    private final int maxWorkers;
+    private final ThreadPoolExecutor workers;
+    private final ExecutorService claimer;
+    private final Object lock = new Object();
+    private final Map<ComputeJob.JobType, Integer> typeLimits = new EnumMap<>(ComputeJob.JobType.class);
+    private final Map<ComputeJob.JobType, Integer> running = new EnumMap<>(ComputeJob.JobType.class);
+    private final ArrayDeque<ComputeJob> backlog = new ArrayDeque<>();
+    private final Stats stats = new Stats();
+    private final long startedAt = System.currentTimeMillis();
+    private boolean claimQueued;
+    private boolean shutdown;
+
+    EdgeWorkerPool(@NonNull JobSource source, @NonNull JobRunner runner, int maxWorkers) {
+        this.source = source;
+        this.runner = runner;
+        this.maxWorkers = Math.max(1, maxWorkers);
+        this.stats.capacity = this.maxWorkers;
+        for (ComputeJob.JobType type : ComputeJob.JobType.values()) {
+            typeLimits.put(type, this.maxWorkers);
+            running.put(type, 0);
+        }
+        typeLimits.put(ComputeJob.JobType.OBJECT_DETECTION, Math.min(this.maxWorkers, OBJECT_DETECTION_LIMIT));
+        typeLimits.put(ComputeJob.JobType.SPEECH_RECOGNITION, SPEECH_RECOGNITION_LIMIT);
+
+        AtomicInteger threadCount = new AtomicInteger();
+        workers = new ThreadPoolExecutor(this.maxWorkers, this.maxWorkers, 30L, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(), r -> new Thread(() -> {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                r.run();
+            }, "edge-worker-" + threadCount.incrementAndGet()));
+        workers.allowCoreThreadTimeOut(true);
+        claimer = Executors.newSingleThreadExecutor(r -> new Thread(r, "edge-claim"));
+    }
+
+    /**
+     * How many jobs to run at once. Nothing runs when the device is hot, dozing, or on a low
+     * battery without a charger. Plugged in, every core but one (left for the UI) is used; on
+     * battery, half of them. Rising thermal status and battery saver cut that further.
+     *
+     * @param thermalStatus a {@code PowerManager.THERMAL_STATUS_*} value, NONE before API 29
+     */
+    static int capacityFor(int cores, int thermalStatus, int batteryPercent, boolean charging,
+                           boolean powerSave, boolean deviceIdle) {
+        if (deviceIdle || thermalStatus >= PowerManager.THERMAL_STATUS_SEVERE) return 0;
+        if (!charging && batteryPercent < MIN_BATTERY_PERCENT) return 0;
+
+        int workers = charging ? cores - 1 : cores / 2;
+        if (thermalStatus == PowerManager.THERMAL_STATUS_MODERATE) {
+            workers /= 2;
+        } else if (thermalStatus == PowerManager.THERMAL_STATUS_LIGHT) {
+            workers = workers * 3 / 4;
+        }
+        if (powerSave) workers = Math.min(workers, 1);
+        return Math.max(1, Math.min(cores, workers));
+    }
+
+    /** Claims as soon as possible instead of waiting for the next poll. */
+    void requestClaim() {
+        synchronized (lock) {
+            if (claimQueued || shutdown) return;
+            claimQueued = true;
+            claimer.execute(this::claimAndDispatch);
+        }
+    }
+
+    /** Lets running jobs finish but claims nothing more. */
+    void shutdown() {
+        synchronized (lock) {
+            shutdown = true;
+            backlog.clear();
+            claimer.shutdownNow();
+        }
+        workers.shutdown();
+    }
+
+    boolean awaitTermination(long timeoutMs) throws InterruptedException {
+        return workers.awaitTermination(timeoutMs, TimeUnit.MILLISECONDS);
+    }
+
+    /** Clamped to the worker count given at construction; 0 pauses claiming. */
+    void setCapacity(int capacity) {
+        boolean grew;
+        synchronized (lock) {
+            int clamped = Math.max(0, Math.min(maxWorkers, capacity));
+            grew = clamped > stats.capacity;
+            if (clamped != stats.capacity) {
+                Logger.logInfo(LOG_TAG, "Capacity " + stats.capacity + " -> " + clamped);
+            }
+            stats.capacity = clamped;
+        }
+        if (grew) requestClaim();
+    }
+
+    void setTypeLimit(@NonNull ComputeJob.JobType type, int limit) {
+        synchronized (lock) {
+            typeLimits.put(type, Math.max(0, limit));
+        }
+    }
+
+    int activeCount() {
+        synchronized (lock) {
+            return stats.active;
+        }
+    }
+
+    @NonNull
+    Stats stats() {
+        synchronized (lock) {
+            Stats copy = new Stats();
+            copy.claimRequests = stats.claimRequests;
+            copy.claimFailures = stats.claimFailures;
+            copy.claimed = stats.claimed;
+            copy.completed = stats.completed;
+            copy.failed = stats.failed;
+            copy.active = stats.active;
+            copy.peakActive = stats.peakActive;
+            copy.capacity = stats.capacity;
+            copy.backlog = backlog.size();
+            copy.elapsedMs = System.currentTimeMillis() - startedAt;
+            return copy;
+        }
+    }
+
+    /** Fills free slots until they are full or the source runs dry. Runs on the claim thread. */
+    private void claimAndDispatch() {
+        while (true) {
+            int free;
+            Map<ComputeJob.JobType, Integer> open = new EnumMap<>(ComputeJob.JobType.class);
+            synchronized (lock) {
+                claimQueued = false;
+                if (shutdown) return;
+                free = stats.capacity - stats.active - backlog.size();
+                for (ComputeJob.JobType type : ComputeJob.JobType.values()) {
+                    int room = Math.min(free, typeLimits.get(type) - running.get(type) - backlogged(type));
+                    if (room > 0) open.put(type, room);
+                }
+                if (free <= 0 || open.isEmpty()) return;
+                stats.claimRequests++;
+            }
+
+            List<ComputeJob> jobs;
+            try {
+                jobs = source.claim(free, open);
+            } catch (IOException | RuntimeException e) {
+                synchronized (lock) {
+                    stats.claimFailures++;
+                }
+                Logger.logWarn(LOG_TAG, "Claim failed: " + e.getMessage());
+                return;
+            }
+
+            synchronized (lock) {
+                stats.claimed += jobs.size();
+                for (ComputeJob job : jobs) {
+                    backlog.add(job);
+                }
+                dispatchBacklog();
+            }
+            if (jobs.size() < free) return;
+        }
+    }
+
+    /** Starts every backlogged job that fits. Caller holds the lock. */
+    private void dispatchBacklog() {
+        Iterator<ComputeJob> iterator = backlog.iterator();
+        while (iterator.hasNext() && stats.active < stats.capacity && !shutdown) {
+            ComputeJob job = iterator.next();
+            ComputeJob.JobType type = job.getType();
+            if (type != null && running.get(type) >= typeLimits.get(type)) continue;
+            iterator.remove();
+            if (type != null) running.put(type, running.get(type) + 1);
+            stats.active++;
+            stats.peakActive = Math.max(stats.peakActive, stats.active);
+            workers.execute(() -> runJob(job));
+        }
+    }
+
+    private void runJob(@NonNull ComputeJob job) {
+        boolean failed = false;
+        try {
+            runner.run(job);
+        } catch (Exception e) {
+            failed = true;
+            Logger.logError(LOG_TAG, "Job " + job.getJobId() + " failed: " + e.getMessage());
+        } finally {
+            onFinished(job, failed || job.getStatus() == ComputeJob.JobStatus.FAILED);
+        }
+    }
+
+    private void onFinished(@NonNull ComputeJob job, boolean failed) {
+        synchronized (lock) {
+            stats.active--;
+            ComputeJob.JobType type = job.getType();
+            if (type != null) running.put(type, running.get(type) - 1);
+            if (failed) {
+                stats.failed++;
+            } else {
+                stats.completed++;
+            }
+            dispatchBacklog();
+        }
+        requestClaim();
+    }
+
+    private int backlogged(@Nullable ComputeJob.JobType type) {
+        int count = 0;
+        for (ComputeJob job : backlog) {
+            if (job.getType() == type) count++;
+        }
+        return count;
+    }
+}
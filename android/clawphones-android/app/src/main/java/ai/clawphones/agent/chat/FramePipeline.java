@@ -0,0 +1,457 @@
+package ai.clawphones.agent.chat;
+
+import android.graphics.Bitmap;
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.termux.shared.logger.Logger;
+
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Node mode frame pipeline: capture, motion gate, detect, encode, upload.
+ *
+ * Every frame is captured and scored by the {@link MotionGate}; only frames that pass it are
+ * converted to a bitmap and reach the detector, the listener and the relay. Quiet scenes
+ * therefore cost one downsampled luma pass per frame instead of a colour conversion, an ML Kit
+ * run and an upload. Frames are paced by the interval from
+ * the {@link AdaptiveFrameController} and processed one at a time on the pipeline's own thread.
+ *
+ * Encoded frames are handed to an upload worker through a queue of UPLOAD_QUEUE_CAPACITY, so a
+ * slow uplink never holds up capture. When the queue is full the oldest frame of the lowest
+ * priority makes room, and a new frame that ranks below everything queued is dropped instead.
+ *
+ * When the source throws, it is closed and a new one is opened from the factory after a backoff
+ * that doubles from RESTART_BASE_MS up to RESTART_MAX_MS. After MAX_RESTARTS failures with no
+ * good frame in between the pipeline stops, and {@link #isRunning()} turns false for the owner
+ * to notice.
+ *
+ * {@link #stats()} reports the gating ratio and the latency of each stage.
+ */
+final class FramePipeline {
+
+    private static final String LOG_TAG = "FramePipeline";
+    private static final int LOG_EVERY_FRAMES = 60;
+    static final long RESTART_BASE_MS = 1000L;
+    static final long RESTART_MAX_MS = 30_000L;
+    static final int MAX_RESTARTS = 5;
+    static final int UPLOAD_QUEUE_CAPACITY = 3;
+
+    enum Stage { CAPTURE, MOTION, CONVERT, DETECT, ENCODE, UPLOAD }
+
+    interface Detector {
+        @NonNull
+        List<VisionDetector.Detection> detect(@NonNull Bitmap frame) throws Exception;
+    }
+
+    interface Uploader {
+        void upload(@NonNull byte[] jpeg, @NonNull RelayClient.FramePriority priority) throws Exception;
+
+        /** False while uploads are paused; frames are then neither encoded nor uploaded. */
+        default boolean ready() {
+            return true;
+        }
+    }
+
+    interface Listener {
+        /**
+         * A frame passed the motion gate. Runs on the pipeline thread; the frame may be reused for
+         * the next capture, so it is valid only during the call.
+         */
+        void onMotionFrame(@NonNull Bitmap frame, @NonNull List<VisionDetector.Detection> detections);
+    }
+
+    /**
+     * Counters since the pipeline was created. Latencies are wall time per stage run; UPLOAD is
+     * timed on the upload worker.
+     */
+    static final class Stats {
+        long frames;
+        long passed;
+        long detections;
+        long uploads;
+        long uploadFailures;
+        long uploadsPaused;
+        long uploadsDropped;
+        long restarts;
+        final long[] stageRuns = new long[Stage.values().length];
+        final long[] stageTotalMs = new long[Stage.values().length];
+        final long[] stageMaxMs = new long[Stage.values().length];
+
+        /** Fraction of captured frames that went past the motion gate. */
+        double gatingRatio() {
+            return frames == 0L ? 0d : passed / (double) frames;
+        }
+
+        double meanMs(@NonNull Stage stage) {
+            long runs = stageRuns[stage.ordinal()];
+            return runs == 0L ? 0d : stageTotalMs[stage.ordinal()] / (double) runs;
+        }
+
+        long maxMs(@NonNull Stage stage) {
+            return stageMaxMs[stage.ordinal()];
+        }
+
+        @NonNull
+        Stats copy() {
+            Stats copy = new Stats();
+            copy.frames = frames;
+            copy.passed = passed;
+            copy.detections = detections;
+            copy.uploads = uploads;
+            copy.uploadFailures = uploadFailures;
+            copy.uploadsPaused = uploadsPaused;
+            copy.uploadsDropped = uploadsDropped;
+            copy.restarts = restarts;
+            System.arraycopy(stageRuns, 0, copy.stageRuns, 0, stageRuns.length);
+            System.arraycopy(stageTotalMs, 0, copy.stageTotalMs, 0, stageTotalMs.length);
+            System.arraycopy(stageMaxMs, 0, copy.stageMaxMs, 0, stageMaxMs.length);
+            return copy;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder(String.format(Locale.US,
+                "frames=%d passed=%d (%.1f%%) detections=%d uploads=%d failed=%d paused=%d dropped=%d restarts=%d",
+                frames, passed, gatingRatio() * 100d, detections, uploads, uploadFailures, uploadsPaused,
+                uploadsDropped, restarts));
+            for (Stage stage : Stage.values()) {
+                builder.append(String.format(Locale.US, " %s=%.1f/%d ms",
+                    stage.name().toLowerCase(Locale.US), meanMs(stage), maxMs(stage)));
+            }
+            return builder.toString();
+        }
+    }
+
+    private final FrameSource.Factory sourceFactory;
+    private final MotionGate gate;
+    @Nullable private final Detector detector;
+    @Nullable private final Uploader uploader;
+    private final AdaptiveFrameController controller;
+    @Nullable private final Listener listener;
+    private final Stats stats = new Stats();
+    private final Executor uploadExecutor;
+    @Nullable private final ExecutorService ownedUploadExecutor;
+    private final ArrayDeque<PendingUpload> pendingUploads = new ArrayDeque<>();
+    @Nullable private ScheduledExecutorService executor;
+    @Nullable private FrameSource source;
+    private volatile boolean running;
+    private boolean stopped;
+    private int failures;
+
+    FramePipeline(@NonNull FrameSource.Factory sourceFactory, @NonNull MotionGate gate, @Nullable Detector detector,
+                  @Nullable Uploader uploader, @NonNull AdaptiveFrameController controller,
+                  @Nullable Listener listener) {
+        this(sourceFactory, gate, detector, uploader, controller, listener, null);
+    }
+
+    /** As above, with uploads run on {@code uploadExecutor}; null gives the pipeline its own worker thread. */
+    FramePipeline(@NonNull FrameSource.Factory sourceFactory, @NonNull MotionGate gate, @Nullable Detector detector,
+                  @Nullable Uploader uploader, @NonNull AdaptiveFrameController controller,
+                  @Nullable Listener listener, @Nullable Executor uploadExecutor) {
+        this.sourceFactory = sourceFactory;
+        this.gate = gate;
+        this.detector = detector;
+        this.uploader = uploader;
+        this.controller = controller;
+        this.listener = listener;
+        this.ownedUploadExecutor = uploadExecutor == null ? Executors.newSingleThreadExecutor() : null;
+        this.uploadExecutor = uploadExecutor != null ? uploadExecutor : ownedUploadExecutor;
+    }
+
+    /** Adapts the callback-based VisionDetector for the pipeline thread. */
+    @NonNull
+    static Detector blocking(@NonNull VisionDetector visionDetector, long timeoutMs) {
+        return frame -> {
+            CountDownLatch done = new CountDownLatch(1);
+            AtomicReference<List<VisionDetector.Detection>> result = new AtomicReference<>();
+            AtomicReference<Exception> error = new AtomicReference<>();
+            visionDetector.detect(frame, new VisionDetector.DetectionCallback() {
+                @Override
+                public void onResult(List<VisionDetector.Detection> detections) {
+                    result.set(detections);
+                    done.countDown();
+                }
+
+                @Override
+                public void onError(Exception e) {
+                    error.set(e);
+                    done.countDown();
+                }
+            });
+            if (!done.await(timeoutMs, TimeUnit.MILLISECONDS)) {
+                throw new TimeoutException("detection took longer than " + timeoutMs + " ms");
+            }
+            if (error.get() != null) throw error.get();
+            List<VisionDetector.Detection> detections = result.get();
+            return detections != null ? detections : Collections.emptyList();
+        };
+    }
+
+    synchronized void start() {
+        if (running) return;
+        running = true;
+        executor = Executors.newSingleThreadScheduledExecutor();
+        executor.execute(this::tick);
+    }
+
+    synchronized void stop() {
+        running = false;
+        stopped = true;
+        if (executor != null) {
+            executor.shutdownNow();
+            executor = null;
+        }
+        if (ownedUploadExecutor != null) {
+            ownedUploadExecutor.shutdownNow();
+        }
+        synchronized (pendingUploads) {
+            pendingUploads.clear();
+        }
+        closeSource();
+    }
+
+    boolean isRunning() {
+        return running;
+    }
+
+    @NonNull
+    Stats stats() {
+        synchronized (stats) {
+            return stats.copy();
+        }
+    }
+
+    private void tick() {
+        if (!running) return;
+        long startedAt = SystemClock.elapsedRealtime();
+        boolean more;
+        try {
+            more = processNext();
+            failures = 0;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return;
+        } catch (IOException | RuntimeException e) {
+            closeSource();
+            if (++failures > MAX_RESTARTS) {
+                Logger.logError(LOG_TAG, "Frame source failed " + failures + " times in a row, stopping: "
+                    + e.getMessage());
+                running = false;
+                return;
+            }
+            long backoffMs = restartDelayMs(failures);
+            Logger.logWarn(LOG_TAG, "Frame source failed, reopening in " + backoffMs + " ms: " + e.getMessage());
+            synchronized (stats) {
+                stats.restarts++;
+            }
+            // The new source may frame the scene differently; start a fresh background.
+            gate.reset();
+            schedule(backoffMs);
+            return;
+        }
+        if (!more) {
+            Logger.logInfo(LOG_TAG, "Frame source ended: " + stats());
+            running = false;
+            return;
+        }
+
+        schedule(controller.current().frameIntervalMs - (SystemClock.elapsedRealtime() - startedAt));
+    }
+
+    private synchronized void schedule(long delayMs) {
+        if (running && executor != null) {
+            executor.schedule(this::tick, Math.max(0L, delayMs), TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /** Backoff before reopening the source after the given number of consecutive failures. */
+    static long restartDelayMs(int failures) {
+        return Math.min(RESTART_MAX_MS, RESTART_BASE_MS << Math.min(failures - 1, 16));
+    }
+
+    /** The current source, opened from the factory if the last one failed. Null once stopped. */
+    @Nullable
+    private synchronized FrameSource currentSource() throws IOException {
+        if (stopped) return null;
+        if (source == null) source = sourceFactory.open();
+        return source;
+    }
+
+    private synchronized void closeSource() {
+        if (source == null) return;
+        try {
+            source.close();
+        } catch (IOException e) {
+            Logger.logWarn(LOG_TAG, "Failed to close frame source: " + e.getMessage());
+        }
+        source = null;
+    }
+
+    /**
+     * Runs one frame through the pipeline on the calling thread. Returns false once the source
+     * has no more frames.
+     */
+    boolean processNext() throws IOException, InterruptedException {
+        long stageStart = SystemClock.elapsedRealtime();
+        FrameSource current = currentSource();
+        if (current == null) return false;
+        FrameSource.Frame captured = current.next();
+        if (captured == null) return false;
+        try {
+            stageStart = record(Stage.CAPTURE, stageStart);
+            float score = gate.score(captured.downsampleLuma(gate));
+            stageStart = record(Stage.MOTION, stageStart);
+            synchronized (stats) {
+                stats.frames++;
+                if (gate.passes(score)) stats.passed++;
+            }
+            if (!gate.passes(score)) return true;
+
+            Bitmap frame = captured.bitmap();
+            stageStart = record(Stage.CONVERT, stageStart);
+            List<VisionDetector.Detection> detections = Collections.emptyList();
+            if (detector != null) {
+                try {
+                    detections = detector.detect(frame);
+                } catch (InterruptedException e) {
+                    throw e;
+                } catch (Exception e) {
+                    Logger.logWarn(LOG_TAG, "Detection failed: " + e.getMessage());
+                }
+                stageStart = record(Stage.DETECT, stageStart);
+            }
+            synchronized (stats) {
+                stats.detections += detections.size();
+            }
+            if (listener != null) {
+                listener.onMotionFrame(frame, detections);
+            }
+
+            if (uploader != null && !uploader.ready()) {
+                synchronized (stats) {
+                    stats.uploadsPaused++;
+                }
+            } else if (uploader != null) {
+                stageStart = SystemClock.elapsedRealtime();
+                byte[] jpeg = controller.current().encode(frame);
+                record(Stage.ENCODE, stageStart);
+                offerUpload(jpeg, detections.isEmpty()
+                    ? RelayClient.FramePriority.IDLE
+                    : RelayClient.FramePriority.DETECTION);
+            }
+            return true;
+        } finally {
+            captured.close();
+            maybeLogStats();
+        }
+    }
+
+    /** Queues an encoded frame for the upload worker, making room by priority when the queue is full. */
+    void offerUpload(@NonNull byte[] jpeg, @NonNull RelayClient.FramePriority priority) {
+        synchronized (pendingUploads) {
+            boolean fits = pendingUploads.size() < UPLOAD_QUEUE_CAPACITY || evictForUpload(priority);
+            if (!fits) {
+                synchronized (stats) {
+                    stats.uploadsDropped++;
+                }
+                return;
+            }
+            pendingUploads.addLast(new PendingUpload(jpeg, priority));
+        }
+        try {
+            uploadExecutor.execute(this::drainUploads);
+        } catch (RejectedExecutionException e) {
+            // Stopped; the queue was cleared.
+        }
+    }
+
+    /** Drops the oldest queued frame of the lowest rank, unless that ranks above the new frame. */
+    private boolean evictForUpload(@NonNull RelayClient.FramePriority priority) {
+        PendingUpload victim = null;
+        for (PendingUpload pending : pendingUploads) {
+            if (victim == null || pending.priority.rank < victim.priority.rank) victim = pending;
+        }
+        if (victim == null || victim.priority.rank > priority.rank) return false;
+        pendingUploads.remove(victim);
+        synchronized (stats) {
+            stats.uploadsDropped++;
+        }
+        return true;
+    }
+
+    /** Upload worker: sends queued frames oldest first until the queue is empty. */
+    private void drainUploads() {
+        Uploader target = uploader;
+        if (target == null) return;
+        while (true) {
+            PendingUpload next;
+            synchronized (pendingUploads) {
+                next = pendingUploads.pollFirst();
+            }
+            if (next == null) return;
+            long startedAt = SystemClock.elapsedRealtime();
+            boolean uploaded = false;
+            try {
+                target.upload(next.jpeg, next.priority);
+                uploaded = true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (Exception e) {
+                Logger.logDebug(LOG_TAG, "Frame upload failed: " + e.getMessage());
+            }
+            record(Stage.UPLOAD, startedAt);
+            synchronized (stats) {
+                if (uploaded) stats.uploads++; else stats.uploadFailures++;
+            }
+        }
+    }
+
+    private long record(@NonNull Stage stage, long stageStart) {
+        long now = SystemClock.elapsedRealtime();
+        long elapsed = now - stageStart;
+        synchronized (stats) {
+            int i = stage.ordinal();
+            stats.stageRuns[i]++;
+            stats.stageTotalMs[i] += elapsed;
+            stats.stageMaxMs[i] = Math.max(stats.stageMaxMs[i], elapsed);
+        }
+        return now;
+    }
+
+    private void maybeLogStats() {
+        Stats snapshot;
+        synchronized (stats) {
+            if (stats.frames == 0L || stats.frames % LOG_EVERY_FRAMES != 0L) return;
+            snapshot = stats.copy();
+        }
+        Logger.logInfo(LOG_TAG, "Pipeline " + snapshot);
+    }
+
+    private static final class PendingUpload {
+        @NonNull final byte[] jpeg;
+        @NonNull final RelayClient.FramePriority priority;
+
+        PendingUpload(@NonNull byte[] jpeg, @NonNull RelayClient.FramePriority priority) {
+            this.jpeg = jpeg;
+            this.priority = priority;
+        }
+    }
+}
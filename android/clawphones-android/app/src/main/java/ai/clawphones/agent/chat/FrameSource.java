@@ -0,0 +1,75 @@
+package ai.clawphones.agent.chat;
+
+import android.graphics.Bitmap;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Where node mode gets its frames: the camera, or recorded frames replayed from disk.
+ *
+ * {@link #next()} is called from the frame pipeline thread, never the main thread. The caller
+ * owns the returned frame and closes it when done.
+ */
+interface FrameSource extends Closeable {
+
+    /**
+     * One captured frame. The motion gate reads its luma first; the bitmap is only built for
+     * frames that pass, so a source holding YUV can skip the colour conversion for the rest.
+     */
+    interface Frame extends Closeable {
+
+        /** The frame's luma averaged into the gate's grid; see {@link MotionGate#downsampleLuma}. */
+        @NonNull
+        int[] downsampleLuma(@NonNull MotionGate gate);
+
+        /**
+         * The frame as a bitmap, built on the first call. It belongs to the frame or its source
+         * and is valid until the frame is closed; callers must not recycle it.
+         */
+        @NonNull
+        Bitmap bitmap() throws IOException;
+
+        @Override
+        void close();
+    }
+
+    /** Opens a source; the frame pipeline calls it again to replace a source that failed. */
+    interface Factory {
+        @NonNull
+        FrameSource open() throws IOException;
+    }
+
+    /** A frame that is already a bitmap; closing it recycles the bitmap. */
+    final class BitmapFrame implements Frame {
+        private final Bitmap bitmap;
+
+        BitmapFrame(@NonNull Bitmap bitmap) {
+            this.bitmap = bitmap;
+        }
+
+        @NonNull
+        @Override
+        public int[] downsampleLuma(@NonNull MotionGate gate) {
+            return gate.downsampleLuma(bitmap);
+        }
+
+        @NonNull
+        @Override
+        public Bitmap bitmap() {
+            return bitmap;
+        }
+
+        @Override
+        public void close() {
+            bitmap.recycle();
+        }
+    }
+
+    /** Blocks until the next frame is available. Returns null once the source has no more frames. */
+    @Nullable
+    Frame next() throws IOException, InterruptedException;
+}
@@ -0,0 +1,135 @@
+package ai.clawphones.agent.chat;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Cache;
+import okhttp3.ConnectionPool;
+import okhttp3.Interceptor;
+import okhttp3.OkHttpClient;
+import okhttp3.Protocol;
+import okhttp3.Request;
+import okhttp3.Response;
+
+/**
+ * Process-wide HTTP transport shared by every backend client.
+ *
+ * All clients come from one {@link OkHttpClient}, so they share a connection pool and dispatcher:
+ * TLS sessions are reused, HTTP/2 streams are multiplexed over a single connection per host, and
+ * responses are gzip-decoded transparently. Clients needing different settings derive from it with
+ * {@link #newBuilder()} instead of building their own.
+ *
+ * GET responses can be served from an on-disk cache once {@link #installCache(Context)} has run;
+ * callers opt in with {@link #cachingClient()}. Per-request timeouts are set with
+ * {@link #withTimeouts(Request.Builder, long, long, long)}.
+ */
+public final class HttpTransport {
+
+    static final long CONNECT_TIMEOUT_MS = 15_000L;
+    static final long READ_TIMEOUT_MS = 60_000L;
+    static final long WRITE_TIMEOUT_MS = 60_000L;
+
+    private static final int MAX_IDLE_CONNECTIONS = 8;
+    private static final long KEEP_ALIVE_MINUTES = 5L;
+    private static final long CACHE_MAX_BYTES = 10L * 1024L * 1024L;
+    private static final String CACHE_DIR = "http_cache";
+
+    /** Request tag carrying timeout overrides; zero keeps the client default. */
+    public static final class Timeouts {
+        public final long connectMs;
+        public final long readMs;
+        public final long writeMs;
+
+        public Timeouts(long connectMs, long readMs, long writeMs) {
+            this.connectMs = Math.max(0L, connectMs);
+            this.readMs = Math.max(0L, readMs);
+            this.writeMs = Math.max(0L, writeMs);
+        }
+    }
+
+    private static final Interceptor TIMEOUT_INTERCEPTOR = chain -> {
+        Timeouts timeouts = chain.request().tag(Timeouts.class);
+        if (timeouts == null) return chain.proceed(chain.request());
+
+        Interceptor.Chain adjusted = chain;
+        if (timeouts.connectMs > 0L) {
+            adjusted = adjusted.withConnectTimeout((int) timeouts.connectMs, TimeUnit.MILLISECONDS);
+        }
+        if (timeouts.readMs > 0L) {
+            adjusted = adjusted.withReadTimeout((int) timeouts.readMs, TimeUnit.MILLISECONDS);
+        }
+        if (timeouts.writeMs > 0L) {
+            adjusted = adjusted.withWriteTimeout((int) timeouts.writeMs, TimeUnit.MILLISECONDS);
+        }
+        return adjusted.proceed(chain.request());
+    };
+
+    private static final OkHttpClient SHARED_CLIENT = new OkHttpClient.Builder()
+        .connectTimeout(CONNECT_TIMEOUT_MS, TimeUnit.MILLISECONDS)
+        .readTimeout(READ_TIMEOUT_MS, TimeUnit.MILLISECONDS)
+        .writeTimeout(WRITE_TIMEOUT_MS, TimeUnit.MILLISECONDS)
+        .connectionPool(new ConnectionPool(MAX_IDLE_CONNECTIONS, KEEP_ALIVE_MINUTES, TimeUnit.MINUTES))
+        .protocols(Arrays.asList(Protocol.HTTP_2, Protocol.HTTP_1_1))
+        .retryOnConnectionFailure(true)
+        .addInterceptor(TIMEOUT_INTERCEPTOR)
+        .build();
+
+    private static volatile OkHttpClient sCachingClient;
+
+    private HttpTransport() {}
+
+    /** The shared client. Never caches. */
+    @NonNull
+    public static OkHttpClient client() {
+        return SHARED_CLIENT;
+    }
+
+    /** The shared client with the disk cache attached, or the plain client before it is installed. */
+    @NonNull
+    public static OkHttpClient cachingClient() {
+        OkHttpClient caching = sCachingClient;
+        return caching == null ? SHARED_CLIENT : caching;
+    }
+
+    /** Builder for a client that keeps the shared pool, dispatcher and interceptors. */
+    @NonNull
+    public static OkHttpClient.Builder newBuilder() {
+        return SHARED_CLIENT.newBuilder();
+    }
+
+    /** Creates the on-disk GET cache under the app cache directory. Safe to call more than once. */
+    public static void installCache(@NonNull Context context) {
+        if (sCachingClient != null) return;
+        synchronized (HttpTransport.class) {
+            if (sCachingClient != null) return;
+            File dir = new File(context.getApplicationContext().getCacheDir(), CACHE_DIR);
+            sCachingClient = SHARED_CLIENT.newBuilder()
+                .cache(new Cache(dir, CACHE_MAX_BYTES))
+                .build();
+        }
+    }
+
+    @NonNull
+    public static Request.Builder withTimeouts(@NonNull Request.Builder builder,
+                                               long connectMs, long readMs, long writeMs) {
+        return builder.tag(Timeouts.class, new Timeouts(connectMs, readMs, writeMs));
+    }
+
+    /** Executes a request on the shared client. The caller closes the response. */
+    @NonNull
+    public static Response execute(@NonNull Request request) throws IOException {
+        return SHARED_CLIENT.newCall(request).execute();
+    }
+
+    /** Executes a GET that may be answered from the disk cache. The caller closes the response. */
+    @NonNull
+    public static Response executeCached(@NonNull Request request) throws IOException {
+        return cachingClient().newCall(request).execute();
+    }
+}
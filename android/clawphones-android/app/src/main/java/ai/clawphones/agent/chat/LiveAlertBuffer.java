@@ -0,0 +1,147 @@
+package ai.clawphones.agent.chat;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * The live feed's most recent alerts in a fixed-size ring, viewed newest first through one filter
+ * at a time.
+ *
+ * Every alert gets a sequence number and lives in slot {@code seq % capacity}. Each filter that
+ * has been selected keeps its own ring of matching sequence numbers, kept up to date as alerts
+ * arrive and are evicted, so switching back to a filter is free and an append costs one step
+ * per index, never a rescan. {@link #addAll} reports what changed in the selected view as
+ * removals at its end and insertions at its start, ready for targeted adapter notifications.
+ * Main thread only.
+ */
+final class LiveAlertBuffer {
+
+    /** How the selected view changed: removed rows left its end, then inserted rows joined its start. */
+    static final class Change {
+        int removed;
+        int inserted;
+
+        @NonNull
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "removed=%d inserted=%d", removed, inserted);
+        }
+    }
+
+    private static final class FilterIndex {
+        @Nullable final String type;
+        @Nullable final String severity;
+        /** Sequence numbers, oldest at head. */
+        final long[] seqs;
+        int head;
+        int size;
+
+        FilterIndex(@Nullable String type, @Nullable String severity, int capacity) {
+            this.type = type;
+            this.severity = severity;
+            this.seqs = new long[capacity];
+        }
+
+        boolean matches(@NonNull LiveAlertFeedActivity.LiveAlertItem alert) {
+            return (type == null || type.equals(alert.type)) && (severity == null || severity.equals(alert.severity));
+        }
+
+        void addNewest(long seq) {
+            seqs[(head + size) % seqs.length] = seq;
+            size++;
+        }
+
+        boolean removeOldestIf(long seq) {
+            if (size == 0 || seqs[head] != seq) return false;
+            head = (head + 1) % seqs.length;
+            size--;
+            return true;
+        }
+    }
+
+    private final int capacity;
+    private final LiveAlertFeedActivity.LiveAlertItem[] alerts;
+    private final Map<String, FilterIndex> indexes = new HashMap<>();
+    private long nextSeq;
+    private FilterIndex selected;
+
+    LiveAlertBuffer(int capacity) {
+        this.capacity = capacity;
+        this.alerts = new LiveAlertFeedActivity.LiveAlertItem[capacity];
+        select(null, null);
+    }
+
+    /** Selects the view; null matches everything. Builds the filter's index the first time. */
+    void select(@Nullable String type, @Nullable String severity) {
+        String key = type + "\n" + severity;
+        FilterIndex index = indexes.get(key);
+        if (index == null) {
+            index = new FilterIndex(type, severity, capacity);
+            for (long seq = oldestSeq(); seq < nextSeq; seq++) {
+                if (index.matches(alerts[slot(seq)])) index.addNewest(seq);
+            }
+            indexes.put(key, index);
+        }
+        selected = index;
+    }
+
+    /** Appends alerts, oldest first; only the newest {@code capacity} of them can stay. */
+    @NonNull
+    Change addAll(@NonNull List<LiveAlertFeedActivity.LiveAlertItem> batch) {
+        Change change = new Change();
+        // Anything older would be evicted by the same batch; skipping it keeps the counts exact.
+        for (int i = Math.max(0, batch.size() - capacity); i < batch.size(); i++) {
+            add(batch.get(i), change);
+        }
+        return change;
+    }
+
+    /** Rows in the selected view. */
+    int size() {
+        return selected.size;
+    }
+
+    /** Row position of the selected view, newest first. */
+    @NonNull
+    LiveAlertFeedActivity.LiveAlertItem get(int position) {
+        if (position < 0 || position >= selected.size) {
+            throw new IndexOutOfBoundsException("position " + position + " of " + selected.size);
+        }
+        long seq = selected.seqs[(selected.head + selected.size - 1 - position) % capacity];
+        return alerts[slot(seq)];
+    }
+
+    /** Alerts held, whatever the filter. */
+    int totalSize() {
+        return (int) (nextSeq - oldestSeq());
+    }
+
+    private void add(@NonNull LiveAlertFeedActivity.LiveAlertItem alert, @NonNull Change change) {
+        if (nextSeq >= capacity) {
+            long evicted = nextSeq - capacity;
+            for (FilterIndex index : indexes.values()) {
+                if (index.removeOldestIf(evicted) && index == selected) change.removed++;
+            }
+        }
+        long seq = nextSeq++;
+        alerts[slot(seq)] = alert;
+        for (FilterIndex index : indexes.values()) {
+            if (!index.matches(alert)) continue;
+            index.addNewest(seq);
+            if (index == selected) change.inserted++;
+        }
+    }
+
+    private long oldestSeq() {
+        return Math.max(0L, nextSeq - capacity);
+    }
+
+    private int slot(long seq) {
+        return (int) (seq % capacity);
+    }
+}
@@ -8,6 +8,7 @@ import android.os.Handler;
 import android.os.Looper;
 import android.text.TextUtils;
 import android.util.Log;
+import android.view.Choreographer;
 import android.view.Gravity;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -26,15 +27,20 @@ import androidx.recyclerview.widget.RecyclerView;
 import org.json.JSONException;
 import org.json.JSONObject;
 
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
-import java.util.Locale;
 import java.util.Map;
-import java.util.TimeZone;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import okio.ByteString;
 
@@ -47,7 +53,8 @@ import okio.ByteString;
  * - Filter chips (All / Motion / Person / Vehicle / Sound / Community)
  * - Severity filter (All / Low / Medium / High / Critical)
  * - Connection status indicator with auto-reconnect
- * - Caps alerts at 100 entries (most recent first)
+ * - Caps alerts at 100 entries (most recent first) in a {@link LiveAlertBuffer}
+ * - Messages are parsed on the socket thread and land once per frame as one batch
  *
  * Matches iOS: LiveAlertFeedView.swift
  */
@@ -100,9 +107,16 @@ public class LiveAlertFeedActivity extends AppCompatActivity {
     private TextView mConnectionStatus;
     private View mConnectionDot;
 
+    // Immutable, so shared by the socket thread and the adapter.
+    private static final DateTimeFormatter TIME_LABEL_FORMAT = DateTimeFormatter.ofPattern("HH:mm:ss");
+    private static final int ISO_LOCAL_LENGTH = "yyyy-MM-ddTHH:mm:ss".length();
+
     // State
-    private final List<LiveAlertItem> mAllAlerts = new ArrayList<>();
-    private final List<LiveAlertItem> mFilteredAlerts = new ArrayList<>();
+    private final LiveAlertBuffer mAlerts = new LiveAlertBuffer(MAX_ALERTS);
+    /** Parsed on the socket thread, waiting for the next frame. */
+    private final ConcurrentLinkedQueue<LiveAlertItem> mPendingAlerts = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean mFlushScheduled = new AtomicBoolean();
+    private final Choreographer.FrameCallback mFlushFrame = frameTimeNanos -> flushPendingAlerts();
     private AlertFeedAdapter mAdapter;
     private WebSocketClient mWebSocketClient;
     private String mSelectedTypeFilter = FILTER_ALL;
@@ -110,18 +124,11 @@ public class LiveAlertFeedActivity extends AppCompatActivity {
     private boolean mIsConnected = false;
 
     private final Handler mMainHandler = new Handler(Looper.getMainLooper());
-    private final SimpleDateFormat mTimeFormat = new SimpleDateFormat("HH:mm:ss", Locale.getDefault());
-    private final SimpleDateFormat mIso8601Format;
 
     // Track filter chip TextViews for highlight updates
     private final List<TextView> mTypeChips = new ArrayList<>();
     private final List<TextView> mSeverityChips = new ArrayList<>();
 
-    {
-        mIso8601Format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss", Locale.US);
-        mIso8601Format.setTimeZone(TimeZone.getTimeZone("UTC"));
-    }
-
     @Override
     protected void onCreate(@Nullable Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
@@ -132,6 +139,8 @@ public class LiveAlertFeedActivity extends AppCompatActivity {
     @Override
     protected void onDestroy() {
         disconnectWebSocket();
+        Choreographer.getInstance().removeFrameCallback(mFlushFrame);
+        mPendingAlerts.clear();
         super.onDestroy();
     }
 
@@ -313,7 +322,7 @@ public class LiveAlertFeedActivity extends AppCompatActivity {
         mAlertRecycler.setClipToPadding(false);
         mAlertRecycler.setBackgroundColor(0xFFF2F2F7);
 
-        mAdapter = new AlertFeedAdapter(mFilteredAlerts, mTimeFormat);
+        mAdapter = new AlertFeedAdapter(mAlerts);
         mAlertRecycler.setAdapter(mAdapter);
         mAlertRecycler.setVisibility(View.GONE);
         root.addView(mAlertRecycler);
@@ -381,22 +390,42 @@ public class LiveAlertFeedActivity extends AppCompatActivity {
     // ==================== Filtering ====================
 
     private void applyFilters() {
-        mFilteredAlerts.clear();
-        for (LiveAlertItem alert : mAllAlerts) {
-            boolean typeMatch = FILTER_ALL.equals(mSelectedTypeFilter) ||
-                    mSelectedTypeFilter.equals(alert.type);
-            boolean severityMatch = FILTER_ALL.equals(mSelectedSeverityFilter) ||
-                    mSelectedSeverityFilter.equals(alert.severity);
-            if (typeMatch && severityMatch) {
-                mFilteredAlerts.add(alert);
-            }
-        }
+        mAlerts.select(
+                FILTER_ALL.equals(mSelectedTypeFilter) ? null : mSelectedTypeFilter,
+                FILTER_ALL.equals(mSelectedSeverityFilter) ? null : mSelectedSeverityFilter
+        );
+        // A different filter is a different list.
         mAdapter.notifyDataSetChanged();
         updateEmptyState();
     }
 
+    /** Frame callback: everything that arrived since the last frame goes in as one batch. */
+    private void flushPendingAlerts() {
+        mFlushScheduled.set(false);
+        List<LiveAlertItem> batch = new ArrayList<>();
+        LiveAlertItem alert;
+        while ((alert = mPendingAlerts.poll()) != null) {
+            batch.add(alert);
+        }
+        if (batch.isEmpty() || isDestroyed()) return;
+
+        int oldSize = mAlerts.size();
+        LinearLayoutManager layoutManager = (LinearLayoutManager) mAlertRecycler.getLayoutManager();
+        boolean atTop = layoutManager == null || layoutManager.findFirstVisibleItemPosition() <= 0;
+        LiveAlertBuffer.Change change = mAlerts.addAll(batch);
+        if (change.removed > 0) {
+            mAdapter.notifyItemRangeRemoved(oldSize - change.removed, change.removed);
+        }
+        if (change.inserted > 0) {
+            mAdapter.notifyItemRangeInserted(0, change.inserted);
+            // Follow the newest alert unless the user has scrolled down the feed.
+            if (atTop) mAlertRecycler.scrollToPosition(0);
+        }
+        updateEmptyState();
+    }
+
     private void updateEmptyState() {
-        boolean isEmpty = mFilteredAlerts.isEmpty();
+        boolean isEmpty = mAlerts.size() == 0;
         mEmptyStateContainer.setVisibility(isEmpty ? View.VISIBLE : View.GONE);
         mAlertRecycler.setVisibility(isEmpty ? View.GONE : View.VISIBLE);
 
@@ -510,41 +539,52 @@ public class LiveAlertFeedActivity extends AppCompatActivity {
         mIsConnected = false;
     }
 
+    /** Socket thread: parses here, then leaves the alert for the next frame's batch. */
     private void handleWebSocketMessage(String message) {
+        LiveAlertItem alert;
         try {
-            JSONObject json = new JSONObject(message);
-
-            String id = json.optString("id", "");
-            String type = json.optString("type", "");
-            String h3Location = json.optString("h3_location", "");
-            String severity = json.optString("severity", SEVERITY_LOW);
-            String description = json.optString("description", "");
-            String timestampStr = json.optString("timestamp", "");
-
-            Date timestamp;
-            try {
-                timestamp = mIso8601Format.parse(timestampStr);
-            } catch (ParseException e) {
-                timestamp = new Date();
-            }
-
-            LiveAlertItem alert = new LiveAlertItem(
-                    id, type, h3Location, severity, description, timestamp
-            );
-
-            mMainHandler.post(() -> {
-                // Insert at the beginning (most recent first)
-                mAllAlerts.add(0, alert);
-
-                // Keep only the last MAX_ALERTS
-                while (mAllAlerts.size() > MAX_ALERTS) {
-                    mAllAlerts.remove(mAllAlerts.size() - 1);
-                }
-
-                applyFilters();
-            });
+            alert = parseAlert(message, System.currentTimeMillis());
         } catch (JSONException e) {
             Log.e(LOG_TAG, "Failed to parse alert: " + e.getMessage());
+            return;
+        }
+        mPendingAlerts.add(alert);
+        if (mFlushScheduled.compareAndSet(false, true)) {
+            // Choreographer is per looper; hop to the main thread to reach its instance.
+            mMainHandler.post(() -> Choreographer.getInstance().postFrameCallback(mFlushFrame));
+        }
+    }
+
+    /** Safe from any thread. A timestamp that does not parse becomes nowMs. */
+    @NonNull
+    static LiveAlertItem parseAlert(@NonNull String message, long nowMs) throws JSONException {
+        JSONObject json = new JSONObject(message);
+        long timestampMs = parseTimestampMs(json.optString("timestamp", ""), nowMs);
+        return new LiveAlertItem(
+                json.optString("id", ""),
+                json.optString("type", ""),
+                json.optString("h3_location", ""),
+                json.optString("severity", SEVERITY_LOW),
+                json.optString("description", ""),
+                new Date(timestampMs),
+                TIME_LABEL_FORMAT.format(Instant.ofEpochMilli(timestampMs).atZone(ZoneId.systemDefault()))
+        );
+    }
+
+    /** ISO 8601 with an offset, or without one read as UTC; extra precision without an offset is ignored. */
+    static long parseTimestampMs(@Nullable String text, long fallbackMs) {
+        if (TextUtils.isEmpty(text)) return fallbackMs;
+        try {
+            return OffsetDateTime.parse(text, DateTimeFormatter.ISO_OFFSET_DATE_TIME).toInstant().toEpochMilli();
+        } catch (DateTimeParseException ignored) {
+            // No offset; fall through.
+        }
+        try {
+            String local = text.length() > ISO_LOCAL_LENGTH ? text.substring(0, ISO_LOCAL_LENGTH) : text;
+            return LocalDateTime.parse(local, DateTimeFormatter.ISO_LOCAL_DATE_TIME)
+                    .toInstant(ZoneOffset.UTC).toEpochMilli();
+        } catch (DateTimeParseException e) {
+            return fallbackMs;
         }
     }
 
@@ -557,15 +597,18 @@ public class LiveAlertFeedActivity extends AppCompatActivity {
         final String severity;
         final String description;
         final Date timestamp;
+        /** HH:mm:ss in local time, formatted when parsed rather than on every bind. */
+        final String timeLabel;
 
         LiveAlertItem(String id, String type, String h3Location,
-                      String severity, String description, Date timestamp) {
+                      String severity, String description, Date timestamp, String timeLabel) {
             this.id = id;
             this.type = type;
             this.h3Location = h3Location;
             this.severity = severity;
             this.description = description;
             this.timestamp = timestamp != null ? timestamp : new Date();
+            this.timeLabel = timeLabel;
         }
 
         /** Returns display name for alert type (matching iOS displayName) */
@@ -619,12 +662,10 @@ public class LiveAlertFeedActivity extends AppCompatActivity {
 
     static class AlertFeedAdapter extends RecyclerView.Adapter<AlertFeedAdapter.ViewHolder> {
 
-        private final List<LiveAlertItem> alerts;
-        private final SimpleDateFormat timeFormat;
+        private final LiveAlertBuffer alerts;
 
-        AlertFeedAdapter(List<LiveAlertItem> alerts, SimpleDateFormat timeFormat) {
+        AlertFeedAdapter(LiveAlertBuffer alerts) {
             this.alerts = alerts;
-            this.timeFormat = timeFormat;
         }
 
         @NonNull
@@ -765,7 +806,7 @@ public class LiveAlertFeedActivity extends AppCompatActivity {
             holder.descText.setText(alert.description);
 
             // Timestamp
-            holder.timeText.setText(timeFormat.format(alert.timestamp));
+            holder.timeText.setText(alert.timeLabel);
         }
 
         @Override
@@ -3,8 +3,10 @@ package ai.clawphones.agent.chat;
 import android.content.ContentValues;
 import android.content.Context;
 import android.database.Cursor;
+import android.database.SQLException;
 import android.database.sqlite.SQLiteDatabase;
 import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
 import android.text.TextUtils;
 
 import androidx.annotation.NonNull;
@@ -15,6 +17,8 @@ import java.util.List;
 
 /**
  * Local queue for user messages that could not be sent immediately.
+ *
+ * Mutations are synchronized; reads are not and use WAL reader connections.
  */
 final class MessageQueue {
 
@@ -29,20 +33,22 @@ final class MessageQueue {
         final long createdAt;
         final String status;
         final int retryCount;
+        final long nextAttemptAt;
 
         PendingMessage(long id, String message, String conversationId,
-                       long createdAt, String status, int retryCount) {
+                       long createdAt, String status, int retryCount, long nextAttemptAt) {
             this.id = id;
             this.message = message;
             this.conversationId = conversationId;
             this.createdAt = createdAt;
             this.status = status;
             this.retryCount = retryCount;
+            this.nextAttemptAt = nextAttemptAt;
         }
     }
 
     private static final String DB_NAME = "clawphones_chat.db";
-    private static final int DB_VERSION = 1;
+    private static final int DB_VERSION = 2;
 
     private static final String TABLE_PENDING = "pending_messages";
     private static final String COL_ID = "id";
@@ -51,11 +57,21 @@ final class MessageQueue {
     private static final String COL_CREATED_AT = "created_at";
     private static final String COL_STATUS = "status";
     private static final String COL_RETRY_COUNT = "retry_count";
+    private static final String COL_NEXT_ATTEMPT_AT = "next_attempt_at";
 
     private final SQLiteOpenHelper mHelper;
+    /** The enqueue insert, compiled on first use and reused after; guarded by this. */
+    @Nullable
+    private SQLiteStatement mInsert;
 
     MessageQueue(@NonNull Context context) {
         mHelper = new SQLiteOpenHelper(context.getApplicationContext(), DB_NAME, null, DB_VERSION) {
+            @Override
+            public void onConfigure(SQLiteDatabase db) {
+                super.onConfigure(db);
+                SqliteTuning.configure(db);
+            }
+
             @Override
             public void onCreate(SQLiteDatabase db) {
                 db.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE_PENDING + " ("
@@ -64,30 +80,34 @@ final class MessageQueue {
                     + COL_CONVERSATION_ID + " TEXT NOT NULL, "
                     + COL_CREATED_AT + " INTEGER NOT NULL, "
                     + COL_STATUS + " TEXT NOT NULL, "
-                    + COL_RETRY_COUNT + " INTEGER NOT NULL DEFAULT 0"
+                    + COL_RETRY_COUNT + " INTEGER NOT NULL DEFAULT 0, "
+                    + COL_NEXT_ATTEMPT_AT + " INTEGER NOT NULL DEFAULT 0"
                     + ")");
                 db.execSQL("CREATE INDEX IF NOT EXISTS idx_pending_status_created "
                     + "ON " + TABLE_PENDING + "(" + COL_STATUS + ", " + COL_CREATED_AT + ")");
+                createConversationIndex(db);
             }
 
             @Override
             public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
                 if (oldVersion < 1) {
                     onCreate(db);
+                    return;
+                }
+                if (oldVersion < 2) {
+                    db.execSQL("ALTER TABLE " + TABLE_PENDING + " ADD COLUMN "
+                        + COL_NEXT_ATTEMPT_AT + " INTEGER NOT NULL DEFAULT 0");
+                    createConversationIndex(db);
                 }
             }
         };
     }
 
     synchronized long enqueue(@NonNull String message, @Nullable String conversationId) {
-        SQLiteDatabase db = mHelper.getWritableDatabase();
-        ContentValues values = new ContentValues();
-        values.put(COL_MESSAGE, message);
-        values.put(COL_CONVERSATION_ID, normalizeConversationId(conversationId));
-        values.put(COL_CREATED_AT, System.currentTimeMillis());
-        values.put(COL_STATUS, STATUS_PENDING);
-        values.put(COL_RETRY_COUNT, 0);
-        return db.insertOrThrow(TABLE_PENDING, null, values);
+        if (mInsert == null) {
+            mInsert = compileInsert(mHelper.getWritableDatabase());
+        }
+        return bindAndInsert(mInsert, message, normalizeConversationId(conversationId), System.currentTimeMillis());
     }
 
     synchronized void assignConversationIdForEmpty(@NonNull String conversationId) {
@@ -123,38 +143,40 @@ final class MessageQueue {
         updateStatus(id, STATUS_FAILED);
     }
 
+    synchronized void markFailed(long id, int retryCount) {
+        SQLiteDatabase db = mHelper.getWritableDatabase();
+        ContentValues values = new ContentValues();
+        values.put(COL_STATUS, STATUS_FAILED);
+        values.put(COL_RETRY_COUNT, Math.max(0, retryCount));
+        values.put(COL_NEXT_ATTEMPT_AT, 0L);
+        db.update(TABLE_PENDING, values, COL_ID + " = ?", new String[]{String.valueOf(id)});
+    }
+
     synchronized void resetForManualRetry(long id) {
         SQLiteDatabase db = mHelper.getWritableDatabase();
         ContentValues values = new ContentValues();
         values.put(COL_STATUS, STATUS_PENDING);
         values.put(COL_RETRY_COUNT, 0);
+        values.put(COL_NEXT_ATTEMPT_AT, 0L);
         db.update(TABLE_PENDING, values, COL_ID + " = ?", new String[]{String.valueOf(id)});
     }
 
-    synchronized int incrementRetryCount(long id) {
+    /** Puts a message back to pending with its new retry count and the earliest time to retry. */
+    synchronized void scheduleRetry(long id, int retryCount, long nextAttemptAt) {
         SQLiteDatabase db = mHelper.getWritableDatabase();
-        db.execSQL("UPDATE " + TABLE_PENDING + " SET "
-            + COL_RETRY_COUNT + " = " + COL_RETRY_COUNT + " + 1 WHERE " + COL_ID + " = ?",
-            new Object[]{id});
+        ContentValues values = new ContentValues();
+        values.put(COL_STATUS, STATUS_PENDING);
+        values.put(COL_RETRY_COUNT, Math.max(0, retryCount));
+        values.put(COL_NEXT_ATTEMPT_AT, Math.max(0L, nextAttemptAt));
+        db.update(TABLE_PENDING, values, COL_ID + " = ?", new String[]{String.valueOf(id)});
+    }
 
-        Cursor c = null;
-        try {
-            c = db.query(
-                TABLE_PENDING,
-                new String[]{COL_RETRY_COUNT},
-                COL_ID + " = ?",
-                new String[]{String.valueOf(id)},
-                null,
-                null,
-                null
-            );
-            if (c.moveToFirst()) {
-                return c.getInt(0);
-            }
-            return 0;
-        } finally {
-            if (c != null) c.close();
-        }
+    /** Rows left in "sending" by a killed process go back to pending. */
+    synchronized void resetInterruptedSends() {
+        SQLiteDatabase db = mHelper.getWritableDatabase();
+        ContentValues values = new ContentValues();
+        values.put(COL_STATUS, STATUS_PENDING);
+        db.update(TABLE_PENDING, values, COL_STATUS + " = ?", new String[]{STATUS_SENDING});
     }
 
     synchronized void remove(long id) {
@@ -168,7 +190,7 @@ final class MessageQueue {
     }
 
     @Nullable
-    synchronized PendingMessage getNextPendingToSend() {
+    PendingMessage getNextPendingToSend() {
         List<PendingMessage> list = queryPending(
             COL_STATUS + " IN (?, ?)",
             new String[]{STATUS_PENDING, STATUS_SENDING},
@@ -178,7 +200,7 @@ final class MessageQueue {
     }
 
     @Nullable
-    synchronized PendingMessage getNextPendingToSendForConversation(@Nullable String conversationId) {
+    PendingMessage getNextPendingToSendForConversation(@Nullable String conversationId) {
         String normalized = normalizeConversationId(conversationId);
         if (TextUtils.isEmpty(normalized)) {
             List<PendingMessage> list = queryPending(
@@ -198,7 +220,47 @@ final class MessageQueue {
         return list.isEmpty() ? null : list.get(0);
     }
 
-    synchronized List<PendingMessage> listQueuedForConversation(@Nullable String conversationId) {
+    /**
+     * Oldest unsent message of every conversation that has one. Only the head of a conversation
+     * may be sent, which keeps per-conversation order even while the head is backing off.
+     */
+    List<PendingMessage> listConversationHeads() {
+        return queryPending(
+            COL_CONVERSATION_ID + " != ? AND " + COL_ID + " IN ("
+                + "SELECT MIN(" + COL_ID + ") FROM " + TABLE_PENDING
+                + " WHERE " + COL_STATUS + " IN (?, ?) GROUP BY " + COL_CONVERSATION_ID
+                + ")",
+            new String[]{"", STATUS_PENDING, STATUS_SENDING},
+            COL_ID + " ASC"
+        );
+    }
+
+    @Nullable
+    PendingMessage getHeadForConversation(@NonNull String conversationId) {
+        List<PendingMessage> list = queryPending(
+            COL_CONVERSATION_ID + " = ? AND " + COL_STATUS + " IN (?, ?)",
+            new String[]{normalizeConversationId(conversationId), STATUS_PENDING, STATUS_SENDING},
+            COL_ID + " ASC LIMIT 1"
+        );
+        return list.isEmpty() ? null : list.get(0);
+    }
+
+    boolean hasUnsentForConversation(@Nullable String conversationId) {
+        SQLiteDatabase db = mHelper.getReadableDatabase();
+        Cursor c = null;
+        try {
+            c = db.rawQuery(
+                "SELECT 1 FROM " + TABLE_PENDING + " WHERE " + COL_CONVERSATION_ID + " = ? AND "
+                    + COL_STATUS + " IN (?, ?) LIMIT 1",
+                new String[]{normalizeConversationId(conversationId), STATUS_PENDING, STATUS_SENDING}
+            );
+            return c.moveToFirst();
+        } finally {
+            if (c != null) c.close();
+        }
+    }
+
+    List<PendingMessage> listQueuedForConversation(@Nullable String conversationId) {
         String normalized = normalizeConversationId(conversationId);
         return queryPending(
             COL_CONVERSATION_ID + " = ? AND " + COL_STATUS + " IN (?, ?, ?)",
@@ -207,7 +269,7 @@ final class MessageQueue {
         );
     }
 
-    synchronized List<PendingMessage> listQueuedWithoutConversation() {
+    List<PendingMessage> listQueuedWithoutConversation() {
         return queryPending(
             COL_CONVERSATION_ID + " = ? AND " + COL_STATUS + " IN (?, ?, ?)",
             new String[]{"", STATUS_PENDING, STATUS_SENDING, STATUS_FAILED},
@@ -222,7 +284,8 @@ final class MessageQueue {
         try {
             c = db.query(
                 TABLE_PENDING,
-                new String[]{COL_ID, COL_MESSAGE, COL_CONVERSATION_ID, COL_CREATED_AT, COL_STATUS, COL_RETRY_COUNT},
+                new String[]{COL_ID, COL_MESSAGE, COL_CONVERSATION_ID, COL_CREATED_AT, COL_STATUS,
+                    COL_RETRY_COUNT, COL_NEXT_ATTEMPT_AT},
                 selection,
                 args,
                 null,
@@ -236,7 +299,8 @@ final class MessageQueue {
                     c.getString(2),
                     c.getLong(3),
                     c.getString(4),
-                    c.getInt(5)
+                    c.getInt(5),
+                    c.getLong(6)
                 ));
             }
             return out;
@@ -245,6 +309,32 @@ final class MessageQueue {
         }
     }
 
+    private static void createConversationIndex(@NonNull SQLiteDatabase db) {
+        db.execSQL("CREATE INDEX IF NOT EXISTS idx_pending_conversation_id "
+            + "ON " + TABLE_PENDING + "(" + COL_CONVERSATION_ID + ", " + COL_ID + ")");
+    }
+
+    private static SQLiteStatement compileInsert(@NonNull SQLiteDatabase db) {
+        return db.compileStatement("INSERT INTO " + TABLE_PENDING + " ("
+            + COL_MESSAGE + ", " + COL_CONVERSATION_ID + ", " + COL_CREATED_AT + ", "
+            + COL_STATUS + ", " + COL_RETRY_COUNT
+            + ") VALUES (?, ?, ?, ?, 0)");
+    }
+
+    private static long bindAndInsert(@NonNull SQLiteStatement insert, @NonNull String message,
+                                      @NonNull String conversationId, long createdAt) {
+        // Every parameter is rebound, so nothing from the previous insert carries over.
+        insert.bindString(1, message);
+        insert.bindString(2, conversationId);
+        insert.bindLong(3, createdAt);
+        insert.bindString(4, STATUS_PENDING);
+        long id = insert.executeInsert();
+        if (id == -1L) {
+            throw new SQLException("failed to enqueue pending message");
+        }
+        return id;
+    }
+
     private void updateStatus(long id, @NonNull String status) {
         SQLiteDatabase db = mHelper.getWritableDatabase();
         ContentValues values = new ContentValues();
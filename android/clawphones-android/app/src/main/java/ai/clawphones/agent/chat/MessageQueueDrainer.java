@@ -0,0 +1,451 @@
+package ai.clawphones.agent.chat;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.net.Network;
+import android.net.NetworkCapabilities;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.termux.shared.logger.Logger;
+
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArraySet;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process-scoped sender for {@link MessageQueue}.
+ *
+ * Each conversation is drained by at most one lane at a time, oldest message first, so replies
+ * arrive in the order messages were typed. Different conversations drain in parallel. Failed sends
+ * back off exponentially with jitter; the retry count and the next attempt time are stored with
+ * the message so a restarted process resumes the same schedule.
+ */
+public final class MessageQueueDrainer {
+
+    private static final String LOG_TAG = "MessageQueueDrainer";
+
+    static final int MAX_PARALLEL_CONVERSATIONS = 3;
+    static final int MAX_ATTEMPTS = 5;
+    static final long BACKOFF_BASE_MS = 2_000L;
+    static final long BACKOFF_MAX_MS = 5L * 60L * 1000L;
+
+    /** Sends one message and blocks until the full reply is available. */
+    interface Sender {
+        @NonNull
+        String send(@NonNull String conversationId, @NonNull String message) throws Exception;
+    }
+
+    interface Connectivity {
+        boolean isOnline();
+    }
+
+    /** Callbacks are delivered on the main thread. */
+    interface Listener {
+        void onSending(@NonNull MessageQueue.PendingMessage message);
+        void onSent(@NonNull MessageQueue.PendingMessage message, @NonNull String reply);
+        void onRetryScheduled(@NonNull MessageQueue.PendingMessage message, int retryCount);
+        void onFailed(@NonNull MessageQueue.PendingMessage message, int retryCount);
+        void onAuthExpired();
+    }
+
+    public static final class Stats {
+        public final long sent;
+        public final long retried;
+        public final long failed;
+        public final int inFlight;
+        public final long averageLatencyMs;
+        public final double messagesPerMinute;
+
+        Stats(long sent, long retried, long failed, int inFlight,
+              long averageLatencyMs, double messagesPerMinute) {
+            this.sent = sent;
+            this.retried = retried;
+            this.failed = failed;
+            this.inFlight = inFlight;
+            this.averageLatencyMs = averageLatencyMs;
+            this.messagesPerMinute = messagesPerMinute;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return "sent=" + sent + " retried=" + retried + " failed=" + failed
+                + " inFlight=" + inFlight + " avgLatencyMs=" + averageLatencyMs
+                + " ratePerMin=" + String.format(java.util.Locale.US, "%.1f", messagesPerMinute);
+        }
+    }
+
+    private static volatile MessageQueueDrainer sInstance;
+
+    private final MessageQueue mQueue;
+    private final Sender mSender;
+    private final Connectivity mConnectivity;
+    private final ScheduledExecutorService mScheduler = Executors.newSingleThreadScheduledExecutor();
+    private final ExecutorService mWorkers = Executors.newFixedThreadPool(MAX_PARALLEL_CONVERSATIONS);
+    private final Set<String> mActiveConversations = ConcurrentHashMap.newKeySet();
+    private final Set<Listener> mListeners = new CopyOnWriteArraySet<>();
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private final AtomicBoolean mDrainQueued = new AtomicBoolean(false);
+    private final Random mRandom = new Random();
+
+    private final AtomicLong mSent = new AtomicLong();
+    private final AtomicLong mRetried = new AtomicLong();
+    private final AtomicLong mFailed = new AtomicLong();
+    private final AtomicLong mLatencyTotalMs = new AtomicLong();
+    private final AtomicLong mBurstSent = new AtomicLong();
+    private volatile long mBurstStartedAt = 0L;
+    private volatile long mBurstEndedAt = 0L;
+    private volatile boolean mAuthPaused = false;
+
+    // Only touched on the scheduler thread.
+    @Nullable private ScheduledFuture<?> mWakeFuture;
+    private long mWakeAt = Long.MAX_VALUE;
+
+    @Nullable private ConnectivityManager mConnectivityManager;
+    @Nullable private ConnectivityManager.NetworkCallback mNetworkCallback;
+
+    private MessageQueueDrainer(@NonNull Context context) {
+        this(new MessageQueue(context), new ApiSender(context.getApplicationContext()),
+            new SystemConnectivity(context.getApplicationContext()));
+        registerNetworkCallback(context.getApplicationContext());
+    }
+
+    MessageQueueDrainer(@NonNull MessageQueue queue, @NonNull Sender sender, @NonNull Connectivity connectivity) {
+        mQueue = queue;
+        mSender = sender;
+        mConnectivity = connectivity;
+        mScheduler.execute(this::resetInterruptedSendsSafe);
+    }
+
+    public static MessageQueueDrainer getInstance(@NonNull Context context) {
+        if (sInstance == null) {
+            synchronized (MessageQueueDrainer.class) {
+                if (sInstance == null) {
+                    sInstance = new MessageQueueDrainer(context);
+                }
+            }
+        }
+        return sInstance;
+    }
+
+    @NonNull
+    MessageQueue getQueue() {
+        return mQueue;
+    }
+
+    void addListener(@NonNull Listener listener) {
+        mListeners.add(listener);
+    }
+
+    void removeListener(@NonNull Listener listener) {
+        mListeners.remove(listener);
+    }
+
+    /** Schedules a drain pass. Calls made while one is already queued are coalesced. */
+    public void requestDrain() {
+        if (!mDrainQueued.compareAndSet(false, true)) return;
+        try {
+            mScheduler.execute(() -> {
+                mDrainQueued.set(false);
+                drainSafe();
+            });
+        } catch (Exception e) {
+            mDrainQueued.set(false);
+            Logger.logWarn(LOG_TAG, "Drain request rejected: " + e.getMessage());
+        }
+    }
+
+    /** Clears the pause set by a 401 once the user has signed in again. */
+    public void resumeAfterAuth() {
+        mAuthPaused = false;
+        requestDrain();
+    }
+
+    @NonNull
+    public Stats getStats() {
+        long sent = mSent.get();
+        long burstSent = mBurstSent.get();
+        long start = mBurstStartedAt;
+        long end = mBurstEndedAt > start ? mBurstEndedAt : SystemClock.elapsedRealtime();
+        double perMinute = 0d;
+        if (start > 0L && end > start) {
+            perMinute = burstSent * 60_000d / (end - start);
+        }
+        return new Stats(
+            sent,
+            mRetried.get(),
+            mFailed.get(),
+            mActiveConversations.size(),
+            sent == 0L ? 0L : mLatencyTotalMs.get() / sent,
+            perMinute
+        );
+    }
+
+    void shutdown() {
+        unregisterNetworkCallback();
+        mScheduler.shutdownNow();
+        mWorkers.shutdownNow();
+    }
+
+    /** Equal-jitter exponential backoff: half the capped delay is fixed, the other half random. */
+    static long backoffDelayMs(int retryCount, @NonNull Random random) {
+        int exponent = Math.max(0, Math.min(retryCount - 1, 20));
+        long delay = Math.min(BACKOFF_MAX_MS, BACKOFF_BASE_MS << exponent);
+        long half = delay / 2L;
+        return half + (long) (random.nextDouble() * (delay - half));
+    }
+
+    private void resetInterruptedSendsSafe() {
+        try {
+            mQueue.resetInterruptedSends();
+        } catch (Exception e) {
+            Logger.logWarn(LOG_TAG, "Failed to reset interrupted sends: " + e.getMessage());
+        }
+    }
+
+    private void drainSafe() {
+        try {
+            drain();
+        } catch (Exception e) {
+            Logger.logError(LOG_TAG, "Drain pass failed: " + e.getMessage());
+        }
+    }
+
+    private void drain() {
+        if (mAuthPaused || !mConnectivity.isOnline()) {
+            finishBurstIfIdle();
+            return;
+        }
+
+        List<MessageQueue.PendingMessage> heads = mQueue.listConversationHeads();
+        long now = System.currentTimeMillis();
+        long nextWake = Long.MAX_VALUE;
+        for (MessageQueue.PendingMessage head : heads) {
+            if (mActiveConversations.contains(head.conversationId)) continue;
+            if (head.nextAttemptAt > now) {
+                nextWake = Math.min(nextWake, head.nextAttemptAt);
+                continue;
+            }
+            if (mActiveConversations.size() >= MAX_PARALLEL_CONVERSATIONS) break;
+            startLane(head.conversationId);
+        }
+
+        if (nextWake != Long.MAX_VALUE) {
+            scheduleWake(nextWake, now);
+        }
+        finishBurstIfIdle();
+    }
+
+    private void startLane(@NonNull String conversationId) {
+        if (!mActiveConversations.add(conversationId)) return;
+        if (mBurstStartedAt == 0L || mBurstEndedAt >= mBurstStartedAt) {
+            mBurstStartedAt = SystemClock.elapsedRealtime();
+            mBurstEndedAt = 0L;
+            mBurstSent.set(0L);
+        }
+        try {
+            mWorkers.execute(() -> {
+                try {
+                    runLane(conversationId);
+                } catch (Exception e) {
+                    Logger.logError(LOG_TAG, "Drain lane failed: " + e.getMessage());
+                } finally {
+                    mActiveConversations.remove(conversationId);
+                    requestDrain();
+                }
+            });
+        } catch (Exception e) {
+            mActiveConversations.remove(conversationId);
+        }
+    }
+
+    /** Sends the conversation's messages back to back until it is empty or its head backs off. */
+    private void runLane(@NonNull String conversationId) {
+        while (!mAuthPaused && mConnectivity.isOnline()) {
+            MessageQueue.PendingMessage head = mQueue.getHeadForConversation(conversationId);
+            if (head == null || head.nextAttemptAt > System.currentTimeMillis()) return;
+
+            mQueue.markSending(head.id);
+            notifyListeners(l -> l.onSending(head));
+            long startedAt = SystemClock.elapsedRealtime();
+            String reply;
+            try {
+                reply = mSender.send(conversationId, head.message);
+            } catch (Exception e) {
+                if (!handleSendFailure(head, e)) return;
+                continue;
+            }
+
+            mQueue.remove(head.id);
+            mSent.incrementAndGet();
+            mBurstSent.incrementAndGet();
+            mLatencyTotalMs.addAndGet(SystemClock.elapsedRealtime() - startedAt);
+            final String finalReply = reply;
+            notifyListeners(l -> l.onSent(head, finalReply));
+        }
+    }
+
+    /** Returns true when the lane may move on to the next message of the conversation. */
+    private boolean handleSendFailure(@NonNull MessageQueue.PendingMessage head, @NonNull Exception error) {
+        int status = error instanceof ClawPhonesAPI.ApiException
+            ? ((ClawPhonesAPI.ApiException) error).statusCode
+            : 0;
+        if (status == 401) {
+            mAuthPaused = true;
+            mQueue.markPending(head.id);
+            notifyListeners(Listener::onAuthExpired);
+            return false;
+        }
+
+        int retryCount = head.retryCount + 1;
+        boolean permanent = status >= 400 && status < 500 && status != 408 && status != 429;
+        if (permanent || retryCount >= MAX_ATTEMPTS) {
+            mQueue.markFailed(head.id, retryCount);
+            mFailed.incrementAndGet();
+            Logger.logWarn(LOG_TAG, "Giving up on queued message " + head.id + ": " + error.getMessage());
+            notifyListeners(l -> l.onFailed(head, retryCount));
+            return true;
+        }
+
+        long nextAttemptAt = System.currentTimeMillis() + backoffDelayMs(retryCount, mRandom);
+        mQueue.scheduleRetry(head.id, retryCount, nextAttemptAt);
+        mRetried.incrementAndGet();
+        notifyListeners(l -> l.onRetryScheduled(head, retryCount));
+        return false;
+    }
+
+    private void scheduleWake(long wakeAt, long now) {
+        if (mWakeFuture != null && !mWakeFuture.isDone() && mWakeAt <= wakeAt) return;
+        if (mWakeFuture != null) mWakeFuture.cancel(false);
+        mWakeAt = wakeAt;
+        mWakeFuture = mScheduler.schedule(this::requestDrain, Math.max(0L, wakeAt - now), TimeUnit.MILLISECONDS);
+    }
+
+    private void finishBurstIfIdle() {
+        if (!mActiveConversations.isEmpty()) return;
+        if (mBurstStartedAt == 0L || mBurstEndedAt >= mBurstStartedAt) return;
+        mBurstEndedAt = SystemClock.elapsedRealtime();
+        Logger.logInfo(LOG_TAG, "Drain finished: " + getStats());
+    }
+
+    private interface ListenerCall {
+        void call(@NonNull Listener listener);
+    }
+
+    private void notifyListeners(@NonNull ListenerCall call) {
+        if (mListeners.isEmpty()) return;
+        mMainHandler.post(() -> {
+            for (Listener listener : mListeners) {
+                try {
+                    call.call(listener);
+                } catch (Exception e) {
+                    Logger.logWarn(LOG_TAG, "Drain listener failed: " + e.getMessage());
+                }
+            }
+        });
+    }
+
+    private void registerNetworkCallback(@NonNull Context appContext) {
+        mConnectivityManager = (ConnectivityManager) appContext.getSystemService(Context.CONNECTIVITY_SERVICE);
+        if (mConnectivityManager == null) return;
+
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
+            mNetworkCallback = new ConnectivityManager.NetworkCallback() {
+                @Override
+                public void onAvailable(@NonNull Network network) {
+                    requestDrain();
+                }
+            };
+
+            try {
+                mConnectivityManager.registerDefaultNetworkCallback(mNetworkCallback);
+            } catch (Exception e) {
+                mNetworkCallback = null;
+                Logger.logWarn(LOG_TAG, "Failed to register network callback: " + e.getMessage());
+            }
+        }
+    }
+
+    private void unregisterNetworkCallback() {
+        if (mConnectivityManager == null || mNetworkCallback == null) return;
+        try {
+            mConnectivityManager.unregisterNetworkCallback(mNetworkCallback);
+        } catch (Exception ignored) {
+        }
+        mNetworkCallback = null;
+    }
+
+    private static final class ApiSender implements Sender {
+        private final Context mAppContext;
+
+        ApiSender(@NonNull Context appContext) {
+            mAppContext = appContext;
+        }
+
+        @NonNull
+        @Override
+        public String send(@NonNull String conversationId, @NonNull String message) throws Exception {
+            final String[] reply = new String[1];
+            final StringBuilder accumulated = new StringBuilder();
+            final Exception[] failure = new Exception[1];
+            ClawPhonesAPI.chatStream(mAppContext, conversationId, message, null,
+                new ClawPhonesAPI.StreamCallback() {
+                    @Override
+                    public void onDelta(String delta) {
+                        if (delta != null) accumulated.append(delta);
+                    }
+
+                    @Override
+                    public void onComplete(String fullContent, String messageId) {
+                        reply[0] = fullContent;
+                    }
+
+                    @Override
+                    public void onError(Exception error) {
+                        failure[0] = error;
+                    }
+                });
+            if (failure[0] != null) throw failure[0];
+            if (reply[0] == null || reply[0].isEmpty()) return accumulated.toString();
+            return reply[0];
+        }
+    }
+
+    private static final class SystemConnectivity implements Connectivity {
+        private final Context mAppContext;
+
+        SystemConnectivity(@NonNull Context appContext) {
+            mAppContext = appContext;
+        }
+
+        @Override
+        public boolean isOnline() {
+            try {
+                ConnectivityManager cm =
+                    (ConnectivityManager) mAppContext.getSystemService(Context.CONNECTIVITY_SERVICE);
+                if (cm == null) return true;
+                Network network = cm.getActiveNetwork();
+                if (network == null) return false;
+                NetworkCapabilities caps = cm.getNetworkCapabilities(network);
+                return caps != null && caps.hasCapability(NetworkCapabilities.NET_CAPABILITY_INTERNET);
+            } catch (Exception ignored) {
+                return true;
+            }
+        }
+    }
+}
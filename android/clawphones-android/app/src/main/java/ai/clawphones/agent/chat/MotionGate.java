@@ -0,0 +1,171 @@
+package ai.clawphones.agent.chat;
+
+import android.graphics.Bitmap;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Cheap motion test that decides which frames are worth running the detector on and uploading.
+ *
+ * Each frame is reduced to a GRID_WIDTH x GRID_HEIGHT luma grid by averaging a few sampled rows
+ * per cell, and compared against a running-average background. The score is the fraction of
+ * cells that differ from the background by more than PIXEL_DELTA once the mean brightness shift
+ * is taken out, so the lights coming on or auto-exposure settling do not count as motion. The
+ * background keeps adapting with BACKGROUND_ALPHA, so a parked car stops scoring after a while.
+ *
+ * Not thread-safe; the frame pipeline calls it from its own thread.
+ */
+final class MotionGate {
+
+    static final int GRID_WIDTH = 64;
+    static final int GRID_HEIGHT = 48;
+    static final int PIXEL_DELTA = 24;
+    static final float BACKGROUND_ALPHA = 0.05f;
+    private static final int ROWS_PER_CELL = 2;
+
+    static final float THRESHOLD_LOW = 0.06f;
+    static final float THRESHOLD_MEDIUM = 0.02f;
+    static final float THRESHOLD_HIGH = 0.005f;
+
+    private final float threshold;
+    @Nullable private float[] background;
+    @Nullable private int[] luma;
+    @Nullable private int[] counts;
+    @Nullable private int[] row;
+    @Nullable private int[] columnCell;
+    @Nullable private byte[] planeRow;
+    private int frameWidth;
+    private int frameHeight;
+    private int gridWidth;
+    private int gridHeight;
+
+    MotionGate(float threshold) {
+        this.threshold = threshold;
+    }
+
+    /** Maps PREF_MOTION_SENSITIVITY to the fraction of changed cells that counts as motion. */
+    static float thresholdFor(@Nullable String sensitivity) {
+        if (sensitivity == null) return THRESHOLD_MEDIUM;
+        String normalized = sensitivity.trim().toLowerCase(Locale.US);
+        if ("low".equals(normalized)) return THRESHOLD_LOW;
+        if ("high".equals(normalized)) return THRESHOLD_HIGH;
+        return THRESHOLD_MEDIUM;
+    }
+
+    float threshold() {
+        return threshold;
+    }
+
+    boolean passes(float score) {
+        return score >= threshold;
+    }
+
+    /** Scores the frame against the background and folds it in. The first frame scores 0. */
+    float score(@NonNull Bitmap frame) {
+        return score(downsampleLuma(frame));
+    }
+
+    float score(@NonNull int[] grid) {
+        if (background == null || background.length != grid.length) {
+            background = new float[grid.length];
+            for (int i = 0; i < grid.length; i++) background[i] = grid[i];
+            return 0f;
+        }
+
+        double shift = 0d;
+        for (int i = 0; i < grid.length; i++) {
+            shift += grid[i] - background[i];
+        }
+        shift /= grid.length;
+
+        int changed = 0;
+        for (int i = 0; i < grid.length; i++) {
+            if (Math.abs(grid[i] - background[i] - shift) > PIXEL_DELTA) changed++;
+            background[i] += BACKGROUND_ALPHA * (grid[i] - background[i]);
+        }
+        return changed / (float) grid.length;
+    }
+
+    /** Forgets the background; the next frame starts a new one. */
+    void reset() {
+        background = null;
+    }
+
+    /**
+     * Averages the luma of sampled rows into the grid. The returned array is reused by the next
+     * call.
+     */
+    @NonNull
+    int[] downsampleLuma(@NonNull Bitmap frame) {
+        int width = frame.getWidth();
+        int height = frame.getHeight();
+        int rowStep = beginGrid(width, height);
+        if (row == null || row.length != width) row = new int[width];
+        for (int y = rowStep / 2; y < height; y += rowStep) {
+            frame.getPixels(row, 0, width, 0, y, width, 1);
+            int base = (y * gridHeight / height) * gridWidth;
+            for (int x = 0; x < width; x++) {
+                int color = row[x];
+                int value = (77 * ((color >> 16) & 0xFF) + 150 * ((color >> 8) & 0xFF) + 29 * (color & 0xFF)) >> 8;
+                int cell = base + columnCell[x];
+                luma[cell] += value;
+                counts[cell]++;
+            }
+        }
+        return endGrid();
+    }
+
+    /**
+     * Same grid straight from a YUV image's Y plane, so a camera frame can be scored without
+     * converting it to ARGB first. Each sampled row is copied out of the buffer in one bulk get.
+     */
+    @NonNull
+    int[] downsampleLuma(@NonNull ByteBuffer plane, int rowStride, int pixelStride, int width, int height) {
+        int rowStep = beginGrid(width, height);
+        int rowBytes = (width - 1) * pixelStride + 1;
+        if (planeRow == null || planeRow.length < rowBytes) planeRow = new byte[rowBytes];
+        for (int y = rowStep / 2; y < height; y += rowStep) {
+            plane.position(y * rowStride);
+            plane.get(planeRow, 0, rowBytes);
+            int base = (y * gridHeight / height) * gridWidth;
+            for (int x = 0, i = 0; x < width; x++, i += pixelStride) {
+                int cell = base + columnCell[x];
+                luma[cell] += planeRow[i] & 0xFF;
+                counts[cell]++;
+            }
+        }
+        plane.rewind();
+        return endGrid();
+    }
+
+    /** Sizes and clears the grid for a width x height frame; returns the row sampling step. */
+    private int beginGrid(int width, int height) {
+        if (width != frameWidth || height != frameHeight) {
+            frameWidth = width;
+            frameHeight = height;
+            gridWidth = Math.min(GRID_WIDTH, width);
+            gridHeight = Math.min(GRID_HEIGHT, height);
+            luma = new int[gridWidth * gridHeight];
+            counts = new int[gridWidth * gridHeight];
+            columnCell = new int[width];
+            for (int x = 0; x < width; x++) columnCell[x] = x * gridWidth / width;
+            background = null;
+        }
+        Arrays.fill(luma, 0);
+        Arrays.fill(counts, 0);
+        return Math.max(1, height / (gridHeight * ROWS_PER_CELL));
+    }
+
+    @NonNull
+    private int[] endGrid() {
+        for (int i = 0; i < luma.length; i++) {
+            if (counts[i] > 0) luma[i] /= counts[i];
+        }
+        return luma;
+    }
+}
@@ -16,6 +16,8 @@ import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
 import android.graphics.Rect;
+import android.location.Location;
+import android.location.LocationManager;
 import android.net.ConnectivityManager;
 import android.net.Network;
 import android.net.NetworkCapabilities;
@@ -35,14 +37,18 @@ import androidx.core.content.ContextCompat;
 import com.termux.R;
 import com.termux.shared.logger.Logger;
 
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
 import java.util.Locale;
 import java.util.Random;
 
 /**
  * Foreground service backing ClawVision Node mode.
  *
- * Current implementation emits simulated frame/event stats and runtime state
- * so UI and control flow are fully wired while camera pipeline is integrated.
+ * With camera permission, frames come from the back camera through a {@link FramePipeline}:
+ * only frames that pass the motion gate reach the detector, alerts and the relay. Without it
+ * the service falls back to simulated frame/event stats so UI and control flow stay wired.
  */
 public class NodeModeService extends Service {
 
@@ -60,6 +66,8 @@ public class NodeModeService extends Service {
     public static final String EXTRA_FRAMES_CAPTURED = "extra_frames_captured";
     public static final String EXTRA_EVENTS_DETECTED = "extra_events_detected";
     public static final String EXTRA_UPTIME_MS = "extra_uptime_ms";
+    public static final String EXTRA_GATING_RATIO = "extra_gating_ratio";
+    public static final String EXTRA_PIPELINE_STATS = "extra_pipeline_stats";
 
     public static final int STATUS_GRAY = 0;
     public static final int STATUS_GREEN = 1;
@@ -93,6 +101,9 @@ public class NodeModeService extends Service {
     private static final String NOTIFICATION_CHANNEL_ID = "node_mode_service";
     private static final int NOTIFICATION_ID = 2101;
     private static final long TICK_INTERVAL_MS = 1000L;
+    private static final long DETECT_TIMEOUT_MS = 2000L;
+    /** How long to wait before trying the camera again once the frame pipeline has given up. */
+    private static final long CAMERA_RETRY_MS = 5 * 60 * 1000L;
 
     private final Handler mHandler = new Handler(Looper.getMainLooper());
     private final Random mRandom = new Random();
@@ -105,10 +116,15 @@ public class NodeModeService extends Service {
 
     private AlertManager mAlertManager;
     private VoiceResponder mVoiceResponder;
+    private RelayClient mRelayClient;
+    @Nullable private VisionDetector mVisionDetector;
+    @Nullable private FramePipeline mFramePipeline;
 
     private boolean mRunning = false;
     private long mStartedAtElapsedMs = 0L;
     private long mFramesCaptured = 0L;
+    private long mPipelineFramesBase = 0L;
+    private long mCameraRetryAtMs = 0L;
     private long mEventsDetected = 0L;
     private float mFrameAccumulator = 0f;
 
@@ -116,7 +132,19 @@ public class NodeModeService extends Service {
         @Override
         public void run() {
             if (!mRunning) return;
-            updateSyntheticStats();
+            if (mFramePipeline != null && !mFramePipeline.isRunning()) {
+                onFramePipelineEnded();
+            }
+            if (mFramePipeline != null) {
+                mFramesCaptured = mPipelineFramesBase + mFramePipeline.stats().frames;
+            } else if (mCameraRetryAtMs > 0L) {
+                if (SystemClock.elapsedRealtime() >= mCameraRetryAtMs) {
+                    mCameraRetryAtMs = 0L;
+                    startFramePipeline();
+                }
+            } else {
+                updateSyntheticStats();
+            }
             broadcastStatus();
             updateNotification();
             mHandler.postDelayed(this, TICK_INTERVAL_MS);
@@ -130,6 +158,7 @@ public class NodeModeService extends Service {
         ensureNotificationChannel();
         mAlertManager = new AlertManager(this);
         mVoiceResponder = new VoiceResponder(this);
+        mRelayClient = new RelayClient(this);
     }
 
     @Override
@@ -157,10 +186,15 @@ public class NodeModeService extends Service {
     public void onDestroy() {
         mHandler.removeCallbacksAndMessages(null);
         mRunning = false;
+        stopFramePipeline();
         if (mVoiceResponder != null) {
             mVoiceResponder.shutdown();
             mVoiceResponder = null;
         }
+        if (mRelayClient != null) {
+            mRelayClient.shutdown();
+            mRelayClient = null;
+        }
         broadcastStatus();
         super.onDestroy();
     }
@@ -180,11 +214,14 @@ public class NodeModeService extends Service {
         mRunning = true;
         mStartedAtElapsedMs = SystemClock.elapsedRealtime();
         mFramesCaptured = 0L;
+        mCameraRetryAtMs = 0L;
         mEventsDetected = 0L;
         mFrameAccumulator = 0f;
+        mRelayClient.getFrameController().setBounds(AdaptiveFrameController.Bounds.fromPreferences(getSettings()));
 
         Notification notification = buildNotification(getString(R.string.node_mode_notification_running));
         startForeground(NOTIFICATION_ID, notification);
+        startFramePipeline();
 
         mHandler.removeCallbacks(mTickRunnable);
         mHandler.post(mTickRunnable);
@@ -195,6 +232,8 @@ public class NodeModeService extends Service {
     private void stopNodeMode() {
         mRunning = false;
         mHandler.removeCallbacks(mTickRunnable);
+        mCameraRetryAtMs = 0L;
+        stopFramePipeline();
         if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.N) {
             stopForeground(STOP_FOREGROUND_REMOVE);
         } else {
@@ -205,10 +244,123 @@ public class NodeModeService extends Service {
         Logger.logInfo(LOG_TAG, "Node mode stopped");
     }
 
+    private void startFramePipeline() {
+        if (ContextCompat.checkSelfPermission(this, Manifest.permission.CAMERA)
+            != PackageManager.PERMISSION_GRANTED) {
+            Logger.logInfo(LOG_TAG, "No camera permission, using simulated frames");
+            return;
+        }
+
+        SharedPreferences prefs = getSettings();
+        MotionGate gate = new MotionGate(MotionGate.thresholdFor(
+            prefs.getString(PREF_MOTION_SENSITIVITY, DEFAULT_MOTION_SENSITIVITY)));
+        // Consecutive camera frames: let ML Kit and the tracker follow objects, so an alert fires
+        // when something appears or is reclassified rather than on every frame it is in.
+        mVisionDetector = new VisionDetector(VisionDetector.DEFAULT_CONFIDENCE_THRESHOLD, VisionDetector.Mode.STREAM);
+        mPipelineFramesBase = mFramesCaptured;
+        mFramePipeline = new FramePipeline(
+            () -> new CameraFrameSource(this),
+            gate,
+            new TrackingDetector(FramePipeline.blocking(mVisionDetector, DETECT_TIMEOUT_MS)),
+            new FramePipeline.Uploader() {
+                @Override
+                public void upload(@NonNull byte[] jpeg, @NonNull RelayClient.FramePriority priority)
+                    throws Exception {
+                    uploadMotionFrame(jpeg, priority);
+                }
+
+                @Override
+                public boolean ready() {
+                    return !uploadsPaused();
+                }
+            },
+            mRelayClient.getFrameController(),
+            this::onMotionFrame
+        );
+        mFramePipeline.start();
+    }
+
+    private void stopFramePipeline() {
+        if (mFramePipeline != null) {
+            Logger.logInfo(LOG_TAG, "Frame pipeline stopped: " + mFramePipeline.stats());
+            mFramePipeline.stop();
+            mFramePipeline = null;
+        }
+        if (mVisionDetector != null) {
+            mVisionDetector.close();
+            mVisionDetector = null;
+        }
+    }
+
+    /**
+     * The pipeline stopped by itself, which for the camera means it kept failing after its own
+     * restarts. Frees the camera and the detector, shows the camera as down and tries it again
+     * after CAMERA_RETRY_MS; no frames are counted meanwhile.
+     */
+    private void onFramePipelineEnded() {
+        Logger.logError(LOG_TAG, "Frame pipeline ended, retrying the camera in "
+            + (CAMERA_RETRY_MS / 1000L) + " s");
+        mFramesCaptured = mPipelineFramesBase + mFramePipeline.stats().frames;
+        stopFramePipeline();
+        mCameraRetryAtMs = SystemClock.elapsedRealtime() + CAMERA_RETRY_MS;
+    }
+
+    /** Pipeline thread: alerts need the frame, which is reused for the next capture once this returns. */
+    private void onMotionFrame(@NonNull Bitmap frame, @NonNull List<VisionDetector.Detection> detections) {
+        if (detections.isEmpty()) return;
+        AlertManager alertManager = mAlertManager;
+        for (VisionDetector.Detection detection : detections) {
+            if (alertManager != null) alertManager.processDetection(detection, frame);
+        }
+        mHandler.post(() -> {
+            if (!mRunning) return;
+            mEventsDetected += detections.size();
+            maybeSpeakForDetection(detections.get(0));
+        });
+    }
+
+    private void uploadMotionFrame(@NonNull byte[] jpeg, @NonNull RelayClient.FramePriority priority)
+        throws Exception {
+        Location location = lastKnownLocation();
+        if (location == null) {
+            throw new IOException("no location fix");
+        }
+        Double heading = location.hasBearing() ? (double) location.getBearing() : null;
+        mRelayClient.uploadFrame(jpeg, location.getLatitude(), location.getLongitude(), heading, priority);
+    }
+
+    @Nullable
+    private Location lastKnownLocation() {
+        boolean hasFine = ContextCompat.checkSelfPermission(this, Manifest.permission.ACCESS_FINE_LOCATION)
+            == PackageManager.PERMISSION_GRANTED;
+        boolean hasCoarse = ContextCompat.checkSelfPermission(this, Manifest.permission.ACCESS_COARSE_LOCATION)
+            == PackageManager.PERMISSION_GRANTED;
+        if (!hasFine && !hasCoarse) return null;
+        LocationManager locationManager = (LocationManager) getSystemService(LOCATION_SERVICE);
+        if (locationManager == null) return null;
+
+        Location best = null;
+        for (String provider : Arrays.asList(
+            LocationManager.GPS_PROVIDER,
+            LocationManager.NETWORK_PROVIDER,
+            LocationManager.PASSIVE_PROVIDER
+        )) {
+            try {
+                Location location = locationManager.getLastKnownLocation(provider);
+                if (location == null) continue;
+                if (best == null || location.getTime() > best.getTime()) {
+                    best = location;
+                }
+            } catch (SecurityException | IllegalArgumentException ignored) {
+            }
+        }
+        return best;
+    }
+
     private void updateSyntheticStats() {
         SharedPreferences prefs = getSettings();
-        float fps = parseFrameRate(prefs.getString(PREF_FRAME_RATE, DEFAULT_FRAME_RATE));
-        mFrameAccumulator += fps;
+        // The frame rate preference is the fastest allowed; the relay link decides the rest.
+        mFrameAccumulator += (float) TICK_INTERVAL_MS / mRelayClient.getFrameSettings().frameIntervalMs;
 
         long newFrames = (long) mFrameAccumulator;
         if (newFrames > 0) {
@@ -407,11 +559,17 @@ public class NodeModeService extends Service {
         statusIntent.putExtra(EXTRA_FRAMES_CAPTURED, mFramesCaptured);
         statusIntent.putExtra(EXTRA_EVENTS_DETECTED, mEventsDetected);
         statusIntent.putExtra(EXTRA_UPTIME_MS, getUptimeMs());
+        if (mFramePipeline != null) {
+            FramePipeline.Stats stats = mFramePipeline.stats();
+            statusIntent.putExtra(EXTRA_GATING_RATIO, (float) stats.gatingRatio());
+            statusIntent.putExtra(EXTRA_PIPELINE_STATS, stats.toString());
+        }
         sendBroadcast(statusIntent);
     }
 
     private int getCameraStatus() {
         if (!mRunning) return STATUS_GRAY;
+        if (mCameraRetryAtMs > 0L) return STATUS_RED;
         return ContextCompat.checkSelfPermission(this, Manifest.permission.CAMERA)
             == PackageManager.PERMISSION_GRANTED
             ? STATUS_GREEN
@@ -432,24 +590,22 @@ public class NodeModeService extends Service {
     private int getUploadStatus() {
         if (!mRunning) return STATUS_GRAY;
 
-        SharedPreferences prefs = getSettings();
-        String relayUrl = prefs.getString(PREF_RELAY_URL, DEFAULT_RELAY_URL);
-        boolean wifiOnly = prefs.getBoolean(PREF_WIFI_ONLY, DEFAULT_WIFI_ONLY);
-        int minBattery = prefs.getInt(PREF_MIN_BATTERY, DEFAULT_MIN_BATTERY);
-
+        String relayUrl = getSettings().getString(PREF_RELAY_URL, DEFAULT_RELAY_URL);
         if (TextUtils.isEmpty(relayUrl)) {
             return STATUS_RED;
         }
+        return uploadsPaused() ? STATUS_GRAY : STATUS_GREEN;
+    }
 
+    /** Wi-Fi only on another network, or the battery below the minimum: frames are not uploaded. */
+    private boolean uploadsPaused() {
+        SharedPreferences prefs = getSettings();
+        boolean wifiOnly = prefs.getBoolean(PREF_WIFI_ONLY, DEFAULT_WIFI_ONLY);
+        int minBattery = prefs.getInt(PREF_MIN_BATTERY, DEFAULT_MIN_BATTERY);
         if (wifiOnly && !isWifiConnected()) {
-            return STATUS_GRAY;
-        }
-
-        if (getBatteryPercent() < minBattery) {
-            return STATUS_GRAY;
+            return true;
         }
-
-        return STATUS_GREEN;
+        return getBatteryPercent() < minBattery;
     }
 
     private long getUptimeMs() {
@@ -461,12 +617,6 @@ public class NodeModeService extends Service {
         return getSharedPreferences(PREFS_NAME, MODE_PRIVATE);
     }
 
-    private float parseFrameRate(@Nullable String frameRate) {
-        if ("0.5".equals(frameRate)) return 0.5f;
-        if ("2".equals(frameRate)) return 2f;
-        return 1f;
-    }
-
     private float getEventProbability(@Nullable String sensitivity) {
         if (sensitivity == null) return 0.10f;
         String normalized = sensitivity.trim().toLowerCase(Locale.US);
@@ -0,0 +1,176 @@
+package ai.clawphones.agent.chat;
+
+import android.content.Context;
+import android.content.Intent;
+import android.media.AudioFormat;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.ParcelFileDescriptor;
+import android.speech.RecognitionListener;
+import android.speech.RecognizerIntent;
+import android.speech.SpeechRecognizer;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.RequiresApi;
+
+import com.termux.shared.logger.Logger;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link EdgeSpeechJob.Recognizer} on the platform's on-device recognizer, fed from a pipe
+ * instead of the microphone, so no audio leaves the device and no RECORD_AUDIO is needed.
+ *
+ * Audio sources for the recognizer arrived in Android 13. The recognizer lives on the main
+ * thread and is reused across utterances; calls are serialized.
+ */
+@RequiresApi(Build.VERSION_CODES.TIRAMISU)
+final class OnDeviceSpeechRecognizer implements EdgeSpeechJob.Recognizer {
+
+    private static final String LOG_TAG = "OnDeviceSpeechRecognizer";
+
+    private static final long RESULT_TIMEOUT_MS = 30_000L;
+    private static final int WRITE_CHUNK_SAMPLES = 4096;
+
+    private final Context context;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    /** Main thread only. */
+    @Nullable private SpeechRecognizer recognizer;
+
+    OnDeviceSpeechRecognizer(@NonNull Context context) {
+        this.context = context.getApplicationContext();
+    }
+
+    static boolean isSupported(@NonNull Context context) {
+        return SpeechRecognizer.isOnDeviceRecognitionAvailable(context);
+    }
+
+    @NonNull
+    @Override
+    public synchronized EdgeSpeechJob.Transcript recognize(@NonNull short[] pcm, int length, int sampleRate,
+                                                          @Nullable String language) throws IOException {
+        ParcelFileDescriptor[] pipe = ParcelFileDescriptor.createPipe();
+        Intent intent = new Intent(RecognizerIntent.ACTION_RECOGNIZE_SPEECH);
+        intent.putExtra(RecognizerIntent.EXTRA_LANGUAGE_MODEL, RecognizerIntent.LANGUAGE_MODEL_FREE_FORM);
+        if (language != null) intent.putExtra(RecognizerIntent.EXTRA_LANGUAGE, language);
+        intent.putExtra(RecognizerIntent.EXTRA_PREFER_OFFLINE, true);
+        intent.putExtra(RecognizerIntent.EXTRA_AUDIO_SOURCE, pipe[0]);
+        intent.putExtra(RecognizerIntent.EXTRA_AUDIO_SOURCE_ENCODING, AudioFormat.ENCODING_PCM_16BIT);
+        intent.putExtra(RecognizerIntent.EXTRA_AUDIO_SOURCE_CHANNEL_COUNT, 1);
+        intent.putExtra(RecognizerIntent.EXTRA_AUDIO_SOURCE_SAMPLING_RATE, sampleRate);
+
+        Listener listener = new Listener();
+        mainHandler.post(() -> {
+            try {
+                if (recognizer == null) recognizer = SpeechRecognizer.createOnDeviceSpeechRecognizer(context);
+                recognizer.setRecognitionListener(listener);
+                recognizer.startListening(intent);
+            } catch (RuntimeException e) {
+                listener.fail("Recognizer did not start: " + e.getMessage());
+            }
+        });
+
+        // A separate writer, so a recognizer that stops reading cannot block past the timeout.
+        Thread writer = new Thread(() -> writePcm(pipe[1], pcm, length), "edge-speech-audio");
+        writer.setDaemon(true);
+        writer.start();
+        try {
+            if (!listener.done.await(RESULT_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                mainHandler.post(() -> {
+                    if (recognizer != null) recognizer.cancel();
+                });
+                throw new IOException("Recognizer timed out");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted waiting for recognizer");
+        } finally {
+            closeQuietly(pipe[0]);
+            writer.interrupt();
+        }
+        if (listener.error != null) throw new IOException(listener.error);
+        return listener.transcript;
+    }
+
+    void close() {
+        mainHandler.post(() -> {
+            if (recognizer != null) {
+                recognizer.destroy();
+                recognizer = null;
+            }
+        });
+    }
+
+    private static void writePcm(@NonNull ParcelFileDescriptor fd, @NonNull short[] pcm, int length) {
+        byte[] bytes = new byte[WRITE_CHUNK_SAMPLES * 2];
+        try (OutputStream out = new ParcelFileDescriptor.AutoCloseOutputStream(fd)) {
+            for (int offset = 0; offset < length; offset += WRITE_CHUNK_SAMPLES) {
+                int n = Math.min(WRITE_CHUNK_SAMPLES, length - offset);
+                for (int i = 0; i < n; i++) {
+                    short sample = pcm[offset + i];
+                    bytes[2 * i] = (byte) sample;
+                    bytes[2 * i + 1] = (byte) (sample >> 8);
+                }
+                out.write(bytes, 0, 2 * n);
+            }
+        } catch (IOException e) {
+            // The recognizer closed its end; its listener reports why.
+            Logger.logDebug(LOG_TAG, "Audio pipe closed: " + e.getMessage());
+        }
+    }
+
+    private static void closeQuietly(@NonNull ParcelFileDescriptor fd) {
+        try {
+            fd.close();
+        } catch (IOException e) {
+            // Ignore
+        }
+    }
+
+    private static final class Listener implements RecognitionListener {
+        final CountDownLatch done = new CountDownLatch(1);
+        volatile EdgeSpeechJob.Transcript transcript = EdgeSpeechJob.Transcript.EMPTY;
+        @Nullable volatile String error;
+
+        void fail(@NonNull String message) {
+            error = message;
+            done.countDown();
+        }
+
+        @Override
+        public void onResults(Bundle results) {
+            ArrayList<String> texts = results.getStringArrayList(SpeechRecognizer.RESULTS_RECOGNITION);
+            float[] scores = results.getFloatArray(SpeechRecognizer.CONFIDENCE_SCORES);
+            if (texts != null && !texts.isEmpty()) {
+                float confidence = scores != null && scores.length > 0 ? scores[0] : 0f;
+                transcript = new EdgeSpeechJob.Transcript(texts.get(0), confidence);
+            }
+            done.countDown();
+        }
+
+        @Override
+        public void onError(int code) {
+            // No words in the utterance is an empty transcript, not a failed job.
+            if (code == SpeechRecognizer.ERROR_NO_MATCH || code == SpeechRecognizer.ERROR_SPEECH_TIMEOUT) {
+                done.countDown();
+            } else {
+                fail("Recognizer error " + code);
+            }
+        }
+
+        @Override public void onReadyForSpeech(Bundle params) {}
+        @Override public void onBeginningOfSpeech() {}
+        @Override public void onRmsChanged(float rmsdB) {}
+        @Override public void onBufferReceived(byte[] buffer) {}
+        @Override public void onEndOfSpeech() {}
+        @Override public void onPartialResults(Bundle partialResults) {}
+        @Override public void onEvent(int eventType, Bundle params) {}
+    }
+}
@@ -15,13 +15,14 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.io.IOException;
-import java.net.HttpURLConnection;
-import java.net.URL;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
 
+import okhttp3.Request;
+import okhttp3.Response;
+
 /**
  * Service for collecting and reporting performance metrics.
  */
@@ -190,16 +191,10 @@ public class PerformanceService {
      * Check if an endpoint is reachable.
      */
     private boolean checkEndpointReachable(String endpoint) {
-        try {
-            URL url = new URL(endpoint);
-            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-            connection.setConnectTimeout(HEALTH_CHECK_TIMEOUT_MS);
-            connection.setReadTimeout(HEALTH_CHECK_TIMEOUT_MS);
-            connection.setRequestMethod("HEAD");
-            int responseCode = connection.getResponseCode();
-            connection.disconnect();
+        try (Response response = HttpTransport.execute(headRequest(endpoint))) {
+            int responseCode = response.code();
             return responseCode >= 200 && responseCode < 400;
-        } catch (IOException e) {
+        } catch (IOException | IllegalArgumentException e) {
             Log.w(TAG, "Health check failed for " + endpoint, e);
             return false;
         }
@@ -210,20 +205,22 @@ public class PerformanceService {
      */
     private long measureLatency(String endpoint) {
         long start = System.currentTimeMillis();
-        try {
-            URL url = new URL(endpoint);
-            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-            connection.setConnectTimeout(HEALTH_CHECK_TIMEOUT_MS);
-            connection.setReadTimeout(HEALTH_CHECK_TIMEOUT_MS);
-            connection.setRequestMethod("HEAD");
-            connection.getResponseCode();
-            connection.disconnect();
+        try (Response ignored = HttpTransport.execute(headRequest(endpoint))) {
             return System.currentTimeMillis() - start;
-        } catch (IOException e) {
+        } catch (IOException | IllegalArgumentException e) {
             return -1;
         }
     }
 
+    private static Request headRequest(String endpoint) {
+        return HttpTransport.withTimeouts(
+            new Request.Builder().url(endpoint).head(),
+            HEALTH_CHECK_TIMEOUT_MS,
+            HEALTH_CHECK_TIMEOUT_MS,
+            HEALTH_CHECK_TIMEOUT_MS
+        ).build();
+    }
+
     /**
      * Get current sync status.
      */
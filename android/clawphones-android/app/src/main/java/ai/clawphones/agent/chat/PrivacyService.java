@@ -8,11 +8,7 @@ import android.os.Looper;
 import org.json.JSONArray;
 import org.json.JSONObject;
 
-import java.io.BufferedReader;
-import java.io.InputStreamReader;
-import java.io.OutputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
@@ -20,6 +16,12 @@ import java.util.UUID;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
+import okhttp3.MediaType;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+
 /**
  * Service for managing privacy settings and operations.
  * Uses background thread execution for all network operations.
@@ -29,6 +31,8 @@ public class PrivacyService {
     private static final String KEY_SETTINGS = "privacy_settings";
     private static final String BASE_URL = "https://api.openclaw.com/privacy";
     private static final String API_KEY = "your_api_key_here";
+    private static final long REQUEST_TIMEOUT_MS = 30_000L;
+    private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
 
     private final Context context;
     private final SharedPreferences prefs;
@@ -304,45 +308,31 @@ public class PrivacyService {
     }
 
     private String makeGetRequest(String urlString) throws Exception {
-        URL url = new URL(urlString);
-        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-        conn.setRequestMethod("GET");
-        conn.setRequestProperty("Authorization", "Bearer " + API_KEY);
-        conn.setConnectTimeout(30000);
-        conn.setReadTimeout(30000);
-
-        return readResponse(conn);
+        return execute(newRequest(urlString).get());
     }
 
     private String makePostRequest(String urlString, String body) throws Exception {
-        URL url = new URL(urlString);
-        HttpURLConnection conn = (HttpURLConnection) url.openConnection();
-        conn.setRequestMethod("POST");
-        conn.setRequestProperty("Content-Type", "application/json");
-        conn.setRequestProperty("Authorization", "Bearer " + API_KEY);
-        conn.setConnectTimeout(30000);
-        conn.setReadTimeout(30000);
-        conn.setDoOutput(true);
-
-        try (OutputStream os = conn.getOutputStream()) {
-            byte[] input = body.getBytes("utf-8");
-            os.write(input, 0, input.length);
-        }
+        return execute(newRequest(urlString).post(RequestBody.create(body, JSON)));
+    }
 
-        return readResponse(conn);
+    private Request.Builder newRequest(String urlString) {
+        return HttpTransport.withTimeouts(
+            new Request.Builder()
+                .url(urlString)
+                .header("Authorization", "Bearer " + API_KEY),
+            REQUEST_TIMEOUT_MS,
+            REQUEST_TIMEOUT_MS,
+            REQUEST_TIMEOUT_MS
+        );
     }
 
-    private String readResponse(HttpURLConnection conn) throws Exception {
-        try (BufferedReader br = new BufferedReader(
-                new InputStreamReader(conn.getInputStream(), "utf-8"))) {
-            StringBuilder response = new StringBuilder();
-            String responseLine;
-            while ((responseLine = br.readLine()) != null) {
-                response.append(responseLine.trim());
+    private String execute(Request.Builder builder) throws IOException {
+        try (Response response = HttpTransport.execute(builder.build())) {
+            if (!response.isSuccessful()) {
+                throw new IOException("HTTP " + response.code());
             }
-            return response.toString();
-        } finally {
-            conn.disconnect();
+            ResponseBody body = response.body();
+            return body == null ? "" : body.string().trim();
         }
     }
 
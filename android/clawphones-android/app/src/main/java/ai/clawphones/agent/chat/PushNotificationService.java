@@ -68,7 +68,7 @@ public class PushNotificationService extends FirebaseMessagingService {
 
     private static final MediaType JSON_MEDIA_TYPE = MediaType.parse("application/json; charset=utf-8");
 
-    private final OkHttpClient httpClient = new OkHttpClient();
+    private final OkHttpClient httpClient = HttpTransport.client();
 
     @Override
     public void onCreate() {
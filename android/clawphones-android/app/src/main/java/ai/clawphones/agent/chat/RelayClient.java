@@ -1,14 +1,11 @@
 package ai.clawphones.agent.chat;
 
-import android.content.ContentValues;
 import android.content.Context;
 import android.content.SharedPreferences;
-import android.database.Cursor;
-import android.database.sqlite.SQLiteDatabase;
-import android.database.sqlite.SQLiteOpenHelper;
 import android.net.ConnectivityManager;
 import android.net.Network;
 import android.os.Build;
+import android.os.SystemClock;
 import android.text.TextUtils;
 import android.util.Base64;
 
@@ -57,17 +54,26 @@ public final class RelayClient {
     private static final String PREF_LAST_TS = "relay_last_ts";
     private static final String DEFAULT_RELAY_URL = "http://localhost:8787";
     private static final long HEARTBEAT_INTERVAL_MINUTES = 5L;
-    private static final int MAX_QUEUE_RETRY = 3;
     private static final MediaType JSON_MEDIA_TYPE = MediaType.parse("application/json; charset=utf-8");
+    /** After the relay refuses a binary frame, frames go as JSON this long before binary is tried again. */
+    static final long BINARY_REPROBE_MS = 10L * 60L * 1000L;
     private static final String HEARTBEAT_JPEG_BASE64 = "/9j/4AAQSkZJRgABAQAAAQABAAD/2wCEAAkGBxISEhUTEhIVFhUVFRUVFRUVFRUWFxUVFRUXFhUVFRUYHSggGBolHRUVITEhJSkrLi4uFx8zODMtNygtLisBCgoKDg0OGhAQGi0lHyUtLS0tLS0tLS0tLS0tLS0tLS0tLS0tLS0tLS0tLS0tLS0tLS0tLS0tLS0tLS0tLf/AABEIABQAFAMBIgACEQEDEQH/xAAXAAEBAQEAAAAAAAAAAAAAAAAAAQID/8QAFxEBAQEBAAAAAAAAAAAAAAAAAQACEf/aAAwDAQACEAMQAAAB6AA//8QAFhEBAQEAAAAAAAAAAAAAAAAAABEh/9oACAEBAAEFAn//xAAUEQEAAAAAAAAAAAAAAAAAAAAA/9oACAEDAQE/AR//xAAUEQEAAAAAAAAAAAAAAAAAAAAA/9oACAECAQE/AR//xAAVEAEBAAAAAAAAAAAAAAAAAAABEP/aAAgBAQAGPwJf/8QAFhABAQEAAAAAAAAAAAAAAAAAARAR/9oACAEBAAE/Idf/xAAWEQEBAQAAAAAAAAAAAAAAAAABABH/2gAIAQMBAT8hP//EABYRAQEBAAAAAAAAAAAAAAAAAAEAIf/aAAgBAgEBPyGf/8QAFhABAQEAAAAAAAAAAAAAAAAAARAR/9oACAEBAAE/IZf/2Q==";
 
     private final Context appContext;
     private final OkHttpClient httpClient;
     private final RelayFrameQueue frameQueue;
     private final ExecutorService flushExecutor;
+    private final ExecutorService uploadWorkers;
+    private final RelayQueueFlusher queueFlusher;
+    private final AdaptiveFrameController frameController =
+        new AdaptiveFrameController(AdaptiveFrameController.Bounds.DEFAULT);
     private final ScheduledExecutorService heartbeatExecutor;
     private final Object flushLock = new Object();
     private boolean isFlushing = false;
+    @Nullable private volatile RelayQueueFlusher.Stats lastFlushStats;
+    /** elapsedRealtime until which frames skip the binary attempt; 0 while binary ingest works. */
+    private volatile long jsonOnlyUntilMs = 0L;
+    @Nullable private byte[] heartbeatJpeg;
     @Nullable private ConnectivityManager connectivityManager;
     @Nullable private ConnectivityManager.NetworkCallback networkCallback;
 
@@ -95,6 +101,31 @@ public final class RelayClient {
         }
     }
 
+    /**
+     * How much a queued frame is worth keeping when the offline spool is over budget; lower ranks
+     * are evicted first.
+     */
+    public enum FramePriority {
+        HEARTBEAT(0),
+        IDLE(1),
+        DETECTION(2),
+        ALERT(3);
+
+        public final int rank;
+
+        FramePriority(int rank) {
+            this.rank = rank;
+        }
+
+        @NonNull
+        static FramePriority fromRank(int rank) {
+            for (FramePriority priority : values()) {
+                if (priority.rank == rank) return priority;
+            }
+            return IDLE;
+        }
+    }
+
     public static final class RelayException extends Exception {
         public final int statusCode;
 
@@ -113,6 +144,8 @@ public final class RelayClient {
         this.httpClient = okHttpClient;
         this.frameQueue = new RelayFrameQueue(this.appContext);
         this.flushExecutor = Executors.newSingleThreadExecutor();
+        this.uploadWorkers = Executors.newFixedThreadPool(RelayQueueFlusher.DEFAULT_WINDOW);
+        this.queueFlusher = new RelayQueueFlusher(frameQueue, uploadWorkers, RelayQueueFlusher.DEFAULT_WINDOW);
         this.heartbeatExecutor = Executors.newSingleThreadScheduledExecutor();
         registerNetworkCallback();
         heartbeatExecutor.scheduleAtFixedRate(
@@ -126,6 +159,7 @@ public final class RelayClient {
     public void shutdown() {
         unregisterNetworkCallback();
         flushExecutor.shutdownNow();
+        uploadWorkers.shutdownNow();
         heartbeatExecutor.shutdownNow();
     }
 
@@ -175,28 +209,35 @@ public final class RelayClient {
 
     public FrameUploadResult uploadFrame(@NonNull byte[] jpeg, double lat, double lon, @Nullable Double heading)
         throws IOException, RelayException, JSONException {
+        return uploadFrame(jpeg, lat, lon, heading, FramePriority.IDLE);
+    }
+
+    /**
+     * Uploads a frame; if that fails it is queued, and {@code priority} decides what the spool
+     * keeps when it runs out of room. Frames with detections or alerts should say so.
+     *
+     * Callers that capture their own frames should encode them with {@link #getFrameSettings()}
+     * so the picture follows what the link can carry.
+     */
+    public FrameUploadResult uploadFrame(@NonNull byte[] jpeg, double lat, double lon, @Nullable Double heading,
+                                         @NonNull FramePriority priority)
+        throws IOException, RelayException, JSONException {
         if (jpeg.length == 0) {
             throw new IllegalArgumentException("jpeg must not be empty");
         }
 
         Credentials credentials = requireCredentials();
         long ts = nowEpochSeconds();
-        JSONObject payload = buildFramePayload(
-            credentials.nodeId,
-            ts,
-            lat,
-            lon,
-            heading,
-            Base64.encodeToString(jpeg, Base64.NO_WRAP)
-        );
+        RelayFrame frame = new RelayFrame(credentials.nodeId, ts, lat, lon, heading, priority, jpeg);
         saveLastLocation(lat, lon, heading, ts);
+        frameController.onFrameEncoded(jpeg.length);
 
         try {
-            FrameUploadResult result = postFrame(payload, credentials.token);
+            FrameUploadResult result = postFrame(frame, credentials.token);
             flushPendingFramesAsync();
             return result;
         } catch (IOException | RelayException | JSONException e) {
-            frameQueue.enqueue(payload);
+            enqueueQuietly(frame);
             throw e;
         }
     }
@@ -226,33 +267,16 @@ public final class RelayClient {
         }
 
         try {
-            Credentials credentials;
+            final Credentials credentials;
             try {
                 credentials = requireCredentials();
             } catch (RelayException e) {
                 return;
             }
 
-            while (true) {
-                RelayFrameQueue.PendingFrame pending = frameQueue.nextPending();
-                if (pending == null) {
-                    return;
-                }
-
-                frameQueue.markSending(pending.id);
-                try {
-                    postFrame(pending.payload, credentials.token);
-                    frameQueue.remove(pending.id);
-                } catch (IOException | RelayException | JSONException e) {
-                    int retries = frameQueue.incrementRetryCount(pending.id);
-                    if (retries >= MAX_QUEUE_RETRY) {
-                        frameQueue.markFailed(pending.id);
-                    } else {
-                        frameQueue.markPending(pending.id);
-                    }
-                    return;
-                }
-            }
+            RelayQueueFlusher.Stats stats = queueFlusher.flush(frame -> postFrame(frame, credentials.token));
+            frameController.onQueueDepth(stats.remaining, SystemClock.elapsedRealtime());
+            lastFlushStats = stats;
         } finally {
             synchronized (flushLock) {
                 isFlushing = false;
@@ -260,6 +284,29 @@ public final class RelayClient {
         }
     }
 
+    /** Disk used by frames waiting in the offline spool. */
+    @NonNull
+    RelayFrameQueue.SpoolUsage getSpoolUsage() {
+        return frameQueue.usage();
+    }
+
+    /** JPEG quality, downscale factor and frame interval the link currently supports. */
+    @NonNull
+    AdaptiveFrameController.Settings getFrameSettings() {
+        return frameController.current();
+    }
+
+    @NonNull
+    AdaptiveFrameController getFrameController() {
+        return frameController;
+    }
+
+    /** Stats of the most recent queue flush, or null before the first one. */
+    @Nullable
+    RelayQueueFlusher.Stats getLastFlushStats() {
+        return lastFlushStats;
+    }
+
     public void flushPendingFramesAsync() {
         flushExecutor.execute(this::flushPendingFrames);
     }
@@ -276,25 +323,94 @@ public final class RelayClient {
         LastLocation location = readLastLocation();
         if (location == null) return;
 
-        JSONObject payload = buildFramePayload(
+        if (heartbeatJpeg == null) {
+            heartbeatJpeg = Base64.decode(HEARTBEAT_JPEG_BASE64, Base64.NO_WRAP);
+        }
+        RelayFrame frame = new RelayFrame(
             credentials.nodeId,
             nowEpochSeconds(),
             location.lat,
             location.lon,
             location.heading,
-            HEARTBEAT_JPEG_BASE64
+            FramePriority.HEARTBEAT,
+            heartbeatJpeg
         );
 
         try {
-            postFrame(payload, credentials.token);
+            postFrame(frame, credentials.token);
         } catch (IOException | RelayException | JSONException e) {
-            frameQueue.enqueue(payload);
+            enqueueQuietly(frame);
+        }
+    }
+
+    private void enqueueQuietly(@NonNull RelayFrame frame) {
+        try {
+            frameQueue.enqueue(frame);
+            frameController.onQueueDepth(frameQueue.pendingCount(), SystemClock.elapsedRealtime());
+        } catch (IOException | RuntimeException e) {
+            Logger.logWarn(LOG_TAG, "Failed to queue frame: " + e.getMessage());
         }
     }
 
-    private FrameUploadResult postFrame(@NonNull JSONObject payload, @NonNull String token)
+    /** Sends one frame and reports its transfer time to the frame controller. */
+    private FrameUploadResult postFrame(@NonNull RelayFrame frame, @NonNull String token)
         throws IOException, RelayException, JSONException {
-        JSONObject response = executeJson(postRequest("/v1/events/frame", payload, token));
+        long startedAt = SystemClock.elapsedRealtime();
+        frameController.onUploadStarted(startedAt);
+        boolean linkOk = true;
+        try {
+            return sendFrame(frame, token);
+        } catch (IOException | RelayException e) {
+            linkOk = RelayQueueFlusher.classify(e) != RelayQueueFlusher.Failure.RETRYABLE;
+            throw e;
+        } finally {
+            frameController.onUploadFinished(startedAt, linkOk ? frame.jpegLength() : 0L, linkOk,
+                SystemClock.elapsedRealtime());
+        }
+    }
+
+    /**
+     * Sends the frame as a binary body. A relay that rejects it with 400/415 may predate binary
+     * ingest, or may have refused just this frame; the frame is resent as jpeg_base64 JSON and,
+     * if that works, frames skip straight to JSON for {@link #BINARY_REPROBE_MS} before binary is
+     * tried again.
+     */
+    private FrameUploadResult sendFrame(@NonNull RelayFrame frame, @NonNull String token)
+        throws IOException, RelayException, JSONException {
+        if (SystemClock.elapsedRealtime() >= jsonOnlyUntilMs) {
+            try {
+                FrameUploadResult result = toUploadResult(executeJson(frameRequest(frame.binaryBody(), token)));
+                jsonOnlyUntilMs = 0L;
+                return result;
+            } catch (RelayException e) {
+                if (e.statusCode != 400 && e.statusCode != 415) throw e;
+            }
+            FrameUploadResult result = postFrameJson(frame, token);
+            jsonOnlyUntilMs = SystemClock.elapsedRealtime() + BINARY_REPROBE_MS;
+            Logger.logInfo(LOG_TAG, "Relay refused a binary frame, using JSON for "
+                + (BINARY_REPROBE_MS / 60_000L) + " min");
+            return result;
+        }
+        return postFrameJson(frame, token);
+    }
+
+    private FrameUploadResult postFrameJson(@NonNull RelayFrame frame, @NonNull String token)
+        throws IOException, RelayException, JSONException {
+        return toUploadResult(executeJson(postRequest("/v1/events/frame", frame.toJson(), token)));
+    }
+
+    @NonNull
+    private Request frameRequest(@NonNull RequestBody body, @NonNull String token) throws RelayException {
+        return new Request.Builder()
+            .url(endpoint("/v1/events/frame"))
+            .post(body)
+            .addHeader("Accept", "application/json")
+            .addHeader("Authorization", "Bearer " + token)
+            .build();
+    }
+
+    @NonNull
+    private static FrameUploadResult toUploadResult(@NonNull JSONObject response) {
         return new FrameUploadResult(
             trimToNull(response.optString("id", null)),
             trimToNull(response.optString("cell", null)),
@@ -498,29 +614,6 @@ public final class RelayClient {
         networkCallback = null;
     }
 
-    @NonNull
-    private JSONObject buildFramePayload(
-        @NonNull String nodeId,
-        long ts,
-        double lat,
-        double lon,
-        @Nullable Double heading,
-        @NonNull String jpegBase64
-    ) throws JSONException {
-        JSONObject body = new JSONObject();
-        body.put("node_id", nodeId);
-        body.put("ts", ts);
-        body.put("lat", lat);
-        body.put("lon", lon);
-        if (heading != null) {
-            body.put("heading", heading);
-        } else {
-            body.put("heading", JSONObject.NULL);
-        }
-        body.put("jpeg_base64", jpegBase64);
-        return body;
-    }
-
     private static final class Credentials {
         @NonNull final String nodeId;
         @NonNull final String token;
@@ -544,153 +637,4 @@ public final class RelayClient {
             this.ts = ts;
         }
     }
-
-    private static final class RelayFrameQueue {
-        static final String STATUS_PENDING = "pending";
-        static final String STATUS_SENDING = "sending";
-        static final String STATUS_FAILED = "failed";
-
-        private static final String DB_NAME = "clawphones_relay.db";
-        private static final int DB_VERSION = 1;
-        private static final String TABLE_PENDING = "pending_relay_frames";
-        private static final String COL_ID = "id";
-        private static final String COL_PAYLOAD = "payload_json";
-        private static final String COL_CREATED_AT = "created_at";
-        private static final String COL_STATUS = "status";
-        private static final String COL_RETRY_COUNT = "retry_count";
-
-        private final SQLiteOpenHelper helper;
-
-        RelayFrameQueue(@NonNull Context context) {
-            helper = new SQLiteOpenHelper(context, DB_NAME, null, DB_VERSION) {
-                @Override
-                public void onCreate(SQLiteDatabase db) {
-                    db.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE_PENDING + " ("
-                        + COL_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
-                        + COL_PAYLOAD + " TEXT NOT NULL, "
-                        + COL_CREATED_AT + " INTEGER NOT NULL, "
-                        + COL_STATUS + " TEXT NOT NULL, "
-                        + COL_RETRY_COUNT + " INTEGER NOT NULL DEFAULT 0"
-                        + ")");
-                    db.execSQL("CREATE INDEX IF NOT EXISTS idx_relay_pending_status_created "
-                        + "ON " + TABLE_PENDING + "(" + COL_STATUS + ", " + COL_CREATED_AT + ")");
-                }
-
-                @Override
-                public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
-                    if (oldVersion < 1) onCreate(db);
-                }
-            };
-        }
-
-        synchronized void enqueue(@NonNull JSONObject payload) {
-            SQLiteDatabase db = helper.getWritableDatabase();
-            ContentValues values = new ContentValues();
-            values.put(COL_PAYLOAD, payload.toString());
-            values.put(COL_CREATED_AT, System.currentTimeMillis());
-            values.put(COL_STATUS, STATUS_PENDING);
-            values.put(COL_RETRY_COUNT, 0);
-            db.insertOrThrow(TABLE_PENDING, null, values);
-        }
-
-        @Nullable
-        synchronized PendingFrame nextPending() {
-            SQLiteDatabase db = helper.getReadableDatabase();
-            Cursor c = null;
-            try {
-                c = db.query(
-                    TABLE_PENDING,
-                    new String[]{COL_ID, COL_PAYLOAD, COL_CREATED_AT, COL_STATUS, COL_RETRY_COUNT},
-                    COL_STATUS + " IN (?, ?)",
-                    new String[]{STATUS_PENDING, STATUS_SENDING},
-                    null,
-                    null,
-                    COL_CREATED_AT + " ASC LIMIT 1"
-                );
-                if (!c.moveToFirst()) return null;
-                return toPendingFrame(c);
-            } finally {
-                if (c != null) c.close();
-            }
-        }
-
-        synchronized void markSending(long id) {
-            updateStatus(id, STATUS_SENDING);
-        }
-
-        synchronized void markPending(long id) {
-            updateStatus(id, STATUS_PENDING);
-        }
-
-        synchronized void markFailed(long id) {
-            updateStatus(id, STATUS_FAILED);
-        }
-
-        synchronized int incrementRetryCount(long id) {
-            SQLiteDatabase db = helper.getWritableDatabase();
-            db.execSQL("UPDATE " + TABLE_PENDING + " SET "
-                + COL_RETRY_COUNT + " = " + COL_RETRY_COUNT + " + 1 WHERE " + COL_ID + " = ?",
-                new Object[]{id});
-            Cursor c = null;
-            try {
-                c = db.query(
-                    TABLE_PENDING,
-                    new String[]{COL_RETRY_COUNT},
-                    COL_ID + " = ?",
-                    new String[]{String.valueOf(id)},
-                    null,
-                    null,
-                    null
-                );
-                if (c.moveToFirst()) return c.getInt(0);
-                return 0;
-            } finally {
-                if (c != null) c.close();
-            }
-        }
-
-        synchronized void remove(long id) {
-            SQLiteDatabase db = helper.getWritableDatabase();
-            db.delete(TABLE_PENDING, COL_ID + " = ?", new String[]{String.valueOf(id)});
-        }
-
-        private void updateStatus(long id, @NonNull String status) {
-            SQLiteDatabase db = helper.getWritableDatabase();
-            ContentValues values = new ContentValues();
-            values.put(COL_STATUS, status);
-            db.update(TABLE_PENDING, values, COL_ID + " = ?", new String[]{String.valueOf(id)});
-        }
-
-        @Nullable
-        private PendingFrame toPendingFrame(@NonNull Cursor c) {
-            long id = c.getLong(0);
-            String payloadRaw = c.getString(1);
-            long createdAt = c.getLong(2);
-            String status = c.getString(3);
-            int retryCount = c.getInt(4);
-            try {
-                JSONObject payload = new JSONObject(payloadRaw);
-                return new PendingFrame(id, payload, createdAt, status, retryCount);
-            } catch (JSONException e) {
-                remove(id);
-                return null;
-            }
-        }
-
-        static final class PendingFrame {
-            final long id;
-            @NonNull final JSONObject payload;
-            final long createdAt;
-            @NonNull final String status;
-            final int retryCount;
-
-            PendingFrame(long id, @NonNull JSONObject payload, long createdAt, @NonNull String status, int retryCount) {
-                this.id = id;
-                this.payload = payload;
-                this.createdAt = createdAt;
-                this.status = status;
-                this.retryCount = retryCount;
-            }
-        }
-    }
 }
@@ -0,0 +1,191 @@
+package ai.clawphones.agent.chat;
+
+import android.util.Base64;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import okhttp3.MediaType;
+import okhttp3.RequestBody;
+import okio.BufferedSink;
+import okio.Okio;
+import okio.Source;
+
+/**
+ * One frame for relay ingest: node metadata plus a JPEG held in memory or in a spool file.
+ *
+ * Binary ingest ({@link #BINARY_MEDIA_TYPE}) sends a fixed header followed by the raw JPEG, so
+ * the frame is neither base64-inflated nor copied into a JSON string:
+ *
+ *   offset  size  field
+ *   0       4     magic "CVF1"
+ *   4       2     header length H, big-endian (42 + node id bytes)
+ *   6       1     flags, bit 0 = heading present
+ *   7       1     reserved, 0
+ *   8       8     ts, epoch seconds
+ *   16      8     lat, IEEE 754 double
+ *   24      8     lon
+ *   32      8     heading, 0 when absent
+ *   40      2     node id length N
+ *   42      N     node id, UTF-8
+ *   H       ..    JPEG bytes to the end of the body
+ *
+ * {@link #toJson()} is the legacy jpeg_base64 body for relays without binary ingest.
+ */
+final class RelayFrame {
+
+    static final MediaType BINARY_MEDIA_TYPE = MediaType.get("application/vnd.clawvision.frame");
+    static final int FIXED_HEADER_BYTES = 42;
+    static final int FLAG_HEADING = 1;
+    private static final byte[] MAGIC = {'C', 'V', 'F', '1'};
+    private static final int MAX_NODE_ID_BYTES = 0xFFFF - FIXED_HEADER_BYTES;
+
+    @NonNull final String nodeId;
+    final long ts;
+    final double lat;
+    final double lon;
+    @Nullable final Double heading;
+    @NonNull final RelayClient.FramePriority priority;
+    @Nullable private final byte[] jpegBytes;
+    @Nullable private final File jpegFile;
+
+    RelayFrame(@NonNull String nodeId, long ts, double lat, double lon, @Nullable Double heading,
+               @NonNull byte[] jpeg) {
+        this(nodeId, ts, lat, lon, heading, RelayClient.FramePriority.IDLE, jpeg, null);
+    }
+
+    RelayFrame(@NonNull String nodeId, long ts, double lat, double lon, @Nullable Double heading,
+               @NonNull RelayClient.FramePriority priority, @NonNull byte[] jpeg) {
+        this(nodeId, ts, lat, lon, heading, priority, jpeg, null);
+    }
+
+    RelayFrame(@NonNull String nodeId, long ts, double lat, double lon, @Nullable Double heading,
+               @NonNull RelayClient.FramePriority priority, @NonNull File jpeg) {
+        this(nodeId, ts, lat, lon, heading, priority, null, jpeg);
+    }
+
+    private RelayFrame(@NonNull String nodeId, long ts, double lat, double lon, @Nullable Double heading,
+                       @NonNull RelayClient.FramePriority priority,
+                       @Nullable byte[] jpegBytes, @Nullable File jpegFile) {
+        this.nodeId = nodeId;
+        this.ts = ts;
+        this.lat = lat;
+        this.lon = lon;
+        this.heading = heading;
+        this.priority = priority;
+        this.jpegBytes = jpegBytes;
+        this.jpegFile = jpegFile;
+    }
+
+    /** The JPEG in memory, or null when it lives in {@link #jpegFile()}. */
+    @Nullable
+    byte[] jpegBytes() {
+        return jpegBytes;
+    }
+
+    @Nullable
+    File jpegFile() {
+        return jpegFile;
+    }
+
+    long jpegLength() {
+        return jpegBytes != null ? jpegBytes.length : jpegFile.length();
+    }
+
+    @NonNull
+    byte[] encodeHeader() {
+        byte[] id = nodeId.getBytes(StandardCharsets.UTF_8);
+        if (id.length > MAX_NODE_ID_BYTES) {
+            throw new IllegalArgumentException("node id too long");
+        }
+        ByteBuffer header = ByteBuffer.allocate(FIXED_HEADER_BYTES + id.length);
+        header.put(MAGIC);
+        header.putShort((short) (FIXED_HEADER_BYTES + id.length));
+        header.put((byte) (heading != null ? FLAG_HEADING : 0));
+        header.put((byte) 0);
+        header.putLong(ts);
+        header.putDouble(lat);
+        header.putDouble(lon);
+        header.putDouble(heading != null ? heading : 0d);
+        header.putShort((short) id.length);
+        header.put(id);
+        return header.array();
+    }
+
+    /** Header and JPEG as one request body; the JPEG is streamed from memory or disk as written. */
+    @NonNull
+    RequestBody binaryBody() {
+        final byte[] header = encodeHeader();
+        final long length = header.length + jpegLength();
+        return new RequestBody() {
+            @Override
+            public MediaType contentType() {
+                return BINARY_MEDIA_TYPE;
+            }
+
+            @Override
+            public long contentLength() {
+                return length;
+            }
+
+            @Override
+            public void writeTo(@NonNull BufferedSink sink) throws IOException {
+                sink.write(header);
+                if (jpegBytes != null) {
+                    sink.write(jpegBytes);
+                    return;
+                }
+                try (Source source = Okio.source(jpegFile)) {
+                    sink.writeAll(source);
+                }
+            }
+        };
+    }
+
+    @NonNull
+    JSONObject toJson() throws JSONException, IOException {
+        JSONObject body = new JSONObject();
+        body.put("node_id", nodeId);
+        body.put("ts", ts);
+        body.put("lat", lat);
+        body.put("lon", lon);
+        body.put("heading", heading != null ? heading : JSONObject.NULL);
+        body.put("jpeg_base64", Base64.encodeToString(readJpeg(), Base64.NO_WRAP));
+        return body;
+    }
+
+    /** Reads a legacy queued JSON payload; the JPEG is decoded into memory. */
+    @NonNull
+    static RelayFrame fromJson(@NonNull JSONObject payload) throws JSONException {
+        String nodeId = payload.getString("node_id");
+        byte[] jpeg = Base64.decode(payload.getString("jpeg_base64"), Base64.DEFAULT);
+        Double heading = payload.isNull("heading") ? null : payload.getDouble("heading");
+        return new RelayFrame(nodeId, payload.optLong("ts", 0L), payload.getDouble("lat"),
+            payload.getDouble("lon"), heading, jpeg);
+    }
+
+    @NonNull
+    private byte[] readJpeg() throws IOException {
+        if (jpegBytes != null) return jpegBytes;
+        byte[] data = new byte[(int) jpegFile.length()];
+        try (InputStream in = new FileInputStream(jpegFile)) {
+            int offset = 0;
+            while (offset < data.length) {
+                int read = in.read(data, offset, data.length - offset);
+                if (read == -1) throw new IOException("frame file truncated: " + jpegFile);
+                offset += read;
+            }
+        }
+        return data;
+    }
+}
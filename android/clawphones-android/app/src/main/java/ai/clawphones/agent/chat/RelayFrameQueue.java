@@ -0,0 +1,507 @@
+package ai.clawphones.agent.chat;
+
+import android.content.ContentValues;
+import android.content.Context;
+import android.database.Cursor;
+import android.database.DatabaseUtils;
+import android.database.sqlite.SQLiteDatabase;
+import android.database.sqlite.SQLiteOpenHelper;
+import android.database.sqlite.SQLiteStatement;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.termux.shared.logger.Logger;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Durable queue of relay frames that failed to upload.
+ *
+ * Metadata lives in SQLite; each JPEG is spooled to its own file under no-backup storage and the
+ * row keeps only the file name. Rows stay small, so queries never page multi-hundred-KB blobs
+ * through a CursorWindow, and a flush streams the file straight into the request body.
+ *
+ * The spool is bounded by a {@link SpoolPolicy}: frames older than the TTL are deleted, and while
+ * the spooled bytes exceed the budget frames are evicted failed first, then lowest
+ * {@link RelayClient.FramePriority}, then oldest. Frames in flight are never evicted.
+ */
+final class RelayFrameQueue {
+
+    private static final String LOG_TAG = "RelayFrameQueue";
+
+    static final String STATUS_PENDING = "pending";
+    static final String STATUS_SENDING = "sending";
+    static final String STATUS_FAILED = "failed";
+
+    private static final String DB_NAME = "clawphones_relay.db";
+    private static final int DB_VERSION = 3;
+    private static final int EVICT_BATCH = 32;
+    private static final String SPOOL_DIR = "relay_frames";
+    private static final String TABLE_PENDING = "pending_relay_frames";
+    private static final String TABLE_PENDING_V1 = "pending_relay_frames_v1";
+    private static final String COL_ID = "id";
+    private static final String COL_NODE_ID = "node_id";
+    private static final String COL_TS = "ts";
+    private static final String COL_LAT = "lat";
+    private static final String COL_LON = "lon";
+    private static final String COL_HEADING = "heading";
+    private static final String COL_FRAME_FILE = "frame_file";
+    private static final String COL_FRAME_BYTES = "frame_bytes";
+    private static final String COL_CREATED_AT = "created_at";
+    private static final String COL_STATUS = "status";
+    private static final String COL_RETRY_COUNT = "retry_count";
+    private static final String COL_PRIORITY = "priority";
+    private static final String COL_V1_PAYLOAD = "payload_json";
+
+    private static final String[] FRAME_COLUMNS = {
+        COL_ID, COL_NODE_ID, COL_TS, COL_LAT, COL_LON, COL_HEADING, COL_FRAME_FILE,
+        COL_CREATED_AT, COL_STATUS, COL_RETRY_COUNT, COL_PRIORITY
+    };
+
+    /** Limits on what the spool holds. */
+    static final class SpoolPolicy {
+        static final SpoolPolicy DEFAULT = new SpoolPolicy(64L * 1024L * 1024L, 24L * 60L * 60L * 1000L);
+
+        final long maxBytes;
+        final long ttlMs;
+
+        SpoolPolicy(long maxBytes, long ttlMs) {
+            this.maxBytes = maxBytes;
+            this.ttlMs = ttlMs;
+        }
+    }
+
+    /** Snapshot of the spool's disk use and of evictions since the queue was opened. */
+    static final class SpoolUsage {
+        final long totalBytes;
+        final int frames;
+        /** Bytes held per priority, indexed by {@link RelayClient.FramePriority#rank}. */
+        final long[] bytesByPriority;
+        final long oldestCreatedAt;
+        final long expiredEvictions;
+        final long budgetEvictions;
+
+        SpoolUsage(long totalBytes, int frames, long[] bytesByPriority, long oldestCreatedAt,
+                   long expiredEvictions, long budgetEvictions) {
+            this.totalBytes = totalBytes;
+            this.frames = frames;
+            this.bytesByPriority = bytesByPriority;
+            this.oldestCreatedAt = oldestCreatedAt;
+            this.expiredEvictions = expiredEvictions;
+            this.budgetEvictions = budgetEvictions;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder()
+                .append(frames).append(" frames, ").append(totalBytes / 1024L).append(" KB (");
+            RelayClient.FramePriority[] priorities = RelayClient.FramePriority.values();
+            for (int i = 0; i < priorities.length; i++) {
+                if (i > 0) sb.append(", ");
+                sb.append(priorities[i].name().toLowerCase(Locale.US)).append(' ')
+                    .append(bytesByPriority[priorities[i].rank] / 1024L).append(" KB");
+            }
+            return sb.append("), evicted ").append(expiredEvictions).append(" expired / ")
+                .append(budgetEvictions).append(" over budget").toString();
+        }
+    }
+
+    private final File spoolDir;
+    private final SQLiteOpenHelper helper;
+    private final SpoolPolicy policy;
+    private long expiredEvictions;
+    private long budgetEvictions;
+
+    RelayFrameQueue(@NonNull Context context) {
+        this(context, SpoolPolicy.DEFAULT);
+    }
+
+    RelayFrameQueue(@NonNull Context context, @NonNull SpoolPolicy policy) {
+        this.policy = policy;
+        spoolDir = new File(context.getNoBackupFilesDir(), SPOOL_DIR);
+        helper = new SQLiteOpenHelper(context, DB_NAME, null, DB_VERSION) {
+            @Override
+            public void onConfigure(SQLiteDatabase db) {
+                super.onConfigure(db);
+                SqliteTuning.configure(db);
+            }
+
+            @Override
+            public void onCreate(SQLiteDatabase db) {
+                createTables(db);
+            }
+
+            @Override
+            public void onUpgrade(SQLiteDatabase db, int oldVersion, int newVersion) {
+                if (oldVersion < 2) {
+                    migrateFromJsonPayloads(db);
+                } else if (oldVersion < 3) {
+                    db.execSQL("ALTER TABLE " + TABLE_PENDING + " ADD COLUMN " + COL_PRIORITY
+                        + " INTEGER NOT NULL DEFAULT " + RelayClient.FramePriority.IDLE.rank);
+                    createIndexes(db);
+                }
+            }
+        };
+    }
+
+    /** Spools the frame's JPEG to disk, queues it as pending and trims the spool to the policy. */
+    synchronized void enqueue(@NonNull RelayFrame frame) throws IOException {
+        enqueue(frame, System.currentTimeMillis());
+    }
+
+    synchronized void enqueue(@NonNull RelayFrame frame, long nowMs) throws IOException {
+        SQLiteDatabase db = helper.getWritableDatabase();
+        insert(db, frame, nowMs, STATUS_PENDING, 0);
+        trim(nowMs);
+    }
+
+    /**
+     * Deletes expired frames, then evicts until the spool fits its byte budget. Returns the number
+     * of frames removed.
+     */
+    synchronized int trim(long nowMs) {
+        SQLiteDatabase db = helper.getWritableDatabase();
+        String notInFlight = COL_STATUS + " != '" + STATUS_SENDING + "'";
+        int expired = 0;
+        int evicted = 0;
+        db.beginTransaction();
+        try {
+            long[] batch;
+            do {
+                batch = evictBatch(db, notInFlight + " AND " + COL_CREATED_AT + " < " + (nowMs - policy.ttlMs),
+                    COL_ID + " ASC", Long.MAX_VALUE);
+                expired += (int) batch[0];
+            } while (batch[0] == EVICT_BATCH);
+
+            long excess = totalBytes(db) - policy.maxBytes;
+            while (excess > 0L) {
+                // Failed frames first, then lowest priority, then oldest.
+                batch = evictBatch(db, notInFlight, "(" + COL_STATUS + " = '" + STATUS_FAILED + "') DESC, "
+                    + COL_PRIORITY + " ASC, " + COL_CREATED_AT + " ASC, " + COL_ID + " ASC", excess);
+                if (batch[0] == 0L) break;
+                evicted += (int) batch[0];
+                excess -= batch[1];
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        expiredEvictions += expired;
+        budgetEvictions += evicted;
+        if (expired + evicted > 0) {
+            Logger.logInfo(LOG_TAG, "Spool trimmed: " + expired + " expired, " + evicted + " over budget");
+        }
+        return expired + evicted;
+    }
+
+    @NonNull
+    synchronized SpoolUsage usage() {
+        SQLiteDatabase db = helper.getReadableDatabase();
+        long[] byPriority = new long[RelayClient.FramePriority.values().length];
+        long total = 0L;
+        int frames = 0;
+        try (Cursor c = db.rawQuery("SELECT " + COL_PRIORITY + ", COUNT(*), SUM(" + COL_FRAME_BYTES + ") FROM "
+            + TABLE_PENDING + " GROUP BY " + COL_PRIORITY, null)) {
+            while (c.moveToNext()) {
+                int rank = c.getInt(0);
+                long bytes = c.getLong(2);
+                if (rank >= 0 && rank < byPriority.length) byPriority[rank] += bytes;
+                frames += c.getInt(1);
+                total += bytes;
+            }
+        }
+        long oldest = -1L;
+        try (Cursor c = db.rawQuery("SELECT MIN(" + COL_CREATED_AT + ") FROM " + TABLE_PENDING, null)) {
+            if (c.moveToFirst() && !c.isNull(0)) oldest = c.getLong(0);
+        }
+        return new SpoolUsage(total, frames, byPriority, oldest, expiredEvictions, budgetEvictions);
+    }
+
+    /** Returns frames left in flight by an interrupted flush to pending. */
+    synchronized int resetInFlight() {
+        SQLiteDatabase db = helper.getWritableDatabase();
+        ContentValues values = new ContentValues();
+        values.put(COL_STATUS, STATUS_PENDING);
+        return db.update(TABLE_PENDING, values, COL_STATUS + " = ?", new String[]{STATUS_SENDING});
+    }
+
+    /**
+     * Marks up to {@code limit} pending frames queued after the (createdAt, id) cursor as sending
+     * and returns them oldest first. Rows whose spool file has gone missing are dropped.
+     */
+    @NonNull
+    synchronized List<PendingFrame> claimPending(int limit, long afterCreatedAt, long afterId) {
+        SQLiteDatabase db = helper.getWritableDatabase();
+        List<PendingFrame> claimed = new ArrayList<>(limit);
+        db.beginTransaction();
+        try {
+            try (Cursor c = db.query(
+                TABLE_PENDING,
+                FRAME_COLUMNS,
+                COL_STATUS + " = ? AND (" + COL_CREATED_AT + " > ? OR ("
+                    + COL_CREATED_AT + " = ? AND " + COL_ID + " > ?))",
+                new String[]{STATUS_PENDING, String.valueOf(afterCreatedAt),
+                    String.valueOf(afterCreatedAt), String.valueOf(afterId)},
+                null,
+                null,
+                COL_CREATED_AT + " ASC, " + COL_ID + " ASC",
+                String.valueOf(limit)
+            )) {
+                while (c.moveToNext()) {
+                    claimed.add(toPendingFrame(c));
+                }
+            }
+            for (Iterator<PendingFrame> it = claimed.iterator(); it.hasNext(); ) {
+                PendingFrame pending = it.next();
+                if (pending.frame.jpegFile().isFile()) {
+                    updateStatus(pending.id, STATUS_SENDING);
+                } else {
+                    Logger.logWarn(LOG_TAG, "Dropping queued frame " + pending.id + " with missing spool file");
+                    db.delete(TABLE_PENDING, COL_ID + " = ?", new String[]{String.valueOf(pending.id)});
+                    it.remove();
+                }
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+        return claimed;
+    }
+
+    /** Frames waiting to be sent, including any in flight. */
+    synchronized int pendingCount() {
+        SQLiteDatabase db = helper.getReadableDatabase();
+        return (int) DatabaseUtils.queryNumEntries(db, TABLE_PENDING, COL_STATUS + " IN (?, ?)",
+            new String[]{STATUS_PENDING, STATUS_SENDING});
+    }
+
+    /** created_at of the oldest frame waiting to be sent, or -1 when there is none. */
+    synchronized long oldestPendingCreatedAt() {
+        SQLiteDatabase db = helper.getReadableDatabase();
+        try (Cursor c = db.rawQuery("SELECT MIN(" + COL_CREATED_AT + ") FROM " + TABLE_PENDING
+            + " WHERE " + COL_STATUS + " IN (?, ?)", new String[]{STATUS_PENDING, STATUS_SENDING})) {
+            if (c.moveToFirst() && !c.isNull(0)) return c.getLong(0);
+            return -1L;
+        }
+    }
+
+    synchronized void markPending(long id) {
+        updateStatus(id, STATUS_PENDING);
+    }
+
+    synchronized void markFailed(long id) {
+        updateStatus(id, STATUS_FAILED);
+    }
+
+    synchronized int incrementRetryCount(long id) {
+        SQLiteDatabase db = helper.getWritableDatabase();
+        db.execSQL("UPDATE " + TABLE_PENDING + " SET "
+            + COL_RETRY_COUNT + " = " + COL_RETRY_COUNT + " + 1 WHERE " + COL_ID + " = ?",
+            new Object[]{id});
+        try (Cursor c = db.query(
+            TABLE_PENDING,
+            new String[]{COL_RETRY_COUNT},
+            COL_ID + " = ?",
+            new String[]{String.valueOf(id)},
+            null,
+            null,
+            null
+        )) {
+            if (c.moveToFirst()) return c.getInt(0);
+            return 0;
+        }
+    }
+
+    /**
+     * Deletes up to {@link #EVICT_BATCH} rows matching {@code where} in {@code orderBy} order,
+     * stopping once {@code byteTarget} bytes are freed. Returns {rows, bytes} removed.
+     */
+    @NonNull
+    private long[] evictBatch(@NonNull SQLiteDatabase db, @NonNull String where, @NonNull String orderBy,
+                              long byteTarget) {
+        List<Long> ids = new ArrayList<>(EVICT_BATCH);
+        List<String> files = new ArrayList<>(EVICT_BATCH);
+        long bytes = 0L;
+        try (Cursor c = db.query(TABLE_PENDING, new String[]{COL_ID, COL_FRAME_FILE, COL_FRAME_BYTES},
+            where, null, null, null, orderBy, String.valueOf(EVICT_BATCH))) {
+            while (bytes < byteTarget && c.moveToNext()) {
+                ids.add(c.getLong(0));
+                files.add(c.getString(1));
+                bytes += c.getLong(2);
+            }
+        }
+        for (int i = 0; i < ids.size(); i++) {
+            db.delete(TABLE_PENDING, COL_ID + " = ?", new String[]{String.valueOf(ids.get(i))});
+            deleteQuietly(new File(spoolDir, files.get(i)));
+        }
+        return new long[]{ids.size(), bytes};
+    }
+
+    private static long totalBytes(@NonNull SQLiteDatabase db) {
+        try (Cursor c = db.rawQuery("SELECT COALESCE(SUM(" + COL_FRAME_BYTES + "), 0) FROM " + TABLE_PENDING, null)) {
+            return c.moveToFirst() ? c.getLong(0) : 0L;
+        }
+    }
+
+    /** Deletes the row and its spool file. */
+    synchronized void remove(long id) {
+        SQLiteDatabase db = helper.getWritableDatabase();
+        String[] args = {String.valueOf(id)};
+        String fileName = null;
+        try (Cursor c = db.query(TABLE_PENDING, new String[]{COL_FRAME_FILE}, COL_ID + " = ?",
+            args, null, null, null)) {
+            if (c.moveToFirst()) fileName = c.getString(0);
+        }
+        db.delete(TABLE_PENDING, COL_ID + " = ?", args);
+        if (fileName != null) deleteQuietly(new File(spoolDir, fileName));
+    }
+
+    private void updateStatus(long id, @NonNull String status) {
+        SQLiteDatabase db = helper.getWritableDatabase();
+        ContentValues values = new ContentValues();
+        values.put(COL_STATUS, status);
+        db.update(TABLE_PENDING, values, COL_ID + " = ?", new String[]{String.valueOf(id)});
+    }
+
+    @NonNull
+    private PendingFrame toPendingFrame(@NonNull Cursor c) {
+        Double heading = c.isNull(5) ? null : c.getDouble(5);
+        RelayFrame frame = new RelayFrame(
+            c.getString(1), c.getLong(2), c.getDouble(3), c.getDouble(4), heading,
+            RelayClient.FramePriority.fromRank(c.getInt(10)), new File(spoolDir, c.getString(6)));
+        return new PendingFrame(c.getLong(0), frame, c.getLong(7), c.getString(8), c.getInt(9));
+    }
+
+    private void insert(@NonNull SQLiteDatabase db, @NonNull RelayFrame frame, long createdAt,
+                        @NonNull String status, int retryCount) throws IOException {
+        File file = spool(frame);
+        SQLiteStatement insert = db.compileStatement("INSERT INTO " + TABLE_PENDING + " ("
+            + COL_NODE_ID + ", " + COL_TS + ", " + COL_LAT + ", " + COL_LON + ", " + COL_HEADING + ", "
+            + COL_FRAME_FILE + ", " + COL_FRAME_BYTES + ", " + COL_CREATED_AT + ", " + COL_STATUS + ", "
+            + COL_RETRY_COUNT + ", " + COL_PRIORITY + ") VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
+        try {
+            insert.bindString(1, frame.nodeId);
+            insert.bindLong(2, frame.ts);
+            insert.bindDouble(3, frame.lat);
+            insert.bindDouble(4, frame.lon);
+            if (frame.heading != null) {
+                insert.bindDouble(5, frame.heading);
+            } else {
+                insert.bindNull(5);
+            }
+            insert.bindString(6, file.getName());
+            insert.bindLong(7, file.length());
+            insert.bindLong(8, createdAt);
+            insert.bindString(9, status);
+            insert.bindLong(10, retryCount);
+            insert.bindLong(11, frame.priority.rank);
+            insert.executeInsert();
+        } catch (RuntimeException e) {
+            deleteQuietly(file);
+            throw e;
+        } finally {
+            insert.close();
+        }
+    }
+
+    /** Writes an in-memory JPEG to a new spool file; a frame already on disk is used as is. */
+    @NonNull
+    private File spool(@NonNull RelayFrame frame) throws IOException {
+        byte[] jpeg = frame.jpegBytes();
+        if (jpeg == null) return frame.jpegFile();
+        if (!spoolDir.isDirectory() && !spoolDir.mkdirs()) {
+            throw new IOException("cannot create " + spoolDir);
+        }
+        File file = File.createTempFile("frame_", ".jpg", spoolDir);
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(jpeg);
+            out.getFD().sync();
+        } catch (IOException e) {
+            deleteQuietly(file);
+            throw e;
+        }
+        return file;
+    }
+
+    private static void createTables(@NonNull SQLiteDatabase db) {
+        db.execSQL("CREATE TABLE IF NOT EXISTS " + TABLE_PENDING + " ("
+            + COL_ID + " INTEGER PRIMARY KEY AUTOINCREMENT, "
+            + COL_NODE_ID + " TEXT NOT NULL, "
+            + COL_TS + " INTEGER NOT NULL, "
+            + COL_LAT + " REAL NOT NULL, "
+            + COL_LON + " REAL NOT NULL, "
+            + COL_HEADING + " REAL, "
+            + COL_FRAME_FILE + " TEXT NOT NULL, "
+            + COL_FRAME_BYTES + " INTEGER NOT NULL, "
+            + COL_CREATED_AT + " INTEGER NOT NULL, "
+            + COL_STATUS + " TEXT NOT NULL, "
+            + COL_RETRY_COUNT + " INTEGER NOT NULL DEFAULT 0, "
+            + COL_PRIORITY + " INTEGER NOT NULL DEFAULT " + RelayClient.FramePriority.IDLE.rank
+            + ")");
+        db.execSQL("CREATE INDEX IF NOT EXISTS idx_relay_pending_status_created "
+            + "ON " + TABLE_PENDING + "(" + COL_STATUS + ", " + COL_CREATED_AT + ")");
+        createIndexes(db);
+    }
+
+    private static void createIndexes(@NonNull SQLiteDatabase db) {
+        db.execSQL("CREATE INDEX IF NOT EXISTS idx_relay_pending_priority_created "
+            + "ON " + TABLE_PENDING + "(" + COL_PRIORITY + ", " + COL_CREATED_AT + ")");
+    }
+
+    /** Version 1 stored whole jpeg_base64 JSON bodies as TEXT; move them to spool files. */
+    private void migrateFromJsonPayloads(@NonNull SQLiteDatabase db) {
+        db.execSQL("DROP INDEX IF EXISTS idx_relay_pending_status_created");
+        db.execSQL("ALTER TABLE " + TABLE_PENDING + " RENAME TO " + TABLE_PENDING_V1);
+        createTables(db);
+        int migrated = 0;
+        int dropped = 0;
+        try (Cursor c = db.query(TABLE_PENDING_V1,
+            new String[]{COL_V1_PAYLOAD, COL_CREATED_AT, COL_STATUS, COL_RETRY_COUNT},
+            null, null, null, null, COL_ID + " ASC")) {
+            while (c.moveToNext()) {
+                try {
+                    RelayFrame frame = RelayFrame.fromJson(new JSONObject(c.getString(0)));
+                    insert(db, frame, c.getLong(1), c.getString(2), c.getInt(3));
+                    migrated++;
+                } catch (JSONException | IllegalArgumentException | IOException e) {
+                    dropped++;
+                }
+            }
+        }
+        db.execSQL("DROP TABLE " + TABLE_PENDING_V1);
+        Logger.logInfo(LOG_TAG, "Migrated " + migrated + " queued frames to spool files, dropped " + dropped);
+    }
+
+    private static void deleteQuietly(@NonNull File file) {
+        if (file.exists() && !file.delete()) {
+            Logger.logWarn(LOG_TAG, "Failed to delete " + file);
+        }
+    }
+
+    static final class PendingFrame {
+        final long id;
+        @NonNull final RelayFrame frame;
+        final long createdAt;
+        @NonNull final String status;
+        final int retryCount;
+
+        PendingFrame(long id, @NonNull RelayFrame frame, long createdAt, @NonNull String status, int retryCount) {
+            this.id = id;
+            this.frame = frame;
+            this.createdAt = createdAt;
+            this.status = status;
+            this.retryCount = retryCount;
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package ai.clawphones.agent.chat;
+
+import androidx.annotation.NonNull;
+
+import com.termux.shared.logger.Logger;
+
+import org.json.JSONException;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Drains the relay frame queue with up to {@code window} uploads in flight.
+ *
+ * Frames are claimed oldest first behind a (createdAt, id) cursor, so a frame that fails is left
+ * behind for the next flush instead of blocking the ones queued after it. Failures are sorted
+ * into three kinds:
+ *
+ *   retryable  network errors, 408, 429, 5xx: back to pending; failed after MAX_RETRIES
+ *   permanent  other 4xx, frames that cannot be encoded: dropped with their spool file
+ *   auth       401, 403: the flush stops and everything in flight goes back to pending
+ *
+ * Queue bookkeeping happens on the flushing thread; only the uploads run on the worker pool.
+ */
+final class RelayQueueFlusher {
+
+    private static final String LOG_TAG = "RelayQueueFlusher";
+
+    static final int DEFAULT_WINDOW = 4;
+    static final int MAX_RETRIES = 3;
+
+    interface Uploader {
+        void upload(@NonNull RelayFrame frame) throws IOException, RelayClient.RelayException, JSONException;
+    }
+
+    enum Failure { RETRYABLE, PERMANENT, AUTH }
+
+    /** Outcome of one flush. Ages are measured from enqueue to the moment the frame was sent. */
+    static final class Stats {
+        int sent;
+        int retried;
+        int failed;
+        int dropped;
+        boolean authFailed;
+        long bytesSent;
+        long elapsedMs;
+        long maxAgeMs;
+        long medianAgeMs;
+        int remaining;
+        long oldestRemainingAgeMs = -1L;
+
+        double framesPerSecond() {
+            return elapsedMs <= 0L ? sent : sent * 1000.0 / elapsedMs;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return String.format(Locale.US,
+                "sent=%d (%.1f/s, %d KB) retried=%d failed=%d dropped=%d auth=%b in %d ms; "
+                    + "age median=%d ms max=%d ms; remaining=%d oldest=%d ms",
+                sent, framesPerSecond(), bytesSent / 1024L, retried, failed, dropped, authFailed,
+                elapsedMs, medianAgeMs, maxAgeMs, remaining, oldestRemainingAgeMs);
+        }
+    }
+
+    private final RelayFrameQueue queue;
+    private final ExecutorService workers;
+    private final int window;
+
+    RelayQueueFlusher(@NonNull RelayFrameQueue queue, @NonNull ExecutorService workers, int window) {
+        this.queue = queue;
+        this.workers = workers;
+        this.window = Math.max(1, window);
+    }
+
+    /** Drains what can be sent now. Blocks until every upload it started has finished. */
+    @NonNull
+    Stats flush(@NonNull Uploader uploader) {
+        Stats stats = new Stats();
+        long startedAt = System.currentTimeMillis();
+        List<Long> ages = new ArrayList<>();
+        ExecutorCompletionService<Attempt> completion = new ExecutorCompletionService<>(workers);
+        long cursorCreatedAt = Long.MIN_VALUE;
+        long cursorId = Long.MIN_VALUE;
+        int inFlight = 0;
+        boolean stop = false;
+
+        queue.resetInFlight();
+        queue.trim(startedAt);
+        while (true) {
+            if (!stop && inFlight < window) {
+                List<RelayFrameQueue.PendingFrame> batch =
+                    queue.claimPending(window - inFlight, cursorCreatedAt, cursorId);
+                for (RelayFrameQueue.PendingFrame pending : batch) {
+                    completion.submit(() -> attempt(uploader, pending));
+                    inFlight++;
+                    cursorCreatedAt = pending.createdAt;
+                    cursorId = pending.id;
+                }
+            }
+            if (inFlight == 0) break;
+
+            Attempt attempt;
+            try {
+                attempt = take(completion);
+            } catch (InterruptedException e) {
+                // Claimed frames stay marked sending; the next flush resets them.
+                Thread.currentThread().interrupt();
+                break;
+            }
+            inFlight--;
+            if (record(attempt, stats, ages)) {
+                stop = true;
+            }
+        }
+
+        stats.elapsedMs = System.currentTimeMillis() - startedAt;
+        if (!ages.isEmpty()) {
+            Long[] sorted = ages.toArray(new Long[0]);
+            Arrays.sort(sorted);
+            stats.medianAgeMs = sorted[sorted.length / 2];
+            stats.maxAgeMs = sorted[sorted.length - 1];
+        }
+        stats.remaining = queue.pendingCount();
+        long oldest = queue.oldestPendingCreatedAt();
+        if (oldest >= 0L) stats.oldestRemainingAgeMs = System.currentTimeMillis() - oldest;
+        if (stats.sent + stats.retried + stats.failed + stats.dropped > 0 || stats.authFailed) {
+            Logger.logInfo(LOG_TAG, "Flush " + stats);
+        }
+        return stats;
+    }
+
+    /** Applies one result to the queue. Returns true when the flush should stop claiming. */
+    private boolean record(@NonNull Attempt attempt, @NonNull Stats stats, @NonNull List<Long> ages) {
+        RelayFrameQueue.PendingFrame pending = attempt.pending;
+        if (attempt.error == null) {
+            queue.remove(pending.id);
+            stats.sent++;
+            stats.bytesSent += attempt.bytes;
+            ages.add(Math.max(0L, attempt.finishedAt - pending.createdAt));
+            return false;
+        }
+
+        switch (classify(attempt.error)) {
+            case AUTH:
+                queue.markPending(pending.id);
+                stats.authFailed = true;
+                return true;
+            case PERMANENT:
+                Logger.logWarn(LOG_TAG, "Dropping frame " + pending.id + ": " + attempt.error.getMessage());
+                queue.remove(pending.id);
+                stats.dropped++;
+                return false;
+            case RETRYABLE:
+            default:
+                if (queue.incrementRetryCount(pending.id) >= MAX_RETRIES) {
+                    queue.markFailed(pending.id);
+                    stats.failed++;
+                } else {
+                    queue.markPending(pending.id);
+                    stats.retried++;
+                }
+                return false;
+        }
+    }
+
+    @NonNull
+    static Failure classify(@NonNull Exception error) {
+        if (error instanceof RelayClient.RelayException) {
+            int code = ((RelayClient.RelayException) error).statusCode;
+            if (code == 401 || code == 403) return Failure.AUTH;
+            if (code == 408 || code == 429 || code >= 500) return Failure.RETRYABLE;
+            return Failure.PERMANENT;
+        }
+        if (error instanceof JSONException) return Failure.PERMANENT;
+        return Failure.RETRYABLE;
+    }
+
+    @NonNull
+    private static Attempt attempt(@NonNull Uploader uploader, @NonNull RelayFrameQueue.PendingFrame pending) {
+        long bytes = pending.frame.jpegLength();
+        try {
+            uploader.upload(pending.frame);
+            return new Attempt(pending, bytes, null);
+        } catch (Exception e) {
+            return new Attempt(pending, bytes, e);
+        }
+    }
+
+    @NonNull
+    private static Attempt take(@NonNull ExecutorCompletionService<Attempt> completion) throws InterruptedException {
+        Future<Attempt> future = completion.take();
+        try {
+            return future.get();
+        } catch (ExecutionException e) {
+            // attempt() catches everything it can; an Error escaping it is rethrown as is.
+            Throwable cause = e.getCause();
+            if (cause instanceof Error) throw (Error) cause;
+            throw new IllegalStateException(cause);
+        }
+    }
+
+    private static final class Attempt {
+        final RelayFrameQueue.PendingFrame pending;
+        final long bytes;
+        final Exception error;
+        final long finishedAt = System.currentTimeMillis();
+
+        Attempt(RelayFrameQueue.PendingFrame pending, long bytes, Exception error) {
+            this.pending = pending;
+            this.bytes = bytes;
+            this.error = error;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package ai.clawphones.agent.chat;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Replays recorded frames (JPEG or PNG) from a directory in file name order, so the frame
+ * pipeline can be exercised without a camera.
+ */
+final class ReplayFrameSource implements FrameSource {
+
+    private final List<File> files;
+    private int index;
+    private boolean closed;
+
+    ReplayFrameSource(@NonNull File directory) throws IOException {
+        this(listFrames(directory));
+    }
+
+    ReplayFrameSource(@NonNull List<File> files) {
+        this.files = new ArrayList<>(files);
+    }
+
+    int size() {
+        return files.size();
+    }
+
+    @Nullable
+    @Override
+    public synchronized Frame next() throws IOException {
+        if (closed || index >= files.size()) return null;
+        File file = files.get(index++);
+        Bitmap frame = BitmapFactory.decodeFile(file.getAbsolutePath());
+        if (frame == null) {
+            throw new IOException("cannot decode frame " + file);
+        }
+        return new BitmapFrame(frame);
+    }
+
+    @Override
+    public synchronized void close() {
+        closed = true;
+    }
+
+    @NonNull
+    private static List<File> listFrames(@NonNull File directory) throws IOException {
+        File[] entries = directory.listFiles((dir, name) -> {
+            String lower = name.toLowerCase(Locale.US);
+            return lower.endsWith(".jpg") || lower.endsWith(".jpeg") || lower.endsWith(".png");
+        });
+        if (entries == null) {
+            throw new IOException("not a directory: " + directory);
+        }
+        List<File> frames = new ArrayList<>(Arrays.asList(entries));
+        Collections.sort(frames, (a, b) -> a.getName().compareTo(b.getName()));
+        return frames;
+    }
+}
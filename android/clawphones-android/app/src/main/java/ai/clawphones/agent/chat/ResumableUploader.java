@@ -0,0 +1,339 @@
+package ai.clawphones.agent.chat;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.termux.shared.logger.Logger;
+
+import okhttp3.HttpUrl;
+import okhttp3.MediaType;
+import okhttp3.MultipartBody;
+import okhttp3.Request;
+import okhttp3.RequestBody;
+import okhttp3.Response;
+import okhttp3.ResponseBody;
+import okio.BufferedSink;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Streams attachment uploads to the backend.
+ *
+ * Payloads up to {@link #CHUNKED_THRESHOLD_BYTES} go out as one multipart POST to /v1/upload with
+ * a known Content-Length, read from the {@link UploadSource} as the socket drains. Larger payloads
+ * use the offset protocol so a dropped connection costs at most one chunk:
+ *
+ *   POST  /v1/upload/sessions            {conversation_id, filename, mime_type, size}
+ *                                        -> {upload_id, offset, chunk_size?}
+ *   PATCH /v1/upload/sessions/{id}       Upload-Offset: n, body = bytes [n, n + chunk)
+ *                                        -> Upload-Offset: n', plus the file JSON once complete
+ *   HEAD  /v1/upload/sessions/{id}       -> Upload-Offset: bytes the server has committed
+ *
+ * After a failed or rejected (409) chunk the committed offset is fetched with HEAD and the upload
+ * continues from there. A server without the session endpoint (404/405/501) gets the single POST.
+ */
+final class ResumableUploader {
+
+    private static final String LOG_TAG = "ResumableUploader";
+
+    static final long CHUNKED_THRESHOLD_BYTES = 4L * 1024L * 1024L;
+    static final long DEFAULT_CHUNK_BYTES = 1024L * 1024L;
+    static final int MAX_CHUNK_ATTEMPTS = 5;
+    static final String HEADER_UPLOAD_OFFSET = "Upload-Offset";
+
+    private static final long MIN_CHUNK_BYTES = 64L * 1024L;
+    private static final long MAX_CHUNK_BYTES = 8L * 1024L * 1024L;
+    private static final long DEFAULT_RETRY_DELAY_MS = 1_000L;
+    private static final long MAX_RETRY_DELAY_MS = 10_000L;
+    private static final int COPY_BUFFER_BYTES = 8 * 1024;
+    private static final MediaType JSON = MediaType.get("application/json; charset=utf-8");
+    private static final MediaType OFFSET_STREAM = MediaType.get("application/offset+octet-stream");
+
+    private final String mBaseUrl;
+    @Nullable private final String mToken;
+    private final long mRetryDelayMs;
+
+    ResumableUploader(@NonNull String baseUrl, @Nullable String token) {
+        this(baseUrl, token, DEFAULT_RETRY_DELAY_MS);
+    }
+
+    /** Test constructor with a shorter retry delay. */
+    ResumableUploader(@NonNull String baseUrl, @Nullable String token, long retryDelayMs) {
+        mBaseUrl = baseUrl;
+        mToken = token;
+        mRetryDelayMs = Math.max(0L, retryDelayMs);
+    }
+
+    @NonNull
+    ClawPhonesAPI.UploadedFile upload(
+        @NonNull String conversationId,
+        @NonNull UploadSource source,
+        @NonNull String filename,
+        @NonNull String mimeType,
+        @Nullable ClawPhonesAPI.UploadProgressListener listener
+    ) throws IOException, ClawPhonesAPI.ApiException, JSONException {
+        long total = source.length();
+        Progress progress = new Progress(listener, total);
+        if (total > CHUNKED_THRESHOLD_BYTES) {
+            JSONObject session = createSession(conversationId, filename, mimeType, total);
+            if (session != null) {
+                return uploadChunked(session, source, filename, mimeType, progress);
+            }
+        }
+        return uploadSingle(conversationId, source, filename, mimeType, progress);
+    }
+
+    // ── Single request ────────────────────────────────────────────────────────
+
+    private ClawPhonesAPI.UploadedFile uploadSingle(String conversationId, UploadSource source,
+                                                    String filename, String mimeType, Progress progress)
+        throws IOException, ClawPhonesAPI.ApiException, JSONException {
+        HttpUrl url = HttpUrl.get(mBaseUrl + "/v1/upload").newBuilder()
+            .addQueryParameter("conversation_id", conversationId)
+            .build();
+        RequestBody filePart = new SourceBody(source, 0L, source.length(), MediaType.parse(mimeType), progress);
+        RequestBody multipart = new MultipartBody.Builder()
+            .setType(MultipartBody.FORM)
+            .addFormDataPart("file", filename, filePart)
+            .build();
+        JSONObject resp = executeJson(newRequest(url.toString()).post(multipart).build());
+        return toUploadedFile(resp, filename, mimeType, source.length());
+    }
+
+    // ── Offset protocol ───────────────────────────────────────────────────────
+
+    /** Returns the session, or null when the server has no session endpoint. */
+    @Nullable
+    private JSONObject createSession(String conversationId, String filename, String mimeType, long total)
+        throws IOException, ClawPhonesAPI.ApiException, JSONException {
+        JSONObject body = new JSONObject();
+        body.put("conversation_id", conversationId);
+        body.put("filename", filename);
+        body.put("mime_type", mimeType);
+        body.put("size", total);
+        Request request = newRequest(mBaseUrl + "/v1/upload/sessions")
+            .post(RequestBody.create(body.toString(), JSON))
+            .build();
+        try (Response response = HttpTransport.execute(request)) {
+            int code = response.code();
+            if (code == 404 || code == 405 || code == 501) {
+                Logger.logInfo(LOG_TAG, "Upload sessions unsupported (HTTP " + code + "), using single request");
+                return null;
+            }
+            String raw = readBody(response);
+            if (!response.isSuccessful()) throw apiError(code, raw);
+            JSONObject session = new JSONObject(raw);
+            if (session.optString("upload_id", "").trim().isEmpty()) {
+                throw new JSONException("Missing upload_id");
+            }
+            return session;
+        }
+    }
+
+    private ClawPhonesAPI.UploadedFile uploadChunked(JSONObject session, UploadSource source,
+                                                     String filename, String mimeType, Progress progress)
+        throws IOException, ClawPhonesAPI.ApiException, JSONException {
+        String sessionUrl = mBaseUrl + "/v1/upload/sessions/" + session.getString("upload_id").trim();
+        long total = source.length();
+        long chunkBytes = clamp(session.optLong("chunk_size", DEFAULT_CHUNK_BYTES));
+        long offset = Math.max(0L, Math.min(total, session.optLong("offset", 0L)));
+        progress.set(offset);
+
+        int failures = 0;
+        while (true) {
+            long length = Math.min(chunkBytes, total - offset);
+            Request request = newRequest(sessionUrl)
+                .header(HEADER_UPLOAD_OFFSET, Long.toString(offset))
+                .patch(new SourceBody(source, offset, length, OFFSET_STREAM, progress))
+                .build();
+            try (Response response = HttpTransport.execute(request)) {
+                int code = response.code();
+                String raw = readBody(response);
+                if (response.isSuccessful()) {
+                    long committed = parseOffset(response.header(HEADER_UPLOAD_OFFSET), offset + length);
+                    if (committed >= total) {
+                        if (raw.isEmpty()) throw new JSONException("Upload finished without file metadata");
+                        progress.set(total);
+                        return toUploadedFile(new JSONObject(raw), filename, mimeType, total);
+                    }
+                    if (committed <= offset) {
+                        throw new IOException("Upload made no progress at offset " + offset);
+                    }
+                    offset = committed;
+                    progress.set(offset);
+                    failures = 0;
+                    continue;
+                }
+                if (code != 409 && !isRetryable(code)) throw apiError(code, raw);
+                Logger.logWarn(LOG_TAG, "Chunk at " + offset + " rejected (HTTP " + code + "), resyncing");
+            } catch (IOException e) {
+                if (e instanceof java.io.InterruptedIOException && Thread.currentThread().isInterrupted()) throw e;
+                Logger.logWarn(LOG_TAG, "Chunk at " + offset + " failed: " + e.getMessage());
+            }
+
+            failures++;
+            if (failures >= MAX_CHUNK_ATTEMPTS) {
+                throw new IOException("Upload failed after " + failures + " attempts at offset " + offset);
+            }
+            sleepBeforeRetry(failures);
+            try {
+                offset = queryOffset(sessionUrl, total);
+                progress.set(offset);
+            } catch (IOException e) {
+                Logger.logWarn(LOG_TAG, "Offset query failed: " + e.getMessage());
+            }
+        }
+    }
+
+    private long queryOffset(String sessionUrl, long total) throws IOException, ClawPhonesAPI.ApiException {
+        try (Response response = HttpTransport.execute(newRequest(sessionUrl).head().build())) {
+            if (!response.isSuccessful()) throw apiError(response.code(), "");
+            long offset = parseOffset(response.header(HEADER_UPLOAD_OFFSET), -1L);
+            if (offset < 0L) throw new IOException("Missing " + HEADER_UPLOAD_OFFSET);
+            return Math.min(offset, total);
+        }
+    }
+
+    private void sleepBeforeRetry(int failures) throws IOException {
+        long delay = Math.min(MAX_RETRY_DELAY_MS, mRetryDelayMs * failures);
+        if (delay <= 0L) return;
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new java.io.InterruptedIOException("upload interrupted");
+        }
+    }
+
+    private static boolean isRetryable(int code) {
+        return code == 408 || code == 429 || code >= 500;
+    }
+
+    private static long clamp(long chunkBytes) {
+        return Math.max(MIN_CHUNK_BYTES, Math.min(MAX_CHUNK_BYTES, chunkBytes));
+    }
+
+    private static long parseOffset(@Nullable String header, long fallback) {
+        if (header == null) return fallback;
+        try {
+            return Long.parseLong(header.trim());
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+
+    // ── HTTP helpers ──────────────────────────────────────────────────────────
+
+    private Request.Builder newRequest(String url) {
+        Request.Builder builder = new Request.Builder()
+            .url(url)
+            .header("Accept", "application/json");
+        if (mToken != null && !mToken.trim().isEmpty()) {
+            builder.header("Authorization", "Bearer " + mToken.trim());
+        }
+        return builder;
+    }
+
+    private static JSONObject executeJson(Request request)
+        throws IOException, ClawPhonesAPI.ApiException, JSONException {
+        try (Response response = HttpTransport.execute(request)) {
+            String raw = readBody(response);
+            if (!response.isSuccessful()) throw apiError(response.code(), raw);
+            if (raw.isEmpty()) throw new JSONException("Empty response body");
+            return new JSONObject(raw);
+        }
+    }
+
+    private static String readBody(Response response) throws IOException {
+        ResponseBody body = response.body();
+        return body == null ? "" : body.string();
+    }
+
+    private static ClawPhonesAPI.ApiException apiError(int code, String raw) {
+        Logger.logError(LOG_TAG, "Upload error " + code + ": " + raw);
+        return new ClawPhonesAPI.ApiException(code, raw == null || raw.isEmpty() ? "HTTP " + code : raw);
+    }
+
+    private static ClawPhonesAPI.UploadedFile toUploadedFile(JSONObject resp, String filename,
+                                                             String mimeType, long size) {
+        return new ClawPhonesAPI.UploadedFile(
+            resp.optString("file_id", ""),
+            resp.optString("filename", filename),
+            resp.optString("mime_type", mimeType),
+            resp.optLong("size", size),
+            resp.optString("extracted_text", null)
+        );
+    }
+
+    // ── Streaming body and progress ───────────────────────────────────────────
+
+    /** Reports bytes the server has accepted or that have been written to the socket. */
+    private static final class Progress {
+        @Nullable private final ClawPhonesAPI.UploadProgressListener mListener;
+        private final long mTotal;
+        private long mLastReported = -1L;
+
+        Progress(@Nullable ClawPhonesAPI.UploadProgressListener listener, long total) {
+            mListener = listener;
+            mTotal = total;
+        }
+
+        void set(long sent) {
+            if (mListener == null || sent == mLastReported) return;
+            // At most ~100 callbacks per upload, plus the final one.
+            long step = Math.max(1L, mTotal / 100L);
+            if (mLastReported >= 0L && sent < mTotal && Math.abs(sent - mLastReported) < step) return;
+            mLastReported = sent;
+            mListener.onProgress(sent, mTotal);
+        }
+    }
+
+    /**
+     * Bytes [offset, offset + length) of a source, read as OkHttp writes them. Reopened on every
+     * write, so OkHttp may retry the request.
+     */
+    private static final class SourceBody extends RequestBody {
+        private final UploadSource mSource;
+        private final long mOffset;
+        private final long mLength;
+        @Nullable private final MediaType mType;
+        private final Progress mProgress;
+
+        SourceBody(UploadSource source, long offset, long length, @Nullable MediaType type, Progress progress) {
+            mSource = source;
+            mOffset = offset;
+            mLength = length;
+            mType = type;
+            mProgress = progress;
+        }
+
+        @Nullable
+        @Override
+        public MediaType contentType() {
+            return mType;
+        }
+
+        @Override
+        public long contentLength() {
+            return mLength;
+        }
+
+        @Override
+        public void writeTo(@NonNull BufferedSink sink) throws IOException {
+            byte[] buffer = new byte[COPY_BUFFER_BYTES];
+            long remaining = mLength;
+            try (InputStream in = mSource.open(mOffset)) {
+                while (remaining > 0L) {
+                    int read = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+                    if (read == -1) throw new IOException("source ended " + remaining + " bytes early");
+                    sink.write(buffer, 0, read);
+                    remaining -= read;
+                    mProgress.set(mOffset + mLength - remaining);
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package ai.clawphones.agent.chat;
+
+import android.database.sqlite.SQLiteDatabase;
+
+import androidx.annotation.NonNull;
+
+/**
+ * Connection settings shared by the chat-side SQLite databases
+ * (conversation cache, pending message queue, relay frame queue).
+ *
+ * Call {@link #configure(SQLiteDatabase)} from {@code SQLiteOpenHelper.onConfigure}.
+ */
+final class SqliteTuning {
+
+    static final int PAGE_SIZE_BYTES = 4096;
+
+    private SqliteTuning() {
+    }
+
+    static void configure(@NonNull SQLiteDatabase db) {
+        // Only takes effect on a fresh file; must run before the switch to WAL.
+        db.execSQL("PRAGMA page_size = " + PAGE_SIZE_BYTES);
+        // WAL lets reader connections proceed while a sync is writing.
+        db.enableWriteAheadLogging();
+        // NORMAL is durable across app crashes in WAL mode; only power loss can drop the last commit.
+        db.execSQL("PRAGMA synchronous = NORMAL");
+    }
+}
@@ -0,0 +1,337 @@
+package ai.clawphones.agent.chat;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Incremental text/event-stream decoder following the WHATWG server-sent events grammar.
+ *
+ * Bytes are fed in arbitrary chunks; lines may end in CR, LF or CRLF and may be split across
+ * chunks. One scratch line buffer and one data buffer are reused for the life of the decoder, and
+ * field names are matched on bytes, so an event costs no allocation until a listener asks for a
+ * String. Multi-line {@code data:} fields are joined with LF, {@code event:} sets the type of the
+ * next event, {@code id:} sets the last event id once its event is dispatched (and it carries over
+ * to later events, as the spec requires) and {@code retry:} sets the reconnection delay. An event
+ * still open at end of stream is discarded, so the last event id never points past it.
+ *
+ * Not thread-safe; one decoder per stream.
+ */
+final class SseDecoder {
+
+    static final String DEFAULT_EVENT_TYPE = "message";
+
+    private static final int INITIAL_LINE_CAPACITY = 256;
+    private static final int INITIAL_DATA_CAPACITY = 1024;
+    private static final int READ_BUFFER_BYTES = 8 * 1024;
+
+    private static final byte[] UTF8_BOM = {(byte) 0xEF, (byte) 0xBB, (byte) 0xBF};
+    private static final byte[] FIELD_DATA = ascii("data");
+    private static final byte[] FIELD_EVENT = ascii("event");
+    private static final byte[] FIELD_ID = ascii("id");
+    private static final byte[] FIELD_RETRY = ascii("retry");
+
+    /** Receives dispatched events on the thread that feeds the decoder. */
+    interface Listener {
+        /**
+         * Called once per complete event. The event and its data buffer are reused after this
+         * returns, so copy anything that must outlive the call.
+         */
+        void onEvent(@NonNull Event event) throws IOException;
+    }
+
+    /** A dispatched event. Valid only for the duration of {@link Listener#onEvent}. */
+    static final class Event {
+        private final SseDecoder mOwner;
+
+        private Event(SseDecoder owner) {
+            mOwner = owner;
+        }
+
+        @NonNull
+        String type() {
+            return mOwner.mEventType == null ? DEFAULT_EVENT_TYPE : mOwner.mEventType;
+        }
+
+        /** The last event id in effect for this event, or null if none has been sent. */
+        @Nullable
+        String lastEventId() {
+            return mOwner.getLastEventId();
+        }
+
+        /** UTF-8 data bytes; only the first {@link #dataLength()} are valid. */
+        @NonNull
+        byte[] data() {
+            return mOwner.mData;
+        }
+
+        int dataLength() {
+            return mOwner.mDataLength;
+        }
+
+        @NonNull
+        String dataAsString() {
+            return new String(mOwner.mData, 0, mOwner.mDataLength, StandardCharsets.UTF_8);
+        }
+    }
+
+    private final Listener mListener;
+    private final Event mEvent = new Event(this);
+
+    private byte[] mLine = new byte[INITIAL_LINE_CAPACITY];
+    private int mLineLength;
+    private byte[] mData = new byte[INITIAL_DATA_CAPACITY];
+    private int mDataLength;
+    private boolean mHasData;
+    @Nullable private String mEventType;
+    // Id from the event being read, and the one committed by the last dispatch; kept as bytes so
+    // a per-event id costs no String until someone asks for it.
+    private byte[] mPendingId = new byte[32];
+    private int mPendingIdLength = -1;
+    private byte[] mLastId = new byte[32];
+    private int mLastIdLength = -1;
+    @Nullable private String mLastEventId;
+    private long mRetryMs = -1L;
+
+    private boolean mStopped;
+    private boolean mSkipLf;
+    private boolean mAtStreamStart = true;
+    private int mBomMatched;
+    @Nullable private byte[] mReadBuffer;
+
+    SseDecoder(@NonNull Listener listener) {
+        mListener = listener;
+    }
+
+    /** Seeds the last event id, e.g. when resuming a stream with Last-Event-ID. */
+    void setLastEventId(@Nullable String lastEventId) {
+        if (lastEventId == null) {
+            mPendingIdLength = -1;
+        } else {
+            byte[] bytes = lastEventId.getBytes(StandardCharsets.UTF_8);
+            System.arraycopy(bytes, 0, ensurePendingId(bytes.length), 0, bytes.length);
+            mPendingIdLength = bytes.length;
+        }
+        commitLastEventId();
+    }
+
+    @Nullable
+    String getLastEventId() {
+        if (mLastEventId == null && mLastIdLength >= 0) {
+            mLastEventId = new String(mLastId, 0, mLastIdLength, StandardCharsets.UTF_8);
+        }
+        return mLastEventId;
+    }
+
+    /** Reconnection delay from the last {@code retry:} field, or -1 if the server sent none. */
+    long getRetryMs() {
+        return mRetryMs;
+    }
+
+    /**
+     * Clears per-connection parsing state while keeping the last event id and retry delay, so the
+     * decoder can be reused for a resumed connection.
+     */
+    void resetConnection() {
+        mLineLength = 0;
+        mDataLength = 0;
+        mHasData = false;
+        mEventType = null;
+        mPendingIdLength = -1;
+        if (mLastIdLength >= 0) {
+            System.arraycopy(mLastId, 0, ensurePendingId(mLastIdLength), 0, mLastIdLength);
+            mPendingIdLength = mLastIdLength;
+        }
+        mStopped = false;
+        mSkipLf = false;
+        mAtStreamStart = true;
+        mBomMatched = 0;
+    }
+
+    /** Stops decoding; remaining input is ignored until {@link #resetConnection()}. */
+    void stop() {
+        mStopped = true;
+    }
+
+    /** Reads {@code in} until end of stream or {@link #stop()}, dispatching events as they complete. */
+    void readFrom(@NonNull InputStream in) throws IOException {
+        if (mReadBuffer == null) mReadBuffer = new byte[READ_BUFFER_BYTES];
+        int read;
+        while (!mStopped && (read = in.read(mReadBuffer)) != -1) {
+            feed(mReadBuffer, 0, read);
+        }
+    }
+
+    void feed(@NonNull byte[] buffer, int offset, int length) throws IOException {
+        int end = offset + length;
+        for (int i = offset; i < end && !mStopped; i++) {
+            byte b = buffer[i];
+            if (mAtStreamStart && consumeBom(b)) continue;
+
+            if (mSkipLf) {
+                mSkipLf = false;
+                if (b == '\n') continue;
+            }
+            if (b == '\r') {
+                mSkipLf = true;
+                processLine();
+            } else if (b == '\n') {
+                processLine();
+            } else {
+                appendLineByte(b);
+            }
+        }
+    }
+
+    /** Strips a leading UTF-8 byte order mark; returns true while the byte belongs to it. */
+    private boolean consumeBom(byte b) throws IOException {
+        if (b == UTF8_BOM[mBomMatched]) {
+            mBomMatched++;
+            if (mBomMatched == UTF8_BOM.length) mAtStreamStart = false;
+            return true;
+        }
+        mAtStreamStart = false;
+        int matched = mBomMatched;
+        mBomMatched = 0;
+        // A partial match was real content after all.
+        if (matched > 0) feed(UTF8_BOM, 0, matched);
+        return false;
+    }
+
+    private void appendLineByte(byte b) {
+        if (mLineLength == mLine.length) {
+            byte[] grown = new byte[mLine.length * 2];
+            System.arraycopy(mLine, 0, grown, 0, mLineLength);
+            mLine = grown;
+        }
+        mLine[mLineLength++] = b;
+    }
+
+    private void processLine() throws IOException {
+        int length = mLineLength;
+        mLineLength = 0;
+
+        if (length == 0) {
+            dispatch();
+            return;
+        }
+        if (mLine[0] == ':') return;
+
+        int colon = indexOf(mLine, length, (byte) ':');
+        int nameEnd = colon < 0 ? length : colon;
+        int valueStart = colon < 0 ? length : colon + 1;
+        if (valueStart < length && mLine[valueStart] == ' ') valueStart++;
+        int valueLength = length - valueStart;
+
+        if (fieldIs(FIELD_DATA, nameEnd)) {
+            if (mHasData) appendData((byte) '\n');
+            appendData(mLine, valueStart, valueLength);
+            mHasData = true;
+        } else if (fieldIs(FIELD_EVENT, nameEnd)) {
+            mEventType = new String(mLine, valueStart, valueLength, StandardCharsets.UTF_8);
+        } else if (fieldIs(FIELD_ID, nameEnd)) {
+            if (valueLength == 0) {
+                // An empty id clears it, so a reconnect sends no Last-Event-ID.
+                mPendingIdLength = -1;
+            } else if (indexOf(mLine, length, (byte) 0) < 0) {
+                System.arraycopy(mLine, valueStart, ensurePendingId(valueLength), 0, valueLength);
+                mPendingIdLength = valueLength;
+            }
+        } else if (fieldIs(FIELD_RETRY, nameEnd)) {
+            long retry = parseDigits(mLine, valueStart, valueLength);
+            if (retry >= 0L) mRetryMs = retry;
+        }
+    }
+
+    private void dispatch() throws IOException {
+        commitLastEventId();
+        if (!mHasData) {
+            mEventType = null;
+            return;
+        }
+        try {
+            mListener.onEvent(mEvent);
+        } finally {
+            mDataLength = 0;
+            mHasData = false;
+            mEventType = null;
+        }
+    }
+
+    private byte[] ensurePendingId(int length) {
+        if (length > mPendingId.length) mPendingId = new byte[Math.max(length, mPendingId.length * 2)];
+        return mPendingId;
+    }
+
+    private void commitLastEventId() {
+        if (mPendingIdLength == mLastIdLength
+            && (mPendingIdLength < 0 || regionEquals(mPendingId, mLastId, mPendingIdLength))) {
+            return;
+        }
+        if (mPendingIdLength > mLastId.length) mLastId = new byte[mPendingId.length];
+        if (mPendingIdLength > 0) System.arraycopy(mPendingId, 0, mLastId, 0, mPendingIdLength);
+        mLastIdLength = mPendingIdLength;
+        mLastEventId = null;
+    }
+
+    private static boolean regionEquals(byte[] a, byte[] b, int length) {
+        for (int i = 0; i < length; i++) {
+            if (a[i] != b[i]) return false;
+        }
+        return true;
+    }
+
+    private void appendData(byte b) {
+        ensureDataCapacity(1);
+        mData[mDataLength++] = b;
+    }
+
+    private void appendData(byte[] src, int offset, int length) {
+        if (length <= 0) return;
+        ensureDataCapacity(length);
+        System.arraycopy(src, offset, mData, mDataLength, length);
+        mDataLength += length;
+    }
+
+    private void ensureDataCapacity(int extra) {
+        int needed = mDataLength + extra;
+        if (needed <= mData.length) return;
+        byte[] grown = new byte[Math.max(needed, mData.length * 2)];
+        System.arraycopy(mData, 0, grown, 0, mDataLength);
+        mData = grown;
+    }
+
+    private boolean fieldIs(byte[] field, int nameLength) {
+        if (nameLength != field.length) return false;
+        for (int i = 0; i < nameLength; i++) {
+            if (mLine[i] != field[i]) return false;
+        }
+        return true;
+    }
+
+    private static int indexOf(byte[] buffer, int length, byte target) {
+        for (int i = 0; i < length; i++) {
+            if (buffer[i] == target) return i;
+        }
+        return -1;
+    }
+
+    /** ASCII digits only, as the spec requires for retry; -1 otherwise. */
+    private static long parseDigits(byte[] buffer, int offset, int length) {
+        if (length <= 0 || length > 18) return -1L;
+        long value = 0L;
+        for (int i = offset; i < offset + length; i++) {
+            byte b = buffer[i];
+            if (b < '0' || b > '9') return -1L;
+            value = value * 10L + (b - '0');
+        }
+        return value;
+    }
+
+    private static byte[] ascii(String value) {
+        return value.getBytes(StandardCharsets.US_ASCII);
+    }
+}
@@ -46,7 +46,7 @@ public class TaskMarketService {
     private boolean autoMatchEnabled = false;
 
     private TaskMarketService(Context context) {
-        this.httpClient = new OkHttpClient.Builder()
+        this.httpClient = HttpTransport.newBuilder()
                 .connectTimeout(30, TimeUnit.SECONDS)
                 .readTimeout(30, TimeUnit.SECONDS)
                 .writeTimeout(30, TimeUnit.SECONDS)
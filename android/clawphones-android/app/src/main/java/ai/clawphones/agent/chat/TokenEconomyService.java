@@ -45,7 +45,7 @@ public class TokenEconomyService {
     private final Handler mainHandler;
 
     private TokenEconomyService(Context context) {
-        this.httpClient = new OkHttpClient.Builder()
+        this.httpClient = HttpTransport.newBuilder()
                 .connectTimeout(30, TimeUnit.SECONDS)
                 .readTimeout(30, TimeUnit.SECONDS)
                 .writeTimeout(30, TimeUnit.SECONDS)
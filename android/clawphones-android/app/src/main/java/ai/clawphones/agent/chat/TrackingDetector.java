@@ -0,0 +1,136 @@
+package ai.clawphones.agent.chat;
+
+import android.graphics.Bitmap;
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Video mode for the frame pipeline: runs the detector on some frames, tracks in between, and
+ * returns only detections worth an alert.
+ *
+ * The detector is skipped on enough frames to keep its amortized cost per frame within the
+ * latency budget: with a smoothed detector latency L and budget B it runs on one frame in
+ * ceil(L / B), at most one in MAX_SKIP + 1. Skipped frames advance the tracker's predictions
+ * by the time since the previous frame so boxes keep moving.
+ *
+ * {@link #detect(Bitmap)} returns one detection per {@link DetectionTracker} event, that is when
+ * a track is born or changes class, so a person walking through the scene alerts once rather
+ * than on every frame.
+ */
+final class TrackingDetector implements FramePipeline.Detector {
+
+    static final int MAX_SKIP = 5;
+    private static final double LATENCY_ALPHA = 0.3d;
+
+    /** Counters since creation. */
+    static final class Stats {
+        long frames;
+        long detectorRuns;
+        long skipped;
+        long births;
+        long classChanges;
+        int skip;
+        long latencyMs;
+
+        @NonNull
+        @Override
+        public String toString() {
+            return String.format(Locale.US,
+                "frames=%d runs=%d skipped=%d births=%d changes=%d skip=%d latency=%d ms",
+                frames, detectorRuns, skipped, births, classChanges, skip, latencyMs);
+        }
+    }
+
+    private final FramePipeline.Detector detector;
+    private final DetectionTracker tracker;
+    private final long latencyBudgetMs;
+    private final Stats stats = new Stats();
+    private double latencyEwmaMs = -1d;
+    private int framesSinceRun;
+
+    TrackingDetector(@NonNull FramePipeline.Detector detector) {
+        this(detector, new DetectionTracker(), VisionDetector.LATENCY_TARGET_MS);
+    }
+
+    TrackingDetector(@NonNull FramePipeline.Detector detector, @NonNull DetectionTracker tracker,
+                     long latencyBudgetMs) {
+        this.detector = detector;
+        this.tracker = tracker;
+        this.latencyBudgetMs = Math.max(1L, latencyBudgetMs);
+    }
+
+    @NonNull
+    @Override
+    public List<VisionDetector.Detection> detect(@NonNull Bitmap frame) throws Exception {
+        return detect(frame, SystemClock.elapsedRealtime());
+    }
+
+    /** {@link #detect(Bitmap)} for a frame captured at nowMs, in elapsed realtime. */
+    @NonNull
+    synchronized List<VisionDetector.Detection> detect(@NonNull Bitmap frame, long nowMs) throws Exception {
+        stats.frames++;
+        if (framesSinceRun < stats.skip) {
+            framesSinceRun++;
+            stats.skipped++;
+            tracker.predict(nowMs);
+            return Collections.emptyList();
+        }
+        framesSinceRun = 0;
+
+        long startedAt = SystemClock.elapsedRealtime();
+        List<VisionDetector.Detection> detections;
+        try {
+            detections = detector.detect(frame);
+        } finally {
+            onLatency(SystemClock.elapsedRealtime() - startedAt);
+        }
+        stats.detectorRuns++;
+
+        List<DetectionTracker.Event> events = tracker.update(detections, nowMs);
+        if (events.isEmpty()) return Collections.emptyList();
+        List<VisionDetector.Detection> reported = new ArrayList<>(events.size());
+        for (DetectionTracker.Event event : events) {
+            if (event.kind == DetectionTracker.Event.Kind.BORN) {
+                stats.births++;
+            } else {
+                stats.classChanges++;
+            }
+            reported.add(event.detection);
+        }
+        return reported;
+    }
+
+    /** Live tracks with their predicted boxes, for drawing. */
+    @NonNull
+    synchronized List<DetectionTracker.Track> tracks() {
+        return new ArrayList<>(tracker.tracks());
+    }
+
+    @NonNull
+    synchronized Stats stats() {
+        Stats copy = new Stats();
+        copy.frames = stats.frames;
+        copy.detectorRuns = stats.detectorRuns;
+        copy.skipped = stats.skipped;
+        copy.births = stats.births;
+        copy.classChanges = stats.classChanges;
+        copy.skip = stats.skip;
+        copy.latencyMs = stats.latencyMs;
+        return copy;
+    }
+
+    private void onLatency(long latencyMs) {
+        latencyEwmaMs = latencyEwmaMs < 0d
+            ? latencyMs
+            : latencyEwmaMs + LATENCY_ALPHA * (latencyMs - latencyEwmaMs);
+        stats.latencyMs = Math.round(latencyEwmaMs);
+        int skip = (int) Math.ceil(latencyEwmaMs / latencyBudgetMs) - 1;
+        stats.skip = Math.max(0, Math.min(MAX_SKIP, skip));
+    }
+}
@@ -0,0 +1,183 @@
+package ai.clawphones.agent.chat;
+
+import android.content.ContentResolver;
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.database.Cursor;
+import android.net.Uri;
+import android.provider.OpenableColumns;
+
+import androidx.annotation.NonNull;
+
+import java.io.ByteArrayInputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Re-readable upload payload of known length.
+ *
+ * Uploads stream from {@link #open(long)} instead of holding the payload in memory, and a resumed
+ * upload reopens the source at the offset the server already has.
+ */
+public abstract class UploadSource {
+
+    /** Total payload size in bytes. */
+    public abstract long length();
+
+    /** Opens the payload positioned at {@code offset}. The caller closes the stream. */
+    @NonNull
+    public abstract InputStream open(long offset) throws IOException;
+
+    @NonNull
+    public static UploadSource fromFile(@NonNull File file) {
+        return new FileSource(file);
+    }
+
+    /**
+     * A content or file Uri. The size comes from the provider when it reports one; otherwise the
+     * stream is read once up front to measure it.
+     */
+    @NonNull
+    public static UploadSource fromUri(@NonNull Context context, @NonNull Uri uri) throws IOException {
+        ContentResolver resolver = context.getApplicationContext().getContentResolver();
+        long length = queryLength(resolver, uri);
+        if (length < 0L) {
+            length = measure(resolver, uri);
+        }
+        return new UriSource(resolver, uri, length);
+    }
+
+    @NonNull
+    public static UploadSource fromBytes(@NonNull byte[] data) {
+        return new BytesSource(data);
+    }
+
+    private static long queryLength(ContentResolver resolver, Uri uri) {
+        try (Cursor cursor = resolver.query(uri, new String[]{OpenableColumns.SIZE}, null, null, null)) {
+            if (cursor != null && cursor.moveToFirst()) {
+                int index = cursor.getColumnIndex(OpenableColumns.SIZE);
+                if (index >= 0 && !cursor.isNull(index)) {
+                    long size = cursor.getLong(index);
+                    if (size >= 0L) return size;
+                }
+            }
+        } catch (Exception ignored) {
+        }
+        try (AssetFileDescriptor afd = resolver.openAssetFileDescriptor(uri, "r")) {
+            if (afd != null && afd.getLength() >= 0L) return afd.getLength();
+        } catch (Exception ignored) {
+        }
+        return -1L;
+    }
+
+    private static long measure(ContentResolver resolver, Uri uri) throws IOException {
+        try (InputStream in = openUri(resolver, uri)) {
+            byte[] buffer = new byte[8192];
+            long total = 0L;
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                total += read;
+            }
+            return total;
+        }
+    }
+
+    private static InputStream openUri(ContentResolver resolver, Uri uri) throws IOException {
+        InputStream in = resolver.openInputStream(uri);
+        if (in == null) throw new FileNotFoundException("cannot open " + uri);
+        return in;
+    }
+
+    /** Skips exactly {@code offset} bytes, which InputStream.skip alone does not guarantee. */
+    static void skipFully(InputStream in, long offset) throws IOException {
+        long remaining = offset;
+        while (remaining > 0L) {
+            long skipped = in.skip(remaining);
+            if (skipped <= 0L) {
+                if (in.read() == -1) throw new EOFException("source shorter than offset " + offset);
+                skipped = 1L;
+            }
+            remaining -= skipped;
+        }
+    }
+
+    private static final class FileSource extends UploadSource {
+        private final File mFile;
+
+        FileSource(File file) {
+            mFile = file;
+        }
+
+        @Override
+        public long length() {
+            return mFile.length();
+        }
+
+        @NonNull
+        @Override
+        public InputStream open(long offset) throws IOException {
+            FileInputStream in = new FileInputStream(mFile);
+            try {
+                in.getChannel().position(offset);
+            } catch (IOException e) {
+                in.close();
+                throw e;
+            }
+            return in;
+        }
+    }
+
+    private static final class UriSource extends UploadSource {
+        private final ContentResolver mResolver;
+        private final Uri mUri;
+        private final long mLength;
+
+        UriSource(ContentResolver resolver, Uri uri, long length) {
+            mResolver = resolver;
+            mUri = uri;
+            mLength = length;
+        }
+
+        @Override
+        public long length() {
+            return mLength;
+        }
+
+        @NonNull
+        @Override
+        public InputStream open(long offset) throws IOException {
+            InputStream in = openUri(mResolver, mUri);
+            try {
+                skipFully(in, offset);
+            } catch (IOException e) {
+                in.close();
+                throw e;
+            }
+            return in;
+        }
+    }
+
+    private static final class BytesSource extends UploadSource {
+        private final byte[] mData;
+
+        BytesSource(byte[] data) {
+            mData = data;
+        }
+
+        @Override
+        public long length() {
+            return mData.length;
+        }
+
+        @NonNull
+        @Override
+        public InputStream open(long offset) {
+            int start = (int) Math.min(offset, mData.length);
+            return new ByteArrayInputStream(mData, start, mData.length - start);
+        }
+    }
+}
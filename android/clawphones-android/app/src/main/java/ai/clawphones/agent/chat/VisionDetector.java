@@ -31,6 +31,10 @@ import java.util.Locale;
 
 /**
  * On-device vision detector (ML Kit): object + face detection with coarse type mapping.
+ *
+ * {@link Mode#STREAM} is for consecutive frames of one scene: ML Kit tracks objects between
+ * calls and reports a tracking id on each detection. Pair it with {@link TrackingDetector} to
+ * carry boxes across frames and only report new or reclassified objects.
  */
 public class VisionDetector implements Closeable {
 
@@ -42,9 +46,9 @@ public class VisionDetector implements Closeable {
     public static final String TYPE_PACKAGE = "package";
     public static final String TYPE_UNKNOWN = "unknown";
 
-    private static final float DEFAULT_CONFIDENCE_THRESHOLD = 0.5f;
+    static final float DEFAULT_CONFIDENCE_THRESHOLD = 0.5f;
     private static final float FACE_DETECTION_CONFIDENCE = 0.95f;
-    private static final long LATENCY_TARGET_MS = 300L;
+    static final long LATENCY_TARGET_MS = 300L;
 
     private static final String[] PERSON_KEYWORDS = {
         "person", "human", "face", "man", "woman", "boy", "girl", "pedestrian", "people"
@@ -62,6 +66,9 @@ public class VisionDetector implements Closeable {
         "baggage", "luggage", "suitcase", "backpack", "bag"
     };
 
+    public enum Mode { SINGLE_IMAGE, STREAM }
+
+    private final Mode mode;
     private final ObjectDetector objectDetector;
     private final FaceDetector faceDetector;
     private final Handler mainHandler = new Handler(Looper.getMainLooper());
@@ -72,11 +79,17 @@ public class VisionDetector implements Closeable {
         public String type;       // person, vehicle, animal, package, unknown
         public float confidence;  // 0.0-1.0
         public Rect boundingBox;  // pixel coordinates
+        @Nullable public Integer trackingId;  // stream mode only; negative for faces
 
         Detection(@NonNull String type, float confidence, @NonNull Rect boundingBox) {
+            this(type, confidence, boundingBox, null);
+        }
+
+        Detection(@NonNull String type, float confidence, @NonNull Rect boundingBox, @Nullable Integer trackingId) {
             this.type = type;
             this.confidence = confidence;
             this.boundingBox = new Rect(boundingBox);
+            this.trackingId = trackingId;
         }
     }
 
@@ -90,22 +103,36 @@ public class VisionDetector implements Closeable {
     }
 
     public VisionDetector(float confidenceThreshold) {
+        this(confidenceThreshold, Mode.SINGLE_IMAGE);
+    }
+
+    public VisionDetector(float confidenceThreshold, @NonNull Mode mode) {
         this.confidenceThreshold = clampThreshold(confidenceThreshold);
+        this.mode = mode;
 
         ObjectDetectorOptions objectOptions = new ObjectDetectorOptions.Builder()
-            .setDetectorMode(ObjectDetectorOptions.SINGLE_IMAGE_MODE)
+            .setDetectorMode(mode == Mode.STREAM
+                ? ObjectDetectorOptions.STREAM_MODE
+                : ObjectDetectorOptions.SINGLE_IMAGE_MODE)
             .enableClassification()
             .enableMultipleObjects()
             .build();
         objectDetector = ObjectDetection.getClient(objectOptions);
 
-        FaceDetectorOptions faceOptions = new FaceDetectorOptions.Builder()
+        FaceDetectorOptions.Builder faceOptions = new FaceDetectorOptions.Builder()
             .setPerformanceMode(FaceDetectorOptions.PERFORMANCE_MODE_FAST)
             .setClassificationMode(FaceDetectorOptions.CLASSIFICATION_MODE_NONE)
             .setLandmarkMode(FaceDetectorOptions.LANDMARK_MODE_NONE)
-            .setContourMode(FaceDetectorOptions.CONTOUR_MODE_NONE)
-            .build();
-        faceDetector = FaceDetection.getClient(faceOptions);
+            .setContourMode(FaceDetectorOptions.CONTOUR_MODE_NONE);
+        if (mode == Mode.STREAM) {
+            faceOptions.enableTracking();
+        }
+        faceDetector = FaceDetection.getClient(faceOptions.build());
+    }
+
+    @NonNull
+    public Mode getMode() {
+        return mode;
     }
 
     public void setConfidenceThreshold(float confidenceThreshold) {
@@ -227,7 +254,7 @@ public class VisionDetector implements Closeable {
             return null;
         }
 
-        return new Detection(bestType, bestConfidence, object.getBoundingBox());
+        return new Detection(bestType, bestConfidence, object.getBoundingBox(), object.getTrackingId());
     }
 
     private void mergeFaces(@NonNull List<Detection> detections, @Nullable List<Face> faces) {
@@ -237,10 +264,20 @@ public class VisionDetector implements Closeable {
         for (Face face : faces) {
             Rect box = face.getBoundingBox();
             if (isDuplicatePersonDetection(detections, box)) continue;
-            detections.add(new Detection(TYPE_PERSON, FACE_DETECTION_CONFIDENCE, box));
+            detections.add(new Detection(TYPE_PERSON, FACE_DETECTION_CONFIDENCE, box, faceTrackingId(face)));
         }
     }
 
+    /**
+     * The face's ML Kit tracking id, moved to the negative numbers: face and object ids are
+     * counted separately and would otherwise collide in the tracker.
+     */
+    @Nullable
+    private static Integer faceTrackingId(@NonNull Face face) {
+        Integer id = face.getTrackingId();
+        return id == null ? null : -1 - id;
+    }
+
     private boolean isDuplicatePersonDetection(@NonNull List<Detection> detections, @NonNull Rect faceBox) {
         for (Detection detection : detections) {
             if (!TYPE_PERSON.equals(detection.type) || detection.boundingBox == null) continue;
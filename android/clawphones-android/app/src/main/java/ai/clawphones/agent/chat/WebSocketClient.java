@@ -106,8 +106,8 @@ public class WebSocketClient {
         this.headers = headers != null ? new HashMap<>(headers) : new HashMap<>();
         this.reconnectHandler = new android.os.Handler(android.os.Looper.getMainLooper());
 
-        // Build OkHttpClient with ping interval
-        this.httpClient = new OkHttpClient.Builder()
+        // Shares the app connection pool; only the ping interval differs
+        this.httpClient = HttpTransport.newBuilder()
                 .pingInterval(PING_INTERVAL_MS, TimeUnit.MILLISECONDS)
                 .build();
     }
@@ -0,0 +1,271 @@
+package ai.clawphones.agent.chat;
+
+import androidx.annotation.NonNull;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for AdaptiveFrameController, driven by a simulated link on a virtual clock.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class AdaptiveFrameControllerTest {
+
+    private static final AdaptiveFrameController.Bounds BOUNDS = AdaptiveFrameController.Bounds.DEFAULT;
+
+    /**
+     * Test: the ladder runs from the best settings to the cheapest, each level no dearer than the last
+     */
+    @Test
+    public void testLadder_monotoneWithinBounds() {
+        Simulation sim = new Simulation(BOUNDS, new LinkModel(1L, 0L, 0L));
+        AdaptiveFrameController controller = sim.controller;
+        AdaptiveFrameController.Settings best = controller.current();
+        assertEquals(0, best.level);
+        assertEquals(BOUNDS.maxQuality, best.jpegQuality);
+        assertEquals(1, best.downscale);
+        assertEquals(BOUNDS.minIntervalMs, best.frameIntervalMs);
+
+        sim.link.down = true;
+        sim.run(120_000L);
+
+        AdaptiveFrameController.Settings cheapest = controller.current();
+        assertEquals(controller.levelCount() - 1, cheapest.level);
+        assertEquals(BOUNDS.minQuality, cheapest.jpegQuality);
+        assertEquals(BOUNDS.maxDownscale, cheapest.downscale);
+        assertEquals(BOUNDS.maxIntervalMs, cheapest.frameIntervalMs);
+        for (int i = 1; i < sim.levelsSeen.size(); i++) {
+            assertTrue(sim.levelsSeen.get(i) >= sim.levelsSeen.get(i - 1));
+        }
+    }
+
+    /**
+     * Test: on a congested cellular link the node backs off until the queue stops growing
+     */
+    @Test
+    public void testCongestedLink_convergesBelowCapacity() {
+        Simulation sim = new Simulation(BOUNDS, new LinkModel(150_000L, 300L, 7L));
+        AdaptiveFrameController controller = sim.controller;
+
+        sim.run(60_000L);
+        sim.resetCounters();
+        sim.run(120_000L);
+
+        assertTrue(sim.toString(), controller.current().level > 0);
+        assertTrue("offered " + sim.offeredBps(), sim.offeredBps() <= 150_000L);
+        assertTrue("queue " + sim.maxQueue, sim.maxQueue <= 2 * BOUNDS.targetQueueDepth);
+        assertTrue("queue " + sim.queue.size(), sim.queue.size() <= BOUNDS.targetQueueDepth);
+    }
+
+    /**
+     * Test: without adaptation the same link piles frames into the queue
+     */
+    @Test
+    public void testCongestedLink_fixedSettingsBacklog() {
+        AdaptiveFrameController.Bounds fixed = new AdaptiveFrameController.Bounds(
+            BOUNDS.maxQuality, BOUNDS.maxQuality, 1, BOUNDS.minIntervalMs, BOUNDS.minIntervalMs,
+            BOUNDS.targetBitsPerSecond, BOUNDS.targetQueueDepth);
+        Simulation sim = new Simulation(fixed, new LinkModel(150_000L, 300L, 7L));
+
+        sim.run(180_000L);
+
+        assertTrue(sim.toString(), sim.queue.size() > 50);
+    }
+
+    /**
+     * Test: once the link clears the controller climbs back to the best settings
+     */
+    @Test
+    public void testRecoveredLink_returnsToBestSettings() {
+        LinkModel link = new LinkModel(80_000L, 400L, 11L);
+        Simulation sim = new Simulation(BOUNDS, link);
+        AdaptiveFrameController controller = sim.controller;
+        sim.run(60_000L);
+        int congestedLevel = controller.current().level;
+
+        link.capacityBps = 8_000_000L;
+        link.rttMs = 40L;
+        sim.resetCounters();
+        sim.run(90_000L);
+
+        assertTrue(congestedLevel > 2);
+        assertEquals(sim.toString(), 0, controller.current().level);
+        assertTrue(controller.throughputBps() > 1_000_000L);
+        assertTrue(sim.maxQueue <= BOUNDS.targetQueueDepth);
+    }
+
+    /**
+     * Test: a fast link never pushes the node past the target bitrate
+     */
+    @Test
+    public void testFastLink_capsAtTargetBitrate() {
+        AdaptiveFrameController.Bounds bounds = new AdaptiveFrameController.Bounds(
+            30, 90, 4, 500L, 2000L, 400_000L, 4);
+        Simulation sim = new Simulation(bounds, new LinkModel(20_000_000L, 20L, 3L));
+        AdaptiveFrameController controller = sim.controller;
+
+        sim.run(30_000L);
+        sim.resetCounters();
+        sim.run(60_000L);
+
+        assertTrue(sim.toString(), controller.current().level > 0);
+        assertTrue("offered " + sim.offeredBps(), sim.offeredBps() <= 400_000L);
+    }
+
+    /**
+     * Test: bounds that contradict themselves are rejected
+     */
+    @Test
+    public void testBounds_rejectsInvalid() {
+        try {
+            new AdaptiveFrameController.Bounds(80, 40, 4, 1000L, 4000L, 1_000_000L, 4);
+            fail("expected IllegalArgumentException");
+        } catch (IllegalArgumentException expected) {
+            // quality range inverted
+        }
+        try {
+            new AdaptiveFrameController.Bounds(30, 70, 4, 0L, 4000L, 1_000_000L, 4);
+            fail("expected IllegalArgumentException");
+        } catch (IllegalArgumentException expected) {
+            // zero interval
+        }
+    }
+
+    /** Serial uploads over a link with fixed capacity, round trip and a seeded +/-20% jitter. */
+    private static final class LinkModel {
+        static final long TIMEOUT_MS = 10_000L;
+
+        long capacityBps;
+        long rttMs;
+        boolean down;
+        private final Random random;
+
+        LinkModel(long capacityBps, long rttMs, long seed) {
+            this.capacityBps = capacityBps;
+            this.rttMs = rttMs;
+            this.random = new Random(seed);
+        }
+
+        long uploadMs(long bytes) {
+            if (down) return TIMEOUT_MS;
+            double jitter = 0.8d + random.nextDouble() * 0.4d;
+            return rttMs + Math.round(bytes * 8000d / capacityBps * jitter);
+        }
+    }
+
+    /**
+     * A 640x480 camera on a 10 ms virtual clock: frames are captured at the controller's interval,
+     * sized by a rough JPEG model, queued, and sent one at a time.
+     */
+    private static final class Simulation {
+        static final long TICK_MS = 10L;
+        static final long PIXELS = 640L * 480L;
+
+        final AdaptiveFrameController controller;
+        final AdaptiveFrameController.Bounds bounds;
+        final LinkModel link;
+        final ArrayDeque<Long> queue = new ArrayDeque<>();
+        final List<Integer> levelsSeen = new ArrayList<>();
+        long now;
+        long nextFrameAt;
+        long uploadStartedAt;
+        long uploadDoneAt = -1L;
+        long uploadBytes;
+        long windowStartedAt;
+        long bytesOffered;
+        long bytesDelivered;
+        int maxQueue;
+
+        Simulation(@NonNull AdaptiveFrameController.Bounds bounds, @NonNull LinkModel link) {
+            this.controller = new AdaptiveFrameController(bounds);
+            this.bounds = bounds;
+            this.link = link;
+        }
+
+        static long frameBytes(@NonNull AdaptiveFrameController.Settings settings) {
+            double q = settings.jpegQuality / 100d;
+            return Math.round(PIXELS / (settings.downscale * settings.downscale) * (0.02d + 0.2d * q * q));
+        }
+
+        void run(long durationMs) {
+            long end = now + durationMs;
+            for (; now < end; now += TICK_MS) {
+                if (uploadDoneAt >= 0L && now >= uploadDoneAt) {
+                    controller.onUploadFinished(uploadStartedAt, uploadBytes, !link.down, now);
+                    if (link.down) {
+                        queue.addFirst(uploadBytes);
+                    } else {
+                        bytesDelivered += uploadBytes;
+                    }
+                    uploadDoneAt = -1L;
+                }
+
+                boolean captured = false;
+                if (now >= nextFrameAt) {
+                    AdaptiveFrameController.Settings settings = controller.current();
+                    assertWithinBounds(settings);
+                    if (levelsSeen.isEmpty() || levelsSeen.get(levelsSeen.size() - 1) != settings.level) {
+                        levelsSeen.add(settings.level);
+                    }
+                    long bytes = frameBytes(settings);
+                    controller.onFrameEncoded(bytes);
+                    queue.add(bytes);
+                    bytesOffered += bytes;
+                    nextFrameAt = now + settings.frameIntervalMs;
+                    captured = true;
+                }
+
+                if (uploadDoneAt < 0L && !queue.isEmpty()) {
+                    uploadBytes = queue.poll();
+                    uploadStartedAt = now;
+                    uploadDoneAt = now + link.uploadMs(uploadBytes);
+                    controller.onUploadStarted(now);
+                }
+                if (captured) {
+                    maxQueue = Math.max(maxQueue, queue.size());
+                    controller.onQueueDepth(queue.size(), now);
+                }
+            }
+        }
+
+        void resetCounters() {
+            windowStartedAt = now;
+            bytesOffered = 0L;
+            bytesDelivered = 0L;
+            maxQueue = 0;
+        }
+
+        long offeredBps() {
+            return bytesOffered * 8000L / Math.max(1L, now - windowStartedAt);
+        }
+
+        private void assertWithinBounds(@NonNull AdaptiveFrameController.Settings settings) {
+            String where = settings.toString();
+            assertTrue(where, settings.jpegQuality >= bounds.minQuality && settings.jpegQuality <= bounds.maxQuality);
+            assertTrue(where, settings.downscale >= 1 && settings.downscale <= bounds.maxDownscale);
+            assertTrue(where, settings.frameIntervalMs >= bounds.minIntervalMs
+                && settings.frameIntervalMs <= bounds.maxIntervalMs);
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            AdaptiveFrameController.Settings settings = controller.current();
+            return String.format(Locale.US,
+                "%s offered=%d bps delivered=%d bps link=%d bps latency=%d ms queue=%d max=%d",
+                settings, offeredBps(), bytesDelivered * 8000L / Math.max(1L, now - windowStartedAt),
+                controller.throughputBps(), controller.latencyMs(), queue.size(), maxQueue);
+        }
+    }
+}
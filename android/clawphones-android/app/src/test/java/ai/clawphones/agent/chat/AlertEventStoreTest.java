@@ -0,0 +1,248 @@
+package ai.clawphones.agent.chat;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+import android.graphics.RectF;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the SQLite-backed AlertEventStore and its events.json import.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class AlertEventStoreTest {
+
+    private static final long NOW = 1_700_000_000_000L;
+    private static final long HOUR_MS = 60L * 60L * 1000L;
+    private static final int BENCH_EVENTS = 10_000;
+    private static final int BENCH_LOOKUPS = 1000;
+
+    /**
+     * Test: an event comes back by id with its box and thumbnail, and replaces an earlier save
+     */
+    @Test
+    public void testSaveAndGet_roundTrip() {
+        AlertEventStore store = new AlertEventStore(context());
+        long now = System.currentTimeMillis();
+        store.saveEvent(event("a", "Person", now - 1000L, new RectF(1f, 2f, 11f, 22f), new byte[]{1, 2, 3}));
+        store.saveEvent(event("a", "Person", now, new RectF(1f, 2f, 11f, 22f), new byte[]{4, 5}));
+
+        AlertEventStore.AlertEvent loaded = store.getEventById("a");
+
+        assertNotNull(loaded);
+        assertEquals("Person", loaded.type);
+        assertEquals(now, loaded.timestampMs);
+        assertEquals(new RectF(1f, 2f, 11f, 22f), loaded.boundingBox);
+        assertArrayEquals(new byte[]{4, 5}, loaded.thumbnailData);
+        assertEquals(1, store.count());
+        assertNull(store.getEventById("missing"));
+
+        assertTrue(store.deleteEvent("a"));
+        assertNull(store.getEventById("a"));
+        assertFalse(thumbnail("a").exists());
+    }
+
+    /**
+     * Test: keyset pages walk the timeline newest first, ties broken by id, with and without a type filter
+     */
+    @Test
+    public void testQueryEvents_pagesByTimeAndType() {
+        AlertEventStore store = new AlertEventStore(context(), 365L * 24L * HOUR_MS, 1000);
+        for (int i = 0; i < 25; i++) {
+            // Pairs of events share a timestamp.
+            store.saveEvent(event(String.format(Locale.US, "e%02d", i), i % 3 == 0 ? "vehicle" : "person",
+                NOW - (i / 2) * 1000L, null, null), NOW);
+        }
+
+        List<String> seen = new ArrayList<>();
+        long beforeTs = Long.MAX_VALUE;
+        String beforeId = null;
+        while (true) {
+            List<AlertEventStore.AlertEvent> page = store.queryEvents(null, beforeTs, beforeId, 10, NOW);
+            if (page.isEmpty()) break;
+            for (AlertEventStore.AlertEvent event : page) seen.add(event.id);
+            AlertEventStore.AlertEvent last = page.get(page.size() - 1);
+            beforeTs = last.timestampMs;
+            beforeId = last.id;
+        }
+        assertEquals(25, seen.size());
+        assertEquals(25, new HashSet<>(seen).size());
+        assertEquals("e01", seen.get(0));
+        assertEquals("e00", seen.get(1));
+        assertEquals("e24", seen.get(24));
+
+        List<AlertEventStore.AlertEvent> vehicles = store.queryEvents("Vehicle", Long.MAX_VALUE, null, 100, NOW);
+        assertEquals(9, vehicles.size());
+        for (AlertEventStore.AlertEvent event : vehicles) assertEquals("vehicle", event.normalizedType());
+    }
+
+    /**
+     * Test: pruning drops events past retention and beyond the count limit, with their thumbnails
+     */
+    @Test
+    public void testPrune_byAgeAndCount() {
+        AlertEventStore store = new AlertEventStore(context(), 10L * HOUR_MS, 5);
+        store.saveEvent(event("old", "person", NOW - 11L * HOUR_MS, null, new byte[]{9}), NOW - 11L * HOUR_MS);
+        assertEquals(1, store.count());
+        for (int i = 0; i < 7; i++) {
+            store.saveEvent(event("e" + i, "person", NOW - (7 - i) * HOUR_MS, null, new byte[]{(byte) i}), NOW);
+        }
+
+        assertEquals(5, store.count());
+        assertFalse(thumbnail("old").exists());
+        assertFalse(thumbnail("e0").exists());
+        assertFalse(thumbnail("e1").exists());
+        assertTrue(thumbnail("e2").exists());
+        List<AlertEventStore.AlertEvent> kept = store.queryEvents(null, Long.MAX_VALUE, null, 10, NOW);
+        assertEquals("e6", kept.get(0).id);
+        assertEquals("e2", kept.get(4).id);
+        // Past retention for e2 and e3 before anything prunes them.
+        assertEquals(3, store.queryEvents(null, Long.MAX_VALUE, null, 10, NOW + 7L * HOUR_MS).size());
+
+        assertEquals(2, store.prune(NOW + 7L * HOUR_MS));
+        assertEquals(3, store.count());
+    }
+
+    /**
+     * Test: an existing events.json is imported once with its thumbnails, then deleted; strays are swept
+     */
+    @Test
+    public void testMigration_importsLegacyJsonOnce() throws Exception {
+        long now = System.currentTimeMillis();
+        File dir = new File(context().getFilesDir(), "clawvision_alerts");
+        File thumbs = new File(dir, "thumbnails");
+        //noinspection ResultOfMethodCallIgnored
+        thumbs.mkdirs();
+        JSONArray legacy = new JSONArray();
+        legacy.put(legacyJson("j1", "person", now - 3000L, true));
+        legacy.put(legacyJson("j2", "vehicle", now - 2000L, false));
+        legacy.put(legacyJson("j3", "animal", now - 1000L, false));
+        legacy.put(new JSONObject().put("type", "person"));
+        writeFile(new File(dir, "events.json"), legacy.toString().getBytes(StandardCharsets.UTF_8));
+        writeFile(new File(thumbs, "j1.jpg"), new byte[]{7, 7});
+        writeFile(new File(thumbs, "gone.jpg"), new byte[]{1});
+
+        AlertEventStore store = new AlertEventStore(context());
+        List<AlertEventStore.AlertEvent> events = store.loadEvents();
+
+        assertEquals(3, events.size());
+        assertEquals("j3", events.get(0).id);
+        AlertEventStore.AlertEvent j1 = events.get(2);
+        assertArrayEquals(new byte[]{7, 7}, j1.thumbnailData);
+        assertEquals(new RectF(10f, 20f, 40f, 60f), j1.boundingBox);
+        assertFalse(new File(dir, "events.json").exists());
+        assertFalse(new File(thumbs, "gone.jpg").exists());
+
+        assertEquals(3, new AlertEventStore(context()).loadEvents().size());
+    }
+
+    /**
+     * Test: at 10k events, id lookups and first pages are index searches that need no sort
+     */
+    @Test
+    public void testQueries_at10kEventsUseIndexes() {
+        AlertEventStore store = new AlertEventStore(context(), 365L * 24L * HOUR_MS, 2 * BENCH_EVENTS);
+        byte[] thumbnailBytes = new byte[8 * 1024];
+        // Lookups check retention against the clock, so these events are recent.
+        long base = System.currentTimeMillis() - BENCH_EVENTS;
+        for (int i = 0; i < BENCH_EVENTS; i++) {
+            store.saveEvent(event("ev-" + i, i % 2 == 0 ? "person" : "vehicle", base + i, null,
+                i % 10 == 0 ? thumbnailBytes : null), base + i);
+        }
+        assertEquals(BENCH_EVENTS, store.count());
+
+        Random random = new Random(3);
+        for (int i = 0; i < BENCH_LOOKUPS; i++) {
+            assertNotNull(store.getEventById("ev-" + random.nextInt(BENCH_EVENTS)));
+        }
+        List<AlertEventStore.AlertEvent> page = store.queryEvents("person", Long.MAX_VALUE, null, 50);
+        assertEquals(50, page.size());
+        assertEquals("ev-" + (BENCH_EVENTS - 2), page.get(0).id);
+
+        // The statements getEventById and queryEvents send, planned against the store's database.
+        List<String> lookup = explainQueryPlan("SELECT * FROM alert_events WHERE id = ?", "ev-1");
+        assertEquals(lookup.toString(), 1, lookup.size());
+        assertTrue(lookup.toString(), lookup.get(0).startsWith("SEARCH"));
+
+        List<String> firstPage = explainQueryPlan("SELECT * FROM alert_events WHERE type_key = ? AND timestamp >= ? "
+            + "AND timestamp <= ? ORDER BY timestamp DESC, id DESC LIMIT 50", "person", String.valueOf(base),
+            String.valueOf(Long.MAX_VALUE));
+        assertEquals(firstPage.toString(), 1, firstPage.size());
+        assertTrue(firstPage.toString(), firstPage.get(0).startsWith("SEARCH")
+            && firstPage.get(0).contains("idx_alert_events_type_time"));
+    }
+
+    @NonNull
+    private static List<String> explainQueryPlan(@NonNull String sql, @NonNull String... args) {
+        SQLiteDatabase db = SQLiteDatabase.openDatabase(
+            context().getDatabasePath("clawvision_alerts.db").getPath(), null, SQLiteDatabase.OPEN_READONLY);
+        List<String> details = new ArrayList<>();
+        try (Cursor c = db.rawQuery("EXPLAIN QUERY PLAN " + sql, args)) {
+            int detail = c.getColumnIndexOrThrow("detail");
+            while (c.moveToNext()) details.add(c.getString(detail));
+        } finally {
+            db.close();
+        }
+        return details;
+    }
+
+    @NonNull
+    private static Context context() {
+        return RuntimeEnvironment.getApplication();
+    }
+
+    @NonNull
+    private static File thumbnail(@NonNull String id) {
+        return new File(new File(new File(context().getFilesDir(), "clawvision_alerts"), "thumbnails"), id + ".jpg");
+    }
+
+    @NonNull
+    private static AlertEventStore.AlertEvent event(@NonNull String id, @NonNull String type, long timestampMs,
+                                                    @Nullable RectF box, @Nullable byte[] thumbnail) {
+        return new AlertEventStore.AlertEvent(id, type, 0.9f, timestampMs, 37.77, -122.42, box, thumbnail);
+    }
+
+    @NonNull
+    private static JSONObject legacyJson(@NonNull String id, @NonNull String type, long timestampMs, boolean box)
+        throws Exception {
+        JSONObject obj = new JSONObject()
+            .put("id", id)
+            .put("type", type)
+            .put("confidence", 0.8)
+            .put("timestamp", timestampMs)
+            .put("latitude", 37.77)
+            .put("longitude", -122.42);
+        if (box) {
+            obj.put("bounding_box", new JSONObject().put("x", 10).put("y", 20).put("width", 30).put("height", 40));
+        }
+        return obj;
+    }
+
+    private static void writeFile(@NonNull File file, @NonNull byte[] data) throws Exception {
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(data);
+        }
+    }
+}
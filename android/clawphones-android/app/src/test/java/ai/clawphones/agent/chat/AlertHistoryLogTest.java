@@ -0,0 +1,194 @@
+package ai.clawphones.agent.chat;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.util.Base64;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for AlertHistoryLog and AlertManager's move off the preferences history.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class AlertHistoryLogTest {
+
+    private static final String PREFS_NAME = "clawvision_alert_manager";
+    private static final String PREF_HISTORY_JSON = "alert_history_json";
+    private static final int CAPACITY = 10;
+    private static final int LOG_ALERTS = 1000;
+    private static final int LEGACY_ALERTS = 150;
+    private static final int THUMBNAIL_BYTES = 16 * 1024;
+
+    /**
+     * Test: appends read back newest first; the oldest past capacity go with their thumbnails
+     */
+    @Test
+    public void testAppend_boundedNewestFirst() throws Exception {
+        File dir = dir("bounded");
+        AlertHistoryLog log = new AlertHistoryLog(dir, CAPACITY);
+        for (int i = 0; i < 35; i++) log.append(event(i, i % 2 == 0 ? thumbnail(i) : null));
+
+        List<AlertHistoryLog.Record> records = log.newestFirst();
+        assertEquals(CAPACITY, records.size());
+        assertEquals(34L, records.get(0).timestamp);
+        assertEquals(25L, records.get(CAPACITY - 1).timestamp);
+        assertArrayEquals(thumbnail(34), log.readThumbnail(records.get(0)));
+        assertNull(log.readThumbnail(records.get(1)));
+        assertEquals(5, thumbnailFiles(dir).length);
+        // Compaction keeps the log under twice the capacity.
+        assertTrue(log.logLines() < 2 * CAPACITY);
+    }
+
+    /**
+     * Test: a reopened log has the same tail; a torn last line and stray thumbnails are dropped
+     */
+    @Test
+    public void testReopen_recoversFromTornAppend() throws Exception {
+        File dir = dir("torn");
+        AlertHistoryLog log = new AlertHistoryLog(dir, CAPACITY);
+        for (int i = 0; i < 3; i++) log.append(event(i, thumbnail(i)));
+        log.close();
+        try (FileOutputStream out = new FileOutputStream(new File(dir, "history.log"), true)) {
+            out.write("{\"seq\":4,\"type\":\"pers".getBytes(StandardCharsets.UTF_8));
+        }
+        writeFile(new File(new File(dir, "thumbnails"), "4.jpg"), new byte[]{1});
+
+        AlertHistoryLog reopened = new AlertHistoryLog(dir, CAPACITY);
+        List<AlertHistoryLog.Record> records = reopened.newestFirst();
+
+        assertEquals(3, records.size());
+        assertEquals(2L, records.get(0).timestamp);
+        assertArrayEquals(thumbnail(0), reopened.readThumbnail(records.get(2)));
+        assertEquals(3, thumbnailFiles(dir).length);
+        assertEquals(3, reopened.logLines());
+
+        reopened.append(event(3, null));
+        assertEquals(4, new AlertHistoryLog(dir, CAPACITY).newestFirst().size());
+    }
+
+    /**
+     * Test: AlertManager moves a preferences history into the log once and removes the preference
+     */
+    @Test
+    public void testAlertManager_migratesPrefsHistory() throws Exception {
+        SharedPreferences prefs = context().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        JSONArray legacy = new JSONArray();
+        // Newest first, as the old appendHistory kept it.
+        legacy.put(legacyJson("person", 300L, thumbnail(3)));
+        legacy.put(legacyJson("Vehicle", 200L, null));
+        legacy.put(new JSONObject().put("confidence", 0.5));
+        legacy.put(legacyJson("animal", 100L, thumbnail(1)));
+        prefs.edit().putString(PREF_HISTORY_JSON, legacy.toString()).commit();
+
+        List<AlertManager.AlertEvent> history = new AlertManager(context()).getHistory();
+
+        assertEquals(3, history.size());
+        assertEquals("person", history.get(0).type);
+        assertArrayEquals(thumbnail(3), history.get(0).thumbnail);
+        assertEquals("vehicle", history.get(1).type);
+        assertNull(history.get(1).thumbnail);
+        assertEquals(100L, history.get(2).timestamp);
+        assertFalse(prefs.contains(PREF_HISTORY_JSON));
+
+        assertEquals(3, new AlertManager(context()).getHistory().size());
+    }
+
+    /**
+     * Test: a full history lives in the log, and moving off the preferences JSON blob shrinks
+     * the preferences file the app parses at start-up
+     */
+    @Test
+    public void testMigration_fullHistoryShrinksPreferencesFile() throws Exception {
+        byte[] thumbnail = new byte[THUMBNAIL_BYTES];
+        Arrays.fill(thumbnail, (byte) 0x5a);
+
+        AlertHistoryLog log = new AlertHistoryLog(dir("full"), AlertManager.MAX_HISTORY);
+        for (int i = 0; i < LOG_ALERTS; i++) {
+            log.append(event(i, thumbnail));
+        }
+        assertEquals(AlertManager.MAX_HISTORY, log.newestFirst().size());
+        assertEquals(AlertManager.MAX_HISTORY, thumbnailFiles(dir("full")).length);
+
+        // The old appendHistory: parse the blob, prepend, re-serialize, write the whole file.
+        SharedPreferences prefs = context().getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+        for (int i = 0; i < LEGACY_ALERTS; i++) {
+            JSONArray history = new JSONArray(prefs.getString(PREF_HISTORY_JSON, "[]"));
+            JSONArray merged = new JSONArray();
+            merged.put(legacyJson("person", i, thumbnail));
+            for (int j = 0; j < history.length() && merged.length() < AlertManager.MAX_HISTORY; j++) {
+                merged.put(history.getJSONObject(j));
+            }
+            prefs.edit().putString(PREF_HISTORY_JSON, merged.toString()).commit();
+        }
+        File prefsFile = new File(new File(context().getDataDir(), "shared_prefs"), PREFS_NAME + ".xml");
+        assertTrue(prefsFile.isFile());
+        long legacyPrefsBytes = prefsFile.length();
+
+        assertEquals(AlertManager.MAX_HISTORY, new AlertManager(context()).getHistory().size());
+        // Rewrites the file from memory, which no longer holds the blob.
+        prefs.edit().putBoolean("migration_flushed", true).commit();
+        long prefsBytes = prefsFile.length();
+
+        assertTrue(prefsBytes + " vs " + legacyPrefsBytes, prefsBytes * 100 < legacyPrefsBytes);
+        assertFalse(prefs.contains(PREF_HISTORY_JSON));
+    }
+
+    @NonNull
+    private static Context context() {
+        return RuntimeEnvironment.getApplication();
+    }
+
+    @NonNull
+    private static File dir(@NonNull String name) {
+        return new File(context().getFilesDir(), "history-" + name);
+    }
+
+    @NonNull
+    private static File[] thumbnailFiles(@NonNull File dir) {
+        File[] files = new File(dir, "thumbnails").listFiles();
+        return files == null ? new File[0] : files;
+    }
+
+    @NonNull
+    private static AlertManager.AlertEvent event(int i, @Nullable byte[] thumbnail) {
+        return new AlertManager.AlertEvent("person", 0.8f, i, thumbnail);
+    }
+
+    @NonNull
+    private static byte[] thumbnail(int i) {
+        return new byte[]{(byte) 0xff, (byte) 0xd8, (byte) i};
+    }
+
+    @NonNull
+    private static JSONObject legacyJson(@NonNull String type, long timestamp, @Nullable byte[] thumbnail)
+        throws Exception {
+        return new JSONObject()
+            .put("type", type)
+            .put("confidence", 0.7)
+            .put("timestamp", timestamp)
+            .put("thumbnail_base64", thumbnail == null ? "" : Base64.encodeToString(thumbnail, Base64.NO_WRAP));
+    }
+
+    private static void writeFile(@NonNull File file, @NonNull byte[] data) throws Exception {
+        Files.write(file.toPath(), data);
+    }
+}
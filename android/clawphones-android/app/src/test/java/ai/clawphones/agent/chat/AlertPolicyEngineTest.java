@@ -0,0 +1,259 @@
+package ai.clawphones.agent.chat;
+
+import android.graphics.Rect;
+
+import androidx.annotation.NonNull;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit and concurrency tests for AlertPolicyEngine, and an allocation check against the per-event
+ * date formatting and map lookups AlertManager used before it.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class AlertPolicyEngineTest {
+
+    private static final TimeZone UTC = TimeZone.getTimeZone("UTC");
+    private static final long DEBOUNCE_MS = 30_000L;
+    private static final int THREADS = 8;
+    private static final int ROUNDS = 200;
+    private static final int ALLOCATION_EVENTS = 100_000;
+    private static final String[] TYPES = {"person", "vehicle", "animal", "package"};
+
+    /**
+     * Test: quiet hours that wrap midnight hold on both sides of it, and on the following days
+     */
+    @Test
+    public void testQuietHours_wrapMidnightAcrossDays() {
+        AlertPolicyEngine engine = engine(2, UTC);
+        engine.setQuietHours(22 * 60, 7 * 60, utc(2024, 5, 1, 12, 0));
+
+        assertFalse(engine.isQuietAt(utc(2024, 5, 1, 21, 59)));
+        assertTrue(engine.isQuietAt(utc(2024, 5, 1, 22, 0)));
+        assertTrue(engine.isQuietAt(utc(2024, 5, 2, 6, 59)));
+        assertFalse(engine.isQuietAt(utc(2024, 5, 2, 7, 0)));
+        assertTrue(engine.isQuietAt(utc(2024, 5, 9, 23, 30)));
+        // Back in time, as after a clock correction.
+        assertTrue(engine.isQuietAt(utc(2024, 5, 1, 3, 0)));
+
+        engine.setQuietHours(9 * 60, 17 * 60, utc(2024, 5, 9, 23, 30));
+        assertFalse(engine.isQuietAt(utc(2024, 5, 10, 8, 59)));
+        assertTrue(engine.isQuietAt(utc(2024, 5, 10, 9, 0)));
+        assertFalse(engine.isQuietAt(utc(2024, 5, 10, 17, 0)));
+
+        engine.setQuietHours(8 * 60, 8 * 60, utc(2024, 5, 10, 0, 0));
+        assertTrue(engine.isQuietAt(utc(2024, 5, 11, 19, 0)));
+        engine.clearQuietHours();
+        assertFalse(engine.isQuietAt(utc(2024, 5, 11, 19, 0)));
+        assertEquals(AlertPolicyEngine.Decision.NOTIFY,
+            engine.evaluate("person", 0, utc(2024, 5, 11, 19, 0)));
+    }
+
+    /**
+     * Test: boundaries follow local wall-clock time over a daylight-saving change
+     */
+    @Test
+    public void testQuietHours_daylightSaving() {
+        TimeZone newYork = TimeZone.getTimeZone("America/New_York");
+        AlertPolicyEngine engine = engine(2, newYork);
+        // Clocks go forward at 02:00 on 2024-03-10.
+        engine.setQuietHours(22 * 60, 7 * 60, local(newYork, 2024, 3, 9, 12, 0));
+
+        assertTrue(engine.isQuietAt(local(newYork, 2024, 3, 10, 6, 59)));
+        assertFalse(engine.isQuietAt(local(newYork, 2024, 3, 10, 7, 0)));
+        assertTrue(engine.isQuietAt(local(newYork, 2024, 3, 10, 22, 0)));
+        assertFalse(engine.isQuietAt(local(newYork, 2024, 3, 10, 21, 59)));
+    }
+
+    /**
+     * Test: debounce is per type and zone; the type's bucket caps bursts across zones and refills
+     */
+    @Test
+    public void testDebounceAndTokenBucket() {
+        AlertPolicyEngine engine = engine(2, UTC);
+        long t = utc(2024, 5, 1, 12, 0);
+
+        assertEquals(AlertPolicyEngine.Decision.NOTIFY, engine.evaluate("person", 0, t));
+        assertEquals(AlertPolicyEngine.Decision.DEBOUNCED, engine.evaluate("person", 0, t + 1000L));
+        assertEquals(AlertPolicyEngine.Decision.NOTIFY, engine.evaluate("person", 4, t + 1000L));
+        assertEquals(AlertPolicyEngine.Decision.RATE_LIMITED, engine.evaluate("person", 8, t + 2000L));
+        assertEquals(AlertPolicyEngine.Decision.NOTIFY, engine.evaluate("vehicle", 0, t + 2000L));
+
+        // One token back per interval.
+        assertEquals(AlertPolicyEngine.Decision.NOTIFY, engine.evaluate("person", 8, t + DEBOUNCE_MS));
+        assertEquals(AlertPolicyEngine.Decision.RATE_LIMITED, engine.evaluate("person", 2, t + DEBOUNCE_MS));
+        assertEquals(AlertPolicyEngine.Decision.NOTIFY, engine.evaluate("person", 0, t + 2 * DEBOUNCE_MS));
+
+        engine.restoreLastSent("animal", t);
+        assertEquals(AlertPolicyEngine.Decision.DEBOUNCED, engine.evaluate("animal", 3, t + 1000L));
+        assertEquals(AlertPolicyEngine.Decision.NOTIFY, engine.evaluate("animal", 3, t + DEBOUNCE_MS));
+    }
+
+    /**
+     * Test: zones are the cells of a 3x3 grid, by the box's centre
+     */
+    @Test
+    public void testZoneOf() {
+        assertEquals(0, AlertPolicyEngine.zoneOf(new Rect(0, 0, 10, 10), 300, 300));
+        assertEquals(4, AlertPolicyEngine.zoneOf(new Rect(120, 120, 180, 180), 300, 300));
+        assertEquals(8, AlertPolicyEngine.zoneOf(new Rect(250, 250, 400, 400), 300, 300));
+        assertEquals(5, AlertPolicyEngine.zoneOf(new Rect(48, 32, 272, 156), 160, 180));
+        assertEquals(AlertPolicyEngine.ZONE_UNKNOWN, AlertPolicyEngine.zoneOf(new Rect(0, 0, 1, 1), 0, 0));
+        assertEquals(AlertPolicyEngine.ZONE_UNKNOWN, AlertPolicyEngine.zoneOf(null, 300, 300));
+    }
+
+    /**
+     * Test: threads racing on one type get exactly the bucket's burst, one per zone at most
+     */
+    @Test
+    public void testConcurrent_burstAndDebounceAreExact() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(THREADS);
+        try {
+            long t = utc(2024, 5, 1, 12, 0);
+            for (int round = 0; round < ROUNDS; round++) {
+                // Every thread in its own zone: the bucket alone decides.
+                AlertPolicyEngine engine = engine(3, UTC);
+                AtomicInteger zones = new AtomicInteger();
+                assertEquals(3, race(pool, () -> engine.evaluate("person", zones.getAndIncrement(), t)));
+
+                // Every thread in one zone: one wins, and the losers' tokens go back.
+                AlertPolicyEngine shared = engine(THREADS, UTC);
+                assertEquals(1, race(pool, () -> shared.evaluate("person", 2, t)));
+                for (int zone = 3; zone < 3 + THREADS - 1; zone++) {
+                    assertEquals(AlertPolicyEngine.Decision.NOTIFY, shared.evaluate("person", zone % 9, t));
+                }
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Test: evaluate allocates nothing per event, unlike the old date formatting and map lookups
+     */
+    @Test
+    public void testEvaluate_allocatesLessThanLegacyPolicy() throws Exception {
+        long t = utc(2024, 5, 1, 12, 0);
+        AlertPolicyEngine engine = engine(2, UTC);
+        engine.setQuietHours(23 * 60, 6 * 60, t);
+        LegacyPolicy legacy = new LegacyPolicy(23 * 60, 6 * 60);
+        int legacyNotified = 0;
+        int notified = 0;
+        // Warm both paths up so class loading is not counted.
+        for (int i = 0; i < ALLOCATION_EVENTS / 10; i++) {
+            legacy.shouldNotify(TYPES[i & 3], t + i);
+            engine.evaluate(TYPES[i & 3], i % AlertPolicyEngine.ZONE_COUNT, t + i);
+        }
+
+        long bytes = ConversationCacheTest.allocatedBytes();
+        for (int i = 0; i < ALLOCATION_EVENTS; i++) {
+            if (legacy.shouldNotify(TYPES[i & 3], t + i)) legacyNotified++;
+        }
+        double legacyBytes = (ConversationCacheTest.allocatedBytes() - bytes) / (double) ALLOCATION_EVENTS;
+
+        bytes = ConversationCacheTest.allocatedBytes();
+        for (int i = 0; i < ALLOCATION_EVENTS; i++) {
+            if (engine.evaluate(TYPES[i & 3], i % AlertPolicyEngine.ZONE_COUNT, t + i)
+                == AlertPolicyEngine.Decision.NOTIFY) {
+                notified++;
+            }
+        }
+        double engineBytes = (ConversationCacheTest.allocatedBytes() - bytes) / (double) ALLOCATION_EVENTS;
+
+        assertTrue(notified > 0 && legacyNotified > 0);
+        if (legacyBytes > 0d) {
+            assertTrue(engineBytes + " B per event", engineBytes < 1d);
+            assertTrue(engineBytes < legacyBytes);
+        }
+    }
+
+    @NonNull
+    private static AlertPolicyEngine engine(int burst, @NonNull TimeZone zone) {
+        return new AlertPolicyEngine(DEBOUNCE_MS, burst, DEBOUNCE_MS, zone);
+    }
+
+    private interface Attempt {
+        AlertPolicyEngine.Decision run();
+    }
+
+    /** Runs attempt on every thread at once; returns how many were told to notify. */
+    private static int race(@NonNull ExecutorService pool, @NonNull Attempt attempt) throws Exception {
+        CountDownLatch ready = new CountDownLatch(THREADS);
+        CountDownLatch go = new CountDownLatch(1);
+        List<Future<AlertPolicyEngine.Decision>> results = new ArrayList<>();
+        for (int i = 0; i < THREADS; i++) {
+            results.add(pool.submit(() -> {
+                ready.countDown();
+                go.await();
+                return attempt.run();
+            }));
+        }
+        assertTrue(ready.await(10, TimeUnit.SECONDS));
+        go.countDown();
+        int notified = 0;
+        for (Future<AlertPolicyEngine.Decision> result : results) {
+            if (result.get(10, TimeUnit.SECONDS) == AlertPolicyEngine.Decision.NOTIFY) notified++;
+        }
+        return notified;
+    }
+
+    private static long utc(int year, int month, int day, int hour, int minute) {
+        return local(UTC, year, month, day, hour, minute);
+    }
+
+    private static long local(@NonNull TimeZone zone, int year, int month, int day, int hour, int minute) {
+        Calendar calendar = Calendar.getInstance(zone);
+        calendar.clear();
+        calendar.set(year, month - 1, day, hour, minute);
+        return calendar.getTimeInMillis();
+    }
+
+    /** AlertManager's checks before the engine: quiet hours formatted per event, debounce in a map. */
+    private static final class LegacyPolicy {
+        private final int startMinute;
+        private final int endMinute;
+        private final Map<String, Long> lastSent = new HashMap<>();
+
+        LegacyPolicy(int startMinute, int endMinute) {
+            this.startMinute = startMinute;
+            this.endMinute = endMinute;
+        }
+
+        boolean shouldNotify(@NonNull String type, long now) {
+            SimpleDateFormat formatter = new SimpleDateFormat("H:mm", Locale.US);
+            formatter.setTimeZone(UTC);
+            String[] parts = formatter.format(new Date(now)).split(":");
+            int current = Integer.parseInt(parts[0]) * 60 + Integer.parseInt(parts[1]);
+            boolean quiet = startMinute < endMinute
+                ? current >= startMinute && current < endMinute
+                : current >= startMinute || current < endMinute;
+            if (quiet) return false;
+            Long last = lastSent.get(type);
+            if (last != null && now - last < DEBOUNCE_MS) return false;
+            lastSent.put(type, now);
+            return true;
+        }
+    }
+}
@@ -0,0 +1,268 @@
+package ai.clawphones.agent.chat;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.drawable.BitmapDrawable;
+import android.graphics.drawable.Drawable;
+import android.os.Looper;
+import android.widget.ImageView;
+
+import androidx.annotation.NonNull;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.AbstractExecutorService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.imageio.ImageIO;
+
+import static org.junit.Assert.*;
+import static org.robolectric.Shadows.shadowOf;
+
+/**
+ * Unit tests for AlertThumbnailLoader, including a scroll through a paged, lazily decoded alert
+ * history of 1000 events.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class AlertThumbnailLoaderTest {
+
+    private static final long DAY_MS = 24L * 60L * 60L * 1000L;
+    private static final int THUMB_W = 84 * 2;
+    private static final int THUMB_H = 60 * 2;
+    private static final int PLACEHOLDER = android.R.drawable.ic_menu_report_image;
+    private static final int SCROLL_EVENTS = 1000;
+    private static final int VISIBLE_ROWS = 10;
+    private static final int ROWS_PER_FRAME = 3;
+
+    /**
+     * Test: the sample size is the largest power of two that still covers the view
+     */
+    @Test
+    public void testSampleSizeFor() {
+        assertEquals(2, AlertThumbnailLoader.sampleSizeFor(640, 480, 168, 120));
+        assertEquals(8, AlertThumbnailLoader.sampleSizeFor(640, 480, 80, 60));
+        assertEquals(1, AlertThumbnailLoader.sampleSizeFor(100, 100, 168, 120));
+        assertEquals(1, AlertThumbnailLoader.sampleSizeFor(640, 480, 0, 0));
+    }
+
+    /**
+     * Test: the placeholder shows until the decode lands; a second bind is served from memory
+     */
+    @Test
+    public void testLoadInto_decodesOnceThenHitsCache() throws Exception {
+        AlertEventStore store = seededStore(1);
+        QueuedExecutor executor = new QueuedExecutor();
+        AlertThumbnailLoader loader = new AlertThumbnailLoader(store, AlertThumbnailLoader.CACHE_BYTES, executor);
+        ImageView view = new ImageView(context());
+
+        loader.loadInto(view, "ev-0", THUMB_W, THUMB_H, PLACEHOLDER);
+        Drawable placeholder = view.getDrawable();
+        assertEquals(1, executor.queued());
+        executor.runAll();
+        shadowOf(Looper.getMainLooper()).idle();
+
+        assertNotSame(placeholder, view.getDrawable());
+        assertTrue(view.getDrawable() instanceof BitmapDrawable);
+        Bitmap shown = ((BitmapDrawable) view.getDrawable()).getBitmap();
+        assertTrue(shown.getWidth() >= THUMB_W && shown.getHeight() >= THUMB_H);
+
+        loader.loadInto(view, "ev-0", THUMB_W, THUMB_H, PLACEHOLDER);
+        assertEquals(0, executor.queued());
+        AlertThumbnailLoader.Stats stats = loader.stats();
+        assertEquals(2, stats.requests);
+        assertEquals(1, stats.memoryHits);
+        assertEquals(1, stats.decodes);
+    }
+
+    /**
+     * Test: a recycled or rebound row never receives the thumbnail it asked for earlier
+     */
+    @Test
+    public void testRecycledRow_neverGetsStaleThumbnail() throws Exception {
+        AlertEventStore store = seededStore(3);
+        QueuedExecutor executor = new QueuedExecutor();
+        AlertThumbnailLoader loader = new AlertThumbnailLoader(store, AlertThumbnailLoader.CACHE_BYTES, executor);
+        ImageView view = new ImageView(context());
+
+        // Rebound before its decode started: the first request is skipped outright.
+        loader.loadInto(view, "ev-0", THUMB_W, THUMB_H, PLACEHOLDER);
+        loader.loadInto(view, "ev-1", THUMB_W, THUMB_H, PLACEHOLDER);
+        executor.runAll();
+        shadowOf(Looper.getMainLooper()).idle();
+        assertEquals(1, loader.stats().cancelled);
+        assertEquals(1, loader.stats().decodes);
+
+        // Recycled after its decode finished but before delivery: the bitmap is cached, not shown.
+        loader.loadInto(view, "ev-2", THUMB_W, THUMB_H, PLACEHOLDER);
+        Drawable placeholder = view.getDrawable();
+        executor.runAll();
+        loader.cancel(view);
+        shadowOf(Looper.getMainLooper()).idle();
+
+        assertSame(placeholder, view.getDrawable());
+        assertEquals(2, loader.stats().decodes);
+    }
+
+    /**
+     * Test: the memory cache stays within its byte budget and trims on memory pressure
+     */
+    @Test
+    public void testCache_boundedByBytes() throws Exception {
+        AlertEventStore store = seededStore(20);
+        QueuedExecutor executor = new QueuedExecutor();
+        int cacheBytes = 4 * THUMB_W * THUMB_H * 2;
+        AlertThumbnailLoader loader = new AlertThumbnailLoader(store, cacheBytes, executor);
+
+        for (int i = 0; i < 20; i++) {
+            loader.loadInto(new ImageView(context()), "ev-" + i, THUMB_W, THUMB_H, PLACEHOLDER);
+        }
+        executor.runAll();
+        shadowOf(Looper.getMainLooper()).idle();
+
+        assertEquals(20, loader.stats().decodes);
+        assertTrue(loader.cachedBytes() > 0);
+        assertTrue(loader.cachedBytes() <= cacheBytes);
+        loader.onTrimMemory(android.content.ComponentCallbacks2.TRIM_MEMORY_BACKGROUND);
+        assertEquals(0, loader.cachedBytes());
+    }
+
+    /**
+     * Test: the first frame reads one metadata page without thumbnail bytes, and scrolling 1000
+     * events binds every row through the loader
+     */
+    @Test
+    public void testScroll_pagesMetadataAndLoadsThumbnailsLazilyAt1000() throws Exception {
+        AlertEventStore store = seededStore(SCROLL_EVENTS);
+        ExecutorService decodeExecutor = Executors.newFixedThreadPool(2);
+        AlertThumbnailLoader loader = new AlertThumbnailLoader(store, AlertThumbnailLoader.CACHE_BYTES, decodeExecutor);
+        ImageView[] rows = new ImageView[VISIBLE_ROWS + ROWS_PER_FRAME];
+        for (int i = 0; i < rows.length; i++) rows[i] = new ImageView(context());
+
+        List<AlertEventStore.AlertEvent> page =
+            store.queryEvents(null, Long.MAX_VALUE, null, AlertHistoryActivity.PAGE_SIZE);
+        assertEquals(AlertHistoryActivity.PAGE_SIZE, page.size());
+        for (AlertEventStore.AlertEvent event : page) assertNull(event.thumbnailData);
+        for (int i = 0; i < VISIBLE_ROWS; i++) loader.loadInto(rows[i], page.get(i).id, THUMB_W, THUMB_H, PLACEHOLDER);
+
+        int bound = 0;
+        List<AlertEventStore.AlertEvent> loaded = new ArrayList<>(page);
+        while (bound < SCROLL_EVENTS) {
+            if (loaded.size() - bound < ROWS_PER_FRAME) {
+                AlertEventStore.AlertEvent last = loaded.get(loaded.size() - 1);
+                loaded.addAll(store.queryEvents(null, last.timestampMs, last.id, AlertHistoryActivity.PAGE_SIZE));
+            }
+            for (int i = 0; i < ROWS_PER_FRAME && bound < loaded.size(); i++, bound++) {
+                // Rows are recycled round-robin, as the RecyclerView pool would.
+                ImageView row = rows[bound % rows.length];
+                loader.cancel(row);
+                loader.loadInto(row, loaded.get(bound).id, THUMB_W, THUMB_H, PLACEHOLDER);
+            }
+            shadowOf(Looper.getMainLooper()).idle();
+        }
+        decodeExecutor.shutdown();
+        assertTrue(decodeExecutor.awaitTermination(60, TimeUnit.SECONDS));
+        shadowOf(Looper.getMainLooper()).idle();
+
+        AlertThumbnailLoader.Stats stats = loader.stats();
+        assertEquals(SCROLL_EVENTS, bound);
+        assertEquals(SCROLL_EVENTS, loaded.size());
+        assertEquals(SCROLL_EVENTS + VISIBLE_ROWS, stats.requests);
+        assertEquals(0, stats.missing);
+        assertTrue(stats.toString(), stats.decodes > 0 && stats.decodes <= stats.requests);
+    }
+
+    @NonNull
+    private static Context context() {
+        return RuntimeEnvironment.getApplication();
+    }
+
+    /** A store of count events, one a minute, newest first as ev-0, each with a 640x480 JPEG. */
+    @NonNull
+    private static AlertEventStore seededStore(int count) throws Exception {
+        AlertEventStore store = new AlertEventStore(context(), 365L * DAY_MS, 2 * count);
+        byte[] jpeg = jpeg(640, 480);
+        long now = System.currentTimeMillis();
+        for (int i = 0; i < count; i++) {
+            store.saveEvent(new AlertEventStore.AlertEvent("ev-" + i, i % 2 == 0 ? "person" : "vehicle", 0.9f,
+                now - i * 60_000L, 37.77, -122.42, null, jpeg), now);
+        }
+        return store;
+    }
+
+    @NonNull
+    private static byte[] jpeg(int width, int height) throws Exception {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        for (int y = 0; y < height; y += 16) {
+            g.setColor(new Color(y % 256, (y * 3) % 256, 128));
+            g.fillRect(0, y, width, 16);
+        }
+        g.dispose();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertTrue(ImageIO.write(image, "jpg", out));
+        return out.toByteArray();
+    }
+
+    /** Holds submitted tasks until {@link #runAll}, so a test decides when decodes happen. */
+    private static final class QueuedExecutor extends AbstractExecutorService {
+        private final List<Runnable> tasks = new ArrayList<>();
+        private boolean shutdown;
+
+        int queued() {
+            return tasks.size();
+        }
+
+        void runAll() {
+            List<Runnable> batch = new ArrayList<>(tasks);
+            tasks.clear();
+            for (Runnable task : batch) task.run();
+        }
+
+        @Override
+        public void execute(@NonNull Runnable command) {
+            tasks.add(command);
+        }
+
+        @Override
+        public void shutdown() {
+            shutdown = true;
+        }
+
+        @NonNull
+        @Override
+        public List<Runnable> shutdownNow() {
+            shutdown = true;
+            List<Runnable> pending = new ArrayList<>(tasks);
+            tasks.clear();
+            return pending;
+        }
+
+        @Override
+        public boolean isShutdown() {
+            return shutdown;
+        }
+
+        @Override
+        public boolean isTerminated() {
+            return shutdown && tasks.isEmpty();
+        }
+
+        @Override
+        public boolean awaitTermination(long timeout, @NonNull TimeUnit unit) {
+            return isTerminated();
+        }
+    }
+}
@@ -0,0 +1,283 @@
+package ai.clawphones.agent.chat;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for ApiJsonReader.
+ *
+ * NOTE: the multi-MB fixtures are generated into a temporary folder with the field layout of real
+ * responses, rather than checked in.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class ApiJsonReaderTest {
+
+    private static final int FIXTURE_MESSAGES = 12_000;
+    private static final int FIXTURE_CELLS = 8_000;
+
+    @Rule
+    public TemporaryFolder mTemp = new TemporaryFolder();
+
+    /**
+     * Test: conversations decode from a wrapped object, skipping unknown keys and nested values
+     */
+    @Test
+    public void testReadConversations_wrappedObject() throws Exception {
+        String json = "{\"meta\":{\"total\":2,\"tags\":[1,2]},\"conversations\":["
+            + "{\"id\":\"c1\",\"title\":\"  Trip \",\"created_at\":100,\"updated_at\":\"200\","
+            + "\"message_count\":3,\"extra\":{\"a\":[{}]}},"
+            + "{\"id\":42,\"title\":null,\"created_at\":1.7E9}],\"next\":null}";
+
+        List<ClawPhonesAPI.ConversationSummary> list = decode(json, ApiJsonReader::readConversations);
+
+        assertEquals(2, list.size());
+        assertEquals("c1", list.get(0).id);
+        assertEquals("Trip", list.get(0).title);
+        assertEquals(100L, list.get(0).createdAt);
+        assertEquals(200L, list.get(0).updatedAt);
+        assertEquals(3, list.get(0).messageCount);
+        assertEquals("42", list.get(1).id);
+        assertNull(list.get(1).title);
+        assertEquals(1_700_000_000L, list.get(1).createdAt);
+    }
+
+    /**
+     * Test: messages decode from a bare array into typed messages; an empty body gives none
+     */
+    @Test
+    public void testReadMessages_bareArrayAndEmptyBody() throws Exception {
+        String json = "[{\"id\":\"m1\",\"role\":\"user\",\"content\":\"hi \\u00e9\",\"created_at\":5},"
+            + "\"junk\",{\"role\":\"assistant\"}]";
+
+        List<ClawPhonesAPI.ConversationMessage> messages = decode(json, ApiJsonReader::readMessages);
+
+        assertEquals(2, messages.size());
+        assertEquals("m1", messages.get(0).id);
+        assertEquals("user", messages.get(0).role);
+        assertEquals("hi \u00e9", messages.get(0).content);
+        assertEquals(5L, messages.get(0).createdAt);
+        assertEquals("", messages.get(1).id);
+        assertEquals("assistant", messages.get(1).role);
+        assertEquals("", messages.get(1).content);
+        assertEquals(0L, messages.get(1).createdAt);
+        assertTrue(decode("", ApiJsonReader::readMessages).isEmpty());
+    }
+
+    /**
+     * Test: world cells read nested arrays, GeoJSON outer rings and lat/lng objects
+     */
+    @Test
+    public void testReadWorldCells_shapesAndNesting() throws Exception {
+        String json = "{\"data\":{\"cells\":[{\"h3\":\"89283082803ffff\",\"status\":\"fresh\","
+            + "\"boundary\":{\"type\":\"Polygon\",\"coordinates\":[[[-122.1,37.1],[-122.2,37.2],"
+            + "[-122.3,37.1],[-122.1,37.1]],[[0,0],[1,1],[2,2]]]}}]},"
+            + "\"nodes\":[{\"id\":\"n1\",\"is_self\":true,\"location\":{\"lat\":37.5,\"lng\":-122.5}},"
+            + "{\"id\":\"n2\",\"lat\":\"1.5\",\"lng\":2.5}]}";
+
+        ClawPhonesAPI.WorldCells world = decode(json, ApiJsonReader::readWorldCells);
+
+        assertEquals(1, world.cells.size());
+        ClawPhonesAPI.WorldItem cell = world.cells.get(0);
+        assertEquals("89283082803ffff", cell.text("cell_id", "h3"));
+        assertEquals("fresh", cell.text("status"));
+        List<double[]> ring = cell.shape("boundary");
+        assertEquals(4, ring.size());
+        assertArrayEquals(new double[] {-122.2, 37.2}, ring.get(1), 0.0);
+
+        assertEquals(2, world.nodes.size());
+        assertEquals("true", world.nodes.get(0).text("is_self"));
+        assertArrayEquals(new double[] {37.5, -122.5}, world.nodes.get(0).shape("location").get(0), 0.0);
+        assertEquals("1.5", world.nodes.get(1).text("lat"));
+        assertNull(world.nodes.get(1).shape("location", "coordinates"));
+    }
+
+    /**
+     * Test: a bare world array serves as both the cell and the node list
+     */
+    @Test
+    public void testReadWorldCells_bareArrayIsBothLists() throws Exception {
+        ClawPhonesAPI.WorldCells world = decode("[{\"id\":\"a\",\"center\":[1,2]}]",
+            ApiJsonReader::readWorldCells);
+
+        assertEquals(1, world.cells.size());
+        assertSame(world.cells, world.nodes);
+        assertArrayEquals(new double[] {1, 2}, world.cells.get(0).shape("center").get(0), 0.0);
+    }
+
+    /**
+     * Test: plan usage, tier map and daily cap fallback match the former DOM parsing
+     */
+    @Test
+    public void testReadUserPlan_tierMapAndCapFallback() throws Exception {
+        String json = "{\"data\":{\"current_tier\":\"premium\",\"usage\":{\"used\":\"1200\"},"
+            + "\"tiers\":{\"free\":{\"limits\":{\"daily_cap\":1000,\"max_tokens\":512}},"
+            + "\"pro\":{\"context_length\":32000,\"daily_cap\":50000}}}}";
+
+        ClawPhonesAPI.UserPlan plan = decode(json, ApiJsonReader::readUserPlan);
+
+        assertEquals("pro", plan.currentTier);
+        assertEquals(1200L, plan.todayUsedTokens);
+        assertEquals(50_000L, plan.dailyTokenLimit);
+        assertEquals(2, plan.tiers.size());
+        assertEquals("free", plan.tiers.get(0).tier);
+        assertEquals(512L, plan.tiers.get(0).outputLimit);
+        assertEquals(32_000L, plan.tiers.get(1).contextLength);
+    }
+
+    /**
+     * Test: truncated or mistyped JSON surfaces as JSONException
+     */
+    @Test
+    public void testDecode_malformedBodyThrowsJSONException() throws Exception {
+        try {
+            decode("{\"conversations\":[{\"id\":\"c1\"", ApiJsonReader::readConversations);
+            fail("expected JSONException");
+        } catch (JSONException expected) {
+            // Truncated body.
+        }
+        try {
+            decode("{\"conversations\":[{\"id\":\"c1\"}}", ApiJsonReader::readConversations);
+            fail("expected JSONException");
+        } catch (JSONException expected) {
+            // Mismatched bracket.
+        }
+    }
+
+    /**
+     * Test: a multi-MB message history decodes to the same rows as the String + org.json DOM path
+     */
+    @Test
+    public void testMessages_largeHistoryMatchesDom() throws Exception {
+        File fixture = writeMessagesFixture();
+
+        List<ClawPhonesAPI.ConversationMessage> messages = decodeFile(fixture, ApiJsonReader::readMessages);
+        assertEquals(FIXTURE_MESSAGES, messages.size());
+        assertEquals(decodeMessagesDom(fixture), describe(messages));
+    }
+
+    /**
+     * Test: a multi-MB world cells payload decodes every cell and its boundary ring
+     */
+    @Test
+    public void testWorldCells_largePayloadMatchesDom() throws Exception {
+        File fixture = writeWorldFixture();
+
+        ClawPhonesAPI.WorldCells world = decodeFile(fixture, ApiJsonReader::readWorldCells);
+        assertEquals(new JSONObject(readFile(fixture)).getJSONArray("cells").length(), world.cells.size());
+        assertEquals(FIXTURE_CELLS, world.cells.size());
+        assertEquals(7, world.cells.get(0).shape("boundary").size());
+    }
+
+    private static <T> T decode(String json, ApiJsonReader.Decoder<T> decoder) throws Exception {
+        return ApiJsonReader.decode(new StringReader(json), decoder);
+    }
+
+    private static <T> T decodeFile(File file, ApiJsonReader.Decoder<T> decoder) throws Exception {
+        Reader in = new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8);
+        return ApiJsonReader.decode(in, decoder);
+    }
+
+    /** The previous path: the body as one String, an org.json tree, then one HashMap per message. */
+    private static List<Map<String, Object>> decodeMessagesDom(File file) throws Exception {
+        JSONArray arr = new JSONObject(readFile(file)).optJSONArray("messages");
+        List<Map<String, Object>> out = new ArrayList<>();
+        for (int i = 0; i < arr.length(); i++) {
+            JSONObject msg = arr.optJSONObject(i);
+            if (msg == null) continue;
+            HashMap<String, Object> row = new HashMap<>();
+            row.put("id", msg.optString("id", ""));
+            row.put("role", msg.optString("role", ""));
+            row.put("content", msg.optString("content", ""));
+            row.put("created_at", msg.optLong("created_at", 0));
+            out.add(row);
+        }
+        return out;
+    }
+
+    private static List<Map<String, Object>> describe(List<ClawPhonesAPI.ConversationMessage> messages) {
+        List<Map<String, Object>> out = new ArrayList<>();
+        for (ClawPhonesAPI.ConversationMessage message : messages) {
+            HashMap<String, Object> row = new HashMap<>();
+            row.put("id", message.id);
+            row.put("role", message.role);
+            row.put("content", message.content);
+            row.put("created_at", message.createdAt);
+            out.add(row);
+        }
+        return out;
+    }
+
+    private static String readFile(File file) throws IOException {
+        return new String(Files.readAllBytes(file.toPath()), StandardCharsets.UTF_8);
+    }
+
+    private File writeMessagesFixture() throws IOException {
+        File file = mTemp.newFile("messages.json");
+        try (Writer out = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            out.write("{\"id\":\"conv-1\",\"title\":\"Fixture\",\"messages\":[");
+            for (int i = 0; i < FIXTURE_MESSAGES; i++) {
+                if (i > 0) out.write(',');
+                out.write("{\"id\":\"msg-" + i + "\",\"role\":\"" + (i % 2 == 0 ? "user" : "assistant")
+                    + "\",\"content\":\"" + fixtureText(i) + "\",\"created_at\":" + (1_700_000_000L + i)
+                    + ",\"metadata\":{\"model\":\"fixture\",\"tokens\":" + (i % 500) + "}}");
+            }
+            out.write("]}");
+        }
+        return file;
+    }
+
+    private File writeWorldFixture() throws IOException {
+        File file = mTemp.newFile("world.json");
+        try (Writer out = Files.newBufferedWriter(file.toPath(), StandardCharsets.UTF_8)) {
+            out.write("{\"cells\":[");
+            for (int i = 0; i < FIXTURE_CELLS; i++) {
+                if (i > 0) out.write(',');
+                double lat = 37.0 + (i % 100) * 0.01;
+                double lng = -122.0 - (i / 100) * 0.01;
+                out.write("{\"cell_id\":\"89283082" + Integer.toHexString(0x10000 + i) + "ff\","
+                    + "\"status\":\"" + (i % 3 == 0 ? "fresh" : "stale") + "\","
+                    + "\"last_seen_at\":\"2026-01-01T00:00:00Z\",\"boundary\":[");
+                for (int v = 0; v <= 6; v++) {
+                    if (v > 0) out.write(',');
+                    int k = v % 6;
+                    out.write("[" + (lng + Math.cos(k) * 0.004) + "," + (lat + Math.sin(k) * 0.004) + "]");
+                }
+                out.write("],\"stats\":{\"frames\":" + i + ",\"nodes\":" + (i % 7) + "}}");
+            }
+            out.write("],\"nodes\":[{\"id\":\"self\",\"is_self\":true,\"location\":{\"lat\":37.5,\"lng\":-122.5}}]}");
+        }
+        return file;
+    }
+
+    private static String fixtureText(int i) {
+        StringBuilder sb = new StringBuilder();
+        for (int w = 0; w < 24; w++) {
+            sb.append("word").append((i * 31 + w) % 977).append(' ');
+        }
+        return sb.append("\\n\\\"quoted\\\" \\u00e9").toString();
+    }
+}
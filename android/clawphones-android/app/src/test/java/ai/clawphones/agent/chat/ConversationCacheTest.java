@@ -0,0 +1,383 @@
+package ai.clawphones.agent.chat;
+
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.sqlite.SQLiteDatabase;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for ConversationCache.
+ *
+ * NOTE: Robolectric runs SQLite on the host JVM, so these tests check query plans and
+ * allocation counts (from the HotSpot thread MXBean) rather than timings.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class ConversationCacheTest {
+
+    private static final String CONVERSATION_ID = "conv-1";
+    private static final int PAGE_SIZE = 20;
+    private static final int BENCHMARK_ROUNDS = 200;
+
+    private ConversationCache mCache;
+
+    @Before
+    public void setUp() {
+        mCache = new ConversationCache(RuntimeEnvironment.getApplication());
+        mCache.clearAll();
+    }
+
+    @After
+    public void tearDown() {
+        mCache.close();
+    }
+
+    /**
+     * Test: getLatestMessages returns the newest page in ascending order
+     */
+    @Test
+    public void testGetLatestMessages_returnsNewestPageAscending() {
+        mCache.upsertMessages(CONVERSATION_ID, buildRows(ConversationCache.MAX_MESSAGES_PER_CONVERSATION));
+
+        List<ConversationCache.CachedMessage> page = mCache.getLatestMessages(CONVERSATION_ID, PAGE_SIZE);
+
+        assertEquals(PAGE_SIZE, page.size());
+        assertEquals("m-80", page.get(0).messageId);
+        assertEquals("m-99", page.get(PAGE_SIZE - 1).messageId);
+        for (int i = 1; i < page.size(); i++) {
+            assertTrue(page.get(i - 1).createdAt <= page.get(i).createdAt);
+        }
+    }
+
+    /**
+     * Test: walking getMessagesBefore from the newest page visits every message exactly once
+     */
+    @Test
+    public void testGetMessagesBefore_walksWholeConversationWithoutGapsOrDuplicates() {
+        List<ClawPhonesAPI.ConversationMessage> rows = buildRows(ConversationCache.MAX_MESSAGES_PER_CONVERSATION);
+        // Same timestamp for a run of messages, so the local_id tie-breaker has to carry the cursor.
+        for (int i = 40; i < 60; i++) {
+            ClawPhonesAPI.ConversationMessage row = rows.get(i);
+            rows.set(i, new ClawPhonesAPI.ConversationMessage(row.id, row.role, row.content, 1_000L));
+        }
+        mCache.upsertMessages(CONVERSATION_ID, rows);
+
+        List<ConversationCache.CachedMessage> page = mCache.getLatestMessages(CONVERSATION_ID, PAGE_SIZE);
+        List<String> seen = new ArrayList<>();
+        while (!page.isEmpty()) {
+            for (int i = page.size() - 1; i >= 0; i--) {
+                seen.add(page.get(i).messageId);
+            }
+            ConversationCache.CachedMessage oldest = page.get(0);
+            page = mCache.getMessagesBefore(CONVERSATION_ID, oldest.createdAt, oldest.localId, PAGE_SIZE);
+        }
+
+        assertEquals(ConversationCache.MAX_MESSAGES_PER_CONVERSATION, seen.size());
+        assertEquals(ConversationCache.MAX_MESSAGES_PER_CONVERSATION, new java.util.HashSet<>(seen).size());
+    }
+
+    /**
+     * Test: paged reads on an unknown or empty conversation id return an empty list
+     */
+    @Test
+    public void testPagedReads_unknownConversation_returnsEmpty() {
+        assertTrue(mCache.getLatestMessages("missing", PAGE_SIZE).isEmpty());
+        assertTrue(mCache.getMessagesBefore("missing", Long.MAX_VALUE, Long.MAX_VALUE, PAGE_SIZE).isEmpty());
+        assertTrue(mCache.getLatestMessages("", PAGE_SIZE).isEmpty());
+    }
+
+    /**
+     * Test: message_count and updated_at follow inserts, REPLACE dedupes and prunes
+     */
+    @Test
+    public void testUpsertMessages_keepsConversationStatsInSync() {
+        mCache.upsertMessages(CONVERSATION_ID, buildRows(10));
+        // Re-sending the same ids replaces rows in place and must not inflate the count.
+        mCache.upsertMessages(CONVERSATION_ID, buildRows(10));
+
+        ClawPhonesAPI.ConversationSummary summary = findConversation(CONVERSATION_ID);
+        assertNotNull(summary);
+        assertEquals(10, summary.messageCount);
+        assertEquals(1_090L, summary.updatedAt);
+
+        mCache.upsertMessages(CONVERSATION_ID, buildRows(ConversationCache.MAX_MESSAGES_PER_CONVERSATION + 20));
+        summary = findConversation(CONVERSATION_ID);
+        assertNotNull(summary);
+        assertEquals(ConversationCache.MAX_MESSAGES_PER_CONVERSATION, summary.messageCount);
+    }
+
+    /**
+     * Test: refreshing the conversation list keeps cached messages and their count
+     */
+    @Test
+    public void testUpsertConversations_doesNotDropCachedMessages() {
+        mCache.upsertMessages(CONVERSATION_ID, buildRows(5));
+
+        List<ClawPhonesAPI.ConversationSummary> refreshed = new ArrayList<>();
+        refreshed.add(new ClawPhonesAPI.ConversationSummary(CONVERSATION_ID, "Renamed", 900L, 5_000L, 42));
+        refreshed.add(new ClawPhonesAPI.ConversationSummary("conv-2", "Other", 800L, 0L, 3));
+        mCache.upsertConversations(refreshed);
+
+        assertEquals(5, mCache.getLatestMessages(CONVERSATION_ID, PAGE_SIZE).size());
+        List<ClawPhonesAPI.ConversationSummary> list = mCache.getRecentConversations();
+        assertEquals(CONVERSATION_ID, list.get(0).id);
+        assertEquals("Renamed", list.get(0).title);
+        assertEquals(5, list.get(0).messageCount);
+        assertEquals(5_000L, list.get(0).updatedAt);
+        assertEquals("conv-2", list.get(1).id);
+    }
+
+    /**
+     * Test: the conversation limit prunes by recency and cascades to messages
+     */
+    @Test
+    public void testUpsertConversations_prunesOldestBeyondLimit() {
+        mCache.upsertMessages("oldest", buildRows(3));
+        List<ClawPhonesAPI.ConversationSummary> batch = new ArrayList<>();
+        for (int i = 0; i < ConversationCache.MAX_CONVERSATIONS; i++) {
+            batch.add(new ClawPhonesAPI.ConversationSummary("c-" + i, null, 10_000L + i, 0L, 0));
+        }
+        mCache.upsertConversations(batch);
+
+        List<ClawPhonesAPI.ConversationSummary> list = mCache.getRecentConversations();
+        assertEquals(ConversationCache.MAX_CONVERSATIONS, list.size());
+        assertEquals("c-" + (ConversationCache.MAX_CONVERSATIONS - 1), list.get(0).id);
+        assertNull(findConversation("oldest"));
+        assertTrue(mCache.getLatestMessages("oldest", PAGE_SIZE).isEmpty());
+    }
+
+    /**
+     * Test: searchMessages finds prefix matches across conversations with a highlighted snippet
+     */
+    @Test
+    public void testSearchMessages_returnsConversationMessageAndSnippet() {
+        mCache.upsertMessages("conv-a", singleRow("a-1", "The quarterly budget review is on Friday", 100L));
+        mCache.upsertMessages("conv-b", singleRow("b-1", "Budget approved, see you at the review", 200L));
+        mCache.upsertMessages("conv-b", singleRow("b-2", "Unrelated lunch plans", 300L));
+
+        List<ConversationCache.SearchHit> hits = mCache.searchMessages("budg revi", 10);
+
+        assertEquals(2, hits.size());
+        java.util.Set<String> ids = new java.util.HashSet<>();
+        for (ConversationCache.SearchHit hit : hits) {
+            ids.add(hit.conversationId + "/" + hit.messageId);
+            assertTrue(hit.snippet, hit.snippet.contains(ConversationCache.SEARCH_MATCH_START));
+        }
+        assertTrue(ids.contains("conv-a/a-1"));
+        assertTrue(ids.contains("conv-b/b-1"));
+        assertEquals(1, mCache.searchMessages("budget", 1).size());
+    }
+
+    /**
+     * Test: the index follows REPLACE, per-conversation prune and conversation cascade delete
+     */
+    @Test
+    public void testSearchMessages_followsReplacePruneAndCascade() {
+        mCache.upsertMessages(CONVERSATION_ID, singleRow("x-1", "original zebra text", 100L));
+        mCache.upsertMessages(CONVERSATION_ID, singleRow("x-1", "edited giraffe text", 100L));
+        assertTrue(mCache.searchMessages("zebra", 10).isEmpty());
+        assertEquals(1, mCache.searchMessages("giraffe", 10).size());
+
+        // A full window of newer messages pushes x-1 (the oldest) out of the conversation.
+        mCache.upsertMessages(CONVERSATION_ID, buildRows(ConversationCache.MAX_MESSAGES_PER_CONVERSATION));
+        assertTrue(mCache.searchMessages("giraffe", 10).isEmpty());
+        assertEquals(5, mCache.searchMessages("reply", 5).size());
+
+        mCache.removeConversation(CONVERSATION_ID);
+        assertTrue(mCache.searchMessages("message", 10).isEmpty());
+    }
+
+    /**
+     * Test: buildMatchQuery strips FTS operators and quoting from user input
+     */
+    @Test
+    public void testBuildMatchQuery_sanitizesInput() {
+        assertEquals("hello* wor*", ConversationCache.buildMatchQuery("  Hello, \"wor"));
+        assertEquals("near* not*", ConversationCache.buildMatchQuery("NEAR( NOT -"));
+        assertNull(ConversationCache.buildMatchQuery("  *\"()  "));
+        assertNull(ConversationCache.buildMatchQuery(null));
+        assertTrue(mCache.searchMessages("\"unbalanced OR", 5).isEmpty());
+    }
+
+    /**
+     * Test: a ranked search over a full cache (50 conversations x 100 messages) is driven by the
+     * full-text index and reaches each message row by primary key, never by scanning messages
+     */
+    @Test
+    public void testSearchMessages_fullCacheUsesFtsIndex() {
+        for (int c = 0; c < ConversationCache.MAX_CONVERSATIONS; c++) {
+            mCache.upsertMessages("conv-" + c, buildRows(ConversationCache.MAX_MESSAGES_PER_CONVERSATION));
+        }
+
+        assertEquals(20, mCache.searchMessages("reply", 20).size());
+        assertEquals(20, mCache.searchMessages("body 4", 20).size());
+
+        // Same join shape as searchFts5Internal and searchFts4Internal; rowid aliases docid on FTS4.
+        List<String> plan = explainQueryPlan(
+            "SELECT m.conversation_id FROM messages_fts " +
+                "JOIN messages m ON m.local_id = messages_fts.rowid " +
+                "WHERE messages_fts MATCH ?",
+            "reply*");
+        assertTrue(plan.toString(), plan.size() >= 2);
+        assertTrue(plan.toString(), plan.get(0).contains("messages_fts") && plan.get(0).contains("VIRTUAL TABLE"));
+        for (String step : plan.subList(1, plan.size())) {
+            assertTrue(plan.toString(), step.startsWith("SEARCH") && step.contains("PRIMARY KEY"));
+        }
+    }
+
+    /**
+     * Test: opening a conversation with the typed first page allocates less than the old
+     * Map-per-row full-window read plus the copy/sort ChatActivity did afterwards
+     */
+    @Test
+    public void testOpenConversation_pagedAllocatesLessThanLegacy() {
+        mCache.upsertMessages(CONVERSATION_ID, buildRows(ConversationCache.MAX_MESSAGES_PER_CONVERSATION));
+
+        // Warm both paths so statement compilation is not charged to either side.
+        openLegacy();
+        openPaged();
+
+        long legacyBytes = allocatedBytes();
+        for (int i = 0; i < BENCHMARK_ROUNDS; i++) openLegacy();
+        legacyBytes = allocatedBytes() - legacyBytes;
+
+        long pagedBytes = allocatedBytes();
+        for (int i = 0; i < BENCHMARK_ROUNDS; i++) openPaged();
+        pagedBytes = allocatedBytes() - pagedBytes;
+
+        if (legacyBytes > 0 && pagedBytes > 0) {
+            assertTrue("paged open should allocate less than the legacy path", pagedBytes < legacyBytes);
+        }
+    }
+
+    /**
+     * Test: syncing a 100-message history through the compiled-statement batch writer leaves
+     * exactly the rows the previous path did, which built ContentValues and called
+     * insertWithOnConflict per row inside one exclusive transaction. Both run on the cache's
+     * own schema and triggers.
+     */
+    @Test
+    public void testSyncHistory_batchWriterMatchesPerRowContentValues() {
+        List<ClawPhonesAPI.ConversationMessage> rows = buildRows(ConversationCache.MAX_MESSAGES_PER_CONVERSATION);
+        SQLiteDatabase db = mCache.getWritableDatabase();
+
+        legacySync(db, rows);
+        List<String> legacyRows = snapshot();
+        mCache.replaceMessages(CONVERSATION_ID, rows);
+
+        assertEquals(ConversationCache.MAX_MESSAGES_PER_CONVERSATION, legacyRows.size());
+        assertEquals(legacyRows, snapshot());
+    }
+
+    private List<String> explainQueryPlan(String sql, String... args) {
+        Cursor cursor = mCache.getReadableDatabase().rawQuery("EXPLAIN QUERY PLAN " + sql, args);
+        List<String> details = new ArrayList<>();
+        try {
+            int detail = cursor.getColumnIndexOrThrow("detail");
+            while (cursor.moveToNext()) {
+                details.add(cursor.getString(detail));
+            }
+        } finally {
+            cursor.close();
+        }
+        return details;
+    }
+
+    /** The pre-batch write path: fresh ContentValues and insertWithOnConflict for every row. */
+    private static void legacySync(SQLiteDatabase db, List<ClawPhonesAPI.ConversationMessage> rows) {
+        db.beginTransaction();
+        try {
+            db.delete("messages", "conversation_id = ?", new String[]{CONVERSATION_ID});
+            for (ClawPhonesAPI.ConversationMessage row : rows) {
+                ContentValues values = new ContentValues();
+                values.put("conversation_id", CONVERSATION_ID);
+                values.put("message_id", row.id);
+                values.put("role", row.role);
+                values.put("content", row.content);
+                values.put("created_at", row.createdAt);
+                values.put("dedupe_key", "id:" + row.id);
+                db.insertWithOnConflict("messages", null, values, SQLiteDatabase.CONFLICT_REPLACE);
+            }
+            db.setTransactionSuccessful();
+        } finally {
+            db.endTransaction();
+        }
+    }
+
+    private List<String> snapshot() {
+        List<String> rows = new ArrayList<>();
+        for (ConversationCache.CachedMessage message
+            : mCache.getLatestMessages(CONVERSATION_ID, ConversationCache.MAX_MESSAGES_PER_CONVERSATION)) {
+            rows.add(message.messageId + "|" + message.role + "|" + message.createdAt + "|" + message.content);
+        }
+        return rows;
+    }
+
+    private int openLegacy() {
+        List<Map<String, Object>> rows = new ArrayList<>(mCache.getRecentMessages(CONVERSATION_ID));
+        Collections.sort(rows, new Comparator<Map<String, Object>>() {
+            @Override
+            public int compare(Map<String, Object> a, Map<String, Object> b) {
+                return Long.compare((Long) a.get("created_at"), (Long) b.get("created_at"));
+            }
+        });
+        return rows.size();
+    }
+
+    private int openPaged() {
+        return mCache.getLatestMessages(CONVERSATION_ID, PAGE_SIZE).size();
+    }
+
+    private ClawPhonesAPI.ConversationSummary findConversation(String id) {
+        for (ClawPhonesAPI.ConversationSummary summary : mCache.getRecentConversations()) {
+            if (id.equals(summary.id)) return summary;
+        }
+        return null;
+    }
+
+    private static List<ClawPhonesAPI.ConversationMessage> singleRow(String id, String content, long createdAt) {
+        List<ClawPhonesAPI.ConversationMessage> rows = new ArrayList<>();
+        rows.add(new ClawPhonesAPI.ConversationMessage(id, "user", content, createdAt));
+        return rows;
+    }
+
+    private static List<ClawPhonesAPI.ConversationMessage> buildRows(int count) {
+        List<ClawPhonesAPI.ConversationMessage> rows = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            rows.add(new ClawPhonesAPI.ConversationMessage(
+                "m-" + i,
+                i % 2 == 0 ? "user" : "assistant",
+                "message body " + i + " with enough text to look like a real reply",
+                1_000L + i * 10L));
+        }
+        return rows;
+    }
+
+    /** Bytes allocated by the current thread, or 0 when the JVM does not expose the counter. */
+    static long allocatedBytes() {
+        try {
+            Object bean = Class.forName("java.lang.management.ManagementFactory")
+                .getMethod("getThreadMXBean").invoke(null);
+            return (Long) Class.forName("com.sun.management.ThreadMXBean")
+                .getMethod("getThreadAllocatedBytes", long.class)
+                .invoke(bean, Thread.currentThread().getId());
+        } catch (Exception e) {
+            return 0L;
+        }
+    }
+}
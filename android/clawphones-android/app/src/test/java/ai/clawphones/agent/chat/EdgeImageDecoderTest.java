@@ -0,0 +1,183 @@
+package ai.clawphones.agent.chat;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.util.Base64;
+
+import androidx.annotation.NonNull;
+
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for EdgeImageDecoder on a generated 12 MP JPEG, and for its bitmap pool.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class EdgeImageDecoderTest {
+
+    private static final int PHOTO_WIDTH = 4000;
+    private static final int PHOTO_HEIGHT = 3000;
+    private static final int JOBS = 8;
+
+    /** Base64 of a noisy 4000x3000 JPEG behind a data URL prefix, as jobs carry it. */
+    private static String sPhoto;
+
+    @BeforeClass
+    public static void renderPhoto() throws Exception {
+        BufferedImage image = new BufferedImage(PHOTO_WIDTH, PHOTO_HEIGHT, BufferedImage.TYPE_BYTE_GRAY);
+        byte[] pixels = new byte[PHOTO_WIDTH * PHOTO_HEIGHT];
+        new Random(7).nextBytes(pixels);
+        image.getRaster().setDataElements(0, 0, PHOTO_WIDTH, PHOTO_HEIGHT, pixels);
+        ByteArrayOutputStream jpeg = new ByteArrayOutputStream();
+        assertTrue(ImageIO.write(image, "jpg", jpeg));
+        sPhoto = "data:image/jpeg;base64," + Base64.encodeToString(jpeg.toByteArray(), Base64.NO_WRAP);
+    }
+
+    /**
+     * Test: each job type gets the smallest power-of-two sample size that fits its target
+     */
+    @Test
+    public void testSampleSize_fitsTargetPerJobType() {
+        assertEquals(8, EdgeImageDecoder.sampleSizeFor(PHOTO_WIDTH, PHOTO_HEIGHT,
+            EdgeImageDecoder.targetSizeFor(ComputeJob.JobType.IMAGE_LABELING)));
+        assertEquals(4, EdgeImageDecoder.sampleSizeFor(PHOTO_WIDTH, PHOTO_HEIGHT,
+            EdgeImageDecoder.targetSizeFor(ComputeJob.JobType.OBJECT_DETECTION)));
+        assertEquals(2, EdgeImageDecoder.sampleSizeFor(PHOTO_WIDTH, PHOTO_HEIGHT,
+            EdgeImageDecoder.targetSizeFor(ComputeJob.JobType.TEXT_RECOGNITION)));
+        assertEquals(4, EdgeImageDecoder.sampleSizeFor(PHOTO_HEIGHT, PHOTO_WIDTH, 1024));
+        assertEquals(1, EdgeImageDecoder.sampleSizeFor(640, 480, 640));
+    }
+
+    /**
+     * Test: a 12 MP photo is decoded at the job's size, and the source size is kept for mapping results back
+     */
+    @Test
+    public void testDecode_downsamplesToJobSize() {
+        EdgeImageDecoder decoder = new EdgeImageDecoder(new EdgeImageDecoder.Pool(0L));
+
+        EdgeImageDecoder.Decoded decoded = decoder.decode(sPhoto, ComputeJob.JobType.OBJECT_DETECTION);
+
+        assertNotNull(decoded);
+        assertEquals(PHOTO_WIDTH, decoded.sourceWidth);
+        assertEquals(PHOTO_HEIGHT, decoded.sourceHeight);
+        assertEquals(4, decoded.sampleSize);
+        assertEquals(1000, decoded.bitmap.getWidth());
+        assertEquals(750, decoded.bitmap.getHeight());
+        assertEquals(4f, decoded.scale(), 0.001f);
+        decoder.release(decoded);
+        assertEquals(0L, decoder.stats().bitmapBytes);
+    }
+
+    /**
+     * Test: empty input is not an image
+     */
+    @Test
+    public void testDecode_rejectsEmptyInput() {
+        EdgeImageDecoder decoder = new EdgeImageDecoder();
+
+        assertNull(decoder.decode(null, ComputeJob.JobType.IMAGE_LABELING));
+        assertNull(decoder.decode("", ComputeJob.JobType.IMAGE_LABELING));
+        assertEquals(0L, decoder.stats().decodes);
+    }
+
+    /**
+     * Test: the pool hands out the smallest bitmap that is big enough, and only mutable ones
+     */
+    @Test
+    public void testPool_reusesSmallestFit() {
+        EdgeImageDecoder.Pool pool = new EdgeImageDecoder.Pool(10L * 1024 * 1024);
+        Bitmap small = Bitmap.createBitmap(100, 100, Bitmap.Config.ARGB_8888);
+        Bitmap large = Bitmap.createBitmap(200, 200, Bitmap.Config.ARGB_8888);
+        pool.release(large);
+        pool.release(small);
+
+        assertSame(large, pool.acquire(150L * 150L * 4L));
+        assertNull(pool.acquire(150L * 150L * 4L));
+        assertSame(small, pool.acquire(50L * 50L * 4L));
+        assertEquals(0L, pool.bytes());
+
+        Bitmap immutable = Bitmap.createBitmap(100, 100, Bitmap.Config.ARGB_8888).copy(Bitmap.Config.ARGB_8888, false);
+        pool.release(immutable);
+        assertEquals(0L, pool.bytes());
+        assertTrue(immutable.isRecycled());
+    }
+
+    /**
+     * Test: releasing past the byte budget evicts and recycles the oldest bitmaps
+     */
+    @Test
+    public void testPool_staysWithinBudget() {
+        long bitmapBytes = 100L * 100L * 4L;
+        EdgeImageDecoder.Pool pool = new EdgeImageDecoder.Pool(3L * bitmapBytes);
+        Bitmap[] bitmaps = new Bitmap[5];
+        for (int i = 0; i < bitmaps.length; i++) {
+            bitmaps[i] = Bitmap.createBitmap(100, 100, Bitmap.Config.ARGB_8888);
+            pool.release(bitmaps[i]);
+        }
+
+        assertEquals(3L * bitmapBytes, pool.bytes());
+        assertEquals(2L, pool.evicted());
+        assertTrue(bitmaps[0].isRecycled());
+        assertTrue(bitmaps[1].isRecycled());
+        assertFalse(bitmaps[4].isRecycled());
+
+        pool.trimTo(0L);
+        assertEquals(0L, pool.bytes());
+        assertTrue(bitmaps[4].isRecycled());
+    }
+
+    /**
+     * Test: streamed, downsampled decoding needs a fraction of the heap of the old full-size path per job
+     */
+    @Test
+    public void testDecode_streamedPeakHeapIsFractionOfFullSize() {
+        EdgeImageDecoder decoder = new EdgeImageDecoder();
+        long streamedAllocated = 0L;
+        long streamedPixels = 0L;
+        for (int i = 0; i < JOBS; i++) {
+            long before = ConversationCacheTest.allocatedBytes();
+            EdgeImageDecoder.Decoded decoded = decoder.decode(sPhoto, ComputeJob.JobType.OBJECT_DETECTION);
+            streamedAllocated += ConversationCacheTest.allocatedBytes() - before;
+            assertNotNull(decoded);
+            streamedPixels = Math.max(streamedPixels, 4L * decoded.bitmap.getWidth() * decoded.bitmap.getHeight());
+            decoder.release(decoded);
+        }
+
+        long fullAllocated = 0L;
+        long fullPixels = 0L;
+        for (int i = 0; i < JOBS; i++) {
+            long before = ConversationCacheTest.allocatedBytes();
+            Bitmap bitmap = decodeFullSize(sPhoto);
+            fullAllocated += ConversationCacheTest.allocatedBytes() - before;
+            assertNotNull(bitmap);
+            fullPixels = Math.max(fullPixels, 4L * PHOTO_WIDTH * PHOTO_HEIGHT);
+            bitmap.recycle();
+        }
+
+        // Pixels are counted separately: under Robolectric a bitmap does not allocate its buffer.
+        long streamedPeak = streamedAllocated / JOBS + streamedPixels;
+        long fullPeak = fullAllocated / JOBS + fullPixels;
+        assertTrue(streamedAllocated < fullAllocated);
+        assertTrue(streamedPeak * 4 < fullPeak);
+        assertEquals(JOBS, decoder.stats().decodes);
+    }
+
+    /** The decode path jobs used before: the whole input as bytes, decoded at full resolution. */
+    private static Bitmap decodeFullSize(@NonNull String base64Data) {
+        String data = base64Data.substring(base64Data.indexOf(',') + 1);
+        byte[] bytes = Base64.decode(data, Base64.DEFAULT);
+        return BitmapFactory.decodeByteArray(bytes, 0, bytes.length);
+    }
+}
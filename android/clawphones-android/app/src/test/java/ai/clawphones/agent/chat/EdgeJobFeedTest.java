@@ -0,0 +1,318 @@
+package ai.clawphones.agent.chat;
+
+import androidx.annotation.NonNull;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for EdgeJobFeed against a stub job server with a long-poll endpoint. Timings are
+ * scaled down SCALE times from the production ones.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class EdgeJobFeedTest {
+
+    private static final long SCALE = 200L;
+    private static final EdgeJobFeed.Timing SCALED = new EdgeJobFeed.Timing(
+        EdgeJobFeed.Timing.DEFAULT.waitMs / SCALE,
+        EdgeJobFeed.Timing.DEFAULT.minPollMs / SCALE,
+        EdgeJobFeed.Timing.DEFAULT.initialPollMs / SCALE,
+        EdgeJobFeed.Timing.DEFAULT.maxPollMs / SCALE,
+        EdgeJobFeed.Timing.DEFAULT.pushRetryMs / SCALE);
+    /** The old fixed 10 s poll, scaled. */
+    private static final long FIXED_POLL_MS = 10_000L / SCALE;
+
+    private MockWebServer mServer;
+    private StubJobServer mJobs;
+    private OkHttpClient mHttp;
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = new MockWebServer();
+        mJobs = new StubJobServer();
+        mServer.setDispatcher(mJobs);
+        mServer.start();
+        mHttp = HttpTransport.newBuilder().build();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mServer.shutdown();
+    }
+
+    /**
+     * Test: with push, a posted job is claimed within a round trip and an idle feed only renews its long-poll
+     */
+    @Test
+    public void testPush_picksUpJobsAtOnce() throws Exception {
+        Scenario push = run(SCALED, 3, 300L);
+
+        assertEquals(EdgeJobFeed.Mode.PUSH, push.stats.mode);
+        assertEquals(3, push.latenciesMs.size());
+        assertTrue("max " + push.maxLatencyMs(), push.maxLatencyMs() < 100L);
+        assertEquals(0L, push.stats.pollTicks);
+        // One renewal per job and per expired wait, plus the first request.
+        long expiredWaits = push.stats.elapsedMs / SCALED.waitMs;
+        assertTrue("long-polls " + push.stats.longPolls, push.stats.longPolls <= 3 + expiredWaits + 2);
+    }
+
+    /**
+     * Test: without the long-poll endpoint the feed polls, and every job is still picked up
+     */
+    @Test
+    public void testNoLongPoll_fallsBackToPolling() throws Exception {
+        mJobs.waitSupported = false;
+        Scenario poll = run(SCALED, 3, 300L);
+
+        assertEquals(EdgeJobFeed.Mode.POLL, poll.stats.mode);
+        assertEquals(1L, poll.stats.longPolls);
+        assertEquals(3, poll.latenciesMs.size());
+        assertTrue("max " + poll.maxLatencyMs(), poll.maxLatencyMs() <= SCALED.maxPollMs + 100L);
+    }
+
+    /**
+     * Test: the poll interval doubles on every empty claim up to the cap and drops to the minimum after a hit
+     */
+    @Test
+    public void testPollInterval_backsOffAndTightens() throws Exception {
+        mJobs.waitSupported = false;
+        EdgeJobClient client = client();
+        EdgeJobFeed feed = new EdgeJobFeed(client, () -> { }, SCALED);
+        EdgeWorkerPool.JobSource source = feed.observe(client);
+        feed.start();
+        long deadline = System.currentTimeMillis() + 2000L;
+        while (feed.mode() != EdgeJobFeed.Mode.POLL && System.currentTimeMillis() < deadline) {
+            Thread.sleep(5L);
+        }
+        assertEquals(EdgeJobFeed.Mode.POLL, feed.mode());
+        assertFalse(feed.isPushSupported());
+
+        List<Long> intervals = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            assertTrue(source.claim(1, allTypes()).isEmpty());
+            intervals.add(feed.stats().pollIntervalMs);
+        }
+        mJobs.add(1);
+        assertEquals(1, source.claim(1, allTypes()).size());
+        long afterHit = feed.stats().pollIntervalMs;
+        feed.stop();
+
+        long initial = SCALED.initialPollMs;
+        assertEquals(Arrays.asList(2 * initial, 4 * initial, 8 * initial, SCALED.maxPollMs,
+            SCALED.maxPollMs), intervals);
+        assertEquals(SCALED.minPollMs, afterHit);
+        assertEquals(1L, feed.stats().hits);
+    }
+
+    /**
+     * Test: push beats the old fixed poll on pickup latency and wakeups; adaptive polling beats it on wakeups
+     */
+    @Test
+    public void testPickupLatencyAndWakeups_pushAndAdaptiveVsFixedPoll() throws Exception {
+        Scenario push = run(SCALED, 3, 1500L);
+        mJobs.waitSupported = false;
+        Scenario adaptive = run(SCALED, 3, 1500L);
+        Scenario fixed = run(new EdgeJobFeed.Timing(SCALED.waitMs, FIXED_POLL_MS, FIXED_POLL_MS, FIXED_POLL_MS,
+            SCALED.pushRetryMs), 3, 1500L);
+
+        assertEquals(3, push.latenciesMs.size());
+        assertEquals(3, adaptive.latenciesMs.size());
+        assertEquals(3, fixed.latenciesMs.size());
+        assertTrue(push.meanLatencyMs() < fixed.meanLatencyMs());
+        assertTrue(push.stats.wakeups() * 3 < fixed.stats.wakeups());
+        assertTrue(adaptive.stats.wakeups() < fixed.stats.wakeups());
+    }
+
+    /**
+     * Runs a pool of two workers behind a feed: idle for idleMs, then one job every 3 long-poll
+     * waits' worth of time, then a short tail.
+     */
+    @NonNull
+    private Scenario run(@NonNull EdgeJobFeed.Timing timing, int jobs, long idleMs) throws Exception {
+        mJobs.reset();
+        EdgeJobClient client = client();
+        EdgeWorkerPool[] pool = new EdgeWorkerPool[1];
+        EdgeJobFeed feed = new EdgeJobFeed(client, () -> pool[0].requestClaim(), timing);
+        pool[0] = new EdgeWorkerPool(feed.observe(client), job -> {
+            Thread.sleep(10L);
+            job.setStatus(ComputeJob.JobStatus.COMPLETED);
+        }, 2);
+        feed.start();
+
+        Thread.sleep(idleMs);
+        for (int i = 0; i < jobs; i++) {
+            mJobs.add(1);
+            Thread.sleep(SCALED.waitMs);
+        }
+        long deadline = System.currentTimeMillis() + 2 * timing.maxPollMs;
+        while (mJobs.claimedCount() < jobs && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10L);
+        }
+
+        Scenario scenario = new Scenario(feed.stats(), mJobs.latencies());
+        feed.stop();
+        pool[0].shutdown();
+        return scenario;
+    }
+
+    @NonNull
+    private EdgeJobClient client() {
+        return new EdgeJobClient(mHttp, mServer.url("/v1/compute").toString(), "device-1");
+    }
+
+    @NonNull
+    private static Map<ComputeJob.JobType, Integer> allTypes() {
+        Map<ComputeJob.JobType, Integer> types = new EnumMap<>(ComputeJob.JobType.class);
+        for (ComputeJob.JobType type : ComputeJob.JobType.values()) types.put(type, 1);
+        return types;
+    }
+
+    private static final class Scenario {
+        final EdgeJobFeed.Stats stats;
+        final List<Long> latenciesMs;
+
+        Scenario(@NonNull EdgeJobFeed.Stats stats, @NonNull List<Long> latenciesMs) {
+            this.stats = stats;
+            this.latenciesMs = latenciesMs;
+        }
+
+        long maxLatencyMs() {
+            return latenciesMs.isEmpty() ? Long.MAX_VALUE : Collections.max(latenciesMs);
+        }
+
+        double meanLatencyMs() {
+            double sum = 0d;
+            for (long latency : latenciesMs) sum += latency;
+            return latenciesMs.isEmpty() ? Double.MAX_VALUE : sum / latenciesMs.size();
+        }
+    }
+
+    /**
+     * Job queue speaking the claim and wait endpoints under /v1/compute. A wait is held until a job
+     * is added after the caller's version, or its timeout passes. With waitSupported off the wait
+     * endpoint answers 404.
+     */
+    private static final class StubJobServer extends Dispatcher {
+        private static final Gson GSON = new Gson();
+
+        volatile boolean waitSupported = true;
+        private final List<ComputeJob> jobs = new ArrayList<>();
+        private long version;
+        private int nextId;
+
+        synchronized void reset() {
+            jobs.clear();
+            version = 0L;
+            notifyAll();
+        }
+
+        synchronized void add(int count) {
+            for (int i = 0; i < count; i++) {
+                ComputeJob job = new ComputeJob(ComputeJob.JobType.IMAGE_LABELING, "input");
+                job.setJobId("job-" + nextId++);
+                jobs.add(job);
+            }
+            version++;
+            notifyAll();
+        }
+
+        synchronized int claimedCount() {
+            int count = 0;
+            for (ComputeJob job : jobs) {
+                if (job.getStatus() == ComputeJob.JobStatus.CLAIMED) count++;
+            }
+            return count;
+        }
+
+        /** Creation to claim, per claimed job. */
+        @NonNull
+        synchronized List<Long> latencies() {
+            List<Long> latencies = new ArrayList<>();
+            for (ComputeJob job : jobs) {
+                if (job.getStatus() == ComputeJob.JobStatus.CLAIMED) {
+                    latencies.add(job.getClaimedAt() - job.getCreatedAt());
+                }
+            }
+            return latencies;
+        }
+
+        @NonNull
+        @Override
+        public MockResponse dispatch(@NonNull RecordedRequest request) throws InterruptedException {
+            String path = request.getRequestUrl().encodedPath();
+            if (path.equals("/v1/compute/jobs/wait")) {
+                if (!waitSupported) return new MockResponse().setResponseCode(404);
+                long since = Long.parseLong(request.getRequestUrl().queryParameter("since"));
+                long timeoutMs = Long.parseLong(request.getRequestUrl().queryParameter("timeoutMs"));
+                return awaitJobs(since, timeoutMs);
+            }
+            if (path.equals("/v1/compute/jobs/claim")) {
+                JsonObject body = GSON.fromJson(request.getBody().readUtf8(), JsonObject.class);
+                return claim(body.get("limit").getAsInt());
+            }
+            return new MockResponse().setResponseCode(404);
+        }
+
+        @NonNull
+        private synchronized MockResponse awaitJobs(long since, long timeoutMs) throws InterruptedException {
+            long deadline = System.currentTimeMillis() + timeoutMs;
+            while (!(pending() > 0 && version != since)) {
+                long remaining = deadline - System.currentTimeMillis();
+                if (remaining <= 0L) break;
+                wait(remaining);
+            }
+            return new MockResponse().setBody(
+                "{\"ok\":true,\"pending\":" + pending() + ",\"version\":" + version + "}");
+        }
+
+        @NonNull
+        private synchronized MockResponse claim(int limit) {
+            JsonArray claimed = new JsonArray();
+            for (ComputeJob job : jobs) {
+                if (claimed.size() >= limit) break;
+                if (job.getStatus() != ComputeJob.JobStatus.PENDING) continue;
+                job.setStatus(ComputeJob.JobStatus.CLAIMED);
+                job.setClaimedBy("device-1");
+                job.setClaimedAt(System.currentTimeMillis());
+                claimed.add(GSON.fromJson(job.toJson(), JsonObject.class));
+            }
+            JsonObject body = new JsonObject();
+            body.addProperty("ok", true);
+            body.add("jobs", claimed);
+            return new MockResponse().setBody(GSON.toJson(body));
+        }
+
+        private int pending() {
+            int count = 0;
+            for (ComputeJob job : jobs) {
+                if (job.getStatus() == ComputeJob.JobStatus.PENDING) count++;
+            }
+            return count;
+        }
+    }
+}
@@ -0,0 +1,237 @@
+package ai.clawphones.agent.chat;
+
+import androidx.annotation.NonNull;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.mockwebserver.SocketPolicy;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for EdgeResultSender and EdgeResultOutbox against a flaky results endpoint, and for
+ * EdgeJobHistory.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class EdgeResultSenderTest {
+
+    private static final long BACKOFF_BASE_MS = 10L;
+    private static final long BACKOFF_MAX_MS = 80L;
+
+    private MockWebServer mServer;
+    private StubResultServer mResults;
+    private OkHttpClient mHttp;
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = new MockWebServer();
+        mResults = new StubResultServer();
+        mServer.setDispatcher(mResults);
+        mServer.start();
+        mHttp = HttpTransport.newBuilder().build();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mServer.shutdown();
+    }
+
+    /**
+     * Test: through 503s and responses lost after the server stored the result, every result lands exactly once
+     */
+    @Test
+    public void testFlakyEndpoint_deliversEveryResultOnce() throws Exception {
+        mResults.failEvery = 3;
+        mResults.loseResponseEvery = 4;
+        EdgeResultOutbox outbox = new EdgeResultOutbox(RuntimeEnvironment.getApplication());
+        EdgeResultSender sender = sender(outbox);
+
+        for (int i = 0; i < 20; i++) {
+            sender.submit("job-" + i, "{\"results\":{\"n\":" + i + "}}");
+        }
+        awaitEmpty(outbox, 10_000L);
+        EdgeResultSender.Stats stats = sender.stats();
+        sender.stop();
+
+        assertEquals(20, mResults.stored.size());
+        assertTrue("duplicates " + mResults.duplicates, mResults.duplicates > 0);
+        assertEquals(20L, stats.delivered);
+        assertTrue(stats.retried > 0L);
+        assertEquals(0L, stats.dropped);
+        assertEquals(0, stats.pending);
+        for (Set<String> keys : mResults.keysSeen.values()) assertEquals(1, keys.size());
+    }
+
+    /**
+     * Test: results queued while the server is down survive a restart and go out with their original keys
+     */
+    @Test
+    public void testOutbox_survivesRestart() throws Exception {
+        mResults.down = true;
+        EdgeResultSender first = sender(new EdgeResultOutbox(RuntimeEnvironment.getApplication()));
+        for (int i = 0; i < 3; i++) first.submit("job-" + i, "{}");
+        long deadline = System.currentTimeMillis() + 5000L;
+        while (mResults.requests < 6 && System.currentTimeMillis() < deadline) Thread.sleep(10L);
+        first.stop();
+        assertTrue(mResults.stored.isEmpty());
+
+        mResults.down = false;
+        EdgeResultOutbox reopened = new EdgeResultOutbox(RuntimeEnvironment.getApplication());
+        assertEquals(3, reopened.pendingCount());
+        EdgeResultSender second = sender(reopened);
+        second.wake();
+        awaitEmpty(reopened, 5000L);
+        second.stop();
+
+        assertEquals(3, mResults.stored.size());
+        for (Set<String> keys : mResults.keysSeen.values()) assertEquals(1, keys.size());
+    }
+
+    /**
+     * Test: a job the server no longer knows is dropped; a 401 parks the rest until the next wake
+     */
+    @Test
+    public void testPermanentAndAuthFailures() throws Exception {
+        mResults.gone.add("job-gone");
+        mResults.unauthorized = true;
+        EdgeResultOutbox outbox = new EdgeResultOutbox(RuntimeEnvironment.getApplication());
+        EdgeResultSender sender = sender(outbox);
+
+        sender.submit("job-1", "{}");
+        long deadline = System.currentTimeMillis() + 2000L;
+        while (sender.stats().authFailures == 0L && System.currentTimeMillis() < deadline) Thread.sleep(10L);
+        Thread.sleep(5 * BACKOFF_MAX_MS);
+        int requests = mResults.requests;
+        assertEquals("no retries while unauthorized", 1, requests);
+        EdgeResultOutbox.Entry parked = outbox.get("job-1");
+        assertNotNull(parked);
+        assertEquals(0, parked.attempts);
+
+        mResults.unauthorized = false;
+        sender.submit("job-gone", "{}");
+        awaitEmpty(outbox, 2000L);
+        EdgeResultSender.Stats stats = sender.stats();
+        sender.stop();
+
+        assertEquals(1L, stats.delivered);
+        assertEquals(1L, stats.dropped);
+        assertTrue(mResults.stored.containsKey("job-1"));
+        assertFalse(mResults.stored.containsKey("job-gone"));
+    }
+
+    /**
+     * Test: backoff doubles from the base with jitter and never passes the cap
+     */
+    @Test
+    public void testBackoff_growsAndCaps() {
+        Random random = new Random(1);
+        for (int i = 0; i < 100; i++) {
+            long first = EdgeResultSender.backoffDelayMs(1, 2_000L, 300_000L, random);
+            long fourth = EdgeResultSender.backoffDelayMs(4, 2_000L, 300_000L, random);
+            long late = EdgeResultSender.backoffDelayMs(30, 2_000L, 300_000L, random);
+            assertTrue(first >= 1_000L && first <= 2_000L);
+            assertTrue(fourth >= 8_000L && fourth <= 16_000L);
+            assertTrue(late >= 150_000L && late <= 300_000L);
+        }
+    }
+
+    /**
+     * Test: job history keeps the newest jobs within its count and age limits, without their input
+     */
+    @Test
+    public void testHistory_evictsByCountAndAge() {
+        EdgeJobHistory history = new EdgeJobHistory(3, 1000L);
+        for (int i = 0; i < 5; i++) {
+            ComputeJob job = new ComputeJob(ComputeJob.JobType.IMAGE_LABELING, "base64-image");
+            job.setJobId("job-" + i);
+            history.add(job, i * 100L);
+        }
+
+        List<ComputeJob> jobs = history.list(400L);
+        assertEquals(3, jobs.size());
+        assertEquals("job-2", jobs.get(0).getJobId());
+        assertEquals("job-4", jobs.get(2).getJobId());
+        assertNull(jobs.get(0).getInputData());
+
+        assertEquals(1, history.list(1350L).size());
+        assertEquals(0, history.list(1401L).size());
+    }
+
+    @NonNull
+    private EdgeResultSender sender(@NonNull EdgeResultOutbox outbox) {
+        EdgeJobClient client = new EdgeJobClient(mHttp, mServer.url("/v1/compute").toString(), "device-1");
+        return new EdgeResultSender(outbox, client, BACKOFF_BASE_MS, BACKOFF_MAX_MS);
+    }
+
+    private static void awaitEmpty(@NonNull EdgeResultOutbox outbox, long timeoutMs) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        while (outbox.pendingCount() > 0 && System.currentTimeMillis() < deadline) Thread.sleep(10L);
+        assertEquals(0, outbox.pendingCount());
+    }
+
+    /**
+     * Results endpoint with the server's idempotency rules. Every failEvery-th request answers 503;
+     * every loseResponseEvery-th stores the result and then drops the connection unanswered.
+     */
+    private static final class StubResultServer extends Dispatcher {
+        final Map<String, String> stored = new HashMap<>();
+        final Map<String, Set<String>> keysSeen = new HashMap<>();
+        final Set<String> gone = new HashSet<>();
+        volatile int failEvery;
+        volatile int loseResponseEvery;
+        volatile boolean down;
+        volatile boolean unauthorized;
+        volatile int requests;
+        volatile int duplicates;
+
+        @NonNull
+        @Override
+        public synchronized MockResponse dispatch(@NonNull RecordedRequest request) {
+            requests++;
+            String path = request.getRequestUrl().encodedPath();
+            String prefix = "/v1/compute/jobs/";
+            if (!path.startsWith(prefix) || !path.endsWith("/results")) {
+                return new MockResponse().setResponseCode(404);
+            }
+            String jobId = path.substring(prefix.length(), path.length() - "/results".length());
+            String key = request.getHeader("Idempotency-Key");
+            keysSeen.computeIfAbsent(jobId, id -> new HashSet<>()).add(key);
+
+            if (unauthorized) return new MockResponse().setResponseCode(401);
+            if (down || (failEvery > 0 && requests % failEvery == 0)) return new MockResponse().setResponseCode(503);
+            if (gone.contains(jobId)) return new MockResponse().setResponseCode(404);
+
+            String storedKey = stored.get(jobId);
+            if (storedKey != null) {
+                if (!storedKey.equals(key)) return new MockResponse().setResponseCode(409);
+                duplicates++;
+                return new MockResponse().setBody("{\"ok\":true,\"duplicate\":true}");
+            }
+            stored.put(jobId, key);
+            if (loseResponseEvery > 0 && requests % loseResponseEvery == 0) {
+                return new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AFTER_REQUEST);
+            }
+            return new MockResponse().setBody("{\"ok\":true}");
+        }
+    }
+}
@@ -0,0 +1,208 @@
+package ai.clawphones.agent.chat;
+
+import android.util.Base64;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for EdgeSpeechJob with a deterministic recognizer, on the WAV fixtures in
+ * test/resources/audio: 440 Hz from 0.4 to 1.0 s and 880 Hz from 1.5 to 2.3 s, over faint noise.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class EdgeSpeechJobTest {
+
+    private static final long TOLERANCE_MS = 40L;
+
+    /**
+     * Test: a 16 kHz mono WAV gives one timestamped segment per tone
+     */
+    @Test
+    public void testWav_segmentsWithTimestamps() throws Exception {
+        ToneRecognizer recognizer = new ToneRecognizer();
+        ComputeJob job = speechJob(fixture("two_tones_16k_mono.wav"), null);
+
+        JsonObject output = new EdgeSpeechJob(new EdgeAudioDecoder(null), recognizer).run(job);
+
+        assertTwoTones(output);
+        assertEquals("tone 440 tone 880", output.get("text").getAsString());
+        assertEquals(2600L, output.get("durationMs").getAsLong(), 1L);
+        assertEquals("wav", job.getOutputMetadata().get("audioFormat"));
+        assertEquals(16000, job.getOutputMetadata().get("audioSampleRate"));
+    }
+
+    /**
+     * Test: a 22.05 kHz stereo WAV is downmixed and resampled to the same segments
+     */
+    @Test
+    public void testWav_stereoIsResampled() throws Exception {
+        ToneRecognizer recognizer = new ToneRecognizer();
+        ComputeJob job = speechJob(fixture("two_tones_22k_stereo.wav"), null);
+
+        JsonObject output = new EdgeSpeechJob(new EdgeAudioDecoder(null), recognizer).run(job);
+
+        assertTwoTones(output);
+        assertEquals(EdgeAudioDecoder.SAMPLE_RATE, recognizer.sampleRate);
+        assertEquals(22050, job.getOutputMetadata().get("audioSampleRate"));
+        assertEquals(2, job.getOutputMetadata().get("audioChannels"));
+    }
+
+    /**
+     * Test: raw PCM takes its rate and channel count from the job's input metadata
+     */
+    @Test
+    public void testRawPcm_usesMetadata() throws Exception {
+        short[] pcm = new short[8000 * 3];
+        tone(pcm, 8000, 0.5, 2.0, 440);
+        Map<String, Object> metadata = new HashMap<>();
+        metadata.put("format", "pcm");
+        metadata.put("sampleRate", 8000.0);
+        metadata.put("channels", 1.0);
+        metadata.put("language", "en-US");
+        ToneRecognizer recognizer = new ToneRecognizer();
+
+        JsonObject output = new EdgeSpeechJob(new EdgeAudioDecoder(null), recognizer)
+            .run(speechJob(littleEndian(pcm), metadata));
+
+        JsonArray segments = output.getAsJsonArray("segments");
+        assertEquals(1, segments.size());
+        assertSegment(segments.get(0).getAsJsonObject(), 500L, 2000L, "tone 440");
+        assertEquals("en-US", output.get("language").getAsString());
+        assertEquals("en-US", recognizer.language);
+    }
+
+    /**
+     * Test: 40 s of unbroken speech is cut into utterances no longer than the segmenter's buffer
+     */
+    @Test
+    public void testLongSpeech_boundedUtterances() throws Exception {
+        short[] pcm = new short[EdgeAudioDecoder.SAMPLE_RATE * 40];
+        tone(pcm, EdgeAudioDecoder.SAMPLE_RATE, 0.0, 40.0, 440);
+        Map<String, Object> metadata = new HashMap<>();
+        metadata.put("format", "pcm");
+        ToneRecognizer recognizer = new ToneRecognizer();
+
+        JsonObject output = new EdgeSpeechJob(new EdgeAudioDecoder(null), recognizer)
+            .run(speechJob(littleEndian(pcm), metadata));
+
+        JsonArray segments = output.getAsJsonArray("segments");
+        assertEquals(3, segments.size());
+        assertEquals(EdgeSpeechSegmenter.MAX_UTTERANCE_SAMPLES, recognizer.longest);
+        assertSegment(segments.get(0).getAsJsonObject(), 0L, 15_000L, "tone 440");
+        assertSegment(segments.get(1).getAsJsonObject(), 15_000L, 30_000L, "tone 440");
+        assertSegment(segments.get(2).getAsJsonObject(), 30_000L, 40_000L, "tone 440");
+    }
+
+    /**
+     * Test: a WAV cut short fails the job instead of returning a partial transcript
+     */
+    @Test
+    public void testTruncatedWav_throws() throws Exception {
+        byte[] wav = fixture("two_tones_16k_mono.wav");
+        ToneRecognizer recognizer = new ToneRecognizer();
+        EdgeSpeechJob speech = new EdgeSpeechJob(new EdgeAudioDecoder(null), recognizer);
+
+        try {
+            speech.run(speechJob(Arrays.copyOf(wav, wav.length / 2), null));
+            fail("expected IOException");
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage().contains("early"));
+        }
+    }
+
+    private static void assertTwoTones(@NonNull JsonObject output) {
+        JsonArray segments = output.getAsJsonArray("segments");
+        assertEquals(2, segments.size());
+        assertSegment(segments.get(0).getAsJsonObject(), 400L, 1000L, "tone 440");
+        assertSegment(segments.get(1).getAsJsonObject(), 1500L, 2300L, "tone 880");
+    }
+
+    private static void assertSegment(@NonNull JsonObject segment, long startMs, long endMs, @NonNull String text) {
+        assertEquals(text, segment.get("text").getAsString());
+        assertEquals(startMs, segment.get("startMs").getAsLong(), TOLERANCE_MS);
+        assertEquals(endMs, segment.get("endMs").getAsLong(), TOLERANCE_MS);
+    }
+
+    @NonNull
+    private static ComputeJob speechJob(@NonNull byte[] audio, @Nullable Map<String, Object> metadata) {
+        ComputeJob job = new ComputeJob(ComputeJob.JobType.SPEECH_RECOGNITION,
+            "data:audio/wav;base64," + Base64.encodeToString(audio, Base64.NO_WRAP));
+        job.setJobId("speech-1");
+        job.setInputMetadata(metadata);
+        return job;
+    }
+
+    @NonNull
+    private static byte[] fixture(@NonNull String name) throws IOException {
+        try (InputStream in = EdgeSpeechJobTest.class.getResourceAsStream("/audio/" + name)) {
+            assertNotNull(name, in);
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) > 0) out.write(buffer, 0, n);
+            return out.toByteArray();
+        }
+    }
+
+    private static void tone(@NonNull short[] pcm, int rate, double fromS, double toS, int hz) {
+        for (int i = (int) (fromS * rate); i < Math.min(pcm.length, (int) (toS * rate)); i++) {
+            pcm[i] = (short) Math.round(0.4 * 32767 * Math.sin(2 * Math.PI * hz * i / rate));
+        }
+    }
+
+    @NonNull
+    private static byte[] littleEndian(@NonNull short[] pcm) {
+        byte[] bytes = new byte[pcm.length * 2];
+        for (int i = 0; i < pcm.length; i++) {
+            bytes[2 * i] = (byte) pcm[i];
+            bytes[2 * i + 1] = (byte) (pcm[i] >> 8);
+        }
+        return bytes;
+    }
+
+    /** Names the tone by its zero-crossing rate; remembers what it was given. */
+    private static final class ToneRecognizer implements EdgeSpeechJob.Recognizer {
+        int longest;
+        int sampleRate;
+        String language;
+
+        @NonNull
+        @Override
+        public EdgeSpeechJob.Transcript recognize(@NonNull short[] pcm, int length, int sampleRate,
+                                                  @Nullable String language) {
+            longest = Math.max(longest, length);
+            this.sampleRate = sampleRate;
+            this.language = language;
+            int crossings = 0;
+            int first = -1;
+            int last = -1;
+            for (int i = 1; i < length; i++) {
+                if (Math.max(Math.abs(pcm[i]), Math.abs(pcm[i - 1])) < 1000) continue;
+                if (first < 0) first = i;
+                last = i;
+                if ((pcm[i] < 0) != (pcm[i - 1] < 0)) crossings++;
+            }
+            if (last <= first) return EdgeSpeechJob.Transcript.EMPTY;
+            double hz = crossings * (double) sampleRate / (2d * (last - first));
+            return new EdgeSpeechJob.Transcript(hz < 660d ? "tone 440" : "tone 880", 0.9f);
+        }
+    }
+}
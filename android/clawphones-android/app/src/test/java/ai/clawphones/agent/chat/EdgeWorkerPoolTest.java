@@ -0,0 +1,387 @@
+package ai.clawphones.agent.chat;
+
+import android.os.PowerManager;
+
+import androidx.annotation.NonNull;
+
+import com.google.gson.Gson;
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.OkHttpClient;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for EdgeWorkerPool and EdgeJobClient against a stub job server.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class EdgeWorkerPoolTest {
+
+    private static final int CORES = 8;
+
+    private MockWebServer mServer;
+    private StubJobServer mJobs;
+    private OkHttpClient mHttp;
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = new MockWebServer();
+        mJobs = new StubJobServer();
+        mServer.setDispatcher(mJobs);
+        mServer.start();
+        mHttp = HttpTransport.newBuilder().build();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mServer.shutdown();
+    }
+
+    /**
+     * Test: the pool uses most cores when plugged in and cool, fewer when warm or on battery, none when hot or low
+     */
+    @Test
+    public void testCapacity_followsDeviceState() {
+        int none = PowerManager.THERMAL_STATUS_NONE;
+        assertEquals(7, EdgeWorkerPool.capacityFor(CORES, none, 80, true, false, false));
+        assertEquals(4, EdgeWorkerPool.capacityFor(CORES, none, 80, false, false, false));
+        assertEquals(7, EdgeWorkerPool.capacityFor(CORES, none, 10, true, false, false));
+        assertEquals(0, EdgeWorkerPool.capacityFor(CORES, none, 10, false, false, false));
+        assertEquals(5, EdgeWorkerPool.capacityFor(CORES, PowerManager.THERMAL_STATUS_LIGHT, 80, true, false, false));
+        assertEquals(3, EdgeWorkerPool.capacityFor(CORES, PowerManager.THERMAL_STATUS_MODERATE, 80, true, false, false));
+        assertEquals(0, EdgeWorkerPool.capacityFor(CORES, PowerManager.THERMAL_STATUS_SEVERE, 80, true, false, false));
+        assertEquals(1, EdgeWorkerPool.capacityFor(CORES, none, 80, true, true, false));
+        assertEquals(0, EdgeWorkerPool.capacityFor(CORES, none, 80, true, false, true));
+        assertEquals(1, EdgeWorkerPool.capacityFor(1, none, 80, true, false, false));
+    }
+
+    /**
+     * Test: devices claiming batches at the same time never get the same job and together take all of them
+     */
+    @Test
+    public void testBatchClaim_neverHandsOutJobTwice() throws Exception {
+        mJobs.add(ComputeJob.JobType.IMAGE_LABELING, 120);
+        ExecutorService devices = Executors.newFixedThreadPool(3);
+        List<Future<List<String>>> results = new ArrayList<>();
+        for (int d = 0; d < 3; d++) {
+            EdgeJobClient client = client("device-" + d);
+            results.add(devices.submit(() -> {
+                List<String> ids = new ArrayList<>();
+                while (true) {
+                    List<ComputeJob> batch = client.claim(5, allTypes(5));
+                    if (batch.isEmpty()) return ids;
+                    assertTrue(batch.size() <= 5);
+                    for (ComputeJob job : batch) ids.add(job.getJobId());
+                }
+            }));
+        }
+
+        Set<String> seen = new HashSet<>();
+        int total = 0;
+        for (Future<List<String>> result : results) {
+            List<String> ids = result.get();
+            total += ids.size();
+            seen.addAll(ids);
+        }
+        devices.shutdown();
+
+        assertEquals(120, total);
+        assertEquals(120, seen.size());
+        assertEquals(0, mJobs.perJobClaims.get());
+    }
+
+    /**
+     * Test: per-type limits hold while the pool keeps every worker busy on the other types
+     */
+    @Test
+    public void testPool_respectsTypeLimits() throws Exception {
+        mJobs.add(ComputeJob.JobType.SPEECH_RECOGNITION, 6);
+        mJobs.add(ComputeJob.JobType.OBJECT_DETECTION, 6);
+        mJobs.add(ComputeJob.JobType.IMAGE_LABELING, 12);
+        FakeRunner runner = new FakeRunner(30L, 24);
+        EdgeWorkerPool pool = new EdgeWorkerPool(client("device-1"), runner, 4);
+
+        pool.requestClaim();
+        assertTrue(runner.done.await(10, TimeUnit.SECONDS));
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(5000L));
+        EdgeWorkerPool.Stats stats = pool.stats();
+
+        assertEquals(24L, stats.completed);
+        assertEquals(4, stats.peakActive);
+        assertEquals(1, runner.peak(ComputeJob.JobType.SPEECH_RECOGNITION));
+        assertEquals(EdgeWorkerPool.OBJECT_DETECTION_LIMIT, runner.peak(ComputeJob.JobType.OBJECT_DETECTION));
+        assertEquals(0, mJobs.pending());
+        assertTrue(mJobs.maxTypeRequested(ComputeJob.JobType.SPEECH_RECOGNITION) <= 1);
+    }
+
+    /**
+     * Test: against a server without batch claim the client lists and claims one by one, skipping jobs lost to others
+     */
+    @Test
+    public void testFallback_claimsOneByOne() throws Exception {
+        mJobs.batchSupported = false;
+        mJobs.stealEvery = 3;
+        mJobs.add(ComputeJob.JobType.TEXT_RECOGNITION, 12);
+        EdgeJobClient client = client("device-1");
+
+        List<ComputeJob> claimed = new ArrayList<>();
+        do {
+            claimed.addAll(client.claim(4, allTypes(4)));
+        } while (mJobs.pending() > 0);
+
+        assertFalse(client.isBatchClaimSupported());
+        assertEquals(8, claimed.size());
+        for (ComputeJob job : claimed) {
+            assertEquals("device-1", mJobs.claimedBy(job.getJobId()));
+        }
+    }
+
+    /**
+     * Test: when one claim fails partway, the jobs already claimed are returned; with none claimed it throws
+     */
+    @Test
+    public void testFallback_failedClaimKeepsJobsAlreadyClaimed() throws Exception {
+        mJobs.batchSupported = false;
+        mJobs.failClaimAt = 2;
+        mJobs.add(ComputeJob.JobType.TEXT_RECOGNITION, 4);
+        EdgeJobClient client = client("device-1");
+
+        List<ComputeJob> claimed = client.claim(4, allTypes(4));
+
+        assertEquals(1, claimed.size());
+        assertEquals("device-1", mJobs.claimedBy(claimed.get(0).getJobId()));
+        assertEquals(3, mJobs.pending());
+
+        mJobs.failClaimAt = mJobs.perJobClaims.get() + 1;
+        try {
+            client.claim(4, allTypes(4));
+            fail("a failure before any claim should throw");
+        } catch (IOException expected) {
+            // nothing was claimed, so there is nothing to hand back
+        }
+        assertEquals(3, mJobs.pending());
+        assertEquals(3, client.claim(4, allTypes(4)).size());
+        assertEquals(0, mJobs.pending());
+    }
+
+    /**
+     * Test: the pool keeps every worker busy while it drains a queue, refilling as jobs finish
+     */
+    @Test
+    public void testPool_keepsAllWorkersBusyUntilQueueDrains() throws Exception {
+        int jobs = 48;
+        long jobMs = 40L;
+
+        mJobs.add(ComputeJob.JobType.IMAGE_LABELING, jobs);
+        EdgeWorkerPool.Stats serial = drain(1, jobs, jobMs);
+        mJobs.add(ComputeJob.JobType.IMAGE_LABELING, jobs);
+        EdgeWorkerPool.Stats pooled = drain(4, jobs, jobMs);
+
+        assertEquals(jobs, serial.completed);
+        assertEquals(1, serial.peakActive);
+        assertEquals(jobs, pooled.completed);
+        assertEquals(4, pooled.peakActive);
+        assertEquals(0, mJobs.pending());
+    }
+
+    /** Runs a fresh pool of the given size from one claim request until the stub queue is empty. */
+    @NonNull
+    private EdgeWorkerPool.Stats drain(int workers, int jobs, long jobMs) throws Exception {
+        FakeRunner runner = new FakeRunner(jobMs, jobs);
+        EdgeWorkerPool pool = new EdgeWorkerPool(client("device-" + workers), runner, workers);
+        pool.requestClaim();
+        assertTrue(runner.done.await(30, TimeUnit.SECONDS));
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(5000L));
+        return pool.stats();
+    }
+
+    @NonNull
+    private EdgeJobClient client(@NonNull String deviceId) {
+        return new EdgeJobClient(mHttp, mServer.url("/v1/compute").toString(), deviceId);
+    }
+
+    @NonNull
+    private static Map<ComputeJob.JobType, Integer> allTypes(int limit) {
+        Map<ComputeJob.JobType, Integer> types = new EnumMap<>(ComputeJob.JobType.class);
+        for (ComputeJob.JobType type : ComputeJob.JobType.values()) types.put(type, limit);
+        return types;
+    }
+
+    /** Sleeps for each job and records how many of each type ran at once. */
+    private static final class FakeRunner implements EdgeWorkerPool.JobRunner {
+        final CountDownLatch done;
+        private final long jobMs;
+        private final Map<ComputeJob.JobType, Integer> running = new EnumMap<>(ComputeJob.JobType.class);
+        private final Map<ComputeJob.JobType, Integer> peaks = new EnumMap<>(ComputeJob.JobType.class);
+
+        FakeRunner(long jobMs, int expected) {
+            this.jobMs = jobMs;
+            this.done = new CountDownLatch(expected);
+        }
+
+        @Override
+        public void run(@NonNull ComputeJob job) throws InterruptedException {
+            ComputeJob.JobType type = job.getType();
+            synchronized (this) {
+                int now = running.getOrDefault(type, 0) + 1;
+                running.put(type, now);
+                peaks.put(type, Math.max(now, peaks.getOrDefault(type, 0)));
+            }
+            Thread.sleep(jobMs);
+            synchronized (this) {
+                running.put(type, running.get(type) - 1);
+            }
+            job.setStatus(ComputeJob.JobStatus.COMPLETED);
+            done.countDown();
+        }
+
+        synchronized int peak(@NonNull ComputeJob.JobType type) {
+            return peaks.getOrDefault(type, 0);
+        }
+    }
+
+    /**
+     * In-memory job queue speaking the edge compute API under /v1/compute. POST /jobs/claim takes
+     * up to limit pending jobs, capped per type, in one step. With batchSupported off it answers
+     * 404 there and serves GET /jobs/available plus POST /jobs/{id}/claim, where every
+     * stealEvery-th claim finds the job already taken by another device, and claim number
+     * failClaimAt fails with a 500.
+     */
+    private static final class StubJobServer extends Dispatcher {
+        private static final Gson GSON = new Gson();
+
+        final AtomicInteger perJobClaims = new AtomicInteger();
+        volatile boolean batchSupported = true;
+        volatile int stealEvery;
+        volatile int failClaimAt;
+        private final Map<String, ComputeJob> jobs = new LinkedHashMap<>();
+        private final Map<ComputeJob.JobType, Integer> maxRequested = new EnumMap<>(ComputeJob.JobType.class);
+        private int nextId;
+
+        synchronized void add(@NonNull ComputeJob.JobType type, int count) {
+            for (int i = 0; i < count; i++) {
+                ComputeJob job = new ComputeJob(type, "input");
+                job.setJobId("job-" + nextId++);
+                jobs.put(job.getJobId(), job);
+            }
+        }
+
+        synchronized int pending() {
+            int count = 0;
+            for (ComputeJob job : jobs.values()) {
+                if (job.getStatus() == ComputeJob.JobStatus.PENDING) count++;
+            }
+            return count;
+        }
+
+        synchronized String claimedBy(@NonNull String jobId) {
+            return jobs.get(jobId).getClaimedBy();
+        }
+
+        synchronized int maxTypeRequested(@NonNull ComputeJob.JobType type) {
+            return maxRequested.getOrDefault(type, 0);
+        }
+
+        @NonNull
+        @Override
+        public synchronized MockResponse dispatch(@NonNull RecordedRequest request) {
+            String path = request.getRequestUrl().encodedPath();
+            if (path.equals("/v1/compute/jobs/claim") && "POST".equals(request.getMethod())) {
+                if (!batchSupported) return new MockResponse().setResponseCode(404);
+                return claimBatch(GSON.fromJson(request.getBody().readUtf8(), JsonObject.class));
+            }
+            if (path.equals("/v1/compute/jobs/available")) {
+                int limit = Integer.parseInt(request.getRequestUrl().queryParameter("limit"));
+                List<ComputeJob> listed = new ArrayList<>();
+                for (ComputeJob job : jobs.values()) {
+                    if (listed.size() < limit && job.getStatus() == ComputeJob.JobStatus.PENDING) listed.add(job);
+                }
+                return jobsResponse(listed);
+            }
+            if (path.startsWith("/v1/compute/jobs/") && path.endsWith("/claim")) {
+                String id = path.substring("/v1/compute/jobs/".length(), path.length() - "/claim".length());
+                JsonObject body = GSON.fromJson(request.getBody().readUtf8(), JsonObject.class);
+                ComputeJob job = jobs.get(id);
+                int attempt = perJobClaims.incrementAndGet();
+                if (attempt == failClaimAt) return new MockResponse().setResponseCode(500);
+                if (job != null && stealEvery > 0 && attempt % stealEvery == 0) claim(job, "other-device");
+                if (job == null || job.getStatus() != ComputeJob.JobStatus.PENDING) {
+                    return new MockResponse().setResponseCode(409).setBody("{\"ok\":false}");
+                }
+                claim(job, body.get("deviceId").getAsString());
+                return new MockResponse().setBody("{\"ok\":true,\"job\":" + job.toJson() + "}");
+            }
+            return new MockResponse().setResponseCode(404);
+        }
+
+        @NonNull
+        private MockResponse claimBatch(@NonNull JsonObject body) {
+            int limit = body.get("limit").getAsInt();
+            String deviceId = body.get("deviceId").getAsString();
+            Map<ComputeJob.JobType, Integer> room = new EnumMap<>(ComputeJob.JobType.class);
+            JsonObject types = body.getAsJsonObject("types");
+            for (String key : types.keySet()) {
+                ComputeJob.JobType type = ComputeJob.JobType.fromApiValue(key);
+                int cap = types.get(key).getAsInt();
+                room.put(type, cap);
+                maxRequested.put(type, Math.max(cap, maxRequested.getOrDefault(type, 0)));
+            }
+            List<ComputeJob> claimed = new ArrayList<>();
+            for (ComputeJob job : jobs.values()) {
+                if (claimed.size() >= limit) break;
+                Integer left = room.get(job.getType());
+                if (job.getStatus() != ComputeJob.JobStatus.PENDING || left == null || left <= 0) continue;
+                room.put(job.getType(), left - 1);
+                claim(job, deviceId);
+                claimed.add(job);
+            }
+            return jobsResponse(claimed);
+        }
+
+        private static void claim(@NonNull ComputeJob job, @NonNull String deviceId) {
+            job.setStatus(ComputeJob.JobStatus.CLAIMED);
+            job.setClaimedBy(deviceId);
+            job.setClaimedAt(System.currentTimeMillis());
+        }
+
+        @NonNull
+        private static MockResponse jobsResponse(@NonNull List<ComputeJob> list) {
+            JsonArray array = new JsonArray();
+            for (ComputeJob job : list) array.add(GSON.fromJson(job.toJson(), JsonObject.class));
+            JsonObject body = new JsonObject();
+            body.addProperty("ok", true);
+            body.add("jobs", array);
+            return new MockResponse().setHeader("Content-Type", "application/json").setBody(GSON.toJson(body));
+        }
+    }
+}
@@ -0,0 +1,455 @@
+package ai.clawphones.agent.chat;
+
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.imageio.ImageIO;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the motion-gated frame pipeline, fed by a synthetic scene instead of a camera.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class FramePipelineTest {
+
+    private static final int WIDTH = 160;
+    private static final int HEIGHT = 120;
+
+    @Rule
+    public TemporaryFolder mTemp = new TemporaryFolder();
+
+    /**
+     * Test: sensor noise and a global brightness change do not count as motion, a moving object does
+     */
+    @Test
+    public void testMotionGate_scoresObjectNotNoiseOrLighting() {
+        MotionGate gate = new MotionGate(MotionGate.THRESHOLD_MEDIUM);
+        SceneSource scene = new SceneSource(3, -1, -1, 1L);
+
+        assertEquals(0f, gate.score(scene.render(0, 0)), 0f);
+        assertFalse(gate.passes(gate.score(scene.render(1, 0))));
+        assertFalse("lights on", gate.passes(gate.score(scene.render(2, 60))));
+        float moving = gate.score(scene.renderWithBox(3, 60, 40, 30));
+        assertTrue("score " + moving, gate.passes(moving));
+    }
+
+    /**
+     * Test: low sensitivity ignores a small object that high sensitivity reports
+     */
+    @Test
+    public void testMotionGate_sensitivityThresholds() {
+        assertEquals(MotionGate.THRESHOLD_LOW, MotionGate.thresholdFor("Low"), 0f);
+        assertEquals(MotionGate.THRESHOLD_HIGH, MotionGate.thresholdFor("high"), 0f);
+        assertEquals(MotionGate.THRESHOLD_MEDIUM, MotionGate.thresholdFor(null), 0f);
+
+        MotionGate low = new MotionGate(MotionGate.thresholdFor("Low"));
+        MotionGate high = new MotionGate(MotionGate.thresholdFor("High"));
+        SceneSource scene = new SceneSource(0, -1, -1, 2L);
+        low.score(scene.render(0, 0));
+        high.score(scene.render(0, 0));
+
+        Bitmap small = scene.renderWithBox(1, 0, 50, 12);
+        assertFalse(low.passes(low.score(small)));
+        assertTrue(high.passes(high.score(small)));
+    }
+
+    /**
+     * Test: only frames with motion reach the detector and the relay, and stats count every stage
+     */
+    @Test
+    public void testPipeline_gatesQuietFrames() throws Exception {
+        SceneSource scene = new SceneSource(40, 20, 30, 3L);
+        FakeStages stages = new FakeStages();
+        FramePipeline pipeline = pipeline(scene, stages, AdaptiveFrameController.Bounds.DEFAULT);
+
+        while (pipeline.processNext()) {
+            // drain
+        }
+
+        FramePipeline.Stats stats = pipeline.stats();
+        assertEquals(40L, stats.frames);
+        assertTrue("passed " + stats.passed, stats.passed >= 8 && stats.passed <= 12);
+        assertEquals(stats.passed / 40d, stats.gatingRatio(), 1e-9);
+        assertEquals(stats.passed, stages.detected);
+        assertEquals(stats.passed, stages.priorities.size());
+        assertEquals(stats.passed, stats.uploads);
+        assertEquals(Collections.nCopies((int) stats.passed, RelayClient.FramePriority.DETECTION), stages.priorities);
+        assertEquals(40L, stats.stageRuns[FramePipeline.Stage.CAPTURE.ordinal()]);
+        assertEquals(40L, stats.stageRuns[FramePipeline.Stage.MOTION.ordinal()]);
+        assertEquals(stats.passed, stats.stageRuns[FramePipeline.Stage.CONVERT.ordinal()]);
+        assertEquals(stats.passed, stats.stageRuns[FramePipeline.Stage.DETECT.ordinal()]);
+        assertEquals(stats.passed, stats.stageRuns[FramePipeline.Stage.UPLOAD.ordinal()]);
+        assertTrue(stages.minFrameIndex >= 20);
+        assertEquals("only frames past the gate are converted", stats.passed, scene.converted);
+        assertEquals(40, scene.handedOut.size());
+        for (Bitmap frame : scene.handedOut) {
+            assertTrue(frame.isRecycled());
+        }
+    }
+
+    /**
+     * Test: the grid sampled from a padded Y plane matches the grid of the same frame as a bitmap
+     */
+    @Test
+    public void testMotionGate_yPlaneGridMatchesBitmapGrid() {
+        SceneSource scene = new SceneSource(1, 0, 1, 6L);
+        Bitmap frame = scene.renderWithBox(7, 0, 30, 40);
+        MotionGate bitmapGate = new MotionGate(MotionGate.THRESHOLD_MEDIUM);
+        int[] expected = bitmapGate.downsampleLuma(frame).clone();
+
+        for (int pixelStride : new int[]{1, 2}) {
+            int rowStride = WIDTH * pixelStride + 24;
+            ByteBuffer plane = ByteBuffer.allocateDirect(rowStride * HEIGHT);
+            for (int y = 0; y < HEIGHT; y++) {
+                for (int x = 0; x < WIDTH; x++) {
+                    int color = frame.getPixel(x, y);
+                    int luma = (77 * ((color >> 16) & 0xFF) + 150 * ((color >> 8) & 0xFF) + 29 * (color & 0xFF)) >> 8;
+                    plane.put(y * rowStride + x * pixelStride, (byte) luma);
+                }
+            }
+            MotionGate planeGate = new MotionGate(MotionGate.THRESHOLD_MEDIUM);
+            assertArrayEquals(expected, planeGate.downsampleLuma(plane, rowStride, pixelStride, WIDTH, HEIGHT));
+        }
+        frame.recycle();
+    }
+
+    /**
+     * Test: a failing detector or relay is counted and the frame still moves through the pipeline
+     */
+    @Test
+    public void testPipeline_stageFailuresDoNotStopFrames() throws Exception {
+        SceneSource scene = new SceneSource(12, 4, 12, 4L);
+        FakeStages stages = new FakeStages();
+        stages.failDetect = true;
+        stages.failUpload = true;
+        FramePipeline pipeline = pipeline(scene, stages, AdaptiveFrameController.Bounds.DEFAULT);
+
+        while (pipeline.processNext()) {
+            // drain
+        }
+
+        FramePipeline.Stats stats = pipeline.stats();
+        assertTrue(stats.passed > 0L);
+        assertEquals(0L, stats.detections);
+        assertEquals(stats.passed, stats.uploadFailures);
+        assertEquals(Collections.nCopies((int) stats.passed, RelayClient.FramePriority.IDLE), stages.priorities);
+    }
+
+    /**
+     * Test: while the uploader is paused, frames past the gate are detected but neither encoded nor sent
+     */
+    @Test
+    public void testPipeline_pausedUploaderSkipsEncodeAndUpload() throws Exception {
+        SceneSource scene = new SceneSource(12, 4, 12, 8L);
+        FakeStages stages = new FakeStages();
+        stages.paused = true;
+        FramePipeline pipeline = pipeline(scene, stages, AdaptiveFrameController.Bounds.DEFAULT);
+
+        while (pipeline.processNext()) {
+            // drain
+        }
+
+        FramePipeline.Stats stats = pipeline.stats();
+        assertTrue(stats.passed > 0L);
+        assertEquals(stats.passed, stages.detected);
+        assertEquals(stats.passed, stats.uploadsPaused);
+        assertTrue(stages.priorities.isEmpty());
+        assertEquals(0L, stats.uploads + stats.uploadFailures);
+        assertEquals(0L, stats.stageRuns[FramePipeline.Stage.ENCODE.ordinal()]);
+    }
+
+    /**
+     * Test: a full upload queue drops the oldest lowest-priority frame, or the new frame if it ranks lowest
+     */
+    @Test
+    public void testUploadQueue_dropsLowestPriorityFirst() {
+        FakeStages stages = new FakeStages();
+        List<Runnable> worker = new ArrayList<>();
+        FramePipeline pipeline = new FramePipeline(() -> new SceneSource(0, -1, -1, 9L),
+            new MotionGate(MotionGate.THRESHOLD_MEDIUM), null, stages.uploader(),
+            new AdaptiveFrameController(AdaptiveFrameController.Bounds.DEFAULT), null, worker::add);
+
+        pipeline.offerUpload(new byte[]{1}, RelayClient.FramePriority.IDLE);
+        pipeline.offerUpload(new byte[]{2}, RelayClient.FramePriority.DETECTION);
+        pipeline.offerUpload(new byte[]{3}, RelayClient.FramePriority.IDLE);
+        pipeline.offerUpload(new byte[]{4}, RelayClient.FramePriority.DETECTION);
+        pipeline.offerUpload(new byte[]{5}, RelayClient.FramePriority.IDLE);
+        pipeline.offerUpload(new byte[]{6}, RelayClient.FramePriority.DETECTION);
+        pipeline.offerUpload(new byte[]{7}, RelayClient.FramePriority.IDLE);
+        for (Runnable task : worker) task.run();
+
+        assertEquals(Arrays.asList((byte) 2, (byte) 4, (byte) 6), stages.sent);
+        FramePipeline.Stats stats = pipeline.stats();
+        assertEquals(3L, stats.uploads);
+        assertEquals(4L, stats.uploadsDropped);
+        assertEquals(3L, stats.stageRuns[FramePipeline.Stage.UPLOAD.ordinal()]);
+    }
+
+    /**
+     * Test: an upload that never returns does not hold up capture, the gate or detection
+     */
+    @Test
+    public void testPipeline_slowUploadDoesNotStallFrames() throws Exception {
+        SceneSource scene = new SceneSource(20, 5, 20, 10L);
+        FakeStages stages = new FakeStages();
+        CountDownLatch release = new CountDownLatch(1);
+        FramePipeline pipeline = new FramePipeline(() -> scene, new MotionGate(MotionGate.THRESHOLD_MEDIUM),
+            stages::detect, (jpeg, priority) -> release.await(),
+            new AdaptiveFrameController(AdaptiveFrameController.Bounds.DEFAULT), null);
+        try {
+            while (pipeline.processNext()) {
+                // drain
+            }
+
+            FramePipeline.Stats stats = pipeline.stats();
+            assertEquals(20L, stats.frames);
+            assertEquals(stats.passed, stages.detected);
+            assertEquals(0L, stats.uploads);
+            // One frame is stuck in the uploader and a full queue waits behind it; the rest were dropped.
+            assertTrue("dropped " + stats.uploadsDropped,
+                stats.uploadsDropped >= stats.passed - 1 - FramePipeline.UPLOAD_QUEUE_CAPACITY);
+        } finally {
+            release.countDown();
+            pipeline.stop();
+        }
+    }
+
+    /**
+     * Test: started on its own thread, the pipeline runs the source to the end and stops
+     */
+    @Test
+    public void testPipeline_runsOffCallingThread() throws Exception {
+        SceneSource scene = new SceneSource(10, 5, 8, 5L);
+        FakeStages stages = new FakeStages();
+        FramePipeline pipeline = pipeline(scene, stages, new AdaptiveFrameController.Bounds(
+            30, 70, 4, 1L, 4L, 1_000_000L, 4));
+
+        pipeline.start();
+        long deadline = System.currentTimeMillis() + 5000L;
+        while (pipeline.isRunning() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10L);
+        }
+
+        assertFalse(pipeline.isRunning());
+        assertEquals(10L, pipeline.stats().frames);
+        assertNotSame(Thread.currentThread(), stages.detectThread);
+        pipeline.stop();
+    }
+
+    /**
+     * Test: a source that throws is closed, reopened after a backoff, and the pipeline carries on
+     */
+    @Test
+    public void testPipeline_reopensFailedSource() throws Exception {
+        assertEquals(FramePipeline.RESTART_BASE_MS, FramePipeline.restartDelayMs(1));
+        assertEquals(2 * FramePipeline.RESTART_BASE_MS, FramePipeline.restartDelayMs(2));
+        assertEquals(FramePipeline.RESTART_MAX_MS, FramePipeline.restartDelayMs(40));
+
+        SceneSource scene = new SceneSource(6, -1, -1, 7L);
+        scene.failAt = 3;
+        AtomicInteger opened = new AtomicInteger();
+        FramePipeline pipeline = new FramePipeline(() -> {
+            opened.incrementAndGet();
+            return scene;
+        }, new MotionGate(MotionGate.THRESHOLD_MEDIUM), null, null, new AdaptiveFrameController(
+            new AdaptiveFrameController.Bounds(30, 70, 4, 1L, 4L, 1_000_000L, 4)), null);
+
+        pipeline.start();
+        long deadline = System.currentTimeMillis() + 10_000L;
+        while (pipeline.isRunning() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10L);
+        }
+
+        assertFalse(pipeline.isRunning());
+        FramePipeline.Stats stats = pipeline.stats();
+        assertEquals(6L, stats.frames);
+        assertEquals(1L, stats.restarts);
+        assertEquals(2, opened.get());
+        assertEquals(1, scene.closes);
+        pipeline.stop();
+    }
+
+    /**
+     * Test: the replay source returns every recorded image, skips other files, then returns null
+     */
+    @Test
+    public void testReplaySource_replaysImagesThenEnds() throws Exception {
+        File dir = mTemp.newFolder("replay");
+        for (String name : new String[]{"frame_002.png", "frame_000.png", "frame_001.png"}) {
+            ImageIO.write(new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB), "png", new File(dir, name));
+        }
+        assertTrue(new File(dir, "notes.txt").createNewFile());
+
+        ReplayFrameSource source = new ReplayFrameSource(dir);
+        assertEquals(3, source.size());
+        for (int i = 0; i < 3; i++) {
+            FrameSource.Frame frame = source.next();
+            assertNotNull(frame);
+            Bitmap bitmap = frame.bitmap();
+            assertEquals(WIDTH, bitmap.getWidth());
+            frame.close();
+            assertTrue(bitmap.isRecycled());
+        }
+        assertNull(source.next());
+        source.close();
+    }
+
+    @NonNull
+    private static FramePipeline pipeline(@NonNull SceneSource scene, @NonNull FakeStages stages,
+                                          @NonNull AdaptiveFrameController.Bounds bounds) {
+        return new FramePipeline(() -> scene, new MotionGate(MotionGate.THRESHOLD_MEDIUM), stages::detect,
+            stages.uploader(), new AdaptiveFrameController(bounds), null, Runnable::run);
+    }
+
+    private static final class FakeStages {
+        boolean failDetect;
+        boolean failUpload;
+        boolean paused;
+        long detected;
+        int minFrameIndex = Integer.MAX_VALUE;
+        final List<RelayClient.FramePriority> priorities = new ArrayList<>();
+        final List<Byte> sent = new ArrayList<>();
+        volatile Thread detectThread;
+
+        @NonNull
+        List<VisionDetector.Detection> detect(@NonNull Bitmap frame) {
+            detectThread = Thread.currentThread();
+            detected++;
+            minFrameIndex = Math.min(minFrameIndex, frame.getPixel(0, 0) & 0xFF);
+            if (failDetect) throw new IllegalStateException("detector down");
+            return Collections.singletonList(
+                new VisionDetector.Detection(VisionDetector.TYPE_PERSON, 0.9f, new Rect(0, 0, 10, 10)));
+        }
+
+        void upload(@NonNull byte[] jpeg, @NonNull RelayClient.FramePriority priority) throws IOException {
+            priorities.add(priority);
+            sent.add(jpeg[0]);
+            if (failUpload) throw new IOException("relay down");
+        }
+
+        @NonNull
+        FramePipeline.Uploader uploader() {
+            return new FramePipeline.Uploader() {
+                @Override
+                public void upload(@NonNull byte[] jpeg, @NonNull RelayClient.FramePriority priority)
+                    throws IOException {
+                    FakeStages.this.upload(jpeg, priority);
+                }
+
+                @Override
+                public boolean ready() {
+                    return !paused;
+                }
+            };
+        }
+    }
+
+    /**
+     * A grey textured scene with +/-3 seeded sensor noise. Between firstMotion and lastMotion a
+     * dark box walks left to right. Pixel (0, 0) carries the frame index in its blue channel.
+     */
+    private static final class SceneSource implements FrameSource {
+        private final int frameCount;
+        private final int firstMotion;
+        private final int lastMotion;
+        private final Random random;
+        private int next;
+        int failAt = -1;
+        int closes;
+        long converted;
+        final List<Bitmap> handedOut = new ArrayList<>();
+
+        SceneSource(int frameCount, int firstMotion, int lastMotion, long seed) {
+            this.frameCount = frameCount;
+            this.firstMotion = firstMotion;
+            this.lastMotion = lastMotion;
+            this.random = new Random(seed);
+        }
+
+        @Nullable
+        @Override
+        public Frame next() throws IOException {
+            if (next >= frameCount) return null;
+            if (next == failAt) {
+                failAt = -1;
+                throw new IOException("camera disconnected");
+            }
+            int index = next++;
+            Bitmap frame = index >= firstMotion && index < lastMotion
+                ? renderWithBox(index, 0, 10 + (index - firstMotion) * 12, 40)
+                : render(index, 0);
+            handedOut.add(frame);
+            BitmapFrame captured = new BitmapFrame(frame);
+            return new Frame() {
+                @NonNull
+                @Override
+                public int[] downsampleLuma(@NonNull MotionGate gate) {
+                    return captured.downsampleLuma(gate);
+                }
+
+                @NonNull
+                @Override
+                public Bitmap bitmap() {
+                    converted++;
+                    return captured.bitmap();
+                }
+
+                @Override
+                public void close() {
+                    captured.close();
+                }
+            };
+        }
+
+        @Override
+        public void close() {
+            closes++;
+        }
+
+        @NonNull
+        Bitmap render(int index, int brightness) {
+            return renderWithBox(index, brightness, -1, 0);
+        }
+
+        @NonNull
+        Bitmap renderWithBox(int index, int brightness, int boxLeft, int boxSize) {
+            int[] pixels = new int[WIDTH * HEIGHT];
+            for (int y = 0; y < HEIGHT; y++) {
+                for (int x = 0; x < WIDTH; x++) {
+                    int base = 90 + ((x / 20 + y / 20) % 2) * 40 + brightness;
+                    boolean inBox = boxLeft >= 0 && x >= boxLeft && x < boxLeft + boxSize
+                        && y >= 40 && y < 40 + boxSize;
+                    int value = inBox ? 10 : base + random.nextInt(7) - 3;
+                    value = Math.max(0, Math.min(255, value));
+                    pixels[y * WIDTH + x] = 0xFF000000 | (value << 16) | (value << 8) | value;
+                }
+            }
+            pixels[0] = 0xFF000000 | (index & 0xFF);
+            return Bitmap.createBitmap(pixels, WIDTH, HEIGHT, Bitmap.Config.ARGB_8888);
+        }
+    }
+}
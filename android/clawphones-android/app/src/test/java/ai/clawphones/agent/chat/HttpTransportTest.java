@@ -0,0 +1,143 @@
+package ai.clawphones.agent.chat;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+import okio.BufferedSink;
+import okio.GzipSink;
+import okio.Okio;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for HttpTransport against a local MockWebServer.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class HttpTransportTest {
+
+    private static final String BODY = "{\"ok\":true}";
+
+    private MockWebServer mServer;
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = new MockWebServer();
+        mServer.start();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mServer.shutdown();
+    }
+
+    /**
+     * Test: consecutive requests reuse one pooled connection
+     */
+    @Test
+    public void testExecute_reusesPooledConnection() throws Exception {
+        mServer.enqueue(new MockResponse().setBody(BODY));
+        mServer.enqueue(new MockResponse().setBody(BODY));
+
+        assertEquals(BODY, get("/a"));
+        assertEquals(BODY, get("/b"));
+
+        assertEquals(0, mServer.takeRequest().getSequenceNumber());
+        assertEquals(1, mServer.takeRequest().getSequenceNumber());
+    }
+
+    /**
+     * Test: gzip is requested and decoded without caller involvement
+     */
+    @Test
+    public void testExecute_decodesGzipTransparently() throws Exception {
+        mServer.enqueue(new MockResponse()
+            .setHeader("Content-Encoding", "gzip")
+            .setBody(gzip(BODY)));
+
+        assertEquals(BODY, get("/gzip"));
+
+        RecordedRequest recorded = mServer.takeRequest();
+        assertEquals("gzip", recorded.getHeader("Accept-Encoding"));
+    }
+
+    /**
+     * Test: a per-request read timeout overrides the client default
+     */
+    @Test
+    public void testWithTimeouts_overridesReadTimeout() throws Exception {
+        mServer.enqueue(new MockResponse()
+            .setBody(BODY)
+            .setHeadersDelay(1, TimeUnit.SECONDS));
+
+        Request request = HttpTransport.withTimeouts(
+            new Request.Builder().url(mServer.url("/slow")),
+            0L,
+            100L,
+            0L
+        ).build();
+
+        try (Response ignored = HttpTransport.execute(request)) {
+            fail("expected read timeout");
+        } catch (InterruptedIOException expected) {
+            // Read timed out at the per-request limit, well below the 60 s default.
+        }
+    }
+
+    /**
+     * Test: a cacheable GET is answered from the disk cache on the second call
+     */
+    @Test
+    public void testExecuteCached_servesRepeatGetFromDisk() throws Exception {
+        HttpTransport.installCache(RuntimeEnvironment.getApplication());
+        mServer.enqueue(new MockResponse()
+            .setHeader("Cache-Control", "max-age=60")
+            .setBody(BODY));
+
+        Request request = new Request.Builder().url(mServer.url("/cells?nonce=" + System.nanoTime())).build();
+        String first;
+        try (Response response = HttpTransport.executeCached(request)) {
+            first = response.body().string();
+        }
+        String second;
+        try (Response response = HttpTransport.executeCached(request)) {
+            second = response.body().string();
+            assertNotNull(response.cacheResponse());
+        }
+
+        assertEquals(BODY, first);
+        assertEquals(BODY, second);
+        assertEquals(1, mServer.getRequestCount());
+    }
+
+    private String get(String path) throws IOException {
+        Request request = new Request.Builder().url(mServer.url(path)).build();
+        try (Response response = HttpTransport.execute(request)) {
+            assertTrue(response.isSuccessful());
+            return response.body().string();
+        }
+    }
+
+    private static Buffer gzip(String body) throws IOException {
+        Buffer compressed = new Buffer();
+        try (BufferedSink sink = Okio.buffer(new GzipSink(compressed))) {
+            sink.writeUtf8(body);
+        }
+        return compressed;
+    }
+}
@@ -0,0 +1,231 @@
+package ai.clawphones.agent.chat;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for LiveAlertBuffer and the feed's message parsing, and a comparison of rows bound
+ * during an alert burst against the list rescan and full redraw per message it replaces.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class LiveAlertBufferTest {
+
+    private static final String[] TYPES = {
+        "motion_detected", "person_detected", "vehicle_detected", "sound_alert", "community_alert"
+    };
+    private static final String[] SEVERITIES = {"low", "medium", "high", "critical"};
+    private static final int CAPACITY = 100;
+    private static final int VISIBLE_ROWS = 8;
+    private static final int BURST_MESSAGES = 20_000;
+    private static final int MESSAGES_PER_FRAME = 40;
+    private static final long T0 = 1_714_564_800_000L; // 2024-05-01T12:00:00Z
+
+    /**
+     * Test: the ring keeps the newest alerts, newest first, and counts evictions from the view's end
+     */
+    @Test
+    public void testRing_evictsOldest() {
+        LiveAlertBuffer buffer = new LiveAlertBuffer(5);
+        List<LiveAlertFeedActivity.LiveAlertItem> batch = new ArrayList<>();
+        for (int i = 0; i < 3; i++) batch.add(alert(i, "person_detected", "low"));
+        LiveAlertBuffer.Change change = buffer.addAll(batch);
+        assertEquals(0, change.removed);
+        assertEquals(3, change.inserted);
+
+        batch.clear();
+        for (int i = 3; i < 8; i++) batch.add(alert(i, "person_detected", "low"));
+        change = buffer.addAll(batch);
+
+        assertEquals(3, change.removed);
+        assertEquals(5, change.inserted);
+        assertEquals(5, buffer.size());
+        assertEquals(5, buffer.totalSize());
+        assertEquals("a7", buffer.get(0).id);
+        assertEquals("a3", buffer.get(4).id);
+
+        // A batch larger than the ring keeps only its newest alerts.
+        batch.clear();
+        for (int i = 8; i < 20; i++) batch.add(alert(i, "person_detected", "low"));
+        change = buffer.addAll(batch);
+        assertEquals(5, change.removed);
+        assertEquals(5, change.inserted);
+        assertEquals("a19", buffer.get(0).id);
+        assertEquals("a15", buffer.get(4).id);
+    }
+
+    /**
+     * Test: every filter's view, and the removals and insertions reported for it, match a naive rescan
+     */
+    @Test
+    public void testFilters_matchRescanUnderRandomStream() {
+        Random random = new Random(11);
+        LiveAlertBuffer buffer = new LiveAlertBuffer(CAPACITY);
+        List<LiveAlertFeedActivity.LiveAlertItem> all = new ArrayList<>();
+        String type = null;
+        String severity = null;
+        int seq = 0;
+
+        for (int round = 0; round < 500; round++) {
+            if (random.nextInt(5) == 0) {
+                type = random.nextBoolean() ? null : TYPES[random.nextInt(TYPES.length)];
+                severity = random.nextBoolean() ? null : SEVERITIES[random.nextInt(SEVERITIES.length)];
+                buffer.select(type, severity);
+                assertEquals(naiveView(all, type, severity), view(buffer));
+            }
+            List<LiveAlertFeedActivity.LiveAlertItem> batch = new ArrayList<>();
+            int count = random.nextInt(round % 50 == 0 ? 3 * CAPACITY : 30);
+            for (int i = 0; i < count; i++, seq++) {
+                batch.add(alert(seq, TYPES[random.nextInt(TYPES.length)], SEVERITIES[random.nextInt(SEVERITIES.length)]));
+            }
+
+            List<String> before = view(buffer);
+            LiveAlertBuffer.Change change = buffer.addAll(batch);
+            all.addAll(batch);
+            List<String> after = naiveView(all, type, severity);
+            assertEquals(after, view(buffer));
+
+            // Replaying the change on the old rows, as the adapter notifications do, gives the new rows.
+            List<String> replayed = new ArrayList<>(before.subList(0, before.size() - change.removed));
+            replayed.addAll(0, after.subList(0, change.inserted));
+            assertEquals(after, replayed);
+        }
+        assertEquals(CAPACITY, buffer.totalSize());
+    }
+
+    /**
+     * Test: timestamps with and without offsets parse to the same instants; junk falls back
+     */
+    @Test
+    public void testParseTimestamp() {
+        assertEquals(T0, LiveAlertFeedActivity.parseTimestampMs("2024-05-01T12:00:00", 0L));
+        assertEquals(T0, LiveAlertFeedActivity.parseTimestampMs("2024-05-01T12:00:00Z", 0L));
+        assertEquals(T0 + 250L, LiveAlertFeedActivity.parseTimestampMs("2024-05-01T14:00:00.250+02:00", 0L));
+        assertEquals(T0, LiveAlertFeedActivity.parseTimestampMs("2024-05-01T12:00:00.123456", 0L));
+        assertEquals(42L, LiveAlertFeedActivity.parseTimestampMs("yesterday", 42L));
+        assertEquals(42L, LiveAlertFeedActivity.parseTimestampMs("", 42L));
+        assertEquals(42L, LiveAlertFeedActivity.parseTimestampMs(null, 42L));
+    }
+
+    /**
+     * Test: messages parsed on many threads at once all get their own timestamp
+     */
+    @Test
+    public void testParseAlert_concurrentThreads() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<Integer>> results = new ArrayList<>();
+            for (int thread = 0; thread < 8; thread++) {
+                int offset = thread * 100_000;
+                results.add(pool.submit(() -> {
+                    int ok = 0;
+                    for (int i = 0; i < 2000; i++) {
+                        long expected = T0 + (offset + i) * 1000L;
+                        LiveAlertFeedActivity.LiveAlertItem alert =
+                            LiveAlertFeedActivity.parseAlert(message(offset + i, expected), 0L);
+                        if (alert.timestamp.getTime() == expected && alert.timeLabel.length() == 8) ok++;
+                    }
+                    return ok;
+                }));
+            }
+            for (Future<Integer> result : results) assertEquals(2000, (int) result.get(60, TimeUnit.SECONDS));
+        } finally {
+            pool.shutdownNow();
+        }
+
+        LiveAlertFeedActivity.LiveAlertItem alert = LiveAlertFeedActivity.parseAlert(
+            "{\"id\":\"x\",\"type\":\"sound_alert\",\"h3_location\":\"8928308280fffff\",\"description\":\"Glass\"}", T0);
+        assertEquals("x", alert.id);
+        assertEquals("sound_alert", alert.type);
+        assertEquals("low", alert.severity);
+        assertEquals("8928308280fffff", alert.h3Location);
+        assertEquals(T0, alert.timestamp.getTime());
+    }
+
+    /**
+     * Test: rows rebound during an alert burst, per-frame batches vs per-message redraw
+     */
+    @Test
+    public void testBurst_bindsFewerRowsThanListRescan() throws Exception {
+        Random random = new Random(5);
+        List<LiveAlertFeedActivity.LiveAlertItem> burst = new ArrayList<>();
+        for (int i = 0; i < BURST_MESSAGES; i++) {
+            burst.add(alert(i, TYPES[random.nextInt(TYPES.length)], SEVERITIES[random.nextInt(SEVERITIES.length)]));
+        }
+
+        // Before: insert at the head of a list, trim, rescan for the filter, redraw every visible row.
+        List<LiveAlertFeedActivity.LiveAlertItem> allAlerts = new ArrayList<>();
+        List<LiveAlertFeedActivity.LiveAlertItem> filtered = new ArrayList<>();
+        long legacyRebinds = 0;
+        for (LiveAlertFeedActivity.LiveAlertItem alert : burst) {
+            allAlerts.add(0, alert);
+            while (allAlerts.size() > CAPACITY) allAlerts.remove(allAlerts.size() - 1);
+            filtered.clear();
+            for (LiveAlertFeedActivity.LiveAlertItem item : allAlerts) {
+                if ("high".equals(item.severity)) filtered.add(item);
+            }
+            legacyRebinds += Math.min(VISIBLE_ROWS, filtered.size());
+        }
+
+        // After: one batch per frame, and only the inserted rows that are on screen are bound.
+        LiveAlertBuffer buffer = new LiveAlertBuffer(CAPACITY);
+        buffer.select(null, "high");
+        long rebinds = 0;
+        for (int i = 0; i < burst.size(); i += MESSAGES_PER_FRAME) {
+            LiveAlertBuffer.Change change =
+                buffer.addAll(burst.subList(i, Math.min(burst.size(), i + MESSAGES_PER_FRAME)));
+            rebinds += Math.min(VISIBLE_ROWS, change.inserted);
+        }
+
+        assertEquals(naiveView(burst, null, "high"), view(buffer));
+        assertTrue(rebinds + " vs " + legacyRebinds, rebinds * 4 < legacyRebinds);
+    }
+
+    @NonNull
+    private static LiveAlertFeedActivity.LiveAlertItem alert(int i, @NonNull String type, @NonNull String severity) {
+        return new LiveAlertFeedActivity.LiveAlertItem("a" + i, type, "", severity, "", new Date(T0 + i), "12:00:00");
+    }
+
+    @NonNull
+    private static String message(int i, long timestampMs) {
+        return "{\"id\":\"m" + i + "\",\"type\":\"person_detected\",\"severity\":\"high\",\"timestamp\":\""
+            + java.time.Instant.ofEpochMilli(timestampMs) + "\"}";
+    }
+
+    @NonNull
+    private static List<String> view(@NonNull LiveAlertBuffer buffer) {
+        List<String> ids = new ArrayList<>();
+        for (int i = 0; i < buffer.size(); i++) ids.add(buffer.get(i).id);
+        return ids;
+    }
+
+    @NonNull
+    private static List<String> naiveView(@NonNull List<LiveAlertFeedActivity.LiveAlertItem> all,
+                                          @Nullable String type, @Nullable String severity) {
+        List<String> ids = new ArrayList<>();
+        for (LiveAlertFeedActivity.LiveAlertItem alert : all.subList(Math.max(0, all.size() - CAPACITY), all.size())) {
+            if ((type == null || type.equals(alert.type)) && (severity == null || severity.equals(alert.severity))) {
+                ids.add(alert.id);
+            }
+        }
+        Collections.reverse(ids);
+        return ids;
+    }
+}
@@ -0,0 +1,213 @@
+package ai.clawphones.agent.chat;
+
+import androidx.annotation.NonNull;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for MessageQueueDrainer, driven by a fake sender instead of the chat API.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class MessageQueueDrainerTest {
+
+    private static final long WAIT_TIMEOUT_MS = 10_000L;
+
+    private MessageQueue mQueue;
+    private FakeSender mSender;
+    private MessageQueueDrainer mDrainer;
+
+    @Before
+    public void setUp() {
+        mQueue = new MessageQueue(RuntimeEnvironment.getApplication());
+        mQueue.clearAll();
+        mSender = new FakeSender();
+        mDrainer = new MessageQueueDrainer(mQueue, mSender, () -> true);
+    }
+
+    @After
+    public void tearDown() {
+        mDrainer.shutdown();
+        mQueue.clearAll();
+    }
+
+    /**
+     * Test: each conversation is sent in enqueue order while conversations overlap
+     */
+    @Test
+    public void testDrain_keepsOrderPerConversationAndRunsConversationsInParallel() throws Exception {
+        List<String> a = Arrays.asList("a1", "a2", "a3", "a4", "a5");
+        List<String> b = Arrays.asList("b1", "b2", "b3", "b4", "b5");
+        List<String> c = Arrays.asList("c1", "c2", "c3");
+        enqueue(a, "conv-a");
+        enqueue(b, "conv-b");
+        enqueue(c, "conv-c");
+        mSender.delayMs = 30L;
+
+        mDrainer.requestDrain();
+        awaitIdle();
+
+        assertEquals(a, mSender.sentFor("conv-a"));
+        assertEquals(b, mSender.sentFor("conv-b"));
+        assertEquals(c, mSender.sentFor("conv-c"));
+        assertTrue("conversations should drain concurrently", mSender.maxConcurrent.get() > 1);
+        assertTrue(mQueue.listConversationHeads().isEmpty());
+        assertEquals(13L, mDrainer.getStats().sent);
+    }
+
+    /**
+     * Test: a transient failure persists retry_count and next_attempt_at and blocks later messages
+     */
+    @Test
+    public void testDrain_transientFailureSchedulesPersistedBackoff() throws Exception {
+        enqueue(Arrays.asList("flaky", "after"), "conv-a");
+        mQueue.enqueue("other", "conv-b");
+        mSender.failures.put("flaky", new IOException("connection reset"));
+        long before = System.currentTimeMillis();
+
+        mDrainer.requestDrain();
+        awaitIdle();
+
+        MessageQueue.PendingMessage head = mQueue.getHeadForConversation("conv-a");
+        assertNotNull(head);
+        assertEquals("flaky", head.message);
+        assertEquals(MessageQueue.STATUS_PENDING, head.status);
+        assertEquals(1, head.retryCount);
+        assertTrue(head.nextAttemptAt >= before + MessageQueueDrainer.BACKOFF_BASE_MS / 2);
+        assertTrue(mSender.sentFor("conv-a").isEmpty());
+        assertEquals(Collections.singletonList("other"), mSender.sentFor("conv-b"));
+        assertEquals(1L, mDrainer.getStats().retried);
+    }
+
+    /**
+     * Test: a client error fails the message and the conversation moves on
+     */
+    @Test
+    public void testDrain_clientErrorFailsMessageAndContinues() throws Exception {
+        enqueue(Arrays.asList("rejected", "next"), "conv-a");
+        mSender.failures.put("rejected", new ClawPhonesAPI.ApiException(400, "bad request"));
+
+        mDrainer.requestDrain();
+        awaitIdle();
+
+        assertEquals(Collections.singletonList("next"), mSender.sentFor("conv-a"));
+        List<MessageQueue.PendingMessage> left = mQueue.listQueuedForConversation("conv-a");
+        assertEquals(1, left.size());
+        assertEquals(MessageQueue.STATUS_FAILED, left.get(0).status);
+        assertEquals(1L, mDrainer.getStats().failed);
+    }
+
+    /**
+     * Test: a 401 pauses the drainer until resumeAfterAuth
+     */
+    @Test
+    public void testDrain_unauthorizedPausesUntilResumed() throws Exception {
+        mQueue.enqueue("first", "conv-a");
+        mQueue.enqueue("second", "conv-b");
+        mSender.failures.put("first", new ClawPhonesAPI.ApiException(401, "expired"));
+        mSender.failures.put("second", new ClawPhonesAPI.ApiException(401, "expired"));
+
+        mDrainer.requestDrain();
+        awaitIdle();
+        assertEquals(0L, mDrainer.getStats().sent);
+        assertEquals(2, mQueue.listConversationHeads().size());
+
+        mSender.failures.clear();
+        mDrainer.resumeAfterAuth();
+        awaitIdle();
+
+        assertEquals(2L, mDrainer.getStats().sent);
+        assertTrue(mQueue.listConversationHeads().isEmpty());
+    }
+
+    /**
+     * Test: backoff grows exponentially within the equal-jitter bounds and is capped
+     */
+    @Test
+    public void testBackoffDelay_staysWithinJitterBounds() {
+        Random random = new Random(42L);
+        for (int retry = 1; retry <= 12; retry++) {
+            long full = Math.min(MessageQueueDrainer.BACKOFF_MAX_MS,
+                MessageQueueDrainer.BACKOFF_BASE_MS << (retry - 1));
+            for (int i = 0; i < 50; i++) {
+                long delay = MessageQueueDrainer.backoffDelayMs(retry, random);
+                assertTrue(delay >= full / 2);
+                assertTrue(delay <= full);
+            }
+        }
+    }
+
+    private void enqueue(@NonNull List<String> messages, @NonNull String conversationId) {
+        for (String message : messages) mQueue.enqueue(message, conversationId);
+    }
+
+    private void awaitIdle() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + WAIT_TIMEOUT_MS;
+        // Let the coordinator dispatch before checking that lanes have drained.
+        Thread.sleep(50L);
+        while (System.currentTimeMillis() < deadline) {
+            if (mDrainer.getStats().inFlight == 0 && !hasReadyHead()) {
+                Thread.sleep(50L);
+                if (mDrainer.getStats().inFlight == 0) return;
+            }
+            Thread.sleep(10L);
+        }
+        fail("drainer did not go idle");
+    }
+
+    private boolean hasReadyHead() {
+        long now = System.currentTimeMillis();
+        for (MessageQueue.PendingMessage head : mQueue.listConversationHeads()) {
+            if (head.nextAttemptAt <= now && mSender.failures.get(head.message) == null) return true;
+        }
+        return false;
+    }
+
+    private static final class FakeSender implements MessageQueueDrainer.Sender {
+        final Map<String, Exception> failures = new ConcurrentHashMap<>();
+        final Map<String, List<String>> sent = new ConcurrentHashMap<>();
+        final AtomicInteger inFlight = new AtomicInteger();
+        final AtomicInteger maxConcurrent = new AtomicInteger();
+        volatile long delayMs = 0L;
+
+        @NonNull
+        @Override
+        public String send(@NonNull String conversationId, @NonNull String message) throws Exception {
+            int now = inFlight.incrementAndGet();
+            maxConcurrent.accumulateAndGet(now, Math::max);
+            try {
+                if (delayMs > 0L) Thread.sleep(delayMs);
+                Exception failure = failures.get(message);
+                if (failure != null) throw failure;
+                sent.computeIfAbsent(conversationId, k -> Collections.synchronizedList(new ArrayList<>()))
+                    .add(message);
+                return "reply to " + message;
+            } finally {
+                inFlight.decrementAndGet();
+            }
+        }
+
+        List<String> sentFor(String conversationId) {
+            List<String> list = sent.get(conversationId);
+            return list == null ? Collections.emptyList() : new ArrayList<>(list);
+        }
+    }
+}
@@ -0,0 +1,255 @@
+package ai.clawphones.agent.chat;
+
+import android.content.Context;
+
+import androidx.annotation.NonNull;
+
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowSystemClock;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for RelayClient frame ingest against a stub relay.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class RelayClientTest {
+
+    private static final int UPLOAD_FRAMES = 20;
+    private static final int FRAME_BYTES = 150 * 1024;
+
+    private MockWebServer mServer;
+    private StubRelay mRelay;
+    private RelayClient mClient;
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = new MockWebServer();
+        mRelay = new StubRelay();
+        mServer.setDispatcher(mRelay);
+        mServer.start();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        if (mClient != null) mClient.shutdown();
+        mServer.shutdown();
+    }
+
+    /**
+     * Test: a frame is sent as a binary header plus the raw JPEG
+     */
+    @Test
+    public void testUploadFrame_sendsBinaryFrame() throws Exception {
+        mClient = registeredClient();
+        byte[] jpeg = randomJpeg(4096);
+
+        RelayClient.FrameUploadResult result = mClient.uploadFrame(jpeg, 37.5, -122.25, 90.0);
+
+        assertEquals("evt_1", result.id);
+        RecordedRequest request = takeFrameRequest();
+        assertEquals(RelayFrame.BINARY_MEDIA_TYPE.toString(), request.getHeader("Content-Type"));
+        assertEquals("Bearer tok", request.getHeader("Authorization"));
+        ByteBuffer body = ByteBuffer.wrap(request.getBody().readByteArray());
+        assertEquals("CVF1", new String(body.array(), 0, 4, StandardCharsets.US_ASCII));
+        int headerLength = body.getShort(4);
+        assertEquals(RelayFrame.FIXED_HEADER_BYTES + 3, headerLength);
+        assertEquals(RelayFrame.FLAG_HEADING, body.get(6));
+        assertTrue(body.getLong(8) > 0L);
+        assertEquals(37.5, body.getDouble(16), 0d);
+        assertEquals(-122.25, body.getDouble(24), 0d);
+        assertEquals(90.0, body.getDouble(32), 0d);
+        assertEquals("n-1", new String(body.array(), RelayFrame.FIXED_HEADER_BYTES, 3, StandardCharsets.UTF_8));
+        assertArrayEquals(jpeg, Arrays.copyOfRange(body.array(), headerLength, body.capacity()));
+        assertEquals(headerLength + jpeg.length, request.getBodySize());
+    }
+
+    /**
+     * Test: a relay without binary ingest gets JSON, and later frames skip the binary attempt
+     */
+    @Test
+    public void testUploadFrame_fallsBackToJsonForLegacyRelay() throws Exception {
+        mRelay.binary = false;
+        mClient = registeredClient();
+        byte[] jpeg = randomJpeg(2048);
+
+        mClient.uploadFrame(jpeg, 1.0, 2.0, null);
+        mClient.uploadFrame(jpeg, 1.0, 2.0, null);
+
+        assertEquals(RelayFrame.BINARY_MEDIA_TYPE.toString(), takeFrameRequest().getHeader("Content-Type"));
+        JSONObject first = new JSONObject(takeFrameRequest().getBody().readUtf8());
+        assertTrue(first.isNull("heading"));
+        assertEquals(jpeg.length, android.util.Base64.decode(first.getString("jpeg_base64"), 0).length);
+        assertTrue(takeFrameRequest().getHeader("Content-Type").startsWith("application/json"));
+        assertEquals(3, mRelay.frameRequests);
+    }
+
+    /**
+     * Test: after a refused binary frame, binary is tried again once the cool-down has passed
+     */
+    @Test
+    public void testUploadFrame_reprobesBinaryAfterCooldown() throws Exception {
+        mRelay.binary = false;
+        mClient = registeredClient();
+        byte[] jpeg = randomJpeg(2048);
+        mClient.uploadFrame(jpeg, 1.0, 2.0, null);
+        takeFrameRequest();
+        takeFrameRequest();
+
+        mRelay.binary = true;
+        ShadowSystemClock.advanceBy(Duration.ofMillis(RelayClient.BINARY_REPROBE_MS - 1L));
+        mClient.uploadFrame(jpeg, 1.0, 2.0, null);
+        assertTrue(takeFrameRequest().getHeader("Content-Type").startsWith("application/json"));
+
+        ShadowSystemClock.advanceBy(Duration.ofMillis(1L));
+        mClient.uploadFrame(jpeg, 1.0, 2.0, null);
+        mClient.uploadFrame(jpeg, 1.0, 2.0, null);
+        assertEquals(RelayFrame.BINARY_MEDIA_TYPE.toString(), takeFrameRequest().getHeader("Content-Type"));
+        assertEquals(RelayFrame.BINARY_MEDIA_TYPE.toString(), takeFrameRequest().getHeader("Content-Type"));
+        assertEquals(5, mRelay.frameRequests);
+    }
+
+    /**
+     * Test: a failed frame is spooled to a file, flushed as binary later and its file removed
+     */
+    @Test
+    public void testFailedFrame_spooledToFileAndFlushed() throws Exception {
+        mClient = registeredClient();
+        byte[] jpeg = randomJpeg(8192);
+        mRelay.failFrames = true;
+
+        try {
+            mClient.uploadFrame(jpeg, 10.0, 20.0, 180.0);
+            fail("expected RelayException");
+        } catch (RelayClient.RelayException e) {
+            assertEquals(503, e.statusCode);
+        }
+        takeFrameRequest();
+        File[] spooled = spoolDir().listFiles();
+        assertNotNull(spooled);
+        assertEquals(1, spooled.length);
+        assertEquals(jpeg.length, spooled[0].length());
+
+        mRelay.failFrames = false;
+        mClient.flushPendingFramesAsync();
+
+        RecordedRequest flushed = takeFrameRequest();
+        byte[] body = flushed.getBody().readByteArray();
+        int headerLength = ByteBuffer.wrap(body).getShort(4);
+        assertArrayEquals(jpeg, Arrays.copyOfRange(body, headerLength, body.length));
+        long deadline = System.currentTimeMillis() + 5_000L;
+        while (spoolDir().list().length > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(20L);
+        }
+        assertEquals(0, spoolDir().list().length);
+    }
+
+    /**
+     * Test: a binary frame puts fewer body bytes on the wire than the same frame as jpeg_base64 JSON
+     */
+    @Test
+    public void testFrameUpload_binaryBodySmallerThanJson() throws Exception {
+        byte[] jpeg = randomJpeg(FRAME_BYTES);
+
+        mRelay.binary = false;
+        mClient = registeredClient();
+        mClient.uploadFrame(jpeg, 1.0, 2.0, 3.0); // Probes binary, then latches JSON.
+        long json = bodyBytesPerFrame(jpeg);
+        mClient.shutdown();
+
+        mRelay.binary = true;
+        mClient = registeredClient();
+        mClient.uploadFrame(jpeg, 1.0, 2.0, 3.0);
+        long binary = bodyBytesPerFrame(jpeg);
+
+        assertTrue(binary + " vs " + json, binary < json);
+    }
+
+    private long bodyBytesPerFrame(byte[] jpeg) throws Exception {
+        mRelay.bodyBytes = 0L;
+        for (int i = 0; i < UPLOAD_FRAMES; i++) {
+            mClient.uploadFrame(jpeg, 1.0, 2.0, 3.0);
+        }
+        return mRelay.bodyBytes / UPLOAD_FRAMES;
+    }
+
+    private RelayClient registeredClient() throws Exception {
+        RelayClient client = new RelayClient(RuntimeEnvironment.getApplication(), HttpTransport.client());
+        client.setRelayURL(mServer.url("/").toString());
+        client.register();
+        return client;
+    }
+
+    private RecordedRequest takeFrameRequest() throws InterruptedException {
+        while (true) {
+            RecordedRequest request = mServer.takeRequest(5, TimeUnit.SECONDS);
+            assertNotNull("relay request expected", request);
+            if ("/v1/events/frame".equals(request.getPath())) return request;
+        }
+    }
+
+    private static File spoolDir() {
+        Context context = RuntimeEnvironment.getApplication();
+        return new File(context.getNoBackupFilesDir(), "relay_frames");
+    }
+
+    private static byte[] randomJpeg(int size) {
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        data[0] = (byte) 0xFF;
+        data[1] = (byte) 0xD8;
+        return data;
+    }
+
+    /** Relay stub; {@code binary = false} answers binary frames the way a JSON-only relay does. */
+    private static final class StubRelay extends Dispatcher {
+        volatile boolean binary = true;
+        volatile boolean failFrames;
+        volatile int frameRequests;
+        volatile long bodyBytes;
+
+        @NonNull
+        @Override
+        public MockResponse dispatch(@NonNull RecordedRequest request) {
+            String path = request.getPath();
+            if ("/v1/nodes/register".equals(path)) {
+                return new MockResponse().setBody("{\"node_id\":\"n-1\",\"token\":\"tok\"}");
+            }
+            if (!"/v1/events/frame".equals(path)) {
+                return new MockResponse().setResponseCode(404);
+            }
+            frameRequests++;
+            bodyBytes += request.getBodySize();
+            if (failFrames) {
+                return new MockResponse().setResponseCode(503).setBody("{\"ok\":false}");
+            }
+            String type = request.getHeader("Content-Type");
+            if (!binary && type != null && type.startsWith(RelayFrame.BINARY_MEDIA_TYPE.toString())) {
+                return new MockResponse().setResponseCode(400).setBody("{\"ok\":false,\"error\":\"invalid json\"}");
+            }
+            return new MockResponse().setBody("{\"ok\":true,\"id\":\"evt_1\",\"cell\":\"c\",\"preview_url\":\"/v1/blobs/evt_1.jpg\"}");
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package ai.clawphones.agent.chat;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for the RelayFrameQueue spool policy, fed by a synthetic frame generator.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class RelayFrameQueueTest {
+
+    private static final long NOW = 1_700_000_000_000L;
+    private static final long HOUR_MS = 60L * 60L * 1000L;
+    private static final int FRAME_BYTES = 10 * 1024;
+
+    /**
+     * Test: over budget, the spool keeps every alert, then the newest detections, and heartbeats go first
+     */
+    @Test
+    public void testEnqueue_budgetEvictsLowestPriorityFirst() throws Exception {
+        RelayFrameQueue queue = queue(20L * FRAME_BYTES, 24L * HOUR_MS);
+        FrameGenerator generator = new FrameGenerator(7L);
+        Map<RelayClient.FramePriority, Integer> offered = new EnumMap<>(RelayClient.FramePriority.class);
+
+        for (int i = 0; i < 200; i++) {
+            RelayFrame frame = generator.next(i);
+            offered.merge(frame.priority, 1, Integer::sum);
+            queue.enqueue(frame, NOW + i);
+        }
+
+        RelayFrameQueue.SpoolUsage usage = queue.usage();
+        assertTrue("spool " + usage, usage.totalBytes <= 20L * FRAME_BYTES);
+        assertEquals(20, usage.frames);
+        int alerts = offered.getOrDefault(RelayClient.FramePriority.ALERT, 0);
+        int detections = offered.getOrDefault(RelayClient.FramePriority.DETECTION, 0);
+        assertTrue("generator should leave room for every alert", alerts < 20);
+        assertEquals((long) alerts * FRAME_BYTES, usage.bytesByPriority[RelayClient.FramePriority.ALERT.rank]);
+        assertEquals((long) Math.min(detections, 20 - alerts) * FRAME_BYTES,
+            usage.bytesByPriority[RelayClient.FramePriority.DETECTION.rank]);
+        assertEquals(0L, usage.bytesByPriority[RelayClient.FramePriority.HEARTBEAT.rank]);
+        assertEquals(180L, usage.budgetEvictions);
+        assertEquals(20, spoolFiles().length);
+    }
+
+    /**
+     * Test: within one priority the oldest frames go first
+     */
+    @Test
+    public void testEnqueue_budgetEvictsOldestWithinPriority() throws Exception {
+        RelayFrameQueue queue = queue(3L * FRAME_BYTES, 24L * HOUR_MS);
+
+        for (int i = 0; i < 10; i++) {
+            queue.enqueue(frame(i, RelayClient.FramePriority.IDLE), NOW + i);
+        }
+
+        List<RelayFrameQueue.PendingFrame> kept = queue.claimPending(100, Long.MIN_VALUE, Long.MIN_VALUE);
+        assertEquals(3, kept.size());
+        assertEquals(7L, kept.get(0).frame.ts);
+        assertEquals(9L, kept.get(2).frame.ts);
+    }
+
+    /**
+     * Test: frames past the TTL are deleted with their files regardless of priority
+     */
+    @Test
+    public void testTrim_deletesExpiredFrames() throws Exception {
+        RelayFrameQueue queue = queue(1024L * FRAME_BYTES, HOUR_MS);
+        queue.enqueue(frame(0, RelayClient.FramePriority.ALERT), NOW - 3 * HOUR_MS);
+        queue.enqueue(frame(1, RelayClient.FramePriority.IDLE), NOW - 2 * HOUR_MS);
+        queue.enqueue(frame(2, RelayClient.FramePriority.IDLE), NOW - HOUR_MS / 2);
+
+        assertEquals(2, queue.trim(NOW));
+
+        RelayFrameQueue.SpoolUsage usage = queue.usage();
+        assertEquals(1, usage.frames);
+        assertEquals(2L, usage.expiredEvictions);
+        assertEquals(NOW - HOUR_MS / 2, usage.oldestCreatedAt);
+        assertEquals(1, spoolFiles().length);
+    }
+
+    /**
+     * Test: frames in flight are never evicted, and failed frames go before pending ones
+     */
+    @Test
+    public void testTrim_skipsInFlightAndEvictsFailedFirst() throws Exception {
+        RelayFrameQueue queue = queue(3L * FRAME_BYTES, 24L * HOUR_MS);
+        queue.enqueue(frame(0, RelayClient.FramePriority.IDLE), NOW);
+        queue.enqueue(frame(1, RelayClient.FramePriority.ALERT), NOW + 1);
+        queue.enqueue(frame(2, RelayClient.FramePriority.ALERT), NOW + 2);
+        long inFlight = queue.claimPending(1, Long.MIN_VALUE, Long.MIN_VALUE).get(0).id;
+        List<RelayFrameQueue.PendingFrame> alerts = queue.claimPending(1, NOW, inFlight);
+        queue.markFailed(alerts.get(0).id);
+
+        queue.enqueue(frame(3, RelayClient.FramePriority.IDLE), NOW + 3);
+
+        List<RelayFrameQueue.PendingFrame> pending = queue.claimPending(100, Long.MIN_VALUE, Long.MIN_VALUE);
+        assertEquals(2, pending.size());
+        assertEquals(2L, pending.get(0).frame.ts);
+        assertEquals(3L, pending.get(1).frame.ts);
+        assertEquals(3, queue.usage().frames);
+    }
+
+    private static RelayFrameQueue queue(long maxBytes, long ttlMs) {
+        return new RelayFrameQueue(RuntimeEnvironment.getApplication(),
+            new RelayFrameQueue.SpoolPolicy(maxBytes, ttlMs));
+    }
+
+    private static RelayFrame frame(long ts, RelayClient.FramePriority priority) {
+        return new RelayFrame("n-1", ts, 1d, 2d, null, priority, new byte[FRAME_BYTES]);
+    }
+
+    private static File[] spoolFiles() {
+        File dir = new File(RuntimeEnvironment.getApplication().getNoBackupFilesDir(), "relay_frames");
+        File[] files = dir.listFiles();
+        return files == null ? new File[0] : files;
+    }
+
+    /**
+     * Synthetic offline-node traffic: mostly idle frames, a heartbeat every tenth frame, and
+     * occasional detections and alerts.
+     */
+    private static final class FrameGenerator {
+        private final Random random;
+
+        FrameGenerator(long seed) {
+            random = new Random(seed);
+        }
+
+        RelayFrame next(int index) {
+            RelayClient.FramePriority priority;
+            int roll = random.nextInt(100);
+            if (index % 10 == 0) {
+                priority = RelayClient.FramePriority.HEARTBEAT;
+            } else if (roll < 4) {
+                priority = RelayClient.FramePriority.ALERT;
+            } else if (roll < 12) {
+                priority = RelayClient.FramePriority.DETECTION;
+            } else {
+                priority = RelayClient.FramePriority.IDLE;
+            }
+            byte[] jpeg = new byte[FRAME_BYTES];
+            random.nextBytes(jpeg);
+            return new RelayFrame("n-1", index, 37d + random.nextDouble(), -122d + random.nextDouble(),
+                random.nextBoolean() ? random.nextDouble() * 360d : null, priority, jpeg);
+        }
+    }
+}
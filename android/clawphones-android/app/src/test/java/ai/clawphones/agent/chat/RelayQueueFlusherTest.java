@@ -0,0 +1,201 @@
+package ai.clawphones.agent.chat;
+
+import androidx.annotation.NonNull;
+
+import org.json.JSONException;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.annotation.Config;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import okhttp3.Request;
+import okhttp3.Response;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for RelayQueueFlusher against a stub relay that injects latency and errors.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class RelayQueueFlusherTest {
+
+    private static final int WINDOW = 4;
+
+    private MockWebServer mServer;
+    private StubRelay mRelay;
+    private RelayFrameQueue mQueue;
+    private ExecutorService mWorkers;
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = new MockWebServer();
+        mRelay = new StubRelay();
+        mServer.setDispatcher(mRelay);
+        mServer.start();
+        mQueue = new RelayFrameQueue(RuntimeEnvironment.getApplication());
+        mWorkers = Executors.newFixedThreadPool(WINDOW);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mWorkers.shutdownNow();
+        mServer.shutdown();
+    }
+
+    /**
+     * Test: a slow relay sees a full window of uploads in flight and the backlog drains in parallel
+     */
+    @Test
+    public void testFlush_keepsWindowInFlight() throws Exception {
+        enqueueFrames(16);
+        mRelay.latencyMs = 150L;
+
+        RelayQueueFlusher.Stats stats = flusher(WINDOW).flush(this::upload);
+
+        assertEquals(16, stats.sent);
+        assertEquals(0, stats.remaining);
+        // Concurrency as the relay saw it, not wall time, so a loaded machine cannot fail this.
+        assertEquals(WINDOW, mRelay.peakInFlight.get());
+        assertTrue(stats.framesPerSecond() > 0d);
+        assertTrue(stats.maxAgeMs >= stats.medianAgeMs);
+        assertEquals(16L * 1024L, stats.bytesSent);
+    }
+
+    /**
+     * Test: a poison frame is dropped and a retryable failure is left behind without stopping the flush
+     */
+    @Test
+    public void testFlush_skipsPastFailuresAndClassifies() throws Exception {
+        enqueueFrames(6);
+        mRelay.errors.put(1, 422);
+        mRelay.errors.put(2, 503);
+
+        RelayQueueFlusher.Stats stats = flusher(WINDOW).flush(this::upload);
+
+        assertEquals(4, stats.sent);
+        assertEquals(1, stats.dropped);
+        assertEquals(1, stats.retried);
+        assertEquals(1, stats.remaining);
+        assertTrue(mRelay.peakInFlight.get() <= WINDOW);
+        assertTrue(stats.oldestRemainingAgeMs >= 0L);
+
+        mRelay.errors.clear();
+        RelayQueueFlusher.Stats second = flusher(WINDOW).flush(this::upload);
+        assertEquals(1, second.sent);
+        assertEquals(0, second.remaining);
+        assertEquals(7, mRelay.requests.get());
+    }
+
+    /**
+     * Test: an auth failure stops claiming and leaves the rest of the queue pending
+     */
+    @Test
+    public void testFlush_authFailureStops() throws Exception {
+        enqueueFrames(5);
+        mRelay.errors.put(0, 401);
+
+        RelayQueueFlusher.Stats stats = flusher(1).flush(this::upload);
+
+        assertTrue(stats.authFailed);
+        assertEquals(0, stats.sent);
+        assertEquals(5, stats.remaining);
+        assertEquals(1, mRelay.requests.get());
+    }
+
+    /**
+     * Test: a frame that keeps failing is marked failed after MAX_RETRIES flushes
+     */
+    @Test
+    public void testFlush_retryableFailureExhausts() throws Exception {
+        enqueueFrames(1);
+        mRelay.errors.put(0, 503);
+
+        RelayQueueFlusher.Stats stats = null;
+        for (int i = 0; i < RelayQueueFlusher.MAX_RETRIES; i++) {
+            stats = flusher(WINDOW).flush(this::upload);
+        }
+
+        assertEquals(1, stats.failed);
+        assertEquals(0, stats.remaining);
+        assertEquals(RelayQueueFlusher.MAX_RETRIES, mRelay.requests.get());
+    }
+
+    /**
+     * Test: status codes and exceptions map to retryable, permanent and auth failures
+     */
+    @Test
+    public void testClassify() {
+        assertEquals(RelayQueueFlusher.Failure.AUTH, RelayQueueFlusher.classify(new RelayClient.RelayException(403, "x")));
+        assertEquals(RelayQueueFlusher.Failure.RETRYABLE, RelayQueueFlusher.classify(new RelayClient.RelayException(429, "x")));
+        assertEquals(RelayQueueFlusher.Failure.RETRYABLE, RelayQueueFlusher.classify(new RelayClient.RelayException(502, "x")));
+        assertEquals(RelayQueueFlusher.Failure.PERMANENT, RelayQueueFlusher.classify(new RelayClient.RelayException(413, "x")));
+        assertEquals(RelayQueueFlusher.Failure.PERMANENT, RelayQueueFlusher.classify(new JSONException("x")));
+        assertEquals(RelayQueueFlusher.Failure.RETRYABLE, RelayQueueFlusher.classify(new IOException("x")));
+    }
+
+    private RelayQueueFlusher flusher(int window) {
+        return new RelayQueueFlusher(mQueue, mWorkers, window);
+    }
+
+    /** Frame i carries lat = i so the stub can pick it out. */
+    private void enqueueFrames(int count) throws IOException {
+        for (int i = 0; i < count; i++) {
+            mQueue.enqueue(new RelayFrame("n-1", 1_700_000_000L + i, i, 0d, null, new byte[1024]));
+        }
+    }
+
+    private void upload(@NonNull RelayFrame frame) throws IOException, RelayClient.RelayException {
+        Request request = new Request.Builder()
+            .url(mServer.url("/v1/events/frame"))
+            .post(frame.binaryBody())
+            .build();
+        try (Response response = HttpTransport.execute(request)) {
+            if (!response.isSuccessful()) {
+                throw new RelayClient.RelayException(response.code(), "HTTP " + response.code());
+            }
+        }
+    }
+
+    private static final class StubRelay extends Dispatcher {
+        final Map<Integer, Integer> errors = new ConcurrentHashMap<>();
+        final AtomicInteger requests = new AtomicInteger();
+        final AtomicInteger peakInFlight = new AtomicInteger();
+        private final AtomicInteger mInFlight = new AtomicInteger();
+        volatile long latencyMs;
+
+        @NonNull
+        @Override
+        public MockResponse dispatch(@NonNull RecordedRequest request) throws InterruptedException {
+            requests.incrementAndGet();
+            int active = mInFlight.incrementAndGet();
+            peakInFlight.accumulateAndGet(active, Math::max);
+            try {
+                if (latencyMs > 0L) Thread.sleep(latencyMs);
+                int index = (int) ByteBuffer.wrap(request.getBody().readByteArray()).getDouble(16);
+                Integer code = errors.get(index);
+                if (code != null) {
+                    return new MockResponse().setResponseCode(code).setBody("{\"ok\":false}");
+                }
+                return new MockResponse().setBody("{\"ok\":true,\"id\":\"evt_" + index + "\"}");
+            } finally {
+                mInFlight.decrementAndGet();
+            }
+        }
+    }
+}
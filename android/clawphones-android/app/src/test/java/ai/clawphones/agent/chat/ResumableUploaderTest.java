@@ -0,0 +1,227 @@
+package ai.clawphones.agent.chat;
+
+import androidx.annotation.NonNull;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okhttp3.mockwebserver.SocketPolicy;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for ResumableUploader against a local MockWebServer acting as the upload backend.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class ResumableUploaderTest {
+
+    private static final String FILE_JSON =
+        "{\"file_id\":\"f-1\",\"filename\":\"big.bin\",\"mime_type\":\"application/pdf\",\"size\":%d}";
+
+    private MockWebServer mServer;
+
+    @Before
+    public void setUp() throws IOException {
+        mServer = new MockWebServer();
+        mServer.start();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        mServer.shutdown();
+    }
+
+    /**
+     * Test: a small file goes out as one multipart POST with a known length and full progress
+     */
+    @Test
+    public void testUpload_smallFileSingleMultipartRequest() throws Exception {
+        byte[] payload = randomBytes(200 * 1024);
+        mServer.enqueue(new MockResponse().setBody(String.format(FILE_JSON, payload.length)));
+        RecordingProgress progress = new RecordingProgress();
+
+        ClawPhonesAPI.UploadedFile uploaded = uploader().upload(
+            "c-1", UploadSource.fromFile(writeTemp(payload)), "big.bin", "application/pdf", progress);
+
+        assertEquals("f-1", uploaded.fileId);
+        RecordedRequest request = mServer.takeRequest();
+        assertEquals("POST", request.getMethod());
+        assertEquals("/v1/upload?conversation_id=c-1", request.getPath());
+        assertEquals("Bearer t", request.getHeader("Authorization"));
+        assertNotNull("body length should be known up front", request.getHeader("Content-Length"));
+        assertNull(request.getHeader("Transfer-Encoding"));
+        assertTrue(contains(request.getBody().readByteArray(), payload));
+        assertEquals(payload.length, progress.last);
+        assertTrue("progress should be reported during the upload", progress.calls.size() > 2);
+    }
+
+    /**
+     * Test: a dropped chunk resyncs from the server offset and the reassembled payload matches
+     */
+    @Test
+    public void testUpload_chunkedResumesAfterDisconnect() throws Exception {
+        byte[] payload = randomBytes((int) ResumableUploader.CHUNKED_THRESHOLD_BYTES + 300 * 1024);
+        OffsetBackend backend = new OffsetBackend(payload.length, 2);
+        mServer.setDispatcher(backend);
+        RecordingProgress progress = new RecordingProgress();
+
+        ClawPhonesAPI.UploadedFile uploaded = uploader().upload(
+            "c-1", UploadSource.fromBytes(payload), "big.bin", "application/pdf", progress);
+
+        assertEquals("f-1", uploaded.fileId);
+        assertEquals(payload.length, uploaded.size);
+        assertArrayEquals(payload, backend.received);
+        assertTrue("offset should have been queried after the drop", backend.heads >= 1);
+        assertEquals(payload.length, progress.last);
+    }
+
+    /**
+     * Test: a server without upload sessions gets the single multipart request instead
+     */
+    @Test
+    public void testUpload_fallsBackWhenSessionsUnsupported() throws Exception {
+        byte[] payload = randomBytes((int) ResumableUploader.CHUNKED_THRESHOLD_BYTES + 1);
+        mServer.enqueue(new MockResponse().setResponseCode(404));
+        mServer.enqueue(new MockResponse().setBody(String.format(FILE_JSON, payload.length)));
+
+        ClawPhonesAPI.UploadedFile uploaded = uploader().upload(
+            "c-1", UploadSource.fromBytes(payload), "big.bin", "application/pdf", null);
+
+        assertEquals("f-1", uploaded.fileId);
+        assertEquals("/v1/upload/sessions", mServer.takeRequest().getPath());
+        RecordedRequest upload = mServer.takeRequest();
+        assertEquals("/v1/upload?conversation_id=c-1", upload.getPath());
+        assertTrue(upload.getBodySize() > payload.length);
+    }
+
+    /**
+     * Test: a client error on a chunk is not retried and surfaces as ApiException
+     */
+    @Test
+    public void testUpload_chunkClientErrorFails() throws Exception {
+        byte[] payload = randomBytes((int) ResumableUploader.CHUNKED_THRESHOLD_BYTES + 1);
+        mServer.enqueue(new MockResponse().setBody("{\"upload_id\":\"u-1\",\"offset\":0}"));
+        mServer.enqueue(new MockResponse().setResponseCode(413).setBody("too large"));
+
+        try {
+            uploader().upload("c-1", UploadSource.fromBytes(payload), "big.bin", "application/pdf", null);
+            fail("expected ApiException");
+        } catch (ClawPhonesAPI.ApiException e) {
+            assertEquals(413, e.statusCode);
+        }
+        assertEquals(2, mServer.getRequestCount());
+    }
+
+    private ResumableUploader uploader() {
+        String base = mServer.url("/").toString();
+        return new ResumableUploader(base.substring(0, base.length() - 1), "t", 0L);
+    }
+
+    private static byte[] randomBytes(int size) {
+        byte[] data = new byte[size];
+        new Random(size).nextBytes(data);
+        return data;
+    }
+
+    private static File writeTemp(byte[] data) throws IOException {
+        File file = File.createTempFile("upload", ".bin");
+        file.deleteOnExit();
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(data);
+        }
+        return file;
+    }
+
+    private static boolean contains(byte[] haystack, byte[] needle) {
+        outer:
+        for (int i = 0; i + needle.length <= haystack.length; i++) {
+            for (int j = 0; j < needle.length; j++) {
+                if (haystack[i + j] != needle[j]) continue outer;
+            }
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Offset-protocol backend. The {@code dropAt}-th PATCH keeps only the first half of its chunk
+     * and closes the connection without a response.
+     */
+    private static final class OffsetBackend extends Dispatcher {
+        final byte[] received;
+        int heads;
+        private long mCommitted;
+        private int mPatches;
+        private final int mDropAt;
+
+        OffsetBackend(int size, int dropAt) {
+            received = new byte[size];
+            mDropAt = dropAt;
+        }
+
+        @NonNull
+        @Override
+        public synchronized MockResponse dispatch(@NonNull RecordedRequest request) {
+            String path = request.getPath();
+            if ("POST".equals(request.getMethod()) && "/v1/upload/sessions".equals(path)) {
+                String body = request.getBody().readString(StandardCharsets.UTF_8);
+                assertTrue(body.contains("\"size\":" + received.length));
+                return new MockResponse().setBody("{\"upload_id\":\"u-1\",\"offset\":0,\"chunk_size\":1048576}");
+            }
+            if (!"/v1/upload/sessions/u-1".equals(path)) {
+                return new MockResponse().setResponseCode(404);
+            }
+            if ("HEAD".equals(request.getMethod())) {
+                heads++;
+                return new MockResponse().setHeader(ResumableUploader.HEADER_UPLOAD_OFFSET, mCommitted);
+            }
+
+            long offset = Long.parseLong(request.getHeader(ResumableUploader.HEADER_UPLOAD_OFFSET));
+            if (offset != mCommitted) {
+                return new MockResponse().setResponseCode(409);
+            }
+            byte[] chunk = request.getBody().readByteArray();
+            mPatches++;
+            int keep = mPatches == mDropAt ? chunk.length / 2 : chunk.length;
+            System.arraycopy(chunk, 0, received, (int) offset, keep);
+            mCommitted += keep;
+            if (keep < chunk.length) {
+                return new MockResponse().setSocketPolicy(SocketPolicy.DISCONNECT_AFTER_REQUEST);
+            }
+            MockResponse response = new MockResponse()
+                .setHeader(ResumableUploader.HEADER_UPLOAD_OFFSET, mCommitted);
+            if (mCommitted == received.length) {
+                response.setBody(String.format(FILE_JSON, received.length));
+            }
+            return response;
+        }
+    }
+
+    private static final class RecordingProgress implements ClawPhonesAPI.UploadProgressListener {
+        final List<Long> calls = new ArrayList<>();
+        long last = -1L;
+
+        @Override
+        public void onProgress(long bytesSent, long totalBytes) {
+            calls.add(bytesSent);
+            last = bytesSent;
+        }
+    }
+}
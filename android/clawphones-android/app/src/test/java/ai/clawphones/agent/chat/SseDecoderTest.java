@@ -0,0 +1,289 @@
+package ai.clawphones.agent.chat;
+
+import androidx.annotation.NonNull;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for SseDecoder and ChatStreamSession.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class SseDecoderTest {
+
+    private static final int STREAM_TOKENS = 20_000;
+
+    /**
+     * Test: fields split across chunks and mixed line endings decode to the same events
+     */
+    @Test
+    public void testFeed_handlesSplitChunksAndAllLineEndings() throws Exception {
+        byte[] stream = utf8("\uFEFFid: 1\r\nevent: token\r\ndata: a\r\n\r\n"
+            + ": keep-alive\rdata:b\rdata:  c\r\rretry: 2500\nid: 2\ndata: \u00e9\n\n");
+        RecordingListener listener = new RecordingListener();
+        SseDecoder decoder = new SseDecoder(listener);
+
+        // One byte at a time, so CR/LF pairs and the multi-byte BOM are split.
+        for (byte b : stream) {
+            decoder.feed(new byte[] {b}, 0, 1);
+        }
+
+        assertEquals(3, listener.events.size());
+        assertEquals("token|1|a", listener.events.get(0));
+        assertEquals("message|1|b\n c", listener.events.get(1));
+        assertEquals("message|2|\u00e9", listener.events.get(2));
+        assertEquals(2500L, decoder.getRetryMs());
+        assertEquals("2", decoder.getLastEventId());
+    }
+
+    /**
+     * Test: an event cut off by end of stream is not dispatched and does not advance the id
+     */
+    @Test
+    public void testReadFrom_discardsIncompleteTrailingEvent() throws Exception {
+        RecordingListener listener = new RecordingListener();
+        SseDecoder decoder = new SseDecoder(listener);
+
+        decoder.readFrom(new ByteArrayInputStream(utf8("id: 7\ndata: x\n\nid: 8\ndata: y\n")));
+
+        assertEquals(1, listener.events.size());
+        assertEquals("7", decoder.getLastEventId());
+    }
+
+    /**
+     * Test: an id field with no value clears the last event id, and retry ignores non-digits
+     */
+    @Test
+    public void testFeed_emptyIdResetsAndBadRetryIgnored() throws Exception {
+        RecordingListener listener = new RecordingListener();
+        SseDecoder decoder = new SseDecoder(listener);
+
+        decoder.readFrom(new ByteArrayInputStream(utf8("id: 3\nretry: 10s\ndata: x\n\nid\ndata: y\n\n")));
+
+        assertEquals("message|3|x", listener.events.get(0));
+        assertEquals("message|null|y", listener.events.get(1));
+        assertNull(decoder.getLastEventId());
+        assertEquals(-1L, decoder.getRetryMs());
+    }
+
+    /**
+     * Test: deltas are coalesced, flushed before completion and the done content wins
+     */
+    @Test
+    public void testSession_coalescesDeltasAndCompletes() throws Exception {
+        RecordingCallback callback = new RecordingCallback();
+        ChatStreamSession session = new ChatStreamSession(callback);
+        StringBuilder stream = new StringBuilder();
+        for (int i = 0; i < 40; i++) {
+            stream.append("id: ").append(i).append("\ndata: {\"delta\":\"tok").append(i % 10).append(" \"}\n\n");
+        }
+        stream.append("data: {\"done\":true,\"content\":\"final\",\"message_id\":\"m-1\"}\n\n");
+        stream.append("data: {\"delta\":\"ignored\"}\n\n");
+
+        session.read(new ByteArrayInputStream(utf8(stream.toString())), 200);
+
+        assertTrue(session.isFinished());
+        assertTrue("deltas should be batched", callback.deltas.size() < 40);
+        StringBuilder joined = new StringBuilder();
+        for (String delta : callback.deltas) joined.append(delta);
+        assertEquals(40 * "tokN ".length(), joined.length());
+        assertEquals("final", callback.completed);
+        assertEquals("m-1", callback.messageId);
+        assertEquals("39", session.getLastEventId());
+    }
+
+    /**
+     * Test: a dropped connection keeps the reply and event id; the resumed body continues it
+     */
+    @Test
+    public void testSession_resumesAcrossConnections() throws Exception {
+        RecordingCallback callback = new RecordingCallback();
+        ChatStreamSession session = new ChatStreamSession(callback);
+
+        session.read(new ByteArrayInputStream(utf8(
+            "id: 1\ndata: {\"delta\":\"Hel\"}\n\nid: 2\ndata: {\"delta\":\"lo \\u4e16\"}\n\nid: 3\ndata: {\"del")), 200);
+        assertFalse(session.isFinished());
+        assertEquals("2", session.getLastEventId());
+
+        session.read(new ByteArrayInputStream(utf8(
+            "id: 3\ndata: {\"delta\":\"\u754c\"}\n\ndata: {\"done\":true}\n\n")), 200);
+
+        assertEquals("Hello \u4e16\u754c", callback.completed);
+        assertNull(callback.error);
+    }
+
+    /**
+     * Test: an error event fails the reply with the stream status and drops its pending delta
+     */
+    @Test
+    public void testSession_errorEventFails() throws Exception {
+        RecordingCallback callback = new RecordingCallback();
+        ChatStreamSession session = new ChatStreamSession(callback);
+
+        session.read(new ByteArrayInputStream(utf8(
+            "data: {\"delta\":\"x\",\"error\":\"quota exceeded\"}\n\ndata: {\"done\":true}\n\n")), 200);
+
+        assertTrue(callback.error instanceof ClawPhonesAPI.ApiException);
+        assertEquals("quota exceeded", callback.error.getMessage());
+        assertNull(callback.completed);
+        assertTrue(callback.deltas.isEmpty());
+    }
+
+    /**
+     * Test: a malformed event payload fails with JSONException
+     */
+    @Test
+    public void testSession_malformedEventFails() throws Exception {
+        RecordingCallback callback = new RecordingCallback();
+        ChatStreamSession session = new ChatStreamSession(callback);
+
+        session.read(new ByteArrayInputStream(utf8("data: {\"delta\":\"tok\n\n")), 200);
+
+        assertTrue(callback.error instanceof JSONException);
+    }
+
+    /**
+     * Test: a dropped stream is not re-sent unless the server declared resume support
+     */
+    @Test
+    public void testStreamChat_dropWithoutResumeSupportFailsAfterOnePost() throws Exception {
+        MockWebServer server = new MockWebServer();
+        server.enqueue(eventStream("retry: 10\nid: 1\ndata: {\"delta\":\"Hel\"}\n\n"));
+        server.start();
+        try {
+            RecordingCallback callback = new RecordingCallback();
+            ClawPhonesAPI.streamChat(server.url("/stream").toString(), "t", "{\"message\":\"hi\"}", callback);
+
+            assertEquals(1, server.getRequestCount());
+            assertTrue(callback.error instanceof IOException);
+            assertNull(callback.completed);
+            assertEquals("Hel", String.join("", callback.deltas));
+        } finally {
+            server.shutdown();
+        }
+    }
+
+    /**
+     * Test: with resume declared, a dropped stream is re-sent with Last-Event-ID and continues
+     */
+    @Test
+    public void testStreamChat_resumesWhenServerDeclaresSupport() throws Exception {
+        MockWebServer server = new MockWebServer();
+        server.enqueue(eventStream("retry: 10\nid: 1\ndata: {\"delta\":\"Hel\"}\n\n")
+            .setHeader(ClawPhonesAPI.STREAM_RESUME_HEADER, ClawPhonesAPI.STREAM_RESUME_LAST_EVENT_ID));
+        server.enqueue(eventStream("id: 2\ndata: {\"delta\":\"lo\"}\n\ndata: {\"done\":true}\n\n")
+            .setHeader(ClawPhonesAPI.STREAM_RESUME_HEADER, ClawPhonesAPI.STREAM_RESUME_LAST_EVENT_ID));
+        server.start();
+        try {
+            RecordingCallback callback = new RecordingCallback();
+            ClawPhonesAPI.streamChat(server.url("/stream").toString(), "t", "{\"message\":\"hi\"}", callback);
+
+            assertEquals(2, server.getRequestCount());
+            assertNull(server.takeRequest().getHeader("Last-Event-ID"));
+            assertEquals("1", server.takeRequest().getHeader("Last-Event-ID"));
+            assertEquals("Hello", callback.completed);
+            assertNull(callback.error);
+        } finally {
+            server.shutdown();
+        }
+    }
+
+    /**
+     * Test: a long token stream decodes to the reply the old BufferedReader + JSONObject loop
+     * built, with far fewer delta callbacks than tokens
+     */
+    @Test
+    public void testLongTokenStream_matchesLegacyReplyWithBatchedDeltas() throws Exception {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < STREAM_TOKENS; i++) {
+            sb.append("id: ").append(i).append("\ndata: {\"delta\":\" word").append(i % 97).append("\"}\n\n");
+        }
+        sb.append("data: {\"done\":true,\"message_id\":\"m\"}\n\n");
+        byte[] stream = utf8(sb.toString());
+
+        RecordingCallback callback = new RecordingCallback();
+        new ChatStreamSession(callback).read(new ByteArrayInputStream(stream), 200);
+
+        assertEquals(decodeLegacy(stream), callback.completed);
+        assertEquals(callback.completed, String.join("", callback.deltas));
+        assertTrue(callback.deltas.size() + " callbacks", callback.deltas.size() < STREAM_TOKENS);
+    }
+
+    /** The chatStream read loop before SseDecoder, returning the accumulated reply. */
+    private static String decodeLegacy(byte[] stream) throws IOException, JSONException {
+        StringBuilder accumulated = new StringBuilder();
+        try (BufferedReader reader = new BufferedReader(
+            new InputStreamReader(new ByteArrayInputStream(stream), StandardCharsets.UTF_8))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.isEmpty() || line.startsWith(":")) continue;
+                if (!line.startsWith("data:")) continue;
+                String dataJson = line.substring("data:".length()).trim();
+                if (dataJson.isEmpty()) continue;
+                JSONObject event = new JSONObject(dataJson);
+                if (event.optBoolean("done", false)) break;
+                String delta = event.optString("delta", "");
+                if (!delta.isEmpty()) accumulated.append(delta);
+            }
+        }
+        return accumulated.toString();
+    }
+
+    private static MockResponse eventStream(String body) {
+        return new MockResponse().setHeader("Content-Type", "text/event-stream").setBody(body);
+    }
+
+    private static byte[] utf8(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static final class RecordingListener implements SseDecoder.Listener {
+        final List<String> events = new ArrayList<>();
+
+        @Override
+        public void onEvent(@NonNull SseDecoder.Event event) {
+            events.add(event.type() + "|" + event.lastEventId() + "|" + event.dataAsString());
+        }
+    }
+
+    private static final class RecordingCallback implements ClawPhonesAPI.StreamCallback {
+        final List<String> deltas = new ArrayList<>();
+        String completed;
+        String messageId;
+        Exception error;
+
+        @Override
+        public void onDelta(String delta) {
+            deltas.add(delta);
+        }
+
+        @Override
+        public void onComplete(String fullContent, String messageId) {
+            this.completed = fullContent;
+            this.messageId = messageId;
+        }
+
+        @Override
+        public void onError(Exception error) {
+            this.error = error;
+        }
+    }
+}
@@ -0,0 +1,350 @@
+package ai.clawphones.agent.chat;
+
+import android.graphics.Bitmap;
+import android.graphics.Rect;
+import android.os.SystemClock;
+
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+/**
+ * Unit tests for TrackingDetector and DetectionTracker on rendered image sequences, with a
+ * detector that finds coloured boxes in the pixels.
+ */
+@RunWith(RobolectricTestRunner.class)
+@Config(sdk = 28)
+public class TrackingDetectorTest {
+
+    private static final int WIDTH = 320;
+    private static final int HEIGHT = 240;
+    private static final int RED = 0xFFFF0000;
+    private static final int BLUE = 0xFF0000FF;
+    private static final int GREEN = 0xFF00FF00;
+    private static final long FRAME_MS = DetectionTracker.STEP_MS;
+
+    /**
+     * Test: two objects crossing the scene alert once each, even when the detector misses one for a few frames
+     */
+    @Test
+    public void testWalkers_alertOncePerObject() throws Exception {
+        Sequence sequence = new Sequence(30)
+            .add(new Actor(RED, 0, 30, 20, 60, 6, 0, 40))
+            .add(new Actor(BLUE, 5, 30, 260, 150, -6, 0, 50));
+        BoxDetector boxes = new BoxDetector();
+        boxes.missing(RED, 10, 11, 12);
+        TrackingDetector detector = new TrackingDetector(boxes);
+
+        List<VisionDetector.Detection> alerts = run(sequence, detector);
+
+        assertEquals(2, alerts.size());
+        Set<String> types = new HashSet<>();
+        for (VisionDetector.Detection alert : alerts) types.add(alert.type);
+        assertTrue(types.contains(VisionDetector.TYPE_PERSON));
+        assertTrue(types.contains(VisionDetector.TYPE_VEHICLE));
+        assertEquals(2, detector.tracks().size());
+        assertEquals(2L, detector.stats().births);
+    }
+
+    /**
+     * Test: a one-frame misclassification is ignored and a lasting one reports a class change
+     */
+    @Test
+    public void testClassChange_needsConfirmation() throws Exception {
+        Sequence sequence = new Sequence(24).add(new Actor(RED, 0, 24, 40, 80, 4, 0, 48));
+        BoxDetector boxes = new BoxDetector();
+        boxes.relabel(RED, VisionDetector.TYPE_ANIMAL, 8, 8);
+        boxes.relabel(RED, VisionDetector.TYPE_ANIMAL, 15, 23);
+        DetectionTracker tracker = new DetectionTracker();
+        List<DetectionTracker.Event> events = new ArrayList<>();
+
+        for (int i = 0; i < sequence.frames; i++) {
+            Bitmap frame = sequence.render(i);
+            try {
+                events.addAll(tracker.update(boxes.detect(frame), i * FRAME_MS));
+            } finally {
+                frame.recycle();
+            }
+        }
+
+        assertEquals(2, events.size());
+        assertEquals(DetectionTracker.Event.Kind.BORN, events.get(0).kind);
+        assertEquals(DetectionTracker.Event.Kind.CLASS_CHANGED, events.get(1).kind);
+        assertEquals(VisionDetector.TYPE_PERSON, events.get(1).previousType);
+        assertEquals(VisionDetector.TYPE_ANIMAL, events.get(1).type);
+        assertEquals(events.get(0).trackId, events.get(1).trackId);
+    }
+
+    /**
+     * Test: something detected on a single frame never becomes a track worth alerting on
+     */
+    @Test
+    public void testSingleFrameBlip_ignored() throws Exception {
+        Sequence sequence = new Sequence(20).add(new Actor(GREEN, 5, 6, 100, 100, 0, 0, 30));
+        TrackingDetector detector = new TrackingDetector(new BoxDetector());
+
+        List<VisionDetector.Detection> alerts = run(sequence, detector);
+
+        assertTrue(alerts.isEmpty());
+        assertTrue(detector.tracks().isEmpty());
+    }
+
+    /**
+     * Test: a detector slower than the budget runs on fewer frames and the tracker carries boxes between runs
+     */
+    @Test
+    public void testSlowDetector_skipsFramesWithinBudget() throws Exception {
+        Actor walker = new Actor(RED, 0, 60, 10, 60, 4, 1, 40);
+        Sequence sequence = new Sequence(60).add(walker);
+        BoxDetector boxes = new BoxDetector();
+        boxes.latencyMs = 700L;
+        TrackingDetector detector = new TrackingDetector(boxes);
+
+        List<VisionDetector.Detection> alerts = new ArrayList<>();
+        float worstIou = 1f;
+        for (int i = 0; i < sequence.frames; i++) {
+            Bitmap frame = sequence.render(i);
+            try {
+                alerts.addAll(detector.detect(frame, i * FRAME_MS));
+            } finally {
+                frame.recycle();
+            }
+            List<DetectionTracker.Track> tracks = detector.tracks();
+            if (i >= 10 && tracks.size() == 1) {
+                worstIou = Math.min(worstIou,
+                    DetectionTracker.intersectionOverUnion(tracks.get(0).box(), walker.box(i)));
+            }
+        }
+
+        TrackingDetector.Stats stats = detector.stats();
+        assertEquals(1, alerts.size());
+        assertEquals(2, stats.skip);
+        assertTrue("runs " + stats.detectorRuns, stats.detectorRuns <= 22);
+        assertTrue(stats.detectorRuns * boxes.latencyMs / stats.frames <= VisionDetector.LATENCY_TARGET_MS + 50L);
+        assertTrue("iou " + worstIou, worstIou > 0.5f);
+    }
+
+    /**
+     * Test: an ML Kit tracking id keeps a track across a jump that IoU alone would split
+     */
+    @Test
+    public void testTrackingId_bridgesJump() {
+        DetectionTracker tracker = new DetectionTracker();
+        tracker.update(listOf(detection(VisionDetector.TYPE_PERSON, new Rect(0, 0, 40, 40), 7)), 0L);
+        List<DetectionTracker.Event> born =
+            tracker.update(listOf(detection(VisionDetector.TYPE_PERSON, new Rect(4, 0, 44, 40), 7)), FRAME_MS);
+        List<DetectionTracker.Event> jumped = tracker.update(
+            listOf(detection(VisionDetector.TYPE_PERSON, new Rect(200, 100, 240, 140), 7)), 2 * FRAME_MS);
+
+        assertEquals(1, born.size());
+        assertTrue(jumped.isEmpty());
+        assertEquals(1, tracker.tracks().size());
+        assertEquals(0, tracker.tracks().get(0).misses);
+    }
+
+    /**
+     * Test: predictions move boxes by the time since the last frame, not by one step per call
+     */
+    @Test
+    public void testPredict_scalesWithElapsedTime() {
+        DetectionTracker tracker = new DetectionTracker();
+        for (int i = 0; i < 8; i++) {
+            tracker.update(listOf(detection(VisionDetector.TYPE_PERSON, new Rect(10 * i, 0, 10 * i + 40, 40), null)),
+                i * FRAME_MS);
+        }
+        assertEquals(70, tracker.tracks().get(0).box().left, 2);
+
+        tracker.predict(7 * FRAME_MS + FRAME_MS / 2);
+        assertEquals(75, tracker.tracks().get(0).box().left, 2);
+        tracker.predict(10 * FRAME_MS);
+        assertEquals(100, tracker.tracks().get(0).box().left, 3);
+    }
+
+    /**
+     * Test: after the gate has been quiet for a while, an object in the same place alerts again
+     */
+    @Test
+    public void testQuietGap_forgetsTracks() {
+        DetectionTracker tracker = new DetectionTracker();
+        Rect box = new Rect(100, 100, 140, 140);
+        tracker.update(listOf(detection(VisionDetector.TYPE_PERSON, box, null)), 0L);
+        assertEquals(1, tracker.update(listOf(detection(VisionDetector.TYPE_PERSON, box, null)), FRAME_MS).size());
+
+        // Frames keep coming at a slow pace: the track survives and does not alert again.
+        long now = FRAME_MS + DetectionTracker.QUIET_RESET_MS;
+        assertTrue(tracker.update(listOf(detection(VisionDetector.TYPE_PERSON, box, null)), now).isEmpty());
+
+        // Nothing reached the tracker for longer than the reset: whoever is there now is new.
+        now += DetectionTracker.QUIET_RESET_MS + 1L;
+        assertTrue(tracker.update(listOf(detection(VisionDetector.TYPE_PERSON, box, null)), now).isEmpty());
+        assertEquals(1, tracker.tracks().size());
+        assertFalse(tracker.tracks().get(0).confirmed);
+        List<DetectionTracker.Event> born =
+            tracker.update(listOf(detection(VisionDetector.TYPE_PERSON, box, null)), now + FRAME_MS);
+        assertEquals(1, born.size());
+        assertEquals(DetectionTracker.Event.Kind.BORN, born.get(0).kind);
+    }
+
+    /** Feeds every frame through the detector and returns what it reported. */
+    @NonNull
+    private static List<VisionDetector.Detection> run(@NonNull Sequence sequence, @NonNull TrackingDetector detector)
+        throws Exception {
+        List<VisionDetector.Detection> alerts = new ArrayList<>();
+        for (int i = 0; i < sequence.frames; i++) {
+            Bitmap frame = sequence.render(i);
+            try {
+                alerts.addAll(detector.detect(frame, i * FRAME_MS));
+            } finally {
+                frame.recycle();
+            }
+        }
+        return alerts;
+    }
+
+    @NonNull
+    private static VisionDetector.Detection detection(@NonNull String type, @NonNull Rect box, @Nullable Integer id) {
+        return new VisionDetector.Detection(type, 0.9f, box, id);
+    }
+
+    @NonNull
+    private static List<VisionDetector.Detection> listOf(@NonNull VisionDetector.Detection detection) {
+        List<VisionDetector.Detection> list = new ArrayList<>();
+        list.add(detection);
+        return list;
+    }
+
+    /** A solid box of one colour moving at a constant speed while it is on screen. */
+    private static final class Actor {
+        final int color;
+        final int firstFrame;
+        final int endFrame;
+        final int x0;
+        final int y0;
+        final int dx;
+        final int dy;
+        final int size;
+
+        Actor(int color, int firstFrame, int endFrame, int x0, int y0, int dx, int dy, int size) {
+            this.color = color;
+            this.firstFrame = firstFrame;
+            this.endFrame = endFrame;
+            this.x0 = x0;
+            this.y0 = y0;
+            this.dx = dx;
+            this.dy = dy;
+            this.size = size;
+        }
+
+        boolean visible(int frame) {
+            return frame >= firstFrame && frame < endFrame;
+        }
+
+        @NonNull
+        Rect box(int frame) {
+            int t = frame - firstFrame;
+            int left = x0 + dx * t;
+            int top = y0 + dy * t;
+            return new Rect(left, top, left + size, top + size);
+        }
+    }
+
+    /** Renders actors over a grey background; frame i carries its index in pixel (0, 0). */
+    private static final class Sequence {
+        final int frames;
+        final List<Actor> actors = new ArrayList<>();
+
+        Sequence(int frames) {
+            this.frames = frames;
+        }
+
+        @NonNull
+        Sequence add(@NonNull Actor actor) {
+            actors.add(actor);
+            return this;
+        }
+
+        @NonNull
+        Bitmap render(int index) {
+            int[] pixels = new int[WIDTH * HEIGHT];
+            Arrays.fill(pixels, 0xFF808080);
+            for (Actor actor : actors) {
+                if (!actor.visible(index)) continue;
+                Rect box = actor.box(index);
+                for (int y = Math.max(0, box.top); y < Math.min(HEIGHT, box.bottom); y++) {
+                    for (int x = Math.max(0, box.left); x < Math.min(WIDTH, box.right); x++) {
+                        pixels[y * WIDTH + x] = actor.color;
+                    }
+                }
+            }
+            pixels[0] = 0xFF000000 | (index & 0xFF);
+            return Bitmap.createBitmap(pixels, WIDTH, HEIGHT, Bitmap.Config.ARGB_8888);
+        }
+    }
+
+    /**
+     * Finds the bounding box of each pure colour in the frame: red is a person, blue a vehicle,
+     * green an animal. Misses, relabels and latency are scripted per frame.
+     */
+    private static final class BoxDetector implements FramePipeline.Detector {
+        final Map<Integer, Set<Integer>> misses = new HashMap<>();
+        final Map<Integer, Map<Integer, String>> labels = new HashMap<>();
+        long latencyMs;
+
+        void missing(int color, int... frames) {
+            for (int frame : frames) {
+                misses.computeIfAbsent(frame, k -> new HashSet<>()).add(color);
+            }
+        }
+
+        void relabel(int color, @NonNull String type, int fromFrame, int toFrame) {
+            for (int frame = fromFrame; frame <= toFrame; frame++) {
+                labels.computeIfAbsent(frame, k -> new HashMap<>()).put(color, type);
+            }
+        }
+
+        @NonNull
+        @Override
+        public List<VisionDetector.Detection> detect(@NonNull Bitmap frame) {
+            if (latencyMs > 0L) SystemClock.sleep(latencyMs);
+            int index = frame.getPixel(0, 0) & 0xFF;
+            int[] colors = {RED, BLUE, GREEN};
+            String[] types = {VisionDetector.TYPE_PERSON, VisionDetector.TYPE_VEHICLE, VisionDetector.TYPE_ANIMAL};
+            List<VisionDetector.Detection> found = new ArrayList<>();
+            int[] row = new int[WIDTH];
+            for (int c = 0; c < colors.length; c++) {
+                Set<Integer> missed = misses.get(index);
+                if (missed != null && missed.contains(colors[c])) continue;
+                int left = WIDTH, top = HEIGHT, right = -1, bottom = -1;
+                for (int y = 0; y < HEIGHT; y++) {
+                    frame.getPixels(row, 0, WIDTH, 0, y, WIDTH, 1);
+                    for (int x = 0; x < WIDTH; x++) {
+                        if (row[x] != colors[c]) continue;
+                        left = Math.min(left, x);
+                        right = Math.max(right, x + 1);
+                        top = Math.min(top, y);
+                        bottom = Math.max(bottom, y + 1);
+                    }
+                }
+                if (right < 0) continue;
+                Map<Integer, String> relabels = labels.get(index);
+                String type = relabels != null && relabels.containsKey(colors[c]) ? relabels.get(colors[c]) : types[c];
+                found.add(new VisionDetector.Detection(type, 0.8f, new Rect(left, top, right, bottom)));
+            }
+            return found;
+        }
+    }
+}
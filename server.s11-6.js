@@ -43,6 +43,21 @@ const ONLINE_WINDOW_MS = 10 * 60 * 1000;
 // In-memory runtime state (MVP): node heartbeats/health.
 const nodeHeartbeats = new Map(); // node_id -> { ...status }
 
+// Long-poll waiters for new compute jobs (GET /v1/compute/jobs/wait).
+// computeJobsVersion counts job creations since start; clients pass back the version they saw.
+const computeJobWaiters = new Set(); // { res, timer }
+let computeJobsVersion = 0;
+
+function notifyComputeJobWaiters(pending) {
+  for (const waiter of computeJobWaiters) {
+    clearTimeout(waiter.timer);
+    if (!waiter.res.writableEnded) {
+      json(waiter.res, 200, { ok: true, pending, version: computeJobsVersion });
+    }
+  }
+  computeJobWaiters.clear();
+}
+
 // WebSocket clients: community_id -> Set<WebSocket>
 const wsCommunityRooms = new Map();
 // WebSocket to community_id mapping for cleanup
@@ -105,6 +120,38 @@ async function readJson(req) {
   }
 }
 
+async function readBody(req) {
+  const chunks = [];
+  for await (const chunk of req) chunks.push(chunk);
+  return Buffer.concat(chunks);
+}
+
+// Binary frame ingest (content-type application/vnd.clawvision.frame):
+//   "CVF1" | u16 header_len | u8 flags (bit0 heading) | u8 0 | i64 ts (epoch s)
+//   | f64 lat | f64 lon | f64 heading | u16 node_id_len | node_id utf8 | jpeg bytes...
+// All integers and doubles big-endian. Returns the JSON-equivalent body plus raw jpeg bytes.
+const FRAME_CONTENT_TYPE = 'application/vnd.clawvision.frame';
+const FRAME_FIXED_HEADER = 42;
+
+function parseBinaryFrame(buf) {
+  if (buf.length < FRAME_FIXED_HEADER || buf.toString('latin1', 0, 4) !== 'CVF1') return null;
+  const headerLen = buf.readUInt16BE(4);
+  const idLen = buf.readUInt16BE(40);
+  if (headerLen < FRAME_FIXED_HEADER + idLen || headerLen > buf.length) return null;
+  const flags = buf.readUInt8(6);
+  const tsSec = Number(buf.readBigInt64BE(8));
+  return {
+    body: {
+      node_id: buf.toString('utf8', FRAME_FIXED_HEADER, FRAME_FIXED_HEADER + idLen),
+      ts: tsSec > 0 ? new Date(tsSec * 1000).toISOString() : undefined,
+      lat: buf.readDoubleBE(16),
+      lon: buf.readDoubleBE(24),
+      heading: (flags & 1) ? buf.readDoubleBE(32) : null
+    },
+    jpegBytes: buf.subarray(headerLen)
+  };
+}
+
 function getAuthToken(req) {
   const auth = req.headers.authorization || '';
   const m = auth.match(/^Bearer\s+(.+)$/i);
@@ -194,7 +241,7 @@ function upsertNodeHeartbeat(node_id, patch) {
   return next;
 }
 
-function normalizeEvent(body) {
+function normalizeEvent(body, rawJpeg = null) {
   // Minimal required fields for a spatial "nation".
   const node_id = typeof body?.node_id === 'string' ? body.node_id : null;
   const ts = typeof body?.ts === 'string' ? body.ts : nowIso();
@@ -204,7 +251,7 @@ function normalizeEvent(body) {
   const jpeg_base64 = typeof body?.jpeg_base64 === 'string' ? body.jpeg_base64 : null;
   const transcript = typeof body?.transcript === 'string' ? body.transcript : null;
 
-  if (!node_id || lat == null || lon == null || !jpeg_base64) {
+  if (!node_id || lat == null || lon == null || (!jpeg_base64 && !rawJpeg)) {
     return { ok: false, error: 'missing required fields: node_id, lat, lon, jpeg_base64' };
   }
 
@@ -213,14 +260,16 @@ function normalizeEvent(body) {
   const cell = latLngToCell(lat, lon, h3_res);
 
   // Store JPEG bytes as a blob on disk (MVP). This avoids returning huge base64 in queries.
-  let jpegBytes;
-  try {
-    jpegBytes = Buffer.from(jpeg_base64, 'base64');
-  } catch {
-    return { ok: false, error: 'invalid jpeg_base64 (not base64)' };
+  let jpegBytes = rawJpeg;
+  if (!jpegBytes) {
+    try {
+      jpegBytes = Buffer.from(jpeg_base64, 'base64');
+    } catch {
+      return { ok: false, error: 'invalid jpeg_base64 (not base64)' };
+    }
   }
   if (!jpegBytes || jpegBytes.length === 0) {
-    return { ok: false, error: 'invalid jpeg_base64 (empty)' };
+    return { ok: false, error: 'invalid jpeg (empty)' };
   }
 
   return {
@@ -428,13 +477,22 @@ const server = http.createServer(async (req, res) => {
     const node = Object.values(nodesDb.nodes).find((n) => n.token === token);
     if (!node) return json(res, 403, { ok: false, error: 'invalid token' });
 
-    const body = await readJson(req);
-    if (body?.__parse_error) {
-      return json(res, 400, { ok: false, error: 'invalid json' });
+    let body;
+    let rawJpeg = null;
+    if (getHeaderValue(req, 'content-type').toLowerCase().startsWith(FRAME_CONTENT_TYPE)) {
+      const frame = parseBinaryFrame(await readBody(req));
+      if (!frame) return json(res, 400, { ok: false, error: 'invalid binary frame' });
+      body = frame.body;
+      rawJpeg = frame.jpegBytes;
+    } else {
+      body = await readJson(req);
+      if (body?.__parse_error) {
+        return json(res, 400, { ok: false, error: 'invalid json' });
+      }
     }
 
     // Force node_id from auth
-    const norm = normalizeEvent({ ...body, node_id: node.node_id });
+    const norm = normalizeEvent({ ...body, node_id: node.node_id }, rawJpeg);
     if (!norm.ok) return json(res, 400, { ok: false, error: norm.error });
 
     const evt = norm.event;
@@ -1722,6 +1780,100 @@ const server = http.createServer(async (req, res) => {
     }
   }
 
+  // GET /v1/compute/jobs/wait - long-poll until jobs newer than ?since are pending
+  // Answers at once when the version moved and jobs are pending, otherwise holds the request
+  // until a job is created or ?timeoutMs (1s..300s) passes.
+  if (req.method === 'GET' && url.pathname === '/v1/compute/jobs/wait') {
+    try {
+      const since = Number(url.searchParams.get('since') ?? 0);
+      const requested = Number(url.searchParams.get('timeoutMs') ?? 60000);
+      const timeoutMs = Number.isFinite(requested) ? Math.min(300000, Math.max(1000, requested)) : 60000;
+
+      const jobsPath = join(DATA_DIR, 'compute-jobs.json');
+      const countPending = () => Object.values(readJsonFile(jobsPath, { jobs: {} }).jobs || {})
+        .filter(job => job.status === 'pending').length;
+
+      const pending = countPending();
+      if (pending > 0 && since !== computeJobsVersion) {
+        return json(res, 200, { ok: true, pending, version: computeJobsVersion });
+      }
+
+      const waiter = { res, timer: null };
+      waiter.timer = setTimeout(() => {
+        computeJobWaiters.delete(waiter);
+        if (!res.writableEnded) {
+          json(res, 200, { ok: true, pending: countPending(), version: computeJobsVersion });
+        }
+      }, timeoutMs);
+      computeJobWaiters.add(waiter);
+      req.on('close', () => {
+        clearTimeout(waiter.timer);
+        computeJobWaiters.delete(waiter);
+      });
+      return;
+    } catch (err) {
+      return json(res, 500, { ok: false, error: 'internal error' });
+    }
+  }
+
+  // POST /v1/compute/jobs/claim - claim up to `limit` pending jobs in one step
+  // Body: { node_id | deviceId, limit, types?: { [type]: maxCount } }. Reading and writing the
+  // jobs file happens without awaiting in between, so concurrent claims never share a job.
+  if (req.method === 'POST' && url.pathname === '/v1/compute/jobs/claim') {
+    try {
+      const body = await readJson(req);
+      if (body?.__parse_error) {
+        return json(res, 400, { ok: false, error: 'invalid json' });
+      }
+
+      const rawNode = body?.node_id ?? body?.deviceId;
+      const node_id = typeof rawNode === 'string' ? rawNode.trim() : '';
+      if (!node_id) return json(res, 400, { ok: false, error: 'missing node_id' });
+
+      const limit = Number(body?.limit ?? 1);
+      if (!Number.isInteger(limit) || limit < 1 || limit > 32) {
+        return json(res, 400, { ok: false, error: 'invalid limit (expected 1..32)' });
+      }
+
+      const types = body?.types && typeof body.types === 'object' ? body.types : null;
+      const room = {};
+      if (types) {
+        for (const [type, max] of Object.entries(types)) {
+          const n = Number(max);
+          if (Number.isInteger(n) && n > 0) room[type] = n;
+        }
+      }
+
+      const jobsPath = join(DATA_DIR, 'compute-jobs.json');
+      const jobs = readJsonFile(jobsPath, { jobs: {} });
+
+      const pending = Object.values(jobs.jobs || {})
+        .filter(job => job.status === 'pending')
+        .sort((a, b) => (b.priority || 0) - (a.priority || 0)
+          || String(a.created_at || '').localeCompare(String(b.created_at || '')));
+
+      const claimed = [];
+      const now = nowIso();
+      for (const job of pending) {
+        if (claimed.length >= limit) break;
+        if (types) {
+          if (!room[job.type]) continue;
+          room[job.type] -= 1;
+        }
+        job.status = 'claimed';
+        job.claimed_by = node_id;
+        job.claimed_at = now;
+        job.last_heartbeat = now;
+        claimed.push(job);
+      }
+
+      if (claimed.length > 0) writeJsonFile(jobsPath, jobs);
+      return json(res, 200, { ok: true, jobs: claimed });
+    } catch (err) {
+      return json(res, 500, { ok: false, error: 'internal error' });
+    }
+  }
+
   // POST /v1/compute/jobs/:id/claim - claim a compute job
   if (req.method === 'POST' && url.pathname.match(/^\/v1\/compute\/jobs\/[^/]+\/claim$/)) {
     try {
@@ -1806,9 +1958,19 @@ const server = http.createServer(async (req, res) => {
       const job = jobs.jobs[job_id];
       if (!job) return json(res, 404, { ok: false, error: 'job not found' });
 
-      job.status = 'completed';
+      // Devices retry a result with the same Idempotency-Key until they see an answer.
+      const idempotencyKey = String(req.headers['idempotency-key'] || '').trim() || null;
+      if (job.status === 'completed' || job.status === 'failed') {
+        if (idempotencyKey && job.result_key === idempotencyKey) {
+          return json(res, 200, { ok: true, job_id, status: job.status, duplicate: true });
+        }
+        return json(res, 409, { ok: false, error: 'job already has a result' });
+      }
+
+      job.status = body?.status === 'failed' ? 'failed' : 'completed';
       job.completed_at = nowIso();
       job.results = body?.results ?? {};
+      job.result_key = idempotencyKey;
 
       writeJsonFile(jobsPath, jobs);
 
@@ -1821,7 +1983,7 @@ const server = http.createServer(async (req, res) => {
         results: job.results
       }) + '\n');
 
-      return json(res, 200, { ok: true, job_id, status: 'completed' });
+      return json(res, 200, { ok: true, job_id, status: job.status });
     } catch (err) {
       return json(res, 500, { ok: false, error: 'internal error' });
     }
@@ -1881,6 +2043,8 @@ const server = http.createServer(async (req, res) => {
       };
 
       writeJsonFile(jobsPath, jobs);
+      computeJobsVersion += 1;
+      notifyComputeJobWaiters(Object.values(jobs.jobs).filter(job => job.status === 'pending').length);
       return json(res, 201, { ok: true, job_id, status: 'pending' });
     } catch (err) {
       return json(res, 500, { ok: false, error: 'internal error' });